@@ -0,0 +1,130 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.util.activatorindex;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * Reads the activator index written at build time by
+ * {@link ActivatorIndexProcessor}. Every module jar carries its own index,
+ * which lists one activator class name per line.
+ */
+public final class ActivatorIndex
+{
+    /**
+     * The location of the index inside each module jar.
+     */
+    public static final String RESOURCE = "META-INF/jitsi/activators";
+
+    private ActivatorIndex()
+    {
+    }
+
+    /**
+     * Returns the names of the activators listed in all the indexes visible
+     * to <tt>classLoader</tt>.
+     *
+     * @param classLoader the class loader to search for indexes
+     * @return the activator class names in class path order, empty if no
+     * index was found
+     * @throws IOException if an index cannot be read
+     */
+    public static Set<String> load(ClassLoader classLoader)
+        throws IOException
+    {
+        Set<String> activators = new LinkedHashSet<>();
+        Enumeration<URL> indexes = classLoader.getResources(RESOURCE);
+
+        while (indexes.hasMoreElements())
+        {
+            try (Reader r
+                    = new InputStreamReader(
+                        indexes.nextElement().openStream(),
+                        StandardCharsets.UTF_8))
+            {
+                activators.addAll(read(r));
+            }
+        }
+
+        return activators;
+    }
+
+    /**
+     * Returns the class path roots which carry an index, in the form of the
+     * URLs <tt>ClassLoader.getResources</tt> gives for a directory, e.g.
+     * <tt>jar:file:/app/lib/a.jar!/</tt> or <tt>file:/app/classes/</tt>.
+     * Roots that are not in this set were built without the index, e.g.
+     * third party jars, and still have to be scanned.
+     *
+     * @param classLoader the class loader to search for indexes
+     * @return the external forms of the indexed roots
+     * @throws IOException if the class loader cannot be searched
+     */
+    public static Set<String> findIndexedRoots(ClassLoader classLoader)
+        throws IOException
+    {
+        Set<String> roots = new HashSet<>();
+        Enumeration<URL> indexes = classLoader.getResources(RESOURCE);
+
+        while (indexes.hasMoreElements())
+            roots.add(getRoot(indexes.nextElement()));
+
+        return roots;
+    }
+
+    /**
+     * Returns the class path root an index was found in.
+     *
+     * @param index the URL of the index
+     * @return the external form of the root of <tt>index</tt>
+     */
+    static String getRoot(URL index)
+    {
+        String url = index.toExternalForm();
+        int end = url.lastIndexOf(RESOURCE);
+
+        return (end < 0) ? url : url.substring(0, end);
+    }
+
+    /**
+     * Parses one index, skipping blank lines and <tt>#</tt> comments.
+     *
+     * @param reader the index contents
+     * @return the activator class names in the order of the index
+     * @throws IOException if reading fails
+     */
+    static List<String> read(Reader reader)
+        throws IOException
+    {
+        List<String> names = new ArrayList<>();
+        BufferedReader in = new BufferedReader(reader);
+        String line;
+
+        while ((line = in.readLine()) != null)
+        {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#"))
+                names.add(line);
+        }
+
+        return names;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.util.activatorindex;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+import javax.annotation.processing.*;
+import javax.lang.model.*;
+import javax.lang.model.element.*;
+import javax.lang.model.type.*;
+import javax.tools.*;
+
+/**
+ * Annotation processor which writes the names of all concrete
+ * <tt>BundleActivator</tt>s of a module to {@link ActivatorIndex#RESOURCE},
+ * so that the launcher can install the bundles without scanning the class
+ * path. The processor does not require any annotation on the activators, it
+ * looks at every compiled type and never claims any annotation.
+ * <p>
+ * Entries of a previous, incremental compilation are kept as long as their
+ * class still exists.
+ */
+@SupportedAnnotationTypes("*")
+public class ActivatorIndexProcessor
+    extends AbstractProcessor
+{
+    /**
+     * The name of the interface the indexed classes implement.
+     */
+    private static final String BUNDLE_ACTIVATOR
+        = "org.osgi.framework.BundleActivator";
+
+    /**
+     * The binary names of the activators found so far, in a stable order.
+     */
+    private final Set<String> activators = new TreeSet<>();
+
+    /**
+     * Returns the latest supported source version, the processor does not
+     * depend on any language feature.
+     *
+     * @return the latest supported source version
+     */
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+
+    /**
+     * Collects the activators among the root elements of the round and writes
+     * the index once processing is over.
+     *
+     * @param annotations the annotations of the round, ignored
+     * @param roundEnv the environment of the round
+     * @return <tt>false</tt>, no annotations are claimed
+     */
+    @Override
+    public boolean process(
+        Set<? extends TypeElement> annotations,
+        RoundEnvironment roundEnv)
+    {
+        TypeElement activatorType
+            = processingEnv.getElementUtils().getTypeElement(BUNDLE_ACTIVATOR);
+
+        // modules which do not see osgi have nothing to index
+        if (activatorType == null)
+            return false;
+
+        if (roundEnv.processingOver())
+        {
+            if (!activators.isEmpty())
+                writeIndex();
+            return false;
+        }
+
+        TypeMirror activatorMirror = activatorType.asType();
+
+        for (Element e : roundEnv.getRootElements())
+        {
+            if (e.getKind() == ElementKind.CLASS)
+                collect((TypeElement) e, activatorMirror);
+        }
+
+        return false;
+    }
+
+    /**
+     * Adds <tt>type</tt> and its nested classes to the index if they are
+     * public, concrete activators.
+     *
+     * @param type the class to check
+     * @param activatorMirror the <tt>BundleActivator</tt> type
+     */
+    private void collect(TypeElement type, TypeMirror activatorMirror)
+    {
+        Set<Modifier> modifiers = type.getModifiers();
+
+        if (modifiers.contains(Modifier.PUBLIC)
+            && !modifiers.contains(Modifier.ABSTRACT)
+            && (type.getNestingKind() == NestingKind.TOP_LEVEL
+                || modifiers.contains(Modifier.STATIC))
+            && processingEnv.getTypeUtils().isAssignable(
+                processingEnv.getTypeUtils().erasure(type.asType()),
+                activatorMirror))
+        {
+            activators.add(
+                processingEnv.getElementUtils().getBinaryName(type)
+                    .toString());
+        }
+
+        for (Element e : type.getEnclosedElements())
+        {
+            if (e.getKind() == ElementKind.CLASS)
+                collect((TypeElement) e, activatorMirror);
+        }
+    }
+
+    /**
+     * Merges the activators of this compilation with the still existing ones
+     * of a previous compilation and writes the index.
+     */
+    private void writeIndex()
+    {
+        Filer filer = processingEnv.getFiler();
+        Set<String> index = new TreeSet<>(activators);
+
+        try
+        {
+            FileObject existing
+                = filer.getResource(
+                    StandardLocation.CLASS_OUTPUT, "", ActivatorIndex.RESOURCE);
+
+            try (Reader r = existing.openReader(true))
+            {
+                for (String name : ActivatorIndex.read(r))
+                {
+                    if (processingEnv.getElementUtils().getTypeElement(
+                            name.replace('$', '.')) != null)
+                    {
+                        index.add(name);
+                    }
+                }
+            }
+        }
+        catch (IOException ex)
+        {
+            // no previous index, a clean build
+        }
+
+        try
+        {
+            FileObject resource
+                = filer.createResource(
+                    StandardLocation.CLASS_OUTPUT, "", ActivatorIndex.RESOURCE);
+
+            try (Writer w
+                    = new OutputStreamWriter(
+                        resource.openOutputStream(),
+                        StandardCharsets.UTF_8))
+            {
+                for (String name : index)
+                {
+                    w.write(name);
+                    w.write('\n');
+                }
+            }
+        }
+        catch (IOException ex)
+        {
+            processingEnv.getMessager().printMessage(
+                Diagnostic.Kind.ERROR,
+                "Failed to write " + ActivatorIndex.RESOURCE + ": " + ex);
+        }
+    }
+}
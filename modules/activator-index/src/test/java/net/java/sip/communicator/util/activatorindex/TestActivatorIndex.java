@@ -0,0 +1,254 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.util.activatorindex;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.jar.*;
+
+import javax.tools.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+
+/**
+ * Tests that <tt>ActivatorIndexProcessor</tt> indexes the concrete public
+ * activators of a compilation, and that <tt>ActivatorIndex</tt> tells the
+ * class path roots with an index from those which have to be scanned.
+ */
+public class TestActivatorIndex
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The directory the test sources are written to.
+     */
+    private File sources;
+
+    /**
+     * The directory the test sources are compiled to.
+     */
+    private File classes;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        sources = folder.newFolder("src");
+        classes = folder.newFolder("classes");
+
+        // a stand-in, the processor only looks the interface up by name
+        writeSource("org.osgi.framework.BundleActivator",
+            "package org.osgi.framework;"
+                + " public interface BundleActivator {}");
+    }
+
+    /**
+     * Writes a source file.
+     *
+     * @param className the name of the class
+     * @param source the source code
+     * @return the written file
+     * @throws IOException if writing fails
+     */
+    private File writeSource(String className, String source)
+        throws IOException
+    {
+        File file
+            = new File(sources, className.replace('.', '/') + ".java");
+
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /**
+     * Compiles sources with the processor into {@link #classes}.
+     *
+     * @param files the sources to compile
+     * @throws IOException if the file manager fails
+     */
+    private void compile(File... files)
+        throws IOException
+    {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+
+        try (StandardJavaFileManager fileManager
+                = compiler.getStandardFileManager(null, null, null))
+        {
+            fileManager.setLocation(
+                StandardLocation.CLASS_OUTPUT,
+                Collections.singleton(classes));
+            fileManager.setLocation(
+                StandardLocation.CLASS_PATH,
+                Collections.singleton(classes));
+
+            JavaCompiler.CompilationTask task
+                = compiler.getTask(
+                    null, fileManager, null, null, null,
+                    fileManager.getJavaFileObjects(files));
+
+            task.setProcessors(
+                Collections.singleton(new ActivatorIndexProcessor()));
+            assertTrue("compilation failed", task.call());
+        }
+    }
+
+    /**
+     * Reads the index written to {@link #classes}.
+     *
+     * @return the indexed activators
+     * @throws IOException if the index cannot be read
+     */
+    private List<String> readIndex()
+        throws IOException
+    {
+        try (Reader r
+                = Files.newBufferedReader(
+                    new File(classes, ActivatorIndex.RESOURCE).toPath(),
+                    StandardCharsets.UTF_8))
+        {
+            return ActivatorIndex.read(r);
+        }
+    }
+
+    @Test
+    public void testConcretePublicActivatorsAreIndexed()
+        throws IOException
+    {
+        compile(
+            new File(sources, "org/osgi/framework/BundleActivator.java"),
+            writeSource("a.Base",
+                "package a; public abstract class Base"
+                    + " implements org.osgi.framework.BundleActivator {}"),
+            writeSource("a.Concrete",
+                "package a; public class Concrete extends Base {}"),
+            writeSource("a.Outer",
+                "package a; public class Outer {"
+                    + " public static class Nested extends Base {}"
+                    + " public class Inner extends Base {} }"),
+            writeSource("a.Hidden",
+                "package a; class Hidden extends Base {}"),
+            writeSource("a.Plain", "package a; public class Plain {}"));
+
+        assertEquals(Arrays.asList("a.Concrete", "a.Outer$Nested"),
+            readIndex());
+    }
+
+    @Test
+    public void testIncrementalCompilationKeepsExistingActivators()
+        throws IOException
+    {
+        compile(
+            new File(sources, "org/osgi/framework/BundleActivator.java"),
+            writeSource("a.Kept",
+                "package a; public class Kept"
+                    + " implements org.osgi.framework.BundleActivator {}"));
+
+        File index = new File(classes, ActivatorIndex.RESOURCE);
+
+        Files.write(index.toPath(),
+            "a.Kept\na.Gone\n".getBytes(StandardCharsets.UTF_8));
+
+        compile(writeSource("a.Added",
+            "package a; public class Added"
+                + " implements org.osgi.framework.BundleActivator {}"));
+
+        assertEquals(Arrays.asList("a.Added", "a.Kept"), readIndex());
+    }
+
+    @Test
+    public void testRootsWithoutIndexAreTold()
+        throws IOException
+    {
+        File indexedDir = folder.newFolder("indexed");
+        File indexedJar = folder.newFile("indexed.jar");
+        File plainJar = folder.newFile("plain.jar");
+
+        new File(indexedDir, "org/jitsi").mkdirs();
+        new File(indexedDir, "META-INF/jitsi").mkdirs();
+        Files.write(
+            new File(indexedDir, ActivatorIndex.RESOURCE).toPath(),
+            "org.jitsi.A\n".getBytes(StandardCharsets.UTF_8));
+        writeJar(indexedJar, "org/jitsi/", ActivatorIndex.RESOURCE);
+        writeJar(plainJar, "org/jitsi/");
+
+        try (URLClassLoader cl
+                = new URLClassLoader(
+                    new URL[]
+                        {
+                            indexedDir.toURI().toURL(),
+                            indexedJar.toURI().toURL(),
+                            plainJar.toURI().toURL()
+                        },
+                    null))
+        {
+            Set<String> indexedRoots = ActivatorIndex.findIndexedRoots(cl);
+            Set<String> unindexedRoots = new HashSet<>();
+
+            // the roots the launcher's class path scan finds the package in
+            for (URL url : Collections.list(cl.getResources("org/jitsi")))
+            {
+                String root = url.toExternalForm();
+
+                root = root.substring(0, root.lastIndexOf("org/jitsi"));
+                if (!indexedRoots.contains(root))
+                    unindexedRoots.add(root);
+            }
+
+            assertEquals(2, indexedRoots.size());
+            assertEquals(
+                Collections.singleton(
+                    "jar:" + plainJar.toURI().toURL() + "!/"),
+                unindexedRoots);
+            assertEquals(
+                new HashSet<>(Arrays.asList("org.jitsi.A", "org.jitsi.B")),
+                new HashSet<>(ActivatorIndex.load(cl)));
+        }
+    }
+
+    /**
+     * Writes a jar holding the given entries, the index entries list
+     * <tt>org.jitsi.B</tt>.
+     *
+     * @param jar the jar to write
+     * @param entries the names of the entries
+     * @throws IOException if writing fails
+     */
+    private static void writeJar(File jar, String... entries)
+        throws IOException
+    {
+        try (JarOutputStream out
+                = new JarOutputStream(new FileOutputStream(jar)))
+        {
+            for (String entry : entries)
+            {
+                out.putNextEntry(new JarEntry(entry));
+                if (!entry.endsWith("/"))
+                    out.write("org.jitsi.B\n".getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+    }
+}
@@ -31,6 +31,7 @@
 import net.java.sip.communicator.service.dns.*;
 import net.java.sip.communicator.service.notification.*;
 import net.java.sip.communicator.plugin.desktoputil.*;
+import net.java.sip.communicator.util.*;
 
 import org.apache.commons.lang3.StringUtils;
 import org.jitsi.service.configuration.*;
@@ -503,5 +504,9 @@ public void reset()
         }
 
         logger.trace("Loaded trust anchors {}", sb);
+
+        // Answers cached under the previous forwarders or trust anchors must
+        // not outlive them.
+        NetworkUtils.clearDefaultDNSCache();
     }
 }
@@ -4068,7 +4068,7 @@ public static void call(UIContact uiContact,
     /**
      * Tries to resolves a peer address into a display name, by reqesting the
      * <tt>ContactSourceService</tt>s. This function returns only the
-     * first match.
+     * first match. The results are cached by the <tt>CallerIdResolver</tt>.
      *
      * @param peerAddress The peer address.
      * @param listener the listener to fire change events for later resolutions
@@ -4084,16 +4084,10 @@ private static String queryContactSource(
 
         if(StringUtils.isNotEmpty(peerAddress))
         {
-            ContactSourceSearcher searcher
-                = new ContactSourceSearcher(peerAddress, listener);
-
-            if(listener == null)
-            {
-                searcher.run();
-                displayName = searcher.displayName;
-            }
-            else
-                new Thread(searcher, searcher.getClass().getName()).start();
+            // The detault timeout is set to 500ms.
+            displayName
+                = CallerIdResolver.getInstance().resolve(
+                    peerAddress, listener, 500);
         }
 
         return displayName;
@@ -4103,7 +4097,7 @@ private static String queryContactSource(
      * Runnable that will search for a source contact and when found will
      * fire events to inform that display name or contact image is found.
      */
-    private static class ContactSourceSearcher
+    static class ContactSourceSearcher
         implements Runnable
     {
         private final DetailsResolveListener listener;
@@ -4113,7 +4107,7 @@ private static String queryContactSource(
         private String displayName;
         private byte[] displayImage;
 
-        private ContactSourceSearcher(
+        ContactSourceSearcher(
             String peerAddress,
             DetailsResolveListener listener)
         {
@@ -4228,7 +4222,16 @@ else if(listener != null && displayImage != null)
                     else
                         hasRunningResolver = true;
                 }
-                Thread.yield();
+                // don't spin while the resolvers are still running
+                try
+                {
+                    Thread.sleep(10);
+                }
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
 
                 if( timeout > 0 &&
                     System.currentTimeMillis() - startTime >= timeout)
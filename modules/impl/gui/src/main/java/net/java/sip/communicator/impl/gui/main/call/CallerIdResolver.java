@@ -0,0 +1,535 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.gui.main.call;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+import java.util.regex.*;
+
+import net.java.sip.communicator.impl.gui.*;
+import net.java.sip.communicator.service.protocol.*;
+
+import org.jitsi.service.configuration.*;
+
+/**
+ * Resolves the addresses of call peers to the display names and images found
+ * in the contact sources and caches the results, including the addresses
+ * nothing was found for. A cached result is returned right away and
+ * refreshed in the background once it expires, and concurrent lookups of the
+ * same address share one search, so incoming calls and call panels do not
+ * start a new search in every contact source each time.
+ */
+class CallerIdResolver
+{
+    /**
+     * The name of the property which specifies for how many seconds a found
+     * display name or image is cached.
+     */
+    static final String PNAME_POSITIVE_TTL
+        = "net.java.sip.communicator.impl.gui.main.call.CALLER_ID_CACHE_TTL";
+
+    /**
+     * The name of the property which specifies for how many seconds it is
+     * cached that nothing was found for an address.
+     */
+    static final String PNAME_NEGATIVE_TTL
+        = "net.java.sip.communicator.impl.gui.main.call."
+            + "CALLER_ID_NEGATIVE_CACHE_TTL";
+
+    /**
+     * The default time in seconds a found display name or image is cached.
+     */
+    static final int DEFAULT_POSITIVE_TTL = 30 * 60;
+
+    /**
+     * The default time in seconds it is cached that nothing was found.
+     */
+    static final int DEFAULT_NEGATIVE_TTL = 5 * 60;
+
+    /**
+     * The maximum number of cached addresses.
+     */
+    static final int MAX_ENTRIES = 1000;
+
+    /**
+     * Matches the scheme of the URIs of call peers.
+     */
+    private static final Pattern URI_SCHEME
+        = Pattern.compile("^(sips?|tel|xmpp):", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * The instance used by <tt>CallManager</tt>.
+     */
+    private static CallerIdResolver instance;
+
+    /**
+     * Searches the contact sources for an address.
+     */
+    private final Searcher searcher;
+
+    /**
+     * Maps addresses to the keys they are cached under.
+     */
+    private final Function<String, String> keyFunction;
+
+    /**
+     * The time in nanoseconds a found display name or image is cached.
+     */
+    private final long positiveTtl;
+
+    /**
+     * The time in nanoseconds it is cached that nothing was found.
+     */
+    private final long negativeTtl;
+
+    /**
+     * The cached results, least recently used first.
+     */
+    private final Map<String, Result> cache
+        = new LinkedHashMap<String, Result>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 0L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Result> e)
+            {
+                return size() > MAX_ENTRIES;
+            }
+        };
+
+    /**
+     * The running lookups by key.
+     */
+    private final Map<String, Lookup> lookups = new HashMap<>();
+
+    /**
+     * Runs the lookups and notifies the listeners.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Returns the instance used by <tt>CallManager</tt>.
+     *
+     * @return the <tt>CallerIdResolver</tt>
+     */
+    static synchronized CallerIdResolver getInstance()
+    {
+        if (instance == null)
+        {
+            ConfigurationService cfg
+                = GuiActivator.getConfigurationService();
+            int positiveTtl = DEFAULT_POSITIVE_TTL;
+            int negativeTtl = DEFAULT_NEGATIVE_TTL;
+
+            if (cfg != null)
+            {
+                positiveTtl = cfg.getInt(PNAME_POSITIVE_TTL, positiveTtl);
+                negativeTtl = cfg.getInt(PNAME_NEGATIVE_TTL, negativeTtl);
+            }
+
+            instance
+                = new CallerIdResolver(
+                        (address, listener)
+                            -> new CallManager.ContactSourceSearcher(
+                                    address, listener).run(),
+                        CallerIdResolver::getKey,
+                        TimeUnit.SECONDS.toNanos(positiveTtl),
+                        TimeUnit.SECONDS.toNanos(negativeTtl));
+        }
+        return instance;
+    }
+
+    /**
+     * Creates a <tt>CallerIdResolver</tt>.
+     *
+     * @param searcher searches the contact sources for an address
+     * @param keyFunction maps addresses to the keys they are cached under
+     * @param positiveTtl the time in nanoseconds a found display name or
+     * image is cached
+     * @param negativeTtl the time in nanoseconds it is cached that nothing
+     * was found
+     */
+    CallerIdResolver(
+            Searcher searcher,
+            Function<String, String> keyFunction,
+            long positiveTtl,
+            long negativeTtl)
+    {
+        final AtomicInteger threadIndex = new AtomicInteger();
+
+        this.searcher = searcher;
+        this.keyFunction = keyFunction;
+        this.positiveTtl = positiveTtl;
+        this.negativeTtl = negativeTtl;
+        this.executor
+            = Executors.newCachedThreadPool(r ->
+            {
+                Thread t
+                    = new Thread(
+                            r,
+                            "CallerIdResolver-"
+                                + threadIndex.incrementAndGet());
+
+                t.setDaemon(true);
+                return t;
+            });
+    }
+
+    /**
+     * Gets the key an address is cached under.
+     *
+     * @param address the address
+     * @return the key
+     */
+    static String getKey(String address)
+    {
+        return getKey(address, GuiActivator.getPhoneNumberI18nService());
+    }
+
+    /**
+     * Gets the key an address is cached under: the address without its
+     * scheme and parameters, or only its user part, normalized, if that is a
+     * phone number. Addresses of different users on different servers must
+     * not share a key unless they are the same phone number.
+     *
+     * @param address the address
+     * @param phoneNumberService tells whether the user part is a phone number
+     * or <tt>null</tt> if it is not known
+     * @return the key
+     */
+    static String getKey(
+            String address,
+            PhoneNumberI18nService phoneNumberService)
+    {
+        String key = address.trim();
+
+        if (key.startsWith("<") && key.endsWith(">"))
+            key = key.substring(1, key.length() - 1);
+
+        key = URI_SCHEME.matcher(key).replaceFirst("");
+
+        int paramsIndex = indexOfAny(key, ';', '?');
+
+        if (paramsIndex > -1)
+            key = key.substring(0, paramsIndex);
+
+        int index = key.indexOf('@');
+        String user = (index > -1) ? key.substring(0, index) : key;
+
+        if (phoneNumberService != null
+            && phoneNumberService.isPhoneNumber(user))
+            return phoneNumberService.normalize(user);
+        return key.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Gets the index of the first of some characters in a string.
+     *
+     * @param s the string
+     * @param c1 a character to look for
+     * @param c2 another character to look for
+     * @return the index of the first of the characters or <tt>-1</tt> if
+     * neither is found
+     */
+    private static int indexOfAny(String s, char c1, char c2)
+    {
+        int i1 = s.indexOf(c1);
+        int i2 = s.indexOf(c2);
+
+        if (i1 < 0)
+            return i2;
+        return (i2 < 0) ? i1 : Math.min(i1, i2);
+    }
+
+    /**
+     * Resolves an address to a display name.
+     *
+     * @param address the peer address
+     * @param listener notified of the display name and image found later or
+     * <tt>null</tt> to wait for the display name
+     * @param timeout the time in milliseconds to wait for the display name if
+     * there is no listener
+     * @return the cached display name, the display name found within the
+     * timeout if there is no listener, or <tt>null</tt>
+     */
+    String resolve(
+            String address,
+            CallManager.DetailsResolveListener listener,
+            long timeout)
+    {
+        String key = keyFunction.apply(address);
+        Result cached;
+        Lookup lookup = null;
+
+        synchronized (this)
+        {
+            cached = cache.get(key);
+            if (cached == null || cached.expires - System.nanoTime() < 0)
+            {
+                lookup = lookups.get(key);
+                if (lookup == null)
+                {
+                    lookup = new Lookup();
+                    lookups.put(key, lookup);
+                    startLookup(key, address, lookup);
+                }
+            }
+        }
+
+        if (cached != null)
+        {
+            if (listener != null && cached.image != null)
+                notify(listener, null, cached.image);
+            // a refresh reports what changed
+            if (listener != null && lookup != null)
+                lookup.addListener(listener);
+            return cached.name;
+        }
+
+        if (listener != null)
+        {
+            lookup.addListener(listener);
+            return null;
+        }
+
+        try
+        {
+            lookup.done.await(timeout, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+        return lookup.name;
+    }
+
+    /**
+     * Runs a lookup and caches its result.
+     *
+     * @param key the key of the address
+     * @param address the address
+     * @param lookup the lookup
+     */
+    private void startLookup(String key, String address, Lookup lookup)
+    {
+        executor.execute(() ->
+        {
+            try
+            {
+                searcher.search(address, lookup);
+            }
+            finally
+            {
+                String name;
+                byte[] image;
+
+                synchronized (lookup)
+                {
+                    name = lookup.name;
+                    image = lookup.image;
+                }
+
+                long ttl
+                    = (name == null && image == null)
+                        ? negativeTtl
+                        : positiveTtl;
+
+                synchronized (this)
+                {
+                    lookups.remove(key);
+                    cache.put(
+                        key,
+                        new Result(name, image, System.nanoTime() + ttl));
+                }
+                lookup.done.countDown();
+            }
+        });
+    }
+
+    /**
+     * Notifies a listener on a thread of this resolver.
+     *
+     * @param listener the listener
+     * @param name the display name or <tt>null</tt>
+     * @param image the image or <tt>null</tt>
+     */
+    private void notify(
+            CallManager.DetailsResolveListener listener,
+            String name,
+            byte[] image)
+    {
+        executor.execute(() ->
+        {
+            if (!listener.isInterested())
+                return;
+            if (name != null)
+                listener.displayNameUpdated(name);
+            if (image != null)
+                listener.imageUpdated(image);
+        });
+    }
+
+    /**
+     * Searches the contact sources for an address.
+     */
+    interface Searcher
+    {
+        /**
+         * Searches for an address, notifying a listener of the display name
+         * and image found, and returns when the search is complete.
+         *
+         * @param address the address
+         * @param listener the listener
+         */
+        void search(
+            String address,
+            CallManager.DetailsResolveListener listener);
+    }
+
+    /**
+     * A cached result.
+     */
+    private static class Result
+    {
+        /**
+         * The display name or <tt>null</tt>.
+         */
+        final String name;
+
+        /**
+         * The image or <tt>null</tt>.
+         */
+        final byte[] image;
+
+        /**
+         * The <tt>System.nanoTime()</tt> the result expires at.
+         */
+        final long expires;
+
+        /**
+         * Creates a result.
+         *
+         * @param name the display name or <tt>null</tt>
+         * @param image the image or <tt>null</tt>
+         * @param expires the time the result expires at
+         */
+        Result(String name, byte[] image, long expires)
+        {
+            this.name = name;
+            this.image = image;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * A running search, collecting what is found and passing it on to the
+     * listeners waiting for it.
+     */
+    private class Lookup
+        implements CallManager.DetailsResolveListener
+    {
+        /**
+         * Counted down when the search is complete.
+         */
+        final CountDownLatch done = new CountDownLatch(1);
+
+        /**
+         * The listeners waiting for the result.
+         */
+        private final List<CallManager.DetailsResolveListener> listeners
+            = new ArrayList<>();
+
+        /**
+         * The display name found so far.
+         */
+        private volatile String name;
+
+        /**
+         * The image found so far.
+         */
+        private byte[] image;
+
+        /**
+         * Adds a listener and passes on what was found so far.
+         *
+         * @param listener the listener
+         */
+        void addListener(CallManager.DetailsResolveListener listener)
+        {
+            String name;
+            byte[] image;
+
+            synchronized (this)
+            {
+                listeners.add(listener);
+                name = this.name;
+                image = this.image;
+            }
+            if (name != null || image != null)
+                CallerIdResolver.this.notify(listener, name, image);
+        }
+
+        @Override
+        public void displayNameUpdated(String displayName)
+        {
+            List<CallManager.DetailsResolveListener> listeners;
+
+            synchronized (this)
+            {
+                name = displayName;
+                listeners = new ArrayList<>(this.listeners);
+            }
+            for (CallManager.DetailsResolveListener l : listeners)
+            {
+                if (l.isInterested())
+                    l.displayNameUpdated(displayName);
+            }
+        }
+
+        @Override
+        public void imageUpdated(byte[] image)
+        {
+            List<CallManager.DetailsResolveListener> listeners;
+
+            synchronized (this)
+            {
+                this.image = image;
+                listeners = new ArrayList<>(this.listeners);
+            }
+            for (CallManager.DetailsResolveListener l : listeners)
+            {
+                if (l.isInterested())
+                    l.imageUpdated(image);
+            }
+        }
+
+        /**
+         * The search always runs to the end so that the complete result is
+         * cached.
+         *
+         * @return <tt>true</tt>
+         */
+        @Override
+        public boolean isInterested()
+        {
+            return true;
+        }
+    }
+}
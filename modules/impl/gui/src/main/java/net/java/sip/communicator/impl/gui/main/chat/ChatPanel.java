@@ -2505,9 +2505,18 @@ public void removeChatFocusListener(ChatFocusListener listener)
      */
     public ChatTransport findFileTransferChatTransport()
     {
-        // We currently don't support file transfer in group chats.
+        // Files are only sent to chat rooms whose protocol can share a file
+        // with all the members at once.
         if (chatSession instanceof ConferenceChatSession)
-            return null;
+        {
+            ChatTransport conferenceTransport
+                = chatSession.getCurrentChatTransport();
+
+            return (conferenceTransport.getProtocolProvider().getOperationSet(
+                        OperationSetChatRoomFileTransfer.class) != null)
+                ? conferenceTransport
+                : null;
+        }
 
         ChatTransport currentChatTransport
             = chatSession.getCurrentChatTransport();
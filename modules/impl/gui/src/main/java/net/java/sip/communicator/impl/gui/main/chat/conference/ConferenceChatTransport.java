@@ -237,13 +237,25 @@ public int sendTypingNotification(int typingState)
     }
 
     /**
-     * Sending files through a chat room is not yet supported by this chat
-     * transport implementation.
+     * Sends the given file to all the members of the chat room, if the
+     * protocol supports it.
+     *
+     * @param file the file to send
+     * @return the <tt>FileTransfer</tt> charged to transfer the given
+     * <tt>file</tt> or <tt>null</tt> if the protocol cannot send files to
+     * chat rooms
      */
     public FileTransfer sendFile(File file)
         throws Exception
     {
-        return null;
+        OperationSetChatRoomFileTransfer fileTransferOpSet
+            = getProtocolProvider().getOperationSet(
+                OperationSetChatRoomFileTransfer.class);
+
+        if (fileTransferOpSet == null)
+            return null;
+
+        return fileTransferOpSet.sendFile(chatRoom, file);
     }
 
     /**
@@ -252,7 +264,13 @@ public FileTransfer sendFile(File file)
      */
     public long getMaximumFileLength()
     {
-        return -1;
+        OperationSetChatRoomFileTransfer fileTransferOpSet
+            = getProtocolProvider().getOperationSet(
+                OperationSetChatRoomFileTransfer.class);
+
+        return (fileTransferOpSet == null)
+            ? -1
+            : fileTransferOpSet.getMaximumFileLength();
     }
 
     /**
@@ -545,7 +545,16 @@ public void progressChanged(FileTransferProgressEvent event)
 
         String bytesString = ByteFormat.format(transferredBytes);
 
-        if ((progressTimestamp - lastSpeedTimestamp)
+        // prefer the rate and time left computed by the protocol
+        if (event.getBytesPerSecond() >= 0)
+        {
+            lastProgressSpeed = event.getBytesPerSecond();
+            lastEstimatedTime
+                = (event.getEstimatedTimeLeft() >= 0)
+                    ? Math.round(event.getEstimatedTimeLeft() / 1000d)
+                    : 0;
+        }
+        else if ((progressTimestamp - lastSpeedTimestamp)
                 >= SPEED_CALCULATE_DELAY)
         {
             lastProgressSpeed
@@ -555,7 +564,8 @@ public void progressChanged(FileTransferProgressEvent event)
             this.lastTransferredBytes = transferredBytes;
         }
 
-        if ((progressTimestamp - lastEstimatedTimeTimestamp)
+        if (event.getBytesPerSecond() < 0
+            && (progressTimestamp - lastEstimatedTimeTimestamp)
                 >= SPEED_CALCULATE_DELAY
             && lastProgressSpeed > 0)
         {
@@ -0,0 +1,587 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.gui.main.contactlist;
+
+import java.util.*;
+import java.util.function.*;
+
+import javax.swing.*;
+import javax.swing.Timer;
+import javax.swing.tree.*;
+
+import net.java.sip.communicator.service.gui.*;
+
+/**
+ * Collects the changes to the contact list made outside the event dispatch
+ * thread and applies them together once per frame. The updates of a
+ * <tt>UIContact</tt> are merged so that only the last one is applied, the
+ * refreshes of the contacts of a group are fired as one tree model event and
+ * every group is sorted at most once per frame, no matter how many presence
+ * changes arrived in between.
+ */
+public class ContactListUpdateQueue
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>ContactListUpdateQueue</tt> class
+     * and its instances for logging output.
+     */
+    private static final org.slf4j.Logger logger
+        = org.slf4j.LoggerFactory.getLogger(ContactListUpdateQueue.class);
+
+    /**
+     * The time in milliseconds updates are collected before being applied,
+     * about one frame.
+     */
+    static final int FRAME_INTERVAL = 16;
+
+    /**
+     * The number of sorted additions to a group in one batch from which the
+     * contacts are appended and the group sorted once instead of inserting
+     * each of them at its place.
+     */
+    static final int BULK_SORT_THRESHOLD = 8;
+
+    /**
+     * Refreshes the node of a contact.
+     */
+    static final int REFRESH = 0;
+
+    /**
+     * Adds a contact.
+     */
+    static final int ADD = 1;
+
+    /**
+     * Removes a contact.
+     */
+    static final int REMOVE = 2;
+
+    /**
+     * The pending updates by contact, in the order they were first queued.
+     */
+    private LinkedHashMap<UIContact, Update> updates = new LinkedHashMap<>();
+
+    /**
+     * The groups waiting to be sorted.
+     */
+    private LinkedHashSet<GroupNode> sorts = new LinkedHashSet<>();
+
+    /**
+     * Applies the batches on the event dispatch thread.
+     */
+    private final Consumer<Batch> applier;
+
+    /**
+     * Fires once per frame while updates are pending.
+     */
+    private final Timer timer;
+
+    /**
+     * The number of updates queued since the last batch, including the merged
+     * ones.
+     */
+    private int queued = 0;
+
+    /**
+     * The number of batches applied.
+     */
+    private long batchCount = 0;
+
+    /**
+     * The number of updates applied.
+     */
+    private long appliedCount = 0;
+
+    /**
+     * The number of updates merged into a pending update of the same contact.
+     */
+    private long mergedCount = 0;
+
+    /**
+     * The largest number of updates applied in one batch.
+     */
+    private int maxBatchSize = 0;
+
+    /**
+     * Creates a queue applying its updates to a contact list.
+     *
+     * @param contactList the contact list
+     */
+    public ContactListUpdateQueue(TreeContactList contactList)
+    {
+        this(batch -> batch.apply(contactList), FRAME_INTERVAL);
+    }
+
+    /**
+     * Creates a queue handing its batches to an applier.
+     *
+     * @param applier applies the batches on the event dispatch thread
+     * @param frameInterval the time in milliseconds updates are collected
+     * before being applied
+     */
+    ContactListUpdateQueue(Consumer<Batch> applier, int frameInterval)
+    {
+        this.applier = applier;
+
+        timer = new Timer(frameInterval, e -> flush());
+        timer.setRepeats(false);
+    }
+
+    /**
+     * Queues the addition of a contact.
+     *
+     * @param contact the contact to add
+     * @param group the group to add it to
+     * @param isContactSorted whether the contact is inserted at its sorted
+     * place
+     * @param isGroupSorted whether the group is inserted at its sorted place
+     * if it has to be created
+     */
+    public void add(UIContact contact,
+                    UIGroup group,
+                    boolean isContactSorted,
+                    boolean isGroupSorted)
+    {
+        Update update = new Update(contact, ADD);
+
+        update.group = group;
+        update.isContactSorted = isContactSorted;
+        update.isGroupSorted = isGroupSorted;
+        queue(update);
+    }
+
+    /**
+     * Queues the removal of a contact.
+     *
+     * @param contact the contact to remove
+     * @param removeEmptyGroup whether to remove its group if it becomes empty
+     */
+    public void remove(UIContact contact, boolean removeEmptyGroup)
+    {
+        Update update = new Update(contact, REMOVE);
+
+        update.removeEmptyGroup = removeEmptyGroup;
+        queue(update);
+    }
+
+    /**
+     * Queues the refresh of the node of a contact.
+     *
+     * @param contact the contact to refresh
+     */
+    public void refresh(UIContact contact)
+    {
+        queue(new Update(contact, REFRESH));
+    }
+
+    /**
+     * Queues the sorting of the children of a group.
+     *
+     * @param groupNode the group to sort
+     */
+    public void sort(GroupNode groupNode)
+    {
+        synchronized (this)
+        {
+            queued++;
+            if (!sorts.add(groupNode))
+                mergedCount++;
+        }
+        timer.start();
+    }
+
+    /**
+     * Drops all pending updates, for example when the contact list is
+     * cleared.
+     */
+    public synchronized void clear()
+    {
+        updates.clear();
+        sorts.clear();
+        queued = 0;
+    }
+
+    /**
+     * Queues an update, merging it with the pending update of the same
+     * contact.
+     *
+     * @param update the update
+     */
+    private void queue(Update update)
+    {
+        synchronized (this)
+        {
+            queued++;
+
+            Update pending = updates.get(update.contact);
+
+            if (pending != null)
+            {
+                mergedCount++;
+                // a refresh is implied by a pending addition or removal
+                if (update.type == REFRESH)
+                    return;
+
+                // a contact removed and added again may have moved to
+                // another group, so it still has to be removed first
+                if (update.type == ADD
+                    && (pending.type == REMOVE || pending.removeFirst))
+                {
+                    update.removeFirst = true;
+                    update.removeEmptyGroup = pending.removeEmptyGroup;
+                }
+            }
+            updates.put(update.contact, update);
+        }
+        timer.start();
+    }
+
+    /**
+     * Takes the pending updates and applies them.
+     */
+    private void flush()
+    {
+        Batch batch = drain();
+
+        if (batch == null)
+            return;
+
+        long start = System.nanoTime();
+
+        try
+        {
+            applier.accept(batch);
+        }
+        catch (Throwable t)
+        {
+            logger.error("Failed to apply contact list updates", t);
+        }
+
+        if (logger.isTraceEnabled())
+        {
+            logger.trace("Applied " + batch.updates.size() + " of "
+                + batch.queued + " contact list updates and "
+                + batch.sorts.size() + " group sorts in "
+                + (System.nanoTime() - start) / 1000 + " us");
+        }
+    }
+
+    /**
+     * Takes the pending updates.
+     *
+     * @return the pending updates or <tt>null</tt> if there are none
+     */
+    synchronized Batch drain()
+    {
+        if (updates.isEmpty() && sorts.isEmpty())
+            return null;
+
+        Batch batch = new Batch(updates.values(), sorts, queued);
+
+        updates = new LinkedHashMap<>();
+        sorts = new LinkedHashSet<>();
+        queued = 0;
+
+        batchCount++;
+        appliedCount += batch.updates.size();
+        maxBatchSize = Math.max(maxBatchSize, batch.updates.size());
+
+        return batch;
+    }
+
+    /**
+     * Returns the number of pending updates.
+     *
+     * @return the number of pending updates
+     */
+    public synchronized int getPendingCount()
+    {
+        return updates.size() + sorts.size();
+    }
+
+    /**
+     * Returns the number of batches applied.
+     *
+     * @return the number of batches applied
+     */
+    public synchronized long getBatchCount()
+    {
+        return batchCount;
+    }
+
+    /**
+     * Returns the number of contact updates applied.
+     *
+     * @return the number of contact updates applied
+     */
+    public synchronized long getAppliedCount()
+    {
+        return appliedCount;
+    }
+
+    /**
+     * Returns the number of updates merged into a pending update.
+     *
+     * @return the number of merged updates
+     */
+    public synchronized long getMergedCount()
+    {
+        return mergedCount;
+    }
+
+    /**
+     * Returns the largest number of contact updates applied in one batch.
+     *
+     * @return the largest batch size
+     */
+    public synchronized int getMaxBatchSize()
+    {
+        return maxBatchSize;
+    }
+
+    /**
+     * A pending update of a contact.
+     */
+    static class Update
+    {
+        /**
+         * The contact.
+         */
+        final UIContact contact;
+
+        /**
+         * One of {@link #ADD}, {@link #REMOVE} and {@link #REFRESH}.
+         */
+        final int type;
+
+        /**
+         * The group to add the contact to.
+         */
+        UIGroup group;
+
+        /**
+         * Whether the added contact is inserted at its sorted place.
+         */
+        boolean isContactSorted;
+
+        /**
+         * Whether the group of the added contact is inserted at its sorted
+         * place if it has to be created.
+         */
+        boolean isGroupSorted;
+
+        /**
+         * Whether the contact is removed before it is added.
+         */
+        boolean removeFirst;
+
+        /**
+         * Whether the group of the removed contact is removed if it becomes
+         * empty.
+         */
+        boolean removeEmptyGroup;
+
+        /**
+         * Creates an update.
+         *
+         * @param contact the contact
+         * @param type the type of the update
+         */
+        Update(UIContact contact, int type)
+        {
+            this.contact = contact;
+            this.type = type;
+        }
+    }
+
+    /**
+     * The updates applied together.
+     */
+    static class Batch
+    {
+        /**
+         * The contact updates, one per contact.
+         */
+        final List<Update> updates;
+
+        /**
+         * The groups to sort.
+         */
+        final Set<GroupNode> sorts;
+
+        /**
+         * The number of updates queued, including the merged ones.
+         */
+        final int queued;
+
+        /**
+         * Creates a batch.
+         *
+         * @param updates the contact updates
+         * @param sorts the groups to sort
+         * @param queued the number of queued updates
+         */
+        Batch(Collection<Update> updates, Set<GroupNode> sorts, int queued)
+        {
+            this.updates = new ArrayList<>(updates);
+            this.sorts = sorts;
+            this.queued = queued;
+        }
+
+        /**
+         * Applies the updates to a contact list. Must be called on the event
+         * dispatch thread.
+         *
+         * @param contactList the contact list
+         */
+        void apply(TreeContactList contactList)
+        {
+            Set<GroupNode> sorts = new LinkedHashSet<>(this.sorts);
+            Map<UIGroup, Integer> sortedAdds = new HashMap<>();
+
+            for (Update update : updates)
+            {
+                if (update.type == ADD && update.isContactSorted)
+                    sortedAdds.merge(update.group, 1, Integer::sum);
+            }
+
+            Map<GroupNode, List<TreeNode>> refreshes = new LinkedHashMap<>();
+
+            for (Update update : updates)
+            {
+                switch (update.type)
+                {
+                case ADD:
+                    if (update.removeFirst)
+                    {
+                        contactList.removeContact(
+                            update.contact, update.removeEmptyGroup);
+                    }
+
+                    boolean bulk
+                        = update.isContactSorted
+                            && sortedAdds.get(update.group)
+                                >= BULK_SORT_THRESHOLD;
+
+                    contactList.addContact(
+                        update.contact,
+                        update.group,
+                        update.isContactSorted && !bulk,
+                        update.isGroupSorted);
+
+                    if (bulk)
+                    {
+                        GroupNode groupNode = getGroupNode(update.contact);
+
+                        if (groupNode != null)
+                            sorts.add(groupNode);
+                    }
+                    break;
+                case REMOVE:
+                    contactList.removeContact(
+                        update.contact, update.removeEmptyGroup);
+                    break;
+                default:
+                    if (!(update.contact instanceof UIContactImpl))
+                        break;
+
+                    ContactNode contactNode;
+
+                    synchronized (update.contact)
+                    {
+                        contactNode
+                            = ((UIContactImpl) update.contact).getContactNode();
+                    }
+
+                    if (contactNode != null
+                        && contactNode.getParent() instanceof GroupNode)
+                    {
+                        refreshes.computeIfAbsent(
+                                (GroupNode) contactNode.getParent(),
+                                k -> new ArrayList<>())
+                            .add(contactNode);
+                    }
+                }
+            }
+
+            ContactListTreeModel treeModel = contactList.getTreeModel();
+
+            for (Map.Entry<GroupNode, List<TreeNode>> e
+                    : refreshes.entrySet())
+            {
+                GroupNode groupNode = e.getKey();
+
+                // sorting fires a change of all children
+                if (sorts.contains(groupNode))
+                    continue;
+
+                List<TreeNode> nodes = e.getValue();
+                int[] indexes = new int[nodes.size()];
+                int count = 0;
+
+                for (TreeNode node : nodes)
+                {
+                    int index = groupNode.getIndex(node);
+
+                    if (index != -1)
+                        indexes[count++] = index;
+                }
+
+                if (count > 0)
+                {
+                    indexes = Arrays.copyOf(indexes, count);
+                    Arrays.sort(indexes);
+                    treeModel.nodesChanged(groupNode, indexes);
+                }
+            }
+
+            for (GroupNode groupNode : sorts)
+            {
+                if (groupNode.getParent() != null
+                    || groupNode == treeModel.getRoot())
+                {
+                    groupNode.sortChildren();
+                }
+            }
+        }
+
+        /**
+         * Returns the group node a contact was added to.
+         *
+         * @param contact the contact
+         * @return the group node or <tt>null</tt>
+         */
+        private static GroupNode getGroupNode(UIContact contact)
+        {
+            if (!(contact instanceof UIContactImpl))
+                return null;
+
+            ContactNode contactNode;
+
+            synchronized (contact)
+            {
+                contactNode = ((UIContactImpl) contact).getContactNode();
+            }
+
+            return (contactNode != null
+                    && contactNode.getParent() instanceof GroupNode)
+                ? (GroupNode) contactNode.getParent()
+                : null;
+        }
+    }
+}
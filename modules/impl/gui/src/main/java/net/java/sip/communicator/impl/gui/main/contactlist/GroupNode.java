@@ -364,19 +364,31 @@ public void sort(final ContactListTreeModel treeModel)
             {
                 public void run()
                 {
-                    TreePath selectionPath = getLeadSelectionPath();
-                    int oldSelectionIndex = getLeadSelectionRow();
+                    sortChildren();
+                }
+            });
+        }
+    }
+
+    /**
+     * Sorts the children of this node right away, keeping the selection.
+     * Must be called on the event dispatch thread.
+     */
+    void sortChildren()
+    {
+        if (children == null)
+            return;
 
-                    children.sort(nodeComparator);
+        TreePath selectionPath = getLeadSelectionPath();
+        int oldSelectionIndex = getLeadSelectionRow();
 
-                    fireNodesChanged();
+        children.sort(nodeComparator);
 
-                    treeModel.getParentTree().setSelectionPath(selectionPath);
+        fireNodesChanged();
 
-                    refreshSelection(oldSelectionIndex, getLeadSelectionRow());
-                }
-            });
-        }
+        treeModel.getParentTree().setSelectionPath(selectionPath);
+
+        refreshSelection(oldSelectionIndex, getLeadSelectionRow());
     }
 
     /**
@@ -41,9 +41,15 @@
     protected String filterString;
 
     /**
-     * The pattern to filter.
+     * The filter string folded by {@link ContactSearchIndex#fold(String)}.
      */
-    protected Pattern filterPattern;
+    private String foldedFilterString;
+
+    /**
+     * The pattern to filter, created only for the contact sources which
+     * search by pattern.
+     */
+    private Pattern filterPattern;
 
     /**
      * The <tt>MetaContactListSource</tt> to search in.
@@ -108,7 +114,7 @@ public void applyFilter(FilterQuery filterQuery)
             // First add the MetaContactListSource
             filterQuery.addContactQuery(defaultQuery);
 
-            mclSource.startQuery(defaultQuery, filterPattern);
+            mclSource.startQuery(defaultQuery, filterString);
         }
         else if (sourceContactList.getDefaultFilter()
                     .equals(TreeContactList.historyFilter))
@@ -184,7 +190,7 @@ protected ContactQuery applyFilter(UIContactSource contactSource,
         if (sourceService instanceof ExtendedContactSourceService)
             contactQuery
                 = ((ExtendedContactSourceService) sourceService)
-                    .createContactQuery(filterPattern);
+                    .createContactQuery(getFilterPattern());
         else
             contactQuery = sourceService.createContactQuery(filterString);
 
@@ -243,23 +249,41 @@ public boolean isMatching(UIGroup uiGroup)
      */
     public void setFilterString(String filter)
     {
-        // First escape all special characters from the given filter string.
         this.filterString = filter;
+        this.foldedFilterString = ContactSearchIndex.fold(filter);
+        this.filterPattern = null;
+
+        this.isSearchingPhoneNumber
+            = GuiActivator.getPhoneNumberI18nService().isPhoneNumber(filter);
+    }
 
-        // Then create the pattern.
-        // By default, case-insensitive matching assumes that only characters
-        // in the US-ASCII charset are being matched, that's why we use
-        // the UNICODE_CASE flag to enable unicode case-insensitive matching.
-        // Sun Bug ID: 6486934 "RegEx case_insensitive match is broken"
-        this.filterPattern
+    /**
+     * Gets the pattern matching the filter string for the contact sources
+     * which search by pattern, creating it on first use.
+     *
+     * @return the pattern matching the filter string
+     */
+    private Pattern getFilterPattern()
+    {
+        Pattern pattern = filterPattern;
+
+        if (pattern == null && filterString != null)
+        {
+            // First escape all special characters from the filter string.
+            // By default, case-insensitive matching assumes that only
+            // characters in the US-ASCII charset are being matched, that's
+            // why we use the UNICODE_CASE flag to enable unicode
+            // case-insensitive matching.
+            // Sun Bug ID: 6486934 "RegEx case_insensitive match is broken"
+            pattern
                 = Pattern.compile(
                         Pattern.quote(filterString),
                         Pattern.MULTILINE
                             | Pattern.CASE_INSENSITIVE
                             | Pattern.UNICODE_CASE);
-
-        this.isSearchingPhoneNumber
-            = GuiActivator.getPhoneNumberI18nService().isPhoneNumber(filter);
+            filterPattern = pattern;
+        }
+        return pattern;
     }
 
     /**
@@ -270,8 +294,11 @@ public void setFilterString(String filter)
      */
     private boolean isMatching(String text)
     {
-        if (filterPattern != null && filterPattern.matcher(text).find())
+        if (foldedFilterString != null
+            && ContactSearchIndex.fold(text).contains(foldedFilterString))
+        {
             return true;
+        }
 
         if(isSearchingPhoneNumber && this.filterString != null)
             return GuiActivator.getPhoneNumberI18nService()
@@ -191,6 +191,13 @@
      */
     private Object previouslySelectedNode = null;
 
+    /**
+     * Applies the contact changes made outside the event dispatch thread
+     * once per frame.
+     */
+    private final ContactListUpdateQueue updateQueue
+        = new ContactListUpdateQueue(this);
+
     /**
      * Creates the <tt>TreeContactList</tt>.
      *
@@ -404,7 +411,7 @@ public void run()
                     return;
             }
 
-            groupNode.sort(treeModel);
+            updateQueue.sort(groupNode);
         }
     }
 
@@ -607,13 +614,7 @@ public void addContact( final UIContact contact,
     {
         if (!SwingUtilities.isEventDispatchThread())
         {
-            SwingUtilities.invokeLater(new Runnable()
-            {
-                public void run()
-                {
-                    addContact(contact, group, isContactSorted, isGroupSorted);
-                }
-            });
+            updateQueue.add(contact, group, isContactSorted, isGroupSorted);
             return;
         }
 
@@ -887,13 +888,7 @@ public void removeContact(  final UIContact contact,
     {
         if (!SwingUtilities.isEventDispatchThread())
         {
-            LowPriorityEventQueue.invokeLater(new Runnable()
-            {
-                public void run()
-                {
-                    removeContact(contact, removeEmptyGroup);
-                }
-            });
+            updateQueue.remove(contact, removeEmptyGroup);
             return;
         }
 
@@ -958,13 +953,7 @@ public void refreshContact(final UIContact contact)
     {
         if (!SwingUtilities.isEventDispatchThread())
         {
-            SwingUtilities.invokeLater(new Runnable()
-            {
-                public void run()
-                {
-                    refreshContact(contact);
-                }
-            });
+            updateQueue.refresh(contact);
             return;
         }
 
@@ -1087,6 +1076,7 @@ public void run()
     @Override
     public void removeAll()
     {
+        updateQueue.clear();
         treeModel.clear();
     }
 
@@ -2093,13 +2083,17 @@ private void setTreeModel(TreeModel treeModel)
     }
 
     /**
-     * Indicates that a node has been changed. Transfers the event to the
+     * Indicates that a node has been changed. The changes of contact nodes
+     * are queued and fired once per frame, the others are transferred to the
      * default tree model.
      * @param node the <tt>TreeNode</tt> that has been refreshed
      */
     public void nodeChanged(TreeNode node)
     {
-        treeModel.nodeChanged(node);
+        if (node instanceof ContactNode)
+            updateQueue.refresh(((ContactNode) node).getContactDescriptor());
+        else
+            treeModel.nodeChanged(node);
     }
 
     /**
@@ -2470,6 +2464,11 @@ else if (selectedObject instanceof GroupNode)
         }
     }
 
+    public ContactListUpdateQueue getUpdateQueue()
+    {
+        return updateQueue;
+    }
+
     public ContactListTreeModel getTreeModel()
     {
         return treeModel;
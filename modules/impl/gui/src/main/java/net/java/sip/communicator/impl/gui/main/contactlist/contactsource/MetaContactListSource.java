@@ -32,6 +32,7 @@
 import net.java.sip.communicator.plugin.desktoputil.*;
 import net.java.sip.communicator.service.contactlist.*;
 import net.java.sip.communicator.service.contactlist.event.*;
+import net.java.sip.communicator.service.contactsource.*;
 import net.java.sip.communicator.service.customcontactactions.*;
 import net.java.sip.communicator.service.gui.*;
 import net.java.sip.communicator.service.gui.event.*;
@@ -94,6 +95,18 @@
      */
     private int index = 0;
 
+    /**
+     * The search index over all <tt>MetaContact</tt>s, built on the first
+     * search and maintained from the <tt>MetaContactListService</tt> events.
+     */
+    private final ContactSearchIndex<MetaContact> searchIndex
+        = new ContactSearchIndex<>();
+
+    /**
+     * Whether {@link #searchIndex} has been built.
+     */
+    private boolean searchIndexBuilt = false;
+
     /**
      * The logger.
      */
@@ -227,6 +240,134 @@ public void run()
         }.start();
     }
 
+    /**
+     * Starts a query finding the <tt>MetaContact</tt>s whose display name or
+     * whose child contacts' display names or addresses contain the given
+     * string, ignoring case and diacritics. The search index is used instead
+     * of walking the contact list.
+     *
+     * @param query the query to be started
+     * @param filterString the string to search for
+     */
+    public void startQuery(final MetaContactQuery query,
+        final String filterString)
+    {
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                int resultCount = 0;
+
+                for (MetaContact metaContact : search(filterString))
+                {
+                    if (query.isCanceled())
+                        break;
+
+                    MetaContactGroup parentGroup
+                        = metaContact.getParentMetaContactGroup();
+
+                    // removed in the meantime
+                    if (parentGroup == null)
+                        continue;
+
+                    resultCount++;
+                    addQueryResult(
+                        metaContact, parentGroup, query, resultCount);
+                }
+
+                if (!query.isCanceled())
+                    query.fireQueryEvent(
+                        MetaContactQueryStatusEvent.QUERY_COMPLETED);
+                else
+                    query.fireQueryEvent(
+                        MetaContactQueryStatusEvent.QUERY_CANCELED);
+            }
+        }.start();
+    }
+
+    /**
+     * Finds the <tt>MetaContact</tt>s matching a string in the search index,
+     * building the index first if needed.
+     *
+     * @param filterString the string to search for
+     * @return the matching <tt>MetaContact</tt>s, best matches first
+     */
+    private List<MetaContact> search(String filterString)
+    {
+        synchronized (searchIndex)
+        {
+            if (!searchIndexBuilt)
+            {
+                indexGroup(GuiActivator.getContactListService().getRoot());
+                searchIndexBuilt = true;
+            }
+        }
+        return searchIndex.search(filterString);
+    }
+
+    /**
+     * Adds the <tt>MetaContact</tt>s of a group and its subgroups to the
+     * search index.
+     *
+     * @param group the <tt>MetaContactGroup</tt> to index
+     */
+    private void indexGroup(MetaContactGroup group)
+    {
+        Iterator<MetaContact> childContacts = group.getChildContacts();
+
+        while (childContacts.hasNext())
+            putInSearchIndex(childContacts.next());
+
+        Iterator<MetaContactGroup> subgroups = group.getSubgroups();
+
+        while (subgroups.hasNext())
+            indexGroup(subgroups.next());
+    }
+
+    /**
+     * Updates the strings a <tt>MetaContact</tt> is found by in the search
+     * index.
+     *
+     * @param metaContact the <tt>MetaContact</tt>
+     */
+    private void putInSearchIndex(MetaContact metaContact)
+    {
+        List<String> searchStrings = new ArrayList<>();
+        Iterator<Contact> contacts = metaContact.getContacts();
+
+        while (contacts.hasNext())
+        {
+            Contact contact = contacts.next();
+
+            searchStrings.add(contact.getDisplayName());
+            searchStrings.add(contact.getAddress());
+        }
+
+        searchIndex.put(
+            metaContact, metaContact.getDisplayName(), searchStrings);
+    }
+
+    /**
+     * Updates a <tt>MetaContact</tt> in the search index, if it is built.
+     *
+     * @param metaContact the changed <tt>MetaContact</tt>
+     * @param removed whether the <tt>MetaContact</tt> was removed
+     */
+    private void updateSearchIndex(MetaContact metaContact, boolean removed)
+    {
+        synchronized (searchIndex)
+        {
+            if (!searchIndexBuilt || metaContact == null)
+                return;
+
+            if (removed)
+                searchIndex.remove(metaContact);
+            else
+                putInSearchIndex(metaContact);
+        }
+    }
+
     /**
      * Filters the children in the given <tt>MetaContactGroup</tt> to match the
      * given <tt>filterPattern</tt> and stores the result in the given
@@ -251,48 +392,7 @@ public void queryMetaContactSource(Pattern filterPattern,
             if (isMatching(filterPattern, metaContact))
             {
                 resultCount++;
-
-                if (resultCount <= INITIAL_CONTACT_COUNT)
-                {
-                    UIGroup uiGroup = null;
-                    if (!MetaContactListSource.isRootGroup(parentGroup))
-                    {
-                        synchronized (parentGroup)
-                        {
-                            uiGroup = MetaContactListSource
-                                .getUIGroup(parentGroup);
-                            if (uiGroup == null)
-                                uiGroup = MetaContactListSource
-                                    .createUIGroup(parentGroup);
-                        }
-                    }
-
-                    UIContact newUIContact;
-                    synchronized (metaContact)
-                    {
-                        newUIContact
-                            = MetaContactListSource.getUIContact(metaContact);
-
-                        if (newUIContact == null)
-                        {
-                            newUIContact
-                                = MetaContactListSource
-                                    .createUIContact(metaContact);
-                        }
-
-                        GuiActivator.getContactList().addContact(
-                            newUIContact,
-                            uiGroup,
-                            true,
-                            true);
-                    }
-
-                    query.setInitialResultCount(resultCount);
-                }
-                else
-                {
-                    query.fireQueryEvent(metaContact);
-                }
+                addQueryResult(metaContact, parentGroup, query, resultCount);
             }
         }
 
@@ -309,6 +409,63 @@ public void queryMetaContactSource(Pattern filterPattern,
         }
     }
 
+    /**
+     * Adds a <tt>MetaContact</tt> matching a query to the contact list if it
+     * is among the first results or reports it to the query otherwise.
+     *
+     * @param metaContact the matching <tt>MetaContact</tt>
+     * @param parentGroup the parent group of the <tt>MetaContact</tt>
+     * @param query the query
+     * @param resultCount the number of results so far, including this one
+     */
+    private void addQueryResult(MetaContact metaContact,
+                                MetaContactGroup parentGroup,
+                                MetaContactQuery query,
+                                int resultCount)
+    {
+        if (resultCount <= INITIAL_CONTACT_COUNT)
+        {
+            UIGroup uiGroup = null;
+            if (!MetaContactListSource.isRootGroup(parentGroup))
+            {
+                synchronized (parentGroup)
+                {
+                    uiGroup = MetaContactListSource
+                        .getUIGroup(parentGroup);
+                    if (uiGroup == null)
+                        uiGroup = MetaContactListSource
+                            .createUIGroup(parentGroup);
+                }
+            }
+
+            UIContact newUIContact;
+            synchronized (metaContact)
+            {
+                newUIContact
+                    = MetaContactListSource.getUIContact(metaContact);
+
+                if (newUIContact == null)
+                {
+                    newUIContact
+                        = MetaContactListSource
+                            .createUIContact(metaContact);
+                }
+
+                GuiActivator.getContactList().addContact(
+                    newUIContact,
+                    uiGroup,
+                    true,
+                    true);
+            }
+
+            query.setInitialResultCount(resultCount);
+        }
+        else
+        {
+            query.fireQueryEvent(metaContact);
+        }
+    }
+
     /**
      * Checks if the given <tt>metaContact</tt> is matching the given
      * <tt>filterPattern</tt>.
@@ -449,11 +606,7 @@ public void contactPresenceStatusChanged(
             }
             else
             {
-                synchronized (uiContact)
-                {
-                    GuiActivator.getContactList()
-                        .nodeChanged(uiContact.getContactNode());
-                }
+                GuiActivator.getContactList().refreshContact(uiContact);
             }
 
         }
@@ -486,7 +639,10 @@ public void childContactsReordered(MetaContactGroupEvent evt)
                 GroupNode groupNode = uiGroup.getGroupNode();
 
                 if (groupNode != null)
-                    groupNode.sort(treeModel);
+                {
+                    GuiActivator.getContactList().getUpdateQueue()
+                        .sort(groupNode);
+                }
             }
 
         }
@@ -499,6 +655,8 @@ public void childContactsReordered(MetaContactGroupEvent evt)
      */
     public void metaContactAdded(final MetaContactEvent evt)
     {
+        updateSearchIndex(evt.getSourceMetaContact(), false);
+
         metaContactAdded(evt.getSourceMetaContact(),
                         evt.getParentGroup());
     }
@@ -637,6 +795,13 @@ public void metaContactGroupRemoved(final MetaContactGroupEvent evt)
     {
         MetaContactGroup metaGroup = evt.getSourceMetaContactGroup();
 
+        // the contacts of the group go with it, rebuild on the next search
+        synchronized (searchIndex)
+        {
+            searchIndex.clear();
+            searchIndexBuilt = false;
+        }
+
         UIGroup uiGroup;
         synchronized (metaGroup)
         {
@@ -656,6 +821,8 @@ public void metaContactModified(final MetaContactModifiedEvent evt)
     {
         MetaContact metaContact = evt.getSourceMetaContact();
 
+        updateSearchIndex(metaContact, false);
+
         UIContactImpl uiContact;
         synchronized (metaContact)
         {
@@ -766,6 +933,8 @@ public void metaContactRemoved(final MetaContactEvent evt)
     {
         MetaContact metaContact = evt.getSourceMetaContact();
 
+        updateSearchIndex(metaContact, true);
+
         UIContact uiContact;
         synchronized (metaContact)
         {
@@ -786,6 +955,8 @@ public void metaContactRenamed(final MetaContactRenamedEvent evt)
     {
         MetaContact metaContact = evt.getSourceMetaContact();
 
+        updateSearchIndex(metaContact, false);
+
         UIContactImpl uiContact;
         synchronized (metaContact)
         {
@@ -841,6 +1012,8 @@ public void protoContactAdded(ProtoContactEvent evt)
     {
         final MetaContact metaContact = evt.getNewParent();
 
+        updateSearchIndex(metaContact, false);
+
         UIContact parentUIContact;
         boolean parentUIContactCreated = false;
         synchronized (metaContact)
@@ -898,6 +1071,8 @@ public void protoContactModified(ProtoContactEvent evt)
     {
         MetaContact metaContact = evt.getNewParent();
 
+        updateSearchIndex(metaContact, false);
+
         UIContactImpl uiContact;
         synchronized (metaContact)
         {
@@ -926,6 +1101,9 @@ public void protoContactMoved(ProtoContactEvent evt)
         final MetaContact oldParent = evt.getOldParent();
         final MetaContact newParent = evt.getNewParent();
 
+        updateSearchIndex(oldParent, oldParent.getContactCount() == 0);
+        updateSearchIndex(newParent, false);
+
         UIContact oldUIContact;
         synchronized (oldParent)
         {
@@ -998,6 +1176,8 @@ public void protoContactRemoved(ProtoContactEvent evt)
     {
         final MetaContact oldParent = evt.getOldParent();
 
+        updateSearchIndex(oldParent, false);
+
         UIContactImpl oldUIContact;
         synchronized (oldParent)
         {
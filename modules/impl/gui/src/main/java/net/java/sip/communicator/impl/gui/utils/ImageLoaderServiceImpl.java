@@ -22,31 +22,19 @@
 import net.java.sip.communicator.service.gui.*;
 import net.java.sip.communicator.service.resources.*;
 
-import javax.imageio.*;
 import java.awt.image.*;
 import java.net.*;
-import java.util.*;
 
 /**
- * Service responsible for loading images and possibly cache them.
+ * Service responsible for loading images and possibly cache them. The images
+ * are kept in the <tt>ImageCache</tt> shared with the resource management
+ * service.
  *
  * @author Damian Minkov
  */
 public class ImageLoaderServiceImpl
     implements ImageLoaderService<BufferedImage>
 {
-    /**
-     * The <tt>Logger</tt> used by the <tt>ImageLoaderServiceImpl</tt> class
-     * and its instances for logging output.
-     */
-    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ImageLoaderServiceImpl.class);
-
-    /**
-     * Stores all already loaded images.
-     */
-    private static final Map<ImageID, BufferedImage> loadedImages =
-        new Hashtable<ImageID, BufferedImage>();
-
     /**
      * Loads an image from a given image identifier.
      *
@@ -55,32 +43,9 @@
      */
     public BufferedImage getImage(ImageID imageID)
     {
-        BufferedImage image = null;
-
-        if (loadedImages.containsKey(imageID))
-        {
-            image = loadedImages.get(imageID);
-        }
-        else
-        {
-            URL path = GuiActivator.getResources().getImageURL(imageID.getId());
-
-            if (path != null)
-            {
-                try
-                {
-                    image = ImageIO.read(path);
-
-                    loadedImages.put(imageID, image);
-                }
-                catch (Exception ex)
-                {
-                    logger.error("Failed to load image: " + path, ex);
-                }
-            }
-        }
+        URL path = GuiActivator.getResources().getImageURL(imageID.getId());
 
-        return image;
+        return ImageCache.getInstance().getBufferedImage(path);
     }
 
     /**
@@ -105,6 +70,6 @@ public byte[] getImageBytes(ImageID imageID)
      */
     public void clearCache()
     {
-        loadedImages.clear();
+        ImageCache.getInstance().clear();
     }
 }
@@ -0,0 +1,233 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.gui.main.call;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import junit.framework.*;
+import net.java.sip.communicator.service.protocol.*;
+
+/**
+ * Tests the caching and the coalescing of lookups of
+ * <tt>CallerIdResolver</tt> with a stub searcher.
+ */
+public class CallerIdResolverTest
+    extends TestCase
+{
+    /**
+     * The number of searches started.
+     */
+    private final AtomicInteger searches = new AtomicInteger();
+
+    /**
+     * Released to let the searches complete.
+     */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    /**
+     * The display names the searcher finds by address.
+     */
+    private final Map<String, String> names = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a resolver using the stub searcher.
+     *
+     * @param positiveTtl the time in nanoseconds found names are cached
+     * @return the resolver
+     */
+    private CallerIdResolver createResolver(long positiveTtl)
+    {
+        return new CallerIdResolver(
+            (address, listener) ->
+            {
+                searches.incrementAndGet();
+                try
+                {
+                    release.await(10, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException ex)
+                {
+                    return;
+                }
+
+                String name = names.get(address);
+
+                if (name != null)
+                    listener.displayNameUpdated(name);
+            },
+            address -> address.toLowerCase(),
+            positiveTtl,
+            TimeUnit.MINUTES.toNanos(1));
+    }
+
+    public void testConcurrentLookupsAreCoalesced()
+        throws Exception
+    {
+        CallerIdResolver resolver
+            = createResolver(TimeUnit.MINUTES.toNanos(1));
+        Listener first = new Listener();
+        Listener second = new Listener();
+
+        names.put("alice@example.com", "Alice");
+
+        assertNull(resolver.resolve("alice@example.com", first, 500));
+        assertNull(resolver.resolve("ALICE@example.com", second, 500));
+        release.countDown();
+
+        assertEquals("Alice", first.names.poll(5, TimeUnit.SECONDS));
+        assertEquals("Alice", second.names.poll(5, TimeUnit.SECONDS));
+        assertEquals(1, searches.get());
+    }
+
+    public void testCachedResultsAreReturnedImmediately()
+        throws Exception
+    {
+        CallerIdResolver resolver
+            = createResolver(TimeUnit.MINUTES.toNanos(1));
+
+        names.put("1234", "Bob");
+        release.countDown();
+
+        assertEquals("Bob", resolver.resolve("1234", null, 5000));
+        assertEquals("Bob", resolver.resolve("1234", null, 0));
+        assertEquals("Bob", resolver.resolve("1234", new Listener(), 0));
+        assertEquals(1, searches.get());
+    }
+
+    public void testMissesAreCached()
+    {
+        CallerIdResolver resolver
+            = createResolver(TimeUnit.MINUTES.toNanos(1));
+
+        release.countDown();
+
+        assertNull(resolver.resolve("unknown", null, 5000));
+        assertNull(resolver.resolve("unknown", null, 0));
+        assertEquals(1, searches.get());
+    }
+
+    public void testExpiredResultsAreRefreshedInTheBackground()
+        throws Exception
+    {
+        CallerIdResolver resolver = createResolver(1);
+        Listener listener = new Listener();
+
+        names.put("carol", "Carol");
+        release.countDown();
+
+        assertEquals("Carol", resolver.resolve("carol", null, 5000));
+
+        names.put("carol", "Carol Smith");
+
+        // the stale name is returned and the listener gets the new one
+        assertEquals("Carol", resolver.resolve("carol", listener, 0));
+        assertEquals("Carol Smith", listener.names.poll(5, TimeUnit.SECONDS));
+        assertEquals(2, searches.get());
+    }
+
+    public void testWaitIsBounded()
+    {
+        CallerIdResolver resolver
+            = createResolver(TimeUnit.MINUTES.toNanos(1));
+
+        names.put("dave", "Dave");
+
+        long start = System.nanoTime();
+
+        assertNull(resolver.resolve("dave", null, 50));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        release.countDown();
+    }
+
+    public void testKeys()
+    {
+        PhoneNumberI18nService phoneNumbers = new PhoneNumberI18nService()
+        {
+            public String normalize(String possibleNumber)
+            {
+                return possibleNumber.replaceAll("[^+0-9]", "");
+            }
+
+            public String formatForDisplay(String phoneNumber)
+            {
+                return phoneNumber;
+            }
+
+            public boolean phoneNumbersMatch(String a, String b)
+            {
+                return normalize(a).equals(normalize(b));
+            }
+
+            public boolean isPhoneNumber(String possibleNumber)
+            {
+                return possibleNumber.matches("\\+?[0-9 ()-]+");
+            }
+        };
+
+        // only the scheme and the parameters are dropped
+        assertEquals("alice@example.com",
+            CallerIdResolver.getKey(
+                "sip:Alice@Example.com;transport=tcp", phoneNumbers));
+        assertEquals("alice@example.com",
+            CallerIdResolver.getKey(
+                "<sips:alice@example.com?subject=x>", phoneNumbers));
+        assertFalse(
+            CallerIdResolver.getKey("sip:alice@example.com", phoneNumbers)
+                .equals(CallerIdResolver.getKey(
+                    "sip:alice@example.org", phoneNumbers)));
+        assertEquals("alice@example.com",
+            CallerIdResolver.getKey("alice@example.com", null));
+
+        // phone numbers match whatever gateway they come through
+        assertEquals("+4930123",
+            CallerIdResolver.getKey(
+                "sip:+49 30 123@gw1.example.com;user=phone", phoneNumbers));
+        assertEquals(
+            CallerIdResolver.getKey("tel:+4930123", phoneNumbers),
+            CallerIdResolver.getKey(
+                "sip:+4930123@gw2.example.com", phoneNumbers));
+    }
+
+    /**
+     * Collects the display names it is notified of.
+     */
+    private static class Listener
+        implements CallManager.DetailsResolveListener
+    {
+        final BlockingQueue<String> names = new LinkedBlockingQueue<>();
+
+        @Override
+        public void displayNameUpdated(String displayName)
+        {
+            names.add(displayName);
+        }
+
+        @Override
+        public void imageUpdated(byte[] image)
+        {
+        }
+
+        @Override
+        public boolean isInterested()
+        {
+            return true;
+        }
+    }
+}
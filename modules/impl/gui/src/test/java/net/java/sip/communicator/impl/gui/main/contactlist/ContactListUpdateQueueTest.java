@@ -0,0 +1,207 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.gui.main.contactlist;
+
+import java.awt.*;
+import java.util.*;
+import java.util.List;
+
+import javax.swing.*;
+
+import junit.framework.*;
+import net.java.sip.communicator.impl.gui.main.contactlist.ContactListUpdateQueue.*;
+import net.java.sip.communicator.service.gui.*;
+import net.java.sip.communicator.service.protocol.*;
+
+/**
+ * Tests the merging of the updates queued in a
+ * <tt>ContactListUpdateQueue</tt>.
+ */
+public class ContactListUpdateQueueTest
+    extends TestCase
+{
+    /**
+     * The queue under test. Its frame never elapses during a test, the
+     * batches are drained by the tests.
+     */
+    private final ContactListUpdateQueue queue
+        = new ContactListUpdateQueue(batch -> {}, Integer.MAX_VALUE);
+
+    public void testRefreshesOfAContactAreMerged()
+    {
+        UIContact contact = new TestContact();
+
+        for (int i = 0; i < 100; i++)
+            queue.refresh(contact);
+
+        assertEquals(1, queue.getPendingCount());
+
+        Batch batch = queue.drain();
+
+        assertEquals(1, batch.updates.size());
+        assertEquals(ContactListUpdateQueue.REFRESH,
+            batch.updates.get(0).type);
+        assertEquals(100, batch.queued);
+        assertEquals(99, queue.getMergedCount());
+        assertNull(queue.drain());
+    }
+
+    public void testRefreshDoesNotReplaceAddOrRemove()
+    {
+        UIContact added = new TestContact();
+        UIContact removed = new TestContact();
+
+        queue.add(added, null, true, true);
+        queue.refresh(added);
+        queue.remove(removed, true);
+        queue.refresh(removed);
+
+        List<Update> updates = queue.drain().updates;
+
+        assertEquals(2, updates.size());
+        assertEquals(ContactListUpdateQueue.ADD, updates.get(0).type);
+        assertEquals(ContactListUpdateQueue.REMOVE, updates.get(1).type);
+    }
+
+    public void testLastUpdateWinsInFirstQueuedOrder()
+    {
+        UIContact first = new TestContact();
+        UIContact second = new TestContact();
+
+        queue.add(first, null, true, true);
+        queue.add(second, null, true, true);
+        queue.remove(first, false);
+
+        List<Update> updates = queue.drain().updates;
+
+        assertEquals(2, updates.size());
+        assertSame(first, updates.get(0).contact);
+        assertEquals(ContactListUpdateQueue.REMOVE, updates.get(0).type);
+        assertFalse(updates.get(0).removeEmptyGroup);
+        assertSame(second, updates.get(1).contact);
+    }
+
+    public void testAddAfterRemoveRemovesFirst()
+    {
+        UIContact contact = new TestContact();
+
+        queue.remove(contact, true);
+        queue.add(contact, null, false, true);
+        queue.refresh(contact);
+        queue.add(contact, null, true, true);
+
+        List<Update> updates = queue.drain().updates;
+
+        assertEquals(1, updates.size());
+
+        Update update = updates.get(0);
+
+        assertEquals(ContactListUpdateQueue.ADD, update.type);
+        assertTrue(update.removeFirst);
+        assertTrue(update.removeEmptyGroup);
+        assertTrue(update.isContactSorted);
+    }
+
+    public void testClearAndStatistics()
+    {
+        queue.refresh(new TestContact());
+        queue.refresh(new TestContact());
+        queue.drain();
+        queue.refresh(new TestContact());
+        queue.clear();
+
+        assertEquals(0, queue.getPendingCount());
+        assertNull(queue.drain());
+        assertEquals(1, queue.getBatchCount());
+        assertEquals(2, queue.getAppliedCount());
+        assertEquals(2, queue.getMaxBatchSize());
+    }
+
+    /**
+     * A <tt>UIContact</tt> used as a key only.
+     */
+    private static class TestContact
+        extends UIContact
+    {
+        public Object getDescriptor()
+        {
+            return null;
+        }
+
+        public String getDisplayName()
+        {
+            return null;
+        }
+
+        public String getDisplayDetails()
+        {
+            return null;
+        }
+
+        public int getSourceIndex()
+        {
+            return 0;
+        }
+
+        public ExtendedTooltip getToolTip()
+        {
+            return null;
+        }
+
+        public Component getRightButtonMenu()
+        {
+            return null;
+        }
+
+        public UIGroup getParentGroup()
+        {
+            return null;
+        }
+
+        public void setParentGroup(UIGroup parentGroup)
+        {
+        }
+
+        public Iterator<String> getSearchStrings()
+        {
+            return null;
+        }
+
+        public UIContactDetail getDefaultContactDetail(
+            Class<? extends OperationSet> opSetClass)
+        {
+            return null;
+        }
+
+        public List<UIContactDetail> getContactDetailsForOperationSet(
+            Class<? extends OperationSet> opSetClass)
+        {
+            return null;
+        }
+
+        public List<UIContactDetail> getContactDetails()
+        {
+            return null;
+        }
+
+        public Collection<? extends JButton> getContactCustomActionButtons()
+        {
+            return null;
+        }
+    }
+}
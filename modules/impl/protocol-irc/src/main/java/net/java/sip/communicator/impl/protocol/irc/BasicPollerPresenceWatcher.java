@@ -20,6 +20,8 @@
 import java.util.*;
 import java.util.concurrent.atomic.*;
 
+import net.java.sip.communicator.util.*;
+
 import com.ircclouds.irc.api.*;
 import com.ircclouds.irc.api.domain.*;
 import com.ircclouds.irc.api.domain.messages.*;
@@ -112,13 +114,13 @@ private void setUpPresenceWatcher(
         // presence reply listener.
         final List<List<String>> queryList =
             Collections.synchronizedList(new LinkedList<List<String>>());
-        final Timer presenceWatcher = new Timer();
-        irc.addListener(new PresenceReplyListener(presenceWatcher, queryList));
         final PresenceWatcherTask task =
             new PresenceWatcherTask(this.nickWatchList, queryList,
                 serverIdentity);
-        presenceWatcher.schedule(task, INITIAL_PRESENCE_WATCHER_DELAY,
-            PRESENCE_WATCHER_PERIOD);
+        final TimingWheel.Timeout presenceWatcher =
+            TimingWheel.getInstance().schedule(task,
+                INITIAL_PRESENCE_WATCHER_DELAY, PRESENCE_WATCHER_PERIOD);
+        irc.addListener(new PresenceReplyListener(presenceWatcher, queryList));
         logger.trace("Basic Poller presence watcher set up.");
     }
 
@@ -139,7 +141,7 @@ public void remove(String nick)
      *
      * @author Danny van Heumen
      */
-    private final class PresenceWatcherTask extends TimerTask
+    private final class PresenceWatcherTask implements Runnable
     {
         /**
          * Static overhead for ISON response message.
@@ -299,9 +301,9 @@ private int overhead()
         private static final int ERR_NOSUCHNICK = 401;
 
         /**
-         * Timer for presence watcher task.
+         * Timeout of the periodic presence watcher task.
          */
-        private final Timer timer;
+        private final TimingWheel.Timeout timer;
 
         /**
          * FIFO list containing list of nicks for each query.
@@ -311,10 +313,10 @@ private int overhead()
         /**
          * Constructor.
          *
-         * @param timer Timer for presence watcher task
+         * @param timer Timeout of the periodic presence watcher task
          * @param queryList List of executed queries with expected nicks lists.
          */
-        public PresenceReplyListener(final Timer timer,
+        public PresenceReplyListener(final TimingWheel.Timeout timer,
             final List<List<String>> queryList)
         {
             super(BasicPollerPresenceWatcher.this.irc,
@@ -24,6 +24,7 @@
 import net.java.sip.communicator.impl.protocol.irc.exception.*;
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.event.*;
+import net.java.sip.communicator.util.*;
 
 import com.ircclouds.irc.api.*;
 import com.ircclouds.irc.api.domain.*;
@@ -863,9 +864,9 @@ public void onServerNumericMessage(final ServerNumericMessage msg)
         private final ChatRoomIrcImpl chatroom;
 
         /**
-         * Presence task timer.
+         * Periodic presence task, or <tt>null</tt> if it is not active.
          */
-        private final Timer presenceTaskTimer = new Timer();
+        private TimingWheel.Timeout presenceTask = null;
 
         /**
          * Constructor. Instantiate listener for the provided chat room.
@@ -903,8 +904,8 @@ private ChatRoomListener(final ChatRoomIrcImpl chatroom,
         /**
          * Create periodic task for updating channel presence statuses.
          */
-        private void createPeriodicPresenceWatcher() {
-            final TimerTask task = new TimerTask()
+        private synchronized void createPeriodicPresenceWatcher() {
+            final Runnable task = new Runnable()
             {
                 @Override
                 public void run()
@@ -912,12 +913,24 @@ public void run()
                     irc.rawMessage("WHO " + chatroom.getIdentifier());
                 }
             };
-            this.presenceTaskTimer.schedule(task, TASK_INITIAL_DELAY,
-                TASK_PERIOD);
+            this.presenceTask = TimingWheel.getInstance().schedule(task,
+                TASK_INITIAL_DELAY, TASK_PERIOD);
             logger.debug("Scheduled periodic task for querying member presence "
                 + "for channel " + this.chatroom.getIdentifier());
         }
 
+        /**
+         * Cancel the periodic task for updating channel presence statuses.
+         */
+        private synchronized void cancelPeriodicPresenceWatcher()
+        {
+            if (this.presenceTask != null)
+            {
+                this.presenceTask.cancel();
+                this.presenceTask = null;
+            }
+        }
+
         /**
          * Event in case of topic change.
          *
@@ -1157,7 +1170,7 @@ public void onUserQuit(final QuitMessage msg)
             final String user = msg.getSource().getNick();
             if (localUser(user))
             {
-                this.presenceTaskTimer.cancel();
+                cancelPeriodicPresenceWatcher();
             }
             else
             {
@@ -1180,7 +1193,7 @@ public void onUserQuit(final QuitMessage msg)
         @Override
         public void onError(final ErrorMessage msg)
         {
-            this.presenceTaskTimer.cancel();
+            cancelPeriodicPresenceWatcher();
             super.onError(msg);
         }
 
@@ -1191,7 +1204,7 @@ public void onError(final ErrorMessage msg)
         @Override
         public void onClientError(final ClientErrorMessage msg)
         {
-            this.presenceTaskTimer.cancel();
+            cancelPeriodicPresenceWatcher();
             super.onClientError(msg);
         }
 
@@ -1348,7 +1361,7 @@ private void updateMemberPresence(ChatRoomMemberIrcImpl member,
          */
         private void leaveChatRoom()
         {
-            this.presenceTaskTimer.cancel();
+            cancelPeriodicPresenceWatcher();
             this.irc.deleteListener(this);
             ChannelManager.this.joined.remove(this.chatroom.getIdentifier());
             logger.debug("Leaving chat room " + this.chatroom.getIdentifier()
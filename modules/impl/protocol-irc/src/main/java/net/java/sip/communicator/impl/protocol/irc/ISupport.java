@@ -58,7 +58,23 @@
     /**
      * Maximum number of entries in the WATCH list supported by this server.
      */
-    WATCH;
+    WATCH,
+    /**
+     * Extended LIST command parameters supported by this server. The value
+     * contains a letter per supported extension, e.g. 'M' for mask search and
+     * 'U' for user count search.
+     */
+    ELIST;
+
+    /**
+     * ELIST extension for mask search.
+     */
+    public static final char ELIST_MASK = 'M';
+
+    /**
+     * ELIST extension for user count search.
+     */
+    public static final char ELIST_USERCOUNT = 'U';
 
     /**
      * Pattern for parsing ChanLimit ISUPPORT parameter.
@@ -95,4 +111,24 @@ public static void parseChanLimit(final Map<Character, Integer> destination,
             }
         }
     }
+
+    /**
+     * Test whether the ELIST ISUPPORT parameter value advertises the specified
+     * extension.
+     *
+     * @param elistValue the raw ISUPPORT server parameter value (may be null)
+     * @param extension the extension letter
+     * @return returns <tt>true</tt> if extension is supported, or
+     *         <tt>false</tt> otherwise
+     */
+    public static boolean supportsEList(final String elistValue,
+        final char extension)
+    {
+        if (elistValue == null)
+        {
+            return false;
+        }
+        return elistValue.toUpperCase(Locale.ROOT).indexOf(
+            Character.toUpperCase(extension)) >= 0;
+    }
 }
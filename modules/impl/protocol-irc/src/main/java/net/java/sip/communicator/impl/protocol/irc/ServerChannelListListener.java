@@ -0,0 +1,46 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.irc;
+
+/**
+ * Listener for incremental delivery of a server channel listing.
+ *
+ * Events are delivered on the IRC client's message processing thread, or on
+ * the requesting thread in case the listing is served from cache. Listeners
+ * should therefore return quickly.
+ */
+public interface ServerChannelListListener
+{
+    /**
+     * Event for a channel that is part of the listing.
+     *
+     * @param name the channel name
+     * @param userCount the number of users as reported by the server
+     * @param topic the channel topic, or <tt>null</tt> if none is set
+     */
+    void channelListed(String name, int userCount, String topic);
+
+    /**
+     * Event signaling the end of the listing.
+     *
+     * @param complete <tt>true</tt> if the listing completed normally, or
+     *            <tt>false</tt> if it was truncated by the server or aborted
+     *            because of a disconnect
+     */
+    void channelListCompleted(boolean complete);
+}
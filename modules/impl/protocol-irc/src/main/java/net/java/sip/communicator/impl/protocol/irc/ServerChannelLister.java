@@ -18,6 +18,10 @@
 package net.java.sip.communicator.impl.protocol.irc;
 
 import java.util.*;
+import java.util.regex.*;
+
+import net.java.sip.communicator.impl.protocol.irc.collection.*;
+import net.java.sip.communicator.util.*;
 
 import com.ircclouds.irc.api.*;
 import com.ircclouds.irc.api.domain.messages.*;
@@ -27,6 +31,10 @@
  * Server channel lister for retrieving initial list and managing channel cache
  * for its period as well as cleaning up cache after the cache has expired.
  *
+ * Channels are delivered incrementally to {@link ServerChannelListListener}s
+ * while the server reply is coming in. The most recent full listing is kept in
+ * a compact, prefix-searchable {@link ChannelListIndex}.
+ *
  * @author Danny van Heumen
  */
 public class ServerChannelLister
@@ -53,6 +61,11 @@
      */
     private static final long CHAT_ROOM_LIST_CACHE_EXPIRATION = 60000000000L;
 
+    /**
+     * LIST command without any parameters.
+     */
+    private static final String FULL_LIST_QUERY = "LIST";
+
     /**
      * IRCApi instance.
      *
@@ -66,13 +79,20 @@
     private final IIRCState connectionState;
 
     /**
-     * The cached channel list.
+     * The cached channel list index.
      *
      * Contained inside a simple container object in order to lock the container
      * while accessing the contents.
      */
-    private final Container<List<String>> channellist =
-        new Container<List<String>>(null);
+    private final Container<ChannelListIndex> channellist =
+        new Container<ChannelListIndex>(null);
+
+    /**
+     * Listing requests that are waiting for the server. The first listing is
+     * the one that is currently in progress. IRC servers do not identify LIST
+     * replies, so only one LIST command can be in flight at a time.
+     */
+    private final LinkedList<Listing> listings = new LinkedList<Listing>();
 
     /**
      * Constructor.
@@ -99,69 +119,283 @@ public ServerChannelLister(final IRCApi irc,
     /**
      * Get a list of channels available on the IRC server.
      *
+     * This method blocks until the full listing is available. Prefer
+     * {@link #list(String, int, ServerChannelListListener)} for incremental
+     * delivery.
+     *
      * @return List of available channels.
      */
     public List<String> getList()
     {
         logger.trace("Start retrieve server chat room list.");
+        final Result<Boolean, Exception> signal =
+            new Result<Boolean, Exception>(Boolean.FALSE);
+        // Collect the channels ourselves, since a truncated listing is not
+        // cached.
+        final ChannelListIndex.Builder received =
+            new ChannelListIndex.Builder();
+        list(null, 0, new ServerChannelListListener()
+        {
+            @Override
+            public void channelListed(final String name, final int userCount,
+                final String topic)
+            {
+                synchronized (received)
+                {
+                    received.add(name, userCount, topic);
+                }
+            }
+
+            @Override
+            public void channelListCompleted(final boolean complete)
+            {
+                synchronized (signal)
+                {
+                    signal.setDone(complete);
+                    signal.notifyAll();
+                }
+            }
+        });
+        synchronized (signal)
+        {
+            try
+            {
+                while (!signal.isDone())
+                {
+                    logger.trace("Waiting for list ...");
+                    signal.wait();
+                }
+                logger.trace("Done waiting for list.");
+            }
+            catch (InterruptedException e)
+            {
+                logger.warn("INTERRUPTED while waiting for list.", e);
+                Thread.currentThread().interrupt();
+            }
+        }
+        final ChannelListIndex index;
+        synchronized (received)
+        {
+            index = received.build();
+        }
+        if (logger.isDebugEnabled())
+        {
+            // Report on number of channels to give an impression of the
+            // kind of result that will be returned.
+            logger.debug("Server channel list contains " + index.size()
+                + " channels.");
+        }
+        return index.getNames();
+    }
+
+    /**
+     * Request a listing of server channels. Channels are delivered to the
+     * listener incrementally as they arrive from the server.
+     *
+     * If a recent full listing is cached, the request is answered immediately
+     * from the cache on the calling thread. Otherwise a LIST command is sent.
+     * Filter criteria are sent to the server if it advertises the matching
+     * ELIST extensions and are always applied locally, so the listener only
+     * receives matching channels.
+     *
+     * @param mask channel name mask, supporting wildcards '*' and '?', or
+     *            <tt>null</tt> for all channels
+     * @param minUsers minimum number of users, or 0 for no minimum
+     * @param listener the listener that receives the channels
+     */
+    public void list(final String mask, final int minUsers,
+        final ServerChannelListListener listener)
+    {
+        if (listener == null)
+        {
+            throw new IllegalArgumentException("listener cannot be null");
+        }
         if (!connectionState.isConnected())
         {
             throw new IllegalStateException("Not connected to an IRC server.");
         }
-
-        synchronized (this.channellist)
+        final Request request = new Request(mask, minUsers, listener);
+        final ChannelListIndex cached = getIndex();
+        if (cached != null)
         {
-            List<String> list =
-                this.channellist.get(CHAT_ROOM_LIST_CACHE_EXPIRATION);
-            if (list == null)
+            logger.trace("Using cached list of server chat rooms.");
+            request.replay(cached);
+            return;
+        }
+        final String query = createQuery(request);
+        final Listing started;
+        synchronized (this.listings)
+        {
+            // The listing in progress may already have delivered channels, so
+            // only join listings that have not been started yet.
+            for (Listing listing
+                : this.listings.subList(Math.min(1, this.listings.size()),
+                    this.listings.size()))
             {
-                logger
-                    .trace("Chat room list null or outdated. Start retrieving "
-                        + "new chat room list.");
-                Result<List<String>, Exception> listSignal =
-                    new Result<List<String>, Exception>(
-                        new LinkedList<String>());
-                synchronized (listSignal)
+                if (listing.query.equals(query))
                 {
-                    try
-                    {
-                        this.irc
-                            .addListener(new ChannelListListener(listSignal));
-                        this.irc.rawMessage("LIST");
-                        while (!listSignal.isDone())
-                        {
-                            logger.trace("Waiting for list ...");
-                            listSignal.wait();
-                        }
-                        logger.trace("Done waiting for list.");
-                    }
-                    catch (InterruptedException e)
-                    {
-                        logger.warn("INTERRUPTED while waiting for list.", e);
-                    }
+                    logger.trace("Joining pending listing for query: {}",
+                        query);
+                    listing.requests.add(request);
+                    return;
                 }
-                list = listSignal.getValue();
-                this.channellist.set(list);
-                logger.trace("Finished retrieving server chat room list.");
+            }
+            final Listing listing = new Listing(query);
+            listing.requests.add(request);
+            this.listings.add(listing);
+            started = this.listings.size() == 1 ? listing : null;
+        }
+        if (started != null)
+        {
+            start(started);
+        }
+    }
+
+    /**
+     * Search the cached channel list for channels that start with the provided
+     * prefix.
+     *
+     * @param prefix the channel name prefix (case-insensitive)
+     * @param limit maximum number of results, or negative for all results
+     * @return returns matching channel names, or an empty list if no listing
+     *         is cached
+     */
+    public List<String> search(final String prefix, final int limit)
+    {
+        final ChannelListIndex index = getIndex();
+        if (index == null)
+        {
+            return Collections.emptyList();
+        }
+        return index.search(prefix, limit);
+    }
 
+    /**
+     * Get the cached index of the most recent full listing.
+     *
+     * @return returns the index, or <tt>null</tt> if there is no valid cache
+     */
+    public ChannelListIndex getIndex()
+    {
+        synchronized (this.channellist)
+        {
+            return this.channellist.get(CHAT_ROOM_LIST_CACHE_EXPIRATION);
+        }
+    }
+
+    /**
+     * Create the LIST command for a request, using server-side filtering
+     * where supported.
+     *
+     * @param request the request
+     * @return returns the LIST command
+     */
+    private String createQuery(final Request request)
+    {
+        final String elist =
+            this.connectionState.getServerOptions().getKey(
+                ISupport.ELIST.name());
+        final StringBuilder params = new StringBuilder();
+        if (request.minUsers > 0
+            && ISupport.supportsEList(elist, ISupport.ELIST_USERCOUNT))
+        {
+            params.append('>').append(request.minUsers - 1);
+        }
+        if (request.mask != null
+            && ISupport.supportsEList(elist, ISupport.ELIST_MASK))
+        {
+            if (params.length() > 0)
+            {
+                params.append(',');
+            }
+            params.append(request.mask);
+        }
+        if (params.length() == 0)
+        {
+            return FULL_LIST_QUERY;
+        }
+        return FULL_LIST_QUERY + " " + params;
+    }
+
+    /**
+     * Start a listing by registering a reply listener and sending the query.
+     *
+     * @param listing the listing to start
+     */
+    private void start(final Listing listing)
+    {
+        logger.trace("Start retrieving server chat room list: {}",
+            listing.query);
+        final ChannelListListener listener = new ChannelListListener(listing);
+        this.irc.addListener(listener);
+        this.irc.rawMessage(listing.query);
+    }
+
+    /**
+     * Finish the listing that is currently in progress and continue with the
+     * next pending listing, if any.
+     *
+     * @param listing the finished listing
+     * @param complete <tt>true</tt> if listing completed normally
+     * @param connected <tt>false</tt> if listing ended because of a disconnect
+     */
+    private void finish(final Listing listing, final boolean complete,
+        final boolean connected)
+    {
+        // Only a complete listing may be served from cache. A truncated one
+        // (e.g. ERR_TOOMANYMATCHES) is delivered but not kept.
+        if (complete && listing.index != null && connected)
+        {
+            final ChannelListIndex index = listing.index.build();
+            synchronized (this.channellist)
+            {
+                this.channellist.set(index);
                 // Set timer to clean up the cache after use, since otherwise
                 // this data could stay in memory for a long time.
                 createCleanUpJob(this.channellist);
             }
-            else
+            logger.trace("Finished retrieving server chat room list.");
+        }
+        final List<Request> finished;
+        final List<Listing> pending;
+        synchronized (this.listings)
+        {
+            this.listings.remove(listing);
+            finished = new ArrayList<Request>(listing.requests);
+            pending = connected ? new ArrayList<Listing>(this.listings)
+                : new ArrayList<Listing>(0);
+            this.listings.clear();
+        }
+        for (Request request : finished)
+        {
+            request.listener.channelListCompleted(complete);
+        }
+        if (!connected)
+        {
+            for (Listing p : pending)
             {
-                logger.trace("Using cached list of server chat rooms.");
+                for (Request request : p.requests)
+                {
+                    request.listener.channelListCompleted(false);
+                }
             }
-
-            if (logger.isDebugEnabled())
+            return;
+        }
+        // Requests that were waiting can now possibly be served from cache.
+        // Others are resubmitted in their original order.
+        for (Listing p : pending)
+        {
+            for (Request request : p.requests)
             {
-                // Report on number of channels to give an impression of the
-                // kind of result that will be returned.
-                logger.debug("Server channel list contains " + list.size()
-                    + " channels.");
+                try
+                {
+                    list(request.mask, request.minUsers, request.listener);
+                }
+                catch (IllegalStateException e)
+                {
+                    request.listener.channelListCompleted(false);
+                }
             }
-
-            return Collections.unmodifiableList(list);
         }
     }
 
@@ -171,16 +405,16 @@ public List<String> getList()
      * up makes sure that there are no references left to an otherwise useless
      * outdated list of channels.
      *
-     * @param channellist the container carrying the list of channel names
+     * @param channellist the container carrying the channel list index
      */
     private static void createCleanUpJob(
-        final Container<List<String>> channellist)
+        final Container<ChannelListIndex> channellist)
     {
-        final Timer cleanUpJob = new Timer();
         final long timestamp = channellist.getTimestamp();
-        cleanUpJob.schedule(new ChannelListCacheCleanUpTask(channellist,
-            timestamp), CHAT_ROOM_LIST_CACHE_EXPIRATION
-            / RATIO_MILLISECONDS_TO_NANOSECONDS + CACHE_CLEAN_UP_DELAY);
+        TimingWheel.getInstance().schedule(
+            new ChannelListCacheCleanUpTask(channellist, timestamp),
+            CHAT_ROOM_LIST_CACHE_EXPIRATION / RATIO_MILLISECONDS_TO_NANOSECONDS
+                + CACHE_CLEAN_UP_DELAY);
     }
 
     /**
@@ -189,7 +423,7 @@ private static void createCleanUpJob(
      * @author Danny van Heumen
      */
     private static final class ChannelListCacheCleanUpTask
-        extends TimerTask
+        implements Runnable
     {
         /**
          * Expected timestamp on which the list cache was created. It is used as
@@ -201,7 +435,7 @@ private static void createCleanUpJob(
         /**
          * Container holding the channel list cache.
          */
-        private final Container<List<String>> container;
+        private final Container<ChannelListIndex> container;
 
         /**
          * Construct new clean up job definition.
@@ -210,7 +444,8 @@ private static void createCleanUpJob(
          * @param timestamp expected timestamp of list cache creation
          */
         private ChannelListCacheCleanUpTask(
-            final Container<List<String>> listContainer, final long timestamp)
+            final Container<ChannelListIndex> listContainer,
+            final long timestamp)
         {
             if (listContainer == null)
             {
@@ -249,8 +484,8 @@ public void run()
     }
 
     /**
-     * Special listener that processes LIST replies and signals once the list is
-     * completely filled.
+     * Special listener that processes LIST replies and delivers channels to the
+     * requests of a listing as they arrive.
      */
     private final class ChannelListListener
         extends AbstractIrcMessageListener
@@ -271,22 +506,30 @@ public void run()
         private static final int RPL_LISTEND = 323;
 
         /**
-         * Reference to the provided list instance.
+         * Server reply for listings that are too large and got truncated.
          */
-        private final Result<List<String>, Exception> signal;
+        private static final int ERR_TOOMANYMATCHES = 416;
+
+        /**
+         * The listing that is being processed.
+         */
+        private final Listing listing;
+
+        /**
+         * Flag indicating whether the listing has finished.
+         */
+        private boolean done = false;
 
         /**
          * Constructor for channel list listener.
          *
-         * @param api irc-api library instance
-         * @param signal signal for sync signaling
+         * @param listing the listing to process
          */
-        private ChannelListListener(
-            final Result<List<String>, Exception> signal)
+        private ChannelListListener(final Listing listing)
         {
             super(ServerChannelLister.this.irc,
                 ServerChannelLister.this.connectionState);
-            this.signal = signal;
+            this.listing = listing;
         }
 
         /**
@@ -294,73 +537,318 @@ private ChannelListListener(
          * <pre>
          * - 321 RPL_LISTSTART,
          * - 322 RPL_LIST,
-         * - 323 RPL_LISTEND
+         * - 323 RPL_LISTEND,
+         * - 416 ERR_TOOMANYMATCHES
          * </pre>
          *
-         * Clears the list upon starting. All received channels are added to the
-         * list. Upon receiving RPL_LISTEND finalize the list and signal the
-         * waiting thread that it can continue processing the list.
+         * All received channels are delivered to the listing's requests and,
+         * in case of a full listing, added to the index under construction.
+         * Upon receiving RPL_LISTEND the listing is finished.
          *
          * @param msg The numeric server message.
          */
         @Override
         public void onServerNumericMessage(final ServerNumericMessage msg)
         {
-            if (this.signal.isDone())
-            {
-                return;
-            }
-
             switch (msg.getNumericCode())
             {
             case RPL_LISTSTART:
-                synchronized (this.signal)
-                {
-                    this.signal.getValue().clear();
-                }
                 break;
             case RPL_LIST:
-                String channel = parse(msg.getText());
-                if (channel != null)
-                {
-                    synchronized (this.signal)
-                    {
-                        this.signal.getValue().add(channel);
-                    }
-                }
+                processChannel(msg.getText());
                 break;
             case RPL_LISTEND:
-                synchronized (this.signal)
-                {
-                    // Done collecting channels. Remove listener and then we're
-                    // done.
-                    ServerChannelLister.this.irc.deleteListener(this);
-                    this.signal.setDone();
-                    this.signal.notifyAll();
-                }
+                end(true, true);
+                break;
+            case ERR_TOOMANYMATCHES:
+                logger.debug("Server truncated channel list: {}",
+                    msg.getText());
+                end(false, true);
                 break;
-            // TODO Add support for REPLY 416: LIST :output too large, truncated
             default:
                 break;
             }
         }
 
         /**
-         * Parse an IRC server response RPL_LIST. Extract the channel name.
+         * Abort listing in case of local user quitting.
+         *
+         * @param msg the quit message
+         */
+        @Override
+        public void onUserQuit(final QuitMessage msg)
+        {
+            super.onUserQuit(msg);
+            if (localUser(msg.getSource().getNick()))
+            {
+                end(false, false);
+            }
+        }
+
+        /**
+         * Abort listing in case of a fatal error.
+         *
+         * @param msg the error message
+         */
+        @Override
+        public void onError(final ErrorMessage msg)
+        {
+            super.onError(msg);
+            end(false, false);
+        }
+
+        /**
+         * Abort listing in case of a fatal client-side error.
+         *
+         * @param msg the client-side error message
+         */
+        @Override
+        public void onClientError(final ClientErrorMessage msg)
+        {
+            super.onClientError(msg);
+            end(false, false);
+        }
+
+        /**
+         * Parse an RPL_LIST reply and deliver the channel.
          *
          * @param text raw server response
-         * @return returns the channel name
          */
-        private String parse(final String text)
+        private void processChannel(final String text)
         {
-            int endOfChannelName = text.indexOf(' ');
+            if (this.done || text == null)
+            {
+                return;
+            }
+            final int endOfChannelName = text.indexOf(' ');
             if (endOfChannelName == -1)
             {
-                return null;
+                return;
             }
             // Create a new string to make sure that the original (larger)
             // strings can be GC'ed.
-            return new String(text.substring(0, endOfChannelName));
+            final String name = new String(text.substring(0, endOfChannelName));
+            final int endOfCount = text.indexOf(' ', endOfChannelName + 1);
+            int userCount = 0;
+            try
+            {
+                userCount = Integer.parseInt(text.substring(
+                    endOfChannelName + 1,
+                    endOfCount == -1 ? text.length() : endOfCount));
+            }
+            catch (NumberFormatException e)
+            {
+                logger.trace("Unparsable user count in LIST reply: {}", text);
+            }
+            String topic = null;
+            if (endOfCount != -1)
+            {
+                int startOfTopic = endOfCount + 1;
+                if (startOfTopic < text.length()
+                    && text.charAt(startOfTopic) == ':')
+                {
+                    startOfTopic++;
+                }
+                if (startOfTopic < text.length())
+                {
+                    topic = new String(text.substring(startOfTopic));
+                }
+            }
+            if (this.listing.index != null)
+            {
+                this.listing.index.add(name, userCount, topic);
+            }
+            final List<Request> requests;
+            synchronized (ServerChannelLister.this.listings)
+            {
+                requests = new ArrayList<Request>(this.listing.requests);
+            }
+            for (Request request : requests)
+            {
+                request.deliver(name, userCount, topic);
+            }
+        }
+
+        /**
+         * End processing of the listing.
+         *
+         * @param complete <tt>true</tt> if listing completed normally
+         * @param connected <tt>false</tt> if listing ended because of a
+         *            disconnect
+         */
+        private void end(final boolean complete, final boolean connected)
+        {
+            if (this.done)
+            {
+                return;
+            }
+            this.done = true;
+            ServerChannelLister.this.irc.deleteListener(this);
+            finish(this.listing, complete, connected);
+        }
+    }
+
+    /**
+     * A LIST command that is pending or in progress, together with the
+     * requests that are served by it.
+     */
+    private static final class Listing
+    {
+        /**
+         * The LIST command.
+         */
+        private final String query;
+
+        /**
+         * Requests served by this listing.
+         */
+        private final List<Request> requests = new ArrayList<Request>(1);
+
+        /**
+         * Index under construction. Only a full, unfiltered listing is
+         * indexed, otherwise <tt>null</tt>.
+         */
+        private final ChannelListIndex.Builder index;
+
+        /**
+         * Constructor.
+         *
+         * @param query the LIST command
+         */
+        private Listing(final String query)
+        {
+            this.query = query;
+            this.index = FULL_LIST_QUERY.equals(query)
+                ? new ChannelListIndex.Builder() : null;
+        }
+    }
+
+    /**
+     * A single listing request with its client-side filter criteria.
+     */
+    private static final class Request
+    {
+        /**
+         * Channel name mask or <tt>null</tt>.
+         */
+        private final String mask;
+
+        /**
+         * Compiled mask or <tt>null</tt>.
+         */
+        private final Pattern pattern;
+
+        /**
+         * Minimum number of users.
+         */
+        private final int minUsers;
+
+        /**
+         * The listener that receives matching channels.
+         */
+        private final ServerChannelListListener listener;
+
+        /**
+         * Constructor.
+         *
+         * @param mask channel name mask or <tt>null</tt>
+         * @param minUsers minimum number of users
+         * @param listener the listener
+         */
+        private Request(final String mask, final int minUsers,
+            final ServerChannelListListener listener)
+        {
+            this.mask = mask;
+            this.pattern = mask == null ? null : compileMask(mask);
+            this.minUsers = minUsers;
+            this.listener = listener;
+        }
+
+        /**
+         * Deliver a channel to the listener if it matches the criteria.
+         *
+         * @param name the channel name
+         * @param userCount the number of users
+         * @param topic the channel topic
+         */
+        private void deliver(final String name, final int userCount,
+            final String topic)
+        {
+            if (userCount < this.minUsers)
+            {
+                return;
+            }
+            if (this.pattern != null && !this.pattern.matcher(name).matches())
+            {
+                return;
+            }
+            this.listener.channelListed(name, userCount, topic);
+        }
+
+        /**
+         * Answer the request from a cached index.
+         *
+         * @param index the index
+         */
+        private void replay(final ChannelListIndex index)
+        {
+            int start = 0;
+            int end = index.size();
+            if (this.mask != null)
+            {
+                // Narrow down the search to the literal prefix of the mask.
+                int wildcard = 0;
+                while (wildcard < this.mask.length()
+                    && this.mask.charAt(wildcard) != '*'
+                    && this.mask.charAt(wildcard) != '?')
+                {
+                    wildcard++;
+                }
+                final int[] range =
+                    index.range(this.mask.substring(0, wildcard));
+                start = range[0];
+                end = range[1];
+            }
+            for (int i = start; i < end; i++)
+            {
+                deliver(index.getName(i), index.getUserCount(i),
+                    index.getTopic(i));
+            }
+            this.listener.channelListCompleted(true);
+        }
+
+        /**
+         * Compile an IRC wildcard mask into a case-insensitive pattern.
+         *
+         * @param mask the mask
+         * @return returns the pattern
+         */
+        private static Pattern compileMask(final String mask)
+        {
+            final StringBuilder regex = new StringBuilder();
+            final StringBuilder literal = new StringBuilder();
+            for (char c : mask.toCharArray())
+            {
+                if (c == '*' || c == '?')
+                {
+                    if (literal.length() > 0)
+                    {
+                        regex.append(Pattern.quote(literal.toString()));
+                        literal.setLength(0);
+                    }
+                    regex.append(c == '*' ? ".*" : ".");
+                }
+                else
+                {
+                    literal.append(c);
+                }
+            }
+            if (literal.length() > 0)
+            {
+                regex.append(Pattern.quote(literal.toString()));
+            }
+            return Pattern.compile(regex.toString(),
+                Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
         }
     }
 
@@ -0,0 +1,322 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.irc.collection;
+
+import java.util.*;
+
+/**
+ * Compact, immutable index of a server channel listing.
+ *
+ * The index stores channel names, user counts and topics in parallel arrays
+ * that are sorted by the case-folded channel name. This keeps the memory
+ * footprint of very large listings (tens of thousands of channels) low, while
+ * still allowing prefix searches by means of binary search.
+ *
+ * Instances are created through {@link Builder}, which accepts entries in any
+ * order as they arrive from the server.
+ */
+public final class ChannelListIndex
+{
+    /**
+     * Empty index.
+     */
+    public static final ChannelListIndex EMPTY = new Builder().build();
+
+    /**
+     * Case-folded channel names, sorted in ascending order. Used as search
+     * keys.
+     */
+    private final String[] keys;
+
+    /**
+     * Original channel names, in the same order as <tt>keys</tt>.
+     */
+    private final String[] names;
+
+    /**
+     * Number of users per channel, in the same order as <tt>keys</tt>.
+     */
+    private final int[] userCounts;
+
+    /**
+     * Channel topics, in the same order as <tt>keys</tt>. Entries may be
+     * <tt>null</tt> if no topic is set.
+     */
+    private final String[] topics;
+
+    /**
+     * Constructor.
+     *
+     * @param keys sorted case-folded keys
+     * @param names channel names
+     * @param userCounts user counts
+     * @param topics channel topics
+     */
+    private ChannelListIndex(final String[] keys, final String[] names,
+        final int[] userCounts, final String[] topics)
+    {
+        this.keys = keys;
+        this.names = names;
+        this.userCounts = userCounts;
+        this.topics = topics;
+    }
+
+    /**
+     * Number of channels in the index.
+     *
+     * @return returns the number of channels
+     */
+    public int size()
+    {
+        return this.names.length;
+    }
+
+    /**
+     * Get the channel name at the specified position.
+     *
+     * @param index position in the index
+     * @return returns the channel name
+     */
+    public String getName(final int index)
+    {
+        return this.names[index];
+    }
+
+    /**
+     * Get the number of users of the channel at the specified position.
+     *
+     * @param index position in the index
+     * @return returns the number of users as reported by the server
+     */
+    public int getUserCount(final int index)
+    {
+        return this.userCounts[index];
+    }
+
+    /**
+     * Get the topic of the channel at the specified position.
+     *
+     * @param index position in the index
+     * @return returns the topic, or <tt>null</tt> if no topic is set
+     */
+    public String getTopic(final int index)
+    {
+        return this.topics[index];
+    }
+
+    /**
+     * Get an unmodifiable view on all channel names in the index, in sorted
+     * order.
+     *
+     * @return returns list of channel names
+     */
+    public List<String> getNames()
+    {
+        return Collections.unmodifiableList(Arrays.asList(this.names));
+    }
+
+    /**
+     * Find the range of positions in the index of channels whose name starts
+     * with the provided prefix. Matching is case-insensitive.
+     *
+     * @param prefix the prefix to search for
+     * @return returns array of 2 elements: the first (inclusive) and the last
+     *         (exclusive) position of matching channels
+     */
+    public int[] range(final String prefix)
+    {
+        if (prefix == null || prefix.isEmpty())
+        {
+            return new int[] {0, this.keys.length};
+        }
+        final String key = fold(prefix);
+        final int start = lowerBound(key);
+        int end = start;
+        while (end < this.keys.length && this.keys[end].startsWith(key))
+        {
+            end++;
+        }
+        return new int[] {start, end};
+    }
+
+    /**
+     * Search for channel names starting with the provided prefix. Matching is
+     * case-insensitive.
+     *
+     * @param prefix the prefix to search for
+     * @param limit maximum number of results to return, or a negative value
+     *            for all results
+     * @return returns the matching channel names in sorted order
+     */
+    public List<String> search(final String prefix, final int limit)
+    {
+        final int[] range = range(prefix);
+        int end = range[1];
+        if (limit >= 0 && end - range[0] > limit)
+        {
+            end = range[0] + limit;
+        }
+        return Collections.unmodifiableList(
+            Arrays.asList(this.names).subList(range[0], end));
+    }
+
+    /**
+     * Find the first position whose key is not less than the provided key.
+     *
+     * @param key the case-folded key
+     * @return returns the position
+     */
+    private int lowerBound(final String key)
+    {
+        int low = 0;
+        int high = this.keys.length;
+        while (low < high)
+        {
+            final int mid = (low + high) >>> 1;
+            if (this.keys[mid].compareTo(key) < 0)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Fold a channel name for case-insensitive comparison.
+     *
+     * @param name the channel name
+     * @return returns the case-folded name
+     */
+    static String fold(final String name)
+    {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Builder for constructing a channel list index from entries as they
+     * arrive.
+     *
+     * Builder instances are not thread-safe.
+     */
+    public static final class Builder
+    {
+        /**
+         * Initial capacity of the buffers.
+         */
+        private static final int INITIAL_CAPACITY = 256;
+
+        /**
+         * Channel names buffer.
+         */
+        private String[] names = new String[INITIAL_CAPACITY];
+
+        /**
+         * User counts buffer.
+         */
+        private int[] userCounts = new int[INITIAL_CAPACITY];
+
+        /**
+         * Topics buffer.
+         */
+        private String[] topics = new String[INITIAL_CAPACITY];
+
+        /**
+         * Number of entries added.
+         */
+        private int size = 0;
+
+        /**
+         * Add a channel to the index under construction.
+         *
+         * @param name the channel name
+         * @param userCount the number of users
+         * @param topic the topic (may be <tt>null</tt>)
+         */
+        public void add(final String name, final int userCount,
+            final String topic)
+        {
+            if (name == null)
+            {
+                throw new IllegalArgumentException("name cannot be null");
+            }
+            if (this.size == this.names.length)
+            {
+                final int capacity = this.names.length * 2;
+                this.names = Arrays.copyOf(this.names, capacity);
+                this.userCounts = Arrays.copyOf(this.userCounts, capacity);
+                this.topics = Arrays.copyOf(this.topics, capacity);
+            }
+            this.names[this.size] = name;
+            this.userCounts[this.size] = userCount;
+            this.topics[this.size] = topic;
+            this.size++;
+        }
+
+        /**
+         * Number of entries added so far.
+         *
+         * @return returns number of entries
+         */
+        public int size()
+        {
+            return this.size;
+        }
+
+        /**
+         * Build the immutable index from the entries added so far.
+         *
+         * @return returns the index
+         */
+        public ChannelListIndex build()
+        {
+            final String[] keys = new String[this.size];
+            final Integer[] order = new Integer[this.size];
+            for (int i = 0; i < this.size; i++)
+            {
+                keys[i] = fold(this.names[i]);
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>()
+            {
+                @Override
+                public int compare(final Integer a, final Integer b)
+                {
+                    return keys[a].compareTo(keys[b]);
+                }
+            });
+            final String[] sortedKeys = new String[this.size];
+            final String[] sortedNames = new String[this.size];
+            final int[] sortedCounts = new int[this.size];
+            final String[] sortedTopics = new String[this.size];
+            for (int i = 0; i < this.size; i++)
+            {
+                final int source = order[i];
+                sortedKeys[i] = keys[source];
+                sortedNames[i] = this.names[source];
+                sortedCounts[i] = this.userCounts[source];
+                sortedTopics[i] = this.topics[source];
+            }
+            return new ChannelListIndex(sortedKeys, sortedNames, sortedCounts,
+                sortedTopics);
+        }
+    }
+}
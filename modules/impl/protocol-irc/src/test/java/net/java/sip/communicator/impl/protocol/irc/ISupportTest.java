@@ -109,4 +109,18 @@ public void testParseSimpleInvalidValue()
         ISupport.parseChanLimit(destination, "bla");
         assertEquals(0, destination.size());
     }
+
+    @Test
+    public void testSupportsEListNullValue()
+    {
+        assertFalse(ISupport.supportsEList(null, ISupport.ELIST_MASK));
+    }
+
+    @Test
+    public void testSupportsEList()
+    {
+        assertTrue(ISupport.supportsEList("CMNTU", ISupport.ELIST_MASK));
+        assertTrue(ISupport.supportsEList("cmntu", ISupport.ELIST_USERCOUNT));
+        assertFalse(ISupport.supportsEList("CT", ISupport.ELIST_USERCOUNT));
+    }
 }
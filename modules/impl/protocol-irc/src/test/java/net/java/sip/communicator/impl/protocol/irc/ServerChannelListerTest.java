@@ -0,0 +1,115 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.irc;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.easymock.*;
+import org.junit.*;
+
+import com.ircclouds.irc.api.*;
+import com.ircclouds.irc.api.domain.*;
+import com.ircclouds.irc.api.domain.messages.*;
+import com.ircclouds.irc.api.listeners.*;
+import com.ircclouds.irc.api.state.*;
+
+public class ServerChannelListerTest
+{
+    private final Capture<IMessageListener> listener =
+        Capture.newInstance();
+
+    private ServerChannelLister lister;
+
+    @Before
+    public void setUp()
+    {
+        IRCApi irc = EasyMock.createNiceMock(IRCApi.class);
+        irc.addListener(EasyMock.capture(this.listener));
+        EasyMock.expectLastCall().anyTimes();
+        IIRCState state = EasyMock.createMock(IIRCState.class);
+        EasyMock.expect(state.isConnected()).andReturn(true).anyTimes();
+        EasyMock.expect(state.getServerOptions())
+            .andReturn(new IRCServerOptions(new Properties())).anyTimes();
+        EasyMock.replay(irc, state);
+        this.lister = new ServerChannelLister(irc, state);
+    }
+
+    private void reply(final int code, final String text)
+    {
+        ((VariousMessageListenerAdapter) this.listener.getValue())
+            .onServerNumericMessage(
+                new ServerNumericMessage(code, "me", text, null));
+    }
+
+    private List<String> list(final Boolean[] completed)
+    {
+        final List<String> channels = new ArrayList<String>();
+        this.lister.list(null, 0, new ServerChannelListListener()
+        {
+            @Override
+            public void channelListed(final String name,
+                final int userCount, final String topic)
+            {
+                channels.add(name);
+            }
+
+            @Override
+            public void channelListCompleted(final boolean complete)
+            {
+                completed[0] = complete;
+            }
+        });
+        return channels;
+    }
+
+    @Test
+    public void testCompleteListingIsCached()
+    {
+        Boolean[] completed = new Boolean[1];
+        List<String> channels = list(completed);
+        reply(322, "#jitsi 12 :Jitsi");
+        reply(322, "#java 5 :Java");
+        reply(323, "End of /LIST");
+        assertEquals(Boolean.TRUE, completed[0]);
+        assertEquals(Arrays.asList("#jitsi", "#java"), channels);
+        assertNotNull(this.lister.getIndex());
+        assertEquals(Arrays.asList("#java", "#jitsi"),
+            this.lister.getIndex().getNames());
+    }
+
+    @Test
+    public void testTruncatedListingIsNotCached()
+    {
+        Boolean[] completed = new Boolean[1];
+        List<String> channels = list(completed);
+        reply(322, "#jitsi 12 :Jitsi");
+        reply(416, "LIST :output too large, truncated");
+        assertEquals(Boolean.FALSE, completed[0]);
+        assertEquals(Arrays.asList("#jitsi"), channels);
+        assertNull(this.lister.getIndex());
+        assertTrue(this.lister.search("#", -1).isEmpty());
+
+        // The next request asks the server again instead of being answered
+        // with the truncated list.
+        this.listener.reset();
+        list(completed);
+        assertTrue(this.listener.hasCaptured());
+    }
+}
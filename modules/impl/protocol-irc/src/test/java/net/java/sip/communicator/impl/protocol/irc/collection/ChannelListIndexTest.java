@@ -0,0 +1,104 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.irc.collection;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import org.junit.*;
+
+/**
+ */
+public class ChannelListIndexTest
+{
+    private ChannelListIndex createIndex()
+    {
+        ChannelListIndex.Builder builder = new ChannelListIndex.Builder();
+        builder.add("#Jitsi", 120, "Jitsi Desktop");
+        builder.add("#java", 800, null);
+        builder.add("#jitsi-dev", 30, "Development");
+        builder.add("#linux", 1500, "Linux");
+        builder.add("#JavaScript", 600, "JS");
+        return builder.build();
+    }
+
+    @Test
+    public void testEmptyIndex()
+    {
+        assertEquals(0, ChannelListIndex.EMPTY.size());
+        assertTrue(ChannelListIndex.EMPTY.search("#", -1).isEmpty());
+    }
+
+    @Test
+    public void testEntriesAreSortedCaseInsensitive()
+    {
+        ChannelListIndex index = createIndex();
+        assertEquals(5, index.size());
+        assertEquals(Arrays.asList("#java", "#JavaScript", "#Jitsi",
+            "#jitsi-dev", "#linux"), index.getNames());
+    }
+
+    @Test
+    public void testEntryDataFollowsSortOrder()
+    {
+        ChannelListIndex index = createIndex();
+        assertEquals("#Jitsi", index.getName(2));
+        assertEquals(120, index.getUserCount(2));
+        assertEquals("Jitsi Desktop", index.getTopic(2));
+        assertNull(index.getTopic(0));
+    }
+
+    @Test
+    public void testPrefixSearch()
+    {
+        ChannelListIndex index = createIndex();
+        assertEquals(Arrays.asList("#Jitsi", "#jitsi-dev"),
+            index.search("#JIT", -1));
+        assertEquals(Arrays.asList("#java", "#JavaScript"),
+            index.search("#ja", -1));
+        assertTrue(index.search("#xyz", -1).isEmpty());
+    }
+
+    @Test
+    public void testPrefixSearchLimit()
+    {
+        ChannelListIndex index = createIndex();
+        assertEquals(Collections.singletonList("#java"),
+            index.search("#j", 1));
+        assertEquals(5, index.search("", -1).size());
+    }
+
+    @Test
+    public void testBuilderGrowsBeyondInitialCapacity()
+    {
+        ChannelListIndex.Builder builder = new ChannelListIndex.Builder();
+        for (int i = 0; i < 10000; i++)
+        {
+            builder.add("#channel" + i, i, null);
+        }
+        ChannelListIndex index = builder.build();
+        assertEquals(10000, index.size());
+        assertEquals(1111, index.search("#channel1", -1).size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testNamesAreUnmodifiable()
+    {
+        createIndex().getNames().set(0, "#other");
+    }
+}
@@ -1176,6 +1176,25 @@ public void sendJsonMessage(String json)
         sendMessage(msg);
     }
 
+    /**
+     * Sends the download URL of a file shared with this chat room, with the
+     * given XMPP extension describing it.
+     *
+     * @param url the download URL of the file
+     * @param extension the extension describing the file
+     * @throws OperationFailedException if sending the message fails for some
+     * reason.
+     */
+    void sendFileUrl(String url, ExtensionElement extension)
+        throws OperationFailedException
+    {
+        MessageBuilder msg = MessageBuilder
+            .buildMessage()
+            .setBody(url);
+        msg.addExtension(extension);
+        sendMessage(msg);
+    }
+
     /**
      * Sets the subject of this chat room.
      *
@@ -2468,8 +2487,9 @@ public void processMessage(org.jivesoftware.smack.packet.Message msg)
                     && !timeStamp.after(lastSeenDelayedMessage))
                     return;
 
-                // save it in configuration
-                ConfigurationUtils.updateChatRoomProperty(
+                // save it in configuration, history messages arrive in
+                // bursts so only the last one needs to be stored
+                ConfigurationUtils.updateChatRoomPropertyLazily(
                     provider
                         .getAccountID()
                         .getAccountUniqueID(),
@@ -0,0 +1,481 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.util.*;
+import java.util.function.*;
+
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.event.*;
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.service.configuration.*;
+import org.jivesoftware.smack.XMPPException.*;
+import org.jivesoftware.smack.packet.*;
+
+import static org.jivesoftware.smack.packet.StanzaError.Condition.*;
+
+/**
+ * Updates the status and progress of all active Jabber file transfers from a
+ * single periodic task. Smack does not report the progress of a transfer, so
+ * it is sampled: status events are fired when the status changes and
+ * progress events at most {@link #PNAME_PROGRESS_RATE} times per second,
+ * with a final progress event once the transfer ends. The transfer rate and
+ * the estimated time left are computed here and carried by the progress
+ * events.
+ */
+final class FileTransferProgressSampler
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>FileTransferProgressSampler</tt>
+     * class and its instances for logging output.
+     */
+    private static final org.slf4j.Logger logger
+        = org.slf4j.LoggerFactory.getLogger(FileTransferProgressSampler.class);
+
+    /**
+     * The name of the property which specifies how many progress events per
+     * second are fired for a transfer.
+     */
+    static final String PNAME_PROGRESS_RATE
+        = "net.java.sip.communicator.impl.protocol.jabber."
+            + "FILE_TRANSFER_PROGRESS_RATE";
+
+    /**
+     * The default number of progress events per second.
+     */
+    static final int DEFAULT_PROGRESS_RATE = 4;
+
+    /**
+     * The interval in milliseconds at which the transfers are sampled.
+     */
+    private static final long SAMPLE_INTERVAL = 100;
+
+    /**
+     * The weight of a new rate measurement in the smoothed transfer rate.
+     */
+    private static final double RATE_SMOOTHING = 0.3;
+
+    /**
+     * The instance shared by all accounts.
+     */
+    private static FileTransferProgressSampler instance;
+
+    /**
+     * The minimum interval in milliseconds between two progress events of a
+     * transfer.
+     */
+    private final long progressInterval;
+
+    /**
+     * The <tt>TimingWheel</tt> the periodic sampling task is scheduled on.
+     */
+    private final TimingWheel timingWheel;
+
+    /**
+     * The transfers being sampled.
+     */
+    private final List<Sample> samples = new ArrayList<>();
+
+    /**
+     * The periodic sampling task, scheduled while there are transfers.
+     */
+    private TimingWheel.Timeout timeout;
+
+    /**
+     * Gets the instance shared by all accounts.
+     *
+     * @return the <tt>FileTransferProgressSampler</tt>
+     */
+    static synchronized FileTransferProgressSampler getInstance()
+    {
+        if (instance == null)
+        {
+            ConfigurationService cfg
+                = JabberActivator.getConfigurationService();
+            int rate
+                = (cfg == null)
+                    ? DEFAULT_PROGRESS_RATE
+                    : cfg.getInt(PNAME_PROGRESS_RATE, DEFAULT_PROGRESS_RATE);
+
+            if (rate <= 0)
+                rate = DEFAULT_PROGRESS_RATE;
+            instance
+                = new FileTransferProgressSampler(
+                        1000 / rate,
+                        TimingWheel.getInstance());
+        }
+        return instance;
+    }
+
+    /**
+     * Initializes a new <tt>FileTransferProgressSampler</tt>.
+     *
+     * @param progressInterval the minimum interval in milliseconds between
+     * two progress events of a transfer
+     * @param timingWheel the <tt>TimingWheel</tt> to schedule the periodic
+     * sampling task on
+     */
+    FileTransferProgressSampler(long progressInterval, TimingWheel timingWheel)
+    {
+        this.progressInterval = progressInterval;
+        this.timingWheel = timingWheel;
+    }
+
+    /**
+     * Starts updating the status and progress of a transfer until it ends.
+     *
+     * @param jabberTransfer the Smack transfer
+     * @param transfer the transfer to fire the events for
+     * @param initialFileSize the announced size of an incoming file, a
+     * transfer completing with less bytes is reported as cancelled, or
+     * <tt>0</tt>
+     */
+    void watch(
+            org.jivesoftware.smackx.filetransfer.FileTransfer jabberTransfer,
+            AbstractFileTransfer transfer,
+            long initialFileSize)
+    {
+        add(new Sample(
+                jabberTransfer,
+                transfer,
+                () -> OperationSetFileTransferJabberImpl.parseJabberStatus(
+                        jabberTransfer.getStatus()),
+                jabberTransfer::getFileSize,
+                initialFileSize));
+    }
+
+    /**
+     * Starts updating the status and progress of an HTTP upload until it
+     * ends.
+     *
+     * @param transfer the upload
+     */
+    void watch(HttpUploadFileTransferJabberImpl transfer)
+    {
+        add(new Sample(
+                null,
+                transfer,
+                transfer::getUploadStatus,
+                () -> transfer.getLocalFile().length(),
+                0));
+    }
+
+    /**
+     * Adds a transfer to sample and starts the periodic task if needed.
+     *
+     * @param sample the transfer to sample
+     */
+    private void add(Sample sample)
+    {
+        synchronized (this)
+        {
+            samples.add(sample);
+            if (timeout == null)
+            {
+                timeout
+                    = timingWheel.schedule(
+                            () -> sample(System.currentTimeMillis()),
+                            SAMPLE_INTERVAL,
+                            SAMPLE_INTERVAL);
+            }
+        }
+    }
+
+    /**
+     * Samples all transfers and stops the periodic task once none is left.
+     *
+     * @param now the current time in milliseconds
+     */
+    void sample(long now)
+    {
+        List<Sample> current;
+
+        synchronized (this)
+        {
+            current = new ArrayList<>(samples);
+        }
+
+        List<Sample> ended = new ArrayList<>();
+
+        for (Sample sample : current)
+        {
+            try
+            {
+                if (sample.sample(now))
+                    ended.add(sample);
+            }
+            catch (Throwable t)
+            {
+                logger.error("Failed to update file transfer "
+                    + sample.transfer.getID(), t);
+                ended.add(sample);
+            }
+        }
+
+        synchronized (this)
+        {
+            samples.removeAll(ended);
+            if (samples.isEmpty() && timeout != null)
+            {
+                timeout.cancel();
+                timeout = null;
+            }
+        }
+    }
+
+    /**
+     * The sampling state of a transfer.
+     */
+    private class Sample
+    {
+        /**
+         * The Smack transfer or <tt>null</tt> for an HTTP upload.
+         */
+        private final org.jivesoftware.smackx.filetransfer.FileTransfer
+            jabberTransfer;
+
+        /**
+         * Gives the current <tt>FileTransferStatusChangeEvent</tt> status.
+         */
+        private final IntSupplier status;
+
+        /**
+         * Gives the size of the file in bytes.
+         */
+        private final LongSupplier fileSize;
+
+        /**
+         * The transfer to fire the events for.
+         */
+        private final AbstractFileTransfer transfer;
+
+        /**
+         * The announced size of an incoming file or <tt>0</tt>.
+         */
+        private final long initialFileSize;
+
+        /**
+         * The status fired last.
+         */
+        private int lastStatus = -1;
+
+        /**
+         * The progress fired last.
+         */
+        private long lastProgress = -1;
+
+        /**
+         * The time the last progress event was fired.
+         */
+        private long lastProgressTime = 0;
+
+        /**
+         * The time and progress of the last rate measurement.
+         */
+        private long rateTime;
+
+        /**
+         * The progress at {@link #rateTime}.
+         */
+        private long rateBytes = 0;
+
+        /**
+         * The smoothed transfer rate in bytes per second or <tt>-1</tt>
+         * before the first measurement.
+         */
+        private double rate = -1;
+
+        /**
+         * Initializes a new <tt>Sample</tt>.
+         *
+         * @param jabberTransfer the Smack transfer or <tt>null</tt>
+         * @param transfer the transfer to fire the events for
+         * @param status gives the current status of the transfer
+         * @param fileSize gives the size of the file
+         * @param initialFileSize the announced size or <tt>0</tt>
+         */
+        Sample(
+                org.jivesoftware.smackx.filetransfer.FileTransfer
+                    jabberTransfer,
+                AbstractFileTransfer transfer,
+                IntSupplier status,
+                LongSupplier fileSize,
+                long initialFileSize)
+        {
+            this.jabberTransfer = jabberTransfer;
+            this.transfer = transfer;
+            this.status = status;
+            this.fileSize = fileSize;
+            this.initialFileSize = initialFileSize;
+            this.rateTime = System.currentTimeMillis();
+        }
+
+        /**
+         * Fires the events due for the current state of the transfer.
+         *
+         * @param now the current time in milliseconds
+         * @return <tt>true</tt> if the transfer has ended
+         */
+        boolean sample(long now)
+        {
+            int status = this.status.getAsInt();
+            long progress = transfer.getTransferedBytes();
+
+            if (status == FileTransferStatusChangeEvent.FAILED
+                || status == FileTransferStatusChangeEvent.COMPLETED
+                || status == FileTransferStatusChangeEvent.CANCELED
+                || status == FileTransferStatusChangeEvent.REFUSED)
+            {
+                end(status, progress, now);
+                return true;
+            }
+
+            if (status != lastStatus)
+            {
+                lastStatus = status;
+                transfer.fireStatusChangeEvent(status, "Status changed");
+            }
+
+            if (progress != lastProgress
+                && now - lastProgressTime >= progressInterval)
+            {
+                fireProgress(progress, now);
+            }
+            return false;
+        }
+
+        /**
+         * Fires the final status and progress of an ended transfer.
+         *
+         * @param status the status the transfer ended with
+         * @param progress the transferred bytes
+         * @param now the current time in milliseconds
+         */
+        private void end(int status, long progress, long now)
+        {
+            String statusReason = "";
+
+            if (transfer instanceof OutgoingFileTransferJabberImpl)
+            {
+                ((OutgoingFileTransferJabberImpl) transfer)
+                    .removeThumbnailHandler();
+            }
+
+            // sometimes a filetransfer can be preparing and than completed :
+            // transfered between two samples so it won't go through
+            // intermediate state - inProgress make sure this won't happen
+            if (status == FileTransferStatusChangeEvent.COMPLETED
+                && transfer.getStatus()
+                    == FileTransferStatusChangeEvent.PREPARING)
+            {
+                transfer.fireStatusChangeEvent(
+                    FileTransferStatusChangeEvent.IN_PROGRESS,
+                    "Status changed");
+            }
+
+            if (transfer instanceof HttpUploadFileTransferJabberImpl)
+            {
+                String reason
+                    = ((HttpUploadFileTransferJabberImpl) transfer)
+                        .getFailureReason();
+
+                if (reason != null)
+                    statusReason = reason;
+            }
+            else if (jabberTransfer.getError() != null)
+            {
+                logger.error("An error occured while transfering file: "
+                    +  jabberTransfer.getError().getMessage());
+            }
+
+            if (jabberTransfer != null
+                && jabberTransfer.getException() != null)
+            {
+                logger.error("An exception occured while transfering file: ",
+                    jabberTransfer.getException());
+
+                if (jabberTransfer.getException()
+                        instanceof XMPPErrorException)
+                {
+                    StanzaError error
+                        = ((XMPPErrorException) jabberTransfer.getException())
+                            .getStanzaError();
+
+                    if (error != null
+                        && (error.getCondition() == not_acceptable
+                            || error.getCondition() == forbidden))
+                    {
+                        status = FileTransferStatusChangeEvent.REFUSED;
+                    }
+                }
+
+                statusReason = jabberTransfer.getException().getMessage();
+            }
+
+            if (initialFileSize > 0
+                && status == FileTransferStatusChangeEvent.COMPLETED
+                && transfer.getTransferedBytes() < initialFileSize)
+            {
+                status = FileTransferStatusChangeEvent.CANCELED;
+            }
+
+            transfer.fireStatusChangeEvent(status, statusReason);
+
+            // the last progress event is never throttled
+            fireProgress(progress, now);
+        }
+
+        /**
+         * Updates the transfer rate and fires a progress event.
+         *
+         * @param progress the transferred bytes
+         * @param now the current time in milliseconds
+         */
+        private void fireProgress(long progress, long now)
+        {
+            if (now > rateTime)
+            {
+                double measured
+                    = (progress - rateBytes) * 1000d / (now - rateTime);
+
+                rate
+                    = (rate < 0)
+                        ? measured
+                        : rate + RATE_SMOOTHING * (measured - rate);
+                rateTime = now;
+                rateBytes = progress;
+            }
+
+            long fileSize = this.fileSize.getAsLong();
+            long timeLeft = -1;
+
+            if (fileSize > 0 && rate > 0)
+            {
+                timeLeft
+                    = Math.round(
+                        Math.max(0, fileSize - progress) * 1000d / rate);
+            }
+
+            lastProgress = progress;
+            lastProgressTime = now;
+            transfer.fireProgressChangeEvent(
+                now, progress, Math.round(Math.max(rate, -1)), timeLeft);
+        }
+    }
+}
@@ -0,0 +1,469 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.net.ssl.*;
+
+/**
+ * Uploads files with HTTP PUT to the slots handed out by an HTTP File Upload
+ * (XEP-0363) service. The file is streamed from disk with a
+ * <tt>FileChannel</tt> in fixed length streaming mode, so it is never held in
+ * memory, and at most a fixed number of uploads run at the same time, the
+ * others wait for a free thread.
+ */
+final class HttpFileUploader
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>HttpFileUploader</tt> class and its
+     * instances for logging output.
+     */
+    private static final org.slf4j.Logger logger
+        = org.slf4j.LoggerFactory.getLogger(HttpFileUploader.class);
+
+    /**
+     * The number of bytes transferred between two progress updates and
+     * cancellation checks.
+     */
+    private static final long CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The connect and read timeout of the PUT requests in milliseconds.
+     */
+    private static final int TIMEOUT = 30 * 1000;
+
+    /**
+     * Runs the uploads.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Gives the socket factory for an HTTPS upload URL, or <tt>null</tt> if
+     * only plain HTTP uploads are allowed.
+     */
+    private final SSLSocketFactoryProvider sslSocketFactories;
+
+    /**
+     * Initializes a new <tt>HttpFileUploader</tt>.
+     *
+     * @param maxConcurrent the maximum number of uploads running at the same
+     * time
+     * @param sslSocketFactories gives the socket factory for an HTTPS upload
+     * URL or <tt>null</tt> if only plain HTTP uploads are allowed
+     */
+    HttpFileUploader(
+            int maxConcurrent,
+            SSLSocketFactoryProvider sslSocketFactories)
+    {
+        final AtomicInteger threadIndex = new AtomicInteger();
+
+        this.sslSocketFactories = sslSocketFactories;
+        this.executor
+            = new ThreadPoolExecutor(
+                    maxConcurrent, maxConcurrent,
+                    60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    r ->
+                    {
+                        Thread t
+                            = new Thread(
+                                    r,
+                                    "HttpFileUploader-"
+                                        + threadIndex.incrementAndGet());
+
+                        t.setDaemon(true);
+                        return t;
+                    });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Starts uploading a file.
+     *
+     * @param file the file to upload
+     * @param slots requests the slot to upload the file to
+     * @return the upload, whose result is the URL the file can be downloaded
+     * from
+     */
+    Upload upload(File file, SlotProvider slots)
+    {
+        Upload upload = new Upload(file);
+
+        try
+        {
+            upload.task = executor.submit(() -> run(upload, slots));
+        }
+        catch (RejectedExecutionException ex)
+        {
+            upload.result.completeExceptionally(ex);
+        }
+        return upload;
+    }
+
+    /**
+     * Stops the threads of this uploader and cancels all uploads.
+     */
+    void stop()
+    {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Requests a slot and uploads a file to it.
+     *
+     * @param upload the upload
+     * @param slots requests the slot
+     */
+    private void run(Upload upload, SlotProvider slots)
+    {
+        try
+        {
+            File file = upload.file;
+            String contentType = Files.probeContentType(file.toPath());
+
+            if (contentType == null)
+                contentType = "application/octet-stream";
+
+            upload.state = Upload.REQUESTING_SLOT;
+
+            Slot slot
+                = slots.requestSlot(file.getName(), file.length(), contentType);
+
+            upload.checkCancelled();
+            upload.state = Upload.UPLOADING;
+            put(upload, slot, contentType);
+            upload.state = Upload.COMPLETED;
+            upload.result.complete(slot.getUrl);
+        }
+        catch (Throwable t)
+        {
+            if (upload.cancelled)
+            {
+                upload.state = Upload.CANCELLED;
+                upload.result.cancel(false);
+            }
+            else
+            {
+                logger.warn("Failed to upload " + upload.file, t);
+                upload.state = Upload.FAILED;
+                upload.result.completeExceptionally(t);
+            }
+        }
+    }
+
+    /**
+     * Streams a file to a slot.
+     *
+     * @param upload the upload
+     * @param slot the slot
+     * @param contentType the content type of the file
+     * @throws IOException if the upload fails or is cancelled
+     */
+    private void put(Upload upload, Slot slot, String contentType)
+        throws IOException
+    {
+        HttpURLConnection connection
+            = (HttpURLConnection) slot.putUrl.openConnection();
+
+        upload.connection = connection;
+        try
+        {
+            if (connection instanceof HttpsURLConnection)
+            {
+                // Never fall back to the default trust of the JVM, the
+                // certificate of the upload service has to be verified.
+                if (sslSocketFactories == null)
+                {
+                    throw new IOException(
+                        "Cannot verify the certificate of " + slot.putUrl);
+                }
+                ((HttpsURLConnection) connection).setSSLSocketFactory(
+                    sslSocketFactories.getSSLSocketFactory(slot.putUrl));
+            }
+
+            long size = upload.file.length();
+
+            connection.setRequestMethod("PUT");
+            connection.setDoOutput(true);
+            connection.setUseCaches(false);
+            connection.setConnectTimeout(TIMEOUT);
+            connection.setReadTimeout(TIMEOUT);
+            connection.setFixedLengthStreamingMode(size);
+            connection.setRequestProperty("Content-Type", contentType);
+            for (Map.Entry<String, String> header : slot.headers.entrySet())
+                connection.setRequestProperty(header.getKey(), header.getValue());
+
+            try (FileChannel in
+                        = FileChannel.open(
+                            upload.file.toPath(), StandardOpenOption.READ);
+                    WritableByteChannel out
+                        = Channels.newChannel(connection.getOutputStream()))
+            {
+                long position = 0;
+
+                while (position < size)
+                {
+                    upload.checkCancelled();
+
+                    long count
+                        = in.transferTo(
+                            position,
+                            Math.min(CHUNK_SIZE, size - position),
+                            out);
+
+                    if (count <= 0)
+                        throw new EOFException(
+                            upload.file + " was truncated at " + position);
+                    position += count;
+                    upload.uploadedBytes.set(position);
+                }
+            }
+
+            int code = connection.getResponseCode();
+
+            if (code != HttpURLConnection.HTTP_OK
+                && code != HttpURLConnection.HTTP_CREATED)
+            {
+                throw new IOException(
+                    "Upload of " + upload.file + " failed with HTTP " + code
+                        + " " + connection.getResponseMessage());
+            }
+        }
+        finally
+        {
+            connection.disconnect();
+            upload.connection = null;
+        }
+    }
+
+    /**
+     * Gives the socket factories verifying the certificates of HTTPS upload
+     * URLs.
+     */
+    interface SSLSocketFactoryProvider
+    {
+        /**
+         * Gets the socket factory for an HTTPS upload URL.
+         *
+         * @param url the upload URL
+         * @return the socket factory
+         * @throws IOException if the certificate of the server cannot be
+         * verified
+         */
+        SSLSocketFactory getSSLSocketFactory(URL url)
+            throws IOException;
+    }
+
+    /**
+     * Requests upload slots.
+     */
+    interface SlotProvider
+    {
+        /**
+         * Requests a slot for a file.
+         *
+         * @param fileName the name of the file
+         * @param size the size of the file in bytes
+         * @param contentType the content type of the file
+         * @return the slot
+         * @throws Exception if no slot is granted
+         */
+        Slot requestSlot(String fileName, long size, String contentType)
+            throws Exception;
+    }
+
+    /**
+     * The URLs to upload a file to and to download it from.
+     */
+    static final class Slot
+    {
+        /**
+         * The URL to upload the file to.
+         */
+        final URL putUrl;
+
+        /**
+         * The URL to download the file from.
+         */
+        final URL getUrl;
+
+        /**
+         * The headers to send with the upload.
+         */
+        final Map<String, String> headers;
+
+        /**
+         * Initializes a new <tt>Slot</tt>.
+         *
+         * @param putUrl the URL to upload the file to
+         * @param getUrl the URL to download the file from
+         * @param headers the headers to send with the upload or <tt>null</tt>
+         */
+        Slot(URL putUrl, URL getUrl, Map<String, String> headers)
+        {
+            this.putUrl = putUrl;
+            this.getUrl = getUrl;
+            this.headers
+                = (headers == null)
+                    ? Collections.emptyMap()
+                    : new HashMap<>(headers);
+        }
+    }
+
+    /**
+     * An upload of a file.
+     */
+    static final class Upload
+    {
+        /**
+         * The upload waits for a thread.
+         */
+        static final int QUEUED = 0;
+
+        /**
+         * The slot is being requested.
+         */
+        static final int REQUESTING_SLOT = 1;
+
+        /**
+         * The file is being uploaded.
+         */
+        static final int UPLOADING = 2;
+
+        /**
+         * The file has been uploaded.
+         */
+        static final int COMPLETED = 3;
+
+        /**
+         * The upload failed.
+         */
+        static final int FAILED = 4;
+
+        /**
+         * The upload was cancelled.
+         */
+        static final int CANCELLED = 5;
+
+        /**
+         * The file to upload.
+         */
+        final File file;
+
+        /**
+         * Completes with the download URL of the file.
+         */
+        final CompletableFuture<URL> result = new CompletableFuture<>();
+
+        /**
+         * The number of bytes uploaded so far.
+         */
+        private final AtomicLong uploadedBytes = new AtomicLong();
+
+        /**
+         * The state of the upload.
+         */
+        private volatile int state = QUEUED;
+
+        /**
+         * Whether the upload was cancelled.
+         */
+        private volatile boolean cancelled = false;
+
+        /**
+         * The connection of the running PUT request.
+         */
+        private volatile HttpURLConnection connection;
+
+        /**
+         * The task running the upload.
+         */
+        private volatile Future<?> task;
+
+        /**
+         * Initializes a new <tt>Upload</tt>.
+         *
+         * @param file the file to upload
+         */
+        private Upload(File file)
+        {
+            this.file = file;
+        }
+
+        /**
+         * Gets the number of bytes uploaded so far.
+         *
+         * @return the number of uploaded bytes
+         */
+        long getUploadedBytes()
+        {
+            return uploadedBytes.get();
+        }
+
+        /**
+         * Gets the state of the upload.
+         *
+         * @return one of the state constants of <tt>Upload</tt>
+         */
+        int getState()
+        {
+            return state;
+        }
+
+        /**
+         * Cancels the upload.
+         */
+        void cancel()
+        {
+            cancelled = true;
+
+            Future<?> task = this.task;
+
+            if (task != null && task.cancel(false))
+            {
+                // it never started
+                state = CANCELLED;
+                result.cancel(false);
+            }
+
+            HttpURLConnection connection = this.connection;
+
+            if (connection != null)
+                connection.disconnect();
+        }
+
+        /**
+         * Throws if the upload was cancelled.
+         *
+         * @throws InterruptedIOException if the upload was cancelled
+         */
+        private void checkCancelled()
+            throws InterruptedIOException
+        {
+            if (cancelled)
+                throw new InterruptedIOException("Upload cancelled");
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.event.*;
+
+import org.jivesoftware.smack.packet.*;
+
+/**
+ * An outgoing file transfer that uploads the file to an HTTP File Upload
+ * (XEP-0363) service and sends the download URL to the receiver, a contact or
+ * a chat room, in a message once the upload completes.
+ */
+public class HttpUploadFileTransferJabberImpl
+    extends AbstractFileTransfer
+{
+    /**
+     * The <tt>Logger</tt> used by the
+     * <tt>HttpUploadFileTransferJabberImpl</tt> class and its instances for
+     * logging output.
+     */
+    private static final org.slf4j.Logger logger
+        = org.slf4j.LoggerFactory.getLogger(
+            HttpUploadFileTransferJabberImpl.class);
+
+    /**
+     * The name of the out of band data (XEP-0066) element.
+     */
+    static final String OOB_ELEMENT = "x";
+
+    /**
+     * The namespace of the out of band data (XEP-0066) element.
+     */
+    static final String OOB_NAMESPACE = "jabber:x:oob";
+
+    /**
+     * The unique id of this transfer.
+     */
+    private final String id = UUID.randomUUID().toString();
+
+    /**
+     * The contact we are sending the file to or <tt>null</tt> if it is sent
+     * to a chat room.
+     */
+    private final Contact receiver;
+
+    /**
+     * The file to send.
+     */
+    private final File file;
+
+    /**
+     * Sends the download URL to the receiver.
+     */
+    private final UrlSender urlSender;
+
+    /**
+     * The running upload, <tt>null</tt> before {@link #start} is called.
+     */
+    private HttpFileUploader.Upload upload;
+
+    /**
+     * The status the transfer ended with or <tt>-1</tt> while it is running.
+     */
+    private volatile int endStatus = -1;
+
+    /**
+     * The reason the transfer failed or <tt>null</tt>.
+     */
+    private volatile String failureReason;
+
+    /**
+     * Creates an <tt>HttpUploadFileTransferJabberImpl</tt>.
+     *
+     * @param receiver the destination contact or <tt>null</tt> if the file
+     * is sent to a chat room
+     * @param file the file to send
+     * @param urlSender sends the download URL to the receiver
+     */
+    public HttpUploadFileTransferJabberImpl(
+        Contact receiver,
+        File file,
+        UrlSender urlSender)
+    {
+        this.receiver = receiver;
+        this.file = file;
+        this.urlSender = urlSender;
+    }
+
+    /**
+     * Creates the out of band data (XEP-0066) element announcing the download
+     * URL of a file, so that clients can show the file instead of the bare
+     * URL.
+     *
+     * @param url the download URL
+     * @return the out of band data element
+     */
+    static ExtensionElement createOutOfBandData(URL url)
+    {
+        return StandardExtensionElement.builder(OOB_ELEMENT, OOB_NAMESPACE)
+            .addElement("url", url.toExternalForm())
+            .build();
+    }
+
+    /**
+     * Starts uploading the file.
+     *
+     * @param uploader the uploader to run the upload with
+     * @param slots requests the upload slot
+     */
+    synchronized void start(
+        HttpFileUploader uploader,
+        HttpFileUploader.SlotProvider slots)
+    {
+        upload = uploader.upload(file, slots);
+        upload.result.whenComplete(this::uploadEnded);
+    }
+
+    /**
+     * Sends the download URL of the uploaded file to the receiver or records
+     * why the upload failed.
+     *
+     * @param url the download URL or <tt>null</tt> if the upload failed
+     * @param error the reason the upload failed or <tt>null</tt>
+     */
+    private void uploadEnded(URL url, Throwable error)
+    {
+        if (error instanceof CancellationException)
+        {
+            endStatus = FileTransferStatusChangeEvent.CANCELED;
+            return;
+        }
+        if (error != null)
+        {
+            if (error instanceof CompletionException
+                && error.getCause() != null)
+            {
+                error = error.getCause();
+            }
+            failureReason = error.getMessage();
+            endStatus = FileTransferStatusChangeEvent.FAILED;
+            return;
+        }
+
+        try
+        {
+            urlSender.sendUrl(url);
+            endStatus = FileTransferStatusChangeEvent.COMPLETED;
+        }
+        catch (Exception ex)
+        {
+            logger.error("Failed to send the URL of " + file, ex);
+            failureReason = ex.getMessage();
+            endStatus = FileTransferStatusChangeEvent.FAILED;
+        }
+    }
+
+    /**
+     * Gets the current status of the upload as one of the
+     * <tt>FileTransferStatusChangeEvent</tt> statuses.
+     *
+     * @return the current status of the upload
+     */
+    int getUploadStatus()
+    {
+        int endStatus = this.endStatus;
+
+        if (endStatus != -1)
+            return endStatus;
+
+        HttpFileUploader.Upload upload;
+
+        synchronized (this)
+        {
+            upload = this.upload;
+        }
+        return (upload != null
+                    && upload.getState() >= HttpFileUploader.Upload.UPLOADING)
+            ? FileTransferStatusChangeEvent.IN_PROGRESS
+            : FileTransferStatusChangeEvent.PREPARING;
+    }
+
+    /**
+     * Gets the reason the transfer failed.
+     *
+     * @return the reason the transfer failed or <tt>null</tt>
+     */
+    String getFailureReason()
+    {
+        return failureReason;
+    }
+
+    /**
+     * Cancels the file transfer.
+     */
+    @Override
+    public synchronized void cancel()
+    {
+        if (upload != null)
+            upload.cancel();
+    }
+
+    /**
+     * Returns the number of bytes already uploaded.
+     *
+     * @return the number of bytes already uploaded
+     */
+    @Override
+    public synchronized long getTransferedBytes()
+    {
+        return (upload == null) ? 0 : upload.getUploadedBytes();
+    }
+
+    /**
+     * The direction is outgoing.
+     * @return OUT.
+     */
+    public int getDirection()
+    {
+        return OUT;
+    }
+
+    /**
+     * Returns the local file that is being transferred.
+     *
+     * @return the file
+     */
+    public File getLocalFile()
+    {
+        return file;
+    }
+
+    /**
+     * The contact we are sending the file.
+     * @return the receiver or <tt>null</tt> if the file is sent to a chat
+     * room.
+     */
+    public Contact getContact()
+    {
+        return receiver;
+    }
+
+    /**
+     * The unique id.
+     * @return the id.
+     */
+    public String getID()
+    {
+        return id;
+    }
+
+    /**
+     * Sends the download URL of an uploaded file to its receiver.
+     */
+    interface UrlSender
+    {
+        /**
+         * Sends the download URL of the file.
+         *
+         * @param url the download URL
+         * @throws Exception if the URL cannot be sent
+         */
+        void sendUrl(URL url)
+            throws Exception;
+    }
+}
@@ -184,9 +184,8 @@ public FileTransfer acceptFile(File file)
 
             jabberTransfer.receiveFile(file);
 
-            new OperationSetFileTransferJabberImpl
-                .FileTransferProgressThread(
-                jabberTransfer, incomingTransfer, getFileSize()).start();
+            FileTransferProgressSampler.getInstance().watch(
+                jabberTransfer, incomingTransfer, getFileSize());
         }
         catch (IOException | SmackException e)
         {
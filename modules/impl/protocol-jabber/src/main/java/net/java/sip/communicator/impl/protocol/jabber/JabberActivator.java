@@ -29,6 +29,7 @@
 import net.java.sip.communicator.util.osgi.DependentActivator;
 import net.java.sip.communicator.util.osgi.ServiceUtils;
 import org.jitsi.service.configuration.*;
+import org.jitsi.service.fileaccess.*;
 import org.jitsi.service.neomedia.*;
 import org.jitsi.service.packetlogging.*;
 import org.jitsi.service.resources.*;
@@ -132,6 +133,11 @@
     private static GlobalDisplayDetailsService globalDisplayDetailsService
         = null;
 
+    /**
+     * The file access service instance.
+     */
+    private static FileAccessService fileAccessService = null;
+
     public JabberActivator()
     {
         super(
@@ -491,4 +497,20 @@ public static GlobalDisplayDetailsService getGlobalDisplayDetailsService()
         }
         return globalDisplayDetailsService;
     }
+
+    /**
+     * Returns the <tt>FileAccessService</tt> obtained from the bundle context.
+     * @return the <tt>FileAccessService</tt> obtained from the bundle context
+     */
+    public static FileAccessService getFileAccessService()
+    {
+        if(fileAccessService == null)
+        {
+            fileAccessService
+                = ServiceUtils.getService(
+                        bundleContext,
+                        FileAccessService.class);
+        }
+        return fileAccessService;
+    }
 }
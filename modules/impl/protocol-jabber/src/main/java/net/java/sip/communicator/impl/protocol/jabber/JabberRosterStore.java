@@ -0,0 +1,156 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.io.*;
+
+import net.java.sip.communicator.service.protocol.*;
+import org.jitsi.service.configuration.*;
+import org.jitsi.service.fileaccess.*;
+import org.jivesoftware.smack.roster.*;
+import org.jivesoftware.smack.roster.rosterstore.*;
+
+/**
+ * Keeps a copy of the roster of each account on disk, so that servers
+ * supporting roster versioning (XEP-0237) only send the changes since the
+ * last login instead of the whole roster.
+ */
+final class JabberRosterStore
+{
+    /**
+     * The logger.
+     */
+    private static final org.slf4j.Logger logger
+        = org.slf4j.LoggerFactory.getLogger(JabberRosterStore.class);
+
+    /**
+     * The property which disables the roster store.
+     */
+    static final String PNAME_ROSTER_STORE_DISABLED
+        = "net.java.sip.communicator.impl.protocol.jabber"
+            + ".ROSTER_STORE_DISABLED";
+
+    /**
+     * The directory in the cache directory holding the rosters.
+     */
+    private static final String STORE_DIR = "roster";
+
+    private JabberRosterStore()
+    {
+    }
+
+    /**
+     * Sets the on-disk roster store of an account to a roster. Must be called
+     * before the login, as the roster is requested right after it.
+     *
+     * @param roster the roster of the account's connection
+     * @param accountID the account
+     */
+    static void configure(Roster roster, AccountID accountID)
+    {
+        ConfigurationService config
+            = JabberActivator.getConfigurationService();
+        if (config != null
+            && config.getBoolean(PNAME_ROSTER_STORE_DISABLED, false))
+        {
+            return;
+        }
+
+        File dir = getDirectory(accountID);
+        if (dir == null)
+            return;
+
+        RosterStore store = open(dir);
+        if (store != null)
+            roster.setRosterStore(store);
+    }
+
+    /**
+     * Opens the roster store in a directory, initializing it if it does not
+     * exist yet or is corrupt.
+     *
+     * @param dir the directory of the roster store
+     * @return the roster store or <tt>null</tt> if it cannot be created
+     */
+    static RosterStore open(File dir)
+    {
+        if (!dir.isDirectory() && !dir.mkdirs())
+        {
+            logger.warn("Cannot create roster store " + dir);
+            return null;
+        }
+
+        RosterStore store = DirectoryRosterStore.open(dir);
+        if (store == null)
+        {
+            // not yet initialized or corrupt, in which case the entries left
+            // behind do not match any roster version
+            store = DirectoryRosterStore.init(dir);
+            if (store != null)
+                store.resetStore();
+        }
+        return store;
+    }
+
+    /**
+     * Deletes the on-disk roster of an account.
+     *
+     * @param accountID the account that was removed
+     */
+    static void remove(AccountID accountID)
+    {
+        File dir = getDirectory(accountID);
+        if (dir == null || !dir.isDirectory())
+            return;
+
+        File[] files = dir.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+                file.delete();
+        }
+        if (!dir.delete())
+            logger.warn("Cannot delete roster store " + dir);
+    }
+
+    /**
+     * Returns the directory of the roster of an account.
+     *
+     * @param accountID the account
+     * @return the directory or <tt>null</tt> if there is no place to store it
+     */
+    private static File getDirectory(AccountID accountID)
+    {
+        FileAccessService fas = JabberActivator.getFileAccessService();
+        if (fas == null)
+            return null;
+
+        String name
+            = accountID.getAccountUniqueID().replaceAll("[^\\w.@-]", "_");
+        try
+        {
+            return fas.getPrivatePersistentDirectory(
+                STORE_DIR + File.separator + name, FileCategory.CACHE);
+        }
+        catch (Exception e)
+        {
+            logger.warn("Cannot access roster store of " + accountID, e);
+            return null;
+        }
+    }
+}
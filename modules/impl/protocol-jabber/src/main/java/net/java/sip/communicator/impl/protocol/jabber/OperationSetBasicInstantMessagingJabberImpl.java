@@ -85,6 +85,30 @@
      */
     private SmackMessageListener smackMessageListener = null;
 
+    /**
+     * Processes the carbon copies of the messages sent or received by the
+     * other resources of the account. A single instance is used so that it
+     * is added only once to the <tt>CarbonManager</tt> of a connection which
+     * is registered again after resuming its session.
+     */
+    private final CarbonCopyReceivedListener carbonCopyListener
+        = new CarbonCopyReceivedListener()
+        {
+            @Override
+            public void onCarbonCopyReceived(Direction direction,
+                org.jivesoftware.smack.packet.Message carbonCopy,
+                org.jivesoftware.smack.packet.Message wrappingMessage)
+            {
+                processMessage(carbonCopy, direction == Direction.sent);
+            }
+        };
+
+    /**
+     * The <tt>CarbonManager</tt> {@link #carbonCopyListener} has been added
+     * to.
+     */
+    private CarbonManager carbonManager = null;
+
     /**
      * Contains the complete jid of a specific user and the time that it was
      * last used so that we could remove it after a certain point.
@@ -560,6 +584,26 @@ public void sendInstantMessage( Contact to,
         fireMessageEvent(msgDelivered);
     }
 
+    /**
+     * Sends the <tt>message</tt> with the given XMPP extensions to the
+     * destination indicated by the <tt>to</tt> contact.
+     *
+     * @param to the <tt>Contact</tt> to send <tt>message</tt> to
+     * @param message the <tt>Message</tt> to send.
+     * @param extensions the XMPP extensions to attach to the message
+     * @throws OperationFailedException if sending the message fails
+     */
+    void sendInstantMessage(Contact to,
+                            Message message,
+                            ExtensionElement[] extensions)
+        throws OperationFailedException
+    {
+        MessageDeliveredEvent msgDelivered =
+            sendMessage(to, null, message, extensions);
+
+        fireMessageEvent(msgDelivered);
+    }
+
     /**
      * Replaces the message with ID <tt>correctedMessageUID</tt> sent to
      * the contact <tt>to</tt> with the message <tt>message</tt>
@@ -670,6 +714,13 @@ else if(evt.getNewState() == RegistrationState.UNREGISTERED
                 }
 
                 smackMessageListener = null;
+
+                CarbonManager cm = carbonManager;
+                if(cm != null)
+                {
+                    cm.removeCarbonCopyReceivedListener(carbonCopyListener);
+                    carbonManager = null;
+                }
             }
         }
     }
@@ -691,17 +742,8 @@ private void initAdditionalServices()
             try
             {
                 cm.enableCarbons();
-                cm.addCarbonCopyReceivedListener(new CarbonCopyReceivedListener()
-                {
-
-                    @Override
-                    public void onCarbonCopyReceived(Direction direction,
-                        org.jivesoftware.smack.packet.Message carbonCopy,
-                        org.jivesoftware.smack.packet.Message wrappingMessage)
-                    {
-                        processMessage(carbonCopy, direction == Direction.sent);
-                    }
-                });
+                cm.addCarbonCopyReceivedListener(carbonCopyListener);
+                carbonManager = cm;
             }
             catch (XMPPException | SmackException | InterruptedException e)
             {
@@ -20,44 +20,83 @@
 
 import java.io.*;
 import java.lang.reflect.*;
+import java.net.*;
+import java.security.*;
 import java.util.*;
+
+import javax.net.ssl.*;
+
 import org.jitsi.xmpp.extensions.thumbnail.*;
+import net.java.sip.communicator.service.certificate.*;
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.FileTransfer;
 import net.java.sip.communicator.service.protocol.event.*;
 import net.java.sip.communicator.service.protocol.event.FileTransferListener;
 import net.java.sip.communicator.service.protocol.jabberconstants.*;
+import net.java.sip.communicator.util.osgi.*;
+
+import org.jitsi.service.configuration.*;
 
 import org.jivesoftware.smack.*;
-import org.jivesoftware.smack.XMPPException.*;
 import org.jivesoftware.smack.packet.*;
 import org.jivesoftware.smack.roster.*;
 import org.jivesoftware.smackx.filetransfer.FileTransfer.Status;
 import org.jivesoftware.smackx.filetransfer.*;
+import org.jivesoftware.smackx.httpfileupload.*;
+import org.jivesoftware.smackx.httpfileupload.element.*;
 import org.jivesoftware.smackx.si.packet.*;
 import org.jxmpp.jid.*;
 import org.jxmpp.jid.impl.*;
 import org.jxmpp.stringprep.*;
 
-import static org.jivesoftware.smack.packet.StanzaError.Condition.*;
-
 /**
  * The Jabber implementation of the <tt>OperationSetFileTransfer</tt>
- * interface.
+ * interface. Files are also shared with chat rooms through the HTTP File
+ * Upload service of the server.
  *
  * @author Gregory Bande
  * @author Nicolas Riegel
  * @author Yana Stamcheva
  */
 public class OperationSetFileTransferJabberImpl
-    implements OperationSetFileTransfer
+    implements OperationSetFileTransfer,
+               OperationSetChatRoomFileTransfer
 {
     /**
      * The logger for this class.
      */
     private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(OperationSetFileTransferJabberImpl.class);
 
-     /**
+    /**
+     * The name of the property which specifies whether files are sent to
+     * contacts with HTTP File Upload (XEP-0363) when the server offers it,
+     * disabled by default. When disabled HTTP upload is only used for contacts
+     * that have no resource supporting stream initiated file transfers and
+     * for chat rooms.
+     */
+    static final String PNAME_HTTP_FILE_UPLOAD_ENABLED
+        = "net.java.sip.communicator.impl.protocol.jabber."
+            + "HTTP_FILE_UPLOAD_ENABLED";
+
+    /**
+     * The name of the property which specifies how many HTTP uploads run at
+     * the same time across all accounts.
+     */
+    static final String PNAME_HTTP_FILE_UPLOAD_MAX_CONCURRENT
+        = "net.java.sip.communicator.impl.protocol.jabber."
+            + "HTTP_FILE_UPLOAD_MAX_CONCURRENT";
+
+    /**
+     * The default number of HTTP uploads running at the same time.
+     */
+    static final int DEFAULT_HTTP_FILE_UPLOAD_MAX_CONCURRENT = 3;
+
+    /**
+     * The uploader shared by all accounts.
+     */
+    private static HttpFileUploader httpFileUploader;
+
+    /**
      * The provider that created us.
      */
     private final ProtocolProviderServiceJabberImpl jabberProvider;
@@ -123,6 +162,8 @@ public FileTransfer sendFile(Contact toContact, File file)
                 throw new IllegalArgumentException(
                     "File length exceeds the allowed one for this protocol");
 
+            UploadService uploadService = getUploadService(file.length());
+
             EntityFullJid fullJid = null;
             // Find the jid of the contact which support file transfer
             // and is with highest priority if more than one found
@@ -179,6 +220,12 @@ else if(priority == bestPriority && jabberStatus != null)
                 }
             }
 
+            if (uploadService != null
+                && (fullJid == null || isHttpUploadEnabled()))
+            {
+                return sendFileWithHttpUpload(toContact, file);
+            }
+
             // First we check if file transfer is at all supported for this
             // contact.
             if (fullJid == null)
@@ -206,9 +253,9 @@ else if(priority == bestPriority && jabberStatus != null)
             // Send the file through the Jabber file transfer.
             transfer.sendFile(file, "Sending file");
 
-            // Start the status and progress thread.
-            new FileTransferProgressThread(
-                transfer, outgoingTransfer).start();
+            // Start updating the status and progress.
+            FileTransferProgressSampler.getInstance().watch(
+                transfer, outgoingTransfer, 0);
         }
         catch(XmppStringprepException | SmackException e)
         {
@@ -222,6 +269,216 @@ else if(priority == bestPriority && jabberStatus != null)
         return outgoingTransfer;
     }
 
+    /**
+     * Uploads a file to the HTTP File Upload service of the server and sends
+     * its download URL to a contact.
+     *
+     * @param toContact the contact that should receive the file
+     * @param file the file to send
+     * @return the transfer object
+     */
+    private FileTransfer sendFileWithHttpUpload(Contact toContact, File file)
+    {
+        OperationSetBasicInstantMessagingJabberImpl im
+            = (OperationSetBasicInstantMessagingJabberImpl)
+                jabberProvider.getOperationSet(
+                    OperationSetBasicInstantMessaging.class);
+        HttpUploadFileTransferJabberImpl outgoingTransfer
+            = new HttpUploadFileTransferJabberImpl(
+                toContact,
+                file,
+                url -> im.sendInstantMessage(
+                    toContact,
+                    im.createMessage(url.toExternalForm()),
+                    new ExtensionElement[]
+                        {
+                            HttpUploadFileTransferJabberImpl
+                                .createOutOfBandData(url)
+                        }));
+
+        fireFileTransferCreated(
+            new FileTransferCreatedEvent(outgoingTransfer, new Date()));
+
+        startHttpUpload(outgoingTransfer);
+        return outgoingTransfer;
+    }
+
+    /**
+     * Uploads a file to the HTTP File Upload service of the server and sends
+     * its download URL to a chat room, so that all its members receive the
+     * file with a single upload.
+     *
+     * @param chatRoom the chat room that should receive the file
+     * @param file the file to send
+     * @return the transfer object
+     */
+    public FileTransfer sendFile(ChatRoom chatRoom, File file)
+        throws  IllegalStateException,
+                IllegalArgumentException,
+                OperationNotSupportedException
+    {
+        if (!(chatRoom instanceof ChatRoomJabberImpl))
+        {
+            throw new IllegalArgumentException(
+                "The specified chat room is not a Jabber chat room: "
+                    + chatRoom);
+        }
+
+        assertConnected();
+
+        if(file.length() > getMaximumFileLength())
+            throw new IllegalArgumentException(
+                "File length exceeds the allowed one for this protocol");
+
+        if (getUploadService(file.length()) == null)
+        {
+            throw new OperationNotSupportedException(
+                "The server does not accept uploads of " + file.length()
+                    + " bytes.");
+        }
+
+        ChatRoomJabberImpl room = (ChatRoomJabberImpl) chatRoom;
+        HttpUploadFileTransferJabberImpl outgoingTransfer
+            = new HttpUploadFileTransferJabberImpl(
+                null,
+                file,
+                url -> room.sendFileUrl(
+                    url.toExternalForm(),
+                    HttpUploadFileTransferJabberImpl
+                        .createOutOfBandData(url)));
+
+        startHttpUpload(outgoingTransfer);
+        return outgoingTransfer;
+    }
+
+    /**
+     * Starts uploading the file of a transfer and reporting its progress.
+     *
+     * @param outgoingTransfer the transfer to start
+     */
+    private void startHttpUpload(
+        HttpUploadFileTransferJabberImpl outgoingTransfer)
+    {
+        HttpFileUploadManager manager
+            = HttpFileUploadManager.getInstanceFor(
+                jabberProvider.getConnection());
+
+        outgoingTransfer.start(
+            getHttpFileUploader(),
+            (fileName, size, contentType) ->
+            {
+                Slot slot = manager.requestSlot(fileName, size, contentType);
+
+                return new HttpFileUploader.Slot(
+                    slot.getPutUrl(), slot.getGetUrl(), slot.getHeaders());
+            });
+        FileTransferProgressSampler.getInstance().watch(outgoingTransfer);
+    }
+
+    /**
+     * Gets the HTTP File Upload service to send a file with.
+     *
+     * @param size the size of the file
+     * @return the upload service or <tt>null</tt> if the server offers none
+     * accepting files of that size
+     */
+    private UploadService getUploadService(long size)
+    {
+        XMPPConnection connection = jabberProvider.getConnection();
+
+        if (connection == null)
+            return null;
+
+        HttpFileUploadManager manager
+            = HttpFileUploadManager.getInstanceFor(connection);
+
+        if (!manager.isUploadServiceDiscovered())
+            return null;
+
+        UploadService uploadService = manager.getDefaultUploadService();
+
+        return (uploadService != null && uploadService.acceptsFileOfSize(size))
+            ? uploadService
+            : null;
+    }
+
+    /**
+     * Checks whether HTTP File Upload is preferred over stream initiated file
+     * transfers.
+     *
+     * @return <tt>true</tt> if HTTP File Upload is preferred
+     */
+    private static boolean isHttpUploadEnabled()
+    {
+        ConfigurationService cfg = JabberActivator.getConfigurationService();
+
+        return cfg != null
+            && cfg.getBoolean(PNAME_HTTP_FILE_UPLOAD_ENABLED, false);
+    }
+
+    /**
+     * Gets the uploader shared by all accounts, creating it if needed.
+     *
+     * @return the <tt>HttpFileUploader</tt>
+     */
+    private static synchronized HttpFileUploader getHttpFileUploader()
+    {
+        if (httpFileUploader == null)
+        {
+            ConfigurationService cfg
+                = JabberActivator.getConfigurationService();
+            int maxConcurrent
+                = (cfg == null)
+                    ? DEFAULT_HTTP_FILE_UPLOAD_MAX_CONCURRENT
+                    : cfg.getInt(
+                        PNAME_HTTP_FILE_UPLOAD_MAX_CONCURRENT,
+                        DEFAULT_HTTP_FILE_UPLOAD_MAX_CONCURRENT);
+
+            if (maxConcurrent <= 0)
+                maxConcurrent = DEFAULT_HTTP_FILE_UPLOAD_MAX_CONCURRENT;
+            httpFileUploader
+                = new HttpFileUploader(
+                    maxConcurrent,
+                    OperationSetFileTransferJabberImpl::getSSLSocketFactory);
+        }
+        return httpFileUploader;
+    }
+
+    /**
+     * Gets a socket factory verifying the certificate of an HTTPS upload URL
+     * with the <tt>CertificateService</tt>.
+     *
+     * @param url the upload URL
+     * @return the socket factory
+     * @throws IOException if the certificate service is not available or
+     * fails, the upload must not fall back to the default trust of the JVM
+     */
+    private static SSLSocketFactory getSSLSocketFactory(URL url)
+        throws IOException
+    {
+        CertificateService cvs
+            = ServiceUtils.getService(
+                JabberActivator.getBundleContext(), CertificateService.class);
+
+        if (cvs == null)
+        {
+            throw new IOException(
+                "No certificate service to verify " + url.getHost());
+        }
+
+        try
+        {
+            return cvs.getSSLContext(cvs.getTrustManager(url.getHost()))
+                .getSocketFactory();
+        }
+        catch (GeneralSecurityException ex)
+        {
+            logger.error("Failed to verify the certificate of " + url, ex);
+            throw new IOException(
+                "Failed to verify the certificate of " + url.getHost(), ex);
+        }
+    }
+
     /**
      * Sends a file transfer request to the given <tt>toContact</tt> by
      * specifying the local and remote file path and the <tt>fromContact</tt>,
@@ -498,134 +755,6 @@ void fireFileTransferCreated(FileTransferCreatedEvent event)
         }
     }
 
-    /**
-     * Updates file transfer progress and status while sending or receiving a
-     * file.
-     */
-    protected static class FileTransferProgressThread extends Thread
-    {
-        private final org.jivesoftware.smackx.filetransfer.FileTransfer
-            jabberTransfer;
-        private final AbstractFileTransfer fileTransfer;
-
-        private long initialFileSize;
-
-        public FileTransferProgressThread(
-            org.jivesoftware.smackx.filetransfer.FileTransfer jabberTransfer,
-            AbstractFileTransfer transfer,
-            long initialFileSize)
-        {
-            this.jabberTransfer = jabberTransfer;
-            this.fileTransfer = transfer;
-            this.initialFileSize = initialFileSize;
-        }
-
-        public FileTransferProgressThread(
-            org.jivesoftware.smackx.filetransfer.FileTransfer jabberTransfer,
-            AbstractFileTransfer transfer)
-        {
-            this.jabberTransfer = jabberTransfer;
-            this.fileTransfer = transfer;
-        }
-
-        /**
-         * Thread entry point.
-         */
-        @Override
-        public void run()
-        {
-            int status;
-            long progress;
-            String statusReason = "";
-
-            while (true)
-            {
-                try
-                {
-                    Thread.sleep(10);
-
-                    status = parseJabberStatus(jabberTransfer.getStatus());
-                    progress = fileTransfer.getTransferedBytes();
-
-                    if (status == FileTransferStatusChangeEvent.FAILED
-                        || status == FileTransferStatusChangeEvent.COMPLETED
-                        || status == FileTransferStatusChangeEvent.CANCELED
-                        || status == FileTransferStatusChangeEvent.REFUSED)
-                    {
-                        if (fileTransfer instanceof
-                                OutgoingFileTransferJabberImpl)
-                        {
-                            ((OutgoingFileTransferJabberImpl) fileTransfer)
-                                .removeThumbnailHandler();
-                        }
-
-                        // sometimes a filetransfer can be preparing
-                        // and than completed :
-                        // transfered in one iteration of current thread
-                        // so it won't go through intermediate state - inProgress
-                        // make sure this won't happen
-                        if(status == FileTransferStatusChangeEvent.COMPLETED
-                            && fileTransfer.getStatus()
-                                == FileTransferStatusChangeEvent.PREPARING)
-                        {
-                            fileTransfer.fireStatusChangeEvent(
-                                FileTransferStatusChangeEvent.IN_PROGRESS,
-                                "Status changed");
-                            fileTransfer.fireProgressChangeEvent(
-                                System.currentTimeMillis(), progress);
-                        }
-
-                        break;
-                    }
-
-                    fileTransfer.fireStatusChangeEvent(status, "Status changed");
-                    fileTransfer.fireProgressChangeEvent(
-                        System.currentTimeMillis(), progress);
-                }
-                catch (InterruptedException e)
-                {
-                    if (logger.isDebugEnabled())
-                        logger.debug("Unable to sleep thread.", e);
-                }
-            }
-
-            if (jabberTransfer.getError() != null)
-            {
-                logger.error("An error occured while transfering file: "
-                    +  jabberTransfer.getError().getMessage());
-            }
-
-            if (jabberTransfer.getException() != null)
-            {
-                logger.error("An exception occured while transfering file: ",
-                    jabberTransfer.getException());
-
-                if(jabberTransfer.getException() instanceof XMPPErrorException)
-                {
-                    StanzaError error = ((XMPPErrorException)
-                        jabberTransfer.getException()).getStanzaError();
-                    if (error != null)
-                        if(error.getCondition() == not_acceptable
-                           || error.getCondition() == forbidden)
-                            status = FileTransferStatusChangeEvent.REFUSED;
-                }
-
-                statusReason = jabberTransfer.getException().getMessage();
-            }
-
-            if (initialFileSize > 0
-                && status == FileTransferStatusChangeEvent.COMPLETED
-                && fileTransfer.getTransferedBytes() < initialFileSize)
-            {
-                status = FileTransferStatusChangeEvent.CANCELED;
-            }
-
-            fileTransfer.fireStatusChangeEvent(status, statusReason);
-            fileTransfer.fireProgressChangeEvent(
-                System.currentTimeMillis(), progress);
-        }
-    }
-
     /**
      * Parses the given Jabber status to a <tt>FileTransfer</tt> interface
      * status.
@@ -633,7 +762,7 @@ public void run()
      * @param jabberStatus the Jabber status to parse
      * @return the parsed status
      */
-    private static int parseJabberStatus(Status jabberStatus)
+    static int parseJabberStatus(Status jabberStatus)
     {
         if (jabberStatus.equals(Status.complete))
             return FileTransferStatusChangeEvent.COMPLETED;
@@ -114,6 +114,11 @@
      */
     private JabberSubscriptionListener subscribtionPacketListener = null;
 
+    /**
+     * Listens for the photo updates carried by the presences of contacts.
+     */
+    private StanzaListener contactPhotoPresenceListener = null;
+
     /**
      * Current resource priority.
      */
@@ -1129,17 +1134,13 @@ public void registrationStateChanged(RegistrationStateChangeEvent evt)
 
             if(evt.getNewState() == RegistrationState.REGISTERING)
             {
-                // we will add listener for RosterPackets
-                // as this will indicate when one is received
-                // and we are ready to dispatch the contact list
-                // note that our listener will be added just before the
-                // one used in the Roster itself, but later we
-                // will wait for it to be ready
-                // (inside method XMPPConnection.getRoster())
-                parentProvider.getConnection().addAsyncStanzaListener(
-                    new ServerStoredListInit(),
-                    new StanzaTypeFilter(RosterPacket.class)
-                );
+                // we will add a listener for the roster being loaded as
+                // this will indicate we are ready to dispatch the contact
+                // list. With roster versioning the server may not send the
+                // roster at all when it didn't change, in which case it is
+                // loaded from the local roster store
+                Roster.getInstanceFor(parentProvider.getConnection())
+                    .addRosterLoadedListener(new ServerStoredListInit());
 
                 // will be used to store presence events till roster is
                 // initialized
@@ -1222,6 +1223,12 @@ private void clearConnectionListeners()
             subscribtionPacketListener = null;
             contactChangesListener = null;
         }
+
+        if(connection != null && contactPhotoPresenceListener != null)
+        {
+            connection.removeAsyncStanzaListener(contactPhotoPresenceListener);
+            contactPhotoPresenceListener = null;
+        }
     }
 
     /**
@@ -1912,21 +1919,24 @@ else if(response.getResponseCode()
     }
 
     /**
-     * Runnable that resolves our list against the server side roster.
-     * This thread is the one which will call getRoster for the first time.
-     * And if roster is currently processing will wait for it (the wait
-     * is internal into XMPPConnection.getRoster method).
+     * Runnable that resolves our list against the server side roster once
+     * the roster is loaded, either from the server or from the local roster
+     * store.
      */
     private class ServerStoredListInit
         implements Runnable,
-                   StanzaListener
+                   RosterLoadedListener
     {
         public void run()
         {
-            // we are already notified lets remove us from the packet
-            // listener
-            parentProvider.getConnection()
-                .removeAsyncStanzaListener(this);
+            // we are already notified lets remove us from the roster
+            // listeners
+            XMPPConnection connection = parentProvider.getConnection();
+            if (connection != null)
+            {
+                Roster.getInstanceFor(connection)
+                    .removeRosterLoadedListener(this);
+            }
 
             // init ssList
             ssContactList.init(contactChangesListener);
@@ -1937,21 +1947,24 @@ public void run()
         }
 
         /**
-         * When roster packet with no error is received we are ready to
-         * to dispatch the contact list, doing it in different thread
-         * to avoid blocking xmpp packet receiving.
-         * @param packet the roster packet
+         * When the roster is loaded we are ready to dispatch the contact
+         * list, doing it in different thread to avoid blocking xmpp packet
+         * receiving.
+         * @param roster the loaded roster
          */
-        public void processStanza(Stanza packet)
+        public void onRosterLoaded(Roster roster)
         {
-            // don't process packets that are errors
-            if(packet.getError() != null)
-            {
-                return;
-            }
-
             new Thread(this, getClass().getName()).start();
         }
+
+        /**
+         * Loading the roster failed, the contact list stays unresolved.
+         * @param exception the reason of the failure
+         */
+        public void onRosterLoadingFailed(Exception exception)
+        {
+            logger.error("Failed to load the roster", exception);
+        }
     }
 
     /**
@@ -2029,17 +2042,25 @@ public void updateAccountPhotoPresenceExtension(byte[] imageBytes)
      */
     public void createContactPhotoPresenceListener()
     {
-        // Registers the listener.
-        parentProvider.getConnection().addAsyncStanzaListener(
-            new StanzaListener()
+        XMPPConnection connection = parentProvider.getConnection();
+
+        // a resumed connection still has the listener
+        if(contactPhotoPresenceListener != null)
+            connection.removeAsyncStanzaListener(contactPhotoPresenceListener);
+
+        contactPhotoPresenceListener = new StanzaListener()
+        {
+            @Override
+            public void processStanza(Stanza packet)
             {
-                @Override
-                public void processStanza(Stanza packet)
-                {
-                    // Calls the parser to manages this presence packet.
-                    parseContactPhotoPresence(packet);
-                }
-            },
+                // Calls the parser to manages this presence packet.
+                parseContactPhotoPresence(packet);
+            }
+        };
+
+        // Registers the listener.
+        connection.addAsyncStanzaListener(
+            contactPhotoPresenceListener,
             // Creates a filter to only listen to presence packet with the
             // element name "x" and the namespace "vcard-temp:x:update".
             new AndFilter(new StanzaTypeFilter(Presence.class),
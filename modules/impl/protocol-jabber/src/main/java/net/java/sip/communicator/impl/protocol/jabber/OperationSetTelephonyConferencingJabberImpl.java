@@ -208,26 +208,15 @@ private void notify(CallPeer callPeer)
             logger.warn("Failed to retrieve DiscoverInfo for " + to, xmppe);
         }
 
-        ConferenceInfoDocument currentConfInfo
-                = getCurrentConferenceInfo(callPeerJabber);
-        ConferenceInfoDocument lastSentConfInfo
-                = callPeerJabber.getLastConferenceInfoSent();
-
-        ConferenceInfoDocument diff;
-
-        if (lastSentConfInfo == null)
-            diff = currentConfInfo;
-        else
-            diff = getConferenceInfoDiff(lastSentConfInfo, currentConfInfo);
+        ConferenceInfoSnapshot currentConfInfo
+                = getCurrentConferenceInfoSnapshot(callPeerJabber);
+        ConferenceInfoDocument diff
+                = (currentConfInfo == null)
+                    ? null
+                    : getConferenceInfoUpdate(callPeerJabber, currentConfInfo);
 
         if (diff != null)
         {
-            int newVersion
-                    = lastSentConfInfo == null
-                    ? 1
-                    : lastSentConfInfo.getVersion() + 1;
-            diff.setVersion(newVersion);
-
             IQ iq = getConferenceInfo(callPeerJabber, diff);
 
             if (iq != null)
@@ -242,10 +231,10 @@ private void notify(CallPeer callPeer)
                     return;
                 }
 
-                // We save currentConfInfo, because it is of state "full", while
-                // diff could be a partial
-                currentConfInfo.setVersion(newVersion);
-                callPeerJabber.setLastConferenceInfoSent(currentConfInfo);
+                // We save currentConfInfo, because it describes the full state,
+                // while diff could be a partial
+                callPeerJabber.setLastConferenceInfoSent(
+                        currentConfInfo.withVersion(diff.getVersion()));
                 callPeerJabber.setLastConferenceInfoSentTimestamp(
                         System.currentTimeMillis());
             }
@@ -492,18 +481,12 @@ private void handleCoin(CallPeerJabberImpl callPeer, CoinIQ coinIQ)
      * SID.
      */
     @Override
-    protected ConferenceInfoDocument getCurrentConferenceInfo(
-            MediaAwareCallPeer<?,?,?> callPeer)
+    protected String getConferenceInfoSid(CallPeer callPeer)
     {
-        ConferenceInfoDocument confInfo
-                = super.getCurrentConferenceInfo(callPeer);
-
-        if (callPeer instanceof CallPeerJabberImpl
-                && confInfo != null)
-        {
-            confInfo.setSid(((CallPeerJabberImpl)callPeer).getSID());
-        }
-        return confInfo;
+        return
+            (callPeer instanceof CallPeerJabberImpl)
+                ? ((CallPeerJabberImpl) callPeer).getSID()
+                : null;
     }
 
     /**
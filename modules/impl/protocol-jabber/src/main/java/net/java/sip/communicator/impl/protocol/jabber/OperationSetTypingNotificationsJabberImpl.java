@@ -73,6 +73,20 @@
      */
     private MessageEventManager messageEventManager = null;
 
+    /**
+     * The listener for message event requests added to
+     * <tt>messageEventManager</tt>.
+     */
+    private JabberMessageEventRequestListener messageEventRequestListener
+        = null;
+
+    /**
+     * The listener for message event notifications added to
+     * <tt>messageEventManager</tt>.
+     */
+    private IncomingMessageEventsListener messageEventNotificationListener
+        = null;
+
     /**
      * The listener instance that we use to track chat states according to
      * XEP-0085;
@@ -260,13 +274,20 @@ public void registrationStateChanged(RegistrationStateChangeEvent evt)
                         .getOperationSet(
                             OperationSetBasicInstantMessaging.class);
 
+                // the manager is kept by a resumed connection, so make sure
+                // the listeners are not added twice
+                removeMessageEventListeners();
                 messageEventManager = MessageEventManager.getInstanceFor(
                     parentProvider.getConnection());
 
+                messageEventRequestListener
+                    = new JabberMessageEventRequestListener();
                 messageEventManager.addMessageEventRequestListener(
-                    new JabberMessageEventRequestListener());
+                    messageEventRequestListener);
+                messageEventNotificationListener
+                    = new IncomingMessageEventsListener();
                 messageEventManager.addMessageEventNotificationListener(
-                    new IncomingMessageEventsListener());
+                    messageEventNotificationListener);
 
 
                 if(smackChatStateListener == null)
@@ -288,11 +309,35 @@ else if(evt.getNewState() == RegistrationState.UNREGISTERED
                 }
 
                 smackChatStateListener = null;
+                removeMessageEventListeners();
                 messageEventManager = null;
             }
         }
     }
 
+    /**
+     * Removes the listeners of this operation set from
+     * <tt>messageEventManager</tt>, if any.
+     */
+    private void removeMessageEventListeners()
+    {
+        if(messageEventManager == null)
+            return;
+
+        if(messageEventRequestListener != null)
+        {
+            messageEventManager.removeMessageEventRequestListener(
+                messageEventRequestListener);
+            messageEventRequestListener = null;
+        }
+        if(messageEventNotificationListener != null)
+        {
+            messageEventManager.removeMessageEventNotificationListener(
+                messageEventNotificationListener);
+            messageEventNotificationListener = null;
+        }
+    }
+
     /**
      * Listens for incoming request for typing info
      */
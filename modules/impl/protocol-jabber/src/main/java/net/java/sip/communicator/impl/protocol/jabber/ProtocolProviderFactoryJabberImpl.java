@@ -74,6 +74,22 @@ protected void storeAccount(AccountID accountID)
         super.storeAccount(accountID);
     }
 
+    /**
+     * Removes the account and the copy of its roster.
+     *
+     * @param accountID the ID of the account to remove
+     * @return true if an account with the specified ID existed and was removed
+     * and false otherwise
+     */
+    @Override
+    public boolean uninstallAccount(AccountID accountID)
+    {
+        boolean wasAccountExisting = super.uninstallAccount(accountID);
+
+        JabberRosterStore.remove(accountID);
+        return wasAccountExisting;
+    }
+
     /**
      * Initializes and creates an account corresponding to the specified
      * accountProperties and registers the resulting ProtocolProvider in the
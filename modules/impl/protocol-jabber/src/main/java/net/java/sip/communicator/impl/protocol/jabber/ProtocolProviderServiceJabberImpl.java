@@ -48,6 +48,7 @@
 import org.jivesoftware.smack.tcp.*;
 import org.jivesoftware.smack.util.*;
 import org.jivesoftware.smack.roster.*;
+import org.jivesoftware.smack.sm.predicates.*;
 import org.jivesoftware.smackx.disco.packet.*;
 import org.jivesoftware.smackx.message_correct.element.*;
 import org.jivesoftware.smackx.ping.*;
@@ -225,6 +226,19 @@
     private static final String IS_FILE_TRANSFER_DISABLED_PROPERTY
         = "IS_FILE_TRANSFER_DISABLED";
 
+    /**
+     * Property to disable stream management (XEP-0198) and with it the
+     * resumption of dropped sessions.
+     */
+    private static final String IS_STREAM_MANAGEMENT_DISABLED_PROPERTY
+        = "STREAM_MANAGEMENT_DISABLED";
+
+    /**
+     * The time in seconds we ask the server to keep a dropped session
+     * available for resumption.
+     */
+    private static final int STREAM_RESUMPTION_TIME = 300;
+
     /**
      * Google voice domain name.
      */
@@ -235,6 +249,19 @@
      */
     private AbstractXMPPConnection connection;
 
+    /**
+     * A dropped connection whose stream management session is kept on the
+     * server and can be resumed by the next register.
+     */
+    private XMPPTCPConnection suspendedConnection;
+
+    /**
+     * Whether the stream of {@link #connection} has been shut down for a
+     * suspension and the <tt>UNREGISTERED</tt> event is being fired, while
+     * the operation sets can still remove their listeners from it.
+     */
+    private volatile boolean detaching = false;
+
     /**
      * The socket address of the XMPP server.
      */
@@ -415,6 +442,82 @@ public InetSocketAddress getServerAddress()
         }
     }
 
+    /**
+     * An <tt>OperationSet</tt> that lets the reconnect plugin suspend and
+     * resume stream management sessions.
+     */
+    private class OperationSetSessionResumptionJabberImpl
+        implements OperationSetSessionResumption
+    {
+        /**
+         * @return whether the current or the suspended stream can be resumed.
+         */
+        @Override
+        public boolean isSessionResumable()
+        {
+            XMPPTCPConnection suspended = suspendedConnection;
+            if (suspended != null)
+            {
+                return suspended.isSmResumptionPossible();
+            }
+
+            return isResumable(connection);
+        }
+
+        /**
+         * Drops the connection and keeps its session for resumption.
+         */
+        @Override
+        public void suspend()
+        {
+            eventDuringLogin = null;
+            fireRegistrationStateChanged(
+                getRegistrationState(),
+                RegistrationState.UNREGISTERING,
+                RegistrationStateChangeEvent.REASON_NOT_SPECIFIED,
+                null);
+
+            synchronized(initializationLock)
+            {
+                if(isResumable(connection))
+                {
+                    // Stop the stream, so nothing is received meanwhile, but
+                    // keep the connection until the operation sets have
+                    // removed their listeners from it. The resumed stream
+                    // reuses the connection instance, and they add their
+                    // listeners again when it is registered.
+                    ((XMPPTCPConnection) connection).instantShutdown();
+                    detaching = true;
+                }
+                else
+                {
+                    suspendOrDisconnect();
+                }
+            }
+
+            try
+            {
+                eventDuringLogin = null;
+                fireRegistrationStateChanged(
+                    getRegistrationState(),
+                    RegistrationState.UNREGISTERED,
+                    RegistrationStateChangeEvent.REASON_NOT_SPECIFIED,
+                    null);
+            }
+            finally
+            {
+                synchronized(initializationLock)
+                {
+                    if(detaching)
+                    {
+                        detaching = false;
+                        suspendOrDisconnect();
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Returns the state of the registration of this protocol provider
      * @return the <tt>RegistrationState</tt> that this provider is
@@ -422,7 +525,7 @@ public InetSocketAddress getServerAddress()
      */
     public RegistrationState getRegistrationState()
     {
-        if(connection == null)
+        if(connection == null || detaching)
         {
             if (inConnectAndLogin)
             {
@@ -491,6 +594,7 @@ public void register(final SecurityAuthority authority)
                 inConnectAndLogin = true;
             }
 
+            prefetchServerRecords();
             initializeConnectAndLogin(authority,
                 SecurityAuthority.AUTHENTICATION_REQUIRED);
         }
@@ -657,6 +761,43 @@ public TransportProtocol getTransportProtocol()
         return TransportProtocol.UNKNOWN;
     }
 
+    /**
+     * Starts resolving the DNS records of the servers configured for this
+     * account in the background, so that they are likely to be cached by the
+     * time the connection attempts of
+     * {@link #initializeConnectAndLogin(SecurityAuthority, int)} (which may
+     * first have to ask the user for the password) look them up.
+     */
+    private void prefetchServerRecords()
+    {
+        if(!accountID.getAccountPropertyBoolean(
+                ProtocolProviderFactory.IS_SERVER_OVERRIDDEN, false))
+        {
+            String userID = accountID.getUserID();
+            int index = (userID == null) ? -1 : userID.indexOf('@');
+
+            if(index > -1)
+            {
+                NetworkUtils.prefetchSRVRecords(
+                    "xmpp-client", "tcp", userID.substring(index + 1));
+            }
+        }
+
+        String customXMPPDomain
+            = accountID.getAccountPropertyString("CUSTOM_XMPP_DOMAIN");
+
+        if(customXMPPDomain != null)
+            NetworkUtils.prefetchSRVRecords("xmpp-client", "tcp",
+                customXMPPDomain);
+
+        String serverAddress
+            = accountID.getAccountPropertyString(
+                ProtocolProviderFactory.SERVER_ADDRESS);
+
+        if(serverAddress != null)
+            NetworkUtils.prefetchAandAAAARecords(serverAddress);
+    }
+
     /**
      * Connects and logins to the server
      * @param authority SecurityAuthority
@@ -679,6 +820,11 @@ private void initializeConnectAndLogin(SecurityAuthority authority,
             if(isRegistered())
                 return;
 
+            // resuming needs no credentials, so try it before the login
+            // strategy gets a chance to ask the user for them
+            if(resumeSuspendedConnection())
+                return;
+
             JabberLoginStrategy loginStrategy = createLoginStrategy();
             userCredentials = loginStrategy.prepareLogin(authority, reasonCode);
             if(!loginStrategy.loginPreparationSuccessful())
@@ -1269,40 +1415,33 @@ else if (loginStrategy.isTlsRequired())
         }
         else
         {
-            connection =
+            XMPPTCPConnection tcpConnection =
                 new XMPPTCPConnection(
                     (XMPPTCPConnectionConfiguration) confConn.build());
-        }
-
-        ReconnectionManager.getInstanceFor(connection).disableAutomaticReconnection();
-        this.address = address;
 
-        if(debugger == null)
-        {
-            // FIXME Smack4.2: implement the smack debugger interface,
-            // the StanzaListener won't catch IQs anymore
-            debugger = new SmackPacketDebugger();
+            if (!getAccountID().getAccountPropertyBoolean(
+                    IS_STREAM_MANAGEMENT_DISABLED_PROPERTY, false))
+            {
+                // Smack keeps the unacknowledged stanzas in a bounded queue
+                // and requests an ack when it fills up, we also ask for one
+                // on every message so that it is not lost on a drop
+                tcpConnection.setUseStreamManagement(true);
+                tcpConnection.setUseStreamManagementResumption(true);
+                tcpConnection.setPreferredResumptionTime(
+                    STREAM_RESUMPTION_TIME);
+                tcpConnection.addRequestAckPredicate(
+                    Predicate.forMessagesOrAfter5Stanzas());
+            }
 
-            // sets the debugger
-            debugger.setConnection(connection);
-            connection.addAsyncStanzaListener(debugger.inbound, null);
-            connection.addStanzaInterceptor(debugger.outbound, null);
+            connection = tcpConnection;
         }
 
-        int keepAliveInterval =
-                this.getAccountID().getAccountPropertyInt(
-                        ProtocolProviderFactory.KEEP_ALIVE_INTERVAL, -1);
-        if (this.isKeepAliveEnabled && keepAliveInterval > 0)
-        {
-            PingManager pm = PingManager.getInstanceFor(connection);
-            pm.setPingInterval(keepAliveInterval);
+        ReconnectionManager.getInstanceFor(connection).disableAutomaticReconnection();
+        JabberRosterStore.configure(
+            Roster.getInstanceFor(connection), getAccountID());
+        this.address = address;
 
-            if (pingFailedListener == null)
-            {
-                pingFailedListener = new PingFailedListenerImpl();
-            }
-            pm.registerPingFailedListener(pingFailedListener);
-        }
+        addDebuggerAndPingListener();
 
         connection.connect();
 
@@ -1407,6 +1546,136 @@ else if (loginStrategy.isTlsRequired())
         }
     }
 
+    /**
+     * Sets the packet debugger and the keep alive ping listener on the
+     * current connection.
+     */
+    private void addDebuggerAndPingListener()
+    {
+        if(debugger == null)
+        {
+            // FIXME Smack4.2: implement the smack debugger interface,
+            // the StanzaListener won't catch IQs anymore
+            debugger = new SmackPacketDebugger();
+
+            // sets the debugger
+            debugger.setConnection(connection);
+            connection.addAsyncStanzaListener(debugger.inbound, null);
+            connection.addStanzaInterceptor(debugger.outbound, null);
+        }
+
+        int keepAliveInterval =
+                this.getAccountID().getAccountPropertyInt(
+                        ProtocolProviderFactory.KEEP_ALIVE_INTERVAL, -1);
+        if (this.isKeepAliveEnabled && keepAliveInterval > 0)
+        {
+            PingManager pm = PingManager.getInstanceFor(connection);
+            pm.setPingInterval(keepAliveInterval);
+
+            if (pingFailedListener == null)
+            {
+                pingFailedListener = new PingFailedListenerImpl();
+            }
+            pm.registerPingFailedListener(pingFailedListener);
+        }
+    }
+
+    /**
+     * Tries to resume the stream management session of the suspended
+     * connection, if any. Smack resumes the stream when the same connection
+     * instance is connected and logged in again, and falls back to binding a
+     * new session if the server no longer has it.
+     *
+     * @return <tt>true</tt> if the suspended connection is logged in again,
+     * <tt>false</tt> if there was none or it failed and a new connection
+     * should be made.
+     */
+    private boolean resumeSuspendedConnection()
+        throws InterruptedException
+    {
+        XMPPTCPConnection suspended = suspendedConnection;
+        suspendedConnection = null;
+
+        if (suspended == null || !suspended.isSmResumptionPossible())
+            return false;
+
+        connection = suspended;
+        try
+        {
+            addDebuggerAndPingListener();
+
+            connection.connect();
+
+            setTrafficClass();
+
+            registerServiceDiscoveryManager();
+
+            if(connectionListener == null)
+            {
+                connectionListener = new JabberConnectionListener();
+            }
+            connection.addConnectionListener(connectionListener);
+
+            fireRegistrationStateChanged(
+                getRegistrationState(),
+                RegistrationState.REGISTERING,
+                RegistrationStateChangeEvent.REASON_NOT_SPECIFIED,
+                null);
+
+            connection.login();
+
+            // Smack does not reload the roster of a resumed stream, but the
+            // contact list is rebuilt on every registration. Thanks to
+            // roster versioning the server answers with an empty result.
+            if (suspended.streamWasResumed())
+            {
+                Roster.getInstanceFor(connection).reload();
+            }
+        }
+        catch (XMPPException | SmackException | IOException e)
+        {
+            logger.info("Cannot resume the session of " + getAccountID()
+                + ", logging in again: " + e.getMessage());
+
+            disconnectAndCleanConnection();
+            return false;
+        }
+
+        if (!connection.isAuthenticated())
+        {
+            disconnectAndCleanConnection();
+            return false;
+        }
+
+        if (logger.isInfoEnabled())
+        {
+            logger.info((suspended.streamWasResumed()
+                    ? "Resumed the session of " : "Logged in again ")
+                + getAccountID());
+        }
+
+        eventDuringLogin = null;
+        fireRegistrationStateChanged(
+            getRegistrationState(),
+            RegistrationState.REGISTERED,
+            RegistrationStateChangeEvent.REASON_NOT_SPECIFIED, null);
+
+        return true;
+    }
+
+    /**
+     * Checks whether the stream management session of a connection can be
+     * resumed.
+     *
+     * @param connection the connection to check
+     * @return <tt>true</tt> if it is a TCP connection with a resumable stream
+     */
+    private static boolean isResumable(XMPPConnection connection)
+    {
+        return connection instanceof XMPPTCPConnection
+            && ((XMPPTCPConnection) connection).isSmResumptionPossible();
+    }
+
     /**
      * Gets the TrustManager that should be used for the specified service
      *
@@ -1467,33 +1736,83 @@ void addSupportedFeature(String featureName)
      * Used to disconnect current connection and clean it.
      */
     public void disconnectAndCleanConnection()
+    {
+        // the server drops the suspended session once it times out
+        suspendedConnection = null;
+
+        cleanConnection(false);
+    }
+
+    /**
+     * Closes the current connection and keeps it as the suspended connection
+     * if its session can be resumed, otherwise disconnects it.
+     */
+    private void suspendOrDisconnect()
+    {
+        // the reconnect plugin may have already suspended it while handling
+        // the connection failure
+        if(connection == null)
+        {
+            return;
+        }
+
+        if(isResumable(connection))
+        {
+            cleanConnection(true);
+        }
+        else
+        {
+            disconnectAndCleanConnection();
+        }
+    }
+
+    /**
+     * Closes the current connection and releases everything bound to it.
+     *
+     * @param suspend <tt>true</tt> to shut the connection down without ending
+     * its stream management session and keep it for resumption.
+     */
+    private void cleanConnection(boolean suspend)
     {
         if(connection != null)
         {
             connection.removeConnectionListener(connectionListener);
 
-            // disconnect anyway cause it will clear any listeners
-            // that maybe added even if its not connected
-            try
+            if(suspend)
             {
-                OperationSetPersistentPresenceJabberImpl opSet =
-                    (OperationSetPersistentPresenceJabberImpl)
-                    this.getOperationSet(OperationSetPersistentPresence.class);
-
-                Presence unavailablePresence =
-                    new Presence(Presence.Type.unavailable);
+                XMPPTCPConnection tcpConnection
+                    = (XMPPTCPConnection) connection;
 
-                if(opSet != null
-                    && org.apache.commons.lang3.StringUtils
-                        .isNotEmpty(opSet.getCurrentStatusMessage()))
+                // a closing stream element would end the session
+                if(tcpConnection.isConnected())
+                    tcpConnection.instantShutdown();
+                suspendedConnection = tcpConnection;
+            }
+            else
+            {
+                // disconnect anyway cause it will clear any listeners
+                // that maybe added even if its not connected
+                try
                 {
-                    unavailablePresence.setStatus(
-                        opSet.getCurrentStatusMessage());
-                }
+                    OperationSetPersistentPresenceJabberImpl opSet =
+                        (OperationSetPersistentPresenceJabberImpl)
+                        this.getOperationSet(OperationSetPersistentPresence.class);
+
+                    Presence unavailablePresence =
+                        new Presence(Presence.Type.unavailable);
+
+                    if(opSet != null
+                        && org.apache.commons.lang3.StringUtils
+                            .isNotEmpty(opSet.getCurrentStatusMessage()))
+                    {
+                        unavailablePresence.setStatus(
+                            opSet.getCurrentStatusMessage());
+                    }
 
-                connection.disconnect(unavailablePresence);
-            } catch (Exception e)
-            {}
+                    connection.disconnect(unavailablePresence);
+                } catch (Exception e)
+                {}
+            }
 
             if (pingFailedListener != null)
             {
@@ -1503,6 +1822,9 @@ public void disconnectAndCleanConnection()
 
             if (debugger != null)
             {
+                // a suspended connection gets a new debugger when resumed
+                connection.removeAsyncStanzaListener(debugger.inbound);
+                connection.removeStanzaInterceptor(debugger.outbound);
                 debugger.setConnection(null);
                 debugger = null;
             }
@@ -1776,10 +2098,17 @@ protected void initialize(EntityBareJid screenname,
             if(!accountID.getAccountPropertyBoolean(
                 IS_FILE_TRANSFER_DISABLED_PROPERTY, false))
             {
-                // initialize the file transfer operation set
+                // initialize the file transfer operation set, which also
+                // shares files with chat rooms
+                OperationSetFileTransferJabberImpl fileTransferOpSet
+                    = new OperationSetFileTransferJabberImpl(this);
+
                 addSupportedOperationSet(
                     OperationSetFileTransfer.class,
-                    new OperationSetFileTransferJabberImpl(this));
+                    fileTransferOpSet);
+                addSupportedOperationSet(
+                    OperationSetChatRoomFileTransfer.class,
+                    fileTransferOpSet);
 
                 // Include features we're supporting in addition to the four
                 // included by smack itself:
@@ -1963,6 +2292,9 @@ protected void initialize(EntityBareJid screenname,
             addSupportedOperationSet(OperationSetConnectionInfo.class,
                     opsetConnectionInfo);
 
+            addSupportedOperationSet(OperationSetSessionResumption.class,
+                    new OperationSetSessionResumptionJabberImpl());
+
             isInitialized = true;
         }
     }
@@ -2373,7 +2705,7 @@ else if(exception instanceof XmlPullParserException)
                 reason,
                 exception.getMessage());
 
-            disconnectAndCleanConnection();
+            suspendOrDisconnect();
         }
 
         @Override
@@ -954,6 +954,18 @@ void init(OperationSetPersistentPresenceJabberImpl.ContactChangesListener
 
         initRoster();
 
+        // The contacts went offline when we unregistered. A resumed stream
+        // does not deliver their presence again, but the roster kept what it
+        // received before, while a new session has none at this point.
+        for (RosterEntry entry : roster.getEntries())
+        {
+            for (Presence presence
+                    : roster.getAvailablePresences(entry.getJid()))
+            {
+                presenceChangeListener.presenceChanged(presence);
+            }
+        }
+
         // roster has been requested and dispatched, mark this
         synchronized(rosterInitLock)
         {
@@ -1075,12 +1087,17 @@ private synchronized void initRoster()
                     {
                         contactMoved(group, rootGroup, contact);
                     }
-                    // if contact exist so resolve it
-                    contact.setResolved(item);
 
-                    //fire an event saying that the unfiled contact has been
-                    //resolved
-                    fireContactResolved(rootGroup, contact);
+                    // contacts resolved on a previous login need no event
+                    if(!contact.isResolved())
+                    {
+                        // if contact exist so resolve it
+                        contact.setResolved(item);
+
+                        //fire an event saying that the unfiled contact has
+                        //been resolved
+                        fireContactResolved(rootGroup, contact);
+                    }
                 }
 
                 try
@@ -1127,7 +1144,8 @@ private synchronized void initRoster()
         {
             ContactGroupJabberImpl group =
                 findContactGroup(item.getName());
-            if(group != null)
+            // groups resolved on a previous login need no event
+            if(group != null && !group.isResolved())
             {
                 // the group exist so just resolved. The group will check and
                 // create or resolve its entries
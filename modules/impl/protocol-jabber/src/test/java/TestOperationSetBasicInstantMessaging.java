@@ -23,6 +23,7 @@
 import junit.framework.*;
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.event.*;
+import net.java.sip.communicator.slick.protocol.generic.*;
 import net.java.sip.communicator.util.*;
 
 /**
@@ -160,6 +161,8 @@ public static Test suite()
                                 "firstTestReceiveMessage"));
         suite.addTest(new TestOperationSetBasicInstantMessaging(
                                 "thenTestSendMessage"));
+        suite.addTest(new TestOperationSetBasicInstantMessaging(
+                                "thenTestReceiveMessageAfterResumption"));
         // reporting to be last. we do not care is the message received or not
         suite.addTest(new TestOperationSetBasicInstantMessaging(
                                 "reportingSendFunMessages"));
@@ -410,6 +413,112 @@ public void testCreateMessage2()
             msg2.getMessageUID()));
     }
 
+    /**
+     * Suspends the session of the tested provider, registers it again so that
+     * the stream is resumed and verifies that a message from the tester agent
+     * is delivered exactly once, i.e. that resuming has not left a second
+     * set of listeners on the connection.
+     *
+     * @throws Exception if suspending, registering or sending fails.
+     */
+    public void thenTestReceiveMessageAfterResumption()
+        throws Exception
+    {
+        OperationSetSessionResumption opSetResumption
+            = fixture.provider1.getOperationSet(
+                OperationSetSessionResumption.class);
+
+        if (opSetResumption == null
+            || !opSetResumption.isSessionResumable())
+        {
+            logger.info("Session resumption is not available, skipping.");
+            return;
+        }
+
+        final Object registered = new Object();
+        RegistrationStateChangeListener regListener
+            = new RegistrationStateChangeListener()
+            {
+                public void registrationStateChanged(
+                    RegistrationStateChangeEvent evt)
+                {
+                    if (RegistrationState.REGISTERED.equals(
+                            evt.getNewState()))
+                    {
+                        synchronized (registered)
+                        {
+                            registered.notifyAll();
+                        }
+                    }
+                }
+            };
+        fixture.provider1.addRegistrationStateChangeListener(regListener);
+
+        try
+        {
+            opSetResumption.suspend();
+
+            synchronized (registered)
+            {
+                fixture.provider1.register(new SecurityAuthorityImpl(
+                    System.getProperty(
+                        JabberProtocolProviderServiceLick.ACCOUNT_1_PREFIX
+                            + ProtocolProviderFactory.PASSWORD)
+                        .toCharArray()));
+
+                if (!fixture.provider1.isRegistered())
+                    registered.wait(15000);
+            }
+        }
+        finally
+        {
+            fixture.provider1.removeRegistrationStateChangeListener(
+                regListener);
+        }
+
+        assertTrue("The provider was not registered again.",
+            fixture.provider1.isRegistered());
+
+        String body = "This is an IM sent after resuming the session on "
+            + new Date().toString();
+
+        ImEventCollector evtCollector = new ImEventCollector();
+        opSetBasicIM1.addMessageListener(evtCollector);
+
+        try
+        {
+            opSetBasicIM2.sendInstantMessage(
+                opSetPresence2.findContactByID(fixture.userID1),
+                opSetBasicIM2.createMessage(body));
+
+            evtCollector.waitForEvent(10000);
+
+            // give a duplicate the time to arrive as well
+            Thread.sleep(2000);
+        }
+        finally
+        {
+            opSetBasicIM1.removeMessageListener(evtCollector);
+        }
+
+        int received = 0;
+        synchronized (evtCollector)
+        {
+            for (EventObject evt : evtCollector.collectedEvents)
+            {
+                if (evt instanceof MessageReceivedEvent
+                    && body.equals(((MessageReceivedEvent) evt)
+                        .getSourceMessage().getContent()))
+                {
+                    received++;
+                }
+            }
+        }
+
+        assertEquals("The message was not delivered exactly once after "
+            + "resuming the session.", 1, received);
+    }
+
     /**
      * Collects instant messaging events.
      */
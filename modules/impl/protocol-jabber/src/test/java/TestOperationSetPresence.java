@@ -23,6 +23,7 @@
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.event.*;
 import net.java.sip.communicator.service.protocol.jabberconstants.*;
+import net.java.sip.communicator.slick.protocol.generic.*;
 import net.java.sip.communicator.util.*;
 
 /**
@@ -181,6 +182,10 @@ public static Test suite()
 //        // add other tests
 //        suite.addTestSuite(TestOperationSetPresence.class);
 //
+        // the contacts must still be online after a resumed session
+        suite.addTest(
+            new TestOperationSetPresence("postTestSessionResumption"));
+
         // now test unsubscribe
         suite.addTest(new TestOperationSetPresence("postTestUnsubscribe"));
 
@@ -609,6 +614,67 @@ public void postTestSubscribe()
         assertNotNull( "Reported old PresenceStatus: ", reportedOldStatus );
     }
 
+    /**
+     * Suspends the session of the first provider, registers it again and
+     * verifies that the tester agent, which stayed online, is still reported
+     * as online once the session is resumed.
+     *
+     * @throws java.lang.Exception if suspending or registering fails.
+     */
+    public void postTestSessionResumption()
+        throws Exception
+    {
+        OperationSetSessionResumption opSetResumption
+            = fixture.provider1.getOperationSet(
+                OperationSetSessionResumption.class);
+
+        if (opSetResumption == null
+            || !opSetResumption.isSessionResumable())
+        {
+            logger.info("Session resumption is not available, skipping.");
+            return;
+        }
+
+        RegistrationCollector regCollector = new RegistrationCollector();
+        fixture.provider1.addRegistrationStateChangeListener(regCollector);
+
+        try
+        {
+            opSetResumption.suspend();
+
+            assertFalse("The provider is still registered after suspend.",
+                fixture.provider1.isRegistered());
+
+            synchronized (regCollector)
+            {
+                fixture.provider1.register(new SecurityAuthorityImpl(
+                    System.getProperty(
+                        JabberProtocolProviderServiceLick.ACCOUNT_1_PREFIX
+                            + ProtocolProviderFactory.PASSWORD)
+                        .toCharArray()));
+
+                if (!fixture.provider1.isRegistered())
+                    regCollector.wait(15000);
+            }
+        }
+        finally
+        {
+            fixture.provider1.removeRegistrationStateChangeListener(
+                regCollector);
+        }
+
+        assertTrue("The provider was not registered again.",
+            fixture.provider1.isRegistered());
+
+        Contact contact
+            = operationSetPresence1.findContactByID(fixture.userID2);
+
+        assertNotNull("The contact is not in the list after resuming.",
+            contact);
+        assertTrue("The contact is offline after resuming the session.",
+            contact.getPresenceStatus().isOnline());
+    }
+
     /**
      * We unsubscribe from presence notification deliveries concerning
      * testerAgent's presence status and verify that we receive the
@@ -1179,4 +1245,23 @@ public void waitForAuthRequest(long waitFor)
             }
         }
     }
+
+    /**
+     * Notifies those waiting on it once the provider it listens to is
+     * registered.
+     */
+    private static class RegistrationCollector
+        implements RegistrationStateChangeListener
+    {
+        public void registrationStateChanged(RegistrationStateChangeEvent evt)
+        {
+            if (RegistrationState.REGISTERED.equals(evt.getNewState()))
+            {
+                synchronized (this)
+                {
+                    notifyAll();
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,356 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.event.*;
+import net.java.sip.communicator.util.*;
+
+import org.jivesoftware.smackx.filetransfer.FileTransfer.*;
+import org.junit.*;
+
+/**
+ * Tests the events <tt>FileTransferProgressSampler</tt> fires for the
+ * transfers it samples. The sampling task is scheduled on a
+ * <tt>TimingWheel</tt> which never runs it, the tests sample with explicit
+ * times instead.
+ */
+public class TestFileTransferProgressSampler
+{
+    /**
+     * The minimum interval between two progress events used by the tests.
+     */
+    private static final long PROGRESS_INTERVAL = 250;
+
+    private TimingWheel timingWheel;
+
+    private FileTransferProgressSampler sampler;
+
+    /**
+     * A time after the creation of the transfers of a test.
+     */
+    private long now;
+
+    @Before
+    public void setUp()
+    {
+        timingWheel
+            = new TimingWheel("test", TimeUnit.HOURS.toMillis(1), 1, 1);
+        sampler
+            = new FileTransferProgressSampler(PROGRESS_INTERVAL, timingWheel);
+        now = System.currentTimeMillis() + 1000;
+    }
+
+    @After
+    public void tearDown()
+    {
+        timingWheel.stop();
+    }
+
+    @Test
+    public void testStatusChangeIsFiredOnce()
+    {
+        SmackTransfer smackTransfer = new SmackTransfer(1000);
+        RecordingTransfer transfer = new RecordingTransfer();
+
+        smackTransfer.setStatus(Status.negotiating_stream);
+        sampler.watch(smackTransfer, transfer, 0);
+        sampler.sample(now);
+        sampler.sample(now + 100);
+
+        assertEquals(
+            Arrays.asList(FileTransferStatusChangeEvent.PREPARING),
+            transfer.statuses);
+
+        smackTransfer.setStatus(Status.in_progress);
+        sampler.sample(now + 200);
+
+        assertEquals(
+            Arrays.asList(
+                FileTransferStatusChangeEvent.PREPARING,
+                FileTransferStatusChangeEvent.IN_PROGRESS),
+            transfer.statuses);
+    }
+
+    @Test
+    public void testProgressIsThrottled()
+    {
+        SmackTransfer smackTransfer = new SmackTransfer(1000);
+        RecordingTransfer transfer = new RecordingTransfer();
+
+        smackTransfer.setStatus(Status.in_progress);
+        sampler.watch(smackTransfer, transfer, 0);
+
+        transfer.bytes = 100;
+        sampler.sample(now);
+        transfer.bytes = 200;
+        sampler.sample(now + PROGRESS_INTERVAL - 1);
+
+        assertEquals(1, transfer.progress.size());
+        assertEquals(100, transfer.progress.get(0).getProgress());
+
+        sampler.sample(now + PROGRESS_INTERVAL);
+
+        assertEquals(2, transfer.progress.size());
+        assertEquals(200, transfer.progress.get(1).getProgress());
+
+        // unchanged progress is not fired again
+        sampler.sample(now + 2 * PROGRESS_INTERVAL);
+
+        assertEquals(2, transfer.progress.size());
+    }
+
+    @Test
+    public void testEndFiresFinalProgressAndStopsSampling()
+    {
+        SmackTransfer smackTransfer = new SmackTransfer(1000);
+        RecordingTransfer transfer = new RecordingTransfer();
+
+        smackTransfer.setStatus(Status.in_progress);
+        sampler.watch(smackTransfer, transfer, 0);
+
+        assertEquals(1, timingWheel.getStatistics().getPending());
+
+        transfer.bytes = 500;
+        sampler.sample(now);
+        transfer.bytes = 1000;
+        smackTransfer.setStatus(Status.complete);
+        sampler.sample(now + 1);
+
+        assertEquals(
+            Arrays.asList(
+                FileTransferStatusChangeEvent.IN_PROGRESS,
+                FileTransferStatusChangeEvent.COMPLETED),
+            transfer.statuses);
+        assertEquals(2, transfer.progress.size());
+
+        FileTransferProgressEvent last = transfer.progress.get(1);
+
+        assertEquals(1000, last.getProgress());
+        assertEquals(0, last.getEstimatedTimeLeft());
+        assertEquals(0, timingWheel.getStatistics().getPending());
+
+        // an ended transfer is no longer sampled
+        sampler.sample(now + 2 * PROGRESS_INTERVAL);
+
+        assertEquals(2, transfer.progress.size());
+    }
+
+    @Test
+    public void testCompletedWhilePreparingGoesThroughInProgress()
+    {
+        SmackTransfer smackTransfer = new SmackTransfer(1000);
+        RecordingTransfer transfer = new RecordingTransfer();
+
+        smackTransfer.setStatus(Status.negotiating_transfer);
+        sampler.watch(smackTransfer, transfer, 0);
+        sampler.sample(now);
+
+        transfer.bytes = 1000;
+        smackTransfer.setStatus(Status.complete);
+        sampler.sample(now + 100);
+
+        assertEquals(
+            Arrays.asList(
+                FileTransferStatusChangeEvent.PREPARING,
+                FileTransferStatusChangeEvent.IN_PROGRESS,
+                FileTransferStatusChangeEvent.COMPLETED),
+            transfer.statuses);
+    }
+
+    @Test
+    public void testShortIncomingFileIsCanceled()
+    {
+        SmackTransfer smackTransfer = new SmackTransfer(1000);
+        RecordingTransfer transfer = new RecordingTransfer();
+
+        smackTransfer.setStatus(Status.in_progress);
+        sampler.watch(smackTransfer, transfer, 1000);
+        sampler.sample(now);
+
+        transfer.bytes = 400;
+        smackTransfer.setStatus(Status.complete);
+        sampler.sample(now + 100);
+
+        assertEquals(
+            FileTransferStatusChangeEvent.CANCELED,
+            transfer.getStatus());
+    }
+
+    @Test
+    public void testRateAndTimeLeft()
+    {
+        SmackTransfer smackTransfer = new SmackTransfer(3000000);
+        RecordingTransfer transfer = new RecordingTransfer();
+
+        smackTransfer.setStatus(Status.in_progress);
+        sampler.watch(smackTransfer, transfer, 0);
+
+        // long intervals make the time the sample was created negligible
+        long start = System.currentTimeMillis();
+
+        transfer.bytes = 1000000;
+        sampler.sample(start + 1000000);
+
+        FileTransferProgressEvent evt = transfer.progress.get(0);
+
+        assertEquals(1000, evt.getBytesPerSecond());
+        assertEquals(2000000d, evt.getEstimatedTimeLeft(), 10d);
+
+        // the rate is measured from the previous event onwards
+        transfer.bytes = 2000000;
+        sampler.sample(start + 2000000);
+
+        evt = transfer.progress.get(1);
+
+        assertEquals(1000, evt.getBytesPerSecond());
+        assertEquals(1000000d, evt.getEstimatedTimeLeft(), 10d);
+    }
+
+    @Test
+    public void testFailingTransferDoesNotStopOthers()
+    {
+        SmackTransfer smackTransfer = new SmackTransfer(1000);
+        RecordingTransfer failing
+            = new RecordingTransfer()
+            {
+                @Override
+                public long getTransferedBytes()
+                {
+                    throw new IllegalStateException("test");
+                }
+            };
+        RecordingTransfer transfer = new RecordingTransfer();
+
+        smackTransfer.setStatus(Status.in_progress);
+        sampler.watch(smackTransfer, failing, 0);
+        sampler.watch(smackTransfer, transfer, 0);
+
+        transfer.bytes = 100;
+        sampler.sample(now);
+
+        assertEquals(1, transfer.progress.size());
+
+        transfer.bytes = 1000;
+        smackTransfer.setStatus(Status.complete);
+        sampler.sample(now + 100);
+
+        assertEquals(
+            FileTransferStatusChangeEvent.COMPLETED,
+            transfer.getStatus());
+        assertEquals(0, timingWheel.getStatistics().getPending());
+    }
+
+    /**
+     * A Smack transfer whose status is set by the tests.
+     */
+    private static class SmackTransfer
+        extends org.jivesoftware.smackx.filetransfer.FileTransfer
+    {
+        SmackTransfer(long fileSize)
+        {
+            super(null, null, null);
+            setFileInfo("test", fileSize);
+        }
+
+        @Override
+        public void cancel()
+        {
+            setStatus(Status.cancelled);
+        }
+
+        @Override
+        public void setStatus(Status status)
+        {
+            super.setStatus(status);
+        }
+    }
+
+    /**
+     * A transfer which records the events fired for it.
+     */
+    private static class RecordingTransfer
+        extends AbstractFileTransfer
+        implements FileTransferStatusListener,
+                   FileTransferProgressListener
+    {
+        final List<Integer> statuses = new ArrayList<>();
+
+        final List<FileTransferProgressEvent> progress = new ArrayList<>();
+
+        volatile long bytes = 0;
+
+        RecordingTransfer()
+        {
+            addStatusListener(this);
+            addProgressListener(this);
+        }
+
+        @Override
+        public void statusChanged(FileTransferStatusChangeEvent event)
+        {
+            statuses.add(event.getNewStatus());
+        }
+
+        @Override
+        public void progressChanged(FileTransferProgressEvent event)
+        {
+            progress.add(event);
+        }
+
+        @Override
+        public void cancel()
+        {
+        }
+
+        @Override
+        public long getTransferedBytes()
+        {
+            return bytes;
+        }
+
+        @Override
+        public String getID()
+        {
+            return "test";
+        }
+
+        @Override
+        public int getDirection()
+        {
+            return IN;
+        }
+
+        @Override
+        public java.io.File getLocalFile()
+        {
+            return null;
+        }
+
+        @Override
+        public Contact getContact()
+        {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.*;
+
+import com.sun.net.httpserver.*;
+
+/**
+ * Tests the streaming, concurrency limit and error handling of
+ * <tt>HttpFileUploader</tt> against a local HTTP server accepting PUT
+ * requests and a stub slot provider.
+ */
+public class TestHttpFileUploader
+{
+    /**
+     * The local server the files are uploaded to.
+     */
+    private HttpServer server;
+
+    /**
+     * The bodies received by the server by request path.
+     */
+    private final Map<String, byte[]> received = new ConcurrentHashMap<>();
+
+    /**
+     * The headers received by the server by request path.
+     */
+    private final Map<String, Headers> receivedHeaders
+        = new ConcurrentHashMap<>();
+
+    /**
+     * The number of requests the server is handling.
+     */
+    private final AtomicInteger running = new AtomicInteger();
+
+    /**
+     * The largest number of requests the server handled at the same time.
+     */
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    /**
+     * The status the server responds with.
+     */
+    private volatile int responseCode = HttpURLConnection.HTTP_CREATED;
+
+    /**
+     * The uploader under test.
+     */
+    private HttpFileUploader uploader;
+
+    /**
+     * The files created by the test.
+     */
+    private final List<File> files = new ArrayList<>();
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange ->
+        {
+            maxRunning.accumulateAndGet(
+                running.incrementAndGet(), Math::max);
+            try (InputStream in = exchange.getRequestBody())
+            {
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                byte[] buf = new byte[8192];
+                int count;
+
+                while ((count = in.read(buf)) != -1)
+                {
+                    body.write(buf, 0, count);
+                    // give the other uploads a chance to overlap
+                    Thread.sleep(1);
+                }
+
+                String path = exchange.getRequestURI().getPath();
+
+                if ("PUT".equals(exchange.getRequestMethod()))
+                {
+                    received.put(path, body.toByteArray());
+                    receivedHeaders.put(path, exchange.getRequestHeaders());
+                }
+                exchange.sendResponseHeaders(responseCode, -1);
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+            finally
+            {
+                running.decrementAndGet();
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (uploader != null)
+            uploader.stop();
+        server.stop(0);
+        for (File file : files)
+            file.delete();
+    }
+
+    /**
+     * Creates a file with random content.
+     *
+     * @param size the size of the file
+     * @return the file
+     * @throws IOException if the file cannot be written
+     */
+    private File createFile(int size)
+        throws IOException
+    {
+        File file = File.createTempFile("upload", ".bin");
+        byte[] content = new byte[size];
+
+        files.add(file);
+        new Random(size).nextBytes(content);
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    /**
+     * Gets a stub slot provider handing out slots on the local server.
+     *
+     * @param headers the headers of the slots
+     * @return the slot provider
+     */
+    private HttpFileUploader.SlotProvider slots(Map<String, String> headers)
+    {
+        return (fileName, size, contentType) ->
+        {
+            URL url
+                = new URL(
+                    "http://127.0.0.1:" + server.getAddress().getPort()
+                        + "/" + UUID.randomUUID() + "/" + fileName);
+
+            return new HttpFileUploader.Slot(url, url, headers);
+        };
+    }
+
+    /**
+     * Tests that a file larger than the transfer chunk arrives intact with
+     * the headers of the slot and that the progress reaches the file size.
+     */
+    @Test
+    public void testUpload()
+        throws Exception
+    {
+        File file = createFile(300 * 1024 + 17);
+
+        uploader = new HttpFileUploader(2, null);
+
+        HttpFileUploader.Upload upload
+            = uploader.upload(
+                file, slots(Collections.singletonMap("Cookie", "slot=1")));
+        URL url = upload.result.get(10, TimeUnit.SECONDS);
+
+        assertArrayEquals(
+            Files.readAllBytes(file.toPath()), received.get(url.getPath()));
+        assertEquals(
+            "slot=1", receivedHeaders.get(url.getPath()).getFirst("Cookie"));
+        assertEquals(file.length(), upload.getUploadedBytes());
+        assertEquals(HttpFileUploader.Upload.COMPLETED, upload.getState());
+    }
+
+    /**
+     * Tests that no more than the allowed number of uploads run at the same
+     * time and that all of them complete.
+     */
+    @Test
+    public void testConcurrencyLimit()
+        throws Exception
+    {
+        uploader = new HttpFileUploader(2, null);
+
+        List<HttpFileUploader.Upload> uploads = new ArrayList<>();
+
+        for (int i = 0; i < 6; i++)
+            uploads.add(uploader.upload(createFile(128 * 1024), slots(null)));
+        for (HttpFileUploader.Upload upload : uploads)
+            upload.result.get(30, TimeUnit.SECONDS);
+
+        assertEquals(6, received.size());
+        assertTrue(
+            "max concurrent uploads " + maxRunning.get(),
+            maxRunning.get() <= 2);
+    }
+
+    /**
+     * Tests that a rejected upload and a failed slot request fail the
+     * upload.
+     */
+    @Test
+    public void testFailure()
+        throws Exception
+    {
+        uploader = new HttpFileUploader(1, null);
+        responseCode = HttpURLConnection.HTTP_FORBIDDEN;
+
+        HttpFileUploader.Upload rejected
+            = uploader.upload(createFile(1024), slots(null));
+
+        try
+        {
+            rejected.result.get(10, TimeUnit.SECONDS);
+            fail("upload should have been rejected");
+        }
+        catch (ExecutionException ex)
+        {
+            assertTrue(ex.getCause() instanceof IOException);
+        }
+        assertEquals(HttpFileUploader.Upload.FAILED, rejected.getState());
+
+        HttpFileUploader.Upload noSlot
+            = uploader.upload(
+                createFile(1024),
+                (fileName, size, contentType) ->
+                {
+                    throw new IOException("file too large");
+                });
+
+        try
+        {
+            noSlot.result.get(10, TimeUnit.SECONDS);
+            fail("slot request should have failed");
+        }
+        catch (ExecutionException ex)
+        {
+            assertEquals("file too large", ex.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Tests that an HTTPS upload fails when the certificate of the server
+     * cannot be verified instead of falling back to the default trust.
+     */
+    @Test
+    public void testHttpsWithoutVerificationFails()
+        throws Exception
+    {
+        HttpFileUploader.SlotProvider httpsSlots
+            = (fileName, size, contentType) ->
+            {
+                URL url
+                    = new URL(
+                        "https://127.0.0.1:" + server.getAddress().getPort()
+                            + "/" + fileName);
+
+                return new HttpFileUploader.Slot(url, url, null);
+            };
+
+        uploader
+            = new HttpFileUploader(
+                1,
+                url ->
+                {
+                    throw new IOException("untrusted");
+                });
+
+        try
+        {
+            uploader.upload(createFile(1024), httpsSlots)
+                .result.get(10, TimeUnit.SECONDS);
+            fail("upload to an unverified server should have failed");
+        }
+        catch (ExecutionException ex)
+        {
+            assertEquals("untrusted", ex.getCause().getMessage());
+        }
+        uploader.stop();
+
+        uploader = new HttpFileUploader(1, null);
+
+        try
+        {
+            uploader.upload(createFile(1024), httpsSlots)
+                .result.get(10, TimeUnit.SECONDS);
+            fail("upload without a socket factory should have failed");
+        }
+        catch (ExecutionException ex)
+        {
+            assertTrue(ex.getCause() instanceof IOException);
+        }
+        assertTrue(received.isEmpty());
+    }
+
+    /**
+     * Tests that cancelling an upload waiting for a thread cancels it.
+     */
+    @Test
+    public void testCancelQueued()
+        throws Exception
+    {
+        CountDownLatch release = new CountDownLatch(1);
+
+        uploader = new HttpFileUploader(1, null);
+
+        HttpFileUploader.Upload blocking
+            = uploader.upload(
+                createFile(1024),
+                (fileName, size, contentType) ->
+                {
+                    release.await();
+                    return slots(null).requestSlot(
+                        fileName, size, contentType);
+                });
+        HttpFileUploader.Upload queued
+            = uploader.upload(createFile(1024), slots(null));
+
+        queued.cancel();
+        release.countDown();
+
+        assertNotNull(blocking.result.get(10, TimeUnit.SECONDS));
+        assertTrue(queued.result.isCancelled());
+        assertEquals(HttpFileUploader.Upload.CANCELLED, queued.getState());
+        assertEquals(1, received.size());
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+
+import org.jivesoftware.smack.roster.packet.*;
+import org.jivesoftware.smack.roster.rosterstore.*;
+import org.junit.*;
+import org.junit.rules.*;
+import org.jxmpp.jid.*;
+import org.jxmpp.jid.impl.*;
+
+/**
+ * Tests that the roster and its version persisted by
+ * <tt>JabberRosterStore</tt> survive reopening the store.
+ */
+public class TestJabberRosterStore
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static RosterPacket.Item item(String jid, String name)
+        throws Exception
+    {
+        return new RosterPacket.Item(JidCreate.bareFrom(jid), name);
+    }
+
+    @Test
+    public void testCreatesMissingDirectory()
+        throws Exception
+    {
+        File dir = new File(folder.getRoot(), "roster" + File.separator + "a");
+        RosterStore store = JabberRosterStore.open(dir);
+
+        assertNotNull(store);
+        assertTrue(dir.isDirectory());
+        assertEquals("", store.getRosterVersion());
+        assertTrue(store.getEntries().isEmpty());
+    }
+
+    @Test
+    public void testVersionAndEntriesRoundTrip()
+        throws Exception
+    {
+        File dir = folder.newFolder();
+        RosterStore store = JabberRosterStore.open(dir);
+
+        assertTrue(
+            store.resetEntries(
+                Arrays.asList(
+                    item("alice@example.com", "Alice"),
+                    item("bob@example.com", "Bob")),
+                "v1"));
+        assertTrue(store.addEntry(item("carol@example.com", "Carol"), "v2"));
+        assertTrue(
+            store.removeEntry(JidCreate.bareFrom("bob@example.com"), "v3"));
+
+        RosterStore reopened = JabberRosterStore.open(dir);
+
+        assertEquals("v3", reopened.getRosterVersion());
+        assertEquals(2, reopened.getEntries().size());
+
+        BareJid alice = JidCreate.bareFrom("alice@example.com");
+        assertEquals("Alice", reopened.getEntry(alice).getName());
+        assertNull(reopened.getEntry(JidCreate.bareFrom("bob@example.com")));
+        assertNotNull(
+            reopened.getEntry(JidCreate.bareFrom("carol@example.com")));
+    }
+
+    @Test
+    public void testCorruptStoreIsReinitialized()
+        throws Exception
+    {
+        File dir = folder.newFolder();
+        RosterStore store = JabberRosterStore.open(dir);
+        store.addEntry(item("alice@example.com", "Alice"), "v1");
+
+        File[] versionFiles
+            = dir.listFiles((d, name) -> name.startsWith("__version__"));
+        assertEquals(1, versionFiles.length);
+        Files.write(
+            versionFiles[0].toPath(),
+            "garbage".getBytes(StandardCharsets.UTF_8));
+
+        RosterStore reopened = JabberRosterStore.open(dir);
+
+        assertNotNull(reopened);
+        assertEquals("", reopened.getRosterVersion());
+        assertTrue(reopened.getEntries().isEmpty());
+    }
+
+    @Test
+    public void testUnusableDirectory()
+        throws Exception
+    {
+        File file = folder.newFile();
+
+        assertNull(JabberRosterStore.open(new File(file, "roster")));
+    }
+}
@@ -0,0 +1,642 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.protocol;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import net.java.sip.communicator.impl.protocol.mock.*;
+import net.java.sip.communicator.service.credentialsstorage.*;
+import net.java.sip.communicator.service.protocol.event.*;
+import net.java.sip.communicator.util.osgi.*;
+
+import org.jitsi.service.configuration.*;
+import org.jitsi.service.fileaccess.*;
+import org.jitsi.service.resources.*;
+import org.junit.*;
+import org.osgi.framework.*;
+
+/**
+ * Tests how <tt>AccountManager</tt> loads the stored accounts of the
+ * registered <tt>ProtocolProviderFactory</tt>s, using mock protocol
+ * providers.
+ */
+public class AccountManagerTest
+{
+    private static final long TIMEOUT = 5;
+
+    /**
+     * The package the stored accounts of {@link MockFactory} are stored in.
+     */
+    private static final String PACKAGE
+        = MockFactory.class.getPackage().getName();
+
+    /**
+     * The stored configuration, in the order it was stored.
+     */
+    private final Map<String, String> properties
+        = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    private Framework framework;
+
+    private ProtocolProviderActivator activator;
+
+    private AccountManager accountManager;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        framework = new Framework();
+        framework.register(
+            ConfigurationService.class,
+            proxy(ConfigurationService.class, this::invokeConfiguration));
+        framework.register(
+            ResourceManagementService.class,
+            proxy(ResourceManagementService.class, null));
+        framework.register(
+            FileAccessService.class,
+            proxy(FileAccessService.class, null));
+        framework.register(
+            CredentialsStorageService.class,
+            proxy(CredentialsStorageService.class, (m, args) ->
+                m.getReturnType() == boolean.class ? false : null));
+
+        activator = new ProtocolProviderActivator();
+        activator.start(framework.context);
+        assertTrue(StartupTrace.awaitIdle(TimeUnit.SECONDS.toMillis(TIMEOUT)));
+        accountManager = ProtocolProviderActivator.getAccountManager();
+        assertNotNull(accountManager);
+    }
+
+    @After
+    public void tearDown()
+        throws Exception
+    {
+        activator.stop(framework.context);
+    }
+
+    @Test
+    public void testReadStoredAccounts()
+    {
+        storeAccount("acc1", "alice");
+        properties.put(PACKAGE + ".acc1.PASSWORD", "c2VjcmV0");
+        // not an account
+        properties.put(PACKAGE + ".other.USER_ID", "nobody");
+        // an account without its node is not loaded
+        properties.put(PACKAGE + ".acc2.USER_ID", "bob");
+        storeAccount("acc3", "carol");
+        properties.put(PACKAGE + ".acc1.SERVER_ADDRESS", "example.com");
+
+        Map<String, Map<String, String>> accounts
+            = AccountManager.readStoredAccounts(
+                ProtocolProviderActivator.getConfigurationService(), PACKAGE);
+
+        assertEquals(
+            Arrays.asList(PACKAGE + ".acc1", PACKAGE + ".acc3"),
+            new ArrayList<>(accounts.keySet()));
+
+        Map<String, String> acc1 = accounts.get(PACKAGE + ".acc1");
+
+        assertEquals(
+            Arrays.asList(
+                ProtocolProviderFactory.USER_ID,
+                ProtocolProviderFactory.PASSWORD,
+                "SERVER_ADDRESS"),
+            new ArrayList<>(acc1.keySet()));
+        assertEquals("alice", acc1.get(ProtocolProviderFactory.USER_ID));
+        assertEquals("c2VjcmV0", acc1.get(ProtocolProviderFactory.PASSWORD));
+        assertEquals("example.com", acc1.get("SERVER_ADDRESS"));
+        assertEquals(
+            Collections.singletonMap(ProtocolProviderFactory.USER_ID, "carol"),
+            accounts.get(PACKAGE + ".acc3"));
+    }
+
+    @Test
+    public void testUnorderedFactoryLoadsConcurrently()
+        throws Exception
+    {
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        MockFactory factory = new MockFactory(false)
+        {
+            @Override
+            void loading(String userID)
+                throws Exception
+            {
+                // only passes if both accounts load at the same time
+                barrier.await(TIMEOUT, TimeUnit.SECONDS);
+            }
+        };
+
+        storeAccount("acc1", "alice");
+        storeAccount("acc2", "bob");
+
+        List<String> loadedAtEvent = registerAndAwaitLoaded(factory);
+
+        assertEquals(2, loadedAtEvent.size());
+        assertTrue(loadedAtEvent.containsAll(Arrays.asList("alice", "bob")));
+        assertEquals(2, accountManager.getLoadTimings().size());
+        for (AccountManager.LoadTiming timing
+                : accountManager.getLoadTimings())
+        {
+            assertTrue(timing.isLoaded());
+        }
+    }
+
+    @Test
+    public void testOrderedFactoryLoadsInStoredOrder()
+        throws Exception
+    {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        MockFactory factory = new MockFactory(true)
+        {
+            @Override
+            void loading(String userID)
+                throws Exception
+            {
+                maxActive.accumulateAndGet(
+                    active.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                active.decrementAndGet();
+            }
+        };
+
+        storeAccount("acc1", "alice");
+        storeAccount("acc2", "bob");
+        storeAccount("acc3", "carol");
+        properties.put(
+            PACKAGE + ".acc3." + ProtocolProviderFactory.IS_ACCOUNT_DISABLED,
+            "true");
+        storeAccount("acc4", "dave");
+
+        List<String> loadedAtEvent = registerAndAwaitLoaded(factory);
+
+        assertEquals(Arrays.asList("alice", "bob", "dave"), loadedAtEvent);
+        assertEquals(1, maxActive.get());
+
+        // the disabled account is stored but not loaded
+        List<String> stored = new ArrayList<>();
+
+        for (AccountID accountID : accountManager.getStoredAccounts())
+            stored.add(accountID.getUserID());
+        assertEquals(Arrays.asList("alice", "bob", "carol", "dave"), stored);
+    }
+
+    @Test
+    public void testRegistrationTrackerRemovedOnceRegistered()
+        throws Exception
+    {
+        MockFactory factory = new MockFactory(true);
+
+        storeAccount("acc1", "alice");
+        registerAndAwaitLoaded(factory);
+
+        TrackingProvider provider = factory.providers.get(0);
+
+        assertEquals(1, provider.listeners.size());
+
+        provider.fire(RegistrationState.REGISTERING);
+        assertEquals(1, provider.listeners.size());
+
+        provider.fire(RegistrationState.REGISTERED);
+        assertTrue(provider.listeners.isEmpty());
+        assertTrue(
+            accountManager.getLoadTimings().get(0).getRegisterTime() >= 0);
+    }
+
+    @Test
+    public void testRegistrationTrackerRemovedOnUnregistered()
+        throws Exception
+    {
+        MockFactory factory = new MockFactory(true);
+
+        storeAccount("acc1", "alice");
+        registerAndAwaitLoaded(factory);
+
+        TrackingProvider provider = factory.providers.get(0);
+
+        provider.fire(RegistrationState.UNREGISTERED);
+        assertTrue(provider.listeners.isEmpty());
+        assertEquals(
+            -1, accountManager.getLoadTimings().get(0).getRegisterTime());
+    }
+
+    @Test
+    public void testRegistrationTrackerRemovedOnUnload()
+        throws Exception
+    {
+        MockFactory factory = new MockFactory(true);
+
+        storeAccount("acc1", "alice");
+        registerAndAwaitLoaded(factory);
+
+        TrackingProvider provider = factory.providers.get(0);
+
+        assertEquals(1, provider.listeners.size());
+
+        accountManager.unloadAccount(provider.getAccountID());
+        assertTrue(provider.listeners.isEmpty());
+    }
+
+    /**
+     * Stores the node and the user ID of an account of {@link MockFactory}.
+     *
+     * @param node the node of the account
+     * @param userID the user ID of the account
+     */
+    private void storeAccount(String node, String userID)
+    {
+        properties.put(PACKAGE + "." + node, node);
+        properties.put(
+            PACKAGE + "." + node + "." + ProtocolProviderFactory.USER_ID,
+            userID);
+    }
+
+    /**
+     * Registers a factory and waits for the <tt>STORED_ACCOUNTS_LOADED</tt>
+     * event of its stored accounts.
+     *
+     * @param factory the factory to register
+     * @return the user IDs of the accounts which were loaded when the event
+     * was fired, in the order they were loaded
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private List<String> registerAndAwaitLoaded(MockFactory factory)
+        throws InterruptedException
+    {
+        CompletableFuture<List<String>> loadedAtEvent
+            = new CompletableFuture<>();
+
+        accountManager.addListener(event ->
+        {
+            if (event.getType() == AccountManagerEvent.STORED_ACCOUNTS_LOADED
+                && event.getFactory() == factory)
+            {
+                loadedAtEvent.complete(new ArrayList<>(factory.loaded));
+            }
+        });
+        framework.register(ProtocolProviderFactory.class, factory);
+
+        try
+        {
+            return loadedAtEvent.get(TIMEOUT, TimeUnit.SECONDS);
+        }
+        catch (ExecutionException | TimeoutException e)
+        {
+            throw new AssertionError("the stored accounts were not loaded", e);
+        }
+    }
+
+    /**
+     * Implements the parts of <tt>ConfigurationService</tt> the
+     * <tt>AccountManager</tt> reads the stored accounts with.
+     */
+    private Object invokeConfiguration(Method m, Object[] args)
+    {
+        switch (m.getName())
+        {
+        case "getPropertyNamesByPrefix":
+            List<String> names = new ArrayList<>();
+
+            synchronized (properties)
+            {
+                for (String name : properties.keySet())
+                {
+                    if (name.startsWith((String) args[0]))
+                        names.add(name);
+                }
+            }
+            return names;
+        case "getString":
+            return properties.get(args[0]);
+        case "getInt":
+            return args[1];
+        case "setProperty":
+            properties.put((String) args[0], (String) args[1]);
+            return null;
+        case "setProperties":
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) args[0]).entrySet())
+                properties.put((String) e.getKey(), (String) e.getValue());
+            return null;
+        default:
+            throw new UnsupportedOperationException(m.getName());
+        }
+    }
+
+    /**
+     * A factory of mock protocol providers which records the accounts it
+     * loaded.
+     */
+    private static class MockFactory
+        extends ProtocolProviderFactory
+    {
+        private final boolean ordered;
+
+        /**
+         * The user IDs of the loaded accounts, in the order they were loaded.
+         */
+        final List<String> loaded = new CopyOnWriteArrayList<>();
+
+        /**
+         * The providers created for the loaded accounts.
+         */
+        final List<TrackingProvider> providers = new CopyOnWriteArrayList<>();
+
+        MockFactory(boolean ordered)
+        {
+            super(
+                ProtocolProviderActivator.getBundleContext(),
+                ProtocolNames.SIP_COMMUNICATOR_MOCK);
+            this.ordered = ordered;
+        }
+
+        /**
+         * Called when an account starts loading.
+         *
+         * @param userID the user ID of the account
+         * @throws Exception to fail the load
+         */
+        void loading(String userID)
+            throws Exception
+        {
+        }
+
+        @Override
+        public boolean loadAccount(AccountID accountID)
+        {
+            try
+            {
+                loading(accountID.getUserID());
+            }
+            catch (Exception e)
+            {
+                throw new RuntimeException(e);
+            }
+
+            boolean result = super.loadAccount(accountID);
+
+            loaded.add(accountID.getUserID());
+            return result;
+        }
+
+        @Override
+        public boolean isAccountLoadingOrdered()
+        {
+            return ordered;
+        }
+
+        @Override
+        protected AccountID createAccountID(
+            String userID, Map<String, String> accountProperties)
+        {
+            AccountID accountID = new MockProvider(userID).getAccountID();
+
+            // the mock account does not keep the properties it is created with
+            accountID.setAccountProperties(accountProperties);
+            return accountID;
+        }
+
+        @Override
+        protected ProtocolProviderService createService(
+            String userID, AccountID accountID)
+        {
+            TrackingProvider provider = new TrackingProvider(userID);
+
+            providers.add(provider);
+            return provider;
+        }
+
+        @Override
+        public AccountID installAccount(
+            String userID, Map<String, String> accountProperties)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void modifyAccount(
+            ProtocolProviderService protocolProvider,
+            Map<String, String> accountProperties)
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * A mock protocol provider which keeps its registration state listeners.
+     */
+    private static class TrackingProvider
+        extends MockProvider
+    {
+        final List<RegistrationStateChangeListener> listeners
+            = new CopyOnWriteArrayList<>();
+
+        TrackingProvider(String userID)
+        {
+            super(userID);
+        }
+
+        /**
+         * Notifies the listeners of a new registration state.
+         *
+         * @param state the new state
+         */
+        void fire(RegistrationState state)
+        {
+            RegistrationStateChangeEvent event
+                = new RegistrationStateChangeEvent(
+                    this, getRegistrationState(), state,
+                    RegistrationStateChangeEvent.REASON_NOT_SPECIFIED, null);
+
+            for (RegistrationStateChangeListener l : listeners)
+                l.registrationStateChanged(event);
+        }
+
+        @Override
+        public void addRegistrationStateChangeListener(
+            RegistrationStateChangeListener listener)
+        {
+            listeners.add(listener);
+        }
+
+        @Override
+        public void removeRegistrationStateChangeListener(
+            RegistrationStateChangeListener listener)
+        {
+            listeners.remove(listener);
+        }
+
+        @Override
+        public ProtocolIcon getProtocolIcon()
+        {
+            return proxy(ProtocolIcon.class, null);
+        }
+    }
+
+    /**
+     * The part of an OSGi framework the protocol provider bundle uses, backed
+     * by proxies.
+     */
+    private static class Framework
+    {
+        private final Map<ServiceListener, String> listeners
+            = new ConcurrentHashMap<>();
+
+        private final Map<String, List<ServiceReference<?>>> references
+            = new ConcurrentHashMap<>();
+
+        private final Map<ServiceReference<?>, Object> services
+            = new ConcurrentHashMap<>();
+
+        private final Bundle bundle = proxy(Bundle.class, null);
+
+        private final BundleContext context
+            = proxy(BundleContext.class, this::invoke);
+
+        /**
+         * Registers a service and notifies the listeners interested in it.
+         *
+         * @param serviceClass the interface the service is registered under
+         * @param service the service
+         * @return the registration of the service
+         */
+        ServiceRegistration<?> register(Class<?> serviceClass, Object service)
+        {
+            return register(serviceClass.getName(), service);
+        }
+
+        private ServiceRegistration<?> register(String name, Object service)
+        {
+            ServiceReference<?> reference
+                = proxy(ServiceReference.class, (m, args) -> null);
+            ServiceEvent event
+                = new ServiceEvent(ServiceEvent.REGISTERED, reference);
+            String filter = "(" + Constants.OBJECTCLASS + "=" + name + ")";
+
+            services.put(reference, service);
+            references.computeIfAbsent(name, k -> new CopyOnWriteArrayList<>())
+                .add(reference);
+            listeners.forEach((l, f) ->
+            {
+                if (f.isEmpty() || f.equals(filter))
+                    l.serviceChanged(event);
+            });
+
+            return proxy(ServiceRegistration.class, (m, args) ->
+                m.getName().equals("getReference") ? reference : null);
+        }
+
+        private Object invoke(Method m, Object[] args)
+            throws InvalidSyntaxException
+        {
+            List<ServiceReference<?>> refs;
+
+            switch (m.getName())
+            {
+            case "addServiceListener":
+                listeners.put(
+                    (ServiceListener) args[0],
+                    args.length > 1 && args[1] != null ? (String) args[1] : "");
+                return null;
+            case "removeServiceListener":
+                listeners.remove(args[0]);
+                return null;
+            case "registerService":
+                return register(
+                    args[0] instanceof Class
+                        ? ((Class<?>) args[0]).getName()
+                        : args[0] instanceof String[]
+                            ? ((String[]) args[0])[0]
+                            : (String) args[0],
+                    args[1]);
+            case "getServiceReference":
+                refs = references.get(((Class<?>) args[0]).getName());
+                return refs == null ? null : refs.get(0);
+            case "getServiceReferences":
+                if (args[0] instanceof Class)
+                {
+                    refs = references.get(((Class<?>) args[0]).getName());
+                    return refs == null
+                        ? Collections.emptyList()
+                        : new ArrayList<>(refs);
+                }
+                refs = references.get((String) args[0]);
+                return refs == null
+                    ? null
+                    : refs.toArray(new ServiceReference<?>[refs.size()]);
+            case "getService":
+                return services.get(args[0]);
+            case "ungetService":
+                return true;
+            case "createFilter":
+                return FrameworkUtil.createFilter((String) args[0]);
+            case "getBundle":
+                return bundle;
+            case "addBundleListener":
+            case "removeBundleListener":
+                return null;
+            default:
+                throw new UnsupportedOperationException(m.getName());
+            }
+        }
+    }
+
+    /**
+     * The handler of the methods of a proxy which are not declared by
+     * <tt>Object</tt>.
+     */
+    private interface Handler
+    {
+        Object invoke(Method method, Object[] args)
+            throws Exception;
+    }
+
+    /**
+     * Creates a proxy which compares by identity.
+     *
+     * @param type the interface of the proxy
+     * @param handler handles the methods of <tt>type</tt>, or <tt>null</tt>
+     * to return <tt>null</tt> from all of them
+     * @return the proxy
+     */
+    private static <T> T proxy(Class<T> type, Handler handler)
+    {
+        return type.cast(Proxy.newProxyInstance(
+            type.getClassLoader(),
+            new Class<?>[] { type },
+            (proxy, m, args) ->
+            {
+                switch (m.getName())
+                {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return type.getSimpleName();
+                default:
+                    return handler == null ? null : handler.invoke(m, args);
+                }
+            }));
+    }
+}
@@ -67,7 +67,7 @@
     /**
      * The timer that runs the keep-alive task
      */
-    private Timer keepAliveTimer = null;
+    private final TimerScheduler keepAliveTimer = new TimerScheduler();
 
     /**
      * The next long to use as a cseq header value.
@@ -228,7 +228,7 @@ void shutdown()
      * alive method.
      */
     private class OptionsKeepAliveTask
-        extends TimerTask
+        extends TimerScheduler.Task
     {
         @Override
         public void run()
@@ -394,7 +394,7 @@ public void run()
      * Class implements CRLF keep alive method.
      */
     private class CRLfKeepAliveTask
-        extends TimerTask
+        extends TimerScheduler.Task
     {
 
         @Override
@@ -453,11 +453,7 @@ public void registrationStateChanged(RegistrationStateChangeEvent evt)
                 evt.getNewState() == RegistrationState.CONNECTION_FAILED)
             {
                 // stop any task associated with the timer
-                if (keepAliveTimer != null)
-                {
-                    keepAliveTimer.cancel();
-                    keepAliveTimer = null;
-                }
+                keepAliveTimer.cancel();
             }
             else if (evt.getNewState().equals(RegistrationState.REGISTERED))
             {
@@ -483,9 +479,6 @@ else if (evt.getNewState().equals(RegistrationState.REGISTERED))
                 if (keepAliveInterval > 0
                     && !provider.getRegistrarConnection().isRegistrarless())
                 {
-                    if (keepAliveTimer == null)
-                        keepAliveTimer = new Timer();
-
                     TimerTask keepAliveTask;
                     // CRLF is used by default on Android
                     if( (OSUtils.IS_ANDROID && keepAliveMethod == null)
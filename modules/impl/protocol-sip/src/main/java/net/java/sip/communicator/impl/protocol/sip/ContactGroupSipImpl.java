@@ -18,6 +18,7 @@
 package net.java.sip.communicator.impl.protocol.sip;
 
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 import javax.xml.namespace.*;
 
@@ -90,6 +91,12 @@
      */
     private final ListType list;
 
+    /**
+     * The number of times contacts and subgroups were added to or removed
+     * from this group and its subgroups.
+     */
+    private final AtomicInteger modificationCount = new AtomicInteger();
+
     /**
      * Creates a ContactGroupSipImpl with the specified name.
      *
@@ -190,6 +197,7 @@ public void addContact(ContactSipImpl contactToAdd)
         {
             this.list.getEntries().add(contactToAdd.getEntry());
         }
+        modified();
     }
 
     /**
@@ -247,6 +255,7 @@ public void addSubgroup(ContactGroupSipImpl subgroup)
         {
             this.list.getLists().add(subgroup.getList());
         }
+        modified();
     }
 
     /**
@@ -261,6 +270,7 @@ public void removeSubGroup(ContactGroupSipImpl subgroup)
         {
             this.list.getLists().remove(subgroup.getList());
         }
+        modified();
     }
 
     /**
@@ -408,6 +418,33 @@ public void removeContact(ContactSipImpl contact)
         {
             this.list.getEntries().remove(contact.getEntry());
         }
+        modified();
+    }
+
+    /**
+     * Returns the number of times contacts and subgroups were added to or
+     * removed from this group and its subgroups. Allows caches of the
+     * contacts of the group to tell whether they are still up to date.
+     *
+     * @return the modification count of this group
+     */
+    int getModificationCount()
+    {
+        return modificationCount.get();
+    }
+
+    /**
+     * Records a change of the contacts or subgroups of this group in this
+     * group and in its ancestors.
+     */
+    private void modified()
+    {
+        modificationCount.incrementAndGet();
+
+        ContactGroupSipImpl parent = this.parentGroup;
+
+        if (parent != null)
+            parent.modified();
     }
 
     /**
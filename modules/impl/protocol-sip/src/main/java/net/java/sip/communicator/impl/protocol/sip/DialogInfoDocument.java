@@ -0,0 +1,393 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import java.io.*;
+import java.util.*;
+
+import javax.xml.stream.*;
+
+/**
+ * The parts of a dialog-info document (RFC 4235) which
+ * <tt>OperationSetTelephonyBLFSipImpl</tt> uses to compute the state of a
+ * monitored line: the version and the full or partial state of the document
+ * and, for each dialog, its identifiers and its state.
+ * <p>
+ * Documents are read with a single pass of a StAX reader. As with the former
+ * DOM based parsing, the elements are matched in any namespace and the state
+ * of a dialog is the text of the first state element inside it.
+ */
+final class DialogInfoDocument
+{
+    /**
+     * The value of the state attribute of documents carrying the full state.
+     */
+    private static final String FULL = "full";
+
+    /**
+     * The shared factory of the stream readers. It is configured once, after
+     * which creating readers is thread safe.
+     */
+    private static final XMLInputFactory inputFactory;
+
+    static
+    {
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(
+            XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * The version of the document or <tt>-1</tt> if it has none.
+     */
+    private long version = -1;
+
+    /**
+     * Whether the document carries the full state rather than changes.
+     */
+    private boolean full = true;
+
+    /**
+     * The entity attribute of the dialog-info element or <tt>null</tt>.
+     */
+    private String entity;
+
+    /**
+     * The dialogs of the document in document order.
+     */
+    private final List<Dialog> dialogs = new ArrayList<>();
+
+    /**
+     * Creates an empty document, filled by {@link #parse(XMLStreamReader)}.
+     */
+    private DialogInfoDocument()
+    {
+    }
+
+    /**
+     * Parses a dialog-info document.
+     *
+     * @param content the bytes of the document, decoded according to its XML
+     * declaration
+     * @return the parsed document or <tt>null</tt> if it has no dialog-info
+     * element
+     * @throws XMLStreamException if the document is not well formed
+     */
+    static DialogInfoDocument parse(byte[] content)
+        throws XMLStreamException
+    {
+        return parse(
+            inputFactory.createXMLStreamReader(
+                new ByteArrayInputStream(content)));
+    }
+
+    /**
+     * Reads the dialog-info element of a document and closes the reader.
+     *
+     * @param reader the reader positioned at the start of the document
+     * @return the parsed document or <tt>null</tt> if it has no dialog-info
+     * element
+     * @throws XMLStreamException if the document is not well formed
+     */
+    private static DialogInfoDocument parse(XMLStreamReader reader)
+        throws XMLStreamException
+    {
+        try
+        {
+            while (reader.hasNext())
+            {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT
+                        && "dialog-info".equals(reader.getLocalName()))
+                {
+                    DialogInfoDocument document = new DialogInfoDocument();
+
+                    document.readDialogInfo(reader);
+                    return document;
+                }
+            }
+            return null;
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads the dialog-info element the reader is positioned on.
+     *
+     * @param reader the reader positioned on the start of the dialog-info
+     * element
+     * @throws XMLStreamException if the document is not well formed
+     */
+    private void readDialogInfo(XMLStreamReader reader)
+        throws XMLStreamException
+    {
+        String versionValue = reader.getAttributeValue(null, "version");
+
+        if (versionValue != null)
+        {
+            try
+            {
+                version = Long.parseLong(versionValue.trim());
+            }
+            catch (NumberFormatException nfe)
+            {
+                version = -1;
+            }
+        }
+
+        String stateValue = reader.getAttributeValue(null, "state");
+
+        full = (stateValue == null) || FULL.equalsIgnoreCase(stateValue.trim());
+        entity = reader.getAttributeValue(null, "entity");
+
+        // the dialog-info element is at depth 1
+        int depth = 1;
+        Dialog dialog = null;
+        int dialogDepth = 0;
+
+        while (depth > 0)
+        {
+            switch (reader.next())
+            {
+            case XMLStreamConstants.START_ELEMENT:
+                depth++;
+
+                String name = reader.getLocalName();
+
+                if (dialog == null)
+                {
+                    if ("dialog".equals(name))
+                    {
+                        dialog = new Dialog(reader);
+                        dialogDepth = depth;
+                    }
+                }
+                else if ("state".equals(name) && (dialog.state == null))
+                {
+                    dialog.state = readText(reader);
+                    // readText consumed the end of the state element
+                    depth--;
+                }
+                break;
+
+            case XMLStreamConstants.END_ELEMENT:
+                if ((dialog != null) && (depth == dialogDepth))
+                {
+                    dialogs.add(dialog);
+                    dialog = null;
+                }
+                depth--;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Reads the text of the element the reader is positioned on, including
+     * the text of its children, and leaves the reader on its end.
+     *
+     * @param reader the reader positioned on the start of an element
+     * @return the trimmed text of the element
+     * @throws XMLStreamException if the document is not well formed
+     */
+    private static String readText(XMLStreamReader reader)
+        throws XMLStreamException
+    {
+        StringBuilder text = new StringBuilder();
+        int depth = 1;
+
+        while (depth > 0)
+        {
+            switch (reader.next())
+            {
+            case XMLStreamConstants.START_ELEMENT:
+                depth++;
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                depth--;
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+                text.append(reader.getText());
+                break;
+            }
+        }
+        return text.toString().trim();
+    }
+
+    /**
+     * Gets the version of the document.
+     *
+     * @return the version of the document or <tt>-1</tt> if it has none
+     */
+    long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Determines whether the document carries the full state of the
+     * dialogs rather than their changes.
+     *
+     * @return <tt>true</tt> if the document carries the full state
+     */
+    boolean isFull()
+    {
+        return full;
+    }
+
+    /**
+     * Gets the entity of the document.
+     *
+     * @return the entity attribute of the dialog-info element or
+     * <tt>null</tt>
+     */
+    String getEntity()
+    {
+        return entity;
+    }
+
+    /**
+     * Gets the dialogs of the document.
+     *
+     * @return the dialogs in document order
+     */
+    List<Dialog> getDialogs()
+    {
+        return Collections.unmodifiableList(dialogs);
+    }
+
+    /**
+     * A dialog element.
+     */
+    static final class Dialog
+    {
+        /**
+         * The id of the dialog.
+         */
+        private final String id;
+
+        /**
+         * Either initiator or recipient, indicating whether the observed
+         * user was the initiator of the dialog or the recipient of the INVITE
+         * that created it.
+         */
+        private final String direction;
+
+        /**
+         * The call-id of the dialog, used for remote pickup.
+         */
+        private final String callID;
+
+        /**
+         * The local-tag of the dialog, used for remote pickup.
+         */
+        private final String localTag;
+
+        /**
+         * The remote-tag of the dialog, used for remote pickup.
+         */
+        private final String remoteTag;
+
+        /**
+         * The state of the dialog: Trying, Proceeding, Early, Confirmed or
+         * Terminated.
+         */
+        private String state;
+
+        /**
+         * Reads the attributes of a dialog element.
+         *
+         * @param reader the reader positioned on the start of the dialog
+         * element
+         */
+        private Dialog(XMLStreamReader reader)
+        {
+            id = reader.getAttributeValue(null, "id");
+            direction = reader.getAttributeValue(null, "direction");
+            callID = reader.getAttributeValue(null, "call-id");
+            localTag = reader.getAttributeValue(null, "local-tag");
+            remoteTag = reader.getAttributeValue(null, "remote-tag");
+        }
+
+        /**
+         * Gets the id of the dialog.
+         *
+         * @return the id of the dialog
+         */
+        String getId()
+        {
+            return id;
+        }
+
+        /**
+         * Gets the direction of the dialog.
+         *
+         * @return initiator, recipient or <tt>null</tt>
+         */
+        String getDirection()
+        {
+            return direction;
+        }
+
+        /**
+         * Gets the call-id of the dialog.
+         *
+         * @return the call-id or <tt>null</tt>
+         */
+        String getCallID()
+        {
+            return callID;
+        }
+
+        /**
+         * Gets the local-tag of the dialog.
+         *
+         * @return the local-tag or <tt>null</tt>
+         */
+        String getLocalTag()
+        {
+            return localTag;
+        }
+
+        /**
+         * Gets the remote-tag of the dialog.
+         *
+         * @return the remote-tag or <tt>null</tt>
+         */
+        String getRemoteTag()
+        {
+            return remoteTag;
+        }
+
+        /**
+         * Gets the state of the dialog.
+         *
+         * @return the state or <tt>null</tt> if the dialog has none
+         */
+        String getState()
+        {
+            return state;
+        }
+    }
+}
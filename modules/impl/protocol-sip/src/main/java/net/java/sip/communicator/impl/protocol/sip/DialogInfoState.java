@@ -0,0 +1,249 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import java.util.*;
+
+import net.java.sip.communicator.service.protocol.event.*;
+
+/**
+ * The state of a line monitored by <tt>OperationSetTelephonyBLFSipImpl</tt>:
+ * the dialogs of the line which have not terminated and the
+ * <tt>BLFStatusEvent</tt> status computed from them.
+ * <p>
+ * Dialog-info documents (RFC 4235) are applied in the order of their
+ * versions: a document with a version not greater than the one of the last
+ * applied document is a duplicate or has been overtaken and is dropped. A
+ * full document replaces the dialogs of the line, a partial one updates the
+ * dialogs it lists. A partial document skipping a version cannot be applied
+ * since the changes of the missing one are unknown: it is dropped, as are the
+ * following partial documents, until a full document restores the dialogs of
+ * the line, and a refresh of the subscription is requested to get one. The
+ * status of the line is busy if one of its dialogs is confirmed, ringing if
+ * one of them is being established and free otherwise.
+ */
+final class DialogInfoState
+{
+    /**
+     * The dialogs which have not terminated by id, in the order they were
+     * first reported.
+     */
+    private final Map<String, DialogInfoDocument.Dialog> dialogs
+        = new LinkedHashMap<>();
+
+    /**
+     * The version of the last applied document or <tt>-1</tt> if none has
+     * been applied since the last reset.
+     */
+    private long version = -1;
+
+    /**
+     * The current status of the line, the last event fired for it.
+     */
+    private int status = BLFStatusEvent.STATUS_OFFLINE;
+
+    /**
+     * Whether a document was missed and partial documents are dropped until
+     * a full one is applied.
+     */
+    private boolean awaitingFullState;
+
+    /**
+     * Whether a document was missed and the subscription has not been
+     * asked to be refreshed yet.
+     */
+    private boolean refreshRequested;
+
+    /**
+     * Applies a dialog-info document to the line.
+     *
+     * @param document the document to apply
+     * @return <tt>true</tt> if the status of the line has changed
+     */
+    synchronized boolean apply(DialogInfoDocument document)
+    {
+        long documentVersion = document.getVersion();
+
+        if ((documentVersion >= 0) && (version >= 0))
+        {
+            if (documentVersion <= version)
+                return false;
+            if (!document.isFull()
+                    && (awaitingFullState || (documentVersion > version + 1)))
+            {
+                // the changes of the missing versions are unknown
+                if (!awaitingFullState)
+                {
+                    awaitingFullState = true;
+                    refreshRequested = true;
+                }
+                version = documentVersion;
+                return false;
+            }
+        }
+        if (documentVersion >= 0)
+            version = documentVersion;
+
+        if (document.isFull())
+        {
+            dialogs.clear();
+            awaitingFullState = false;
+        }
+        for (DialogInfoDocument.Dialog dialog : document.getDialogs())
+        {
+            String state = dialog.getState();
+
+            // a dialog without a state does not tell us anything
+            if (state == null)
+                continue;
+
+            String id = (dialog.getId() == null) ? "" : dialog.getId();
+
+            if (state.equalsIgnoreCase("Terminated"))
+            {
+                dialogs.remove(id);
+            }
+            else if (isEstablishing(state)
+                    || state.equalsIgnoreCase("Confirmed"))
+            {
+                // reinsert so that the latest dialog is the last one
+                dialogs.remove(id);
+                dialogs.put(id, dialog);
+            }
+        }
+        return setStatus(computeStatus());
+    }
+
+    /**
+     * Determines whether the subscription has to be refreshed to get the full
+     * state of the line after a document was missed. Returns <tt>true</tt>
+     * only once per missed document.
+     *
+     * @return <tt>true</tt> if the subscription has to be refreshed
+     */
+    synchronized boolean takeRefreshRequest()
+    {
+        boolean requested = refreshRequested;
+
+        refreshRequested = false;
+        return requested;
+    }
+
+    /**
+     * Determines whether a dialog state is one of a dialog being
+     * established.
+     *
+     * @param state the state of the dialog
+     * @return <tt>true</tt> if <tt>state</tt> is Trying, Proceeding or Early
+     */
+    private static boolean isEstablishing(String state)
+    {
+        return state.equalsIgnoreCase("Trying")
+            || state.equalsIgnoreCase("Proceeding")
+            || state.equalsIgnoreCase("Early");
+    }
+
+    /**
+     * Computes the status of the line from its dialogs.
+     *
+     * @return the status of the line
+     */
+    private int computeStatus()
+    {
+        int newStatus = BLFStatusEvent.STATUS_FREE;
+
+        for (DialogInfoDocument.Dialog dialog : dialogs.values())
+        {
+            if (dialog.getState().equalsIgnoreCase("Confirmed"))
+                return BLFStatusEvent.STATUS_BUSY;
+            newStatus = BLFStatusEvent.STATUS_RINGING;
+        }
+        return newStatus;
+    }
+
+    /**
+     * Sets the status of the line.
+     *
+     * @param newStatus the new status
+     * @return <tt>true</tt> if the status has changed
+     */
+    synchronized boolean setStatus(int newStatus)
+    {
+        if (status == newStatus)
+            return false;
+        status = newStatus;
+        return true;
+    }
+
+    /**
+     * Sets the status of an offline line to free, leaving the status of a
+     * line for which a NOTIFY has already been received as it is.
+     *
+     * @return <tt>true</tt> if the status has changed
+     */
+    synchronized boolean setOnline()
+    {
+        return (status == BLFStatusEvent.STATUS_OFFLINE)
+            && setStatus(BLFStatusEvent.STATUS_FREE);
+    }
+
+    /**
+     * Gets the status of the line.
+     *
+     * @return the status of the line, one of the <tt>BLFStatusEvent</tt>
+     * constants
+     */
+    synchronized int getStatus()
+    {
+        return status;
+    }
+
+    /**
+     * Forgets the dialogs and the version of the line so that the documents
+     * of a new subscription, the versions of which start over, are applied.
+     * The status is kept until the new subscription reports one.
+     */
+    synchronized void reset()
+    {
+        dialogs.clear();
+        version = -1;
+        awaitingFullState = false;
+        refreshRequested = false;
+    }
+
+    /**
+     * Gets the dialog to pick up: the latest one being established or, if
+     * there is none, the latest one.
+     *
+     * @return the dialog to pick up or <tt>null</tt> if the line has no
+     * dialog
+     */
+    synchronized DialogInfoDocument.Dialog getPickupDialog()
+    {
+        DialogInfoDocument.Dialog latest = null;
+        DialogInfoDocument.Dialog establishing = null;
+
+        for (DialogInfoDocument.Dialog dialog : dialogs.values())
+        {
+            latest = dialog;
+            if (isEstablishing(dialog.getState()))
+                establishing = dialog;
+        }
+        return (establishing == null) ? latest : establishing;
+    }
+}
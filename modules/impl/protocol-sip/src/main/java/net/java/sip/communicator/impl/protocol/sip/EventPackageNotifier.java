@@ -57,6 +57,19 @@
      */
     private final SipMessageFactory messageFactory;
 
+    /**
+     * The maximum time in milliseconds {@link #notifyAll(String, String,
+     * SubscriptionFilter)} waits for the NOTIFY requests terminating the
+     * subscriptions to be sent.
+     */
+    private static final long TERMINATED_NOTIFY_TIMEOUT = 5000;
+
+    /**
+     * Sends the NOTIFY requests of {@link #notifyAll(String, String,
+     * SubscriptionFilter)}.
+     */
+    private final NotifyFanOut fanOut = NotifyFanOut.getSharedInstance();
+
     /**
      * Initializes a new <tt>EventPackageNotifier</tt> instance which is to
      * provide notifier support according to RFC 3265 to a specific SIP
@@ -435,15 +448,119 @@ public void notifyAll(
             SubscriptionFilter filter)
         throws OperationFailedException
     {
+        List<Subscription> coalescable = new ArrayList<>();
+
         for (EventPackageSupport.Subscription subscription : getSubscriptions())
         {
             Subscription s = (Subscription) subscription;
 
             if ((filter == null) || filter.accept(s))
-                notify(s, subscriptionState, reason);
+            {
+                if (s.isCoalescable())
+                    coalescable.add(s);
+                else
+                    notify(s, subscriptionState, reason);
+            }
+        }
+        if (coalescable.isEmpty())
+            return;
+
+        NotifyFanOut.Change change
+            = fanOut.notifyAll(
+                    eventPackage,
+                    coalescable,
+                    subscriptionState,
+                    reason,
+                    this::sendNotify);
+
+        /*
+         * The callers terminating the subscriptions (e.g. when going offline)
+         * expect the closing NOTIFYs to be on their way upon return.
+         */
+        if (SubscriptionState.TERMINATED.equals(subscriptionState))
+        {
+            try
+            {
+                if (!change.await(TERMINATED_NOTIFY_TIMEOUT))
+                {
+                    logger.warn(
+                        "Timed out waiting for the closing NOTIFYs of "
+                            + eventPackage);
+                }
+            }
+            catch (InterruptedException iex)
+            {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
+    /**
+     * Sends a NOTIFY request with a specific content to a specific
+     * <tt>Subscription</tt> on behalf of {@link #fanOut}. Does nothing if the
+     * subscription has been removed or has changed its dialog in the meantime.
+     *
+     * @param subscription the <tt>Subscription</tt> to notify
+     * @param content the content of the NOTIFY request
+     * @param subscriptionState the subscription state to notify about
+     * @param reason the reason for the subscription state
+     * @throws OperationFailedException if sending the NOTIFY request failed
+     */
+    private void sendNotify(
+            Subscription subscription,
+            byte[] content,
+            String subscriptionState,
+            String reason)
+        throws OperationFailedException
+    {
+        Dialog dialog = subscription.getDialog();
+
+        if (dialog == null)
+            return;
+
+        String callId;
+
+        synchronized (dialog)
+        {
+            if (subscription.getDialog() != dialog)
+                return;
+
+            ClientTransaction transac
+                = createNotify(dialog, content, subscriptionState, reason);
+
+            callId = dialog.getCallId().getCallId();
+
+            try
+            {
+                dialog.sendRequest(transac);
+            }
+            catch (SipException sex)
+            {
+                throw
+                    new OperationFailedException(
+                            "Failed to send NOTIFY request.",
+                            OperationFailedException.NETWORK_FAILURE,
+                            sex);
+            }
+        }
+
+        if (SubscriptionState.TERMINATED.equals(subscriptionState))
+            removeSubscription(callId, subscription);
+    }
+
+    /**
+     * Gets the statistics of the NOTIFY requests sent by {@link #notifyAll(
+     * String, String, SubscriptionFilter)} for the event package of this
+     * instance.
+     *
+     * @return a snapshot of the statistics of the NOTIFY requests of the
+     * event package of this instance
+     */
+    NotifyFanOut.Statistics getNotifyStatistics()
+    {
+        return fanOut.getStatistics(eventPackage);
+    }
+
     /**
      * Processes incoming subscribe requests.
      *
@@ -925,6 +1042,35 @@ protected void removeSubscription(
     public static abstract class Subscription
         extends EventPackageSupport.Subscription
     {
+        /**
+         * Guards the fields of this <tt>Subscription</tt> used by
+         * <tt>NotifyFanOut</tt>.
+         */
+        final Object fanOutLock = new Object();
+
+        /**
+         * The change waiting to be sent to this <tt>Subscription</tt> by
+         * <tt>NotifyFanOut</tt>.
+         */
+        NotifyFanOut.Change pendingChange;
+
+        /**
+         * The time as returned by {@link System#nanoTime()} since when a
+         * change has been waiting to be sent to this <tt>Subscription</tt>.
+         */
+        long pendingSince;
+
+        /**
+         * Whether <tt>NotifyFanOut</tt> has a task running or queued which
+         * sends the changes to this <tt>Subscription</tt>.
+         */
+        boolean notifyScheduled;
+
+        /**
+         * Whether <tt>NotifyFanOut</tt> has started to send a change which
+         * terminates this <tt>Subscription</tt>.
+         */
+        boolean notifyTerminated;
 
         /**
          * Initializes a new <tt>Subscription</tt> instance with a specific
@@ -961,6 +1107,38 @@ public Subscription(Address fromAddress, String eventId)
         protected abstract byte[] createNotifyContent(
             String subscriptionState,
             String reason);
+
+        /**
+         * Gets a key identifying the content this <tt>Subscription</tt> would
+         * create for a specific subscription state and reason so that it is
+         * created only once for all <tt>Subscription</tt>s with equal keys
+         * notified of the same change.
+         *
+         * @param subscriptionState the subscription state to be notified about
+         * @param reason the reason for the subscription state
+         * @return the key of the content or <tt>null</tt> if the content of
+         * this <tt>Subscription</tt> is not to be shared
+         */
+        protected Object getNotifyContentKey(
+            String subscriptionState,
+            String reason)
+        {
+            return null;
+        }
+
+        /**
+         * Determines whether a change notified to this <tt>Subscription</tt>
+         * may be skipped in favor of a later one while it waits to be sent.
+         * Subscriptions which consume state when creating their content must
+         * return <tt>false</tt> and are then notified synchronously.
+         *
+         * @return <tt>true</tt> if the changes notified to this
+         * <tt>Subscription</tt> may be coalesced; otherwise, <tt>false</tt>
+         */
+        protected boolean isCoalescable()
+        {
+            return true;
+        }
     }
 
     /**
@@ -991,7 +1169,7 @@ protected abstract byte[] createNotifyContent(
      * <tt>Subscription</tt> when its subscription duration expires.
      */
     private class SubscriptionTimeoutTask
-        extends TimerTask
+        extends TimerScheduler.Task
     {
 
         /**
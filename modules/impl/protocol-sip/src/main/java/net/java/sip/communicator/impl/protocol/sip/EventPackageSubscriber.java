@@ -381,6 +381,20 @@ public void poll(Subscription subscription)
             subscribe(subscription);
     }
 
+    /**
+     * Determines whether the bodies of NOTIFY requests with a specific
+     * content type are understood by this subscriber. By default only the
+     * content sub-type this instance was created with is supported.
+     *
+     * @param ctheader the Content-Type header of a NOTIFY request
+     * @return <tt>true</tt> if the body of the NOTIFY request is understood;
+     * otherwise, <tt>false</tt>
+     */
+    protected boolean isContentTypeSupported(ContentTypeHeader ctheader)
+    {
+        return ctheader.getContentSubType().equalsIgnoreCase(contentSubType);
+    }
+
     /**
      * Populates a specific <tt>Request</tt> instance with the headers
      * common to dialog-creating <tt>Request</tt>s and ones sent inside
@@ -574,8 +588,7 @@ public boolean processRequest(RequestEvent requestEvent)
         // if we don't understand the content
         ContentTypeHeader ctheader
             = (ContentTypeHeader) request.getHeader(ContentTypeHeader.NAME);
-        if ((ctheader != null)
-                && !ctheader.getContentSubType().equalsIgnoreCase(contentSubType))
+        if ((ctheader != null) && !isContentTypeSupported(ctheader))
         {
             // send a 415 response (rfc3261)
             Response response;
@@ -1264,7 +1277,7 @@ protected abstract void processTerminatedRequest(
      * <tt>Subscription</tt>.
      */
     private class SubscriptionRefreshTask
-        extends TimerTask
+        extends TimerScheduler.Task
     {
 
         /**
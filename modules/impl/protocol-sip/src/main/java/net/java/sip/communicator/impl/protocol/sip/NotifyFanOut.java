@@ -0,0 +1,613 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.sip.header.*;
+
+import net.java.sip.communicator.service.protocol.*;
+
+/**
+ * Sends the NOTIFY requests announcing a change of the state of an event
+ * package to its subscriptions from a bounded pool of threads instead of the
+ * thread which made the change.
+ * <p>
+ * Each change generates the NOTIFY body of the subscriptions which share a
+ * content key (see
+ * {@link EventPackageNotifier.Subscription#getNotifyContentKey(String,
+ * String)}) only once. A subscription has at most one NOTIFY queued or being
+ * sent at a time: changes made meanwhile are coalesced into the last one,
+ * except that nothing replaces or follows a termination. The number of
+ * queued tasks is thus bounded by the number of subscriptions.
+ * <p>
+ * The latency from a change to the NOTIFY being sent is recorded per event
+ * package.
+ */
+class NotifyFanOut
+{
+    /**
+     * Our class logger.
+     */
+    private static final org.slf4j.Logger logger
+        = org.slf4j.LoggerFactory.getLogger(NotifyFanOut.class);
+
+    /**
+     * The maximum number of threads of the instance shared by the event
+     * packages.
+     */
+    private static final int MAX_SHARED_THREADS = 4;
+
+    /**
+     * The instance shared by the event packages.
+     */
+    private static NotifyFanOut sharedInstance;
+
+    /**
+     * The threads sending the NOTIFY requests.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * The statistics by event package.
+     */
+    private final Map<String, Statistics> statistics
+        = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a fan-out with a specific number of threads. Idle threads end
+     * after a while.
+     *
+     * @param threads the maximum number of NOTIFY requests being created and
+     * sent at the same time
+     */
+    NotifyFanOut(int threads)
+    {
+        final AtomicInteger threadCount = new AtomicInteger();
+
+        executor
+            = new ThreadPoolExecutor(
+                    threads,
+                    threads,
+                    30,
+                    TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    r -> {
+                        Thread t
+                            = new Thread(
+                                    r,
+                                    "EventPackageNotifier-"
+                                        + threadCount.incrementAndGet());
+
+                        t.setDaemon(true);
+                        return t;
+                    });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the fan-out shared by the event packages.
+     *
+     * @return the shared fan-out
+     */
+    static synchronized NotifyFanOut getSharedInstance()
+    {
+        if (sharedInstance == null)
+        {
+            sharedInstance
+                = new NotifyFanOut(
+                        Math.min(
+                            MAX_SHARED_THREADS,
+                            Runtime.getRuntime().availableProcessors()));
+        }
+        return sharedInstance;
+    }
+
+    /**
+     * Queues the notification of a change to subscriptions.
+     *
+     * @param eventPackage the event package the statistics of which are to
+     * include the NOTIFY requests
+     * @param subscriptions the subscriptions to notify
+     * @param subscriptionState the subscription state to notify about
+     * @param reason the reason for the subscription state or <tt>null</tt>
+     * @param sender sends the NOTIFY requests
+     * @return the change which allows to wait for the NOTIFY requests
+     */
+    Change notifyAll(
+            String eventPackage,
+            Collection<EventPackageNotifier.Subscription> subscriptions,
+            String subscriptionState,
+            String reason,
+            Sender sender)
+    {
+        Change change
+            = new Change(
+                    getStatistics0(eventPackage),
+                    subscriptionState,
+                    reason,
+                    subscriptions.size());
+
+        for (EventPackageNotifier.Subscription subscription : subscriptions)
+            submit(subscription, change, sender);
+        return change;
+    }
+
+    /**
+     * Queues a change for a subscription, coalescing it with the change
+     * waiting for the subscription if any.
+     *
+     * @param subscription the subscription
+     * @param change the change
+     * @param sender sends the NOTIFY request
+     */
+    private void submit(
+            final EventPackageNotifier.Subscription subscription,
+            Change change,
+            final Sender sender)
+    {
+        Change superseded = null;
+        boolean schedule = false;
+
+        synchronized (subscription.fanOutLock)
+        {
+            Change pending = subscription.pendingChange;
+
+            if (subscription.notifyTerminated
+                    || ((pending != null) && pending.isTermination()))
+            {
+                // nothing is to follow a termination
+                superseded = change;
+            }
+            else if (pending == null)
+            {
+                subscription.pendingChange = change;
+                subscription.pendingSince = change.time;
+            }
+            else
+            {
+                subscription.pendingChange = change;
+                superseded = pending;
+            }
+
+            if ((subscription.pendingChange != null)
+                    && !subscription.notifyScheduled)
+            {
+                subscription.notifyScheduled = true;
+                schedule = true;
+            }
+        }
+
+        if (superseded != null)
+        {
+            change.statistics.coalesced();
+            superseded.done();
+        }
+        if (schedule)
+            executor.execute(() -> run(subscription, sender));
+    }
+
+    /**
+     * Sends the changes waiting for a subscription until there are none left.
+     *
+     * @param subscription the subscription
+     * @param sender sends the NOTIFY requests
+     */
+    private void run(
+            EventPackageNotifier.Subscription subscription,
+            Sender sender)
+    {
+        while (true)
+        {
+            Change change;
+            long since;
+
+            synchronized (subscription.fanOutLock)
+            {
+                change = subscription.pendingChange;
+                since = subscription.pendingSince;
+                subscription.pendingChange = null;
+                if (change == null)
+                {
+                    subscription.notifyScheduled = false;
+                    return;
+                }
+                if (change.isTermination())
+                    subscription.notifyTerminated = true;
+            }
+
+            try
+            {
+                sender.send(
+                    subscription,
+                    change.getContent(subscription),
+                    change.subscriptionState,
+                    change.reason);
+                change.statistics.sent(
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - since));
+            }
+            catch (Throwable t)
+            {
+                change.statistics.failed();
+                logger.error(
+                    "Failed to notify " + subscription + " about "
+                        + change.subscriptionState,
+                    t);
+                if (t instanceof ThreadDeath)
+                    throw (ThreadDeath) t;
+            }
+            finally
+            {
+                change.done();
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the statistics of an event package.
+     *
+     * @param eventPackage the event package
+     * @return the statistics of the NOTIFY requests of
+     * <tt>eventPackage</tt> sent through this instance
+     */
+    Statistics getStatistics(String eventPackage)
+    {
+        return getStatistics0(eventPackage).copy();
+    }
+
+    /**
+     * Returns the statistics of an event package, creating them if
+     * necessary.
+     *
+     * @param eventPackage the event package
+     * @return the statistics of <tt>eventPackage</tt>
+     */
+    private Statistics getStatistics0(String eventPackage)
+    {
+        return statistics.computeIfAbsent(eventPackage, p -> new Statistics());
+    }
+
+    /**
+     * Stops the threads of this instance once the queued NOTIFY requests
+     * have been sent.
+     */
+    void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    /**
+     * Sends a NOTIFY request to a subscription.
+     */
+    interface Sender
+    {
+        /**
+         * Sends a NOTIFY request.
+         *
+         * @param subscription the subscription to notify
+         * @param content the body of the NOTIFY request
+         * @param subscriptionState the subscription state
+         * @param reason the reason for the subscription state or
+         * <tt>null</tt>
+         * @throws OperationFailedException if the request could not be sent
+         */
+        void send(
+                EventPackageNotifier.Subscription subscription,
+                byte[] content,
+                String subscriptionState,
+                String reason)
+            throws OperationFailedException;
+    }
+
+    /**
+     * A change of the state of an event package being notified to
+     * subscriptions.
+     */
+    static class Change
+    {
+        /**
+         * The statistics of the event package.
+         */
+        private final Statistics statistics;
+
+        /**
+         * The subscription state to notify about.
+         */
+        private final String subscriptionState;
+
+        /**
+         * The reason for the subscription state or <tt>null</tt>.
+         */
+        private final String reason;
+
+        /**
+         * The time of the change as returned by {@link System#nanoTime()}.
+         */
+        private final long time = System.nanoTime();
+
+        /**
+         * The NOTIFY bodies by content key.
+         */
+        private final Map<Object, byte[]> contents
+            = new ConcurrentHashMap<>();
+
+        /**
+         * Counts down the subscriptions which have not been notified of this
+         * change or of a later one yet.
+         */
+        private final CountDownLatch remaining;
+
+        /**
+         * Creates a change.
+         *
+         * @param statistics the statistics of the event package
+         * @param subscriptionState the subscription state to notify about
+         * @param reason the reason for the subscription state
+         * @param subscriptions the number of subscriptions to notify
+         */
+        private Change(
+                Statistics statistics,
+                String subscriptionState,
+                String reason,
+                int subscriptions)
+        {
+            this.statistics = statistics;
+            this.subscriptionState = subscriptionState;
+            this.reason = reason;
+            this.remaining = new CountDownLatch(subscriptions);
+        }
+
+        /**
+         * Returns the NOTIFY body of a subscription, generating it only once
+         * for all the subscriptions with the same content key.
+         *
+         * @param subscription the subscription
+         * @return the body of the NOTIFY request
+         */
+        private byte[] getContent(
+                EventPackageNotifier.Subscription subscription)
+        {
+            Object key
+                = subscription.getNotifyContentKey(subscriptionState, reason);
+
+            if (key == null)
+            {
+                statistics.generated();
+                return subscription.createNotifyContent(
+                        subscriptionState,
+                        reason);
+            }
+            return contents.computeIfAbsent(
+                    key,
+                    k -> {
+                        statistics.generated();
+                        return subscription.createNotifyContent(
+                                subscriptionState,
+                                reason);
+                    });
+        }
+
+        /**
+         * Determines whether this change terminates the subscriptions.
+         *
+         * @return <tt>true</tt> if this change terminates the subscriptions
+         */
+        private boolean isTermination()
+        {
+            return
+                SubscriptionStateHeader.TERMINATED.equals(subscriptionState);
+        }
+
+        /**
+         * Records that a subscription has been notified of this change or
+         * will be notified of a later one.
+         */
+        private void done()
+        {
+            remaining.countDown();
+        }
+
+        /**
+         * Waits until all subscriptions have been notified of this change or
+         * of a later one.
+         *
+         * @param timeout the maximum time to wait in milliseconds
+         * @return <tt>true</tt> if all subscriptions have been notified;
+         * <tt>false</tt> if the time elapsed
+         * @throws InterruptedException if the current thread was interrupted
+         */
+        boolean await(long timeout)
+            throws InterruptedException
+        {
+            return remaining.await(timeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * The statistics of the NOTIFY requests of an event package.
+     */
+    static class Statistics
+    {
+        /**
+         * The number of NOTIFY requests sent.
+         */
+        private long sent;
+
+        /**
+         * The number of NOTIFY requests which could not be sent.
+         */
+        private long failures;
+
+        /**
+         * The number of changes which have not been sent to a subscription
+         * because of a later change or a pending termination.
+         */
+        private long coalesced;
+
+        /**
+         * The number of NOTIFY bodies generated.
+         */
+        private long generated;
+
+        /**
+         * The sum of the latencies of the sent NOTIFY requests in
+         * milliseconds.
+         */
+        private long totalLatency;
+
+        /**
+         * The latency of the last sent NOTIFY request in milliseconds.
+         */
+        private long lastLatency;
+
+        /**
+         * The largest latency of a sent NOTIFY request in milliseconds.
+         */
+        private long maxLatency;
+
+        /**
+         * Records a sent NOTIFY request.
+         *
+         * @param latency the time in milliseconds from the change to the
+         * NOTIFY request being sent
+         */
+        private synchronized void sent(long latency)
+        {
+            sent++;
+            totalLatency += latency;
+            lastLatency = latency;
+            maxLatency = Math.max(maxLatency, latency);
+        }
+
+        /**
+         * Records a NOTIFY request which could not be sent.
+         */
+        private synchronized void failed()
+        {
+            failures++;
+        }
+
+        /**
+         * Records a coalesced change.
+         */
+        private synchronized void coalesced()
+        {
+            coalesced++;
+        }
+
+        /**
+         * Records a generated NOTIFY body.
+         */
+        private synchronized void generated()
+        {
+            generated++;
+        }
+
+        /**
+         * Creates a copy of these statistics.
+         *
+         * @return the copy
+         */
+        private synchronized Statistics copy()
+        {
+            Statistics copy = new Statistics();
+
+            copy.sent = sent;
+            copy.failures = failures;
+            copy.coalesced = coalesced;
+            copy.generated = generated;
+            copy.totalLatency = totalLatency;
+            copy.lastLatency = lastLatency;
+            copy.maxLatency = maxLatency;
+            return copy;
+        }
+
+        /**
+         * Gets the number of NOTIFY requests sent.
+         *
+         * @return the number of NOTIFY requests sent
+         */
+        public long getSent()
+        {
+            return sent;
+        }
+
+        /**
+         * Gets the number of NOTIFY requests which could not be sent.
+         *
+         * @return the number of failed NOTIFY requests
+         */
+        public long getFailures()
+        {
+            return failures;
+        }
+
+        /**
+         * Gets the number of changes which have not been sent to a
+         * subscription because of a later change or a pending termination.
+         *
+         * @return the number of coalesced changes
+         */
+        public long getCoalesced()
+        {
+            return coalesced;
+        }
+
+        /**
+         * Gets the number of NOTIFY bodies generated.
+         *
+         * @return the number of generated bodies
+         */
+        public long getGenerated()
+        {
+            return generated;
+        }
+
+        /**
+         * Gets the average latency of the sent NOTIFY requests.
+         *
+         * @return the average latency in milliseconds
+         */
+        public long getAverageLatency()
+        {
+            return (sent == 0) ? 0 : (totalLatency / sent);
+        }
+
+        /**
+         * Gets the latency of the last sent NOTIFY request.
+         *
+         * @return the latency in milliseconds
+         */
+        public long getLastLatency()
+        {
+            return lastLatency;
+        }
+
+        /**
+         * Gets the largest latency of a sent NOTIFY request.
+         *
+         * @return the latency in milliseconds
+         */
+        public long getMaxLatency()
+        {
+            return maxLatency;
+        }
+    }
+}
@@ -474,6 +474,18 @@ public RemoteControlNotifierSubscription(
             super(fromAddress, eventId);
         }
 
+        /**
+         * The content of the NOTIFY requests of this subscription consumes
+         * the queued input events so none of them may be skipped.
+         *
+         * @return <tt>false</tt>
+         */
+        @Override
+        protected boolean isCoalescable()
+        {
+            return false;
+        }
+
         /**
          * Creates the content of the NOTIFY request to be sent to the target
          * represented by this <tt>Subscription</tt> and having a specific
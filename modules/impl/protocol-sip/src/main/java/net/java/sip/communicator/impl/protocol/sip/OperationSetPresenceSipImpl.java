@@ -20,11 +20,13 @@
 import java.net.URI;
 import java.text.*;
 import java.util.*;
+import java.util.function.*;
 
 import javax.sip.*;
 import javax.sip.address.*;
 import javax.sip.header.*;
 import javax.sip.message.*;
+import javax.xml.stream.*;
 
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.event.*;
@@ -56,6 +58,22 @@
 
     private ServerStoredContactList ssContactList;
 
+    /**
+     * The contacts of {@link #ssContactList} by normalized address.
+     */
+    private Map<String, ContactSipImpl> contactIndex;
+
+    /**
+     * The modification count of the root group of {@link #ssContactList}
+     * when {@link #contactIndex} was built.
+     */
+    private int contactIndexModificationCount;
+
+    /**
+     * The lock of {@link #contactIndex}.
+     */
+    private final Object contactIndexSyncRoot = new Object();
+
     /**
      * The currently active status message.
      */
@@ -151,6 +169,17 @@
      */
     private static final String WATCHERINFO_XML = "watcherinfo+xml";
 
+    /**
+     * The content sub-type of the resource list meta-information carried by
+     * the NOTIFY requests of resource lists (RFC 4662).
+     */
+    private static final String RLMI_XML = "rlmi+xml";
+
+    /**
+     * The option tag announcing the support of resource lists (RFC 4662).
+     */
+    private static final String EVENTLIST_OPTION_TAG = "eventlist";
+
     // pidf elements and attributes
     private static final String PRESENCE_ELEMENT= "presence";
     private static final String NS_ELEMENT      = "xmlns";
@@ -321,7 +350,64 @@ public OperationSetPresenceSipImpl(
                         this.subscriptionDuration,
                         PIDF_XML,
                         this.timer,
-                        REFRESH_MARGIN);
+                        REFRESH_MARGIN)
+                {
+                    /**
+                     * Announces the support of resource lists (RFC 4662)
+                     * whose NOTIFY bodies carry the PIDF documents of their
+                     * resources in a multipart/related body.
+                     */
+                    @Override
+                    protected void populateSubscribeRequest(
+                                Request req,
+                                Subscription subscription,
+                                int expires)
+                        throws OperationFailedException
+                    {
+                        super.populateSubscribeRequest(
+                            req, subscription, expires);
+
+                        HeaderFactory headerFactory
+                            = protocolProvider.getHeaderFactory();
+
+                        try
+                        {
+                            req.addHeader(
+                                headerFactory.createAcceptHeader(
+                                    "multipart", "related"));
+                            req.addHeader(
+                                headerFactory.createAcceptHeader(
+                                    "application", RLMI_XML));
+                            req.addHeader(
+                                headerFactory.createSupportedHeader(
+                                    EVENTLIST_OPTION_TAG));
+                        }
+                        catch (ParseException e)
+                        {
+                            logger.error("wrong accept header", e);
+                            throw new OperationFailedException(
+                                    "An unexpected error occurred while"
+                                    + "constructing the AcceptHeader",
+                                    OperationFailedException.INTERNAL_ERROR,
+                                    e);
+                        }
+                    }
+
+                    /**
+                     * Accepts the multipart/related bodies of resource
+                     * lists in addition to PIDF documents.
+                     */
+                    @Override
+                    protected boolean isContentTypeSupported(
+                            ContentTypeHeader ctheader)
+                    {
+                        return super.isContentTypeSupported(ctheader)
+                            || ("multipart".equalsIgnoreCase(
+                                        ctheader.getContentType())
+                                    && "related".equalsIgnoreCase(
+                                        ctheader.getContentSubType()));
+                    }
+                };
             this.notifier
                 = new EventPackageNotifier(this.parentProvider, "presence",
                         PRESENCE_DEFAULT_EXPIRE, PIDF_XML, this.timer)
@@ -1868,49 +1954,117 @@ private ContactGroupSipImpl getNonPersistentGroup()
      */
     ContactSipImpl resolveContactID(String contactID)
     {
-        ContactSipImpl res = findContactByID(contactID);
+        Map<String, ContactSipImpl> index = getContactIndex();
+        String key = normalizeContactID(contactID);
+        ContactSipImpl res = index.get(key);
 
+        // contacts stored without a domain
         if (res == null)
         {
-            // we try to resolve the conflict by removing "sip:" from the id
-            if (contactID.startsWith("sip:"))
-                res = findContactByID(contactID.substring(4));
+            int domainBeginIndex = key.indexOf('@');
 
-            if (res == null)
-            {
-                int domainBeginIndex = contactID.indexOf('@');
+            if (domainBeginIndex > -1)
+                res = index.get(key.substring(0, domainBeginIndex));
+        }
+        return res;
+    }
 
-                // we try to remove the part after the '@'
-                if (domainBeginIndex > -1)
-                {
-                    res
-                        = findContactByID(
-                            contactID.substring(0, domainBeginIndex));
-
-                    // try the same thing without sip:
-                    if ((res == null) && contactID.startsWith("sip:"))
-                        res
-                            = findContactByID(
-                                contactID.substring(4, domainBeginIndex));
-                }
+    /**
+     * Returns the contacts of the contact list by their normalized address,
+     * rebuilding the index if the contact list has changed since it was last
+     * built. When several contacts have the same normalized address, the one
+     * which {@link #findContactByID(String)} would find first is indexed.
+     *
+     * @return the contacts by the result of {@link #normalizeContactID(String)}
+     * for their address
+     */
+    private Map<String, ContactSipImpl> getContactIndex()
+    {
+        ContactGroupSipImpl root = this.ssContactList.getRootGroup();
 
-                if (res == null)
-                {
-                    // sip:user_name@ip_address:5060;transport=udp
-                    int domainEndIndex = contactID.indexOf(":", 4);
+        synchronized (contactIndexSyncRoot)
+        {
+            int modificationCount = root.getModificationCount();
 
-                    // if port is absent try removing the params after ;
-                    if (domainEndIndex < 0)
-                        domainEndIndex = contactID.indexOf(";", 4);
+            if (contactIndex == null
+                    || contactIndexModificationCount != modificationCount)
+            {
+                Map<String, ContactSipImpl> index = new HashMap<>();
 
-                    if (domainEndIndex > -1)
-                        res
-                            = findContactByID(
-                                contactID.substring(4, domainEndIndex));
-                }
+                indexContacts(root, index);
+                contactIndex = index;
+                contactIndexModificationCount = modificationCount;
             }
+            return contactIndex;
         }
-        return res;
+    }
+
+    /**
+     * Adds the contacts of a group and of its subgroups to an index, in the
+     * order in which {@link ContactGroupSipImpl#findContactByID(String)}
+     * visits them.
+     *
+     * @param group the group to index
+     * @param index the index to add the contacts to
+     */
+    private static void indexContacts(
+            ContactGroupSipImpl group,
+            Map<String, ContactSipImpl> index)
+    {
+        Iterator<Contact> contacts = group.contacts();
+
+        while (contacts.hasNext())
+        {
+            ContactSipImpl contact = (ContactSipImpl) contacts.next();
+
+            index.putIfAbsent(
+                normalizeContactID(contact.getAddress()),
+                contact);
+        }
+
+        Iterator<ContactGroup> subgroups = group.subgroups();
+
+        while (subgroups.hasNext())
+            indexContacts((ContactGroupSipImpl) subgroups.next(), index);
+    }
+
+    /**
+     * Normalizes a contact identifier or address by removing its scheme,
+     * port, parameters and headers, e.g.
+     * <tt>sip:user_name@ip_address:5060;transport=udp</tt> becomes
+     * <tt>user_name@ip_address</tt>.
+     *
+     * @param contactID the identifier to normalize
+     * @return the normalized identifier
+     */
+    static String normalizeContactID(String contactID)
+    {
+        String id = contactID;
+
+        if (id.startsWith("sip:"))
+            id = id.substring(4);
+        else if (id.startsWith("sips:"))
+            id = id.substring(5);
+
+        int end = id.length();
+
+        for (int i = 0; i < end; i++)
+        {
+            char c = id.charAt(i);
+
+            if (c == ';' || c == '?')
+                end = i;
+        }
+
+        // the port, skipping IPv6 references
+        int hostBeginIndex
+            = Math.max(id.indexOf('@') + 1, id.indexOf(']') + 1);
+        int portBeginIndex = id.indexOf(':', hostBeginIndex);
+
+        if (portBeginIndex > -1 && portBeginIndex < end)
+            end = portBeginIndex;
+
+        return (end == id.length()) ? id : id.substring(0, end);
     }
 
     /**
@@ -2093,182 +2247,191 @@ else if (contact.getPresenceStatus()
       */
      public void setPidfPresenceStatus(String presenceDoc)
      {
-         Document doc = convertDocument(presenceDoc);
-
-         if (doc == null)
-             return;
-
          if (logger.isDebugEnabled())
              logger.debug("parsing:\n" + presenceDoc);
 
-         // <presence>
-         NodeList presList = doc.getElementsByTagNameNS(PIDF_NS_VALUE,
-                 PRESENCE_ELEMENT);
-
-         if (presList.getLength() == 0)
-         {
-             presList = doc.getElementsByTagNameNS(ANY_NS, PRESENCE_ELEMENT);
+         PidfDocument document;
 
-             if (presList.getLength() == 0)
-             {
-                 logger.error("no presence element in this document");
-                 return;
-             }
-         }
-         if (presList.getLength() > 1)
+         try
          {
-             logger.warn("more than one presence element in this document");
+             document = PidfDocument.parse(presenceDoc);
          }
-         Node presNode = presList.item(0);
-         if (presNode.getNodeType() != Node.ELEMENT_NODE)
+         catch (XMLStreamException e)
          {
-             logger.error("the presence node is not an element");
+             logger.error("Can't parse the presence document", e);
              return;
          }
-         Element presence = (Element) presNode;
-
-         // RPID area
-
-         // due to a lot of changes in the past years to this functionality,
-         // the namespace used by servers and clients are often wrong so we just
-         // ignore namespaces here
+         setPidfPresenceStatus(document);
+     }
 
-         PresenceStatus personStatus = null;
-         URI personStatusIcon = null;
-         NodeList personList = presence.getElementsByTagNameNS(ANY_NS,
-                 PERSON_ELEMENT);
+     /**
+      * Sets the presence status of the contacts described by the body of a
+      * NOTIFY request of the presence event package. The body is either a
+      * PIDF document or, for resource list subscriptions, a
+      * <tt>multipart/related</tt> body containing the PIDF documents of the
+      * resources of the list.
+      *
+      * @param rawContent the body of the NOTIFY request
+      * @param contentType the Content-Type header of the NOTIFY request or
+      * <tt>null</tt>
+      */
+     void setPresenceStatus(byte[] rawContent, ContentTypeHeader contentType)
+     {
+         List<byte[]> documents;
 
-         //if (personList.getLength() > 1) {
-         //    logger.error("more than one person in this document");
-         //    return;
-         //}
+         if (contentType != null
+                 && "multipart".equalsIgnoreCase(contentType.getContentType()))
+         {
+             documents
+                 = PidfDocument.getPidfParts(
+                     rawContent,
+                     contentType.getParameter("boundary"));
+         }
+         else
+         {
+             documents = Collections.singletonList(rawContent);
+         }
 
-         if (personList.getLength() > 0)
+         for (byte[] content : documents)
          {
-             Node personNode = personList.item(0);
-             if (personNode.getNodeType() != Node.ELEMENT_NODE)
+             if (logger.isDebugEnabled())
+                 logger.debug("parsing:\n" + new String(content));
+
+             try
              {
-                 logger.error("the person node is not an element");
-                 return;
+                 setPidfPresenceStatus(PidfDocument.parse(content));
              }
-             Element person = (Element) personNode;
-
-             NodeList activityList =
-                 person.getElementsByTagNameNS(ANY_NS, ACTIVITY_ELEMENT);
-             if (activityList.getLength() > 0)
+             catch (XMLStreamException e)
              {
-                 Element activity = null;
-                 // find the first correct activity
-                 for (int i = 0; i < activityList.getLength(); i++)
-                 {
-                     Node activityNode = activityList.item(i);
+                 logger.error("Can't parse the presence document", e);
+             }
+         }
+     }
 
-                     if (activityNode.getNodeType() != Node.ELEMENT_NODE)
-                         continue;
+     /**
+      * Sets the presence status of the contacts described by a PIDF document.
+      *
+      * @param document the parsed PIDF document or <tt>null</tt> if it has no
+      * presence element
+      */
+     private void setPidfPresenceStatus(PidfDocument document)
+     {
+         if (document == null)
+         {
+             logger.error("no presence element in this document");
+             return;
+         }
 
-                     activity = (Element) activityNode;
+         String statusIcon = document.getStatusIcon();
 
-                     NodeList statusList = activity.getChildNodes();
-                     for (int j = 0; j < statusList.getLength(); j++)
-                     {
-                         Node statusNode = statusList.item(j);
-                         if (statusNode.getNodeType() == Node.ELEMENT_NODE)
-                         {
-                             String statusname = statusNode.getLocalName();
-                             if (statusname.equals(AWAY_ELEMENT))
-                             {
-                                 personStatus = sipStatusEnum
-                                     .getStatus(SipStatusEnum.AWAY);
-                                 break;
-                             }
-                             else if (statusname.equals(BUSY_ELEMENT))
-                             {
-                                 personStatus = sipStatusEnum
-                                     .getStatus(SipStatusEnum.BUSY);
-                                 break;
-                             }
-                             else if (statusname.equals(OTP_ELEMENT))
-                             {
-                                 personStatus = sipStatusEnum
-                                     .getStatus(SipStatusEnum.ON_THE_PHONE);
-                                 break;
-                             }
-                         }
-                     }
-                     if (personStatus != null)
-                         break;
-                 }
+         if (statusIcon != null)
+         {
+             try
+             {
+                 ContactSipImpl contact
+                     = resolveContactID(getEntityID(document));
+
+                 if (contact != null)
+                     updateContactIcon(contact, URI.create(statusIcon));
              }
-             NodeList statusIconList = person.getElementsByTagNameNS(ANY_NS,
-                     STATUS_ICON_ELEMENT);
-             if (statusIconList.getLength() > 0)
+             catch (IllegalArgumentException ex)
              {
-                 Element statusIcon;
-                 Node statusIconNode = statusIconList.item(0);
-                 if (statusIconNode.getNodeType() == Node.ELEMENT_NODE)
-                 {
-                     statusIcon = (Element) statusIconNode;
-                     String content = getTextContent(statusIcon);
-                     if (content != null && content.trim().length() != 0)
-                     {
-                         try
-                         {
-                             personStatusIcon = URI.create(content);
-                         }
-                         catch (IllegalArgumentException ex)
-                         {
-                             logger.error("Person's status icon uri: " +
-                                     content + " is invalid");
-                         }
-                     }
-                 }
+                 logger.error("Person's status icon uri: " +
+                         statusIcon + " is invalid");
              }
          }
 
-          if(personStatusIcon != null)
-          {
-              String contactID =
-                  XMLUtils.getAttribute(presNode, ENTITY_ATTRIBUTE);
-
-              if (contactID.startsWith("pres:"))
-              {
-                  contactID = contactID.substring("pres:".length());
-              }
-              Contact contact = resolveContactID(contactID);
-              updateContactIcon((ContactSipImpl) contact, personStatusIcon);
+         // Now really set the new presence status for the listed contacts
+         // the list is ordered so priority order is respected
+         for (Object[] tab
+                 : getPresenceStates(document, sipStatusEnum,
+                         this::resolveContactID))
+         {
+             ContactSipImpl contact = (ContactSipImpl) tab[0];
+             PresenceStatus status = (PresenceStatus) tab[2];
+
+             changePresenceStatusForContact(contact, status);
+         }
+     }
+
+     /**
+      * Returns the identifier of the presentity of a PIDF document.
+      *
+      * @param document the PIDF document
+      * @return the entity of the document without its <tt>pres:</tt> scheme
+      */
+     private static String getEntityID(PidfDocument document)
+     {
+         String contactID = document.getEntity();
+
+         if (contactID == null)
+             return "";
+
+         // also accept entity URIs starting with pres: instead of sip:
+         if (contactID.startsWith("pres:"))
+             contactID = contactID.substring("pres:".length());
+         return contactID;
+     }
+
+     /**
+      * Computes the presence status of the contacts described by a PIDF
+      * document.
+      * In case of conflict (more than one status per contact) the last valid
+      * status in the document is used.
+      *
+      * @param document the PIDF document
+      * @param sipStatusEnum the statuses to choose from
+      * @param resolver resolves the contact identifiers found in the document
+      * to contacts, returning <tt>null</tt> for unknown identifiers
+      * @return a list of <contact, priority, status> ordered by priority
+      * (highest first)
+      */
+     static List<Object[]> getPresenceStates(
+         PidfDocument document,
+         SipStatusEnum sipStatusEnum,
+         Function<String, ?> resolver)
+     {
+         PresenceStatus personStatus = null;
+         String activity = document.getActivity();
+
+         if (AWAY_ELEMENT.equals(activity))
+         {
+             personStatus = sipStatusEnum.getStatus(SipStatusEnum.AWAY);
+         }
+         else if (BUSY_ELEMENT.equals(activity))
+         {
+             personStatus = sipStatusEnum.getStatus(SipStatusEnum.BUSY);
+         }
+         else if (OTP_ELEMENT.equals(activity))
+         {
+             personStatus
+                 = sipStatusEnum.getStatus(SipStatusEnum.ON_THE_PHONE);
          }
 
         // search for a <note> that can define a more precise
         // status this is not recommended by RFC3863 but some im
         // clients use this.
-        NodeList presNoteList = getPidfChilds(presence, NOTE_ELEMENT);
-        if (presNoteList.getLength() >= 1)
+        String state = document.getNote();
+
+        if (state != null)
         {
-            Node noteNode = presNoteList.item(presNoteList.getLength() - 1);
-            if (noteNode.getNodeType() == Node.ELEMENT_NODE)
+            switch (state.toLowerCase())
             {
-                String state = getTextContent((Element)noteNode);
-                if (state != null)
-                {
-                    switch (state.toLowerCase())
-                    {
-                        case "ready":
-                        case "available":
-                            personStatus = sipStatusEnum
-                                .getStatus(SipStatusEnum.ONLINE);
-                            break;
-                        case "ringing":
-                        case "on the phone":
-                        case "on hold":
-                            personStatus = sipStatusEnum
-                                .getStatus(SipStatusEnum.ON_THE_PHONE);
-                            break;
-                        case "unavailable":
-                            personStatus = sipStatusEnum
-                                .getStatus(SipStatusEnum.OFFLINE);
-                            break;
-                    }
-                }
+                case "ready":
+                case "available":
+                    personStatus = sipStatusEnum
+                        .getStatus(SipStatusEnum.ONLINE);
+                    break;
+                case "ringing":
+                case "on the phone":
+                case "on hold":
+                    personStatus = sipStatusEnum
+                        .getStatus(SipStatusEnum.ON_THE_PHONE);
+                    break;
+                case "unavailable":
+                    personStatus = sipStatusEnum
+                        .getStatus(SipStatusEnum.OFFLINE);
+                    break;
             }
         }
 
@@ -2278,35 +2441,21 @@ else if (statusname.equals(OTP_ELEMENT))
          List<Object[]> newPresenceStates = new Vector<Object[]>(3, 2);
 
          // <tuple>
-         NodeList tupleList = getPidfChilds(presence, TUPLE_ELEMENT);
-         for (int i = 0; i < tupleList.getLength(); i++)
+         for (PidfDocument.Tuple tuple : document.getTuples())
          {
-             Node tupleNode = tupleList.item(i);
-
-             if (tupleNode.getNodeType() != Node.ELEMENT_NODE)
-                 continue;
-
-             Element tuple = (Element) tupleNode;
-
              // <contact>
-             NodeList contactList = getPidfChilds(tuple, CONTACT_ELEMENT);
+             List<String[]> contactList = tuple.getContacts();
 
              // we use a vector here and not an unique contact to handle an
              // error case where many contacts are associated with a status
              // Vector<ContactSipImpl>
              List<Object[]> sipcontact = new Vector<Object[]>(1, 3);
              String contactID = null;
-             if (contactList.getLength() == 0)
+             if (contactList.isEmpty())
              {
                  // use the entity attribute of the presence node
-                 contactID = XMLUtils.getAttribute(
-                         presNode, ENTITY_ATTRIBUTE);
-                 // also accept entity URIs starting with pres: instead of sip:
-                 if (contactID.startsWith("pres:"))
-                 {
-                     contactID = contactID.substring("pres:".length());
-                 }
-                 Contact tmpContact = resolveContactID(contactID);
+                 contactID = getEntityID(document);
+                 Object tmpContact = resolver.apply(contactID);
 
                  if (tmpContact != null)
                  {
@@ -2316,23 +2465,16 @@ else if (statusname.equals(OTP_ELEMENT))
              else
              {
                  // this is normally not permitted by RFC3863
-                 for (int j = 0; j < contactList.getLength(); j++)
+                 for (String[] contact : contactList)
                  {
-                     Node contactNode = contactList.item(j);
-
-                     if (contactNode.getNodeType() != Node.ELEMENT_NODE)
-                         continue;
-
-                     Element contact = (Element) contactNode;
-
-                     contactID = getTextContent(contact);
+                     contactID = contact[0];
                      // also accept entity URIs starting with pres: instead
                      // of sip:
                      if (contactID.startsWith("pres:"))
                      {
                          contactID = contactID.substring("pres:".length());
                      }
-                     Contact tmpContact = resolveContactID(contactID);
+                     Object tmpContact = resolver.apply(contactID);
                      if (tmpContact == null)
                          continue;
 
@@ -2341,7 +2483,7 @@ else if (statusname.equals(OTP_ELEMENT))
                      Object tab[] = new Object[2];
 
                      // search if the contact has a priority
-                     String prioStr = contact.getAttribute(PRIORITY_ATTRIBUTE);
+                     String prioStr = contact[1];
                      Float prio = null;
                      try
                      {
@@ -2412,90 +2554,30 @@ else if (statusname.equals(OTP_ELEMENT))
                  continue;
              }
 
-             // <status>
-             NodeList statusList = getPidfChilds(tuple, STATUS_ELEMENT);
-
-             // in case of many status, just consider the last one
+             // <status><basic>
+             // in case of many status or basic, just consider the last one
              // this is normally not permitted by RFC3863
-             int index = statusList.getLength() - 1;
-             Node statusNode = null;
-             do
-             {
-                 Node temp = statusList.item(index);
-                 if (temp.getNodeType() == Node.ELEMENT_NODE)
-                 {
-                     statusNode = temp;
-                     break;
-                 }
-                 index--;
-             }
-             while (index >= 0);
-
-             Element basic = null;
+             String basic = tuple.getBasic();
 
-             if (statusNode == null)
+             if (basic == null)
              {
                  if (logger.isDebugEnabled())
-                     logger.debug("no valid status in this tuple");
-             }
-             else
-             {
-                 Element status = (Element) statusNode;
-
-                 // <basic>
-                 NodeList basicList = getPidfChilds(status, BASIC_ELEMENT);
-
-                 // in case of many basic, just consider the last one
-                 // this is normally not permitted by RFC3863
-                 index = basicList.getLength() - 1;
-                 Node basicNode = null;
-                 do
-                 {
-                     Node temp = basicList.item(index);
-                     if (temp.getNodeType() == Node.ELEMENT_NODE)
-                     {
-                         basicNode = temp;
-                         break;
-                     }
-                     index--;
-                 }
-                 while (index >= 0);
-
-                 if (basicNode == null)
-                 {
-                     if (logger.isDebugEnabled())
-                         logger.debug("no valid <basic> in this status");
-                 }
-                 else
-                 {
-                     basic = (Element) basicNode;
-                 }
+                     logger.debug("no valid <basic> in this tuple");
              }
 
              // search for a <note> that can define a more precise
              // status this is not recommended by RFC3863 but some im
              // clients use this.
-             NodeList noteList = getPidfChilds(tuple, NOTE_ELEMENT);
-
              boolean changed = false;
-             for (int k = 0; k < noteList.getLength() && !changed; k++)
+             for (String note : tuple.getNotes())
              {
-                 Node noteNode = noteList.item(k);
-
-                 if (noteNode.getNodeType() != Node.ELEMENT_NODE)
-                     continue;
-
-                 Element note = (Element) noteNode;
-
-                 String state = getTextContent(note);
-
                  Iterator<PresenceStatus> states
                      = sipStatusEnum.getSupportedStatusSet();
                  while (states.hasNext())
                  {
                      PresenceStatus current = states.next();
 
-                     if (current.getStatusName().equalsIgnoreCase(state))
+                     if (current.getStatusName().equalsIgnoreCase(note))
                      {
                          changed = true;
                          newPresenceStates = setStatusForContacts(current,
@@ -2504,11 +2586,13 @@ else if (statusname.equals(OTP_ELEMENT))
                          break;
                      }
                  }
+                 if (changed)
+                     break;
              }
 
              if (changed == false && basic != null)
              {
-                 if (getTextContent(basic).equalsIgnoreCase(ONLINE_STATUS))
+                 if (basic.equalsIgnoreCase(ONLINE_STATUS))
                  {
                      // if its online(open) we use the person status
                      // if any, otherwise just mark as online
@@ -2527,8 +2611,7 @@ else if (statusname.equals(OTP_ELEMENT))
                                  newPresenceStates);
                      }
                  }
-                 else if (getTextContent(basic).equalsIgnoreCase(
-                         OFFLINE_STATUS))
+                 else if (basic.equalsIgnoreCase(OFFLINE_STATUS))
                  {
                      // if its offline we ignore person status
                      newPresenceStates = setStatusForContacts(
@@ -2548,15 +2631,7 @@ else if (getTextContent(basic).equalsIgnoreCase(
              }
          } // for each <tuple>
 
-         // Now really set the new presence status for the listed contacts
-         // newPresenceStates is ordered so priority order is respected
-         for (Object[] tab : newPresenceStates)
-         {
-             ContactSipImpl contact = (ContactSipImpl) tab[0];
-             PresenceStatus status = (PresenceStatus) tab[2];
-
-             changePresenceStatusForContact(contact, status);
-         }
+         return newPresenceStates;
      }
 
     /**
@@ -2770,31 +2845,6 @@ private String getTextContent(Element node)
          return res;
      }
 
-     /**
-      * Gets the list of the descendant of an element in the pidf namespace.
-      * If the list is empty, we try to get this list in any namespace.
-      * This method is useful for being able to read pidf document without any
-      * namespace or with a wrong namespace.
-      *
-      * @param element the base element concerned.
-      * @param childName the name of the descendants to match on.
-      *
-      * @return The list of all the descendant node.
-      */
-     private NodeList getPidfChilds(Element element, String childName)
-     {
-         NodeList res;
-
-         res = element.getElementsByTagNameNS(PIDF_NS_VALUE, childName);
-
-         if (res.getLength() == 0)
-         {
-             res = element.getElementsByTagNameNS(ANY_NS, childName);
-         }
-
-         return res;
-     }
-
      /**
       * Associate the provided presence state to the contacts considering the
       * current presence states and priorities.
@@ -2808,7 +2858,7 @@ private NodeList getPidfChilds(Element element, String childName)
       * @return a Vector containing a list of <contact, priority, status>
       *  ordered by priority (highest first). Null if a parameter is null.
       */
-     private List<Object[]> setStatusForContacts(
+     static List<Object[]> setStatusForContacts(
          PresenceStatus presenceState,
          Iterable<Object[]> contacts,
          List<Object[]> curStatus)
@@ -2820,7 +2870,7 @@ private List<Object[]> setStatusForContacts(
          // for each contact in the list
          for (Object[] tab : contacts)
          {
-             Contact contact = (Contact) tab[0];
+             Object contact = tab[0];
              float priority = ((Float) tab[1]).floatValue();
 
              // for each existing contact
@@ -2829,7 +2879,7 @@ private List<Object[]> setStatusForContacts(
              for (int i = 0; i < curStatus.size(); i++)
              {
                  Object tab2[] = curStatus.get(i);
-                 Contact curContact = (Contact) tab2[0];
+                 Object curContact = tab2[0];
                  float curPriority = ((Float) tab2[1]).floatValue();
 
                  // save the place where to add this contact in the list
@@ -3009,7 +3059,7 @@ private void cancelTimer()
      /**
       * A <tt>TimerTask</tt> handling refresh of PUBLISH requests.
       */
-     private class RePublishTask extends TimerTask
+     private class RePublishTask extends TimerScheduler.Task
      {
          /**
           * Send a new PUBLISH request to refresh the publication
@@ -3064,7 +3114,8 @@ public void run()
      /**
       * A task handling polling of offline contacts.
       */
-     private class PollOfflineContactsTask extends TimerTask
+     private class PollOfflineContactsTask
+        extends TimerScheduler.Task
      {
          /**
           * Check if we can't subscribe to this contact now
@@ -3450,6 +3501,25 @@ protected byte[] createNotifyContent(String subscriptionState,
         {
             return getPidfPresenceStatus(getLocalContactForDst(contact));
         }
+
+        /**
+         * Shares the content among the subscriptions which see us under the
+         * same address since the PIDF document depends only on that address
+         * and on our own status.
+         *
+         * @param subscriptionState the state that we'd like to deliver in the
+         * newly created <tt>Notify</tt> request.
+         * @param reason the reason string that  we'd like to deliver in the
+         * newly created <tt>Notify</tt> request.
+         * @return our address as seen by the contact of this subscription
+         */
+        @Override
+        protected Object getNotifyContentKey(String subscriptionState,
+                        String reason)
+        {
+            return parentProvider.getOurSipAddress(contact.getSipAddress())
+                .getURI().toString();
+        }
     }
 
     /**
@@ -3498,7 +3568,12 @@ protected void processActiveRequest(
             byte[] rawContent)
         {
             if (rawContent != null)
-                setPidfPresenceStatus(new String(rawContent));
+            {
+                setPresenceStatus(
+                    rawContent,
+                    (ContentTypeHeader) requestEvent.getRequest()
+                            .getHeader(ContentTypeHeader.NAME));
+            }
 
             SubscriptionStateHeader stateHeader =
                 (SubscriptionStateHeader)requestEvent.getRequest()
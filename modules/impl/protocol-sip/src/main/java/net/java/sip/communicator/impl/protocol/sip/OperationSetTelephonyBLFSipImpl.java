@@ -22,12 +22,11 @@
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.event.*;
 import org.apache.commons.lang3.StringUtils;
-import org.jitsi.util.xml.*;
-import org.w3c.dom.*;
 
 import javax.sip.*;
 import javax.sip.address.*;
 import javax.sip.message.*;
+import javax.xml.stream.*;
 import java.net.*;
 import java.text.*;
 import java.util.*;
@@ -36,6 +35,12 @@
  * Provides operations necessary to monitor line activity and pickup calls
  * if needed. BLF stands for Busy Lamp Field.
  * Implementation using rfc4235 and rfc5359#section-2.16.
+ * <p>
+ * The dialog-info documents of a line are applied in version order to its
+ * {@link DialogInfoState} and an event is fired only when the status of the
+ * line changes. The subscription of a line which missed a document is
+ * refreshed at once to get its full state. The subscriptions of the lines of
+ * all accounts are refreshed by a single scheduler.
  *
  * @author Damian Minkov
  */
@@ -123,20 +128,17 @@
     private final EventPackageSubscriber subscriber;
 
     /**
-     * The timer which will handle all the scheduled tasks
+     * The timer which refreshes the subscriptions of the monitored lines of
+     * all accounts. The refresh tasks of a line are canceled along with its
+     * subscription.
      */
-    private final TimerScheduler timer = new TimerScheduler();
+    private static final TimerScheduler timer = new TimerScheduler();
 
     /**
-     * Namespace wildcard.
-     */
-    private static final String ANY_NS = "*";
-
-    /**
-     * The property to access details for the dataObject Line.
+     * The property to access the state of the dataObject Line.
      */
     private static final String DATA_PROP
-        = LineDetails.class.getCanonicalName();
+        = DialogInfoState.class.getCanonicalName();
 
     /**
      * Constructs the operations set and initializes the monitored lines.
@@ -265,10 +267,12 @@ public void removeStatusListener(BLFStatusListener listener)
     public void pickup(Line line)
         throws OperationFailedException
     {
-        LineDetails details = (LineDetails)line.getData(DATA_PROP);
-        if(details == null)
+        DialogInfoState state = (DialogInfoState)line.getData(DATA_PROP);
+        if(state == null)
             return;
 
+        DialogInfoDocument.Dialog details = state.getPickupDialog();
+
         // replaces
         Address targetAddress = null;
         try
@@ -314,15 +318,15 @@ public void pickup(Line line)
             replacesHeader = (Replaces)
                 ((HeaderFactoryImpl) provider.getHeaderFactory())
                     .createReplacesHeader(
-                        details.callID,
-                        details.remoteTag,
-                        details.localTag);
+                        details.getCallID(),
+                        details.getRemoteTag(),
+                        details.getLocalTag());
         }
         catch (ParseException ex)
         {
             ProtocolProviderServiceSipImpl.throwOperationFailedException(
                 "Failed to create Replaces header for target call-id "
-                    + details.callID,
+                    + details.getCallID(),
                 OperationFailedException.ILLEGAL_ARGUMENT, ex, logger);
         }
         try
@@ -343,11 +347,12 @@ public void pickup(Line line)
         telOpSet.createOutgoingCall(targetAddress, null, null);
     }
 
-    private boolean asteriskMode(LineDetails details)
+    private boolean asteriskMode(DialogInfoDocument.Dialog details)
     {
-        return StringUtils.isEmpty(details.callID)
-            || StringUtils.isEmpty(details.localTag)
-            || StringUtils.isEmpty(details.remoteTag);
+        return details == null
+            || StringUtils.isEmpty(details.getCallID())
+            || StringUtils.isEmpty(details.getLocalTag())
+            || StringUtils.isEmpty(details.getRemoteTag());
     }
 
     /**
@@ -387,7 +392,8 @@ public void registrationStateChanged(RegistrationStateChangeEvent evt)
         }
         else if(evt.getNewState().equals(RegistrationState.UNREGISTERING))
         {
-            timer.cancel();
+            // the timer is shared, cancel only the refreshes of our lines
+            removeSubscriptions();
         }
         else if(evt.getNewState().equals(
                         RegistrationState.CONNECTION_FAILED)
@@ -396,31 +402,68 @@ else if(evt.getNewState().equals(
                 || evt.getNewState().equals(
                         RegistrationState.UNREGISTERED))
         {
-            if (subscriber != null)
+            removeSubscriptions();
+            for(Line line : this.lines)
+                updateStatus(line, BLFStatusEvent.STATUS_OFFLINE);
+        }
+    }
+
+    /**
+     * Removes the subscriptions of the monitored lines, which cancels their
+     * refreshes.
+     */
+    private void removeSubscriptions()
+    {
+        for(Line line : this.lines)
+        {
+            try
+            {
+                subscriber.removeSubscription(
+                    provider.parseAddressString(line.getAddress()));
+            }
+            catch(ParseException ex)
             {
-                for(Line line : this.lines)
+                if(logger.isDebugEnabled())
                 {
-                    try
-                    {
-                        subscriber.removeSubscription(
-                            provider.parseAddressString(line.getAddress()));
-                    }
-                    catch(ParseException ex)
-                    {
-                        if(logger.isDebugEnabled())
-                        {
-                            logger.debug("Failed to remove subscription for "
-                                + line.getAddress());
-                        }
-                    }
-
-                    fireEvent(line, BLFStatusEvent.STATUS_OFFLINE);
+                    logger.debug("Failed to remove subscription for "
+                        + line.getAddress());
                 }
             }
-            timer.cancel();
         }
     }
 
+    /**
+     * Gets the state of a line, creating it if necessary.
+     *
+     * @param line the line
+     * @return the state of <tt>line</tt>
+     */
+    private DialogInfoState getState(Line line)
+    {
+        synchronized (line)
+        {
+            DialogInfoState state = (DialogInfoState)line.getData(DATA_PROP);
+            if(state == null)
+            {
+                state = new DialogInfoState();
+                line.setData(DATA_PROP, state);
+            }
+            return state;
+        }
+    }
+
+    /**
+     * Sets the status of a line and fires an event if it has changed.
+     *
+     * @param line the line
+     * @param eventType the new status of the line
+     */
+    private void updateStatus(Line line, int eventType)
+    {
+        if(getState(line).setStatus(eventType))
+            fireEvent(line, eventType);
+    }
+
     /**
      * Fires event.
      * @param line
@@ -428,14 +471,6 @@ else if(evt.getNewState().equals(
      */
     private void fireEvent(Line line, int eventType)
     {
-        LineDetails details = (LineDetails)line.getData(DATA_PROP);
-        if(details == null)
-        {
-            details = new LineDetails();
-            line.setData(DATA_PROP, details);
-        }
-        details.lastStatusEvent = eventType;
-
         BLFStatusEvent evt
             = new BLFStatusEvent(line, eventType);
 
@@ -457,48 +492,6 @@ private void fireEvent(Line line, int eventType)
             listener.blfStatusChanged(evt);
     }
 
-    /**
-     * Convert a xml document
-     *
-     * @param document the document as a String
-     *
-     * @return a <tt>Document</tt> representing the document or null if an
-     * error occur
-     */
-    Document convertDocument(byte[] document)
-    {
-        try
-        {
-            return XMLUtils.createDocument(new String(document, "UTF-8"));
-        }
-        catch (Exception e)
-        {
-            logger.error("Can't convert the string into a xml document", e);
-            return null;
-        }
-    }
-
-    /**
-     * Secured call to XMLUtils.getText (no null returned but an empty string)
-     *
-     * @param node the node with which call <tt>XMLUtils.getText()</tt>
-     *
-     * @return the string contained in the node or an empty string if there is
-     * no text information in the node.
-     */
-    private String getTextContent(Element node)
-    {
-        String res = XMLUtils.getText(node);
-
-        if (res == null)
-        {
-            logger.warn("no text for element '" + node.getNodeName() + "'");
-            return "";
-        }
-
-        return res;
-    }
-
     /**
      * Represents a subscription to the dialog+info event package of a specific
      * <code>Address</code>.
@@ -530,6 +523,9 @@ public DialogInfoSubscriberSubscription(Address address, Line line)
             super(address);
 
             this.line = line;
+
+            // the versions of the documents start over with each subscription
+            getState(line).reset();
         }
 
         /*
@@ -545,132 +541,43 @@ protected void processActiveRequest(
             if(rawContent == null)
                 return;
 
-            Document doc = convertDocument(rawContent);
-
-            if (doc == null)
-                return;
-
             if (logger.isTraceEnabled())
                 logger.trace("parsing:\n" + new String(rawContent));
 
-            LineDetails details = (LineDetails)line.getData(DATA_PROP);
-            if(details == null)
+            DialogInfoDocument doc;
+            try
             {
-                details = new LineDetails();
-                line.setData(DATA_PROP, details);
+                doc = DialogInfoDocument.parse(rawContent);
             }
-
-            // <dialog>
-            NodeList dialogList = doc.getElementsByTagNameNS(ANY_NS,
-                "dialog");
-
-            if(dialogList.getLength() == 0)
+            catch (XMLStreamException ex)
             {
-                // no dialogs - it is free
-                updateLineState(details, "Terminated");
+                logger.error("Can't parse the dialog-info document", ex);
                 return;
             }
 
-            for (int i = 0; i < dialogList.getLength(); i++)
-            {
-                Node dialogNode = dialogList.item(i);
-                Element dialogElem = (Element)dialogNode;
-
-                details.id = dialogElem.getAttribute("id");
-                details.direction = dialogElem.getAttribute("direction");
-                details.callID = dialogElem.getAttribute("call-id");
-                details.localTag = dialogElem.getAttribute("local-tag");
-                details.remoteTag = dialogElem.getAttribute("remote-tag");
-
-                NodeList states = ((Element)dialogNode)
-                    .getElementsByTagNameNS(ANY_NS, "state");
-
-                if(states.getLength() == 0)
-                    continue;
+            if (doc == null)
+                return;
 
-                updateLineState(
-                    details,
-                    getTextContent((Element)states.item(0)));
-            }
-        }
+            DialogInfoState state = getState(line);
 
-        /**
-         * Dispatch the state from the xml and set the corresponding state
-         * of the line.
-         *
-         * @param state is one of: Trying, Proceeding, Early,
-         * Confirmed, Terminated
-         */
-        private void updateLineState(LineDetails details, String state)
-        {
-            int newEvent = BLFStatusEvent.STATUS_OFFLINE;
+            if(state.apply(doc))
+                fireEvent(line, state.getStatus());
 
-            switch(details.lastStatusEvent)
+            // a NOTIFY was missed, the one answering a refresh carries the
+            // full state
+            if(state.takeRefreshRequest())
             {
-                case BLFStatusEvent.STATUS_OFFLINE:
-                    if(state.equalsIgnoreCase("Trying")
-                        || state.equalsIgnoreCase("Proceeding")
-                        || state.equalsIgnoreCase("Early"))
-                    {
-                        newEvent = BLFStatusEvent.STATUS_RINGING;
-                    }
-                    else if(state.equalsIgnoreCase("Confirmed"))
-                    {
-                        newEvent = BLFStatusEvent.STATUS_BUSY;
-                    }
-                    else if(state.equalsIgnoreCase("Terminated"))
-                    {
-                        newEvent = BLFStatusEvent.STATUS_FREE;
-                    }
-                    break;
-                case BLFStatusEvent.STATUS_FREE:
-                    if(state.equalsIgnoreCase("Trying")
-                        || state.equalsIgnoreCase("Proceeding")
-                        || state.equalsIgnoreCase("Early"))
-                    {
-                        newEvent = BLFStatusEvent.STATUS_RINGING;
-                    }
-                    else if(state.equalsIgnoreCase("Confirmed"))
-                    {
-                        newEvent = BLFStatusEvent.STATUS_BUSY;
-                    }
-                    else if(state.equalsIgnoreCase("Terminated"))
-                    {
-                        // status is free so return
-                        return;
-                    }
-                    break;
-                case BLFStatusEvent.STATUS_BUSY:
-                    if(state.equalsIgnoreCase("Terminated"))
-                    {
-                        newEvent = BLFStatusEvent.STATUS_FREE;
-                    }
-                    else
-                    {
-                        // status is busy so return
-                        return;
-                    }
-                    break;
-                case BLFStatusEvent.STATUS_RINGING:
-                    if(state.equalsIgnoreCase("Confirmed"))
-                    {
-                        newEvent = BLFStatusEvent.STATUS_BUSY;
-                    }
-                    else if(state.equalsIgnoreCase("Terminated"))
-                    {
-                        newEvent = BLFStatusEvent.STATUS_FREE;
-                    }
-                    else
-                    {
-                        // status is ringing so return
-                        return;
-                    }
-                    break;
-                default:
-                    return;
+                try
+                {
+                    subscriber.subscribe(this);
+                }
+                catch (OperationFailedException ex)
+                {
+                    logger.error(
+                        "Failed to refresh the subscription of "
+                            + line.getAddress(), ex);
+                }
             }
-
-            fireEvent(line, newEvent);
         }
 
         /*
@@ -683,7 +590,7 @@ protected void processFailureResponse(
             ResponseEvent responseEvent,
             int statusCode)
         {
-            fireEvent(line, BLFStatusEvent.STATUS_OFFLINE);
+            updateStatus(line, BLFStatusEvent.STATUS_OFFLINE);
         }
 
         /*
@@ -700,7 +607,10 @@ protected void processSuccessResponse(
             {
                 case Response.OK:
                 case Response.ACCEPTED:
-                    fireEvent(line, BLFStatusEvent.STATUS_FREE);
+                    // the NOTIFYs report the actual state, a refresh must
+                    // not reset it
+                    if(getState(line).setOnline())
+                        fireEvent(line, BLFStatusEvent.STATUS_FREE);
                     break;
             }
         }
@@ -718,46 +628,7 @@ protected void processSuccessResponse(
         protected void processTerminatedRequest(
             RequestEvent requestEvent, String reasonCode)
         {
-            fireEvent(line, BLFStatusEvent.STATUS_OFFLINE);
+            updateStatus(line, BLFStatusEvent.STATUS_OFFLINE);
         }
     }
-
-    /**
-     * Details for a line.
-     */
-    private class LineDetails
-    {
-
-        /**
-         * The current status of the line, the last event fired for it.
-         */
-        int lastStatusEvent = BLFStatusEvent.STATUS_OFFLINE;
-
-        /**
-         * id of the dialog. Mandatory.
-         */
-        String id = null;
-
-        /**
-         * either initiator or recipient, and indicates whether the observed
-         * user was the initiator of the dialog, or the recipient of the INVITE
-         * that created it.
-         */
-        String direction;
-
-        /**
-         * call-id of the dialog if any, used for remote pickup.
-         */
-        String callID = null;
-
-        /**
-         * local-tag of the dialog if any, used for remote pickup.
-         */
-        String localTag = null;
-
-        /**
-         * remote-tag of the dialog if any, used for remote pickup.
-         */
-        String remoteTag = null;
-    }
 }
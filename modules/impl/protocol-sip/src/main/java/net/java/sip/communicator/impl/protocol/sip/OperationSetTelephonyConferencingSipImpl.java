@@ -508,6 +508,13 @@ protected String getLocalDisplayName()
     private class ConferenceNotifierSubscription
         extends EventPackageNotifier.Subscription
     {
+        /**
+         * Whether a NOTIFY with the full conference state has been sent for
+         * this subscription. Until then, partial notifications cannot be
+         * applied by the subscriber.
+         */
+        private boolean fullStateSent;
+
         /**
          * Initializes a new <tt>ConferenceNotifierSubscription</tt> instance
          * with a specific subscription <tt>Address</tt>/Request URI and a
@@ -528,6 +535,21 @@ public ConferenceNotifierSubscription(
             super(fromAddress, eventId);
         }
 
+        /**
+         * The content of the NOTIFY requests of this subscription records the
+         * conference-info sent to the <tt>CallPeer</tt>, which the following
+         * partial notifications are diffed against, so none of them may be
+         * skipped. Creating it synchronously also keeps the computation of
+         * the conference state on the thread of the notification round.
+         *
+         * @return <tt>false</tt>
+         */
+        @Override
+        protected boolean isCoalescable()
+        {
+            return false;
+        }
+
         /**
          * Creates the content of the NOTIFY request to be sent to the target
          * represented by this <tt>Subscription</tt> and having a specific
@@ -560,52 +582,58 @@ protected byte[] createNotifyContent(
                 return null;
             }
 
-            ConferenceInfoDocument currentConfInfo
-                    = getCurrentConferenceInfo(callPeer);
-            ConferenceInfoDocument lastSentConfInfo
+            ConferenceInfoSnapshot currentConfInfo
+                    = getCurrentConferenceInfoSnapshot(callPeer);
+
+            if (currentConfInfo == null)
+                return null;
+
+            ConferenceInfoSnapshot lastSentConfInfo
                     = callPeer.getLastConferenceInfoSent();
 
-            //Uncomment this when the rest of the code can handle a return value
-            //of null in case no NOTIFY needs to be sent.
             /*
+             * The first NOTIFY of a subscription carries the full state, the
+             * following ones only what changed since the last sent document.
+             * A NOTIFY is sent even if nothing changed (e.g. on a refresh),
+             * in which case the full state is sent again.
+             */
             ConferenceInfoDocument diff
-                    = lastSentConfInfo == null
-                      ? currentConfInfo
-                      :getConferenceInfoDiff(lastSentConfInfo, currentConfInfo);
-            */
-            ConferenceInfoDocument diff = currentConfInfo;
+                    = fullStateSent
+                        ? getConferenceInfoUpdate(callPeer, currentConfInfo)
+                        : null;
 
             if (diff == null)
-                return null;
-            else
             {
-                int newVersion
-                        = lastSentConfInfo == null
-                        ? 1
-                        : lastSentConfInfo.getVersion() + 1;
-                diff.setVersion(newVersion);
-                currentConfInfo.setVersion(newVersion);
-
-                // We save currentConfInfo, because it is of state "full", while
-                // diff could be a partial
-                callPeer.setLastConferenceInfoSent(currentConfInfo);
-                callPeer.setLastConferenceInfoSentTimestamp(
-                        System.currentTimeMillis());
-
-                String xml = diff.toXml();
-                byte[] notifyContent;
-                try
-                {
-                    notifyContent = xml.getBytes("UTF-8");
-                }
-                catch (UnsupportedEncodingException uee)
-                {
-                    logger.warn("Failed to gets bytes from String for the "
-                            + "UTF-8 charset", uee);
-                    notifyContent = xml.getBytes();
-                }
-                return notifyContent;
+                diff = currentConfInfo.toDocument();
+                if (diff == null)
+                    return null;
+                diff.setVersion(
+                        (lastSentConfInfo == null)
+                            ? 1
+                            : lastSentConfInfo.getVersion() + 1);
+            }
+
+            int newVersion = diff.getVersion();
+
+            fullStateSent = true;
+            callPeer.setLastConferenceInfoSent(
+                    currentConfInfo.withVersion(newVersion));
+            callPeer.setLastConferenceInfoSentTimestamp(
+                    System.currentTimeMillis());
+
+            String xml = diff.toXml();
+            byte[] notifyContent;
+            try
+            {
+                notifyContent = xml.getBytes("UTF-8");
             }
+            catch (UnsupportedEncodingException uee)
+            {
+                logger.warn("Failed to gets bytes from String for the "
+                        + "UTF-8 charset", uee);
+                notifyContent = xml.getBytes();
+            }
+            return notifyContent;
         }
 
         /**
@@ -936,15 +964,12 @@ public void run()
                 return;
             }
 
-            ConferenceInfoDocument currentConfInfo
-                    = getCurrentConferenceInfo(callPeer);
-            ConferenceInfoDocument lastSentConfInfo
-                    = callPeer.getLastConferenceInfoSent();
-
+            ConferenceInfoSnapshot currentConfInfo
+                    = getCurrentConferenceInfoSnapshot(callPeer);
             ConferenceInfoDocument diff
-                    = lastSentConfInfo == null
-                      ? currentConfInfo
-                      :getConferenceInfoDiff(lastSentConfInfo, currentConfInfo);
+                    = (currentConfInfo == null)
+                        ? null
+                        : getConferenceInfoUpdate(callPeer, currentConfInfo);
 
             if (diff == null)
             {
@@ -952,11 +977,7 @@ public void run()
                 return; //no change -- no need to send NOTIFY
             }
 
-            int newVersion
-                    = lastSentConfInfo == null
-                    ? 1
-                    : lastSentConfInfo.getVersion() + 1;
-            diff.setVersion(newVersion);
+            int newVersion = diff.getVersion();
 
             String xml = diff.toXml();
             byte[] notifyContent;
@@ -995,10 +1016,10 @@ public void run()
                     }
                     dialog.sendRequest(transac);
 
-                    // We save currentConfInfo, because it is of state "full",
-                    // while diff could be a partial
-                    currentConfInfo.setVersion(newVersion);
-                    callPeer.setLastConferenceInfoSent(currentConfInfo);
+                    // We save currentConfInfo, because it describes the full
+                    // state, while diff could be a partial
+                    callPeer.setLastConferenceInfoSent(
+                            currentConfInfo.withVersion(newVersion));
                     callPeer.setLastConferenceInfoSentTimestamp(
                             System.currentTimeMillis());
                 }
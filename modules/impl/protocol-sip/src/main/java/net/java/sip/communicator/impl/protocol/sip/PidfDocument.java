@@ -0,0 +1,784 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.function.*;
+
+import javax.xml.stream.*;
+
+/**
+ * The parts of a PIDF document (RFC 3863) which
+ * <tt>OperationSetPresenceSipImpl</tt> uses to compute the presence status of
+ * its contacts: the entity, the RPID activity and status icon of the first
+ * person, the notes and the contacts, basic status and notes of each tuple.
+ * <p>
+ * Documents are read with a single pass of a StAX reader, the rest of the
+ * document is skipped. The selection rules are the ones of the former DOM
+ * based parsing: elements in the PIDF namespace are preferred and elements of
+ * the same name in any other namespace are used only if there are none in the
+ * PIDF namespace, the RPID elements are matched in any namespace and the text
+ * of an element is its first non blank text child.
+ * <p>
+ * Bodies of RLMI notifications (RFC 4662) carrying the PIDF documents of
+ * several resources in a <tt>multipart/related</tt> body are split with
+ * {@link #getPidfParts(byte[], String)}.
+ */
+final class PidfDocument
+{
+    /**
+     * The PIDF namespace.
+     */
+    private static final String PIDF_NS = "urn:ietf:params:xml:ns:pidf";
+
+    /**
+     * The content type of PIDF documents.
+     */
+    private static final String PIDF_CONTENT_TYPE = "application/pidf+xml";
+
+    /**
+     * The shared factory of the stream readers. It is configured once, after
+     * which creating readers is thread safe.
+     */
+    private static final XMLInputFactory inputFactory;
+
+    static
+    {
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(
+            XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * The entity attribute of the presence element or <tt>null</tt>.
+     */
+    private String entity;
+
+    /**
+     * The local name of the first known RPID activity of the person.
+     */
+    private String activity;
+
+    /**
+     * The text of the status icon of the person.
+     */
+    private String statusIcon;
+
+    /**
+     * The notes found anywhere in the presence element.
+     */
+    private final Matches<String> notes = new Matches<>();
+
+    /**
+     * The tuples of the presence element.
+     */
+    private final Matches<Tuple> tuples = new Matches<>();
+
+    /**
+     * Creates an empty document, filled by {@link #parse(XMLStreamReader)}.
+     */
+    private PidfDocument()
+    {
+    }
+
+    /**
+     * Parses a PIDF document.
+     *
+     * @param content the bytes of the document, decoded according to its XML
+     * declaration
+     * @return the parsed document or <tt>null</tt> if it has no presence
+     * element
+     * @throws XMLStreamException if the document is not well formed
+     */
+    static PidfDocument parse(byte[] content)
+        throws XMLStreamException
+    {
+        return parse(
+            inputFactory.createXMLStreamReader(
+                new ByteArrayInputStream(content)));
+    }
+
+    /**
+     * Parses a PIDF document.
+     *
+     * @param content the document
+     * @return the parsed document or <tt>null</tt> if it has no presence
+     * element
+     * @throws XMLStreamException if the document is not well formed
+     */
+    static PidfDocument parse(String content)
+        throws XMLStreamException
+    {
+        return parse(
+            inputFactory.createXMLStreamReader(new StringReader(content)));
+    }
+
+    /**
+     * Reads the presence element of a document and closes the reader.
+     *
+     * @param reader the reader positioned at the start of the document
+     * @return the parsed document or <tt>null</tt> if it has no presence
+     * element
+     * @throws XMLStreamException if the document is not well formed
+     */
+    private static PidfDocument parse(XMLStreamReader reader)
+        throws XMLStreamException
+    {
+        try
+        {
+            while (reader.hasNext())
+            {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT
+                        && "presence".equals(reader.getLocalName()))
+                {
+                    PidfDocument document = new PidfDocument();
+
+                    document.readPresence(reader);
+                    return document;
+                }
+            }
+            return null;
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads the content of the presence element the reader is positioned on.
+     *
+     * @param reader the reader positioned on the start of the presence element
+     * @throws XMLStreamException if the document is not well formed
+     */
+    private void readPresence(XMLStreamReader reader)
+        throws XMLStreamException
+    {
+        entity = reader.getAttributeValue(null, "entity");
+
+        // the open elements, the presence element being the first one
+        Deque<Element> open = new ArrayDeque<>();
+        Element person = null;
+        Element activities = null;
+        boolean statusIconFound = false;
+        Tuple tuple = null;
+        Status status = null;
+
+        open.push(new Element(true));
+        while (!open.isEmpty())
+        {
+            switch (reader.next())
+            {
+            case XMLStreamConstants.START_ELEMENT:
+            {
+                Element parent = open.peek();
+                String name = reader.getLocalName();
+                Element element
+                    = new Element(PIDF_NS.equals(reader.getNamespaceURI()));
+
+                parent.endText();
+                if (person == null && "person".equals(name))
+                {
+                    person = element;
+                }
+                else if (person != null && person.isOpen())
+                {
+                    if ("activities".equals(name))
+                        activities = element;
+                    else if (activity == null
+                            && parent == activities
+                            && ("away".equals(name)
+                                || "busy".equals(name)
+                                || "on-the-phone".equals(name)))
+                        activity = name;
+                    else if ("status-icon".equals(name) && !statusIconFound)
+                    {
+                        statusIconFound = true;
+                        element.onEnd = e -> statusIcon = e.text;
+                    }
+                }
+
+                if ("tuple".equals(name) && tuple == null)
+                {
+                    tuple = new Tuple(element);
+                    tuples.add(tuple, element.pidf);
+                }
+                else if (tuple != null)
+                {
+                    if ("contact".equals(name))
+                    {
+                        final Tuple t = tuple;
+                        final String priority
+                            = reader.getAttributeValue(null, "priority");
+
+                        element.onEnd = e -> t.contacts.add(
+                            new String[] { e.getText(), priority },
+                            e.pidf);
+                    }
+                    else if ("status".equals(name))
+                    {
+                        status = new Status(element);
+                        tuple.statuses.add(status, element.pidf);
+                    }
+                    else if ("basic".equals(name) && status != null)
+                    {
+                        final Status s = status;
+
+                        element.onEnd = e -> s.basics.add(e.getText(), e.pidf);
+                    }
+                }
+                if ("note".equals(name))
+                {
+                    final Tuple t = tuple;
+
+                    element.onEnd = e -> {
+                        notes.add(e.getText(), e.pidf);
+                        if (t != null)
+                            t.notes.add(e.getText(), e.pidf);
+                    };
+                }
+                open.push(element);
+                break;
+            }
+            case XMLStreamConstants.END_ELEMENT:
+            {
+                Element element = open.pop();
+
+                element.end();
+                if (tuple != null && tuple.element == element)
+                    tuple = null;
+                else if (status != null && status.element == element)
+                    status = null;
+                else if (element == activities)
+                    activities = null;
+                break;
+            }
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.SPACE:
+                open.peek().appendText(reader.getText());
+                break;
+            case XMLStreamConstants.END_DOCUMENT:
+                return;
+            default:
+                // comments and processing instructions split text nodes
+                open.peek().endText();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns the entity attribute of the presence element.
+     *
+     * @return the entity or <tt>null</tt> if the presence element has none
+     */
+    String getEntity()
+    {
+        return entity;
+    }
+
+    /**
+     * Returns the first known RPID activity of the first person.
+     *
+     * @return one of <tt>away</tt>, <tt>busy</tt> and <tt>on-the-phone</tt> or
+     * <tt>null</tt> if the person has no such activity
+     */
+    String getActivity()
+    {
+        return activity;
+    }
+
+    /**
+     * Returns the text of the first status icon of the first person.
+     *
+     * @return the status icon or <tt>null</tt> if the person has none
+     */
+    String getStatusIcon()
+    {
+        return statusIcon;
+    }
+
+    /**
+     * Returns the last note of the document, tuples included.
+     *
+     * @return the text of the last note, empty if it has no text, or
+     * <tt>null</tt> if there are no notes
+     */
+    String getNote()
+    {
+        List<String> list = notes.get();
+
+        return list.isEmpty() ? null : list.get(list.size() - 1);
+    }
+
+    /**
+     * Returns the tuples of the document.
+     *
+     * @return the tuples
+     */
+    List<Tuple> getTuples()
+    {
+        return tuples.get();
+    }
+
+    /**
+     * Extracts the PIDF documents from a <tt>multipart/related</tt> body as
+     * sent by resource list servers (RFC 4662). Nested lists, which are
+     * <tt>multipart/related</tt> parts themselves, are extracted recursively,
+     * the RLMI documents are skipped.
+     *
+     * @param content the body
+     * @param boundary the boundary parameter of the content type of the body
+     * @return the bodies of the <tt>application/pidf+xml</tt> parts in their
+     * order of appearance
+     */
+    static List<byte[]> getPidfParts(byte[] content, String boundary)
+    {
+        List<byte[]> parts = new ArrayList<>();
+
+        addPidfParts(content, boundary, parts);
+        return parts;
+    }
+
+    /**
+     * Adds the PIDF documents of a <tt>multipart/related</tt> body to a list.
+     *
+     * @param content the body
+     * @param boundary the boundary of the parts of the body
+     * @param parts the list to add the bodies of the PIDF parts to
+     */
+    private static void addPidfParts(
+            byte[] content,
+            String boundary,
+            List<byte[]> parts)
+    {
+        if (boundary == null || boundary.length() == 0)
+            return;
+
+        byte[] delimiter
+            = ("--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        int index = indexOf(content, delimiter, 0);
+
+        while (index >= 0)
+        {
+            int start = index + delimiter.length;
+
+            // the close delimiter
+            if (start + 1 < content.length
+                    && content[start] == '-'
+                    && content[start + 1] == '-')
+                break;
+
+            // the rest of the delimiter line
+            while (start < content.length && content[start] != '\n')
+                start++;
+            start++;
+
+            int next = indexOf(content, delimiter, start);
+
+            if (next < 0)
+                break;
+
+            // the line break before a delimiter belongs to the delimiter
+            int end = next;
+
+            if (end > start && content[end - 1] == '\n')
+                end--;
+            if (end > start && content[end - 1] == '\r')
+                end--;
+
+            addPidfPart(content, start, end, parts);
+            index = next;
+        }
+    }
+
+    /**
+     * Adds a body part to a list if it is a PIDF document or the PIDF
+     * documents it contains if it is a <tt>multipart/related</tt> body.
+     *
+     * @param content the enclosing body
+     * @param start the index of the first byte of the part in <tt>content</tt>
+     * @param end the index after the last byte of the part in <tt>content</tt>
+     * @param parts the list to add the bodies of the PIDF parts to
+     */
+    private static void addPidfPart(
+            byte[] content,
+            int start,
+            int end,
+            List<byte[]> parts)
+    {
+        String contentType = null;
+        int lineStart = start;
+        int bodyStart = end;
+
+        // the headers end with an empty line
+        for (int i = start; i < end; i++)
+        {
+            if (content[i] != '\n')
+                continue;
+
+            int lineEnd = i;
+
+            if (lineEnd > lineStart && content[lineEnd - 1] == '\r')
+                lineEnd--;
+            if (lineEnd == lineStart)
+            {
+                bodyStart = i + 1;
+                break;
+            }
+
+            String header
+                = new String(
+                        content,
+                        lineStart,
+                        lineEnd - lineStart,
+                        StandardCharsets.ISO_8859_1);
+            int colon = header.indexOf(':');
+
+            if (colon > 0
+                    && header.substring(0, colon).trim()
+                            .equalsIgnoreCase("Content-Type"))
+                contentType = header.substring(colon + 1).trim();
+            lineStart = i + 1;
+        }
+        if (contentType == null)
+            return;
+
+        String type = contentType;
+        int semicolon = type.indexOf(';');
+
+        if (semicolon >= 0)
+            type = type.substring(0, semicolon);
+        type = type.trim();
+
+        if (type.equalsIgnoreCase(PIDF_CONTENT_TYPE))
+        {
+            parts.add(Arrays.copyOfRange(content, bodyStart, end));
+        }
+        else if (type.equalsIgnoreCase("multipart/related"))
+        {
+            addPidfParts(
+                Arrays.copyOfRange(content, bodyStart, end),
+                getParameter(contentType, "boundary"),
+                parts);
+        }
+    }
+
+    /**
+     * Returns the value of a parameter of a content type.
+     *
+     * @param contentType the content type with its parameters
+     * @param name the name of the parameter
+     * @return the unquoted value of the parameter or <tt>null</tt> if the
+     * content type has no such parameter
+     */
+    private static String getParameter(String contentType, String name)
+    {
+        for (String parameter : contentType.split(";"))
+        {
+            int equals = parameter.indexOf('=');
+
+            if (equals > 0
+                    && parameter.substring(0, equals).trim()
+                            .equalsIgnoreCase(name))
+            {
+                String value = parameter.substring(equals + 1).trim();
+
+                if (value.length() > 1
+                        && value.startsWith("\"")
+                        && value.endsWith("\""))
+                    value = value.substring(1, value.length() - 1);
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the first occurrence of a sequence of bytes in an array.
+     *
+     * @param array the array to search
+     * @param target the bytes to search for
+     * @param from the index to start the search at
+     * @return the index of the first occurrence or <tt>-1</tt>
+     */
+    private static int indexOf(byte[] array, byte[] target, int from)
+    {
+        outer:
+        for (int i = from, last = array.length - target.length; i <= last; i++)
+        {
+            for (int j = 0; j < target.length; j++)
+            {
+                if (array[i + j] != target[j])
+                    continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * A tuple of a PIDF document.
+     */
+    static final class Tuple
+    {
+        /**
+         * The tuple element.
+         */
+        private final Element element;
+
+        /**
+         * The text and priority attribute of the contacts of the tuple.
+         */
+        private final Matches<String[]> contacts = new Matches<>();
+
+        /**
+         * The statuses of the tuple.
+         */
+        private final Matches<Status> statuses = new Matches<>();
+
+        /**
+         * The notes of the tuple.
+         */
+        private final Matches<String> notes = new Matches<>();
+
+        /**
+         * Creates a tuple.
+         *
+         * @param element the tuple element
+         */
+        private Tuple(Element element)
+        {
+            this.element = element;
+        }
+
+        /**
+         * Returns the contacts of the tuple. This is normally not permitted
+         * by RFC 3863 but some implementations send several.
+         *
+         * @return the text of each contact, empty if it has none, and its
+         * priority attribute or <tt>null</tt> if it has none
+         */
+        List<String[]> getContacts()
+        {
+            return contacts.get();
+        }
+
+        /**
+         * Returns the basic status of the tuple, i.e. the last basic status
+         * of its last status.
+         *
+         * @return the text of the basic status, empty if it has none, or
+         * <tt>null</tt> if the tuple has no basic status
+         */
+        String getBasic()
+        {
+            List<Status> list = statuses.get();
+
+            if (list.isEmpty())
+                return null;
+
+            List<String> basics = list.get(list.size() - 1).basics.get();
+
+            return basics.isEmpty() ? null : basics.get(basics.size() - 1);
+        }
+
+        /**
+         * Returns the notes of the tuple.
+         *
+         * @return the text of each note, empty if it has none
+         */
+        List<String> getNotes()
+        {
+            return notes.get();
+        }
+    }
+
+    /**
+     * A status of a tuple.
+     */
+    private static final class Status
+    {
+        /**
+         * The status element.
+         */
+        private final Element element;
+
+        /**
+         * The basic statuses.
+         */
+        private final Matches<String> basics = new Matches<>();
+
+        /**
+         * Creates a status.
+         *
+         * @param element the status element
+         */
+        private Status(Element element)
+        {
+            this.element = element;
+        }
+    }
+
+    /**
+     * An open element and its text.
+     */
+    private static final class Element
+    {
+        /**
+         * Whether the element is in the PIDF namespace.
+         */
+        private final boolean pidf;
+
+        /**
+         * The first non blank text child.
+         */
+        private String text;
+
+        /**
+         * The text child being read.
+         */
+        private StringBuilder pending;
+
+        /**
+         * Whether the end of the element has been read.
+         */
+        private boolean ended;
+
+        /**
+         * Called with the element when its end has been read.
+         */
+        private Consumer<Element> onEnd;
+
+        /**
+         * Creates an element.
+         *
+         * @param pidf whether the element is in the PIDF namespace
+         */
+        private Element(boolean pidf)
+        {
+            this.pidf = pidf;
+        }
+
+        /**
+         * Appends text to the text child being read.
+         *
+         * @param chars the text
+         */
+        private void appendText(String chars)
+        {
+            if (text != null)
+                return;
+            if (pending == null)
+                pending = new StringBuilder(chars);
+            else
+                pending.append(chars);
+        }
+
+        /**
+         * Ends the text child being read.
+         */
+        private void endText()
+        {
+            if (pending == null)
+                return;
+            if (pending.toString().trim().length() != 0)
+                text = pending.toString();
+            pending = null;
+        }
+
+        /**
+         * Ends the element.
+         */
+        private void end()
+        {
+            endText();
+            ended = true;
+            if (onEnd != null)
+                onEnd.accept(this);
+        }
+
+        /**
+         * Returns whether the end of the element has not been read yet.
+         *
+         * @return <tt>true</tt> if the element is open
+         */
+        private boolean isOpen()
+        {
+            return !ended;
+        }
+
+        /**
+         * Returns the text of the element.
+         *
+         * @return the first non blank text child or an empty string if there
+         * is none
+         */
+        private String getText()
+        {
+            return (text == null) ? "" : text;
+        }
+    }
+
+    /**
+     * The elements of a name found in a scope, which are the ones in the PIDF
+     * namespace if there are any and all of them otherwise.
+     *
+     * @param <T> the type of the values of the elements
+     */
+    private static final class Matches<T>
+    {
+        /**
+         * The values of the elements in the PIDF namespace.
+         */
+        private final List<T> pidf = new ArrayList<>(1);
+
+        /**
+         * The values of all elements.
+         */
+        private final List<T> all = new ArrayList<>(1);
+
+        /**
+         * Adds the value of an element.
+         *
+         * @param value the value
+         * @param inPidfNamespace whether the element is in the PIDF namespace
+         */
+        private void add(T value, boolean inPidfNamespace)
+        {
+            if (inPidfNamespace)
+                pidf.add(value);
+            all.add(value);
+        }
+
+        /**
+         * Returns the values of the matching elements.
+         *
+         * @return the values in document order
+         */
+        private List<T> get()
+        {
+            return pidf.isEmpty() ? all : pidf;
+        }
+    }
+}
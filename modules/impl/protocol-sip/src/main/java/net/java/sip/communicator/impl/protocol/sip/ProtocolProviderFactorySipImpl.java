@@ -291,6 +291,18 @@ protected AccountID createAccountID(String userID, Map<String, String> accountPr
         return new SipAccountIDImpl(userID, accountProperties, serverAddress);
     }
 
+    /**
+     * The SIP providers share a stack which the first of them creates, so
+     * they are loaded one after another.
+     *
+     * @return <tt>true</tt>
+     */
+    @Override
+    public boolean isAccountLoadingOrdered()
+    {
+        return true;
+    }
+
     /**
      * Initializes a new <code>ProtocolProviderServiceSipImpl</code> instance
      * with a specific user ID to represent a specific <code>AccountID</code>.
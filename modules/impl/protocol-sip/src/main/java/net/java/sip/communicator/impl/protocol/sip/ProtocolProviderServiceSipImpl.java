@@ -439,6 +439,9 @@ public void register(SecurityAuthority authority)
         sipSecurityManager.setSecurityAuthority(authority);
 
         initRegistrarConnection();
+        // we were indexed for dispatching with the previous (or without a)
+        // registrar connection
+        sipStackSharing.reindexSipListener(this);
 
         //connect to the Registrar.
         connection = ProxyConnection.create(this);
@@ -2612,14 +2615,20 @@ public InetSocketAddress getIntendedDestination(SipURI destination)
     }
 
     /**
-     * Stops dispatching SIP messages to a SIP protocol provider service
-     * once it's been unregistered.
+     * Updates the dispatching of SIP messages to a SIP protocol provider
+     * service once it's been registered and stops it once it's been
+     * unregistered.
      *
      * @param event the change event in the registration state of a provider.
      */
     public void registrationStateChanged(RegistrationStateChangeEvent event)
     {
-        if(event.getNewState() == RegistrationState.UNREGISTERED ||
+        if(event.getNewState() == RegistrationState.REGISTERED)
+        {
+            sipStackSharing.reindexSipListener(
+                (ProtocolProviderServiceSipImpl) event.getProvider());
+        }
+        else if(event.getNewState() == RegistrationState.UNREGISTERED ||
            event.getNewState() == RegistrationState.CONNECTION_FAILED)
         {
             ProtocolProviderServiceSipImpl listener
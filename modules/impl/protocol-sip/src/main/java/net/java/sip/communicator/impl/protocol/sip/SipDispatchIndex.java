@@ -0,0 +1,317 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import java.util.*;
+
+import javax.sip.address.*;
+
+/**
+ * An immutable routing table which <tt>SipStackSharing</tt> uses to find the
+ * <tt>ProtocolProviderServiceSipImpl</tt> an incoming request is to be
+ * dispatched to. It groups the providers by the user ID of their accounts
+ * and, within each group, by the value of the custom contact parameter and by
+ * the host of their address of record, so that dispatching does not have to
+ * compare the request against each and every registered provider.
+ * <p>
+ * A new instance is created whenever a provider is added or removed, or when
+ * the registrar connection of a provider changes, so readers can use an
+ * instance without any synchronization.
+ */
+final class SipDispatchIndex
+{
+    /**
+     * The index which contains no providers.
+     */
+    static final SipDispatchIndex EMPTY
+        = new SipDispatchIndex(
+                Collections.<ProtocolProviderServiceSipImpl>emptyList());
+
+    /**
+     * All indexed providers, in the order in which they were added.
+     */
+    private final List<ProtocolProviderServiceSipImpl> providers;
+
+    /**
+     * The routes of the indexed providers, by user ID.
+     */
+    private final Map<String, UserRoute> routes;
+
+    /**
+     * Creates an index of the specified providers.
+     *
+     * @param providers the providers to index, in the order in which they are
+     * to be preferred
+     */
+    private SipDispatchIndex(List<ProtocolProviderServiceSipImpl> providers)
+    {
+        this.providers = providers;
+        this.routes = new HashMap<String, UserRoute>();
+
+        for (ProtocolProviderServiceSipImpl provider : providers)
+        {
+            String userID = provider.getAccountID().getUserID();
+            UserRoute route = routes.get(userID);
+
+            if (route == null)
+            {
+                route = new UserRoute();
+                routes.put(userID, route);
+            }
+            route.add(provider);
+        }
+    }
+
+    /**
+     * Returns an index which contains the providers of this index and
+     * <tt>provider</tt>.
+     *
+     * @param provider the provider to add
+     * @return an index which contains the providers of this index and
+     * <tt>provider</tt>, or this index if it already contains
+     * <tt>provider</tt>
+     */
+    SipDispatchIndex add(ProtocolProviderServiceSipImpl provider)
+    {
+        if (providers.contains(provider))
+            return this;
+
+        List<ProtocolProviderServiceSipImpl> newProviders
+            = new ArrayList<ProtocolProviderServiceSipImpl>(
+                    providers.size() + 1);
+
+        newProviders.addAll(providers);
+        newProviders.add(provider);
+        return new SipDispatchIndex(newProviders);
+    }
+
+    /**
+     * Returns an index which contains the providers of this index except
+     * <tt>provider</tt>.
+     *
+     * @param provider the provider to remove
+     * @return an index which contains the providers of this index except
+     * <tt>provider</tt>, or this index if it does not contain
+     * <tt>provider</tt>
+     */
+    SipDispatchIndex remove(ProtocolProviderServiceSipImpl provider)
+    {
+        if (!providers.contains(provider))
+            return this;
+
+        List<ProtocolProviderServiceSipImpl> newProviders
+            = new ArrayList<ProtocolProviderServiceSipImpl>(providers);
+
+        newProviders.remove(provider);
+        return
+            newProviders.isEmpty() ? EMPTY : new SipDispatchIndex(newProviders);
+    }
+
+    /**
+     * Returns an index of the providers of this index which reflects their
+     * current accounts and registrar connections. The routes of a provider
+     * are computed when it is indexed, so they are to be recomputed once its
+     * registrar connection has been (re)initialized.
+     *
+     * @return a new index of the providers of this index
+     */
+    SipDispatchIndex reindex()
+    {
+        return providers.isEmpty() ? EMPTY : new SipDispatchIndex(providers);
+    }
+
+    /**
+     * Returns all indexed providers.
+     *
+     * @return all indexed providers, in the order in which they were added
+     */
+    List<ProtocolProviderServiceSipImpl> getProviders()
+    {
+        return Collections.unmodifiableList(providers);
+    }
+
+    /**
+     * Returns the number of indexed providers.
+     *
+     * @return the number of indexed providers
+     */
+    int size()
+    {
+        return providers.size();
+    }
+
+    /**
+     * Returns the route of the providers whose account has a specific user
+     * ID.
+     *
+     * @param userID the user ID, e.g. the user part of a Request-URI
+     * @return the route of the providers whose account has <tt>userID</tt>,
+     * or <tt>null</tt> if there are no such providers
+     */
+    UserRoute getRoute(String userID)
+    {
+        return (userID == null) ? null : routes.get(userID);
+    }
+
+    /**
+     * The providers whose accounts have the same user ID.
+     */
+    static final class UserRoute
+    {
+        /**
+         * The providers of this route, in the order in which they were added.
+         */
+        private final List<ProtocolProviderServiceSipImpl> candidates
+            = new ArrayList<ProtocolProviderServiceSipImpl>(1);
+
+        /**
+         * The providers of this route by the value of the custom contact
+         * parameter they register with.
+         */
+        private final Map<String, List<ProtocolProviderServiceSipImpl>>
+            byCustomParam
+                = new HashMap<String, List<ProtocolProviderServiceSipImpl>>();
+
+        /**
+         * The providers of this route by the host of their address of record.
+         * Only contains registrar accounts because the address of registrarless
+         * accounts depends on the destination.
+         */
+        private final Map<String, List<ProtocolProviderServiceSipImpl>> byHost
+            = new HashMap<String, List<ProtocolProviderServiceSipImpl>>();
+
+        /**
+         * The providers of this route whose address of record has to be
+         * computed for each request.
+         */
+        private final List<ProtocolProviderServiceSipImpl> dynamicHost
+            = new ArrayList<ProtocolProviderServiceSipImpl>(1);
+
+        /**
+         * Adds a provider to this route.
+         *
+         * @param provider the provider to add
+         */
+        private void add(ProtocolProviderServiceSipImpl provider)
+        {
+            candidates.add(provider);
+
+            SipRegistrarConnection src = provider.getRegistrarConnection();
+            String customParam = provider.getContactAddressCustomParamValue();
+
+            if ((customParam != null) && (src != null))
+            {
+                put(byCustomParam, customParam, provider);
+                put(byHost,
+                    ((SipURI) src.getAddressOfRecord().getURI()).getHost(),
+                    provider);
+            }
+            else
+                dynamicHost.add(provider);
+        }
+
+        /**
+         * Returns the providers of this route.
+         *
+         * @return the providers of this route
+         */
+        List<ProtocolProviderServiceSipImpl> getCandidates()
+        {
+            return Collections.unmodifiableList(candidates);
+        }
+
+        /**
+         * Returns the providers of this route which register with a specific
+         * value of the custom contact parameter.
+         *
+         * @param customParam the value of the custom contact parameter
+         * @return the matching providers (possibly empty)
+         */
+        List<ProtocolProviderServiceSipImpl> getByCustomParam(
+                String customParam)
+        {
+            return get(byCustomParam, customParam);
+        }
+
+        /**
+         * Returns the registrar providers of this route whose address of
+         * record has a specific host.
+         *
+         * @param host the host
+         * @return the matching providers (possibly empty)
+         */
+        List<ProtocolProviderServiceSipImpl> getByHost(String host)
+        {
+            return get(byHost, host);
+        }
+
+        /**
+         * Returns the providers of this route whose address of record has to
+         * be computed for each request.
+         *
+         * @return the providers with a destination-dependent address of record
+         */
+        List<ProtocolProviderServiceSipImpl> getDynamicHost()
+        {
+            return Collections.unmodifiableList(dynamicHost);
+        }
+
+        /**
+         * Adds a provider to the list mapped to a key, creating the list if
+         * necessary.
+         *
+         * @param map the map
+         * @param key the key
+         * @param provider the provider to add
+         */
+        private static void put(
+                Map<String, List<ProtocolProviderServiceSipImpl>> map,
+                String key,
+                ProtocolProviderServiceSipImpl provider)
+        {
+            List<ProtocolProviderServiceSipImpl> list = map.get(key);
+
+            if (list == null)
+            {
+                list = new ArrayList<ProtocolProviderServiceSipImpl>(1);
+                map.put(key, list);
+            }
+            list.add(provider);
+        }
+
+        /**
+         * Returns the list mapped to a key.
+         *
+         * @param map the map
+         * @param key the key
+         * @return the list mapped to <tt>key</tt> or an empty list
+         */
+        private static List<ProtocolProviderServiceSipImpl> get(
+                Map<String, List<ProtocolProviderServiceSipImpl>> map,
+                String key)
+        {
+            List<ProtocolProviderServiceSipImpl> list
+                = (key == null) ? null : map.get(key);
+
+            return
+                (list == null)
+                    ? Collections.<ProtocolProviderServiceSipImpl>emptyList()
+                    : Collections.unmodifiableList(list);
+        }
+    }
+}
@@ -93,7 +93,7 @@
     /**
     * The timer we use for rescheduling registrations.
     */
-    private Timer reRegisterTimer = new Timer();
+    private final TimerScheduler reRegisterTimer = new TimerScheduler();
 
     /**
     * A copy of our last sent register request. (used when unregistering)
@@ -744,7 +744,7 @@ public void setRegistrationState(RegistrationState newState,
     * it will resend the REGISTER request.
     */
     private class ReRegisterTask
-        extends TimerTask
+        extends TimerScheduler.Task
     {
         /**
         * Creates a new instance of the ReRegister task prepared to reregister
@@ -782,9 +782,6 @@ public void run()
     private void cancelPendingRegistrations()
     {
         reRegisterTimer.cancel();
-        reRegisterTimer = null;
-
-        reRegisterTimer = new Timer();
     }
 
     /**
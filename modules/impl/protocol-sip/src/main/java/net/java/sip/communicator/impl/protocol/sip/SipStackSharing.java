@@ -85,12 +85,19 @@
     /**
      * The candidate recipients to choose from when dispatching messages
      * received from one the JAIN-SIP <tt>SipProvider</tt>-s. for thread safety
-     * issues reasons, better iterate on a copy of that set using
-     * <tt>getSipListeners()</tt>.
+     * issues reasons, dispatching uses <tt>dispatchIndex</tt> instead.
      */
     private final Set<ProtocolProviderServiceSipImpl> listeners
         = new HashSet<ProtocolProviderServiceSipImpl>();
 
+    /**
+     * The routing table used to find the recipient of incoming requests among
+     * the <tt>listeners</tt>. It is replaced (rather than modified) whenever
+     * <tt>listeners</tt> changes so that dispatching can read it without
+     * locking or copying.
+     */
+    private volatile SipDispatchIndex dispatchIndex = SipDispatchIndex.EMPTY;
+
     /**
      * The property indicating the preferred UDP and TCP
      * port to bind to for clear communications.
@@ -198,11 +205,29 @@ public void addSipListener(ProtocolProviderServiceSipImpl listener)
             if(this.listeners.size() == 0)
                 startListening();
             this.listeners.add(listener);
+            this.dispatchIndex = this.dispatchIndex.add(listener);
             if (logger.isTraceEnabled())
                 logger.trace(this.listeners.size() + " listeners now");
         }
     }
 
+    /**
+     * Recomputes the routes by which new messages are dispatched to a
+     * candidate recipient after its account or registrar connection has
+     * changed. Does nothing if <tt>listener</tt> is not a candidate
+     * recipient.
+     *
+     * @param listener the candidate recipient which has changed
+     */
+    public void reindexSipListener(ProtocolProviderServiceSipImpl listener)
+    {
+        synchronized(this.listeners)
+        {
+            if(this.listeners.contains(listener))
+                this.dispatchIndex = this.dispatchIndex.reindex();
+        }
+    }
+
     /**
      * This <tt>listener</tt> will no longer be a candidate recipient for the
      * dispatching of new messages received from the JAIN-SIP
@@ -215,6 +240,7 @@ public void removeSipListener(ProtocolProviderServiceSipImpl listener)
         synchronized(this.listeners)
         {
             this.listeners.remove(listener);
+            this.dispatchIndex = this.dispatchIndex.remove(listener);
 
             int listenerCount = listeners.size();
             if (logger.isTraceEnabled())
@@ -224,19 +250,6 @@ public void removeSipListener(ProtocolProviderServiceSipImpl listener)
         }
     }
 
-    /**
-     * Returns a copy of the <tt>listeners</tt> (= candidate recipients) set.
-     *
-     * @return a copy of the <tt>listeners</tt> set.
-     */
-    private Set<ProtocolProviderServiceSipImpl> getSipListeners()
-    {
-        synchronized(this.listeners)
-        {
-            return new HashSet<ProtocolProviderServiceSipImpl>(this.listeners);
-        }
-    }
-
     /**
      * Returns the JAIN-SIP <tt>ListeningPoint</tt> associated to the given
      * transport string.
@@ -905,16 +918,24 @@ private ProtocolProviderServiceSipImpl findTargetFor(Request request)
             return null;
         }
 
-        List<ProtocolProviderServiceSipImpl> currentListenersCopy
-            = new ArrayList<ProtocolProviderServiceSipImpl>(
-                                this.getSipListeners());
-
-        // Let's first narrow down candidate choice by comparing
-        // addresses and ports (no point in delivering to a provider with a
-        // non matching IP address  since they will reject it anyway).
-        filterByAddress(currentListenersCopy, request);
+        return findTargetFor(this.dispatchIndex, request);
+    }
 
-        if(currentListenersCopy.size() == 0)
+    /**
+     * Finds the provider among the providers of a specific
+     * <tt>SipDispatchIndex</tt> which a specific request should be dispatched
+     * to.
+     *
+     * @param index the providers to choose from
+     * @param request the <tt>Request</tt> to find a recipient for.
+     * @return a suitable <tt>ProtocolProviderServiceSipImpl</tt>.
+     * @see #findTargetFor(Request)
+     */
+    static ProtocolProviderServiceSipImpl findTargetFor(
+            SipDispatchIndex index,
+            Request request)
+    {
+        if(index.size() == 0)
         {
             logger.error("no listeners");
             return null;
@@ -925,24 +946,17 @@ private ProtocolProviderServiceSipImpl findTargetFor(Request request)
         if(requestURI.isSipURI())
         {
             String requestUser = ((SipURI) requestURI).getUser();
-
-            List<ProtocolProviderServiceSipImpl> candidates =
-                new ArrayList<ProtocolProviderServiceSipImpl>();
+            SipDispatchIndex.UserRoute route = index.getRoute(requestUser);
 
             // check if the Request-URI username is
-            // one of ours usernames
-            for(ProtocolProviderServiceSipImpl listener : currentListenersCopy)
-            {
-                String ourUserID = listener.getAccountID().getUserID();
-                //logger.trace(ourUserID + " *** " + requestUser);
-                if(ourUserID.equals(requestUser))
-                {
-                    if (logger.isTraceEnabled())
-                        logger.trace("suitable candidate found: "
-                                + listener.getAccountID());
-                    candidates.add(listener);
-                }
-            }
+            // one of ours usernames. Candidates are narrowed down by
+            // comparing addresses and ports (no point in delivering to a
+            // provider with a non matching IP address since they will reject
+            // it anyway).
+            List<ProtocolProviderServiceSipImpl> candidates
+                = (route == null)
+                    ? Collections.<ProtocolProviderServiceSipImpl>emptyList()
+                    : filterByAddress(route.getCandidates(), request);
 
             // the perfect match
             // every other case is approximation
@@ -961,14 +975,12 @@ private ProtocolProviderServiceSipImpl findTargetFor(Request request)
             {
                 // check if a custom param exists in the contact
                 // address (set for registrar accounts)
-                for (ProtocolProviderServiceSipImpl candidate : candidates)
+                String hostValue = ((SipURI) requestURI).getParameter(
+                        SipStackSharing.CONTACT_ADDRESS_CUSTOM_PARAM_NAME);
+                for (ProtocolProviderServiceSipImpl candidate
+                        : route.getByCustomParam(hostValue))
                 {
-                    String hostValue = ((SipURI) requestURI).getParameter(
-                            SipStackSharing.CONTACT_ADDRESS_CUSTOM_PARAM_NAME);
-                    if (hostValue == null)
-                        continue;
-                    if (hostValue.equals(candidate
-                                .getContactAddressCustomParamValue()))
+                    if (candidates.contains(candidate))
                     {
                         if (logger.isTraceEnabled())
                             logger.trace("Will dispatch to \""
@@ -983,36 +995,19 @@ private ProtocolProviderServiceSipImpl findTargetFor(Request request)
 
                 // check if the To header field host part
                 // matches any of our SIP hosts
-                for(ProtocolProviderServiceSipImpl candidate : candidates)
+                ProtocolProviderServiceSipImpl target
+                    = findTargetByToHost(request, route, candidates);
+                if (target != null)
                 {
-                    URI fromURI = ((FromHeader) request
-                            .getHeader(FromHeader.NAME)).getAddress().getURI();
-                    if(fromURI.isSipURI() == false)
-                        continue;
-                    SipURI ourURI = (SipURI) candidate
-                        .getOurSipAddress((SipURI) fromURI).getURI();
-                    String ourHost = ourURI.getHost();
-
-                    URI toURI = ((ToHeader) request
-                            .getHeader(ToHeader.NAME)).getAddress().getURI();
-                    if(toURI.isSipURI() == false)
-                        continue;
-                    String toHost = ((SipURI) toURI).getHost();
-
-                    //logger.trace(toHost + "***" + ourHost);
-                    if(toHost.equals(ourHost))
-                    {
-                        if (logger.isTraceEnabled())
-                            logger.trace("Will dispatch to \""
-                                    + candidate.getAccountID() + "\" because "
-                                    + "host in the To: is the same as in our AOR");
-                        return candidate;
-                    }
+                    if (logger.isTraceEnabled())
+                        logger.trace("Will dispatch to \""
+                                + target.getAccountID() + "\" because "
+                                + "host in the To: is the same as in our AOR");
+                    return target;
                 }
 
                 // fallback on the first candidate
-                ProtocolProviderServiceSipImpl target =
-                    candidates.iterator().next();
+                target = candidates.get(0);
                 logger.info("Will randomly dispatch to \""
                         + target.getAccountID()
                         + "\" because there is ambiguity on the username from"
@@ -1023,8 +1018,20 @@ private ProtocolProviderServiceSipImpl findTargetFor(Request request)
             }
 
             // fallback on any account
-            ProtocolProviderServiceSipImpl target =
-                currentListenersCopy.iterator().next();
+            ProtocolProviderServiceSipImpl target = null;
+            for (ProtocolProviderServiceSipImpl listener : index.getProviders())
+            {
+                if (isRequestFromSameConnection(listener, request))
+                {
+                    target = listener;
+                    break;
+                }
+            }
+            if (target == null)
+            {
+                logger.error("no listeners");
+                return null;
+            }
             if (logger.isDebugEnabled())
                 logger.debug("Will randomly dispatch to \"" + target
                         .getAccountID()
@@ -1042,46 +1049,123 @@ private ProtocolProviderServiceSipImpl findTargetFor(Request request)
     }
 
     /**
-     * Removes from the specified list of candidates providers connected to a
-     * registrar that does not match the IP address that we are receiving a
-     * request from.
+     * Finds the candidate whose address of record has the same host as the
+     * To header of a specific request.
+     *
+     * @param request the request that we are currently dispatching
+     * @param route the route of the providers whose user ID matches the
+     * Request-URI
+     * @param candidates the providers of <tt>route</tt> which accept requests
+     * from the connection <tt>request</tt> was received on
+     * @return the matching candidate or <tt>null</tt> if there is none
+     */
+    private static ProtocolProviderServiceSipImpl findTargetByToHost(
+            Request request,
+            SipDispatchIndex.UserRoute route,
+            List<ProtocolProviderServiceSipImpl> candidates)
+    {
+        URI toURI
+            = ((ToHeader) request.getHeader(ToHeader.NAME)).getAddress()
+                .getURI();
+        if(toURI.isSipURI() == false)
+            return null;
+        String toHost = ((SipURI) toURI).getHost();
+
+        // the first matching candidate wins, as when comparing the
+        // candidates one by one
+        int best = candidates.size();
+
+        for(ProtocolProviderServiceSipImpl candidate : route.getByHost(toHost))
+        {
+            int i = candidates.indexOf(candidate);
+
+            if ((i != -1) && (i < best))
+                best = i;
+        }
+
+        // the address of registrarless accounts depends on the destination
+        List<ProtocolProviderServiceSipImpl> dynamicHost
+            = route.getDynamicHost();
+        URI fromURI
+            = ((FromHeader) request.getHeader(FromHeader.NAME)).getAddress()
+                .getURI();
+
+        if(!dynamicHost.isEmpty() && fromURI.isSipURI())
+        {
+            for(ProtocolProviderServiceSipImpl candidate : dynamicHost)
+            {
+                int i = candidates.indexOf(candidate);
+
+                if ((i == -1) || (i >= best))
+                    continue;
+
+                SipURI ourURI = (SipURI) candidate
+                    .getOurSipAddress((SipURI) fromURI).getURI();
+
+                //logger.trace(toHost + "***" + ourHost);
+                if(toHost.equals(ourURI.getHost()))
+                    best = i;
+            }
+        }
+        return (best < candidates.size()) ? candidates.get(best) : null;
+    }
+
+    /**
+     * Returns the candidates which accept a specific request, i.e. removes
+     * providers connected to a registrar that does not match the IP address
+     * that we are receiving the request from.
      *
      * @param candidates the list of providers we've like to filter.
      * @param request the request that we are currently dispatching
+     * @return the candidates which accept <tt>request</tt>
      */
-    private void filterByAddress(
+    private static List<ProtocolProviderServiceSipImpl> filterByAddress(
                     List<ProtocolProviderServiceSipImpl> candidates,
                     Request                              request)
     {
-        Iterator<ProtocolProviderServiceSipImpl> iterPP =
-            candidates.iterator();
-        while (iterPP.hasNext())
+        List<ProtocolProviderServiceSipImpl> filtered
+            = new ArrayList<ProtocolProviderServiceSipImpl>(candidates.size());
+
+        for (ProtocolProviderServiceSipImpl candidate : candidates)
         {
-            ProtocolProviderServiceSipImpl candidate = iterPP.next();
-            boolean forceProxyBypass
-                = candidate.getAccountID()
-                    .getAccountPropertyBoolean(
-                        ProtocolProviderFactory.FORCE_PROXY_BYPASS, false);
-            if(forceProxyBypass)
-            {
-                // Proxy check is disabled all connections are
-                // ok (HA sipXecs, sipXcom, ...)
-                continue;
-            }
-            if(candidate.getRegistrarConnection() == null)
-            {
-                //RegistrarLess connections are ok
-                continue;
-            }
+            if (isRequestFromSameConnection(candidate, request))
+                filtered.add(candidate);
+        }
+        return filtered;
+    }
 
-            if (   !candidate.getRegistrarConnection().isRegistrarless()
-                && !candidate.getRegistrarConnection()
-                        .isRequestFromSameConnection(request))
-            {
-                iterPP.remove();
-            }
+    /**
+     * Determines whether a provider accepts a specific request with respect
+     * to the address it was received from. Providers connected to a registrar
+     * only accept requests from that registrar.
+     *
+     * @param candidate the provider to check
+     * @param request the request that we are currently dispatching
+     * @return <tt>true</tt> if <tt>candidate</tt> accepts <tt>request</tt>
+     */
+    private static boolean isRequestFromSameConnection(
+                    ProtocolProviderServiceSipImpl candidate,
+                    Request                        request)
+    {
+        boolean forceProxyBypass
+            = candidate.getAccountID()
+                .getAccountPropertyBoolean(
+                    ProtocolProviderFactory.FORCE_PROXY_BYPASS, false);
+        if(forceProxyBypass)
+        {
+            // Proxy check is disabled all connections are
+            // ok (HA sipXecs, sipXcom, ...)
+            return true;
+        }
+
+        SipRegistrarConnection src = candidate.getRegistrarConnection();
+        if(src == null)
+        {
+            //RegistrarLess connections are ok
+            return true;
         }
 
+        return src.isRegistrarless() || src.isRequestFromSameConnection(request);
     }
 
     /**
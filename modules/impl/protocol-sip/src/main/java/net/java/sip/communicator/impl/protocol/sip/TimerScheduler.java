@@ -19,46 +19,66 @@
 
 import java.util.*;
 
+import net.java.sip.communicator.util.*;
+
 /**
  * Represents an analogy of <code>Timer</code> which does not have the
  * disadvantage of <code>Timer</code> to always create its thread at
  * construction time. It also allows the currently scheduled
  * <code>TimerTask</code>s to be canceled while still being able to schedule new
  * <code>TimerTask</code>s later on.
+ * <p>
+ * The tasks of all <tt>TimerScheduler</tt>s are executed by the process-wide
+ * {@link TimingWheel} so that the many refresh and timeout tasks of the
+ * accounts, subscriptions and conversations do not require a thread each.
+ * Because a <code>TimerTask</code> does not let its cancellation be observed,
+ * tasks which are to be canceled through their own
+ * <code>TimerTask#cancel()</code> have to extend {@link Task}. Any task is
+ * canceled by {@link #cancel()}.
  *
  * @author Lubomir Marinov
  */
 public class TimerScheduler
 {
+    /**
+     * The timing wheel which executes the scheduled tasks.
+     */
+    private final TimingWheel wheel;
 
     /**
-     * The timer which will handle all scheduled tasks.
+     * The tasks scheduled through this instance which are still pending.
      */
-    private Timer timer;
+    private final Map<TimerTask, TimingWheel.Timeout> timeouts
+        = new HashMap<TimerTask, TimingWheel.Timeout>();
 
     /**
-     * Discarding any currently scheduled <code>TimerTask</code>s.
+     * Initializes a new <tt>TimerScheduler</tt> which executes its tasks on
+     * the process-wide <tt>TimingWheel</tt>.
      */
-    public synchronized void cancel()
+    public TimerScheduler()
     {
-       if (timer != null)
-       {
-           timer.cancel();
-           timer = null;
-       }
+        this(TimingWheel.getInstance());
     }
 
     /**
-     * Gets the timer which handles all scheduled tasks. If it still doesn't
-     * exists, a new <tt>Timer</tt> is created.
+     * Initializes a new <tt>TimerScheduler</tt> which executes its tasks on a
+     * specific <tt>TimingWheel</tt>.
      *
-     * @return the <tt>Timer</tt> which handles all scheduled tasks
+     * @param wheel the <tt>TimingWheel</tt> to execute the tasks on
+     */
+    public TimerScheduler(TimingWheel wheel)
+    {
+        this.wheel = wheel;
+    }
+
+    /**
+     * Discarding any currently scheduled <code>TimerTask</code>s.
      */
-    private synchronized Timer getTimer()
+    public synchronized void cancel()
     {
-       if (timer == null)
-           timer = new Timer(true);
-       return timer;
+        for (TimingWheel.Timeout timeout : timeouts.values())
+            timeout.cancel();
+        timeouts.clear();
     }
 
     /**
@@ -74,7 +94,7 @@ private synchronized Timer getTimer()
      */
     public synchronized void schedule(TimerTask task, long delay)
     {
-        getTimer().schedule(task, delay);
+        schedule(task, delay, 0);
     }
 
     /**
@@ -92,8 +112,124 @@ public synchronized void schedule(TimerTask task, long delay)
      *            the time in milliseconds between successive executions of the
      *            specified <code>TimerTask</code>
      */
-    public synchronized void schedule(TimerTask task, long delay, long period)
+    public synchronized void schedule(
+            final TimerTask task,
+            long delay,
+            final long period)
     {
-        getTimer().schedule(task, delay, period);
+        if (timeouts.containsKey(task))
+            throw new IllegalStateException("Task already scheduled.");
+
+        TimingWheel.Timeout timeout
+            = wheel.schedule(
+                    new Runnable()
+                    {
+                        public void run()
+                        {
+                            try
+                            {
+                                task.run();
+                            }
+                            finally
+                            {
+                                if (period == 0)
+                                    done(task);
+                            }
+                        }
+
+                        @Override
+                        public String toString()
+                        {
+                            return task.toString();
+                        }
+                    },
+                    delay,
+                    period);
+
+        timeouts.put(task, timeout);
+        if ((task instanceof Task)
+                && !((Task) task).setTimeout(this, timeout))
+        {
+            // The task has been canceled before it was scheduled.
+            timeout.cancel();
+            timeouts.remove(task);
+        }
+    }
+
+    /**
+     * Forgets a one-shot task after its execution.
+     *
+     * @param task the task which has been executed
+     */
+    private synchronized void done(TimerTask task)
+    {
+        timeouts.remove(task);
+    }
+
+    /**
+     * A <code>TimerTask</code> whose <code>cancel()</code> prevents its
+     * pending executions scheduled through a <tt>TimerScheduler</tt>.
+     */
+    public static abstract class Task
+        extends TimerTask
+    {
+        /**
+         * The <tt>Timeout</tt> of the pending execution of this task.
+         */
+        private TimingWheel.Timeout timeout;
+
+        /**
+         * The <tt>TimerScheduler</tt> this task has been scheduled through.
+         */
+        private TimerScheduler scheduler;
+
+        /**
+         * Whether this task has been canceled.
+         */
+        private boolean canceled = false;
+
+        /**
+         * Cancels this task, preventing its pending executions.
+         *
+         * @return <tt>true</tt> if an execution has been prevented
+         */
+        @Override
+        public boolean cancel()
+        {
+            TimingWheel.Timeout timeout;
+            TimerScheduler scheduler;
+
+            super.cancel();
+            synchronized (this)
+            {
+                canceled = true;
+                timeout = this.timeout;
+                scheduler = this.scheduler;
+                this.timeout = null;
+                this.scheduler = null;
+            }
+            if (scheduler != null)
+                scheduler.done(this);
+            return (timeout != null) && timeout.cancel();
+        }
+
+        /**
+         * Sets the <tt>Timeout</tt> of the pending execution of this task.
+         *
+         * @param scheduler the <tt>TimerScheduler</tt> this task has been
+         * scheduled through
+         * @param timeout the <tt>Timeout</tt> of the pending execution
+         * @return <tt>false</tt> if this task has already been canceled
+         */
+        private synchronized boolean setTimeout(
+                TimerScheduler scheduler,
+                TimingWheel.Timeout timeout)
+        {
+            if (canceled)
+                return false;
+            this.scheduler = scheduler;
+            this.timeout = timeout;
+            return true;
+        }
     }
 }
@@ -57,6 +57,11 @@
 
     /**
      * Wrapper around {@link NetworkUtils} to support Unit Tests.
+     * <p>
+     * The lookups are done one after the other by the state machine, but the
+     * records which the next states are likely to need are prefetched in the
+     * background as soon as they are known, so that the state machine mostly
+     * finds them in the DNS cache.
      */
     protected static class LocalNetworkUtils
     {
@@ -69,13 +74,28 @@ public InetAddress getInetAddress(String address)
         public String[][] getNAPTRRecords(String address)
             throws ParseException, DnssecException
         {
-            return NetworkUtils.getNAPTRRecords(address);
+            // the SRV and A/AAAA fallbacks of the NAPTR lookup
+            for (String transport : transports)
+            {
+                NetworkUtils.prefetchSRVRecords(
+                    TLS.equals(transport) ? "sips" : "sip",
+                    UDP.equals(transport) ? UDP : TCP,
+                    address);
+            }
+            NetworkUtils.prefetchAandAAAARecords(address);
+
+            String[][] records = NetworkUtils.getNAPTRRecords(address);
+
+            // the answer has just been cached, so this only keeps it fresh
+            NetworkUtils.prefetchNAPTRRecords(address);
+            return records;
         }
 
         public SRVRecord[] getSRVRecords(String service, String proto,
             String address) throws ParseException, DnssecException
         {
-            return NetworkUtils.getSRVRecords(service, proto, address);
+            return prefetchTargets(
+                NetworkUtils.getSRVRecords(service, proto, address));
         }
 
         public InetSocketAddress[] getAandAAAARecords(String target, int port)
@@ -92,7 +112,23 @@ public boolean isValidIPAddress(String address)
         public SRVRecord[] getSRVRecords(String domain)
             throws ParseException, DnssecException
         {
-            return NetworkUtils.getSRVRecords(domain);
+            return prefetchTargets(NetworkUtils.getSRVRecords(domain));
+        }
+
+        /**
+         * Prefetches the A and AAAA records of the targets of SRV records.
+         *
+         * @param srvRecords the SRV records (may be <tt>null</tt>)
+         * @return <tt>srvRecords</tt>
+         */
+        private SRVRecord[] prefetchTargets(SRVRecord[] srvRecords)
+        {
+            if (srvRecords != null)
+            {
+                for (SRVRecord srvRecord : srvRecords)
+                    NetworkUtils.prefetchAandAAAARecords(srvRecord.getTarget());
+            }
+            return srvRecords;
         }
     }
 
@@ -124,5 +124,9 @@ public void reset()
         if(!ProtocolProviderServiceSipImpl.isValidTransport(transport))
             throw new IllegalArgumentException(
                 transport + " is not a valid SIP transport");
+
+        //have the proxy resolved while the registration is being prepared
+        if(address != null)
+            NetworkUtils.prefetchAandAAAARecords(address);
     }
 }
@@ -0,0 +1,281 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import javax.sip.address.*;
+import javax.sip.header.*;
+import javax.sip.message.*;
+
+import gov.nist.javax.sip.address.*;
+import gov.nist.javax.sip.message.*;
+
+import net.java.sip.communicator.service.protocol.*;
+
+import org.easymock.*;
+
+/**
+ * Synthetic SIP accounts and requests for the tests and the benchmark of
+ * <tt>SipDispatchIndex</tt>, together with the linear dispatch algorithm
+ * which <tt>SipStackSharing</tt> used before the index, as a reference.
+ */
+class SipDispatchFixture
+{
+    private final AddressFactory addressFactory = new AddressFactoryImpl();
+
+    private final MessageFactoryImpl messageFactory = new MessageFactoryImpl();
+
+    /**
+     * The providers created by this fixture, in creation order.
+     */
+    final List<ProtocolProviderServiceSipImpl> providers
+        = new ArrayList<ProtocolProviderServiceSipImpl>();
+
+    /**
+     * Creates an account connected to a registrar.
+     *
+     * @param userID the user ID of the account
+     * @param host the host of the address of record of the account
+     * @param sameConnection whether the account accepts requests, i.e.
+     * whether they come from its registrar
+     * @return the provider of the account
+     */
+    ProtocolProviderServiceSipImpl registrar(
+        String userID, String host, boolean sameConnection)
+        throws Exception
+    {
+        return registrar(userID, host, sameConnection, new AtomicBoolean(true));
+    }
+
+    /**
+     * Creates an account whose connection to a registrar is initialized
+     * later.
+     *
+     * @param userID the user ID of the account
+     * @param host the host of the address of record of the account
+     * @param sameConnection whether the account accepts requests, i.e.
+     * whether they come from its registrar
+     * @param initialized whether the registrar connection of the account has
+     * been initialized
+     * @return the provider of the account
+     */
+    ProtocolProviderServiceSipImpl registrar(
+        String userID,
+        String host,
+        boolean sameConnection,
+        AtomicBoolean initialized)
+        throws Exception
+    {
+        Address aor
+            = addressFactory.createAddress(
+                addressFactory.createSipURI(userID, host));
+        SipRegistrarConnection src
+            = EasyMock.createNiceMock(SipRegistrarConnection.class);
+
+        EasyMock.expect(src.isRegistrarless()).andReturn(false).anyTimes();
+        EasyMock.expect(src.getAddressOfRecord()).andReturn(aor).anyTimes();
+        EasyMock.expect(
+                src.isRequestFromSameConnection(
+                    EasyMock.anyObject(Request.class)))
+            .andReturn(sameConnection).anyTimes();
+        EasyMock.replay(src);
+        return provider(userID, src, host.replace('.', '_'), aor, initialized);
+    }
+
+    /**
+     * Creates an account without registrar.
+     *
+     * @param userID the user ID of the account
+     * @param host the host of the address the account computes for the
+     * destinations of the requests
+     * @return the provider of the account
+     */
+    ProtocolProviderServiceSipImpl registrarless(String userID, String host)
+        throws Exception
+    {
+        SipRegistrarConnection src
+            = EasyMock.createNiceMock(SipRegistrarConnection.class);
+
+        EasyMock.expect(src.isRegistrarless()).andReturn(true).anyTimes();
+        EasyMock.replay(src);
+        return provider(
+            userID,
+            src,
+            null,
+            addressFactory.createAddress(
+                addressFactory.createSipURI(userID, host)),
+            new AtomicBoolean(true));
+    }
+
+    private ProtocolProviderServiceSipImpl provider(
+        String userID,
+        SipRegistrarConnection src,
+        String customParam,
+        Address ourAddress,
+        AtomicBoolean initialized)
+    {
+        AccountID accountID = EasyMock.createNiceMock(AccountID.class);
+        EasyMock.expect(accountID.getUserID()).andReturn(userID).anyTimes();
+        EasyMock.replay(accountID);
+
+        ProtocolProviderServiceSipImpl provider
+            = EasyMock.createNiceMock(ProtocolProviderServiceSipImpl.class);
+        EasyMock.expect(provider.getAccountID())
+            .andReturn(accountID).anyTimes();
+        EasyMock.expect(provider.getRegistrarConnection())
+            .andAnswer(() -> initialized.get() ? src : null).anyTimes();
+        EasyMock.expect(provider.getContactAddressCustomParamValue())
+            .andAnswer(() -> initialized.get() ? customParam : null)
+            .anyTimes();
+        EasyMock.expect(
+                provider.getOurSipAddress(EasyMock.anyObject(SipURI.class)))
+            .andReturn(ourAddress).anyTimes();
+        EasyMock.replay(provider);
+
+        providers.add(provider);
+        return provider;
+    }
+
+    /**
+     * Creates an INVITE request.
+     *
+     * @param user the user part of the Request-URI
+     * @param customParam the value of the custom contact parameter of the
+     * Request-URI or <tt>null</tt>
+     * @param toHost the host of the To header
+     * @return the request
+     */
+    Request request(String user, String customParam, String toHost)
+        throws Exception
+    {
+        String requestURI
+            = "sip:" + ((user == null) ? "" : user + "@") + "10.0.0.1:5060"
+                + ((customParam == null)
+                    ? ""
+                    : ";" + SipStackSharing.CONTACT_ADDRESS_CUSTOM_PARAM_NAME
+                        + "=" + customParam);
+
+        return messageFactory.createRequest(
+            "INVITE " + requestURI + " SIP/2.0\r\n"
+                + "Via: SIP/2.0/UDP 10.0.0.2:5060;branch=z9hG4bK1\r\n"
+                + "From: <sip:caller@example.org>;tag=1\r\n"
+                + "To: <sip:callee@" + toHost + ">\r\n"
+                + "Call-ID: 1@10.0.0.2\r\n"
+                + "CSeq: 1 INVITE\r\n"
+                + "Max-Forwards: 70\r\n"
+                + "Content-Length: 0\r\n\r\n");
+    }
+
+    /**
+     * Returns an index of all providers of this fixture.
+     *
+     * @return an index of all providers of this fixture
+     */
+    SipDispatchIndex index()
+    {
+        SipDispatchIndex index = SipDispatchIndex.EMPTY;
+
+        for (ProtocolProviderServiceSipImpl provider : providers)
+            index = index.add(provider);
+        return index;
+    }
+
+    /**
+     * Finds the recipient of a request by comparing the request against each
+     * provider in turn, the way <tt>SipStackSharing</tt> did before
+     * <tt>SipDispatchIndex</tt>.
+     *
+     * @param providers the providers to choose from, in order of preference
+     * @param request the request
+     * @return the recipient or <tt>null</tt>
+     */
+    static ProtocolProviderServiceSipImpl findTargetLinear(
+        List<ProtocolProviderServiceSipImpl> providers,
+        Request request)
+    {
+        List<ProtocolProviderServiceSipImpl> listeners
+            = new ArrayList<ProtocolProviderServiceSipImpl>();
+
+        for (ProtocolProviderServiceSipImpl provider : providers)
+        {
+            SipRegistrarConnection src = provider.getRegistrarConnection();
+
+            if ((src == null)
+                    || src.isRegistrarless()
+                    || src.isRequestFromSameConnection(request))
+                listeners.add(provider);
+        }
+        if (listeners.isEmpty())
+            return null;
+
+        URI requestURI = request.getRequestURI();
+
+        if (!requestURI.isSipURI())
+            return null;
+
+        String requestUser = ((SipURI) requestURI).getUser();
+        List<ProtocolProviderServiceSipImpl> candidates
+            = new ArrayList<ProtocolProviderServiceSipImpl>();
+
+        for (ProtocolProviderServiceSipImpl listener : listeners)
+        {
+            if (listener.getAccountID().getUserID().equals(requestUser))
+                candidates.add(listener);
+        }
+        if (candidates.size() == 1)
+            return candidates.get(0);
+        if (candidates.isEmpty())
+            return listeners.get(0);
+
+        String hostValue
+            = ((SipURI) requestURI).getParameter(
+                SipStackSharing.CONTACT_ADDRESS_CUSTOM_PARAM_NAME);
+
+        if (hostValue != null)
+        {
+            for (ProtocolProviderServiceSipImpl candidate : candidates)
+            {
+                if (hostValue.equals(
+                        candidate.getContactAddressCustomParamValue()))
+                    return candidate;
+            }
+        }
+
+        SipURI fromURI
+            = (SipURI)
+                ((FromHeader) request.getHeader(FromHeader.NAME)).getAddress()
+                    .getURI();
+        String toHost
+            = ((SipURI)
+                    ((ToHeader) request.getHeader(ToHeader.NAME)).getAddress()
+                        .getURI())
+                .getHost();
+
+        for (ProtocolProviderServiceSipImpl candidate : candidates)
+        {
+            SipURI ourURI
+                = (SipURI) candidate.getOurSipAddress(fromURI).getURI();
+
+            if (toHost.equals(ourURI.getHost()))
+                return candidate;
+        }
+        return candidates.get(0);
+    }
+}
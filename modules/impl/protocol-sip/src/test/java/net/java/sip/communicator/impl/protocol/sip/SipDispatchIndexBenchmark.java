@@ -0,0 +1,136 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import java.util.*;
+
+import javax.sip.message.*;
+
+/**
+ * Compares the time <tt>SipStackSharing.findTargetFor</tt> takes to dispatch
+ * requests through a <tt>SipDispatchIndex</tt> with the linear dispatch
+ * algorithm it replaced, for a growing number of accounts.
+ * <p>
+ * The build has no JMH setup, so this is a plain warm-up and measure loop.
+ * It is not a unit test and is not run by the build. Run it with the test
+ * class path of this module, e.g.
+ * <tt>mvn -pl modules/impl/protocol-sip test-compile exec:java
+ * -Dexec.classpathScope=test
+ * -Dexec.mainClass=net.java.sip.communicator.impl.protocol.sip.SipDispatchIndexBenchmark</tt>.
+ * The accounts are EasyMock mocks, which adds the same overhead per provider
+ * call to both algorithms, so the ratio is more meaningful than the absolute
+ * numbers.
+ */
+public class SipDispatchIndexBenchmark
+{
+    private static final int WARMUP_ITERATIONS = 20000;
+
+    private static final int ITERATIONS = 100000;
+
+    public static void main(String[] args)
+        throws Exception
+    {
+        for (int accounts : new int[] { 1, 10, 100, 1000 })
+            run(accounts);
+    }
+
+    private static void run(int accounts)
+        throws Exception
+    {
+        SipDispatchFixture fixture = new SipDispatchFixture();
+
+        // A few users with many accounts each, as with several registrars
+        // per user, and many users with a single account.
+        for (int i = 0; i < accounts; i++)
+        {
+            String host = "h" + (i % 7) + ".example.com";
+
+            if (i % 10 == 0)
+            {
+                fixture.registrarless("user" + (i % 3), host);
+            }
+            else
+            {
+                fixture.registrar(
+                    "user" + (i % (accounts / 4 + 1)), host, true);
+            }
+        }
+
+        SipDispatchIndex index = fixture.index();
+        List<ProtocolProviderServiceSipImpl> providers = fixture.providers;
+        Request[] requests = new Request[64];
+        Random random = new Random(accounts);
+
+        for (int i = 0; i < requests.length; i++)
+        {
+            String host = "h" + random.nextInt(7) + ".example.com";
+
+            requests[i]
+                = fixture.request(
+                    "user" + random.nextInt(accounts / 4 + 1),
+                    random.nextBoolean() ? host.replace('.', '_') : null,
+                    host);
+        }
+
+        long indexed = measure(index, providers, requests, true);
+        long linear = measure(index, providers, requests, false);
+
+        System.out.println(
+            accounts + " accounts: indexed " + indexed + " ns/op, linear "
+                + linear + " ns/op");
+    }
+
+    private static long measure(
+        SipDispatchIndex index,
+        List<ProtocolProviderServiceSipImpl> providers,
+        Request[] requests,
+        boolean indexed)
+    {
+        int sink = 0;
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++)
+        {
+            Request request = requests[i % requests.length];
+            ProtocolProviderServiceSipImpl target
+                = indexed
+                    ? SipStackSharing.findTargetFor(index, request)
+                    : SipDispatchFixture.findTargetLinear(providers, request);
+
+            sink += System.identityHashCode(target);
+        }
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < ITERATIONS; i++)
+        {
+            Request request = requests[i % requests.length];
+            ProtocolProviderServiceSipImpl target
+                = indexed
+                    ? SipStackSharing.findTargetFor(index, request)
+                    : SipDispatchFixture.findTargetLinear(providers, request);
+
+            sink += System.identityHashCode(target);
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        if (sink == 42)
+            System.out.println();
+        return elapsed / ITERATIONS;
+    }
+}
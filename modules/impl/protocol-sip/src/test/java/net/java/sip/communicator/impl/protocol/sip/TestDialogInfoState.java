@@ -0,0 +1,399 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import net.java.sip.communicator.service.protocol.event.*;
+
+import org.junit.*;
+
+/**
+ * Replays a synthetic high-rate stream of full and partial dialog-info
+ * NOTIFY bodies, with retransmissions of stale versions, for hundreds of
+ * lines and checks the final states of the lines and the number of status
+ * changes reported by <tt>DialogInfoState</tt>.
+ */
+public class TestDialogInfoState
+{
+    /**
+     * The number of monitored lines.
+     */
+    private static final int LINES = 400;
+
+    /**
+     * The number of changes of each line.
+     */
+    private static final int STEPS = 60;
+
+    /**
+     * The number of threads the stream is replayed on.
+     */
+    private static final int LANES = 4;
+
+    /**
+     * Creates a dialog-info document.
+     *
+     * @param version the version of the document
+     * @param full whether the document carries the full state
+     * @param dialogs the states of the dialogs by id
+     * @return the bytes of the document
+     */
+    private static byte[] document(
+            long version,
+            boolean full,
+            Map<String, String> dialogs)
+    {
+        StringBuilder xml
+            = new StringBuilder(
+                    "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<dialog-info"
+                    + " xmlns=\"urn:ietf:params:xml:ns:dialog-info\""
+                    + " version=\"" + version + "\""
+                    + " state=\"" + (full ? "full" : "partial") + "\""
+                    + " entity=\"sip:line@example.com\">\n");
+
+        for (Map.Entry<String, String> dialog : dialogs.entrySet())
+        {
+            String id = dialog.getKey();
+
+            xml.append("  <dialog id=\"").append(id)
+                .append("\" call-id=\"call-").append(id)
+                .append("\" local-tag=\"l-").append(id)
+                .append("\" remote-tag=\"r-").append(id)
+                .append("\" direction=\"recipient\">\n")
+                .append("    <state>").append(dialog.getValue())
+                .append("</state>\n")
+                .append("    <local><identity>sip:line@example.com")
+                .append("</identity></local>\n")
+                .append("  </dialog>\n");
+        }
+        xml.append("</dialog-info>\n");
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Computes the status of a line from the states of its dialogs.
+     *
+     * @param dialogs the states of the dialogs which have not terminated
+     * @return the status of the line
+     */
+    private static int status(Map<String, String> dialogs)
+    {
+        if (dialogs.containsValue("confirmed"))
+            return BLFStatusEvent.STATUS_BUSY;
+        return dialogs.isEmpty()
+            ? BLFStatusEvent.STATUS_FREE
+            : BLFStatusEvent.STATUS_RINGING;
+    }
+
+    /**
+     * Parses a dialog-info document.
+     *
+     * @param content the document
+     * @return the parsed document
+     */
+    private static DialogInfoDocument parse(byte[] content)
+    {
+        try
+        {
+            return DialogInfoDocument.parse(content);
+        }
+        catch (Exception ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * Tests the parsing of a dialog-info document.
+     */
+    @Test
+    public void testParse()
+        throws Exception
+    {
+        byte[] content
+            = ("<?xml version=\"1.0\"?>"
+                + "<d:dialog-info xmlns:d="
+                + "\"urn:ietf:params:xml:ns:dialog-info\""
+                + " version=\"7\" state=\"partial\" entity=\"sip:a@b\">"
+                + "<d:dialog id=\"x\" call-id=\"c\" local-tag=\"l\""
+                + " remote-tag=\"r\" direction=\"initiator\">"
+                + "<d:state event=\"replaced\">\n Early \n</d:state>"
+                + "<d:duration>3</d:duration>"
+                + "</d:dialog>"
+                + "<d:dialog id=\"y\"/>"
+                + "</d:dialog-info>")
+                .getBytes(StandardCharsets.UTF_8);
+        DialogInfoDocument document = DialogInfoDocument.parse(content);
+
+        assertEquals(7, document.getVersion());
+        assertFalse(document.isFull());
+        assertEquals("sip:a@b", document.getEntity());
+        assertEquals(2, document.getDialogs().size());
+
+        DialogInfoDocument.Dialog dialog = document.getDialogs().get(0);
+
+        assertEquals("x", dialog.getId());
+        assertEquals("c", dialog.getCallID());
+        assertEquals("l", dialog.getLocalTag());
+        assertEquals("r", dialog.getRemoteTag());
+        assertEquals("initiator", dialog.getDirection());
+        assertEquals("Early", dialog.getState());
+        assertNull(document.getDialogs().get(1).getState());
+
+        assertNull(
+            DialogInfoDocument.parse(
+                "<presence/>".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Tests that stale and duplicate documents are dropped until the state
+     * is reset for a new subscription.
+     */
+    @Test
+    public void testVersionOrder()
+    {
+        DialogInfoState state = new DialogInfoState();
+        Map<String, String> confirmed
+            = Collections.singletonMap("a", "confirmed");
+        Map<String, String> terminated
+            = Collections.singletonMap("a", "terminated");
+
+        assertTrue(state.apply(parse(document(5, true, confirmed))));
+        assertEquals(BLFStatusEvent.STATUS_BUSY, state.getStatus());
+        assertEquals("call-a", state.getPickupDialog().getCallID());
+
+        assertFalse(state.apply(parse(document(5, true, confirmed))));
+        assertFalse(state.apply(parse(document(4, false, terminated))));
+        assertEquals(BLFStatusEvent.STATUS_BUSY, state.getStatus());
+
+        // a refresh of the subscription does not reset the status
+        assertFalse(state.setOnline());
+
+        state.reset();
+        assertTrue(state.apply(parse(document(0, false, terminated))));
+        assertEquals(BLFStatusEvent.STATUS_FREE, state.getStatus());
+        assertNull(state.getPickupDialog());
+    }
+
+    /**
+     * Tests that partial documents following a missed version are dropped
+     * and a refresh of the subscription requested once, until a full
+     * document restores the dialogs of the line.
+     */
+    @Test
+    public void testVersionGap()
+    {
+        DialogInfoState state = new DialogInfoState();
+        Map<String, String> confirmed
+            = Collections.singletonMap("a", "confirmed");
+
+        assertTrue(state.apply(parse(document(1, true, confirmed))));
+        assertFalse(state.apply(parse(
+            document(2, false, Collections.singletonMap("b", "early")))));
+        assertFalse(state.takeRefreshRequest());
+
+        // version 3 terminating b is lost
+        assertFalse(state.apply(parse(
+            document(4, false, Collections.singletonMap("a", "terminated")))));
+        assertTrue(state.takeRefreshRequest());
+        assertFalse(state.takeRefreshRequest());
+        assertEquals("call-b", state.getPickupDialog().getCallID());
+
+        // contiguous, but the state is still unknown
+        assertFalse(state.apply(parse(
+            document(5, false, Collections.singletonMap("c", "trying")))));
+        assertFalse(state.takeRefreshRequest());
+        assertEquals(BLFStatusEvent.STATUS_BUSY, state.getStatus());
+
+        // the full state answering the refresh
+        assertTrue(state.apply(parse(
+            document(6, true, Collections.singletonMap("c", "trying")))));
+        assertEquals(BLFStatusEvent.STATUS_RINGING, state.getStatus());
+        assertEquals("call-c", state.getPickupDialog().getCallID());
+
+        assertTrue(state.apply(parse(
+            document(7, false, Collections.singletonMap("c", "terminated")))));
+        assertEquals(BLFStatusEvent.STATUS_FREE, state.getStatus());
+        assertFalse(state.takeRefreshRequest());
+    }
+
+    /**
+     * Replays the NOTIFY bodies of many lines, each line on one of a few
+     * threads in the order of the stream, and checks the final states of
+     * the lines and their number of status changes.
+     */
+    @Test
+    public void testReplay()
+        throws Exception
+    {
+        Random random = new Random(4235);
+        List<List<byte[]>> streams = new ArrayList<>(LINES);
+        int[] expectedStatus = new int[LINES];
+        int[] expectedEvents = new int[LINES];
+        String[] expectedPickup = new String[LINES];
+        String[] initial = { "trying", "proceeding", "early" };
+
+        for (int line = 0; line < LINES; line++)
+        {
+            Map<String, String> dialogs = new LinkedHashMap<>();
+            List<byte[]> stream = new ArrayList<>();
+            int status = BLFStatusEvent.STATUS_OFFLINE;
+            int nextId = 0;
+
+            for (int version = 0; version < STEPS; version++)
+            {
+                Map<String, String> changes = new LinkedHashMap<>();
+                int op = random.nextInt(3);
+
+                if ((op == 0) || dialogs.isEmpty())
+                {
+                    changes.put(
+                        "d" + nextId++,
+                        initial[random.nextInt(initial.length)]);
+                }
+                else
+                {
+                    List<String> ids = new ArrayList<>(dialogs.keySet());
+                    String id = ids.get(random.nextInt(ids.size()));
+
+                    changes.put(
+                        id,
+                        ((op == 1) && !"confirmed".equals(dialogs.get(id)))
+                            ? "confirmed"
+                            : "terminated");
+                }
+                for (Map.Entry<String, String> change : changes.entrySet())
+                {
+                    // the latest reported dialog is the last one
+                    dialogs.remove(change.getKey());
+                    if (!"terminated".equals(change.getValue()))
+                        dialogs.put(change.getKey(), change.getValue());
+                }
+
+                boolean full = random.nextInt(10) == 0;
+
+                stream.add(
+                    document(version, full, full ? dialogs : changes));
+
+                // retransmit an earlier document now and then
+                if ((version > 0) && (random.nextInt(5) == 0))
+                    stream.add(stream.get(random.nextInt(stream.size())));
+
+                int newStatus = status(dialogs);
+
+                if (newStatus != status)
+                {
+                    expectedEvents[line]++;
+                    status = newStatus;
+                }
+            }
+            expectedStatus[line] = status;
+
+            // the latest dialog being established, otherwise the latest one
+            String pickup = null;
+
+            for (Map.Entry<String, String> dialog : dialogs.entrySet())
+            {
+                if (!"confirmed".equals(dialog.getValue()))
+                    pickup = dialog.getKey();
+            }
+            if ((pickup == null) && !dialogs.isEmpty())
+            {
+                for (String id : dialogs.keySet())
+                    pickup = id;
+            }
+            expectedPickup[line] = pickup;
+            streams.add(stream);
+        }
+
+        final DialogInfoState[] states = new DialogInfoState[LINES];
+        final AtomicInteger[] events = new AtomicInteger[LINES];
+
+        for (int line = 0; line < LINES; line++)
+        {
+            states[line] = new DialogInfoState();
+            events[line] = new AtomicInteger();
+        }
+
+        // interleave the lines as they would arrive from the server
+        ExecutorService[] lanes = new ExecutorService[LANES];
+        int[] position = new int[LINES];
+        int remaining = 0;
+        int notifies = 0;
+
+        for (int lane = 0; lane < LANES; lane++)
+            lanes[lane] = Executors.newSingleThreadExecutor();
+        for (List<byte[]> stream : streams)
+            remaining += stream.size();
+        while (remaining > 0)
+        {
+            final int line = random.nextInt(LINES);
+
+            if (position[line] == streams.get(line).size())
+                continue;
+
+            final byte[] content = streams.get(line).get(position[line]++);
+
+            remaining--;
+            notifies++;
+            lanes[line % LANES].execute(() -> {
+                if (states[line].apply(parse(content)))
+                    events[line].incrementAndGet();
+            });
+        }
+        for (ExecutorService lane : lanes)
+        {
+            lane.shutdown();
+            assertTrue(lane.awaitTermination(60, TimeUnit.SECONDS));
+        }
+
+        int totalEvents = 0;
+        int expectedTotal = 0;
+
+        for (int line = 0; line < LINES; line++)
+        {
+            assertEquals(
+                "status of line " + line,
+                expectedStatus[line],
+                states[line].getStatus());
+            assertEquals(
+                "events of line " + line,
+                expectedEvents[line],
+                events[line].get());
+
+            DialogInfoDocument.Dialog pickup = states[line].getPickupDialog();
+
+            assertEquals(
+                "pickup of line " + line,
+                expectedPickup[line],
+                (pickup == null) ? null : pickup.getId());
+            totalEvents += events[line].get();
+            expectedTotal += expectedEvents[line];
+        }
+        assertEquals(expectedTotal, totalEvents);
+        // only the changes of status are reported
+        assertTrue(totalEvents < notifies);
+    }
+}
@@ -0,0 +1,561 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import static org.junit.Assert.*;
+
+import java.net.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.sip.*;
+import javax.sip.address.*;
+import javax.sip.header.*;
+import javax.sip.message.*;
+
+import gov.nist.javax.sip.message.*;
+
+import org.junit.*;
+
+/**
+ * Sends the NOTIFY requests of thousands of synthetic subscriptions through
+ * <tt>NotifyFanOut</tt> over a loopback JAIN-SIP stack and checks that each
+ * subscription receives the last state, that the bodies are generated once
+ * per change and content key and that rapid changes are coalesced.
+ */
+public class TestNotifyFanOut
+{
+    /**
+     * The number of synthetic subscriptions.
+     */
+    private static final int SUBSCRIPTIONS = 2000;
+
+    /**
+     * The number of distinct bodies of a change.
+     */
+    private static final int CONTENT_KEYS = 4;
+
+    /**
+     * The event package of the NOTIFY requests.
+     */
+    private static final String EVENT_PACKAGE = "presence";
+
+    /**
+     * The stack sending the NOTIFY requests.
+     */
+    private SipStack senderStack;
+
+    /**
+     * The stack receiving the NOTIFY requests.
+     */
+    private SipStack receiverStack;
+
+    /**
+     * The provider sending the NOTIFY requests.
+     */
+    private SipProvider senderProvider;
+
+    /**
+     * The port the receiver listens on.
+     */
+    private int receiverPort;
+
+    private AddressFactory addressFactory;
+
+    private HeaderFactory headerFactory;
+
+    private MessageFactory messageFactory;
+
+    /**
+     * The last body received by user.
+     */
+    private final Map<String, String> received = new ConcurrentHashMap<>();
+
+    /**
+     * The last Subscription-State received by user.
+     */
+    private final Map<String, String> receivedStates
+        = new ConcurrentHashMap<>();
+
+    /**
+     * The number of NOTIFY requests received.
+     */
+    private final AtomicInteger receivedCount = new AtomicInteger();
+
+    /**
+     * The number of NOTIFY requests sent.
+     */
+    private final AtomicInteger sentCount = new AtomicInteger();
+
+    /**
+     * The number of bodies generated.
+     */
+    private final AtomicInteger generated = new AtomicInteger();
+
+    /**
+     * The state the synthetic subscriptions put in their bodies.
+     */
+    private volatile int state;
+
+    /**
+     * Blocks the sender while closed.
+     */
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+
+    /**
+     * The fan-out under test.
+     */
+    private NotifyFanOut fanOut;
+
+    /**
+     * The synthetic subscriptions.
+     */
+    private List<EventPackageNotifier.Subscription> subscriptions;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        SipFactory sipFactory = SipFactory.getInstance();
+
+        sipFactory.setPathName("gov.nist");
+        addressFactory = sipFactory.createAddressFactory();
+        headerFactory = sipFactory.createHeaderFactory();
+        messageFactory = sipFactory.createMessageFactory();
+
+        receiverPort = getFreePort();
+        receiverStack = createStack(sipFactory, "receiver");
+
+        SipProvider receiverProvider
+            = receiverStack.createSipProvider(
+                    receiverStack.createListeningPoint(
+                            "127.0.0.1",
+                            receiverPort,
+                            ListeningPoint.TCP));
+
+        receiverProvider.addSipListener(new Receiver());
+
+        senderStack = createStack(sipFactory, "sender");
+        senderProvider
+            = senderStack.createSipProvider(
+                    senderStack.createListeningPoint(
+                            "127.0.0.1",
+                            getFreePort(),
+                            ListeningPoint.TCP));
+
+        fanOut = new NotifyFanOut(4);
+        subscriptions = new ArrayList<>(SUBSCRIPTIONS);
+        for (int i = 0; i < SUBSCRIPTIONS; i++)
+            subscriptions.add(new SyntheticSubscription(i));
+    }
+
+    @After
+    public void tearDown()
+    {
+        fanOut.shutdown();
+        senderStack.stop();
+        receiverStack.stop();
+    }
+
+    /**
+     * Creates a JAIN-SIP stack.
+     *
+     * @param sipFactory the factory
+     * @param name the name of the stack
+     * @return the stack
+     * @throws PeerUnavailableException if the stack could not be created
+     */
+    private SipStack createStack(SipFactory sipFactory, String name)
+        throws PeerUnavailableException
+    {
+        Properties properties = new Properties();
+
+        properties.setProperty(
+            "javax.sip.STACK_NAME",
+            "TestNotifyFanOut-" + name + "-" + System.nanoTime());
+        properties.setProperty(
+            "gov.nist.javax.sip.STACK_LOGGER",
+            LoopbackLogger.class.getName());
+        properties.setProperty(
+            "gov.nist.javax.sip.SERVER_LOGGER",
+            LoopbackLogger.class.getName());
+        // the NOTIFY requests are sent outside of a subscription dialog
+        properties.setProperty(
+            "gov.nist.javax.sip.DELIVER_UNSOLICITED_NOTIFY",
+            "true");
+        return sipFactory.createSipStack(properties);
+    }
+
+    /**
+     * Gets a free local TCP port.
+     *
+     * @return the port
+     * @throws Exception if no port could be found
+     */
+    private static int getFreePort()
+        throws Exception
+    {
+        try (ServerSocket socket = new ServerSocket(0))
+        {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Sends a stateless NOTIFY request to a synthetic subscription.
+     *
+     * @param subscription the subscription
+     * @param content the body
+     * @param subscriptionState the subscription state
+     * @param reason the reason for the subscription state
+     * @throws Exception if the request could not be sent
+     */
+    private void send(
+            EventPackageNotifier.Subscription subscription,
+            byte[] content,
+            String subscriptionState,
+            String reason)
+        throws Exception
+    {
+        gate.await();
+
+        String user = ((SyntheticSubscription) subscription).user;
+        SipURI requestURI
+            = addressFactory.createSipURI(user, "127.0.0.1");
+
+        requestURI.setPort(receiverPort);
+        requestURI.setTransportParam(ListeningPoint.TCP);
+
+        Address from
+            = addressFactory.createAddress(
+                    addressFactory.createSipURI("notifier", "127.0.0.1"));
+        Address to = addressFactory.createAddress(requestURI);
+        ViaHeader via
+            = headerFactory.createViaHeader(
+                    "127.0.0.1",
+                    senderProvider.getListeningPoint(ListeningPoint.TCP)
+                        .getPort(),
+                    ListeningPoint.TCP,
+                    null);
+        Request request
+            = messageFactory.createRequest(
+                    requestURI,
+                    Request.NOTIFY,
+                    senderProvider.getNewCallId(),
+                    headerFactory.createCSeqHeader(1L, Request.NOTIFY),
+                    headerFactory.createFromHeader(from, "fanout"),
+                    headerFactory.createToHeader(to, null),
+                    Collections.singletonList(via),
+                    headerFactory.createMaxForwardsHeader(70),
+                    headerFactory.createContentTypeHeader(
+                            "application",
+                            "pidf+xml"),
+                    content);
+        SubscriptionStateHeader subscriptionStateHeader
+            = headerFactory.createSubscriptionStateHeader(subscriptionState);
+
+        if (reason != null)
+            subscriptionStateHeader.setReasonCode(reason);
+        request.addHeader(subscriptionStateHeader);
+        request.addHeader(headerFactory.createEventHeader(EVENT_PACKAGE));
+
+        senderProvider.sendRequest(request);
+        sentCount.incrementAndGet();
+    }
+
+    /**
+     * Queues a change of the synthetic subscriptions.
+     *
+     * @param subscriptionState the subscription state
+     * @return the change
+     */
+    private NotifyFanOut.Change notifyAll(String subscriptionState)
+    {
+        return
+            fanOut.notifyAll(
+                    EVENT_PACKAGE,
+                    subscriptions,
+                    subscriptionState,
+                    null,
+                    (s, content, ss, reason) -> {
+                        try
+                        {
+                            send(s, content, ss, reason);
+                        }
+                        catch (Exception ex)
+                        {
+                            throw new RuntimeException(ex);
+                        }
+                    });
+    }
+
+    /**
+     * Waits until a specific number of NOTIFY requests have been received.
+     *
+     * @param count the number of NOTIFY requests
+     * @throws InterruptedException if interrupted
+     */
+    private void awaitReceived(int count)
+        throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 30000;
+
+        while ((receivedCount.get() < count)
+                && (System.currentTimeMillis() < deadline))
+        {
+            Thread.sleep(20);
+        }
+        assertEquals(count, receivedCount.get());
+    }
+
+    /**
+     * Asserts that every subscription has received the body of a specific
+     * state.
+     *
+     * @param expectedState the state
+     */
+    private void assertReceivedState(int expectedState)
+    {
+        assertEquals(SUBSCRIPTIONS, received.size());
+        for (int i = 0; i < SUBSCRIPTIONS; i++)
+        {
+            assertEquals(
+                (i % CONTENT_KEYS) + ":" + expectedState,
+                received.get("user" + i));
+        }
+    }
+
+    /**
+     * Tests that a single change reaches every subscription, generating each
+     * distinct body once, and that the latency is recorded.
+     */
+    @Test
+    public void testFanOut()
+        throws Exception
+    {
+        state = 1;
+        assertTrue(notifyAll(SubscriptionStateHeader.ACTIVE).await(30000));
+        awaitReceived(SUBSCRIPTIONS);
+
+        assertReceivedState(1);
+        assertEquals(CONTENT_KEYS, generated.get());
+
+        NotifyFanOut.Statistics stats = fanOut.getStatistics(EVENT_PACKAGE);
+
+        assertEquals(SUBSCRIPTIONS, stats.getSent());
+        assertEquals(0, stats.getFailures());
+        assertEquals(0, stats.getCoalesced());
+        assertEquals(CONTENT_KEYS, stats.getGenerated());
+        assertTrue(stats.getMaxLatency() >= stats.getAverageLatency());
+        assertEquals(0, fanOut.getStatistics("dialog").getSent());
+    }
+
+    /**
+     * Tests that rapid changes are coalesced per subscription and that the
+     * last one is delivered to every subscription.
+     */
+    @Test
+    public void testCoalescing()
+        throws Exception
+    {
+        final int changes = 20;
+        NotifyFanOut.Change last = null;
+
+        gate = new CountDownLatch(1);
+        for (int i = 1; i <= changes; i++)
+        {
+            state = i;
+            last = notifyAll(SubscriptionStateHeader.ACTIVE);
+        }
+        gate.countDown();
+
+        assertTrue(last.await(30000));
+        awaitReceived(sentCount.get());
+
+        assertReceivedState(changes);
+
+        NotifyFanOut.Statistics stats = fanOut.getStatistics(EVENT_PACKAGE);
+
+        assertEquals(sentCount.get(), stats.getSent());
+        assertTrue(stats.getSent() < 2L * SUBSCRIPTIONS);
+        assertEquals(
+            (long) changes * SUBSCRIPTIONS,
+            stats.getSent() + stats.getCoalesced());
+        assertTrue(generated.get() < 2 * CONTENT_KEYS * changes);
+    }
+
+    /**
+     * Tests that a termination is neither replaced nor followed by a later
+     * change.
+     */
+    @Test
+    public void testTerminationIsNotCoalesced()
+        throws Exception
+    {
+        gate = new CountDownLatch(1);
+        state = 1;
+
+        NotifyFanOut.Change terminated
+            = notifyAll(SubscriptionStateHeader.TERMINATED);
+
+        state = 2;
+
+        NotifyFanOut.Change active = notifyAll(SubscriptionStateHeader.ACTIVE);
+
+        gate.countDown();
+        assertTrue(terminated.await(30000));
+        assertTrue(active.await(30000));
+        awaitReceived(sentCount.get());
+
+        for (int i = 0; i < SUBSCRIPTIONS; i++)
+        {
+            assertEquals(
+                SubscriptionStateHeader.TERMINATED.toLowerCase(),
+                receivedStates.get("user" + i).toLowerCase());
+        }
+        assertEquals(SUBSCRIPTIONS, sentCount.get());
+        assertEquals(
+            SUBSCRIPTIONS,
+            fanOut.getStatistics(EVENT_PACKAGE).getCoalesced());
+    }
+
+    /**
+     * A subscription which puts its content key and the current state in
+     * its bodies.
+     */
+    private class SyntheticSubscription
+        extends EventPackageNotifier.Subscription
+    {
+        /**
+         * The user part of the address of this subscription.
+         */
+        private final String user;
+
+        /**
+         * The content key of this subscription.
+         */
+        private final int key;
+
+        /**
+         * Creates a synthetic subscription.
+         *
+         * @param index the index of the subscription
+         * @throws ParseException if the address could not be created
+         */
+        SyntheticSubscription(int index)
+            throws java.text.ParseException
+        {
+            super(
+                addressFactory.createAddress(
+                        "sip:user" + index + "@127.0.0.1"),
+                null);
+            this.user = "user" + index;
+            this.key = index % CONTENT_KEYS;
+        }
+
+        @Override
+        protected byte[] createNotifyContent(
+                String subscriptionState,
+                String reason)
+        {
+            generated.incrementAndGet();
+            return (key + ":" + state).getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        protected Object getNotifyContentKey(
+                String subscriptionState,
+                String reason)
+        {
+            return key;
+        }
+    }
+
+    /**
+     * A <tt>SipLogger</tt> which does not need the OSGi services and does
+     * not log anything.
+     */
+    public static class LoopbackLogger
+        extends SipLogger
+    {
+        @Override
+        public boolean isLoggingEnabled()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean isLoggingEnabled(int logLevel)
+        {
+            return false;
+        }
+
+        @Override
+        public void logMessage(SIPMessage message, String from, String to,
+                               String status, boolean sender, long time)
+        {
+        }
+    }
+
+    /**
+     * Records the NOTIFY requests received by the receiver stack.
+     */
+    private class Receiver
+        implements SipListener
+    {
+        public void processRequest(RequestEvent requestEvent)
+        {
+            Request request = requestEvent.getRequest();
+            String user
+                = ((SipURI) request.getRequestURI()).getUser();
+            SubscriptionStateHeader subscriptionState
+                = (SubscriptionStateHeader)
+                    request.getHeader(SubscriptionStateHeader.NAME);
+
+            received.put(
+                user,
+                new String(request.getRawContent(), StandardCharsets.UTF_8));
+            receivedStates.put(user, subscriptionState.getState());
+            receivedCount.incrementAndGet();
+        }
+
+        public void processResponse(ResponseEvent responseEvent)
+        {
+        }
+
+        public void processTimeout(TimeoutEvent timeoutEvent)
+        {
+        }
+
+        public void processIOException(IOExceptionEvent exceptionEvent)
+        {
+        }
+
+        public void processTransactionTerminated(
+                TransactionTerminatedEvent transactionTerminatedEvent)
+        {
+        }
+
+        public void processDialogTerminated(
+                DialogTerminatedEvent dialogTerminatedEvent)
+        {
+        }
+    }
+}
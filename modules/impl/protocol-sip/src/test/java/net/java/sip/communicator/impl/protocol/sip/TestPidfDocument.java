@@ -0,0 +1,534 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.function.*;
+
+import net.java.sip.communicator.service.protocol.*;
+
+import org.jitsi.util.xml.*;
+import org.junit.*;
+import org.w3c.dom.*;
+
+/**
+ * Replays a recorded NOTIFY of a resource list subscription and checks that
+ * the presence states computed from the streamed <tt>PidfDocument</tt>s and
+ * the normalized contact index are the ones of the DOM based parsing and
+ * contact resolution that <tt>OperationSetPresenceSipImpl</tt> used before.
+ */
+public class TestPidfDocument
+{
+    /**
+     * The recorded NOTIFY request.
+     */
+    private static final String NOTIFY = "rlmi-notify.txt";
+
+    /**
+     * The PIDF namespace.
+     */
+    private static final String PIDF_NS = "urn:ietf:params:xml:ns:pidf";
+
+    /**
+     * Matches any namespace.
+     */
+    private static final String ANY_NS = "*";
+
+    /**
+     * The statuses.
+     */
+    private final SipStatusEnum sipStatusEnum
+        = new SipStatusEnum("resources/images/protocol/sip");
+
+    /**
+     * The addresses of the contacts of the contact list, as returned by
+     * <tt>ContactSipImpl.getAddress()</tt>.
+     */
+    private final List<String> contacts = new ArrayList<>();
+
+    /**
+     * The contacts by normalized address.
+     */
+    private final Map<String, String> index = new HashMap<>();
+
+    /**
+     * The Content-Type header of the recorded request.
+     */
+    private String contentType;
+
+    /**
+     * The body of the recorded request.
+     */
+    private byte[] body;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        for (int i = 0; i < 320; i++)
+        {
+            // some resources of the list are not in the contact list
+            if (i % 11 != 5)
+                contacts.add("user" + i + "@example.com");
+            // and some contacts have no domain
+            contacts.add("carol" + i);
+        }
+        for (String contact : contacts)
+        {
+            index.putIfAbsent(
+                OperationSetPresenceSipImpl.normalizeContactID(contact),
+                contact);
+        }
+
+        byte[] request;
+
+        try (InputStream in = getClass().getResourceAsStream(NOTIFY))
+        {
+            assertNotNull(in);
+            request = in.readAllBytes();
+        }
+
+        String text = new String(request, StandardCharsets.ISO_8859_1);
+        int bodyStart = text.indexOf("\r\n\r\n");
+
+        for (String header : text.substring(0, bodyStart).split("\r\n"))
+        {
+            if (header.startsWith("Content-Type:"))
+                contentType = header.substring(header.indexOf(':') + 1).trim();
+        }
+        body = Arrays.copyOfRange(request, bodyStart + 4, request.length);
+    }
+
+    /**
+     * Tests that every PIDF document of the recorded request, including the
+     * ones of the nested list, yields the same presence states and status
+     * icon as the DOM based parsing.
+     */
+    @Test
+    public void testPresenceStatesMatchDomParsing()
+        throws Exception
+    {
+        String boundary = null;
+
+        for (String parameter : contentType.split(";"))
+        {
+            if (parameter.trim().startsWith("boundary="))
+            {
+                boundary
+                    = parameter.trim().substring("boundary=".length())
+                        .replace("\"", "");
+            }
+        }
+
+        List<byte[]> parts = PidfDocument.getPidfParts(body, boundary);
+
+        assertEquals(320, parts.size());
+
+        int resolved = 0;
+
+        for (byte[] part : parts)
+        {
+            String xml = new String(part, StandardCharsets.UTF_8);
+            PidfDocument document = PidfDocument.parse(part);
+            List<Object[]> expected = new ArrayList<>();
+            String expectedIcon = getDomPresenceStates(xml, expected);
+            List<Object[]> actual
+                = OperationSetPresenceSipImpl.getPresenceStates(
+                        document,
+                        sipStatusEnum,
+                        this::resolveContactID);
+
+            assertEquals(xml, expectedIcon, document.getStatusIcon());
+            assertEquals(xml, expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++)
+                assertArrayEquals(xml, expected.get(i), actual.get(i));
+            resolved += actual.size();
+        }
+
+        // make sure the recording exercises the states
+        assertTrue(resolved > 250);
+    }
+
+    /**
+     * Tests that the normalized index resolves the identifiers found in
+     * presence documents to the same contacts as the former successive
+     * lookups.
+     */
+    @Test
+    public void testContactIndexMatchesLookups()
+    {
+        String[] ids = {
+            "user1@example.com",
+            "sip:user1@example.com",
+            "sip:user1@example.com:5060",
+            "sip:user1@example.com;transport=udp",
+            "sip:user1@example.com:5061;transport=tls",
+            "sip:user5@example.com",
+            "sip:carol7@example.com",
+            "carol7@example.net",
+            "sip:carol7",
+            "sip:stranger@example.org",
+        };
+
+        for (String id : ids)
+            assertEquals(id, findContact(id), resolveContactID(id));
+    }
+
+    /**
+     * Resolves a contact identifier with the normalized index the way
+     * <tt>OperationSetPresenceSipImpl.resolveContactID</tt> does.
+     *
+     * @param contactID the identifier
+     * @return the contact or <tt>null</tt>
+     */
+    private String resolveContactID(String contactID)
+    {
+        String key = OperationSetPresenceSipImpl.normalizeContactID(contactID);
+        String res = index.get(key);
+
+        if (res == null && key.indexOf('@') > -1)
+            res = index.get(key.substring(0, key.indexOf('@')));
+        return res;
+    }
+
+    /**
+     * Resolves a contact identifier with the successive exact lookups that
+     * <tt>OperationSetPresenceSipImpl.resolveContactID</tt> used to do.
+     *
+     * @param contactID the identifier
+     * @return the contact or <tt>null</tt>
+     */
+    private String findContact(String contactID)
+    {
+        Function<String, String> find
+            = id -> contacts.contains(id) ? id : null;
+        String res = find.apply(contactID);
+
+        if (res == null)
+        {
+            if (contactID.startsWith("sip:"))
+                res = find.apply(contactID.substring(4));
+
+            if (res == null)
+            {
+                int domainBeginIndex = contactID.indexOf('@');
+
+                if (domainBeginIndex > -1)
+                {
+                    res = find.apply(contactID.substring(0, domainBeginIndex));
+                    if ((res == null) && contactID.startsWith("sip:"))
+                    {
+                        res
+                            = find.apply(
+                                contactID.substring(4, domainBeginIndex));
+                    }
+                }
+
+                if (res == null)
+                {
+                    int domainEndIndex = contactID.indexOf(":", 4);
+
+                    if (domainEndIndex < 0)
+                        domainEndIndex = contactID.indexOf(";", 4);
+
+                    if (domainEndIndex > -1)
+                    {
+                        res
+                            = find.apply(
+                                contactID.substring(4, domainEndIndex));
+                    }
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Computes the presence states of a PIDF document the way
+     * <tt>OperationSetPresenceSipImpl.setPidfPresenceStatus</tt> did with a
+     * DOM.
+     *
+     * @param presenceDoc the PIDF document
+     * @param newPresenceStates the list to add the <contact, priority,
+     * status> to, ordered by priority
+     * @return the status icon of the person
+     */
+    private String getDomPresenceStates(
+            String presenceDoc,
+            List<Object[]> newPresenceStates)
+        throws Exception
+    {
+        Document doc = XMLUtils.createDocument(presenceDoc);
+        NodeList presList
+            = doc.getElementsByTagNameNS(PIDF_NS, "presence");
+
+        if (presList.getLength() == 0)
+            presList = doc.getElementsByTagNameNS(ANY_NS, "presence");
+
+        Element presence = (Element) presList.item(0);
+        PresenceStatus personStatus = null;
+        String personStatusIcon = null;
+        NodeList personList
+            = presence.getElementsByTagNameNS(ANY_NS, "person");
+
+        if (personList.getLength() > 0)
+        {
+            Element person = (Element) personList.item(0);
+            NodeList activityList
+                = person.getElementsByTagNameNS(ANY_NS, "activities");
+
+            for (int i = 0;
+                    i < activityList.getLength() && personStatus == null;
+                    i++)
+            {
+                NodeList statusList = activityList.item(i).getChildNodes();
+
+                for (int j = 0; j < statusList.getLength(); j++)
+                {
+                    Node statusNode = statusList.item(j);
+
+                    if (statusNode.getNodeType() != Node.ELEMENT_NODE)
+                        continue;
+
+                    String statusname = statusNode.getLocalName();
+
+                    if (statusname.equals("away"))
+                        personStatus = getStatus(SipStatusEnum.AWAY);
+                    else if (statusname.equals("busy"))
+                        personStatus = getStatus(SipStatusEnum.BUSY);
+                    else if (statusname.equals("on-the-phone"))
+                        personStatus = getStatus(SipStatusEnum.ON_THE_PHONE);
+                    if (personStatus != null)
+                        break;
+                }
+            }
+
+            NodeList statusIconList
+                = person.getElementsByTagNameNS(ANY_NS, "status-icon");
+
+            if (statusIconList.getLength() > 0)
+            {
+                String content
+                    = getTextContent((Element) statusIconList.item(0));
+
+                if (content.trim().length() != 0)
+                    personStatusIcon = content;
+            }
+        }
+
+        NodeList presNoteList = getPidfChilds(presence, "note");
+
+        if (presNoteList.getLength() >= 1)
+        {
+            String state
+                = getTextContent(
+                    (Element) presNoteList.item(
+                        presNoteList.getLength() - 1));
+
+            switch (state.toLowerCase())
+            {
+                case "ready":
+                case "available":
+                    personStatus = getStatus(SipStatusEnum.ONLINE);
+                    break;
+                case "ringing":
+                case "on the phone":
+                case "on hold":
+                    personStatus = getStatus(SipStatusEnum.ON_THE_PHONE);
+                    break;
+                case "unavailable":
+                    personStatus = getStatus(SipStatusEnum.OFFLINE);
+                    break;
+            }
+        }
+
+        NodeList tupleList = getPidfChilds(presence, "tuple");
+
+        for (int i = 0; i < tupleList.getLength(); i++)
+        {
+            Element tuple = (Element) tupleList.item(i);
+            NodeList contactList = getPidfChilds(tuple, "contact");
+            List<Object[]> sipcontact = new Vector<>();
+
+            if (contactList.getLength() == 0)
+            {
+                String contactID = presence.getAttribute("entity");
+
+                if (contactID.startsWith("pres:"))
+                    contactID = contactID.substring("pres:".length());
+
+                String tmpContact = findContact(contactID);
+
+                if (tmpContact != null)
+                    sipcontact.add(new Object[] { tmpContact, 0f });
+            }
+            else
+            {
+                for (int j = 0; j < contactList.getLength(); j++)
+                {
+                    Element contact = (Element) contactList.item(j);
+                    String contactID = getTextContent(contact);
+
+                    if (contactID.startsWith("pres:"))
+                        contactID = contactID.substring("pres:".length());
+
+                    String tmpContact = findContact(contactID);
+
+                    if (tmpContact == null)
+                        continue;
+
+                    String prioStr = contact.getAttribute("priority");
+                    float prio;
+
+                    try
+                    {
+                        prio
+                            = (prioStr.length() == 0)
+                                ? 0f
+                                : Float.parseFloat(prioStr);
+                    }
+                    catch (NumberFormatException e)
+                    {
+                        prio = 0f;
+                    }
+                    prio = Math.min(Math.max(prio, 0f), 1f);
+
+                    Object[] tab = new Object[] { tmpContact, prio };
+                    boolean contactAlreadyListed = false;
+
+                    for (int k = 0; k < sipcontact.size(); k++)
+                    {
+                        Object[] tmp = sipcontact.get(k);
+
+                        if (tmp[0].equals(tmpContact))
+                        {
+                            contactAlreadyListed = true;
+                            if ((Float) tmp[1] < prio)
+                            {
+                                sipcontact.remove(k);
+                                sipcontact.add(tab);
+                            }
+                            break;
+                        }
+                    }
+                    if (!contactAlreadyListed)
+                        sipcontact.add(tab);
+                }
+            }
+            if (sipcontact.isEmpty())
+                continue;
+
+            NodeList statusList = getPidfChilds(tuple, "status");
+            Element status
+                = (Element) statusList.item(statusList.getLength() - 1);
+            NodeList basicList = getPidfChilds(status, "basic");
+            Element basic
+                = (Element) basicList.item(basicList.getLength() - 1);
+            NodeList noteList = getPidfChilds(tuple, "note");
+            boolean changed = false;
+
+            for (int k = 0; k < noteList.getLength() && !changed; k++)
+            {
+                String state = getTextContent((Element) noteList.item(k));
+                Iterator<PresenceStatus> states
+                    = sipStatusEnum.getSupportedStatusSet();
+
+                while (states.hasNext())
+                {
+                    PresenceStatus current = states.next();
+
+                    if (current.getStatusName().equalsIgnoreCase(state))
+                    {
+                        changed = true;
+                        OperationSetPresenceSipImpl.setStatusForContacts(
+                            current, sipcontact, newPresenceStates);
+                        break;
+                    }
+                }
+            }
+
+            if (!changed)
+            {
+                String text = getTextContent(basic);
+
+                if (text.equalsIgnoreCase("open"))
+                {
+                    OperationSetPresenceSipImpl.setStatusForContacts(
+                        (personStatus != null)
+                            ? personStatus
+                            : getStatus(SipStatusEnum.ONLINE),
+                        sipcontact,
+                        newPresenceStates);
+                }
+                else if (text.equalsIgnoreCase("closed"))
+                {
+                    OperationSetPresenceSipImpl.setStatusForContacts(
+                        getStatus(SipStatusEnum.OFFLINE),
+                        sipcontact,
+                        newPresenceStates);
+                }
+            }
+        }
+        return personStatusIcon;
+    }
+
+    /**
+     * Returns a status by name.
+     *
+     * @param name the name of the status
+     * @return the status
+     */
+    private PresenceStatus getStatus(String name)
+    {
+        return sipStatusEnum.getStatus(name);
+    }
+
+    /**
+     * Returns the text of an element or an empty string.
+     *
+     * @param element the element
+     * @return the text
+     */
+    private static String getTextContent(Element element)
+    {
+        String res = XMLUtils.getText(element);
+
+        return (res == null) ? "" : res;
+    }
+
+    /**
+     * Returns the descendants of an element with a name in the PIDF namespace
+     * or, if there are none, in any namespace.
+     *
+     * @param element the element
+     * @param childName the name of the descendants
+     * @return the descendants
+     */
+    private static NodeList getPidfChilds(Element element, String childName)
+    {
+        NodeList res = element.getElementsByTagNameNS(PIDF_NS, childName);
+
+        if (res.getLength() == 0)
+            res = element.getElementsByTagNameNS(ANY_NS, childName);
+        return res;
+    }
+}
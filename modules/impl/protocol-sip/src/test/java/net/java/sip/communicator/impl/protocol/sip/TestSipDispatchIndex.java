@@ -0,0 +1,264 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import javax.sip.message.*;
+
+import org.junit.*;
+
+/**
+ * Checks the routes of <tt>SipDispatchIndex</tt> through
+ * <tt>SipStackSharing.findTargetFor</tt> and compares its choices with the
+ * linear dispatch algorithm it replaced.
+ */
+public class TestSipDispatchIndex
+{
+    private SipDispatchFixture fixture;
+
+    @Before
+    public void setUp()
+    {
+        fixture = new SipDispatchFixture();
+    }
+
+    private ProtocolProviderServiceSipImpl findTarget(Request request)
+    {
+        ProtocolProviderServiceSipImpl target
+            = SipStackSharing.findTargetFor(fixture.index(), request);
+
+        assertSame(
+            SipDispatchFixture.findTargetLinear(fixture.providers, request),
+            target);
+        return target;
+    }
+
+    @Test
+    public void testUserRoute()
+        throws Exception
+    {
+        fixture.registrar("alice", "a.example.com", true);
+        ProtocolProviderServiceSipImpl bob
+            = fixture.registrar("bob", "a.example.com", true);
+
+        assertSame(bob, findTarget(fixture.request("bob", null, "x.org")));
+    }
+
+    @Test
+    public void testCustomParamRoute()
+        throws Exception
+    {
+        fixture.registrar("alice", "a.example.com", true);
+        ProtocolProviderServiceSipImpl b
+            = fixture.registrar("alice", "b.example.com", true);
+        fixture.registrarless("alice", "b.example.com");
+
+        assertSame(
+            b,
+            findTarget(
+                fixture.request("alice", "b_example_com", "a.example.com")));
+    }
+
+    @Test
+    public void testHostRoute()
+        throws Exception
+    {
+        fixture.registrar("alice", "a.example.com", true);
+        ProtocolProviderServiceSipImpl b
+            = fixture.registrar("alice", "b.example.com", true);
+
+        assertSame(
+            b, findTarget(fixture.request("alice", null, "b.example.com")));
+        assertSame(
+            b,
+            findTarget(
+                fixture.request("alice", "unknown_com", "b.example.com")));
+    }
+
+    @Test
+    public void testDynamicHostFallback()
+        throws Exception
+    {
+        fixture.registrar("alice", "a.example.com", true);
+        ProtocolProviderServiceSipImpl local
+            = fixture.registrarless("alice", "192.168.1.2");
+
+        assertSame(
+            local, findTarget(fixture.request("alice", null, "192.168.1.2")));
+    }
+
+    @Test
+    public void testFirstMatchingCandidateWinsAcrossRoutes()
+        throws Exception
+    {
+        ProtocolProviderServiceSipImpl local
+            = fixture.registrarless("alice", "example.com");
+        fixture.registrar("alice", "example.com", true);
+
+        assertSame(
+            local, findTarget(fixture.request("alice", null, "example.com")));
+    }
+
+    @Test
+    public void testAmbiguousUserFallsBackToFirstCandidate()
+        throws Exception
+    {
+        ProtocolProviderServiceSipImpl a
+            = fixture.registrar("alice", "a.example.com", true);
+        fixture.registrar("alice", "b.example.com", true);
+
+        assertSame(a, findTarget(fixture.request("alice", null, "x.org")));
+    }
+
+    @Test
+    public void testConnectionFilter()
+        throws Exception
+    {
+        fixture.registrar("alice", "a.example.com", false);
+        ProtocolProviderServiceSipImpl b
+            = fixture.registrar("alice", "b.example.com", true);
+
+        assertSame(
+            b, findTarget(fixture.request("alice", null, "a.example.com")));
+    }
+
+    @Test
+    public void testUnknownUserFallsBackToAnyAccount()
+        throws Exception
+    {
+        fixture.registrar("alice", "a.example.com", false);
+        ProtocolProviderServiceSipImpl bob
+            = fixture.registrar("bob", "b.example.com", true);
+
+        assertSame(bob, findTarget(fixture.request("carol", null, "x.org")));
+        assertSame(bob, findTarget(fixture.request(null, null, "x.org")));
+    }
+
+    @Test
+    public void testNoAcceptingAccount()
+        throws Exception
+    {
+        fixture.registrar("alice", "a.example.com", false);
+
+        assertNull(findTarget(fixture.request("alice", null, "x.org")));
+    }
+
+    @Test
+    public void testAddAndRemove()
+        throws Exception
+    {
+        ProtocolProviderServiceSipImpl a
+            = fixture.registrar("alice", "a.example.com", true);
+        ProtocolProviderServiceSipImpl b
+            = fixture.registrar("alice", "b.example.com", true);
+        SipDispatchIndex index = fixture.index();
+
+        assertSame(index, index.add(a));
+        SipDispatchIndex removed = index.remove(a);
+        assertEquals(2, index.size());
+        assertEquals(Collections.singletonList(b), removed.getProviders());
+        assertSame(removed, removed.remove(a));
+        assertSame(SipDispatchIndex.EMPTY, removed.remove(b));
+        assertNull(
+            SipStackSharing.findTargetFor(
+                SipDispatchIndex.EMPTY,
+                fixture.request("alice", null, "a.example.com")));
+
+        SipDispatchIndex.UserRoute route = index.getRoute("alice");
+        assertEquals(Arrays.asList(a, b), route.getCandidates());
+        assertEquals(
+            Collections.singletonList(b), route.getByHost("b.example.com"));
+        assertEquals(
+            Collections.singletonList(a),
+            route.getByCustomParam("a_example_com"));
+        assertTrue(route.getDynamicHost().isEmpty());
+        assertNull(index.getRoute("bob"));
+    }
+
+    @Test
+    public void testAddedBeforeRegistrarConnection()
+        throws Exception
+    {
+        AtomicBoolean initialized = new AtomicBoolean();
+        ProtocolProviderServiceSipImpl a
+            = fixture.registrar("alice", "a.example.com", true);
+        ProtocolProviderServiceSipImpl b
+            = fixture.registrar("alice", "b.example.com", true, initialized);
+        SipDispatchIndex index = fixture.index();
+
+        assertEquals(
+            Collections.singletonList(b),
+            index.getRoute("alice").getDynamicHost());
+
+        initialized.set(true);
+
+        Request request
+            = fixture.request("alice", "b_example_com", "a.example.com");
+
+        // the routes computed without the registrar connection are stale...
+        assertSame(a, SipStackSharing.findTargetFor(index, request));
+
+        // ...until the provider is reindexed
+        SipDispatchIndex reindexed = index.reindex();
+        assertEquals(index.getProviders(), reindexed.getProviders());
+        assertTrue(reindexed.getRoute("alice").getDynamicHost().isEmpty());
+        assertSame(b, findTarget(request));
+        assertSame(b, SipStackSharing.findTargetFor(reindexed, request));
+        assertSame(SipDispatchIndex.EMPTY, SipDispatchIndex.EMPTY.reindex());
+    }
+
+    @Test
+    public void testMatchesLinearDispatch()
+        throws Exception
+    {
+        String[] users = { "alice", "bob", "carol" };
+        String[] hosts = { "a.example.com", "b.example.com", "10.0.0.3" };
+        Random random = new Random(4575);
+
+        for (int round = 0; round < 50; round++)
+        {
+            fixture = new SipDispatchFixture();
+            for (int i = 0, count = 1 + random.nextInt(12); i < count; i++)
+            {
+                String user = users[random.nextInt(users.length)];
+                String host = hosts[random.nextInt(hosts.length)];
+
+                if (random.nextInt(4) == 0)
+                    fixture.registrarless(user, host);
+                else
+                    fixture.registrar(user, host, random.nextInt(5) != 0);
+            }
+            for (int i = 0; i < 20; i++)
+            {
+                String host = hosts[random.nextInt(hosts.length)];
+
+                findTarget(
+                    fixture.request(
+                        (random.nextInt(6) == 0)
+                            ? "dave"
+                            : users[random.nextInt(users.length)],
+                        random.nextBoolean() ? null : host.replace('.', '_'),
+                        hosts[random.nextInt(hosts.length)]));
+            }
+        }
+    }
+}
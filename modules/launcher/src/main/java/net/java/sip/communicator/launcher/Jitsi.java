@@ -19,8 +19,11 @@
 
 import java.io.*;
 import java.lang.reflect.*;
+import java.net.*;
 import java.util.*;
 import net.java.sip.communicator.launchutils.*;
+import net.java.sip.communicator.util.activatorindex.*;
+import net.java.sip.communicator.util.osgi.*;
 import org.jitsi.impl.osgi.framework.*;
 import org.jitsi.impl.osgi.framework.launch.*;
 import org.jitsi.osgi.framework.*;
@@ -117,15 +120,13 @@ public static void mainWithCl(String[] args)
 
     private static Framework startCustomOsgi() throws BundleException
     {
+        long launched = System.currentTimeMillis();
         var options = Map.of(Constants.FRAMEWORK_BEGINNING_STARTLEVEL, "3");
         Framework fw = new FrameworkImpl(options, Jitsi.class.getClassLoader());
         fw.init();
         var bundleContext = fw.getBundleContext();
-        var reflections = new Reflections(new ConfigurationBuilder()
-            .addClassLoaders(Jitsi.class.getClassLoader())
-            .forPackages("org.jitsi", "net.java.sip"));
 
-        for (final var activator : reflections.getSubTypesOf(BundleActivator.class))
+        for (final var activator : findActivators())
         {
             if ((activator.getModifiers() & Modifier.ABSTRACT) == Modifier.ABSTRACT)
             {
@@ -142,9 +143,113 @@ private static Framework startCustomOsgi() throws BundleException
 
         new SplashScreenUpdater(bundleContext.getBundles().length, bundleContext);
         fw.start();
+        logStartupTrace(launched);
         return fw;
     }
 
+    /**
+     * Returns the bundle activators listed in the activator indexes written
+     * at build time, and those of the class path roots built without an
+     * index, e.g. libjitsi or an IDE run which skipped annotation processing.
+     * Only the roots without an index are scanned.
+     *
+     * @return the activators to install
+     */
+    private static Collection<Class<? extends BundleActivator>>
+        findActivators()
+    {
+        Logger logger = LoggerFactory.getLogger(Jitsi.class);
+        ClassLoader cl = Jitsi.class.getClassLoader();
+        Set<Class<? extends BundleActivator>> activators
+            = new LinkedHashSet<>();
+        Set<String> indexedRoots = Collections.emptySet();
+
+        try
+        {
+            for (String name : ActivatorIndex.load(cl))
+            {
+                try
+                {
+                    activators.add(Class.forName(name, false, cl)
+                        .asSubclass(BundleActivator.class));
+                }
+                catch (ClassNotFoundException | ClassCastException e)
+                {
+                    logger.warn("Skipping indexed activator {}: {}", name, e.toString());
+                }
+            }
+            indexedRoots = ActivatorIndex.findIndexedRoots(cl);
+        }
+        catch (IOException e)
+        {
+            logger.warn("Failed to read the activator index", e);
+        }
+
+        Map<String, URL> unindexedRoots = new LinkedHashMap<>();
+        for (String pkg : new String[] { "org.jitsi", "net.java.sip" })
+        {
+            for (URL root : ClasspathHelper.forPackage(pkg, cl))
+            {
+                if (!indexedRoots.contains(root.toExternalForm()))
+                {
+                    unindexedRoots.putIfAbsent(root.toExternalForm(), root);
+                }
+            }
+        }
+
+        logger.info("Found {} activators in {} indexes, scanning {} roots without index: {}",
+            activators.size(), indexedRoots.size(), unindexedRoots.size(),
+            unindexedRoots.keySet());
+        if (!unindexedRoots.isEmpty())
+        {
+            var reflections = new Reflections(new ConfigurationBuilder()
+                .addClassLoaders(cl)
+                .setUrls(unindexedRoots.values())
+                .filterInputsBy(new FilterBuilder()
+                    .includePackage("org.jitsi")
+                    .includePackage("net.java.sip")));
+            activators.addAll(reflections.getSubTypesOf(BundleActivator.class));
+        }
+
+        return activators;
+    }
+
+    /**
+     * Logs the wait and start times of the activators once the startup
+     * settled, i.e. no activator is starting and none finished for a second.
+     *
+     * @param launched the time the framework was created
+     */
+    private static void logStartupTrace(long launched)
+    {
+        Thread t = new Thread(() ->
+        {
+            Logger logger = LoggerFactory.getLogger(Jitsi.class);
+            try
+            {
+                int count;
+                do
+                {
+                    count = StartupTrace.getEntries().size();
+                    StartupTrace.awaitIdle(60_000);
+                    Thread.sleep(1000);
+                }
+                while (count != StartupTrace.getEntries().size());
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+
+            logger.info("Started {} activators in {} ms:{}",
+                StartupTrace.getEntries().size(),
+                System.currentTimeMillis() - launched,
+                StartupTrace.format());
+        }, "Startup trace");
+        t.setDaemon(true);
+        t.start();
+    }
+
     private static void init()
     {
         setSystemProperties();
@@ -18,6 +18,8 @@
 package net.java.sip.communicator.util.osgi;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.util.stream.*;
 import org.osgi.framework.*;
 import org.osgi.util.tracker.*;
@@ -26,10 +28,34 @@
 /**
  * Bundle activator that will start the bundle when the requested dependent
  * services are available.
+ * <p>
+ * The bundle is started by the thread that registered the last of its
+ * services. When {@link #PNAME_PARALLEL_START} is set to <tt>true</tt>, it is
+ * started on a shared pool instead, so that activators whose dependencies are
+ * satisfied start concurrently rather than nested in that thread. The wait
+ * and start times are recorded in {@link StartupTrace}.
+ * <p>
+ * Stopping the bundle waits for a <tt>startWithServices</tt> in progress to
+ * return, and skips one that did not begin yet. A <tt>startWithServices</tt>
+ * which fails stops the bundle again, or fails <tt>start</tt> if it ran
+ * within it, so that the framework does not consider the bundle active.
  */
 public abstract class DependentActivator
     implements BundleActivator, ServiceTrackerCustomizer<Object, Object>
 {
+    /**
+     * The name of the system property which enables starting the activators
+     * whose dependencies are satisfied concurrently. Disabled by default.
+     */
+    public static final String PNAME_PARALLEL_START
+        = "net.java.sip.communicator.util.osgi.PARALLEL_START";
+
+    /**
+     * The pool which runs <tt>startWithServices</tt> when
+     * {@link #PNAME_PARALLEL_START} is enabled.
+     */
+    private static final Executor starter = createStarter();
+
     private static final Map<BundleActivator, Set<Class<?>>> openTrackers
         = Collections.synchronizedMap(new HashMap<>());
 
@@ -38,9 +64,69 @@
     private final Map<Class<?>, ServiceTracker<?, ?>>
         dependentServices = new HashMap<>();
 
-    private final Set<Object> runningServices = new HashSet<>();
+    private final Set<Object> runningServices = ConcurrentHashMap.newKeySet();
 
-    private BundleContext bundleContext;
+    /**
+     * Whether this activator is started on {@link #starter}, read from
+     * {@link #PNAME_PARALLEL_START} when it is created.
+     */
+    private final boolean parallelStart
+        = Boolean.parseBoolean(
+            System.getProperty(PNAME_PARALLEL_START, "false"));
+
+    /**
+     * Set once all dependencies are available, so that the bundle is started
+     * only once even if services are registered concurrently.
+     */
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    private volatile BundleContext bundleContext;
+
+    /**
+     * The value of <tt>System.nanoTime()</tt> when the bundle was asked to
+     * start.
+     */
+    private volatile long startRequested;
+
+    /**
+     * Whether the bundle was stopped, an asynchronous start that did not run
+     * yet is then skipped. Guarded by {@link #startLock}.
+     */
+    private boolean stopped;
+
+    /**
+     * Held while <tt>startWithServices</tt> runs, so that stopping the bundle
+     * waits for it.
+     */
+    private final Object startLock = new Object();
+
+    /**
+     * The thread running {@link #start(BundleContext)}, a failure of
+     * <tt>startWithServices</tt> on that thread fails <tt>start</tt>.
+     */
+    private volatile Thread startingThread;
+
+    /**
+     * The failure of a <tt>startWithServices</tt> which ran within
+     * {@link #start(BundleContext)}. Only accessed by the thread running
+     * <tt>start</tt>.
+     */
+    private Exception startFailure;
+
+    /**
+     * Waits for a start in progress when the bundle is stopping. The event is
+     * delivered before <tt>stop</tt> is called, which subclasses override
+     * without always calling this class, to release what
+     * <tt>startWithServices</tt> created.
+     */
+    private final SynchronousBundleListener stopListener = event ->
+    {
+        if (event.getType() == BundleEvent.STOPPING
+            && event.getBundle().equals(bundleContext.getBundle()))
+        {
+            cancelStart();
+        }
+    };
 
     protected DependentActivator(Iterable<Class<?>> dependentServices)
     {
@@ -65,26 +151,91 @@ protected DependentActivator(Class<?>... dependentServices)
      */
     @Override
     public final void start(BundleContext bundleContext)
+        throws Exception
     {
         logger.info(
             "Starting, setting up service tracker for {}  dependencies",
                 + dependentServices.size());
         this.bundleContext = bundleContext;
-        for (Map.Entry<Class<?>, ServiceTracker<?, ?>> ds
-            : dependentServices.entrySet())
+        startRequested = System.nanoTime();
+        synchronized (startLock)
+        {
+            stopped = false;
+        }
+        startFailure = null;
+        started.set(false);
+        bundleContext.addBundleListener(stopListener);
+
+        startingThread = Thread.currentThread();
+        try
+        {
+            for (Map.Entry<Class<?>, ServiceTracker<?, ?>> ds
+                : dependentServices.entrySet())
+            {
+                ServiceTracker<?, ?> st =
+                    new ServiceTracker<>(bundleContext, ds.getKey().getName(),
+                        this);
+                st.open();
+                ds.setValue(st);
+            }
+        }
+        finally
+        {
+            startingThread = null;
+        }
+
+        // not under startLock, which an asynchronous start holds
+        Exception failure = startFailure;
+
+        startFailure = null;
+        if (failure != null)
         {
-            ServiceTracker<?, ?> st =
-                new ServiceTracker<>(bundleContext, ds.getKey().getName(),
-                    this);
-            st.open();
-            ds.setValue(st);
+            closeTrackers();
+            throw failure;
         }
     }
 
     @Override
     public void stop(BundleContext context) throws Exception
     {
-        dependentServices.values().forEach(ServiceTracker::close);
+        cancelStart();
+        closeTrackers();
+    }
+
+    /**
+     * Waits for a <tt>startWithServices</tt> in progress to return and
+     * prevents one that did not begin yet from running.
+     */
+    private void cancelStart()
+    {
+        synchronized (startLock)
+        {
+            stopped = true;
+        }
+    }
+
+    /**
+     * Stops tracking the services and listening for the bundle to stop.
+     */
+    private void closeTrackers()
+    {
+        BundleContext bundleContext = this.bundleContext;
+
+        if (bundleContext != null)
+        {
+            try
+            {
+                bundleContext.removeBundleListener(stopListener);
+            }
+            catch (IllegalStateException e)
+            {
+                // the context is no longer valid, nothing to remove
+            }
+        }
+        dependentServices.values().stream()
+            .filter(Objects::nonNull)
+            .forEach(ServiceTracker::close);
+        runningServices.clear();
     }
 
     @Override
@@ -94,17 +245,20 @@ public Object addingService(ServiceReference<Object> reference)
         runningServices.add(service);
         if (runningServices.size() == dependentServices.size())
         {
-            openTrackers.remove(this);
-            logger.debug("Got service {}, starting now",
-                service.getClass().getSimpleName()
-            );
-            try
+            if (started.compareAndSet(false, true))
             {
-                startWithServices(bundleContext);
-            }
-            catch (Exception e)
-            {
-                logger.error("Failed to start bundle with services", e);
+                openTrackers.remove(this);
+                logger.debug("Got service {}, starting now",
+                    service.getClass().getSimpleName()
+                );
+
+                long waited = System.nanoTime() - startRequested;
+
+                StartupTrace.begin();
+                if (parallelStart)
+                    starter.execute(() -> startNow(waited));
+                else
+                    startNow(waited);
             }
         }
         else if (logger.isTraceEnabled())
@@ -144,6 +298,104 @@ else if (logger.isTraceEnabled())
         return service;
     }
 
+    /**
+     * Calls {@link #startWithServices(BundleContext)} and records its timing.
+     *
+     * @param waited the time the bundle waited for its services, in
+     * nanoseconds
+     */
+    private void startNow(long waited)
+    {
+        long begin = System.nanoTime();
+        Exception failure = null;
+
+        synchronized (startLock)
+        {
+            try
+            {
+                if (!stopped)
+                    startWithServices(bundleContext);
+            }
+            catch (Exception e)
+            {
+                failure = e;
+                logger.error("Failed to start bundle with services", e);
+                if (Thread.currentThread() == startingThread)
+                    startFailure = e;
+            }
+            finally
+            {
+                long took = System.nanoTime() - begin;
+
+                StartupTrace.end(
+                    getClass().getName(), waited, took, failure != null);
+                logger.debug(
+                    "Started in {} ms after waiting {} ms for services",
+                    TimeUnit.NANOSECONDS.toMillis(took),
+                    TimeUnit.NANOSECONDS.toMillis(waited));
+            }
+        }
+
+        // start() rethrows a failure on its own thread, any other one stops
+        // the bundle, which start() can no longer report
+        if (failure != null && Thread.currentThread() != startingThread)
+            stopBundle();
+    }
+
+    /**
+     * Stops the bundle after <tt>startWithServices</tt> failed. The bundle is
+     * stopped on {@link #starter}, the thread that registered the last
+     * service may hold locks of the framework.
+     */
+    private void stopBundle()
+    {
+        Bundle bundle = bundleContext.getBundle();
+
+        starter.execute(() ->
+        {
+            try
+            {
+                bundle.stop();
+            }
+            catch (BundleException | IllegalStateException e)
+            {
+                logger.error(
+                    "Failed to stop bundle {} after it failed to start",
+                    bundle.getSymbolicName(), e);
+            }
+        });
+    }
+
+    /**
+     * Creates the pool which starts the activators whose dependencies are
+     * satisfied. Its threads are daemons and time out when the startup is
+     * over.
+     *
+     * @return the pool
+     */
+    private static Executor createStarter()
+    {
+        AtomicInteger count = new AtomicInteger();
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        ThreadPoolExecutor pool
+            = new ThreadPoolExecutor(
+                threads, threads,
+                5, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r ->
+                {
+                    Thread t
+                        = new Thread(
+                            r, "Activator starter-" + count.incrementAndGet());
+
+                    t.setDaemon(true);
+                    return t;
+                });
+
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
     @SuppressWarnings("unchecked")
     protected <T> T getService(Class<T> serviceClass)
     {
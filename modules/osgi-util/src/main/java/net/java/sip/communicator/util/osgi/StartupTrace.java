@@ -0,0 +1,195 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.util.osgi;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Records how long each {@link DependentActivator} waited for its services
+ * and how long its <tt>startWithServices</tt> took, so that the launcher can
+ * report where the startup time went.
+ */
+public final class StartupTrace
+{
+    /**
+     * The timings recorded so far, in the order the activators finished.
+     */
+    private static final List<Entry> entries = new CopyOnWriteArrayList<>();
+
+    /**
+     * The number of activators whose dependencies are satisfied but which
+     * have not finished starting yet.
+     */
+    private static int pending;
+
+    /**
+     * The lock guarding {@link #pending}.
+     */
+    private static final Object lock = new Object();
+
+    private StartupTrace()
+    {
+    }
+
+    /**
+     * Notes that an activator is about to start.
+     */
+    static void begin()
+    {
+        synchronized (lock)
+        {
+            pending++;
+        }
+    }
+
+    /**
+     * Records the timing of an activator which finished starting.
+     *
+     * @param activator the class name of the activator
+     * @param waitNanos the time from <tt>start</tt> until all the services it
+     * depends on were available
+     * @param startNanos the wall time of <tt>startWithServices</tt>
+     * @param failed whether <tt>startWithServices</tt> threw
+     */
+    static void end(
+        String activator, long waitNanos, long startNanos, boolean failed)
+    {
+        entries.add(
+            new Entry(
+                activator,
+                TimeUnit.NANOSECONDS.toMillis(waitNanos),
+                TimeUnit.NANOSECONDS.toMillis(startNanos),
+                Thread.currentThread().getName(),
+                failed));
+
+        synchronized (lock)
+        {
+            pending--;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until no activator is in the middle of starting.
+     *
+     * @param timeout the maximum time to wait in milliseconds
+     * @return <tt>true</tt> if all started activators finished,
+     * <tt>false</tt> if the timeout expired first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public static boolean awaitIdle(long timeout)
+        throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + timeout;
+
+        synchronized (lock)
+        {
+            while (pending > 0)
+            {
+                long left = deadline - System.currentTimeMillis();
+
+                if (left <= 0)
+                    return false;
+                lock.wait(left);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the timings recorded so far.
+     *
+     * @return the recorded timings, in the order the activators finished
+     */
+    public static List<Entry> getEntries()
+    {
+        return Collections.unmodifiableList(new ArrayList<>(entries));
+    }
+
+    /**
+     * Formats the recorded timings, the slowest activators first.
+     *
+     * @return a multi-line report of the recorded timings
+     */
+    public static String format()
+    {
+        List<Entry> sorted = new ArrayList<>(entries);
+
+        sorted.sort(
+            Comparator.comparingLong((Entry e) -> e.startMillis).reversed());
+
+        StringBuilder report = new StringBuilder();
+
+        for (Entry e : sorted)
+        {
+            report.append(String.format(
+                "%n\t%6d ms start %6d ms wait  %s [%s]%s",
+                e.startMillis, e.waitMillis, e.activator, e.thread,
+                e.failed ? " FAILED" : ""));
+        }
+
+        return report.toString();
+    }
+
+    /**
+     * The timing of one activator.
+     */
+    public static final class Entry
+    {
+        /**
+         * The class name of the activator.
+         */
+        public final String activator;
+
+        /**
+         * The time the activator waited for its services, in milliseconds.
+         */
+        public final long waitMillis;
+
+        /**
+         * The wall time of <tt>startWithServices</tt>, in milliseconds.
+         */
+        public final long startMillis;
+
+        /**
+         * The name of the thread which started the activator.
+         */
+        public final String thread;
+
+        /**
+         * Whether <tt>startWithServices</tt> threw.
+         */
+        public final boolean failed;
+
+        private Entry(
+            String activator,
+            long waitMillis,
+            long startMillis,
+            String thread,
+            boolean failed)
+        {
+            this.activator = activator;
+            this.waitMillis = waitMillis;
+            this.startMillis = startMillis;
+            this.thread = thread;
+            this.failed = failed;
+        }
+    }
+}
@@ -0,0 +1,467 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.util.osgi;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.*;
+import org.osgi.framework.*;
+
+/**
+ * Tests that <tt>DependentActivator</tt> starts the activators whose
+ * services are available in order by default and concurrently when parallel
+ * start is enabled, and that stopping or failing bundles do not race their
+ * start.
+ */
+public class TestDependentActivator
+{
+    private static final long TIMEOUT = 5;
+
+    /**
+     * A service the test activators depend on.
+     */
+    public interface ServiceA
+    {
+    }
+
+    /**
+     * Another service the test activators depend on.
+     */
+    public interface ServiceB
+    {
+    }
+
+    private Framework framework;
+
+    @Before
+    public void setUp()
+    {
+        framework = new Framework();
+
+        // the activators of a test start in parallel unless it disables it
+        // before creating them
+        System.setProperty(DependentActivator.PNAME_PARALLEL_START, "true");
+    }
+
+    @After
+    public void tearDown()
+    {
+        System.clearProperty(DependentActivator.PNAME_PARALLEL_START);
+    }
+
+    @Test
+    public void testSequentialStartFollowsRegistrationOrder()
+        throws Exception
+    {
+        System.clearProperty(DependentActivator.PNAME_PARALLEL_START);
+
+        Thread testThread = Thread.currentThread();
+        List<String> starts = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+        Activator second = new Activator(ctx ->
+        {
+            starts.add("second");
+            threads.add(Thread.currentThread());
+        }, ServiceA.class, ServiceB.class);
+        Activator first = new Activator(ctx ->
+        {
+            starts.add("first");
+            threads.add(Thread.currentThread());
+        }, ServiceA.class);
+
+        second.start(framework.context);
+        first.start(framework.context);
+        assertTrue(starts.isEmpty());
+
+        // each activator starts before the registration of its last service
+        // returns, on the registering thread
+        framework.register(ServiceA.class);
+        assertEquals(Arrays.asList("first"), starts);
+
+        framework.register(ServiceB.class);
+        assertEquals(Arrays.asList("first", "second"), starts);
+        assertEquals(Arrays.asList(testThread, testThread), threads);
+    }
+
+    @Test
+    public void testSequentialStartWithinStartFailsStart()
+        throws Exception
+    {
+        System.clearProperty(DependentActivator.PNAME_PARALLEL_START);
+
+        Exception expected = new Exception("expected");
+        Activator activator = new Activator(ctx ->
+        {
+            throw expected;
+        }, ServiceA.class);
+
+        framework.register(ServiceA.class);
+        try
+        {
+            activator.start(framework.context);
+            fail("start did not fail");
+        }
+        catch (Exception e)
+        {
+            assertSame(expected, e);
+        }
+
+        // start reports the failure, the bundle is not stopped in addition
+        assertFalse(framework.bundleStopped.await(100, TimeUnit.MILLISECONDS));
+        assertTrue(framework.bundleListeners.isEmpty());
+    }
+
+    @Test
+    public void testSequentialFailedStartStopsBundle()
+        throws Exception
+    {
+        System.clearProperty(DependentActivator.PNAME_PARALLEL_START);
+
+        new Activator(ctx ->
+        {
+            throw new Exception("expected");
+        }, ServiceA.class).start(framework.context);
+
+        // started by the registration, after start returned
+        framework.register(ServiceA.class);
+
+        assertTrue(framework.bundleStopped.await(TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSatisfiedActivatorsStartConcurrently()
+        throws Exception
+    {
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        CountDownLatch started = new CountDownLatch(2);
+
+        framework.register(ServiceA.class);
+        for (int i = 0; i < 2; i++)
+        {
+            new Activator(ctx ->
+            {
+                // only passes if both activators start at the same time
+                barrier.await(TIMEOUT, TimeUnit.SECONDS);
+                started.countDown();
+            }, ServiceA.class).start(framework.context);
+        }
+
+        assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testStopWaitsForStart()
+        throws Exception
+    {
+        assertStopWaitsForStart(a -> a.stop(framework.context));
+    }
+
+    @Test
+    public void testStoppingEventWaitsForStart()
+        throws Exception
+    {
+        assertStopWaitsForStart(a -> framework.fireStopping());
+    }
+
+    /**
+     * Stops an activator while its <tt>startWithServices</tt> runs and checks
+     * that the stop returns only after it.
+     *
+     * @param stop stops the activator
+     * @throws Exception if the test fails
+     */
+    private void assertStopWaitsForStart(StartAction<Activator> stop)
+        throws Exception
+    {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean finished = new AtomicBoolean();
+        Activator activator = new Activator(ctx ->
+        {
+            entered.countDown();
+            release.await(TIMEOUT, TimeUnit.SECONDS);
+            finished.set(true);
+        }, ServiceA.class);
+        AtomicBoolean finishedBeforeStop = new AtomicBoolean();
+
+        framework.register(ServiceA.class);
+        activator.start(framework.context);
+        assertTrue(entered.await(TIMEOUT, TimeUnit.SECONDS));
+
+        Thread stopper = new Thread(() ->
+        {
+            try
+            {
+                stop.run(activator);
+                finishedBeforeStop.set(finished.get());
+            }
+            catch (Exception e)
+            {
+                throw new RuntimeException(e);
+            }
+        });
+
+        stopper.start();
+        stopper.join(200);
+        assertTrue("stop did not wait for the start", stopper.isAlive());
+
+        release.countDown();
+        stopper.join(TimeUnit.SECONDS.toMillis(TIMEOUT));
+        assertFalse(stopper.isAlive());
+        assertTrue(finishedBeforeStop.get());
+    }
+
+    @Test
+    public void testFailedStartStopsBundle()
+        throws Exception
+    {
+        framework.register(ServiceA.class);
+        new Activator(ctx ->
+        {
+            throw new Exception("expected");
+        }, ServiceA.class).start(framework.context);
+
+        assertTrue(framework.bundleStopped.await(TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testStartsOnceAllServicesAreAvailable()
+        throws Exception
+    {
+        AtomicInteger starts = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        Activator activator = new Activator(ctx ->
+        {
+            starts.incrementAndGet();
+            started.countDown();
+        }, ServiceA.class, ServiceB.class);
+
+        framework.register(ServiceA.class);
+        activator.start(framework.context);
+        assertFalse(started.await(100, TimeUnit.MILLISECONDS));
+
+        framework.register(ServiceB.class);
+        assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+        assertNotNull(activator.getService(ServiceB.class));
+
+        activator.stop(framework.context);
+        assertEquals(1, starts.get());
+        assertEquals(1, framework.bundleStopped.getCount());
+    }
+
+    /**
+     * An action run on behalf of an activator.
+     *
+     * @param <T> the type of the argument
+     */
+    private interface StartAction<T>
+    {
+        void run(T argument)
+            throws Exception;
+    }
+
+    /**
+     * An activator which delegates <tt>startWithServices</tt>.
+     */
+    private static class Activator
+        extends DependentActivator
+    {
+        private final StartAction<BundleContext> onStart;
+
+        Activator(StartAction<BundleContext> onStart, Class<?>... services)
+        {
+            super(services);
+            this.onStart = onStart;
+        }
+
+        @Override
+        protected void startWithServices(BundleContext bundleContext)
+            throws Exception
+        {
+            onStart.run(bundleContext);
+        }
+    }
+
+    /**
+     * The part of an OSGi framework a <tt>DependentActivator</tt> uses,
+     * backed by proxies.
+     */
+    private static class Framework
+    {
+        private final List<ServiceListener> serviceListeners
+            = new CopyOnWriteArrayList<>();
+
+        private final Map<ServiceListener, String> filters
+            = new ConcurrentHashMap<>();
+
+        private final List<BundleListener> bundleListeners
+            = new CopyOnWriteArrayList<>();
+
+        private final Map<String, ServiceReference<?>> references
+            = new ConcurrentHashMap<>();
+
+        private final Map<ServiceReference<?>, Object> services
+            = new ConcurrentHashMap<>();
+
+        private final CountDownLatch bundleStopped = new CountDownLatch(1);
+
+        private final Bundle bundle = proxy(Bundle.class, (m, args) ->
+        {
+            switch (m.getName())
+            {
+            case "stop":
+                bundleStopped.countDown();
+                return null;
+            case "getSymbolicName":
+                return "test";
+            default:
+                throw new UnsupportedOperationException(m.getName());
+            }
+        });
+
+        private final BundleContext context
+            = proxy(BundleContext.class, this::invoke);
+
+        /**
+         * Registers a service and notifies the listeners tracking it.
+         *
+         * @param serviceClass the interface the service is registered under
+         */
+        void register(Class<?> serviceClass)
+        {
+            String name = serviceClass.getName();
+            ServiceReference<?> reference
+                = proxy(ServiceReference.class, (m, args) ->
+                {
+                    if (m.getName().equals("getProperty")
+                        && Constants.OBJECTCLASS.equals(args[0]))
+                    {
+                        return new String[] { name };
+                    }
+                    throw new UnsupportedOperationException(m.getName());
+                });
+
+            services.put(reference, proxy(serviceClass, (m, args) -> null));
+            references.put(name, reference);
+
+            ServiceEvent event
+                = new ServiceEvent(ServiceEvent.REGISTERED, reference);
+            String filter = "(" + Constants.OBJECTCLASS + "=" + name + ")";
+
+            for (ServiceListener l : serviceListeners)
+            {
+                if (filter.equals(filters.get(l)))
+                    l.serviceChanged(event);
+            }
+        }
+
+        /**
+         * Notifies the synchronous bundle listeners that the bundle stops.
+         */
+        void fireStopping()
+        {
+            BundleEvent event = new BundleEvent(BundleEvent.STOPPING, bundle);
+
+            for (BundleListener l : bundleListeners)
+                l.bundleChanged(event);
+        }
+
+        private Object invoke(Method m, Object[] args)
+            throws InvalidSyntaxException
+        {
+            switch (m.getName())
+            {
+            case "addServiceListener":
+                serviceListeners.add((ServiceListener) args[0]);
+                filters.put((ServiceListener) args[0], (String) args[1]);
+                return null;
+            case "removeServiceListener":
+                serviceListeners.remove(args[0]);
+                filters.remove(args[0]);
+                return null;
+            case "addBundleListener":
+                bundleListeners.add((BundleListener) args[0]);
+                return null;
+            case "removeBundleListener":
+                bundleListeners.remove(args[0]);
+                return null;
+            case "getServiceReferences":
+                ServiceReference<?> reference
+                    = references.get((String) args[0]);
+
+                return
+                    reference == null
+                        ? null
+                        : new ServiceReference<?>[] { reference };
+            case "getService":
+                return services.get(args[0]);
+            case "ungetService":
+                return true;
+            case "createFilter":
+                return FrameworkUtil.createFilter((String) args[0]);
+            case "getBundle":
+                return bundle;
+            default:
+                throw new UnsupportedOperationException(m.getName());
+            }
+        }
+    }
+
+    /**
+     * The handler of the methods of a proxy which are not declared by
+     * <tt>Object</tt>.
+     */
+    private interface Handler
+    {
+        Object invoke(Method method, Object[] args)
+            throws Exception;
+    }
+
+    /**
+     * Creates a proxy which compares by identity.
+     *
+     * @param type the interface of the proxy
+     * @param handler handles the methods of <tt>type</tt>
+     * @return the proxy
+     */
+    private static <T> T proxy(Class<T> type, Handler handler)
+    {
+        return type.cast(Proxy.newProxyInstance(
+            type.getClassLoader(),
+            new Class<?>[] { type },
+            (proxy, m, args) ->
+            {
+                switch (m.getName())
+                {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return type.getSimpleName();
+                default:
+                    return handler.invoke(m, args);
+                }
+            }));
+    }
+}
@@ -109,6 +109,12 @@
      */
     public static final String INCOMING_MESSAGE = "IncomingMessage";
 
+    /**
+     * The length in milliseconds of the window within which incoming message
+     * notifications are coalesced into a single sound and a digest popup.
+     */
+    private static final long MESSAGE_BURST_WINDOW = 3000;
+
     /**
      * HTML content type.
      */
@@ -1538,6 +1544,20 @@ private void registerDefaultNotifications()
                 new SoundNotificationAction(
                     SoundProperties.INCOMING_MESSAGE, -1, true, false, false));
 
+        // Collapse bursts of incoming messages (e.g. MUC history or a busy
+        // chat room) into one sound and a digest popup.
+        NotificationCoalescingPolicy messageBurstPolicy
+            = new NotificationCoalescingPolicy(
+                    MESSAGE_BURST_WINDOW,
+                    true,
+                    true,
+                    NotificationWiringActivator.getResources().getI18NString(
+                        "service.gui.NOTIFICATION_DIGEST"));
+
+        notificationService.setCoalescingPolicy(
+                INCOMING_MESSAGE,
+                messageBurstPolicy);
+
         // Register incoming call notifications.
         notificationService.registerDefaultNotificationForEvent(
                 INCOMING_CALL,
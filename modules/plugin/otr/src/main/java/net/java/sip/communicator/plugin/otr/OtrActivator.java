@@ -205,7 +205,10 @@ private void handleProviderAdded(ProtocolProviderService provider)
                     OperationSetInstantMessageTransform.class);
 
         if (opSetMessageTransform != null)
+        {
             opSetMessageTransform.addTransformLayer(this.otrTransformLayer);
+            scOtrKeyManager.pregenerateKeyPair(provider.getAccountID());
+        }
         else if (logger.isTraceEnabled())
             logger.trace("Service did not have a transform op. set.");
     }
@@ -56,12 +56,9 @@ public KeyPair getLocalKeyPair(SessionID sessionID)
         {
             AccountID accountID =
                 OtrActivator.getAccountIDByUID(sessionID.getAccountID());
-            KeyPair keyPair =
-                OtrActivator.scOtrKeyManager.loadKeyPair(accountID);
-            if (keyPair == null)
-                OtrActivator.scOtrKeyManager.generateKeyPair(accountID);
 
-            return OtrActivator.scOtrKeyManager.loadKeyPair(accountID);
+            return OtrActivator.scOtrKeyManager.loadOrGenerateKeyPair(
+                accountID);
         }
 
         @Override
@@ -514,12 +511,27 @@ public FragmenterInstructions getFragmenterInstructions(
     private static final Map<ScSessionID, OtrContact> contactsMap =
         new Hashtable<ScSessionID, OtrContact>();
 
+    /**
+     * The <tt>ScSessionID</tt>s in {@link #contactsMap} by the
+     * <tt>SessionID</tt> they wrap.
+     */
+    private static final Map<SessionID, ScSessionID> scSessionIDs =
+        new ConcurrentHashMap<SessionID, ScSessionID>();
+
+    /**
+     * The <tt>ScSessionID</tt>s in {@link #contactsMap} by their GUID.
+     */
+    private static final Map<UUID, ScSessionID> scSessionIDsByGuid =
+        new ConcurrentHashMap<UUID, ScSessionID>();
+
     private static final Map<OtrContact, SmpProgressDialog> progressDialogMap =
         new ConcurrentHashMap<OtrContact, SmpProgressDialog>();
 
     public static OtrContact getOtrContact(SessionID sessionID)
     {
-        return contactsMap.get(new ScSessionID(sessionID));
+        ScSessionID scSessionID = scSessionIDs.get(sessionID);
+
+        return (scSessionID == null) ? null : contactsMap.get(scSessionID);
     }
 
     /**
@@ -530,14 +542,7 @@ public static OtrContact getOtrContact(SessionID sessionID)
      */
     public static ScSessionID getScSessionForGuid(UUID guid)
     {
-        for(ScSessionID scSessionID : contactsMap.keySet())
-        {
-            if(scSessionID.getGUID().equals(guid))
-            {
-                return scSessionID;
-            }
-        }
-        return null;
+        return scSessionIDsByGuid.get(guid);
     }
 
     public static SessionID getSessionID(OtrContact otrContact)
@@ -551,14 +556,19 @@ public static SessionID getSessionID(OtrContact otrContact)
                     otrContact.contact.getAddress() + resourceName,
                     pps.getProtocolName());
 
+        if (scSessionIDs.containsKey(sessionID))
+            return sessionID;
+
         synchronized (contactsMap)
         {
-            if(contactsMap.containsKey(new ScSessionID(sessionID)))
+            if(scSessionIDs.containsKey(sessionID))
                 return sessionID;
 
             ScSessionID scSessionID = new ScSessionID(sessionID);
 
             contactsMap.put(scSessionID, otrContact);
+            scSessionIDsByGuid.put(scSessionID.getGUID(), scSessionID);
+            scSessionIDs.put(sessionID, scSessionID);
         }
 
         return sessionID;
@@ -587,6 +597,8 @@ public ScOtrEngineImpl()
         // Clears the map after previous instance
         // This is required because of OSGi restarts in the same VM on Android
         contactsMap.clear();
+        scSessionIDs.clear();
+        scSessionIDsByGuid.clear();
         scSessionStatusMap.clear();
 
         this.otrEngine.addOtrEngineListener(new OtrEngineListener()
@@ -647,15 +659,11 @@ public void sessionStatusChanged(SessionID sessionID)
                     {
                         OtrActivator.scOtrKeyManager.unverify(
                             otrContact, remoteFingerprint);
-                        UUID sessionGuid = null;
-                        for(ScSessionID scSessionID : contactsMap.keySet())
-                        {
-                            if(scSessionID.getSessionID().equals(sessionID))
-                            {
-                                sessionGuid = scSessionID.getGUID();
-                                break;
-                            }
-                        }
+                        ScSessionID scSessionID = scSessionIDs.get(sessionID);
+                        UUID sessionGuid
+                            = (scSessionID == null)
+                                ? null
+                                : scSessionID.getGUID();
 
                         OtrActivator.uiService.getChat(contact)
                             .addChatLinkClickedListener(ScOtrEngineImpl.this);
@@ -1090,15 +1098,21 @@ public void serviceChanged(ServiceEvent ev)
 
             synchronized(contactsMap)
             {
-                Iterator<OtrContact> i = contactsMap.values().iterator();
+                Iterator<Map.Entry<ScSessionID, OtrContact>> i
+                    = contactsMap.entrySet().iterator();
 
                 while (i.hasNext())
                 {
-                    OtrContact otrContact = i.next();
+                    Map.Entry<ScSessionID, OtrContact> e = i.next();
+                    OtrContact otrContact = e.getValue();
                     if (provider.equals(
                         otrContact.contact.getProtocolProvider()))
                     {
-                        scSessionStatusMap.remove(getSessionID(otrContact));
+                        ScSessionID scSessionID = e.getKey();
+
+                        scSessionStatusMap.remove(scSessionID.getSessionID());
+                        scSessionIDs.remove(scSessionID.getSessionID());
+                        scSessionIDsByGuid.remove(scSessionID.getGUID());
                         i.remove();
                     }
                 }
@@ -55,4 +55,21 @@
 
     public abstract void generateKeyPair(AccountID accountID);
 
+    /**
+     * Loads the key pair of an account, waiting for it if it is being
+     * generated in the background and generating it if there is none.
+     *
+     * @param accountID the account
+     * @return the key pair of the account
+     */
+    public abstract KeyPair loadOrGenerateKeyPair(AccountID accountID);
+
+    /**
+     * Generates the key pair of an account in the background if OTR is
+     * enabled by the global policy and there is no key pair yet.
+     *
+     * @param accountID the account
+     */
+    public abstract void pregenerateKeyPair(AccountID accountID);
+
 }
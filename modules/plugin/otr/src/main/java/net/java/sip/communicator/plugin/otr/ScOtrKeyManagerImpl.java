@@ -20,6 +20,7 @@
 import java.security.*;
 import java.security.spec.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import lombok.extern.slf4j.*;
 import net.java.otr4j.crypto.*;
@@ -27,6 +28,12 @@
 import net.java.sip.communicator.service.protocol.*;
 
 /**
+ * Keeps the local key pairs of the accounts and the fingerprints of the
+ * contacts. Both are read from the configuration once and then kept in memory,
+ * changes are written through to the configuration. If OTR is enabled,
+ * missing key pairs are generated in the background as soon as an account
+ * supporting OTR is available, so that the first encrypted session doesn't
+ * wait for them.
  *
  * @author George Politis
  * @author Lyubomir Marinov
@@ -40,6 +47,40 @@
     private final List<ScOtrKeyManagerListener> listeners =
         new ArrayList<>();
 
+    /**
+     * The fingerprints of the contacts by contact address.
+     */
+    private final Map<String, List<String>> remoteFingerprints =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Whether fingerprints are verified by contact address and fingerprint.
+     */
+    private final Map<String, Boolean> verifiedFingerprints =
+        new ConcurrentHashMap<>();
+
+    /**
+     * The key pairs of the accounts by account unique ID.
+     */
+    private final Map<String, KeyPair> keyPairs = new ConcurrentHashMap<>();
+
+    /**
+     * The key pairs being generated in the background by account unique ID.
+     */
+    private final Map<String, CompletableFuture<Void>> pendingKeyPairs =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Generates key pairs in the background, one at a time.
+     */
+    private final ExecutorService keyPairGenerator =
+        Executors.newSingleThreadExecutor(r ->
+        {
+            Thread t = new Thread(r, "OTR key pair generator");
+            t.setDaemon(true);
+            return t;
+        });
+
     public void addListener(ScOtrKeyManagerListener l)
     {
         synchronized (listeners)
@@ -79,8 +120,7 @@ public void verify(OtrContact otrContact, String fingerprint)
         if ((fingerprint == null) || otrContact == null)
             return;
 
-        this.configurator.setProperty(otrContact.contact.getAddress() + fingerprint
-            + ".fingerprint.verified", true);
+        setVerified(otrContact.contact, fingerprint, true);
 
         for (ScOtrKeyManagerListener l : getListeners())
             l.contactVerificationStatusChanged(otrContact);
@@ -91,8 +131,7 @@ public void unverify(OtrContact otrContact, String fingerprint)
         if ((fingerprint == null) || otrContact == null)
             return;
 
-        this.configurator.setProperty(otrContact.contact.getAddress() + fingerprint
-            + ".fingerprint.verified", false);
+        setVerified(otrContact.contact, fingerprint, false);
 
         for (ScOtrKeyManagerListener l : getListeners())
             l.contactVerificationStatusChanged(otrContact);
@@ -103,9 +142,26 @@ public boolean isVerified(Contact contact, String fingerprint)
         if (fingerprint == null || contact == null)
             return false;
 
-        return this.configurator.getPropertyBoolean(
-            contact.getAddress() + fingerprint
-                + ".fingerprint.verified", false);
+        return verifiedFingerprints.computeIfAbsent(
+            contact.getAddress() + fingerprint,
+            id -> this.configurator.getPropertyBoolean(
+                id + ".fingerprint.verified", false));
+    }
+
+    /**
+     * Stores whether a fingerprint of a contact is verified.
+     *
+     * @param contact the contact
+     * @param fingerprint the fingerprint
+     * @param verified whether the fingerprint is verified
+     */
+    private void setVerified(
+        Contact contact, String fingerprint, boolean verified)
+    {
+        String id = contact.getAddress() + fingerprint;
+
+        verifiedFingerprints.put(id, verified);
+        this.configurator.setProperty(id + ".fingerprint.verified", verified);
     }
 
     public List<String> getAllRemoteFingerprints(Contact contact)
@@ -113,6 +169,47 @@ public List<String> getAllRemoteFingerprints(Contact contact)
         if (contact == null)
             return null;
 
+        return Collections.unmodifiableList(
+            new ArrayList<>(getRemoteFingerprints(contact)));
+    }
+
+    /**
+     * Gets the stored list of fingerprints of a contact, loading it from the
+     * configuration the first time.
+     *
+     * @param contact the contact
+     * @return the fingerprints of the contact
+     */
+    private List<String> getRemoteFingerprints(Contact contact)
+    {
+        List<String> fingerprints =
+            remoteFingerprints.get(contact.getAddress());
+
+        if (fingerprints == null)
+        {
+            synchronized (remoteFingerprints)
+            {
+                fingerprints = remoteFingerprints.get(contact.getAddress());
+                if (fingerprints == null)
+                {
+                    fingerprints =
+                        new CopyOnWriteArrayList<>(loadFingerprints(contact));
+                    remoteFingerprints.put(
+                        contact.getAddress(), fingerprints);
+                }
+            }
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Reads the fingerprints of a contact from the configuration.
+     *
+     * @param contact the contact
+     * @return the fingerprints of the contact
+     */
+    private List<String> loadFingerprints(Contact contact)
+    {
         /*
          * The following lines are needed for backward compatibility with old
          * versions of the otr plugin. Instead of lists of fingerprints the otr
@@ -230,11 +327,14 @@ public void saveFingerprint(Contact contact, String fingerprint)
         if (contact == null)
             return;
 
-        this.configurator.appendProperty(contact.getAddress() + ".fingerprints",
-            fingerprint);
+        synchronized (remoteFingerprints)
+        {
+            getRemoteFingerprints(contact).add(fingerprint);
+            this.configurator.appendProperty(
+                contact.getAddress() + ".fingerprints", fingerprint);
+        }
 
-        this.configurator.setProperty(contact.getAddress() + fingerprint
-            + ".fingerprint.verified", false);
+        setVerified(contact, fingerprint, false);
     }
 
     public KeyPair loadKeyPair(AccountID account)
@@ -242,6 +342,113 @@ public KeyPair loadKeyPair(AccountID account)
         if (account == null)
             return null;
 
+        String accountID = account.getAccountUniqueID();
+        KeyPair keyPair = keyPairs.get(accountID);
+        if (keyPair == null)
+        {
+            keyPair = readKeyPair(account);
+            if (keyPair != null)
+                keyPairs.put(accountID, keyPair);
+        }
+        return keyPair;
+    }
+
+    public KeyPair loadOrGenerateKeyPair(AccountID account)
+    {
+        if (account == null)
+            return null;
+
+        KeyPair keyPair = loadKeyPair(account);
+        if (keyPair != null)
+            return keyPair;
+
+        String accountID = account.getAccountUniqueID();
+        CompletableFuture<Void> generated = new CompletableFuture<>();
+        CompletableFuture<Void> pending
+            = pendingKeyPairs.putIfAbsent(accountID, generated);
+
+        // whoever registers the pending generation first generates the key
+        // pair, everyone else waits for it
+        if (pending == null)
+        {
+            generateOnce(account, generated);
+            pending = generated;
+        }
+
+        try
+        {
+            pending.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e)
+        {
+            logger.error("Failed to generate keypair for account {}",
+                account, e.getCause());
+        }
+        return loadKeyPair(account);
+    }
+
+    public void pregenerateKeyPair(AccountID account)
+    {
+        // don't spend a key generation on accounts which won't use OTR, it is
+        // still generated on demand if a contact policy enables it
+        if (account == null
+            || !OtrActivator.scOtrEngine.getGlobalPolicy().getEnableManual()
+            || loadKeyPair(account) != null)
+            return;
+
+        String accountID = account.getAccountUniqueID();
+        CompletableFuture<Void> pending = new CompletableFuture<>();
+
+        // registered before the task is submitted, so that its removal when
+        // done cannot precede it
+        if (pendingKeyPairs.putIfAbsent(accountID, pending) != null)
+            return;
+
+        keyPairGenerator.execute(() -> generateOnce(account, pending));
+    }
+
+    /**
+     * Generates the key pair of an account unless one was stored since the
+     * pending generation was registered, and completes it.
+     *
+     * @param account the account
+     * @param pending the pending generation registered in
+     * {@link #pendingKeyPairs} by the caller
+     */
+    private void generateOnce(
+        AccountID account,
+        CompletableFuture<Void> pending)
+    {
+        try
+        {
+            // the previous generation may have been done between the
+            // caller's check and the registration of this one
+            if (loadKeyPair(account) == null)
+                generateKeyPair(account);
+            pending.complete(null);
+        }
+        catch (RuntimeException e)
+        {
+            pending.completeExceptionally(e);
+        }
+        finally
+        {
+            pendingKeyPairs.remove(account.getAccountUniqueID(), pending);
+        }
+    }
+
+    /**
+     * Reads the key pair of an account from the configuration.
+     *
+     * @param account the account
+     * @return the key pair or <tt>null</tt> if none is stored
+     */
+    private KeyPair readKeyPair(AccountID account)
+    {
         String accountID = account.getAccountUniqueID();
         // Load Private Key.
         byte[] b64PrivKey =
@@ -314,5 +521,7 @@ public void generateKeyPair(AccountID account)
 
         this.configurator.setProperty(accountID + ".privateKey",
             pkcs8EncodedKeySpec.getEncoded());
+
+        keyPairs.put(accountID, keyPair);
     }
 }
@@ -0,0 +1,324 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.plugin.otr;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import net.java.otr4j.*;
+import net.java.sip.communicator.plugin.otr.OtrContactManager.OtrContact;
+import net.java.sip.communicator.service.protocol.*;
+
+import org.easymock.*;
+import org.jitsi.service.configuration.*;
+import org.junit.*;
+
+/**
+ * Tests that <tt>ScOtrKeyManagerImpl</tt> keeps the trust data consistent
+ * with the configuration and generates the key pairs in the background only
+ * once and only when OTR is enabled.
+ */
+public class ScOtrKeyManagerImplTest
+{
+    private static final String NAMESPACE
+        = "net.java.sip.communicator.plugin.otr.";
+
+    /**
+     * The stored configuration.
+     */
+    private final Map<String, Object> properties
+        = Collections.synchronizedMap(new HashMap<>());
+
+    /**
+     * The number of private keys written to the configuration.
+     */
+    private int storedPrivateKeys;
+
+    /**
+     * When set, counted down by each private key write, which then waits for
+     * the others for a while.
+     */
+    private volatile CountDownLatch privateKeyWrites;
+
+    private ScOtrKeyManagerImpl keyManager;
+
+    private Contact contact;
+
+    @Before
+    public void setUp()
+    {
+        OtrActivator.configService = (ConfigurationService)
+            Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] { ConfigurationService.class },
+                (proxy, m, args) -> invokeConfiguration(m, args));
+        OtrActivator.scOtrEngine = new ScOtrEngineImpl();
+        keyManager = new ScOtrKeyManagerImpl();
+
+        contact = EasyMock.createNiceMock(Contact.class);
+        EasyMock.expect(contact.getAddress())
+            .andStubReturn("bob@example.com");
+        EasyMock.replay(contact);
+    }
+
+    @After
+    public void tearDown()
+    {
+        OtrActivator.scOtrEngine = null;
+        OtrActivator.configService = null;
+    }
+
+    @Test
+    public void testVerificationIsWrittenThrough()
+    {
+        OtrContact otrContact = OtrContactManager.getOtrContact(contact, null);
+
+        assertFalse(keyManager.isVerified(contact, "fp1"));
+
+        keyManager.verify(otrContact, "fp1");
+        assertTrue(keyManager.isVerified(contact, "fp1"));
+        assertEquals(true,
+            properties.get(
+                NAMESPACE + "bob_example_comfp1_fingerprint_verified"));
+
+        keyManager.unverify(otrContact, "fp1");
+        assertFalse(keyManager.isVerified(contact, "fp1"));
+        assertEquals(false,
+            properties.get(
+                NAMESPACE + "bob_example_comfp1_fingerprint_verified"));
+    }
+
+    @Test
+    public void testStoredVerificationIsReadOnce()
+    {
+        String property
+            = NAMESPACE + "bob_example_comfp1_fingerprint_verified";
+
+        properties.put(property, "true");
+        assertTrue(keyManager.isVerified(contact, "fp1"));
+
+        // served from memory from now on
+        properties.put(property, "false");
+        assertTrue(keyManager.isVerified(contact, "fp1"));
+    }
+
+    @Test
+    public void testSavedFingerprintsAreWrittenThrough()
+    {
+        properties.put(NAMESPACE + "bob_example_com_fingerprints", "fp1");
+        assertEquals(
+            Collections.singletonList("fp1"),
+            keyManager.getAllRemoteFingerprints(contact));
+
+        keyManager.saveFingerprint(contact, "fp2");
+
+        List<String> fingerprints
+            = keyManager.getAllRemoteFingerprints(contact);
+
+        assertEquals(Arrays.asList("fp1", "fp2"), fingerprints);
+        assertEquals("fp1,fp2",
+            properties.get(NAMESPACE + "bob_example_com_fingerprints"));
+        assertFalse(keyManager.isVerified(contact, "fp2"));
+        try
+        {
+            fingerprints.add("fp3");
+            fail("the fingerprints of a contact must not be modifiable");
+        }
+        catch (UnsupportedOperationException expected)
+        {
+        }
+    }
+
+    @Test
+    public void testLegacyPublicKeyIsMigrated()
+        throws Exception
+    {
+        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("DSA");
+
+        keyGen.initialize(1024);
+
+        PublicKey publicKey = keyGen.generateKeyPair().getPublic();
+        String fingerprint = keyManager.getFingerprintFromPublicKey(publicKey);
+
+        properties.put(
+            NAMESPACE + "bob_example_com_publicKey",
+            Base64.getEncoder().encodeToString(publicKey.getEncoded()));
+        properties.put(
+            NAMESPACE + "bob_example_com_publicKey_verified", "true");
+
+        assertEquals(
+            Collections.singletonList(fingerprint),
+            keyManager.getAllRemoteFingerprints(contact));
+        assertTrue(keyManager.isVerified(contact, fingerprint));
+        assertNull(properties.get(NAMESPACE + "bob_example_com_publicKey"));
+        assertNull(
+            properties.get(NAMESPACE + "bob_example_com_publicKey_verified"));
+    }
+
+    @Test
+    public void testPregeneratedKeyPairIsGeneratedOnce()
+    {
+        AccountID account = createAccount("alice");
+
+        keyManager.pregenerateKeyPair(account);
+        keyManager.pregenerateKeyPair(account);
+
+        // waits for the background generation rather than starting another
+        KeyPair keyPair = keyManager.loadOrGenerateKeyPair(account);
+
+        assertNotNull(keyPair);
+        assertSame(keyPair, keyManager.loadKeyPair(account));
+        assertEquals(1, storedPrivateKeys);
+        assertNotNull(keyManager.getLocalFingerprint(account));
+    }
+
+    @Test
+    public void testConcurrentRequestsGenerateOneKeyPair()
+        throws Exception
+    {
+        AccountID account = createAccount("alice");
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<KeyPair>> keyPairs = new ArrayList<>();
+
+        // holds the first generation long enough for any other to start
+        privateKeyWrites = new CountDownLatch(2);
+        try
+        {
+            for (int i = 0; i < threads; i++)
+            {
+                keyPairs.add(executor.submit(() ->
+                {
+                    start.await();
+                    return keyManager.loadOrGenerateKeyPair(account);
+                }));
+            }
+            start.countDown();
+
+            KeyPair keyPair = keyPairs.get(0).get(30, TimeUnit.SECONDS);
+
+            assertNotNull(keyPair);
+            for (Future<KeyPair> other : keyPairs)
+                assertSame(keyPair, other.get(30, TimeUnit.SECONDS));
+            assertEquals(1, storedPrivateKeys);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testNoKeyPairIsPregeneratedWhenOtrIsDisabled()
+    {
+        AccountID disabled = createAccount("alice");
+        AccountID enabled = createAccount("carol");
+
+        OtrActivator.scOtrEngine.setGlobalPolicy(
+            new OtrPolicyImpl(OtrPolicy.NEVER));
+        keyManager.pregenerateKeyPair(disabled);
+
+        OtrActivator.scOtrEngine.setGlobalPolicy(null);
+        keyManager.pregenerateKeyPair(enabled);
+        // the generations run one after another, so any for the first
+        // account would be done once the second one is
+        assertNotNull(keyManager.loadOrGenerateKeyPair(enabled));
+
+        assertNull(keyManager.loadKeyPair(disabled));
+        assertEquals(1, storedPrivateKeys);
+    }
+
+    /**
+     * Creates an account.
+     *
+     * @param userID the user ID of the account
+     * @return the account
+     */
+    private static AccountID createAccount(String userID)
+    {
+        return new AccountID(userID, new HashMap<>(), "Mock", "example.com")
+        {
+        };
+    }
+
+    /**
+     * Implements the parts of <tt>ConfigurationService</tt> the OTR plug-in
+     * uses over {@link #properties}.
+     */
+    private Object invokeConfiguration(Method m, Object[] args)
+    {
+        Object value;
+
+        switch (m.getName())
+        {
+        case "getString":
+        case "getProperty":
+            value = properties.get(args[0]);
+            return value == null ? null : value.toString();
+        case "getBoolean":
+            value = properties.get(args[0]);
+            return value == null
+                ? args[1]
+                : Boolean.valueOf(value.toString());
+        case "getInt":
+            value = properties.get(args[0]);
+            return value == null
+                ? args[1]
+                : Integer.valueOf(value.toString());
+        case "setProperty":
+            if (((String) args[0]).endsWith("_privateKey"))
+            {
+                synchronized (this)
+                {
+                    storedPrivateKeys++;
+                }
+
+                CountDownLatch writes = privateKeyWrites;
+
+                if (writes != null)
+                {
+                    writes.countDown();
+                    try
+                    {
+                        writes.await(1, TimeUnit.SECONDS);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+            properties.put((String) args[0], args[1]);
+            return null;
+        case "removeProperty":
+            properties.remove(args[0]);
+            return null;
+        case "equals":
+            return args[0] == OtrActivator.configService;
+        case "hashCode":
+            return System.identityHashCode(this);
+        default:
+            throw new UnsupportedOperationException(m.getName());
+        }
+    }
+}
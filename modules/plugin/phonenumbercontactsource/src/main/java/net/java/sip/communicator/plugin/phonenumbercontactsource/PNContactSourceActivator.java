@@ -89,6 +89,7 @@ public void start(BundleContext context) throws Exception
 
     public void stop(BundleContext context) throws Exception
     {
+        phoneNumberContactSource.getSnapshot().dispose();
     }
 
     /**
@@ -223,6 +224,7 @@ private static void handleProviderAdded(
             if(protocolProvider.isRegistered())
             {
                 phoneProviders.add(protocolProvider);
+                phoneNumberContactSource.getSnapshot().invalidate();
             }
             else
             {
@@ -243,7 +245,10 @@ private static void handleProviderRemoved(
             ProtocolProviderService protocolProvider)
     {
         if (phoneProviders.contains(protocolProvider))
+        {
             phoneProviders.remove(protocolProvider);
+            phoneNumberContactSource.getSnapshot().invalidate();
+        }
 
         protocolProvider.removeRegistrationStateChangeListener(ppRegListener);
     }
@@ -278,7 +283,10 @@ public void registrationStateChanged(RegistrationStateChangeEvent evt)
             if (evt.getNewState() == RegistrationState.REGISTERED)
             {
                 if(!phoneProviders.contains(protocolProvider))
+                {
                     phoneProviders.add(protocolProvider);
+                    phoneNumberContactSource.getSnapshot().invalidate();
+                }
             }
         }
     }
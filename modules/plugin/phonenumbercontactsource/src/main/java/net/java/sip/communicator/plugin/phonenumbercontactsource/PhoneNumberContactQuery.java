@@ -22,11 +22,8 @@
 
 import net.java.sip.communicator.service.contactsource.*;
 import net.java.sip.communicator.service.protocol.*;
-import net.java.sip.communicator.service.protocol.ServerStoredDetails.*;
 import net.java.sip.communicator.service.protocol.event.*;
 
-import org.apache.commons.lang3.StringUtils;
-
 /**
  * The <tt>PhoneNumberContactQuery</tt> is a query over the
  * <tt>PhoneNumberContactSource</tt>.
@@ -87,48 +84,35 @@ public PhoneNumberContactQuery( PhoneNumberContactSource contactSource,
     }
 
     /**
-     * Do all the work in different thread.
+     * Do all the work in different thread. The query is answered from the
+     * phone number snapshot of the contact source.
      */
     @Override
     public void run()
     {
-        Iterator<ProtocolProviderService> providers
-            = PNContactSourceActivator
-                .getPhoneNumberProviders().iterator();
+        PhoneNumberSnapshot snapshot = getContactSource().getSnapshot();
+        Set<PhoneNumberSnapshot.Entry> added
+            = new HashSet<PhoneNumberSnapshot.Entry>();
 
-        while (providers.hasNext())
+        for (PhoneNumberSnapshot.Entry entry
+                : snapshot.search(queryString, contactCount))
         {
-            if(contactCount > 0 && getQueryResultCount() > contactCount)
+            if (!addResult(entry, added))
                 break;
+        }
 
-            ProtocolProviderService provider = providers.next();
-
-            OperationSetPersistentPresence persPresOpSet
-                = provider.getOperationSet(
-                        OperationSetPersistentPresence.class);
-
-            // If there's no presence operation set continue to the
-            // next protocol provider.
-            if (persPresOpSet == null)
-                continue;
-
-            if(!operationSetPersistentPresences.contains(persPresOpSet))
-                operationSetPersistentPresences.add(persPresOpSet);
-
-            persPresOpSet.addContactPresenceStatusListener(this);
-
-            ContactGroup rootGroup
-                = persPresOpSet.getServerStoredContactListRoot();
-
-            addResultContactsForGroup(rootGroup);
-
-            Iterator<ContactGroup> subgroups = rootGroup.subgroups();
-
-            while (subgroups.hasNext())
+        // the snapshot only finds numbers written like the query
+        if (isQueryPhoneNumber)
+        {
+            for (PhoneNumberSnapshot.Entry entry : snapshot.getEntries())
             {
-                ContactGroup group = subgroups.next();
-
-                addResultContactsForGroup(group);
+                if (!added.contains(entry)
+                    && PNContactSourceActivator.getPhoneNumberI18nService()
+                        .phoneNumbersMatch(queryString, entry.number)
+                    && !addResult(entry, added))
+                {
+                    break;
+                }
             }
         }
 
@@ -137,134 +121,65 @@ public void run()
     }
 
     /**
-     * Adss the result contacts for the given group.
+     * Adds a matching phone number to the results.
      *
-     * @param group the <tt>ContactGroup</tt> to check for matching contacts
+     * @param entry the phone number
+     * @param added the phone numbers already added to the results
+     * @return <tt>false</tt> if the query has been canceled or has enough
+     * results
      */
-    private void addResultContactsForGroup(ContactGroup group)
+    private boolean addResult(
+        PhoneNumberSnapshot.Entry entry,
+        Set<PhoneNumberSnapshot.Entry> added)
     {
-        Iterator<Contact> contacts = group.contacts();
-        while (contacts.hasNext())
+        if (getStatus() == QUERY_CANCELED
+            || (contactCount > 0 && getQueryResultCount() >= contactCount))
         {
-            if(contactCount > 0 && getQueryResultCount() > contactCount)
-                break;
-
-            Contact contact = contacts.next();
-
-            addAdditionalNumbers(contact);
+            return false;
         }
-    }
 
-    /**
-     * Returns all additional phone numbers corresponding to the given
-     * contact.
-     *
-     * @param contact the <tt>contact</tt>, which phone details we're
-     * looking for
-     * @return a list of all additional phone numbers corresponding to the
-     * given contact
-     */
-    private void addAdditionalNumbers(Contact contact)
-    {
-        OperationSetServerStoredContactInfo infoOpSet
-            = contact.getProtocolProvider().getOperationSet(
-                OperationSetServerStoredContactInfo.class);
+        added.add(entry);
 
-        Iterator<GenericDetail> details;
+        Contact contact = entry.contact;
+        OperationSetPersistentPresence persPresOpSet
+            = contact.getProtocolProvider().getOperationSet(
+                    OperationSetPersistentPresence.class);
 
-        if(infoOpSet != null)
+        if(persPresOpSet != null
+            && !operationSetPersistentPresences.contains(persPresOpSet))
         {
-            details = infoOpSet.getAllDetailsForContact(contact);
-
-            while(details.hasNext())
-            {
-                if(contactCount > 0 && getQueryResultCount() > contactCount)
-                    break;
-
-                GenericDetail d = details.next();
-                if(d instanceof PhoneNumberDetail &&
-                    !(d instanceof PagerDetail) &&
-                    !(d instanceof FaxDetail))
-                {
-                    PhoneNumberDetail pnd = (PhoneNumberDetail)d;
-                    if(pnd.getNumber() != null &&
-                        pnd.getNumber().length() > 0)
-                    {
-                        String localizedType = null;
-
-                        if(d instanceof WorkPhoneDetail)
-                        {
-                            localizedType =
-                                PNContactSourceActivator.getResources()
-                                .getI18NString("service.gui.WORK_PHONE");
-                        }
-                        else if(d instanceof MobilePhoneDetail)
-                        {
-                            localizedType =
-                                PNContactSourceActivator.getResources()
-                                .getI18NString("service.gui.MOBILE_PHONE");
-                        }
-                        else if(d instanceof VideoDetail)
-                        {
-                            localizedType =
-                                PNContactSourceActivator.getResources().
-                                    getI18NString(
-                                        "service.gui.VIDEO_PHONE");
-                        }
-                        else
-                        {
-                            localizedType =
-                                PNContactSourceActivator.getResources()
-                                .getI18NString("service.gui.HOME");
-                        }
-
-                        String contactName = contact.getDisplayName();
-                        String contactAddress = contact.getAddress();
-                        String numberString = pnd.getNumber();
-
-                        if(StringUtils.isEmpty(queryString)
-                            || query.matcher(numberString).find()
-                            || query.matcher(contactName).find()
-                            || query.matcher(contactAddress).find()
-                            || (isQueryPhoneNumber
-                                && PNContactSourceActivator
-                                    .getPhoneNumberI18nService()
-                                    .phoneNumbersMatch(
-                                        queryString, numberString))
-                            )
-                        {
-                            ArrayList<ContactDetail> contactDetails
-                                = new ArrayList<ContactDetail>();
-
-                            String detailDisplayName
-                                = pnd.getNumber() + "(" + localizedType + ")";
-                            ContactDetail detail
-                                = new ContactDetail(pnd.getNumber(),
-                                                    detailDisplayName);
-
-                            ArrayList<Class<? extends OperationSet>>
-                                supportedOpSets
-                                = new ArrayList<Class<? extends OperationSet>>();
-                            supportedOpSets
-                                .add(OperationSetBasicTelephony.class);
-                            detail.setSupportedOpSets(supportedOpSets);
-
-                            contactDetails.add(detail);
-
-                            PhoneNumberSourceContact numberSourceContact
-                                = new PhoneNumberSourceContact(
-                                    this,
-                                    getContactSource(),
-                                    contact,
-                                    contactDetails,
-                                    detailDisplayName);
-
-                            addQueryResult(numberSourceContact);
-                        }
-                    }
-                }
-            }
+            operationSetPersistentPresences.add(persPresOpSet);
+            persPresOpSet.addContactPresenceStatusListener(this);
         }
+
+        ArrayList<ContactDetail> contactDetails
+            = new ArrayList<ContactDetail>();
+
+        String localizedType
+            = PNContactSourceActivator.getResources()
+                .getI18NString(entry.typeKey);
+        String detailDisplayName
+            = entry.number + "(" + localizedType + ")";
+        ContactDetail detail
+            = new ContactDetail(entry.number, detailDisplayName);
+
+        ArrayList<Class<? extends OperationSet>> supportedOpSets
+            = new ArrayList<Class<? extends OperationSet>>();
+        supportedOpSets.add(OperationSetBasicTelephony.class);
+        detail.setSupportedOpSets(supportedOpSets);
+
+        contactDetails.add(detail);
+
+        PhoneNumberSourceContact numberSourceContact
+            = new PhoneNumberSourceContact(
+                this,
+                getContactSource(),
+                contact,
+                contactDetails,
+                detailDisplayName);
+
+        addQueryResult(numberSourceContact);
+        return true;
     }
 
     protected String normalizePhoneNumber(String phoneNumber)
@@ -29,6 +29,21 @@
 public class PhoneNumberContactSource
     implements ContactSourceService
 {
+    /**
+     * The phone numbers the queries of this contact source search.
+     */
+    private final PhoneNumberSnapshot snapshot = new PhoneNumberSnapshot();
+
+    /**
+     * Returns the phone numbers the queries of this contact source search.
+     *
+     * @return the phone number snapshot
+     */
+    PhoneNumberSnapshot getSnapshot()
+    {
+        return snapshot;
+    }
+
     /**
      * Returns DEFAULT_TYPE to indicate that this contact source is a default
      * source.
@@ -0,0 +1,334 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.plugin.phonenumbercontactsource;
+
+import java.util.*;
+
+import net.java.sip.communicator.service.contactsource.*;
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.ServerStoredDetails.*;
+import net.java.sip.communicator.service.protocol.event.*;
+
+/**
+ * The <tt>PhoneNumberSnapshot</tt> keeps the phone numbers in the server
+ * stored contact info of all contacts for all protocol providers, so that
+ * queries do not have to go through all contacts and their details. It is
+ * reloaded when the contact lists change and, as details may be retrieved
+ * from the server after the contact list is, periodically.
+ */
+public class PhoneNumberSnapshot
+    extends ContactSnapshot<PhoneNumberSnapshot.Entry>
+    implements SubscriptionListener
+{
+    /**
+     * The time in milliseconds after which the snapshot is reloaded even if
+     * no contact list has changed.
+     */
+    private static final long MAX_AGE = 60000;
+
+    /**
+     * The operation sets whose contact lists we listen to.
+     */
+    private final Set<OperationSetPersistentPresence> presenceOpSets
+        = Collections.synchronizedSet(
+            new HashSet<OperationSetPersistentPresence>());
+
+    /**
+     * Creates an instance of <tt>PhoneNumberSnapshot</tt>.
+     */
+    public PhoneNumberSnapshot()
+    {
+        setMaxAge(MAX_AGE);
+    }
+
+    /**
+     * Loads the phone numbers of all contacts of the phone number providers.
+     *
+     * @return the phone numbers
+     */
+    @Override
+    protected Collection<Entry> load()
+    {
+        List<Entry> entries = new ArrayList<Entry>();
+
+        for (ProtocolProviderService provider
+                : new ArrayList<ProtocolProviderService>(
+                    PNContactSourceActivator.getPhoneNumberProviders()))
+        {
+            OperationSetPersistentPresence persPresOpSet
+                = provider.getOperationSet(
+                        OperationSetPersistentPresence.class);
+
+            // If there's no presence operation set continue to the
+            // next protocol provider.
+            if (persPresOpSet == null)
+                continue;
+
+            if (presenceOpSets.add(persPresOpSet))
+                persPresOpSet.addSubscriptionListener(this);
+
+            ContactGroup rootGroup
+                = persPresOpSet.getServerStoredContactListRoot();
+
+            addEntriesForGroup(rootGroup, entries);
+
+            Iterator<ContactGroup> subgroups = rootGroup.subgroups();
+
+            while (subgroups.hasNext())
+                addEntriesForGroup(subgroups.next(), entries);
+        }
+        return entries;
+    }
+
+    /**
+     * Adds the phone numbers of the contacts in the given group.
+     *
+     * @param group the <tt>ContactGroup</tt> to check for phone numbers
+     * @param entries the list to add the phone numbers to
+     */
+    private void addEntriesForGroup(ContactGroup group, List<Entry> entries)
+    {
+        Iterator<Contact> contacts = group.contacts();
+
+        while (contacts.hasNext())
+            addEntriesForContact(contacts.next(), entries);
+    }
+
+    /**
+     * Adds all phone numbers of the given contact.
+     *
+     * @param contact the <tt>contact</tt>, which phone details we're
+     * looking for
+     * @param entries the list to add the phone numbers to
+     */
+    private void addEntriesForContact(Contact contact, List<Entry> entries)
+    {
+        OperationSetServerStoredContactInfo infoOpSet
+            = contact.getProtocolProvider().getOperationSet(
+                OperationSetServerStoredContactInfo.class);
+
+        if (infoOpSet == null)
+            return;
+
+        Iterator<GenericDetail> details
+            = infoOpSet.getAllDetailsForContact(contact);
+
+        while (details.hasNext())
+        {
+            GenericDetail d = details.next();
+
+            if(d instanceof PhoneNumberDetail &&
+                !(d instanceof PagerDetail) &&
+                !(d instanceof FaxDetail))
+            {
+                PhoneNumberDetail pnd = (PhoneNumberDetail)d;
+
+                if(pnd.getNumber() != null &&
+                    pnd.getNumber().length() > 0)
+                {
+                    entries.add(
+                        new Entry(contact, pnd.getNumber(), getTypeKey(d)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the resource key of the localized type of a phone number.
+     *
+     * @param d the phone number detail
+     * @return the resource key of the type of <tt>d</tt>
+     */
+    private static String getTypeKey(GenericDetail d)
+    {
+        if(d instanceof WorkPhoneDetail)
+            return "service.gui.WORK_PHONE";
+        else if(d instanceof MobilePhoneDetail)
+            return "service.gui.MOBILE_PHONE";
+        else if(d instanceof VideoDetail)
+            return "service.gui.VIDEO_PHONE";
+        else
+            return "service.gui.HOME";
+    }
+
+    /**
+     * Stops listening to the contact lists.
+     */
+    void dispose()
+    {
+        synchronized (presenceOpSets)
+        {
+            for (OperationSetPersistentPresence opSet : presenceOpSets)
+                opSet.removeSubscriptionListener(this);
+            presenceOpSets.clear();
+        }
+        invalidate();
+    }
+
+    /**
+     * Returns the display name of the contact of a phone number.
+     *
+     * @param entry the phone number
+     * @return the display name of the contact
+     */
+    @Override
+    protected String getDisplayName(Entry entry)
+    {
+        return entry.contactName;
+    }
+
+    /**
+     * Returns the phone number and the address of its contact.
+     *
+     * @param entry the phone number
+     * @return the strings the phone number is found by
+     */
+    @Override
+    protected Collection<String> getSearchStrings(Entry entry)
+    {
+        return Arrays.asList(entry.number, entry.contactAddress);
+    }
+
+    /**
+     * Reloads the snapshot on the next query when a contact is added.
+     *
+     * @param evt the <tt>SubscriptionEvent</tt> that notified us
+     */
+    public void subscriptionCreated(SubscriptionEvent evt)
+    {
+        invalidate();
+    }
+
+    /**
+     * Does nothing, no contact was added.
+     *
+     * @param evt the <tt>SubscriptionEvent</tt> that notified us
+     */
+    public void subscriptionFailed(SubscriptionEvent evt)
+    {
+    }
+
+    /**
+     * Reloads the snapshot on the next query when a contact is removed.
+     *
+     * @param evt the <tt>SubscriptionEvent</tt> that notified us
+     */
+    public void subscriptionRemoved(SubscriptionEvent evt)
+    {
+        invalidate();
+    }
+
+    /**
+     * Does nothing, the groups of the contacts are not kept.
+     *
+     * @param evt the <tt>SubscriptionMovedEvent</tt> that notified us
+     */
+    public void subscriptionMoved(SubscriptionMovedEvent evt)
+    {
+    }
+
+    /**
+     * Reloads the snapshot on the next query when a contact is resolved.
+     *
+     * @param evt the <tt>SubscriptionEvent</tt> that notified us
+     */
+    public void subscriptionResolved(SubscriptionEvent evt)
+    {
+        invalidate();
+    }
+
+    /**
+     * Reloads the snapshot on the next query when a contact is modified.
+     *
+     * @param evt the <tt>ContactPropertyChangeEvent</tt> that notified us
+     */
+    public void contactModified(ContactPropertyChangeEvent evt)
+    {
+        invalidate();
+    }
+
+    /**
+     * A phone number of a contact.
+     */
+    public static class Entry
+    {
+        /**
+         * The protocol contact.
+         */
+        final Contact contact;
+
+        /**
+         * The display name of the contact when it was loaded.
+         */
+        final String contactName;
+
+        /**
+         * The address of the contact.
+         */
+        final String contactAddress;
+
+        /**
+         * The phone number.
+         */
+        final String number;
+
+        /**
+         * The resource key of the localized type of the phone number.
+         */
+        final String typeKey;
+
+        /**
+         * Creates an entry.
+         *
+         * @param contact the protocol contact
+         * @param number the phone number
+         * @param typeKey the resource key of the type of the phone number
+         */
+        Entry(Contact contact, String number, String typeKey)
+        {
+            this.contact = contact;
+            this.contactName = contact.getDisplayName();
+            this.contactAddress = contact.getAddress();
+            this.number = number;
+            this.typeKey = typeKey;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (!(o instanceof Entry))
+                return false;
+
+            Entry e = (Entry) o;
+
+            return contact.equals(e.contact)
+                && Objects.equals(contactName, e.contactName)
+                && Objects.equals(contactAddress, e.contactAddress)
+                && number.equals(e.number)
+                && typeKey.equals(e.typeKey);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(contact, number, typeKey);
+        }
+    }
+}
@@ -19,7 +19,7 @@
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.event.*;
 
-import java.util.*;
+import java.util.concurrent.*;
 
 import static net.java.sip.communicator.plugin.reconnectplugin.ReconnectPluginActivator.*;
 
@@ -54,9 +54,16 @@
     private final Object localStateMutex = new Object();
 
     /**
-     * Timer for scheduling the reconnect operation.
+     * Schedules the reconnects of this provider together with those of the
+     * other providers.
      */
-    private Timer timer = null;
+    private final ReconnectOrchestrator orchestrator;
+
+    /**
+     * Whether this wrapper has been cleared and must no longer reconnect its
+     * provider.
+     */
+    private boolean cleared = false;
 
     /**
      * Whether we had scheduled unregister for this provider.
@@ -70,9 +77,9 @@
     private Long reconnectOnNextUnregisteredDelay = null;
 
     /**
-     * The current reconnect task.
+     * The current reconnect.
      */
-    private ReconnectTask currentReconnect = null;
+    private ReconnectOrchestrator.Attempt currentReconnect = null;
 
     /**
      * Protects currentReconnect field.
@@ -83,12 +90,14 @@
      * Creates new wrapper.
      *
      * @param provider the provider that will be handled by this wrapper.
+     * @param orchestrator schedules the reconnects of <tt>provider</tt>.
      */
-    public PPReconnectWrapper(ProtocolProviderService provider)
+    public PPReconnectWrapper(
+        ProtocolProviderService provider,
+        ReconnectOrchestrator orchestrator)
     {
         this.provider = provider;
-        this.timer = new Timer("Reconnect timer p:"
-            + provider.getAccountID().getAccountUniqueID(), true);
+        this.orchestrator = orchestrator;
 
         provider.addRegistrationStateChangeListener(this);
     }
@@ -107,16 +116,14 @@ public ProtocolProviderService getProvider()
      */
     public void clear()
     {
-        if(timer != null)
-        {
-            timer.cancel();
-            timer = null;
-        }
+        cleared = true;
 
         this.provider.removeRegistrationStateChangeListener(this);
 
         // if currently reconnecting cancel
         cancelReconnect();
+
+        orchestrator.forget(provider);
     }
 
     /**
@@ -140,6 +147,10 @@ public void registrationStateChanged(RegistrationStateChangeEvent evt)
 
         ProtocolProviderService pp = (ProtocolProviderService) evt.getSource();
 
+        // frees the slot of a running reconnect for the next provider
+        orchestrator.finished(
+            pp, state.equals(RegistrationState.REGISTERED));
+
         synchronized(localStateMutex)
         {
             // state is already handled, nothing to do
@@ -270,7 +281,7 @@ private void cancelReconnect()
                 if(logger.isInfoEnabled())
                     logger.info("Cancel reconnect " + this.currentReconnect);
 
-                this.currentReconnect.cancel();
+                orchestrator.cancel(this.currentReconnect);
                 this.currentReconnect = null;
             }
         }
@@ -318,14 +329,14 @@ private void reconnect(long previousDelay)
     {
         long delay;
 
-        if (previousDelay != -1)
+        if (isSessionResumable())
         {
-            delay = Math.min(previousDelay * 2, MAX_RECONNECT_DELAY*1000);
+            delay = SESSION_RESUME_DELAY;
         }
         else
         {
-            delay = (long)(RECONNECT_DELAY_MIN
-                + Math.random() * RECONNECT_DELAY_MAX)*1000;
+            delay = ReconnectOrchestrator.nextDelay(
+                previousDelay, ThreadLocalRandom.current());
         }
 
         if (this.provider.getRegistrationState().equals(
@@ -362,7 +373,17 @@ void unregister()
 
         try
         {
-            this.provider.unregister();
+            // keep the session on the server so that the next register
+            // resumes it instead of logging in again
+            if (isSessionResumable())
+            {
+                this.provider.getOperationSet(
+                    OperationSetSessionResumption.class).suspend();
+            }
+            else
+            {
+                this.provider.unregister();
+            }
         }
         catch(Throwable t)
         {
@@ -370,6 +391,22 @@ void unregister()
         }
     }
 
+    /**
+     * Checks whether the session of the provider can be resumed on the next
+     * register.
+     *
+     * @return <tt>true</tt> if the provider supports session resumption and
+     * its current or last session is resumable.
+     */
+    private boolean isSessionResumable()
+    {
+        OperationSetSessionResumption resumption
+            = this.provider.getOperationSet(
+                OperationSetSessionResumption.class);
+
+        return resumption != null && resumption.isSessionResumable();
+    }
+
     /**
      * Prints current wrapper state.
      * @return string representing current wrapper state.
@@ -390,18 +427,15 @@ public String toString()
     }
 
     /**
-     * Schedules a reconnect if needed (if there is timer and connected
-     * interfaces and user request is not null).
+     * Schedules a reconnect if needed (if the wrapper is not cleared and
+     * there are connected interfaces).
      * @param delay The delay to use when creating the reconnect task.
      * @param pp the protocol provider that will be reconnected.
      */
-    private ReconnectTask scheduleReconnectIfNeeded(
+    private ReconnectOrchestrator.Attempt scheduleReconnectIfNeeded(
         long delay, ProtocolProviderService pp)
     {
-        final ReconnectTask task = new ReconnectTask();
-        task.delay = delay;
-
-        if (timer == null)
+        if (cleared)
         {
             return null;
         }
@@ -420,24 +454,17 @@ private ReconnectTask scheduleReconnectIfNeeded(
         }
 
         if(logger.isInfoEnabled())
-            logger.info("Reconnect " + pp + " after " + task.delay + " ms.");
-
-        timer.schedule(task, task.delay);
+            logger.info("Reconnect " + pp + " after " + delay + " ms.");
 
-        return task;
+        return orchestrator.schedule(pp, new ReconnectTask(), delay);
     }
 
     /**
-     * The task executed by the timer when time for reconnect comes.
+     * The task executed by the orchestrator when time for reconnect comes.
      */
     private class ReconnectTask
-        extends TimerTask
+        implements Runnable
     {
-        /**
-         * The delay with which was this task scheduled.
-         */
-        long delay;
-
         /**
          * Reconnects the provider.
          */
@@ -455,14 +482,9 @@ public void run()
             {
                 logger.error("cannot re-register provider will keep going",
                     ex);
-            }
-        }
 
-        @Override
-        public String toString()
-        {
-            return ReconnectTask.class.getSimpleName()
-                + " [delay=" + delay + ", provider=" + provider + "]";
+                orchestrator.finished(provider, false);
+            }
         }
     }
 }
@@ -0,0 +1,685 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.plugin.reconnectplugin;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.util.*;
+
+/**
+ * Schedules the reconnects of all providers. A reconnect whose delay has
+ * expired is not started right away but queued, and at most a fixed number of
+ * them are running at the same time, so that when the network comes back the
+ * accounts do not all compete for DNS, TLS and CPU at once. Queued reconnects
+ * are started in the order of their priority, and in the order they were
+ * queued for equal priorities.
+ * <p>
+ * A reconnect occupies its slot from the moment the provider is asked to
+ * register until the provider reports success or failure through
+ * {@link #finished(ProtocolProviderService, boolean)}, or until
+ * {@link #ATTEMPT_TIMEOUT} expires.
+ * <p>
+ * The time from the first scheduled reconnect of a provider to its successful
+ * registration is recorded in per-account {@link Statistics}.
+ */
+class ReconnectOrchestrator
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>ReconnectOrchestrator</tt> class
+     * and its instances for logging output.
+     */
+    private static final org.slf4j.Logger logger
+        = org.slf4j.LoggerFactory.getLogger(ReconnectOrchestrator.class);
+
+    /**
+     * The name of the property which specifies the maximum number of
+     * reconnects running at the same time.
+     */
+    static final String PNAME_MAX_CONCURRENT_RECONNECTS
+        = "net.java.sip.communicator.plugin.reconnectplugin."
+            + "MAX_CONCURRENT_RECONNECTS";
+
+    /**
+     * The default maximum number of reconnects running at the same time.
+     */
+    static final int DEFAULT_MAX_CONCURRENT_RECONNECTS = 2;
+
+    /**
+     * The time in milliseconds after which a running reconnect releases its
+     * slot even if the provider has not reported its outcome yet.
+     */
+    static final long ATTEMPT_TIMEOUT = 30 * 1000;
+
+    /**
+     * The maximum number of reconnects running at the same time.
+     */
+    private final int maxConcurrent;
+
+    /**
+     * Gives the priority of a provider, higher priorities reconnect first.
+     */
+    private final ToIntFunction<ProtocolProviderService> priority;
+
+    /**
+     * Expires the delays of the scheduled reconnects and the timeouts of the
+     * running ones.
+     */
+    private final TimingWheel timer;
+
+    /**
+     * Runs the reconnects. <tt>register</tt> may block for the whole login,
+     * so it must not run on the threads of {@link #timer}.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The reconnects whose delay has expired and which wait for a free slot.
+     */
+    private final PriorityQueue<Attempt> ready
+        = new PriorityQueue<>(
+                Comparator.comparingInt((Attempt a) -> -a.priority)
+                    .thenComparingLong(a -> a.sequence));
+
+    /**
+     * The running reconnects by provider.
+     */
+    private final Map<ProtocolProviderService, Attempt> running
+        = new HashMap<>();
+
+    /**
+     * The time in milliseconds the current outage of a provider started,
+     * i.e. when its first reconnect since it was last registered was
+     * scheduled.
+     */
+    private final Map<ProtocolProviderService, Long> outages
+        = new HashMap<>();
+
+    /**
+     * The reconnect statistics by account unique ID.
+     */
+    private final Map<String, Statistics> statistics = new HashMap<>();
+
+    /**
+     * Orders attempts with equal priorities.
+     */
+    private long nextSequence = 0;
+
+    /**
+     * Initializes a new <tt>ReconnectOrchestrator</tt>.
+     *
+     * @param maxConcurrent the maximum number of reconnects running at the
+     * same time
+     * @param priority gives the priority of a provider at the time its
+     * reconnect is queued, higher priorities reconnect first
+     * @param timer the <tt>TimingWheel</tt> which expires the delays
+     */
+    ReconnectOrchestrator(
+            int maxConcurrent,
+            ToIntFunction<ProtocolProviderService> priority,
+            TimingWheel timer)
+    {
+        if (maxConcurrent <= 0)
+            throw new IllegalArgumentException(
+                    "maxConcurrent: " + maxConcurrent);
+
+        this.maxConcurrent = maxConcurrent;
+        this.priority = priority;
+        this.timer = timer;
+
+        final AtomicInteger threadIndex = new AtomicInteger();
+
+        this.executor = Executors.newCachedThreadPool(r ->
+        {
+            Thread t
+                = new Thread(r, "Reconnect-" + threadIndex.incrementAndGet());
+
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Computes the delay of the next reconnect with decorrelated jitter: a
+     * random delay between the minimum and three times the previous delay,
+     * capped at the maximum. Unlike a plain exponential back-off, accounts
+     * which failed at the same time drift apart instead of retrying in lock
+     * step.
+     *
+     * @param previousDelay the delay of the previous reconnect in
+     * milliseconds or <tt>-1</tt> for the first one
+     * @param random the source of randomness
+     * @return the delay in milliseconds
+     */
+    static long nextDelay(long previousDelay, Random random)
+    {
+        long min = ReconnectPluginActivator.RECONNECT_DELAY_MIN * 1000L;
+
+        if (previousDelay < 0)
+        {
+            return min + (long) (random.nextDouble()
+                * ReconnectPluginActivator.RECONNECT_DELAY_MAX * 1000L);
+        }
+
+        long max = Math.max(min, previousDelay * 3);
+
+        return Math.min(
+            ReconnectPluginActivator.MAX_RECONNECT_DELAY * 1000L,
+            min + (long) (random.nextDouble() * (max - min)));
+    }
+
+    /**
+     * Schedules a reconnect of a provider.
+     *
+     * @param provider the provider to reconnect
+     * @param task registers the provider
+     * @param delay the delay in milliseconds after which the reconnect is
+     * queued
+     * @return the scheduled reconnect
+     */
+    Attempt schedule(
+            ProtocolProviderService provider,
+            Runnable task,
+            long delay)
+    {
+        Attempt attempt = new Attempt(provider, task, delay);
+
+        synchronized (this)
+        {
+            outages.putIfAbsent(provider, System.currentTimeMillis());
+        }
+
+        attempt.timeout = timer.schedule(() -> enqueue(attempt), delay);
+        return attempt;
+    }
+
+    /**
+     * Cancels a reconnect. A running reconnect releases its slot.
+     *
+     * @param attempt the reconnect to cancel
+     */
+    void cancel(Attempt attempt)
+    {
+        synchronized (this)
+        {
+            if (attempt.state == Attempt.CANCELLED)
+                return;
+
+            int state = attempt.state;
+
+            attempt.state = Attempt.CANCELLED;
+            if (state == Attempt.SCHEDULED)
+            {
+                attempt.timeout.cancel();
+                return;
+            }
+            else if (state == Attempt.READY)
+            {
+                ready.remove(attempt);
+                return;
+            }
+            else if (running.get(attempt.provider) != attempt)
+            {
+                return;
+            }
+
+            release(attempt);
+        }
+
+        dispatch();
+    }
+
+    /**
+     * Notifies that a provider has registered or failed to. Releases the
+     * slot of its running reconnect, if any, and records the reconnect
+     * latency on success.
+     *
+     * @param provider the provider
+     * @param registered <tt>true</tt> if the provider has registered
+     */
+    void finished(ProtocolProviderService provider, boolean registered)
+    {
+        synchronized (this)
+        {
+            Attempt attempt = running.get(provider);
+
+            if (attempt != null)
+            {
+                attempt.state = Attempt.CANCELLED;
+                release(attempt);
+            }
+
+            if (registered)
+            {
+                Long start = outages.remove(provider);
+
+                if (start != null)
+                {
+                    long latency = System.currentTimeMillis() - start;
+                    Statistics stats = getStatisticsFor(provider);
+
+                    stats.record(latency);
+                    if (logger.isInfoEnabled())
+                    {
+                        logger.info("Reconnected " + provider + " in "
+                            + latency + " ms, " + stats);
+                    }
+                }
+            }
+            else if (attempt != null)
+            {
+                getStatisticsFor(provider).failures++;
+            }
+        }
+
+        dispatch();
+    }
+
+    /**
+     * Forgets a provider which is no longer reconnected.
+     *
+     * @param provider the provider
+     */
+    synchronized void forget(ProtocolProviderService provider)
+    {
+        outages.remove(provider);
+    }
+
+    /**
+     * Gets the reconnect statistics of an account.
+     *
+     * @param accountID the account
+     * @return the statistics or <tt>null</tt> if the account has not been
+     * reconnected yet
+     */
+    synchronized Statistics getStatistics(AccountID accountID)
+    {
+        Statistics stats = statistics.get(accountID.getAccountUniqueID());
+
+        return (stats == null) ? null : stats.copy();
+    }
+
+    /**
+     * Gets the number of reconnects running at the moment.
+     *
+     * @return the number of running reconnects
+     */
+    synchronized int getRunningCount()
+    {
+        return running.size();
+    }
+
+    /**
+     * Stops the threads of this orchestrator. Scheduled reconnects are
+     * dropped.
+     */
+    void stop()
+    {
+        synchronized (this)
+        {
+            ready.clear();
+            running.clear();
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues a reconnect whose delay has expired.
+     *
+     * @param attempt the reconnect
+     */
+    private void enqueue(Attempt attempt)
+    {
+        // outside the lock as it may look into the provider's state
+        int p = priority.applyAsInt(attempt.provider);
+
+        synchronized (this)
+        {
+            if (attempt.state != Attempt.SCHEDULED)
+                return;
+
+            attempt.state = Attempt.READY;
+            attempt.priority = p;
+            attempt.sequence = nextSequence++;
+            ready.add(attempt);
+        }
+
+        dispatch();
+    }
+
+    /**
+     * Starts queued reconnects while there are free slots.
+     */
+    private void dispatch()
+    {
+        while (true)
+        {
+            Attempt attempt;
+
+            synchronized (this)
+            {
+                if (running.size() >= maxConcurrent || ready.isEmpty())
+                    return;
+
+                attempt = ready.poll();
+
+                // one reconnect per provider at a time, the newer wins
+                Attempt previous = running.get(attempt.provider);
+                if (previous != null)
+                {
+                    previous.state = Attempt.CANCELLED;
+                    release(previous);
+                }
+
+                attempt.state = Attempt.RUNNING;
+                running.put(attempt.provider, attempt);
+                attempt.timeout
+                    = timer.schedule(
+                            () -> expire(attempt),
+                            ATTEMPT_TIMEOUT);
+                getStatisticsFor(attempt.provider).attempts++;
+            }
+
+            try
+            {
+                executor.execute(attempt.task);
+            }
+            catch (RejectedExecutionException ex)
+            {
+                // stopped
+                return;
+            }
+        }
+    }
+
+    /**
+     * Releases the slot of a reconnect which has not finished in time.
+     *
+     * @param attempt the reconnect
+     */
+    private void expire(Attempt attempt)
+    {
+        synchronized (this)
+        {
+            if (attempt.state != Attempt.RUNNING
+                    || running.get(attempt.provider) != attempt)
+                return;
+
+            logger.warn("Reconnect of " + attempt.provider
+                + " did not finish in " + ATTEMPT_TIMEOUT + " ms");
+
+            attempt.state = Attempt.CANCELLED;
+            release(attempt);
+        }
+
+        dispatch();
+    }
+
+    /**
+     * Removes a running reconnect. Must be called with the lock held.
+     *
+     * @param attempt the reconnect
+     */
+    private void release(Attempt attempt)
+    {
+        running.remove(attempt.provider, attempt);
+        if (attempt.timeout != null)
+            attempt.timeout.cancel();
+    }
+
+    /**
+     * Gets or creates the statistics of a provider. Must be called with the
+     * lock held.
+     *
+     * @param provider the provider
+     * @return the statistics of the account of <tt>provider</tt>
+     */
+    private Statistics getStatisticsFor(ProtocolProviderService provider)
+    {
+        return statistics.computeIfAbsent(
+            provider.getAccountID().getAccountUniqueID(),
+            k -> new Statistics());
+    }
+
+    /**
+     * A reconnect of a provider.
+     */
+    static class Attempt
+    {
+        /**
+         * The reconnect waits for its delay to expire.
+         */
+        private static final int SCHEDULED = 0;
+
+        /**
+         * The reconnect waits for a free slot.
+         */
+        private static final int READY = 1;
+
+        /**
+         * The provider is reconnecting.
+         */
+        private static final int RUNNING = 2;
+
+        /**
+         * The reconnect was cancelled or has finished.
+         */
+        private static final int CANCELLED = 3;
+
+        /**
+         * The provider to reconnect.
+         */
+        final ProtocolProviderService provider;
+
+        /**
+         * Registers the provider.
+         */
+        private final Runnable task;
+
+        /**
+         * The delay in milliseconds the reconnect was scheduled with.
+         */
+        final long delay;
+
+        /**
+         * The state of the reconnect, guarded by the orchestrator.
+         */
+        private int state = SCHEDULED;
+
+        /**
+         * The priority the reconnect was queued with.
+         */
+        private int priority;
+
+        /**
+         * The order in which the reconnect was queued.
+         */
+        private long sequence;
+
+        /**
+         * Expires the delay or, once running, the timeout of the reconnect.
+         */
+        private TimingWheel.Timeout timeout;
+
+        /**
+         * Initializes a new <tt>Attempt</tt>.
+         *
+         * @param provider the provider to reconnect
+         * @param task registers the provider
+         * @param delay the delay in milliseconds
+         */
+        private Attempt(
+                ProtocolProviderService provider,
+                Runnable task,
+                long delay)
+        {
+            this.provider = provider;
+            this.task = task;
+            this.delay = delay;
+        }
+
+        @Override
+        public String toString()
+        {
+            return Attempt.class.getSimpleName()
+                + " [delay=" + delay + ", provider=" + provider + "]";
+        }
+    }
+
+    /**
+     * The reconnect statistics of an account.
+     */
+    static class Statistics
+    {
+        /**
+         * The number of reconnects started.
+         */
+        private long attempts;
+
+        /**
+         * The number of started reconnects which failed.
+         */
+        private long failures;
+
+        /**
+         * The number of outages which ended with a successful registration.
+         */
+        private long reconnects;
+
+        /**
+         * The sum of the latencies of all reconnects in milliseconds.
+         */
+        private long totalLatency;
+
+        /**
+         * The latency of the last reconnect in milliseconds.
+         */
+        private long lastLatency;
+
+        /**
+         * The largest latency of a reconnect in milliseconds.
+         */
+        private long maxLatency;
+
+        /**
+         * Records the latency of a successful reconnect.
+         *
+         * @param latency the time in milliseconds from the start of the
+         * outage to the registration
+         */
+        private void record(long latency)
+        {
+            reconnects++;
+            totalLatency += latency;
+            lastLatency = latency;
+            maxLatency = Math.max(maxLatency, latency);
+        }
+
+        /**
+         * Creates a copy of these statistics.
+         *
+         * @return the copy
+         */
+        private Statistics copy()
+        {
+            Statistics copy = new Statistics();
+
+            copy.attempts = attempts;
+            copy.failures = failures;
+            copy.reconnects = reconnects;
+            copy.totalLatency = totalLatency;
+            copy.lastLatency = lastLatency;
+            copy.maxLatency = maxLatency;
+            return copy;
+        }
+
+        /**
+         * Gets the number of reconnects started.
+         *
+         * @return the number of reconnects started
+         */
+        public long getAttempts()
+        {
+            return attempts;
+        }
+
+        /**
+         * Gets the number of started reconnects which failed.
+         *
+         * @return the number of failed reconnects
+         */
+        public long getFailures()
+        {
+            return failures;
+        }
+
+        /**
+         * Gets the number of outages which ended with a successful
+         * registration.
+         *
+         * @return the number of successful reconnects
+         */
+        public long getReconnects()
+        {
+            return reconnects;
+        }
+
+        /**
+         * Gets the average latency of the successful reconnects.
+         *
+         * @return the average latency in milliseconds
+         */
+        public long getAverageLatency()
+        {
+            return (reconnects == 0) ? 0 : (totalLatency / reconnects);
+        }
+
+        /**
+         * Gets the latency of the last successful reconnect.
+         *
+         * @return the latency in milliseconds
+         */
+        public long getLastLatency()
+        {
+            return lastLatency;
+        }
+
+        /**
+         * Gets the largest latency of a successful reconnect.
+         *
+         * @return the latency in milliseconds
+         */
+        public long getMaxLatency()
+        {
+            return maxLatency;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "attempts=" + attempts
+                + ", failures=" + failures
+                + ", reconnects=" + reconnects
+                + ", averageLatency=" + getAverageLatency()
+                + ", maxLatency=" + maxLatency;
+        }
+    }
+}
@@ -20,6 +20,7 @@
 import java.util.*;
 import java.util.stream.*;
 
+import net.java.sip.communicator.service.contactlist.*;
 import net.java.sip.communicator.service.gui.*;
 import net.java.sip.communicator.service.netaddr.*;
 import net.java.sip.communicator.service.netaddr.event.*;
@@ -27,6 +28,7 @@
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.event.*;
 
+import net.java.sip.communicator.util.*;
 import net.java.sip.communicator.util.osgi.*;
 import org.jitsi.service.configuration.*;
 import org.jitsi.service.resources.*;
@@ -116,6 +118,12 @@
      */
     static final int MAX_RECONNECT_DELAY = 300; // sec
 
+    /**
+     * The delay before reconnecting a provider whose session can be resumed.
+     * Resuming does not log in again, so there is no need to back off.
+     */
+    static final long SESSION_RESUME_DELAY = 500; // ms
+
     /**
      * Network notifications event type.
      */
@@ -131,10 +139,15 @@
             "ATLEAST_ONE_SUCCESSFUL_CONNECTION";
 
     /**
-     * Timer used to filter out too frequent "network down" notifications
+     * Timeout used to filter out too frequent "network down" notifications
      * on Android.
      */
-    private Timer delayedNetworkDown;
+    private TimingWheel.Timeout delayedNetworkDown;
+
+    /**
+     * Schedules the reconnects of all providers.
+     */
+    private ReconnectOrchestrator orchestrator;
 
     /**
      * Delay used for filtering out "network down" notifications.
@@ -162,6 +175,14 @@ public ReconnectPluginActivator()
     public void startWithServices(BundleContext bundleContext)
     {
         ReconnectPluginActivator.bundleContext = bundleContext;
+
+        this.orchestrator = new ReconnectOrchestrator(
+            getConfigurationService().getInt(
+                ReconnectOrchestrator.PNAME_MAX_CONCURRENT_RECONNECTS,
+                ReconnectOrchestrator.DEFAULT_MAX_CONCURRENT_RECONNECTS),
+            ReconnectPluginActivator::getReconnectPriority,
+            TimingWheel.getInstance());
+
         bundleContext.addServiceListener(this);
 
         this.networkAddressManagerService
@@ -204,6 +225,27 @@ public void startWithServices(BundleContext bundleContext)
         }
     }
 
+    /**
+     * Stops this bundle.
+     *
+     * @param bundleContext the <tt>BundleContext</tt> in which this bundle is
+     * being stopped
+     */
+    @Override
+    public void stop(BundleContext bundleContext)
+        throws Exception
+    {
+        bundleContext.removeServiceListener(this);
+
+        if (orchestrator != null)
+        {
+            orchestrator.stop();
+            orchestrator = null;
+        }
+
+        super.stop(bundleContext);
+    }
+
     /**
      * Returns the <tt>UIService</tt> obtained from the bundle context.
      *
@@ -360,7 +402,7 @@ private void handleProviderAdded(ProtocolProviderService provider)
         // we just create the instance, if the instance successfully registers
         // will use addReconnectEnabledProvider to add itself to those we will
         // handle
-        new PPReconnectWrapper(provider);
+        new PPReconnectWrapper(provider, orchestrator);
     }
 
     /**
@@ -619,6 +661,58 @@ private static void setAtLeastOneSuccessfulConnection(
            Boolean.valueOf(value).toString());
     }
 
+    /**
+     * Gets the priority with which a provider is reconnected. Providers with
+     * calls in progress come first, followed by those with joined chat rooms
+     * or open chats.
+     *
+     * @param pp the protocol provider
+     * @return the priority, higher values reconnect first
+     */
+    static int getReconnectPriority(ProtocolProviderService pp)
+    {
+        OperationSetBasicTelephony<?> telephony
+            = pp.getOperationSet(OperationSetBasicTelephony.class);
+
+        if (telephony != null && telephony.getActiveCalls().hasNext())
+        {
+            return 2;
+        }
+
+        OperationSetMultiUserChat muc
+            = pp.getOperationSet(OperationSetMultiUserChat.class);
+
+        if (muc != null && !muc.getCurrentlyJoinedChatRooms().isEmpty())
+        {
+            return 1;
+        }
+
+        UIService uiService = getUIService();
+
+        if (uiService != null)
+        {
+            for (Chat chat : uiService.getChats())
+            {
+                try
+                {
+                    MetaContact metaContact = uiService.getChatContact(chat);
+
+                    if (metaContact != null
+                        && metaContact.getContactsForProvider(pp).hasNext())
+                    {
+                        return 1;
+                    }
+                }
+                catch (Exception ex)
+                {
+                    // not a one to one chat
+                }
+            }
+        }
+
+        return 0;
+    }
+
     /**
      * Called when first connected interface is added to
      * {@link #connectedInterfaces} list.
@@ -649,15 +743,8 @@ private void onNetworkDown()
             // even if it was already enabled by user
             if(delayedNetworkDown == null)
             {
-                delayedNetworkDown = new Timer();
-                delayedNetworkDown.schedule(new TimerTask()
-                {
-                    @Override
-                    public void run()
-                    {
-                        notifyNetworkDown();
-                    }
-                }, NETWORK_DOWN_THRESHOLD);
+                delayedNetworkDown = TimingWheel.getInstance().schedule(
+                    this::notifyNetworkDown, NETWORK_DOWN_THRESHOLD);
             }
         }
     }
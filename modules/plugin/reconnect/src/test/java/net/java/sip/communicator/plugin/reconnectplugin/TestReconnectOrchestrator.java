@@ -0,0 +1,259 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.plugin.reconnectplugin;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import net.java.sip.communicator.impl.protocol.mock.*;
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.util.*;
+
+import org.junit.*;
+
+/**
+ * Tests the admission, ordering and statistics of the reconnects scheduled by
+ * <tt>ReconnectOrchestrator</tt> using mock protocol providers.
+ */
+public class TestReconnectOrchestrator
+{
+    /**
+     * The wheel which expires the delays.
+     */
+    private TimingWheel wheel;
+
+    /**
+     * The priorities of the providers.
+     */
+    private final Map<ProtocolProviderService, Integer> priorities
+        = new ConcurrentHashMap<>();
+
+    /**
+     * The orchestrator under test.
+     */
+    private ReconnectOrchestrator orchestrator;
+
+    @Before
+    public void setUp()
+    {
+        wheel = new TimingWheel("TestReconnectOrchestrator", 10, 8, 2);
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (orchestrator != null)
+            orchestrator.stop();
+        wheel.stop();
+    }
+
+    /**
+     * Creates the orchestrator under test.
+     *
+     * @param maxConcurrent the maximum number of running reconnects
+     */
+    private void createOrchestrator(int maxConcurrent)
+    {
+        orchestrator
+            = new ReconnectOrchestrator(
+                    maxConcurrent,
+                    pp -> priorities.getOrDefault(pp, 0),
+                    wheel);
+    }
+
+    /**
+     * Tests that no more than the maximum number of reconnects run at the
+     * same time and that all of them eventually run.
+     */
+    @Test
+    public void testConcurrencyIsCapped()
+        throws Exception
+    {
+        createOrchestrator(2);
+
+        final int count = 6;
+        final CountDownLatch done = new CountDownLatch(count);
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        for (int i = 0; i < count; i++)
+        {
+            final MockProvider pp = new MockProvider("user" + i);
+
+            orchestrator.schedule(pp, () ->
+            {
+                int now = concurrent.incrementAndGet();
+
+                maxConcurrent.accumulateAndGet(now, Math::max);
+                try
+                {
+                    Thread.sleep(50);
+                }
+                catch (InterruptedException ex)
+                {
+                    return;
+                }
+                concurrent.decrementAndGet();
+                orchestrator.finished(pp, true);
+                done.countDown();
+            }, 0);
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(maxConcurrent.get() <= 2);
+        assertEquals(0, orchestrator.getRunningCount());
+    }
+
+    /**
+     * Tests that queued reconnects start in the order of their priority.
+     */
+    @Test
+    public void testPriorityOrder()
+        throws Exception
+    {
+        createOrchestrator(1);
+
+        // occupies the only slot until the others are queued
+        final MockProvider blocker = new MockProvider("blocker");
+        final CountDownLatch blockerStarted = new CountDownLatch(1);
+
+        orchestrator.schedule(blocker, blockerStarted::countDown, 0);
+        assertTrue(blockerStarted.await(5, TimeUnit.SECONDS));
+
+        final List<String> order = new CopyOnWriteArrayList<>();
+        final CountDownLatch done = new CountDownLatch(3);
+        String[] names = { "low", "high", "medium" };
+        int[] priority = { 0, 2, 1 };
+
+        for (int i = 0; i < names.length; i++)
+        {
+            final MockProvider pp = new MockProvider(names[i]);
+            final String name = names[i];
+
+            priorities.put(pp, priority[i]);
+            orchestrator.schedule(pp, () ->
+            {
+                order.add(name);
+                orchestrator.finished(pp, true);
+                done.countDown();
+            }, 0);
+        }
+
+        // let the wheel queue them behind the blocker
+        Thread.sleep(200);
+        assertTrue(order.isEmpty());
+
+        orchestrator.finished(blocker, false);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("high", "medium", "low"), order);
+    }
+
+    /**
+     * Tests that a cancelled reconnect does not run.
+     */
+    @Test
+    public void testCancel()
+        throws Exception
+    {
+        createOrchestrator(1);
+
+        final AtomicBoolean ran = new AtomicBoolean();
+        MockProvider pp = new MockProvider("user");
+
+        ReconnectOrchestrator.Attempt attempt
+            = orchestrator.schedule(pp, () -> ran.set(true), 100);
+
+        orchestrator.cancel(attempt);
+        Thread.sleep(300);
+        assertFalse(ran.get());
+    }
+
+    /**
+     * Tests that the latency from the first scheduled reconnect to the
+     * registration is recorded.
+     */
+    @Test
+    public void testStatistics()
+        throws Exception
+    {
+        createOrchestrator(1);
+
+        final MockProvider pp = new MockProvider("user");
+        final CountDownLatch failed = new CountDownLatch(1);
+        final CountDownLatch registered = new CountDownLatch(1);
+
+        assertNull(orchestrator.getStatistics(pp.getAccountID()));
+
+        orchestrator.schedule(pp, () ->
+        {
+            orchestrator.finished(pp, false);
+            failed.countDown();
+        }, 50);
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+
+        orchestrator.schedule(pp, () ->
+        {
+            orchestrator.finished(pp, true);
+            registered.countDown();
+        }, 50);
+        assertTrue(registered.await(5, TimeUnit.SECONDS));
+
+        ReconnectOrchestrator.Statistics stats
+            = orchestrator.getStatistics(pp.getAccountID());
+
+        assertEquals(2, stats.getAttempts());
+        assertEquals(1, stats.getFailures());
+        assertEquals(1, stats.getReconnects());
+        assertTrue(stats.getLastLatency() >= 100);
+        assertEquals(stats.getLastLatency(), stats.getMaxLatency());
+    }
+
+    /**
+     * Tests that the delays stay within the bounds of decorrelated jitter.
+     */
+    @Test
+    public void testNextDelay()
+    {
+        Random random = new Random(0);
+        long min = ReconnectPluginActivator.RECONNECT_DELAY_MIN * 1000L;
+        long max = ReconnectPluginActivator.MAX_RECONNECT_DELAY * 1000L;
+
+        for (int i = 0; i < 1000; i++)
+        {
+            long first = ReconnectOrchestrator.nextDelay(-1, random);
+
+            assertTrue(first >= min);
+            assertTrue(first <= min
+                + ReconnectPluginActivator.RECONNECT_DELAY_MAX * 1000L);
+
+            long next = ReconnectOrchestrator.nextDelay(10000, random);
+
+            assertTrue(next >= min);
+            assertTrue(next <= 30000);
+
+            long capped = ReconnectOrchestrator.nextDelay(max, random);
+
+            assertTrue(capped >= min);
+            assertTrue(capped <= max);
+        }
+    }
+}
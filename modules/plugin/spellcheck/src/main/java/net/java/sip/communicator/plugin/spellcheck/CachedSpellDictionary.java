@@ -0,0 +1,119 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.plugin.spellcheck;
+
+import java.io.*;
+import java.util.*;
+
+import org.dts.spell.dictionary.*;
+import org.dts.spell.event.*;
+
+/**
+ * Dictionary shared by all chats which remembers the verdicts of the recently
+ * checked words. Messages mostly consist of the same few hundred words, so
+ * most checks are answered without going through the affix rules of the
+ * underlying dictionary. Access to the underlying dictionary is serialized
+ * since it isn't thread safe.
+ */
+class CachedSpellDictionary
+    implements SpellDictionary
+{
+    /**
+     * Maximum number of verdicts remembered.
+     */
+    private static final int MAX_CACHED_WORDS = 4096;
+
+    private final SpellDictionary dict;
+
+    /**
+     * Verdicts of the recently checked words, least recently used first.
+     */
+    private final Map<String, Boolean> verdicts =
+        new LinkedHashMap<String, Boolean>(256, 0.75f, true)
+        {
+            private static final long serialVersionUID = 0L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, Boolean> eldest)
+            {
+                return size() > MAX_CACHED_WORDS;
+            }
+        };
+
+    CachedSpellDictionary(SpellDictionary dict)
+    {
+        this.dict = dict;
+    }
+
+    public synchronized boolean isCorrect(String word)
+    {
+        Boolean verdict = this.verdicts.get(word);
+        if (verdict == null)
+        {
+            verdict = this.dict.isCorrect(word);
+            this.verdicts.put(word, verdict);
+        }
+
+        return verdict;
+    }
+
+    public synchronized void addWord(String word)
+        throws SpellDictionaryException
+    {
+        this.dict.addWord(word);
+        this.verdicts.remove(word);
+    }
+
+    public synchronized List<String> getSuggestions(String word)
+    {
+        return this.dict.getSuggestions(word);
+    }
+
+    public synchronized List<String> getSuggestions(String word,
+        int maxSuggestions)
+    {
+        return this.dict.getSuggestions(word, maxSuggestions);
+    }
+
+    public Locale getLocale()
+    {
+        return this.dict.getLocale();
+    }
+
+    public synchronized boolean isLoad()
+    {
+        return this.dict.isLoad();
+    }
+
+    public synchronized void load() throws IOException
+    {
+        this.dict.load();
+        this.verdicts.clear();
+    }
+
+    public void addProgressListener(ProgressListener listener)
+    {
+        this.dict.addProgressListener(listener);
+    }
+
+    public void removeProgressListener(ProgressListener listener)
+    {
+        this.dict.removeProgressListener(listener);
+    }
+}
@@ -54,7 +54,8 @@
 
     private boolean isEnabled = true;
 
-    private SpellDictionary dict;
+    // read by the background thread checking words
+    private volatile SpellDictionary dict;
 
     private boolean isAttached = false;
 
@@ -114,20 +115,13 @@ public List<JMenuItem> getMenuElements(final Chat chat,
                     int index = comp.viewToModel(event.getPoint());
                     try
                     {
-                        String compText =
-                            comp.getDocument().getText(0,
-                                comp.getDocument().getLength());
+                        Document doc = comp.getDocument();
 
-                        if (index != -1 && compText.length() != 0)
+                        if (index != -1 && doc.getLength() != 0)
                         {
-
-                            return getCorrections(Word.getWord(
-                                comp.getDocument().getText(0,
-                                    comp.getDocument().getLength()), index,
-                                false));
-
+                            return getCorrections(
+                                Word.getWord(doc, index, false));
                         }
-
                     }
                     catch (BadLocationException e)
                     {
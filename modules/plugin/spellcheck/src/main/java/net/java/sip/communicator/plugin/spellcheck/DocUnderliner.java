@@ -18,6 +18,9 @@
 package net.java.sip.communicator.plugin.spellcheck;
 
 import java.awt.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
 
 import javax.swing.*;
 import javax.swing.event.*;
@@ -26,7 +29,9 @@
 /**
  * Notifies subclasses when words are changed and lets them decide if text
  * should be underlined with a red squiggle. Text appended to the end isn't
- * formatted until the word's completed.
+ * formatted until the word's completed. Only the words around a change are
+ * re-examined and they're checked on a background thread shared by all chats,
+ * the underlining being updated on the event dispatch thread afterward.
  *
  * @author Damian Johnson
  */
@@ -39,12 +44,43 @@
 
     private static final DefaultHighlighter.DefaultHighlightPainter UNDERLINER;
 
+    /**
+     * Checks the words of all chats so typing never waits for the dictionary.
+     */
+    private static final ExecutorService CHECKER =
+        Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "Spell checker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
     private final Highlighter docHighlighter;
 
     private final CaretListener endChecker;
 
     private boolean isEnabled = true;
 
+    /**
+     * Document of the last change, used to track where the checked words
+     * moved to while they were being checked.
+     */
+    private Document document;
+
+    /**
+     * Number of changes of the document, checked words are underlined at their
+     * original bounds if it didn't change in the meantime.
+     */
+    private int changes = 0;
+
+    /**
+     * Number of resets, checks started before the last reset are dropped.
+     */
+    private int resets = 0;
+
     static
     {
         UNDERLINER =
@@ -120,13 +156,20 @@ public void caretUpdate(CaretEvent event)
                     Document doc = comp.getDocument();
 
                     boolean currentlyAtEnd = event.getDot() == doc.getLength();
-                    if (isEnabled && this.atEnd && !currentlyAtEnd)
+                    if (isEnabled && this.atEnd && !currentlyAtEnd
+                        && doc.getLength() > 0)
                     {
-                        String text = comp.getText();
-                        Word changed =
-                            Word.getWord(text, text.length() - 1, false);
-                        format(changed);
-                        promptRepaint();
+                        try
+                        {
+                            document = doc;
+                            format(Word.getWord(doc, doc.getLength() - 1,
+                                false));
+                        }
+                        catch (BadLocationException exc)
+                        {
+                            logger.error("Bad bounds (programmer error in "
+                                + "spell checker)", exc);
+                        }
                     }
 
                     this.atEnd = currentlyAtEnd;
@@ -205,28 +248,32 @@ public void insertUpdate(DocumentEvent event)
         if (!this.isEnabled)
             return;
 
+        List<Word> words = new ArrayList<Word>();
+
         try
         {
             Document doc = event.getDocument();
-            String text = doc.getText(0, doc.getLength());
+            int offset = event.getOffset();
+
+            this.document = doc;
+            this.changes++;
 
             if (event.getLength() == 1)
             {
-                char changeChar = text.charAt(event.getOffset());
-                if (getCaretPosition() == text.length() - 1)
+                char changeChar = Word.charAt(doc, offset);
+                if (getCaretPosition() == doc.getLength() - 1)
                 {
                     if (!Character.isLetter(changeChar))
                     {
                         // finished last word
-                        Word last = Word.getWord(text, text.length() - 1, true);
-                        format(last);
+                        words.add(
+                            Word.getWord(doc, doc.getLength() - 1, true));
                     }
                     else
                     {
                         // new character at end (ensure it isn't initially
                         // underlined)
-                        clearUnderlining(event.getOffset(),
-                            event.getOffset() + 1);
+                        clearUnderlining(offset, offset + 1);
                     }
                 }
                 else
@@ -234,25 +281,16 @@ public void insertUpdate(DocumentEvent event)
                     if (Character.isLetter(changeChar))
                     {
                         // change within word
-                        Word changed;
-                        int previousIndex = Math.max(0, event.getOffset() - 1);
-                        if (Character.isLetter(text.charAt(previousIndex)))
-                            changed =
-                                Word.getWord(text, event.getOffset(), true);
-                        else
-                            changed =
-                                Word.getWord(text, event.getOffset(), false);
-                        format(changed);
+                        int previousIndex = Math.max(0, offset - 1);
+                        words.add(Word.getWord(doc, offset,
+                            Character.isLetter(
+                                Word.charAt(doc, previousIndex))));
                     }
                     else
                     {
                         // dividing a word - need to check both sides
-                        Word firstWord =
-                            Word.getWord(text, event.getOffset(), true);
-                        Word secondWord =
-                            Word.getWord(text, event.getOffset() + 1, false);
-                        format(firstWord);
-                        format(secondWord);
+                        words.add(Word.getWord(doc, offset, true));
+                        words.add(Word.getWord(doc, offset + 1, false));
                     }
                 }
             }
@@ -260,15 +298,15 @@ public void insertUpdate(DocumentEvent event)
             {
                 // pasting in a chunk of text (checks all words in modified
                 // range)
-                Word changed = Word.getWord(text, event.getOffset(), true);
+                Word changed = Word.getWord(doc, offset, true);
                 int wordStart = changed.getStart();
-                while (wordStart < event.getOffset() + event.getLength())
+                while (wordStart < offset + event.getLength())
                 {
-                    format(changed);
+                    words.add(changed);
                     int end =
                         Math.min(changed.getStart()
-                            + changed.getText().length() + 1, text.length());
-                    changed = Word.getWord(text, end, false);
+                            + changed.getText().length() + 1, doc.getLength());
+                    changed = Word.getWord(doc, end, false);
                     wordStart = end;
                 }
             }
@@ -283,6 +321,7 @@ public void insertUpdate(DocumentEvent event)
             logger.error("Error words processing", exc);
         }
 
+        check(words);
         promptRepaint();
     }
 
@@ -294,18 +333,22 @@ public void removeUpdate(DocumentEvent event)
         try
         {
             Document doc = event.getDocument();
-            String text = doc.getText(0, doc.getLength());
-            if (text.length() != 0)
+            int offset = event.getOffset();
+
+            this.document = doc;
+            this.changes++;
+
+            if (doc.getLength() != 0)
             {
                 Word changed;
-                if (event.getOffset() == 0
-                    || !Character.isLetter(text.charAt(event.getOffset() - 1)))
+                if (offset == 0
+                    || !Character.isLetter(Word.charAt(doc, offset - 1)))
                 {
-                    changed = Word.getWord(text, event.getOffset(), false);
+                    changed = Word.getWord(doc, offset, false);
                 }
                 else
                 {
-                    changed = Word.getWord(text, event.getOffset() - 1, true);
+                    changed = Word.getWord(doc, offset - 1, true);
                 }
 
                 format(changed);
@@ -341,22 +384,99 @@ public CaretListener getEndChecker()
     }
 
     /**
-     * Formats the word with the appropriate underlining (or lack thereof).
+     * Formats the word with the appropriate underlining (or lack thereof) once
+     * it's been checked.
      *
      * @param word word to be formatted
      */
     public void format(Word word)
     {
-        if (!this.isEnabled)
+        check(Collections.singletonList(word));
+    }
+
+    /**
+     * Checks words on the background thread and formats them with the
+     * appropriate underlining on the event dispatch thread afterward. Words
+     * which have been changed in the meantime are left alone since the change
+     * prompts them to be checked again.
+     *
+     * @param words words to be formatted
+     */
+    private void check(List<Word> words)
+    {
+        if (!this.isEnabled || words.isEmpty())
+            return;
+
+        final Document doc = this.document;
+        final int changes = this.changes;
+        final int resets = this.resets;
+        final List<Check> checks = new ArrayList<Check>(words.size());
+
+        for (Word word : words)
+        {
+            if (word.getText().length() > 0)
+                checks.add(new Check(doc, word));
+        }
+
+        if (checks.isEmpty())
+            return;
+
+        CHECKER.execute(new Runnable()
+        {
+            public void run()
+            {
+                for (Check check : checks)
+                {
+                    try
+                    {
+                        check.underline = getFormatting(check.text);
+                    }
+                    catch (Throwable exc)
+                    {
+                        logger.error("Error words processing", exc);
+                    }
+                }
+
+                SwingUtilities.invokeLater(new Runnable()
+                {
+                    public void run()
+                    {
+                        apply(checks, doc, changes, resets);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Updates the underlining of checked words.
+     *
+     * @param checks verdicts for the words
+     * @param doc document of the words
+     * @param changes number of changes of the document when the words were
+     *            submitted
+     * @param resets number of resets when the words were submitted
+     */
+    private void apply(List<Check> checks, Document doc, int changes,
+        int resets)
+    {
+        if (!this.isEnabled || resets != this.resets)
             return;
 
-        String text = word.getText();
-        if (text.length() > 0)
+        boolean unchanged = changes == this.changes;
+        for (Check check : checks)
         {
-            clearUnderlining(word.getStart(), word.getStart() + text.length());
-            if (getFormatting(text))
-                underlineRange(word.getStart(), word.getStart() + text.length());
+            int start = unchanged ? check.start : check.getStart(doc);
+            if (start < 0 || (!unchanged && doc != this.document))
+                continue;
+
+            int end = start + check.text.length();
+            clearUnderlining(start, end);
+            if (check.underline)
+                underlineRange(start, end);
         }
+
+        promptRepaint();
     }
 
     /**
@@ -420,7 +540,10 @@ public void setEnabled(boolean enable, String message)
             if (this.isEnabled)
                 reset(message);
             else
+            {
                 this.docHighlighter.removeAllHighlights();
+                this.resets++;
+            }
             promptRepaint();
         }
     }
@@ -437,23 +560,98 @@ public void reset(String message)
 
         // clears previous underlined sections
         this.docHighlighter.removeAllHighlights();
+        this.resets++;
 
         // runs over message
         if (message.length() > 0)
         {
+            List<Word> words = new ArrayList<Word>();
             Word changed = Word.getWord(message, 0, true);
             int wordStart = changed.getStart();
             while (wordStart < message.length())
             {
-                format(changed);
+                words.add(changed);
                 int end =
                     Math.min(changed.getStart() + changed.getText().length()
                         + 1, message.length());
                 changed = Word.getWord(message, end, false);
                 wordStart = end;
             }
+            check(words);
         }
 
         promptRepaint();
     }
+
+    /**
+     * Word submitted to be checked along with its verdict.
+     */
+    private static class Check
+    {
+        /**
+         * Start of the word when it was submitted.
+         */
+        private final int start;
+
+        private final String text;
+
+        /**
+         * Tracks the start of the word through later changes of the
+         * document, <tt>null</tt> if the document's unknown.
+         */
+        private final Position position;
+
+        /**
+         * Whether the word should be underlined.
+         */
+        private volatile boolean underline = false;
+
+        Check(Document doc, Word word)
+        {
+            this.start = word.getStart();
+            this.text = word.getText();
+
+            Position position = null;
+            if (doc != null)
+            {
+                try
+                {
+                    position = doc.createPosition(this.start);
+                }
+                catch (BadLocationException exc)
+                {
+                    // bounds are from a reset, use them as they are
+                }
+            }
+            this.position = position;
+        }
+
+        /**
+         * Provides where the word is after later changes of the document.
+         *
+         * @param doc document of the word
+         * @return start of the word or -1 if it's been changed or its
+         *         position isn't tracked
+         */
+        int getStart(Document doc)
+        {
+            if (this.position == null)
+                return -1;
+
+            int start = this.position.getOffset();
+            try
+            {
+                if (start + this.text.length() <= doc.getLength()
+                    && this.text.equals(
+                        doc.getText(start, this.text.length())))
+                    return start;
+            }
+            catch (BadLocationException exc)
+            {
+                // word no longer there
+            }
+
+            return -1;
+        }
+    }
 }
@@ -322,8 +322,9 @@ void setPersonalWords(List<String> words)
                     InputStream dictInput =
                         new FileInputStream(this.dictLocation);
                     this.dict =
-                        new OpenOfficeSpellDictionary(dictInput,
-                            this.personalDictLocation);
+                        new CachedSpellDictionary(
+                            new OpenOfficeSpellDictionary(dictInput,
+                                this.personalDictLocation));
 
                     // updates chats
                     for (ChatAttachments chat : this.attachedChats)
@@ -444,7 +445,7 @@ void setLocale(Parameters.Locale locale) throws Exception
                             personalDictLocation, true);
                 }
 
-                this.dict = dict;
+                this.dict = new CachedSpellDictionary(dict);
                 this.dictLocation = dictLocation;
                 Parameters.Locale oldLocale = this.locale;
                 this.locale = locale;
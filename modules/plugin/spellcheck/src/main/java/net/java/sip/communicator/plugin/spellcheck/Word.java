@@ -19,6 +19,8 @@
 
 import java.text.*;
 
+import javax.swing.text.*;
+
 /**
  * Immutable representation of a word in the context of a document, bundling the
  * bounds with the text.
@@ -30,6 +32,12 @@
     private static final BreakIterator WORD_ITR = BreakIterator
         .getWordInstance();
 
+    /**
+     * Number of characters read at once when looking for the bounds of a
+     * word in a document.
+     */
+    private static final int CHUNK_LENGTH = 64;
+
     private final int start;
 
     private final String text;
@@ -69,6 +77,86 @@ public static synchronized Word getWord(String text, int index,
         return new Word(start, end, text.substring(start, end));
     }
 
+    /**
+     * Provides the word before or after a given index of a document. Only the
+     * text around the index up to the surrounding whitespace is read, so this
+     * doesn't depend on the length of the document.
+     *
+     * @param doc document to be checked
+     * @param index index in which to begin search (inclusive)
+     * @param before search is before index if true, after otherwise
+     * @return word with its bounds in the document
+     * @throws BadLocationException if index isn't within the document
+     */
+    public static Word getWord(Document doc, int index, boolean before)
+        throws BadLocationException
+    {
+        // whitespace always divides words, one character of it is kept on
+        // each side so the bounds are the same as within the whole text
+        int start = Math.max(0, findWhitespace(doc, index, true) - 1);
+        int end =
+            Math.min(doc.getLength(), findWhitespace(doc, index, false) + 1);
+        Word word = getWord(doc.getText(start, end - start), index - start,
+            before);
+
+        return new Word(word.start + start, word.end + start, word.text);
+    }
+
+    /**
+     * Provides the character at a given index of a document.
+     *
+     * @param doc document to be read
+     * @param index index of the character
+     * @return character at index
+     * @throws BadLocationException if index isn't within the document
+     */
+    public static char charAt(Document doc, int index)
+        throws BadLocationException
+    {
+        Segment segment = new Segment();
+        doc.getText(index, 1, segment);
+        return segment.first();
+    }
+
+    /**
+     * Provides the bound of the run of non-whitespace characters around an
+     * index, reading the document in small chunks.
+     *
+     * @param doc document to be read
+     * @param index index in which to begin search
+     * @param before search is before index if true, after otherwise
+     * @return index of the first character of the run if searching before,
+     *         index of the whitespace (or the length of the document) after
+     *         it otherwise
+     * @throws BadLocationException if index isn't within the document
+     */
+    private static int findWhitespace(Document doc, int index, boolean before)
+        throws BadLocationException
+    {
+        Segment segment = new Segment();
+        int length = doc.getLength();
+
+        while (before ? index > 0 : index < length)
+        {
+            int chunkStart =
+                before ? Math.max(0, index - CHUNK_LENGTH) : index;
+            int chunkEnd =
+                before ? index : Math.min(length, index + CHUNK_LENGTH);
+            doc.getText(chunkStart, chunkEnd - chunkStart, segment);
+
+            for (int i = 0; i < segment.count; i++)
+            {
+                int pos = before ? segment.count - 1 - i : i;
+                if (Character.isWhitespace(segment.array[segment.offset + pos]))
+                    return chunkStart + pos + (before ? 1 : 0);
+            }
+
+            index = before ? chunkStart : chunkEnd;
+        }
+
+        return index;
+    }
+
     private Word(int start, int end, String text)
     {
         this.start = start;
@@ -0,0 +1,166 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.plugin.spellcheck;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.dts.spell.dictionary.*;
+import org.dts.spell.event.*;
+import org.junit.*;
+
+/**
+ * Tests that <tt>CachedSpellDictionary</tt> answers repeated checks from its
+ * cache and forgets the verdicts the underlying dictionary may have changed.
+ */
+public class CachedSpellDictionaryTest
+{
+    private final CountingDictionary dict = new CountingDictionary();
+
+    private final CachedSpellDictionary cached
+        = new CachedSpellDictionary(dict);
+
+    @Test
+    public void testRepeatedCheckIsCached()
+    {
+        assertTrue(cached.isCorrect("hello"));
+        assertTrue(cached.isCorrect("hello"));
+        assertFalse(cached.isCorrect("helo"));
+        assertFalse(cached.isCorrect("helo"));
+
+        assertEquals(1, dict.checks("hello"));
+        assertEquals(1, dict.checks("helo"));
+    }
+
+    @Test
+    public void testAddedWordIsCheckedAgain()
+        throws Exception
+    {
+        assertFalse(cached.isCorrect("jitsi"));
+
+        cached.addWord("jitsi");
+
+        assertTrue(cached.isCorrect("jitsi"));
+        assertEquals(2, dict.checks("jitsi"));
+    }
+
+    @Test
+    public void testLoadForgetsVerdicts()
+        throws Exception
+    {
+        assertFalse(cached.isCorrect("jitsi"));
+
+        dict.words.add("jitsi");
+        cached.load();
+
+        assertTrue(cached.isCorrect("jitsi"));
+        assertEquals(2, dict.checks("jitsi"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedVerdictIsEvicted()
+    {
+        cached.isCorrect("first");
+        cached.isCorrect("second");
+        for (int i = 0; i < 4094; i++)
+            cached.isCorrect("word" + i);
+
+        // the cache is full, using "first" makes "second" the eldest
+        cached.isCorrect("first");
+        cached.isCorrect("one more");
+
+        cached.isCorrect("first");
+        cached.isCorrect("second");
+
+        assertEquals(1, dict.checks("first"));
+        assertEquals(2, dict.checks("second"));
+    }
+
+    /**
+     * A dictionary of the words it is given which counts how many times each
+     * word was checked.
+     */
+    private static class CountingDictionary
+        implements SpellDictionary
+    {
+        final Set<String> words
+            = new HashSet<>(Arrays.asList("hello", "first", "second"));
+
+        private final Map<String, Integer> checks = new HashMap<>();
+
+        int checks(String word)
+        {
+            Integer count = checks.get(word);
+
+            return (count == null) ? 0 : count;
+        }
+
+        @Override
+        public boolean isCorrect(String word)
+        {
+            checks.put(word, checks(word) + 1);
+            return words.contains(word);
+        }
+
+        @Override
+        public void addWord(String word)
+        {
+            words.add(word);
+        }
+
+        @Override
+        public List<String> getSuggestions(String word)
+        {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<String> getSuggestions(String word, int maxSuggestions)
+        {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Locale getLocale()
+        {
+            return Locale.ENGLISH;
+        }
+
+        @Override
+        public boolean isLoad()
+        {
+            return true;
+        }
+
+        @Override
+        public void load()
+        {
+        }
+
+        @Override
+        public void addProgressListener(ProgressListener listener)
+        {
+        }
+
+        @Override
+        public void removeProgressListener(ProgressListener listener)
+        {
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.plugin.spellcheck;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.swing.*;
+import javax.swing.text.*;
+
+import org.junit.*;
+
+/**
+ * Tests which words <tt>DocUnderliner</tt> checks after a change and where
+ * it underlines them once they have been checked in the background, words
+ * containing "foo" being misspelled.
+ */
+public class DocUnderlinerTest
+{
+    private static final long TIMEOUT = 5;
+
+    /**
+     * The words checked so far, in the order they were checked.
+     */
+    private final List<String> checked = new CopyOnWriteArrayList<>();
+
+    /**
+     * Released to let the checks run.
+     */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    /**
+     * Counted down once a check waits for {@link #release}.
+     */
+    private final CountDownLatch entered = new CountDownLatch(1);
+
+    private JTextArea textArea;
+
+    private DocUnderliner underliner;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        SwingUtilities.invokeAndWait(() ->
+        {
+            textArea = new JTextArea();
+            underliner = new DocUnderliner(textArea.getHighlighter())
+            {
+                @Override
+                boolean getFormatting(String word)
+                {
+                    entered.countDown();
+                    try
+                    {
+                        release.await(TIMEOUT, TimeUnit.SECONDS);
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    checked.add(word);
+                    return word.contains("foo");
+                }
+
+                @Override
+                int getCaretPosition()
+                {
+                    return textArea.getCaretPosition();
+                }
+
+                @Override
+                void promptRepaint()
+                {
+                }
+            };
+            textArea.getDocument().addDocumentListener(underliner);
+            textArea.addCaretListener(underliner.getEndChecker());
+        });
+    }
+
+    @After
+    public void tearDown()
+    {
+        // never leave the shared checker blocked
+        release.countDown();
+    }
+
+    @Test
+    public void testPastedWordsAreUnderlined()
+        throws Exception
+    {
+        release.countDown();
+        insert(0, "a foo bar foobar");
+
+        awaitUnderlined(range(2, 5), range(10, 16));
+        assertEquals(Arrays.asList("a", "foo", "bar", "foobar"), checked);
+    }
+
+    @Test
+    public void testWordAtEndIsCheckedOnceCompleted()
+        throws Exception
+    {
+        release.countDown();
+        for (char c : "foo ba".toCharArray())
+            insert(textArea.getDocument().getLength(), String.valueOf(c));
+
+        awaitUnderlined(range(0, 3));
+        assertEquals(Arrays.asList("foo"), checked);
+    }
+
+    @Test
+    public void testCheckedWordFollowsLaterChange()
+        throws Exception
+    {
+        insert(0, "a foo");
+        assertTrue(entered.await(TIMEOUT, TimeUnit.SECONDS));
+
+        // moves "foo" while it is being checked
+        insert(0, "bar ");
+        release.countDown();
+
+        awaitUnderlined(range(6, 9));
+    }
+
+    @Test
+    public void testCheckBeforeResetIsDropped()
+        throws Exception
+    {
+        insert(0, "a foo");
+        assertTrue(entered.await(TIMEOUT, TimeUnit.SECONDS));
+
+        SwingUtilities.invokeAndWait(() -> underliner.reset(""));
+        release.countDown();
+
+        // checked after the dropped one, so it is applied after it
+        insert(0, "xfoo ");
+
+        awaitUnderlined(range(0, 4));
+    }
+
+    /**
+     * Inserts text into the document on the event dispatch thread, moving
+     * the caret like typing does.
+     *
+     * @param offset where to insert the text
+     * @param text the text
+     */
+    private void insert(int offset, String text)
+        throws Exception
+    {
+        SwingUtilities.invokeAndWait(() ->
+        {
+            try
+            {
+                textArea.getDocument().insertString(offset, text, null);
+            }
+            catch (BadLocationException ex)
+            {
+                throw new IllegalStateException(ex);
+            }
+        });
+    }
+
+    private static List<Integer> range(int start, int end)
+    {
+        return Arrays.asList(start, end);
+    }
+
+    /**
+     * Waits for the underlined ranges to be the expected ones.
+     *
+     * @param expected the ranges which should be underlined
+     */
+    @SafeVarargs
+    private final void awaitUnderlined(List<Integer>... expected)
+        throws Exception
+    {
+        Set<List<Integer>> expectedRanges
+            = new HashSet<>(Arrays.asList(expected));
+        Set<List<Integer>> ranges = new HashSet<>();
+        long deadline
+            = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT);
+
+        do
+        {
+            Thread.sleep(20);
+            ranges.clear();
+            SwingUtilities.invokeAndWait(() ->
+            {
+                for (Highlighter.Highlight h
+                        : textArea.getHighlighter().getHighlights())
+                {
+                    ranges.add(range(h.getStartOffset(), h.getEndOffset()));
+                }
+            });
+        }
+        while (!ranges.equals(expectedRanges)
+            && System.currentTimeMillis() < deadline);
+
+        assertEquals(expectedRanges, ranges);
+    }
+}
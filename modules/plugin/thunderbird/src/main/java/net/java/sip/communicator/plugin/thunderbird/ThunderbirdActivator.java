@@ -100,6 +100,7 @@ static void remove(ThunderbirdContactSourceService service)
     {
         registrations.get(service).unregister();
         registrations.remove(service);
+        service.stop();
         ConfigurationService config = getConfigService();
         config.removeProperty(service.getBaseConfigProperty());
         for (String prop : config.getPropertyNamesByPrefix(
@@ -167,10 +168,12 @@ public void startWithServices(BundleContext bundleContext)
     public void stop(BundleContext bundleContext) throws Exception
     {
         super.stop(bundleContext);
-        for (ServiceRegistration<ContactSourceService> sr : registrations
-            .values())
+        for (Map.Entry<ThunderbirdContactSourceService,
+                ServiceRegistration<ContactSourceService>> e
+            : registrations.entrySet())
         {
-            sr.unregister();
+            e.getValue().unregister();
+            e.getKey().stop();
         }
 
         registrations = null;
@@ -0,0 +1,320 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.plugin.thunderbird;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.commons.lang3.StringUtils;
+
+import mork.*;
+import net.java.sip.communicator.service.contactsource.*;
+
+/**
+ * The parsed contacts of a Thunderbird address book, reloaded whenever the
+ * Mork database file changes.
+ */
+public class ThunderbirdAddressBook
+    extends FileContactSnapshot<ThunderbirdAddressBook.Card>
+{
+    /**
+     * Parses the Thunderbird Mork database and returns the contacts of its
+     * default scope.
+     *
+     * @param file the Mork database file
+     * @return the contacts of the address book
+     * @throws IOException if the file could not be read
+     */
+    @Override
+    protected Collection<Card> parse(File file)
+        throws IOException
+    {
+        MorkDocument md;
+
+        try (InputStreamReader sr
+                = new InputStreamReader(new FileInputStream(file)))
+        {
+            md = new MorkDocument(sr);
+        }
+
+        // We now have rows in their tables and additional rows at
+        // transaction level. Put the to a better format:
+        // DB -> Tables -> Rows
+        Map<String, Map<String, Row>> db =
+            new HashMap<String, Map<String, Row>>();
+        for (Table t : md.getTables())
+        {
+            String tableId = t.getTableId() + "/" + t.getScopeName();
+            Map<String, Row> table = db.get(tableId);
+            if (table == null)
+            {
+                table = new HashMap<String, Row>();
+                db.put(tableId, table);
+            }
+
+            for (Row r : t.getRows())
+            {
+                String scope = r.getScopeName();
+                if (scope == null)
+                {
+                    scope = t.getScopeName();
+                }
+
+                table.put(r.getRowId() + "/" + scope, r);
+            }
+        }
+
+        // The additional rows at the root-level update/replace the ones
+        // in the tables. There's usually neither a table nor a scope
+        // defined, so lets just use the default.
+        String defaultScope = md.getDicts().get(0).dereference("^80");
+        for (Row r : md.getRows())
+        {
+            String scope = r.getScopeName();
+            if (scope == null)
+            {
+                scope = defaultScope;
+            }
+
+            String tableId = "1/" + scope;
+            Map<String, Row> table = db.get(tableId);
+            if (table == null)
+            {
+                table = new HashMap<String, Row>();
+                db.put(tableId, table);
+            }
+
+            String rowId = r.getRowId() + "/" + scope;
+            if (rowId.startsWith("-"))
+            {
+                rowId = rowId.substring(1);
+            }
+
+            table.put(rowId, r);
+        }
+
+        // okay, "transactions" are applied, now keep the contacts
+        List<Card> cards = new ArrayList<Card>();
+        for (Map<String, Row> table : db.values())
+        {
+            for (Map.Entry<String, Row> e : table.entrySet())
+            {
+                if (e.getKey().endsWith(defaultScope))
+                {
+                    cards.add(new Card(e.getKey(), e.getValue()));
+                }
+            }
+        }
+
+        return cards;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see net.java.sip.communicator.service.contactsource
+     * .ContactSnapshot#getDisplayName(java.lang.Object)
+     */
+    @Override
+    protected String getDisplayName(Card card)
+    {
+        return card.getDisplayName();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see net.java.sip.communicator.service.contactsource
+     * .ContactSnapshot#getSearchStrings(java.lang.Object)
+     */
+    @Override
+    protected Collection<String> getSearchStrings(Card card)
+    {
+        return card.getValues();
+    }
+
+    /**
+     * A contact of the address book, i.e. the values of a database row.
+     */
+    public static class Card
+    {
+        /** The ID of the database row. */
+        private final String id;
+
+        /** The display name of the contact. */
+        private final String displayName;
+
+        /** The non-empty e-mail addresses of the contact. */
+        private final Set<String> emails;
+
+        /** The non-empty phone numbers of the contact by their property. */
+        private final Map<String, String> phones
+            = new LinkedHashMap<String, String>();
+
+        /** All values of the database row. */
+        private final List<String> values = new ArrayList<String>();
+
+        /**
+         * Creates a new instance of this class.
+         *
+         * @param id The ID of the database row.
+         * @param r The database row representing a contact.
+         */
+        Card(String id, Row r)
+        {
+            this.id = id;
+
+            for (Alias value : r.getAliases().values())
+            {
+                if (value != null && value.getValue() != null)
+                {
+                    values.add(value.getValue());
+                }
+            }
+
+            emails = getPropertySet(r, "PrimaryEmail", "SecondEmail",
+                "DefaultEmail");
+
+            for (String property : new String[]
+                { "HomePhone", "WorkPhone", "CellularNumber" })
+            {
+                String phone = r.getValue(property);
+                if (StringUtils.isNotBlank(phone))
+                {
+                    phones.put(property, phone);
+                }
+            }
+
+            // and the dispaly name
+            String displayName = r.getValue("DisplayName");
+            if (StringUtils.isBlank(displayName))
+            {
+                displayName = r.getValue("LastName");
+                if (displayName != null)
+                {
+                    displayName = displayName.trim();
+                }
+
+                String firstName = r.getValue("FirstName");
+                if (StringUtils.isNotBlank(firstName))
+                {
+                    displayName = firstName + " " + displayName;
+                }
+            }
+            this.displayName = displayName;
+        }
+
+        /**
+         * Gets the display name of the contact.
+         *
+         * @return The display name of the contact.
+         */
+        public String getDisplayName()
+        {
+            return displayName;
+        }
+
+        /**
+         * Gets the non-empty e-mail addresses of the contact.
+         *
+         * @return The e-mail addresses of the contact.
+         */
+        public Set<String> getEmails()
+        {
+            return emails;
+        }
+
+        /**
+         * Gets a non-empty phone number of the contact.
+         *
+         * @param property The source database property name of the number.
+         * @return The phone number or <tt>null</tt> if it is empty.
+         */
+        public String getPhone(String property)
+        {
+            return phones.get(property);
+        }
+
+        /**
+         * Gets the non-empty phone numbers of the contact.
+         *
+         * @return The phone numbers of the contact.
+         */
+        public Collection<String> getPhones()
+        {
+            return phones.values();
+        }
+
+        /**
+         * Gets all values of the source database row.
+         *
+         * @return The values of the source database row.
+         */
+        public List<String> getValues()
+        {
+            return values;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+            if (!(o instanceof Card))
+            {
+                return false;
+            }
+
+            Card c = (Card) o;
+            return id.equals(c.id)
+                && Objects.equals(displayName, c.displayName)
+                && values.equals(c.values);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(id, displayName, values);
+        }
+
+        /**
+         * Gets a set of non-empty properties from the source database row.
+         *
+         * @param r The source database row to process.
+         * @param properties The property-names to extract.
+         * @return A set of non-empty properties from the source database row.
+         */
+        private static Set<String> getPropertySet(Row r, String... properties)
+        {
+            Set<String> validValues =
+                new LinkedHashSet<String>(properties.length);
+            for (String prop : properties)
+            {
+                String value = r.getValue(prop);
+                if (StringUtils.isNotBlank(value))
+                {
+                    validValues.add(value);
+                }
+            }
+
+            return validValues;
+        }
+    }
+}
@@ -17,14 +17,10 @@
  */
 package net.java.sip.communicator.plugin.thunderbird;
 
-import java.io.*;
 import java.util.*;
-import java.util.Map.Entry;
 import java.util.regex.*;
 
-import org.apache.commons.lang3.StringUtils;
-
-import mork.*;
+import net.java.sip.communicator.plugin.thunderbird.ThunderbirdAddressBook.*;
 import net.java.sip.communicator.service.contactsource.*;
 import net.java.sip.communicator.service.contactsource.ContactDetail.*;
 import net.java.sip.communicator.service.protocol.*;
@@ -37,158 +33,122 @@
 public class ThunderbirdContactQuery
     extends AsyncContactQuery<ThunderbirdContactSourceService>
 {
-    /** Class logger */
-    private final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ThunderbirdContactQuery.class);
+    /**
+     * The maximum number of contacts to return or a negative value if they
+     * are not limited.
+     */
+    private final int contactCount;
 
     /**
      * Creates a new instance of this class.
      *
      * @param owner The contact source that created this query.
      * @param query The pattern to match against the contacts database.
+     * @param contactCount The maximum number of contacts to return or a
+     *            negative value to return all of them.
      */
     public ThunderbirdContactQuery(ThunderbirdContactSourceService owner,
-        Pattern query)
+        Pattern query, int contactCount)
     {
         super(owner, query);
+        this.contactCount = contactCount;
     }
 
     /**
-     * Starts the query against the address book database.
+     * Starts the query against the address book database. Plain text queries
+     * are answered from the index of the address book, other patterns are
+     * matched against all contacts.
      */
     @Override
     protected void run()
     {
-        String filename = super.getContactSource().getFilename();
-        File file = new File(filename);
-        try
+        ThunderbirdAddressBook addressBook =
+            super.getContactSource().getAddressBook();
+        String literal = getLiteralQuery();
+        Set<Card> added = new HashSet<Card>();
+
+        if (literal != null)
         {
-            if (file.lastModified() > getContactSource().lastDatabaseFileChange)
+            for (Card card : addressBook.search(literal, contactCount))
             {
-                // parse the Thunderbird Mork database
-                InputStreamReader sr =
-                    new InputStreamReader(new FileInputStream(filename));
-                MorkDocument md = new MorkDocument(sr);
-                sr.close();
-
-                // We now have rows in their tables and additional rows at
-                // transaction level. Put the to a better format:
-                // DB -> Tables -> Rows
-                Map<String, Map<String, Row>> db =
-                    new HashMap<String, Map<String, Row>>();
-                for (Table t : md.getTables())
-                {
-                    String tableId = t.getTableId() + "/" + t.getScopeName();
-                    Map<String, Row> table = db.get(tableId);
-                    if (table == null)
-                    {
-                        table = new HashMap<String, Row>();
-                        db.put(tableId, table);
-                    }
-
-                    for (Row r : t.getRows())
-                    {
-                        String scope = r.getScopeName();
-                        if (scope == null)
-                        {
-                            scope = t.getScopeName();
-                        }
-
-                        table.put(r.getRowId() + "/" + scope, r);
-                    }
-                }
-
-                // The additional rows at the root-level update/replace the ones
-                // in the tables. There's usually neither a table nor a scope
-                // defined, so lets just use the default.
-                String defaultScope = md.getDicts().get(0).dereference("^80");
-                for (Row r : md.getRows())
+                if (!addCard(card, added))
                 {
-                    String scope = r.getScopeName();
-                    if (scope == null)
-                    {
-                        scope = defaultScope;
-                    }
-
-                    String tableId = "1/" + scope;
-                    Map<String, Row> table = db.get(tableId);
-                    if (table == null)
-                    {
-                        table = new HashMap<String, Row>();
-                        db.put(tableId, table);
-                    }
-
-                    String rowId = r.getRowId() + "/" + scope;
-                    if (rowId.startsWith("-"))
-                    {
-                        rowId = rowId.substring(1);
-                    }
-
-                    table.put(rowId, r);
+                    return;
                 }
-
-                super.getContactSource().database = db;
-                super.getContactSource().defaultScope = defaultScope;
-                super.getContactSource().lastDatabaseFileChange =
-                    file.lastModified();
             }
 
-            // okay, "transactions" are applied, now perform the search
-            for (Entry<String, Map<String, Row>> table
-                : super.getContactSource().database.entrySet())
+            // the index only finds numbers written like the query
+            if (!ThunderbirdActivator.getPhoneNumberI18nService()
+                .isPhoneNumber(literal))
             {
-                for (Map.Entry<String, Row> e : table.getValue().entrySet())
-                {
-                    if (e.getKey().endsWith(getContactSource().defaultScope))
-                    {
-                        readEntry(e.getValue());
-                    }
-                }
+                return;
             }
-
-            super.stopped(true);
         }
-        catch (FileNotFoundException e)
-        {
-            logger.warn("Could not open address book", e);
-        }
-        catch (Exception e)
+
+        for (Card card : addressBook.getEntries())
         {
-            logger.warn("Could not parse " + file, e);
+            if (!added.contains(card) && matches(card, literal == null)
+                && !addCard(card, added))
+            {
+                return;
+            }
         }
     }
 
     /**
-     * Processes a database row by matching it against the query and adding it
-     * to the result set if it matched.
+     * Matches a contact against the query.
      *
-     * @param r The database row representing a contact.
+     * @param card The contact of the address book.
+     * @param matchValues Whether to match all the values of the contact or
+     *            only its phone numbers.
+     * @return <tt>true</tt> if the contact matches the query.
      */
-    private void readEntry(Row r)
+    private boolean matches(Card card, boolean matchValues)
     {
-        // match the pattern against this contact
-        boolean hadMatch = false;
-        for (Alias value : r.getAliases().values())
+        if (matchValues)
         {
-            if (value != null
-                && (super.query.matcher(value.getValue()).find() || super
-                    .phoneNumberMatches(value.getValue())))
+            for (String value : card.getValues())
             {
-                hadMatch = true;
-                break;
+                if (super.query.matcher(value).find())
+                {
+                    return true;
+                }
             }
         }
 
-        // nope, didn't match, ignore
-        if (!hadMatch)
+        for (String phone : card.getPhones())
         {
-            return;
+            if (super.phoneNumberMatches(phone))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Adds a matching contact to the result set.
+     *
+     * @param card The contact of the address book.
+     * @param added The contacts already added to the result set.
+     * @return <tt>false</tt> if the query has been canceled or has enough
+     *         results.
+     */
+    private boolean addCard(Card card, Set<Card> added)
+    {
+        if (getStatus() == QUERY_CANCELED
+            || (contactCount > 0 && getQueryResultCount() >= contactCount))
+        {
+            return false;
         }
 
+        added.add(card);
+
         List<ContactDetail> details = new LinkedList<ContactDetail>();
 
         // e-mail(s)
-        for (String email : getPropertySet(r, "PrimaryEmail", "SecondEmail",
-            "DefaultEmail"))
+        for (String email : card.getEmails())
         {
             ContactDetail detail = new ContactDetail(email, Category.Email);
             detail.addSupportedOpSet(OperationSetPersistentPresence.class);
@@ -196,32 +156,17 @@ private void readEntry(Row r)
         }
 
         // phone number(s)
-        this.addPhoneDetail(details, r, "HomePhone", SubCategory.Home);
-        this.addPhoneDetail(details, r, "WorkPhone", SubCategory.Work);
-        this.addPhoneDetail(details, r, "CellularNumber", SubCategory.Mobile);
-
-        // and the dispaly name
-        String displayName = r.getValue("DisplayName");
-        if (StringUtils.isBlank(displayName))
-        {
-            displayName = r.getValue("LastName");
-            if (displayName != null)
-            {
-                displayName = displayName.trim();
-            }
-
-            String firstName = r.getValue("FirstName");
-            if (StringUtils.isNotBlank(firstName))
-            {
-                displayName = firstName + " " + displayName;
-            }
-        }
+        this.addPhoneDetail(details, card, "HomePhone", SubCategory.Home);
+        this.addPhoneDetail(details, card, "WorkPhone", SubCategory.Work);
+        this.addPhoneDetail(details, card, "CellularNumber",
+            SubCategory.Mobile);
 
         // create the contact and add it to the results
         GenericSourceContact sc =
-            new GenericSourceContact(super.getContactSource(), displayName,
-                details);
+            new GenericSourceContact(super.getContactSource(),
+                card.getDisplayName(), details);
         addQueryResult(sc);
+        return contactCount <= 0 || getQueryResultCount() < contactCount;
     }
 
     /**
@@ -229,16 +174,16 @@ private void readEntry(Row r)
      *
      * @param details The {@link List} of {@link ContactDetail}s to which the
      *            details is added.
-     * @param r The source database row of the contact.
+     * @param card The contact of the address book.
      * @param property The source database property name to add as a detail.
      * @param category The Phone-{@link SubCategory} for the phone number to
      *            add.
      */
-    private void addPhoneDetail(List<ContactDetail> details, Row r,
+    private void addPhoneDetail(List<ContactDetail> details, Card card,
         String property, SubCategory category)
     {
-        String phone = r.getValue(property);
-        if (StringUtils.isBlank(phone))
+        String phone = card.getPhone(property);
+        if (phone == null)
         {
             return;
         }
@@ -254,26 +199,4 @@ private void addPhoneDetail(List<ContactDetail> details, Row r,
         detail.addSupportedOpSet(OperationSetPersistentPresence.class);
         details.add(detail);
     }
-
-    /**
-     * Gets a set of non-empty properties from the source database row.
-     *
-     * @param r The source database row to process.
-     * @param properties The property-names to extract.
-     * @return A set of non-empty properties from the source database row.
-     */
-    private Set<String> getPropertySet(Row r, String... properties)
-    {
-        Set<String> validValues = new HashSet<String>(properties.length);
-        for (String prop : properties)
-        {
-            String value = r.getValue(prop);
-            if (StringUtils.isNotBlank(value))
-            {
-                validValues.add(value);
-            }
-        }
-
-        return validValues;
-    }
 }
@@ -17,12 +17,11 @@
  */
 package net.java.sip.communicator.plugin.thunderbird;
 
-import java.util.Map;
+import java.io.*;
 import java.util.regex.*;
 
 import org.jitsi.service.configuration.*;
 
-import mork.Row;
 import net.java.sip.communicator.service.contactsource.*;
 
 /**
@@ -85,18 +84,12 @@
     /** Value of property {@link #PNAME_PREFIX} */
     private String prefix;
 
-    /** Date/time when the Thunderbird database file was last changed. */
-    long lastDatabaseFileChange = 0;
-
     /**
-     * The parsed Thunderbird database. This field is used as a cache and set by
-     * the query. It is re-set when the file date is newer than
-     * {@link #lastDatabaseFileChange}
+     * The parsed Thunderbird database, searched by the queries and reloaded
+     * in the background when the file changes.
      */
-    Map<String, Map<String, Row>> database;
-
-    /** Name of the default namespace in the Thunderbird database. */
-    String defaultScope;
+    private final ThunderbirdAddressBook addressBook =
+        new ThunderbirdAddressBook();
 
     /**
      * Creates a new instance of this class.
@@ -113,6 +106,30 @@ public ThunderbirdContactSourceService(String baseConfigProperty)
             config.getString(baseConfigProperty + "." + PNAME_DISPLAYNAME);
         this.index = config.getInt(baseConfigProperty + "." + PNAME_INDEX, 0);
         this.prefix = config.getString(baseConfigProperty + "." + PNAME_PREFIX);
+
+        if (this.fileName != null)
+        {
+            this.addressBook.setFile(new File(this.fileName));
+        }
+        this.addressBook.start();
+    }
+
+    /**
+     * Stops watching the address book database for changes.
+     */
+    void stop()
+    {
+        this.addressBook.stop();
+    }
+
+    /**
+     * Gets the parsed address book database processed by this ContactSource.
+     *
+     * @return The parsed address book database.
+     */
+    ThunderbirdAddressBook getAddressBook()
+    {
+        return this.addressBook;
     }
 
     /**
@@ -153,6 +170,18 @@ public String getDisplayName()
      * .ContactSourceService#queryContactSource(java.lang.String)
      */
     public ContactQuery createContactQuery(String queryString)
+    {
+        return createContactQuery(queryString, -1);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * net.java.sip.communicator.service.contactsource.ContactSourceService#
+     * queryContactSource(java.lang.String, int)
+     */
+    public ContactQuery createContactQuery(String queryString, int contactCount)
     {
         Pattern pattern = null;
         try
@@ -168,25 +197,11 @@ public ContactQuery createContactQuery(String queryString)
 
         if(pattern != null)
         {
-            return createContactQuery(pattern);
+            return new ThunderbirdContactQuery(this, pattern, contactCount);
         }
         return null;
     }
 
-    /*
-     * (non-Javadoc)
-     *
-     * @see
-     * net.java.sip.communicator.service.contactsource.ContactSourceService#
-     * queryContactSource(java.lang.String, int)
-     */
-    public ContactQuery createContactQuery(String queryString, int contactCount)
-    {
-        // XXX: The ThunderbirdContactQuery does not tqke a contactCount
-        // argument yet. Thus, call the default queryContactSource function.
-        return createContactQuery(queryString);
-    }
-
     /*
      * (non-Javadoc)
      *
@@ -196,7 +211,7 @@ public ContactQuery createContactQuery(String queryString, int contactCount)
      */
     public ContactQuery createContactQuery(Pattern queryPattern)
     {
-        return new ThunderbirdContactQuery(this, queryPattern);
+        return new ThunderbirdContactQuery(this, queryPattern, -1);
     }
 
     /*
@@ -253,6 +268,8 @@ String getFilename()
     void setFilename(String filename)
     {
         this.fileName = filename;
+        this.addressBook.setFile(
+            (filename == null) ? null : new File(filename));
         config.setProperty(this.baseConfigProperty + "." + PNAME_FILENAME,
             filename);
     }
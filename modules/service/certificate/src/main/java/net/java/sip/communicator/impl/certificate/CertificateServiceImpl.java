@@ -92,6 +92,38 @@
     /** Hash algorithm for the cert thumbprint*/
     private final static String THUMBPRINT_HASH_ALGORITHM = "SHA1";
 
+    /**
+     * The common prefix of the names of the trust store properties.
+     */
+    private final static String PNAME_TRUSTSTORE_BASE =
+        "net.java.sip.communicator.service.cert.truststore.";
+
+    /**
+     * The maximum number of trust managers and SSL contexts that are cached.
+     */
+    private final static int MAX_CACHED_CONTEXTS = 64;
+
+    /**
+     * The time in milliseconds for which a successful validation of a
+     * certificate chain is remembered.
+     */
+    private final static long VALIDATION_CACHE_TIMEOUT = 10 * 60 * 1000;
+
+    /**
+     * The properties whose changes invalidate the cached trust material and
+     * validation results.
+     */
+    private final static String[] TRUST_PROPERTIES = {
+        PNAME_TRUSTSTORE_TYPE,
+        PNAME_TRUSTSTORE_FILE,
+        PNAME_TRUSTSTORE_PASSWORD + ".ENCRYPTED_PASSWORD",
+        PNAME_TRUSTSTORE_PASSWORD + ".PASSWORD",
+        PNAME_ALWAYS_TRUST,
+        PNAME_REVOCATION_CHECK_ENABLED,
+        PNAME_OCSP_ENABLED,
+        PNAME_VALIDATION_CACHE_ENABLED
+    };
+
     // ------------------------------------------------------------------------
     // fields
     // ------------------------------------------------------------------------
@@ -107,6 +139,35 @@
     private final Map<URI, AiaCacheEntry> aiaCache =
         new HashMap<>();
 
+    /**
+     * The X509 trust manager of the JDK, initialized from the configured
+     * trust store. Loading the trust store is expensive, so it is only done
+     * again when the trust store configuration changes.
+     */
+    private X509ExtendedTrustManager defaultTrustManager;
+
+    /**
+     * The trust managers with the default certificate matchers by the
+     * identities they verify.
+     */
+    private final Map<List<String>, X509ExtendedTrustManager> trustManagers =
+        createLruCache();
+
+    /**
+     * The SSL contexts by client certificate configuration and trust manager.
+     * Reusing an <tt>SSLContext</tt> shares its TLS session cache, which allows
+     * abbreviated handshakes when a connection is re-established. Only the
+     * trust managers cached in <tt>trustManagers</tt> are reused by callers,
+     * so only their contexts are cached.
+     */
+    private final Map<List<Object>, SSLContext> sslContexts = createLruCache();
+
+    /**
+     * The number of times the trust configuration changed. Validation results
+     * memorized before a change are not used anymore.
+     */
+    private volatile int trustGeneration = 0;
+
     // ------------------------------------------------------------------------
     // Map access helpers
     // ------------------------------------------------------------------------
@@ -124,6 +185,25 @@ private List<String> getSessionCertEntry(String propName)
             .computeIfAbsent(propName, k -> new LinkedList<>());
     }
 
+    /**
+     * Creates a synchronized map that evicts its least recently used entry
+     * when it grows beyond {@link #MAX_CACHED_CONTEXTS}.
+     *
+     * @return the new map
+     */
+    private static <K, V> Map<K, V> createLruCache()
+    {
+        return Collections.synchronizedMap(
+            new LinkedHashMap<K, V>(16, 0.75f, true)
+            {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+                {
+                    return size() > MAX_CACHED_CONTEXTS;
+                }
+            });
+    }
+
     /**
      * AIA cache retrieval entry.
      */
@@ -147,7 +227,8 @@ private List<String> getSessionCertEntry(String propName)
     public CertificateServiceImpl()
     {
         setTrustStore();
-        config.addPropertyChangeListener(PNAME_TRUSTSTORE_TYPE, this);
+        for (String name : TRUST_PROPERTIES)
+            config.addPropertyChangeListener(name, this);
 
         System.setProperty("com.sun.security.enableCRLDP",
             config.getString(PNAME_REVOCATION_CHECK_ENABLED, "false"));
@@ -159,7 +240,24 @@ public CertificateServiceImpl()
 
     public void propertyChange(PropertyChangeEvent evt)
     {
-        setTrustStore();
+        if (evt.getPropertyName().startsWith(PNAME_TRUSTSTORE_BASE))
+            setTrustStore();
+        invalidateTrust();
+    }
+
+    /**
+     * Drops the cached trust material, SSL contexts (and thus TLS sessions)
+     * and validation results after the trust configuration changed.
+     */
+    private void invalidateTrust()
+    {
+        synchronized (this)
+        {
+            defaultTrustManager = null;
+        }
+        trustManagers.clear();
+        sslContexts.clear();
+        trustGeneration++;
     }
 
     private void setTrustStore()
@@ -269,6 +367,7 @@ public void setClientAuthCertificateConfig(CertificateConfigEntry e)
         else
             credService.removePassword(pn);
         config.setProperty(pn + ".keyStoreType", e.getKeyStoreType());
+        invalidateTrust();
     }
 
     /*
@@ -285,6 +384,7 @@ public void removeClientAuthCertificateConfig(String id)
             config.removeProperty(p);
         }
         config.removeProperty(PNAME_CLIENTAUTH_CERTCONFIG_BASE + "." + id);
+        invalidateTrust();
     }
 
     // ------------------------------------------------------------------------
@@ -341,6 +441,53 @@ public SSLContext getSSLContext() throws GeneralSecurityException
      */
     public SSLContext getSSLContext(X509ExtendedTrustManager trustManager)
         throws GeneralSecurityException
+    {
+        if (!isCachedTrustManager(trustManager))
+            return getSSLContext(getDefaultKeyManagers(), trustManager);
+
+        // the default key store may be reconfigured at any time through the
+        // system properties, so they are part of the key
+        List<Object> key = Arrays.asList(
+            null,
+            trustManager,
+            System.getProperty("javax.net.ssl.keyStore"),
+            System.getProperty("javax.net.ssl.keyStoreType"),
+            System.getProperty("javax.net.ssl.keyStorePassword"));
+        SSLContext sslContext = sslContexts.get(key);
+
+        if (sslContext == null)
+        {
+            sslContext = getSSLContext(getDefaultKeyManagers(), trustManager);
+            sslContexts.put(key, sslContext);
+        }
+        return sslContext;
+    }
+
+    /**
+     * Determines whether a trust manager is one of the cached trust managers
+     * with the default certificate matchers. The others (e.g. those with
+     * custom matchers) are typically created for a single connection, so
+     * caching an <tt>SSLContext</tt> for them would only evict the useful
+     * ones.
+     *
+     * @param trustManager the trust manager
+     * @return <tt>true</tt> if <tt>trustManager</tt> is in
+     * <tt>trustManagers</tt>
+     */
+    private boolean isCachedTrustManager(X509ExtendedTrustManager trustManager)
+    {
+        return trustManagers.containsValue(trustManager);
+    }
+
+    /**
+     * Gets the key managers for the key store that is configured in the system
+     * properties.
+     *
+     * @return the key managers of the default key store
+     * @throws GeneralSecurityException when the key store cannot be loaded
+     */
+    private KeyManager[] getDefaultKeyManagers()
+        throws GeneralSecurityException
     {
         try
         {
@@ -366,7 +513,7 @@ public SSLContext getSSLContext(X509ExtendedTrustManager trustManager)
 
             kmFactory.init(ks, keyStorePassword == null ? null
                 : keyStorePassword.toCharArray());
-            return getSSLContext(kmFactory.getKeyManagers(), trustManager);
+            return kmFactory.getKeyManagers();
         }
         catch (Exception e)
         {
@@ -473,7 +620,22 @@ public SSLContext getSSLContext(String clientCertConfig,
                 return getSSLContext(trustManager);
             }
 
-            return getSSLContext(getKeyManagers(clientCertConfig), trustManager);
+            if (!isCachedTrustManager(trustManager))
+            {
+                return getSSLContext(
+                    getKeyManagers(clientCertConfig), trustManager);
+            }
+
+            List<Object> key = Arrays.asList(clientCertConfig, trustManager);
+            SSLContext sslContext = sslContexts.get(key);
+
+            if (sslContext == null)
+            {
+                sslContext = getSSLContext(
+                    getKeyManagers(clientCertConfig), trustManager);
+                sslContexts.put(key, sslContext);
+            }
+            return sslContext;
         }
         catch (Exception e)
         {
@@ -539,11 +701,21 @@ public SSLContext getSSLContext(KeyManager[] keyManagers,
     public X509ExtendedTrustManager getTrustManager(Iterable<String> identitiesToTest)
         throws GeneralSecurityException
     {
-        return getTrustManager(
-            identitiesToTest,
-            new EMailAddressMatcher(),
-            new BrowserLikeHostnameMatcher()
-        );
+        List<String> identities = new ArrayList<>();
+        if (identitiesToTest != null)
+            identitiesToTest.forEach(identities::add);
+
+        X509ExtendedTrustManager tm = trustManagers.get(identities);
+        if (tm == null)
+        {
+            tm = getTrustManager(
+                identities,
+                new EMailAddressMatcher(),
+                new BrowserLikeHostnameMatcher()
+            );
+            trustManagers.put(identities, tm);
+        }
+        return tm;
     }
 
     /*
@@ -556,11 +728,7 @@ public X509ExtendedTrustManager getTrustManager(Iterable<String> identitiesToTes
     public X509ExtendedTrustManager getTrustManager(String identityToTest)
         throws GeneralSecurityException
     {
-        return getTrustManager(
-            Collections.singletonList(identityToTest),
-            new EMailAddressMatcher(),
-            new BrowserLikeHostnameMatcher()
-        );
+        return getTrustManager(Collections.singletonList(identityToTest));
     }
 
     /*
@@ -600,49 +768,47 @@ public X509ExtendedTrustManager getTrustManager(
         final CertificateMatcher serverVerifier)
         throws GeneralSecurityException
     {
-        // obtain the default X509 trust manager
-        X509ExtendedTrustManager defaultTm = null;
-        TrustManagerFactory tmFactory =
-            TrustManagerFactory.getInstance(TrustManagerFactory
-                .getDefaultAlgorithm());
+        final X509ExtendedTrustManager tm = getDefaultTrustManager();
 
-        KeyStore ks = null;
-        if (SystemUtils.isJavaVersionAtMost(JavaVersion.JAVA_1_8))
+        return new X509ExtendedTrustManager()
         {
-            //workaround for https://bugs.openjdk.java.net/browse/JDK-6672015
-            String tsType =
-                System.getProperty("javax.net.ssl.trustStoreType", null);
-            if ("Windows-ROOT".equals(tsType))
+            /**
+             * The expiry times of successful validations by the thumbprint of
+             * the validated certificate and the kind of check.
+             */
+            private final Map<String, Long> validated =
+                new java.util.concurrent.ConcurrentHashMap<>();
+
+            /**
+             * The trust generation in which the entries of
+             * <tt>validated</tt> were added.
+             */
+            private volatile int validatedGeneration = trustGeneration;
+
+            /**
+             * Determines whether a chain with the given key was validated
+             * recently and the trust configuration didn't change since.
+             */
+            private boolean isValidated(String key)
             {
-                try
+                if (validatedGeneration != trustGeneration)
                 {
-                    ks = KeyStore.getInstance(tsType);
-                    ks.load(null, null);
+                    validated.clear();
+                    validatedGeneration = trustGeneration;
+                    return false;
                 }
-                catch (Exception e)
+
+                Long expires = validated.get(key);
+                if (expires == null)
+                    return false;
+                if (expires < System.currentTimeMillis())
                 {
-                    logger.error("Could not rename Windows-ROOT aliases", e);
+                    validated.remove(key);
+                    return false;
                 }
+                return true;
             }
-        }
-
-        tmFactory.init(ks);
-        for (TrustManager m : tmFactory.getTrustManagers())
-        {
-            if (m instanceof X509ExtendedTrustManager)
-            {
-                defaultTm = (X509ExtendedTrustManager) m;
-                break;
-            }
-        }
-        if (defaultTm == null)
-            throw new GeneralSecurityException(
-                "No default X509 trust manager found");
 
-        final X509ExtendedTrustManager tm = defaultTm;
-
-        return new X509ExtendedTrustManager()
-        {
             public X509Certificate[] getAcceptedIssuers()
             {
                 return tm.getAcceptedIssuers();
@@ -703,6 +869,20 @@ private void checkCertTrusted(X509Certificate[] chain,
                             Boolean.parseBoolean(defaultAlwaysTrustMode)))
                     return;
 
+                // skip the path validation if we've seen this certificate
+                // recently, e.g. when reconnecting after a network change,
+                // unless it has to be checked for revocation every time
+                String validationKey = null;
+                if (chain != null && chain.length > 0
+                    && isValidationCacheEnabled())
+                {
+                    validationKey = getThumbprint(
+                        chain[0], THUMBPRINT_HASH_ALGORITHM)
+                        + (serverCheck ? "/server/" : "/client/") + authType;
+                    if (isValidated(validationKey))
+                        return;
+                }
+
                 try
                 {
                     // check the certificate itself (issuer, validity)
@@ -720,15 +900,23 @@ private void checkCertTrusted(X509Certificate[] chain,
                     else
                         tm.checkClientTrusted(chain, authType);
 
-                    if(identitiesToTest == null
-                        || !identitiesToTest.iterator().hasNext())
-                        return;
-                    else if(serverCheck)
-                        serverVerifier.verify(identitiesToTest, chain[0]);
-                    else
-                        clientVerifier.verify(identitiesToTest, chain[0]);
+                    if(identitiesToTest != null
+                        && identitiesToTest.iterator().hasNext())
+                    {
+                        if(serverCheck)
+                            serverVerifier.verify(identitiesToTest, chain[0]);
+                        else
+                            clientVerifier.verify(identitiesToTest, chain[0]);
+                    }
 
                     // ok, globally valid cert
+                    if (validationKey != null)
+                    {
+                        validated.put(validationKey, Math.min(
+                            System.currentTimeMillis()
+                                + VALIDATION_CACHE_TIMEOUT,
+                            chain[0].getNotAfter().getTime()));
+                    }
                 }
                 catch (CertificateException e)
                 {
@@ -960,6 +1148,69 @@ private X509Certificate[] tryBuildChain(X509Certificate[] chain)
         };
     }
 
+    /**
+     * Determines whether successful validations of certificate chains are
+     * remembered, which is never the case while revocation checking is
+     * enabled.
+     *
+     * @return <tt>true</tt> if validations are remembered
+     */
+    private boolean isValidationCacheEnabled()
+    {
+        return config.getBoolean(PNAME_VALIDATION_CACHE_ENABLED, false)
+            && !config.getBoolean(PNAME_REVOCATION_CHECK_ENABLED, false);
+    }
+
+    /**
+     * Gets the X509 trust manager of the JDK for the configured trust store.
+     * The trust store is only loaded again after its configuration changed.
+     *
+     * @return the default X509 trust manager
+     * @throws GeneralSecurityException when no trust manager is available
+     */
+    private synchronized X509ExtendedTrustManager getDefaultTrustManager()
+        throws GeneralSecurityException
+    {
+        if (defaultTrustManager != null)
+            return defaultTrustManager;
+
+        TrustManagerFactory tmFactory =
+            TrustManagerFactory.getInstance(TrustManagerFactory
+                .getDefaultAlgorithm());
+
+        KeyStore ks = null;
+        if (SystemUtils.isJavaVersionAtMost(JavaVersion.JAVA_1_8))
+        {
+            //workaround for https://bugs.openjdk.java.net/browse/JDK-6672015
+            String tsType =
+                System.getProperty("javax.net.ssl.trustStoreType", null);
+            if ("Windows-ROOT".equals(tsType))
+            {
+                try
+                {
+                    ks = KeyStore.getInstance(tsType);
+                    ks.load(null, null);
+                }
+                catch (Exception e)
+                {
+                    logger.error("Could not rename Windows-ROOT aliases", e);
+                }
+            }
+        }
+
+        tmFactory.init(ks);
+        for (TrustManager m : tmFactory.getTrustManagers())
+        {
+            if (m instanceof X509ExtendedTrustManager)
+            {
+                defaultTrustManager = (X509ExtendedTrustManager) m;
+                return defaultTrustManager;
+            }
+        }
+        throw new GeneralSecurityException(
+            "No default X509 trust manager found");
+    }
+
     private X509Certificate getCertificateFromUrl(URI address) throws Exception
     {
         CertificateFactory certFactory =
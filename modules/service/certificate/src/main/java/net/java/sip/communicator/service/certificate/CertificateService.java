@@ -93,6 +93,14 @@
     String PNAME_OCSP_ENABLED =
         "net.java.sip.communicator.service.cert.ocsp.enabled";
 
+    /**
+     * When set to true, successful validations of a certificate chain are
+     * remembered for a few minutes and not repeated, e.g. when an account
+     * reconnects. Never applies while revocation checking is enabled.
+     */
+    String PNAME_VALIDATION_CACHE_ENABLED =
+        "net.java.sip.communicator.service.cert.validationcache.enabled";
+
     // ------------------------------------------------------------------------
     // constants
     // ------------------------------------------------------------------------
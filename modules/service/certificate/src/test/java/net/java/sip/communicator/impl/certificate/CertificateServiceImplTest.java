@@ -0,0 +1,360 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.certificate;
+
+import static org.junit.Assert.*;
+
+import java.beans.*;
+import java.io.*;
+import java.math.*;
+import java.security.*;
+import java.security.cert.*;
+import java.util.*;
+
+import javax.net.ssl.*;
+
+import net.java.sip.communicator.service.certificate.*;
+import net.java.sip.communicator.service.credentialsstorage.*;
+
+import org.bouncycastle.asn1.x500.*;
+import org.bouncycastle.cert.jcajce.*;
+import org.bouncycastle.operator.jcajce.*;
+import org.easymock.*;
+import org.jitsi.service.configuration.*;
+import org.jitsi.service.resources.*;
+import org.junit.*;
+import org.junit.rules.*;
+import org.osgi.framework.*;
+
+public class CertificateServiceImplTest
+{
+    private static final String[] SYSTEM_PROPERTIES = {
+        "javax.net.ssl.trustStore",
+        "javax.net.ssl.trustStoreType",
+        "javax.net.ssl.trustStorePassword",
+        "javax.net.ssl.keyStoreType"
+    };
+
+    private static final Map<String, Object> properties = new HashMap<>();
+
+    private static final Map<String, List<PropertyChangeListener>> listeners
+        = new HashMap<>();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Map<String, String> savedSystemProperties = new HashMap<>();
+
+    private X509Certificate[] chain;
+
+    private File trustStore;
+
+    private CertificateServiceImpl service;
+
+    @BeforeClass
+    public static void setUpClass()
+    {
+        ConfigurationService config
+            = EasyMock.createNiceMock(ConfigurationService.class);
+        EasyMock.expect(config.getProperty(EasyMock.anyString()))
+            .andAnswer(() -> properties.get(arg(0))).anyTimes();
+        EasyMock.expect(config.getString(EasyMock.anyString()))
+            .andAnswer(() -> string(arg(0), null)).anyTimes();
+        EasyMock.expect(
+                config.getString(EasyMock.anyString(), EasyMock.anyString()))
+            .andAnswer(() -> string(arg(0), arg(1))).anyTimes();
+        EasyMock.expect(
+                config.getBoolean(EasyMock.anyString(), EasyMock.anyBoolean()))
+            .andAnswer(() -> Boolean.parseBoolean(
+                string(arg(0), String.valueOf((Object) arg(1)))))
+            .anyTimes();
+        EasyMock.expect(
+                config.getPropertyNamesByPrefix(
+                    EasyMock.anyString(), EasyMock.anyBoolean()))
+            .andReturn(Collections.<String>emptyList()).anyTimes();
+        config.addPropertyChangeListener(
+            EasyMock.anyString(),
+            EasyMock.anyObject(PropertyChangeListener.class));
+        EasyMock.expectLastCall().andAnswer(() -> {
+            listeners.computeIfAbsent(arg(0), k -> new ArrayList<>())
+                .add(arg(1));
+            return null;
+        }).anyTimes();
+
+        CredentialsStorageService credentials
+            = EasyMock.createNiceMock(CredentialsStorageService.class);
+        ResourceManagementService resources
+            = EasyMock.createNiceMock(ResourceManagementService.class);
+        BundleContext bc = EasyMock.createNiceMock(BundleContext.class);
+        register(bc, ConfigurationService.class, config);
+        register(bc, CredentialsStorageService.class, credentials);
+        register(bc, ResourceManagementService.class, resources);
+        EasyMock.replay(config, credentials, resources, bc);
+
+        CertificateVerificationActivator.bundleContext = bc;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void register(
+        BundleContext bc, Class<T> serviceClass, T service)
+    {
+        ServiceReference<T> ref = EasyMock.createMock(ServiceReference.class);
+        EasyMock.expect(bc.getServiceReference(serviceClass))
+            .andReturn(ref).anyTimes();
+        EasyMock.expect(bc.getService(ref)).andReturn(service).anyTimes();
+        EasyMock.replay(ref);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T arg(int index)
+    {
+        return (T) EasyMock.getCurrentArguments()[index];
+    }
+
+    private static String string(String name, String defaultValue)
+    {
+        Object value = properties.get(name);
+        return value == null ? defaultValue : value.toString();
+    }
+
+    private static void setProperty(String name, Object value)
+    {
+        Object oldValue = properties.put(name, value);
+        PropertyChangeEvent evt
+            = new PropertyChangeEvent(name, name, oldValue, value);
+        for (PropertyChangeListener l
+            : listeners.getOrDefault(name, Collections.emptyList()))
+        {
+            l.propertyChange(evt);
+        }
+    }
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        for (String name : SYSTEM_PROPERTIES)
+            savedSystemProperties.put(name, System.getProperty(name));
+        properties.clear();
+        listeners.clear();
+
+        chain = new X509Certificate[] { createCertificate() };
+        trustStore = createTrustStore(chain[0]);
+        properties.put(CertificateService.PNAME_TRUSTSTORE_TYPE, "JKS");
+        properties.put(
+            CertificateService.PNAME_TRUSTSTORE_FILE, trustStore.getPath());
+        properties.put(CertificateService.PNAME_NO_USER_INTERACTION, true);
+
+        service = new CertificateServiceImpl();
+    }
+
+    @After
+    public void tearDown()
+    {
+        for (Map.Entry<String, String> e : savedSystemProperties.entrySet())
+        {
+            if (e.getValue() == null)
+                System.clearProperty(e.getKey());
+            else
+                System.setProperty(e.getKey(), e.getValue());
+        }
+    }
+
+    private static X509Certificate createCertificate()
+        throws Exception
+    {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        X500Name name = new X500Name("CN=host.test");
+        long now = System.currentTimeMillis();
+
+        return new JcaX509CertificateConverter().getCertificate(
+            new JcaX509v3CertificateBuilder(
+                    name,
+                    BigInteger.valueOf(now),
+                    new Date(now - 60000),
+                    new Date(now + 24 * 60 * 60 * 1000),
+                    name,
+                    keyPair.getPublic())
+                .build(new JcaContentSignerBuilder("SHA256withRSA")
+                    .build(keyPair.getPrivate())));
+    }
+
+    private File createTrustStore(X509Certificate cert)
+        throws Exception
+    {
+        KeyStore ks = KeyStore.getInstance("JKS");
+        ks.load(null, null);
+        ks.setCertificateEntry("test", cert);
+
+        File file = folder.newFile();
+        try (OutputStream out = new FileOutputStream(file))
+        {
+            ks.store(out, "changeit".toCharArray());
+        }
+        return file;
+    }
+
+    @Test
+    public void testTrustManagersAreCachedUntilTrustStoreChanges()
+        throws Exception
+    {
+        X509ExtendedTrustManager tm = service.getTrustManager("host.test");
+        assertSame(tm, service.getTrustManager("host.test"));
+        assertNotSame(tm, service.getTrustManager("other.test"));
+
+        setProperty(
+            CertificateService.PNAME_TRUSTSTORE_FILE, trustStore.getPath());
+        assertNotSame(tm, service.getTrustManager("host.test"));
+    }
+
+    @Test
+    public void testClientAuthConfigChangeDropsCaches()
+        throws Exception
+    {
+        X509ExtendedTrustManager tm = service.getTrustManager("host.test");
+
+        service.removeClientAuthCertificateConfig("conf1");
+        assertNotSame(tm, service.getTrustManager("host.test"));
+    }
+
+    @Test
+    public void testSslContextFollowsKeyStoreProperties()
+        throws Exception
+    {
+        X509ExtendedTrustManager tm = service.getTrustManager("host.test");
+        SSLContext context = service.getSSLContext(tm);
+        assertSame(context, service.getSSLContext(tm));
+
+        System.setProperty("javax.net.ssl.keyStoreType", "PKCS12");
+        SSLContext reconfigured = service.getSSLContext(tm);
+        assertNotSame(context, reconfigured);
+        assertSame(reconfigured, service.getSSLContext(tm));
+    }
+
+    @Test
+    public void testSslContextIsNotCachedForCustomTrustManager()
+        throws Exception
+    {
+        X509ExtendedTrustManager tm = service.getTrustManager("host.test");
+        SSLContext context = service.getSSLContext(tm);
+
+        CountingMatcher matcher = new CountingMatcher();
+        X509ExtendedTrustManager custom = service.getTrustManager(
+            Collections.singletonList("host.test"), matcher, matcher);
+        assertNotSame(
+            service.getSSLContext(custom), service.getSSLContext(custom));
+
+        // the contexts of the custom trust managers did not take its place
+        assertSame(context, service.getSSLContext(tm));
+    }
+
+    @Test
+    public void testValidationIsNotRememberedByDefault()
+        throws Exception
+    {
+        CountingMatcher matcher = new CountingMatcher();
+        X509TrustManager tm = service.getTrustManager(
+            Collections.singletonList("host.test"), matcher, matcher);
+
+        tm.checkServerTrusted(chain, "RSA");
+        tm.checkServerTrusted(chain, "RSA");
+        assertEquals(2, matcher.count);
+    }
+
+    @Test
+    public void testValidationIsRememberedWhenEnabled()
+        throws Exception
+    {
+        setProperty(CertificateService.PNAME_VALIDATION_CACHE_ENABLED, true);
+        CountingMatcher matcher = new CountingMatcher();
+        X509TrustManager tm = service.getTrustManager(
+            Collections.singletonList("host.test"), matcher, matcher);
+
+        tm.checkServerTrusted(chain, "RSA");
+        tm.checkServerTrusted(chain, "RSA");
+        assertEquals(1, matcher.count);
+
+        // a client check is a different validation
+        tm.checkClientTrusted(chain, "RSA");
+        assertEquals(2, matcher.count);
+
+        setProperty(CertificateService.PNAME_ALWAYS_TRUST, false);
+        tm.checkServerTrusted(chain, "RSA");
+        assertEquals(3, matcher.count);
+    }
+
+    @Test
+    public void testRevocationCheckDisablesValidationCache()
+        throws Exception
+    {
+        setProperty(CertificateService.PNAME_VALIDATION_CACHE_ENABLED, true);
+        setProperty(CertificateService.PNAME_REVOCATION_CHECK_ENABLED, true);
+        CountingMatcher matcher = new CountingMatcher();
+        X509TrustManager tm = service.getTrustManager(
+            Collections.singletonList("host.test"), matcher, matcher);
+
+        tm.checkServerTrusted(chain, "RSA");
+        tm.checkServerTrusted(chain, "RSA");
+        assertEquals(2, matcher.count);
+    }
+
+    @Test
+    public void testTrustStoreChangeDropsRememberedValidation()
+        throws Exception
+    {
+        setProperty(CertificateService.PNAME_VALIDATION_CACHE_ENABLED, true);
+        CountingMatcher matcher = new CountingMatcher();
+        X509TrustManager tm = service.getTrustManager(
+            Collections.singletonList("host.test"), matcher, matcher);
+        tm.checkServerTrusted(chain, "RSA");
+
+        setProperty(
+            CertificateService.PNAME_TRUSTSTORE_FILE,
+            createTrustStore(createCertificate()).getPath());
+
+        // validated again rather than remembered
+        tm.checkServerTrusted(chain, "RSA");
+        assertEquals(2, matcher.count);
+
+        // and rejected by the trust managers of the new trust store
+        try
+        {
+            service.getTrustManager("host.test")
+                .checkServerTrusted(chain, "RSA");
+            fail("The certificate is no longer trusted");
+        }
+        catch (CertificateException e)
+        {
+            // expected
+        }
+    }
+
+    private static class CountingMatcher
+        implements CertificateMatcher
+    {
+        private int count;
+
+        public void verify(Iterable<String> identitiesToTest,
+            X509Certificate cert)
+        {
+            count++;
+        }
+    }
+}
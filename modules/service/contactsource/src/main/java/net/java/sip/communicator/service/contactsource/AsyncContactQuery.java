@@ -255,6 +255,40 @@ else if ((patternLength > 4)
         return phoneNumberQuery;
     }
 
+    /**
+     * Gets the {@link #query} of this <tt>AsyncContactQuery</tt> as the plain
+     * text it matches, so that it can be answered from an index such as a
+     * <tt>ContactSnapshot</tt> instead of matching every contact.
+     *
+     * @return the text matched by the <tt>query</tt> of this
+     * <tt>AsyncContactQuery</tt> if it is a literal or quoted pattern;
+     * otherwise, <tt>null</tt>
+     */
+    protected String getLiteralQuery()
+    {
+        String pattern = query.pattern();
+
+        if ((query.flags() & Pattern.LITERAL) != 0)
+            return pattern;
+
+        int patternLength = pattern.length();
+
+        if ((patternLength >= 4)
+                && pattern.startsWith("\\Q")
+                && pattern.endsWith("\\E")
+                && (pattern.indexOf("\\E") == patternLength - 2))
+        {
+            return pattern.substring(2, patternLength - 2);
+        }
+
+        for (int i = 0; i < patternLength; i++)
+        {
+            if ("\\^$.|?*+()[]{}".indexOf(pattern.charAt(i)) >= 0)
+                return null;
+        }
+        return pattern;
+    }
+
     /**
      * Gets the number of <tt>SourceContact</tt>s which match this
      * <tt>ContactQuery</tt>.
@@ -0,0 +1,373 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.contactsource;
+
+import java.text.*;
+import java.util.*;
+
+/**
+ * An in-memory index for searching contacts by substrings of their names and
+ * addresses. The strings are folded to lower case without diacritics and
+ * every three character sequence points to the contacts containing it, so a
+ * search only checks the contacts sharing all sequences of the query. When a
+ * query extends the previous one, only the previous matches are checked.
+ * Results are ranked: contacts whose display name starts with the query come
+ * before the ones where it starts a word and these before the ones merely
+ * containing it.
+ *
+ * @param <T> the type of the indexed contacts
+ */
+public class ContactSearchIndex<T>
+{
+    /**
+     * The length of the indexed character sequences.
+     */
+    static final int GRAM_LENGTH = 3;
+
+    /**
+     * The indexed contacts.
+     */
+    private final Map<T, Entry<T>> entries = new HashMap<>();
+
+    /**
+     * The contacts by the character sequences their strings contain.
+     */
+    private final Map<String, Set<Entry<T>>> grams = new HashMap<>();
+
+    /**
+     * The folded last query or <tt>null</tt> if the index has changed since.
+     */
+    private String lastQuery;
+
+    /**
+     * The contacts matching {@link #lastQuery}.
+     */
+    private List<Entry<T>> lastMatches;
+
+    /**
+     * Adds a contact to the index or replaces its strings.
+     *
+     * @param contact the contact
+     * @param displayName the display name of the contact
+     * @param searchStrings the other strings the contact is found by
+     */
+    public synchronized void put(
+        T contact,
+        String displayName,
+        Collection<String> searchStrings)
+    {
+        remove(contact);
+
+        List<String> strings = new ArrayList<>(searchStrings.size() + 1);
+        String name = fold(displayName);
+
+        strings.add(name);
+        for (String s : searchStrings)
+        {
+            String folded = fold(s);
+
+            if (folded.length() > 0 && !strings.contains(folded))
+                strings.add(folded);
+        }
+
+        Entry<T> entry
+            = new Entry<>(contact, name, strings.toArray(new String[0]));
+
+        for (String gram : entry.grams)
+            grams.computeIfAbsent(gram, k -> new HashSet<>()).add(entry);
+        entries.put(contact, entry);
+        lastQuery = null;
+    }
+
+    /**
+     * Removes a contact from the index.
+     *
+     * @param contact the contact
+     */
+    public synchronized void remove(T contact)
+    {
+        Entry<T> entry = entries.remove(contact);
+
+        if (entry == null)
+            return;
+
+        for (String gram : entry.grams)
+        {
+            Set<Entry<T>> gramEntries = grams.get(gram);
+
+            if (gramEntries != null
+                && gramEntries.remove(entry)
+                && gramEntries.isEmpty())
+            {
+                grams.remove(gram);
+            }
+        }
+        lastQuery = null;
+    }
+
+    /**
+     * Removes all contacts from the index.
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+        grams.clear();
+        lastQuery = null;
+    }
+
+    /**
+     * Returns the number of indexed contacts.
+     *
+     * @return the number of indexed contacts
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Finds the contacts with a string containing the query, ignoring case
+     * and diacritics.
+     *
+     * @param query the query
+     * @return the matching contacts, best matches first
+     */
+    public List<T> search(String query)
+    {
+        return search(query, -1);
+    }
+
+    /**
+     * Finds the best contacts with a string containing the query, ignoring
+     * case and diacritics.
+     *
+     * @param query the query
+     * @param limit the maximum number of contacts to return or a negative
+     * value or zero to return all of them
+     * @return the matching contacts, best matches first
+     */
+    public synchronized List<T> search(String query, int limit)
+    {
+        String q = fold(query);
+        Collection<Entry<T>> candidates;
+
+        if (lastQuery != null && q.contains(lastQuery))
+            candidates = lastMatches;
+        else if (q.length() >= GRAM_LENGTH)
+            candidates = getCandidates(q);
+        else
+            candidates = entries.values();
+
+        List<Entry<T>> matches = new ArrayList<>();
+
+        for (Entry<T> entry : candidates)
+        {
+            if (entry.matches(q))
+                matches.add(entry);
+        }
+
+        lastQuery = q;
+        lastMatches = matches;
+
+        List<Entry<T>> ranked = new ArrayList<>(matches);
+
+        ranked.sort(Comparator
+            .<Entry<T>>comparingInt(e -> e.rank(q))
+            .thenComparing(e -> e.displayName));
+
+        int count
+            = (limit > 0) ? Math.min(limit, ranked.size()) : ranked.size();
+        List<T> result = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++)
+            result.add(ranked.get(i).contact);
+        return result;
+    }
+
+    /**
+     * Returns the contacts having all character sequences of a query.
+     *
+     * @param q the folded query
+     * @return the candidate contacts
+     */
+    private Collection<Entry<T>> getCandidates(String q)
+    {
+        List<Set<Entry<T>>> sets = new ArrayList<>();
+
+        for (int i = 0; i + GRAM_LENGTH <= q.length(); i++)
+        {
+            Set<Entry<T>> gramEntries
+                = grams.get(q.substring(i, i + GRAM_LENGTH));
+
+            if (gramEntries == null)
+                return Collections.emptyList();
+            sets.add(gramEntries);
+        }
+
+        sets.sort(Comparator.comparingInt(Set::size));
+
+        Set<Entry<T>> candidates = new HashSet<>(sets.get(0));
+
+        for (int i = 1; i < sets.size() && !candidates.isEmpty(); i++)
+            candidates.retainAll(sets.get(i));
+        return candidates;
+    }
+
+    /**
+     * Folds a string to lower case without diacritics, the way the index
+     * compares the strings of the contacts to a query.
+     *
+     * @param s the string
+     * @return the folded string
+     */
+    public static String fold(String s)
+    {
+        if (s == null)
+            return "";
+
+        boolean ascii = true;
+
+        for (int i = 0; i < s.length() && ascii; i++)
+            ascii = s.charAt(i) < 0x80;
+
+        if (!ascii)
+        {
+            String decomposed = Normalizer.normalize(s, Normalizer.Form.NFD);
+            StringBuilder folded = new StringBuilder(decomposed.length());
+
+            for (int i = 0; i < decomposed.length(); i++)
+            {
+                char c = decomposed.charAt(i);
+
+                if (Character.getType(c) != Character.NON_SPACING_MARK)
+                    folded.append(c);
+            }
+            s = folded.toString();
+        }
+        return s.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * An indexed contact.
+     *
+     * @param <T> the type of the contact
+     */
+    private static class Entry<T>
+    {
+        /**
+         * The contact.
+         */
+        final T contact;
+
+        /**
+         * The folded display name.
+         */
+        final String displayName;
+
+        /**
+         * The folded strings, starting with the display name.
+         */
+        final String[] strings;
+
+        /**
+         * The character sequences of the strings.
+         */
+        final Set<String> grams = new HashSet<>();
+
+        /**
+         * Creates an entry.
+         *
+         * @param contact the contact
+         * @param displayName the folded display name
+         * @param strings the folded strings
+         */
+        Entry(T contact, String displayName, String[] strings)
+        {
+            this.contact = contact;
+            this.displayName = displayName;
+            this.strings = strings;
+
+            for (String s : strings)
+            {
+                for (int i = 0; i + GRAM_LENGTH <= s.length(); i++)
+                    grams.add(s.substring(i, i + GRAM_LENGTH));
+            }
+        }
+
+        /**
+         * Checks whether a string of this contact contains a query.
+         *
+         * @param q the folded query
+         * @return <tt>true</tt> if the contact matches
+         */
+        boolean matches(String q)
+        {
+            for (String s : strings)
+            {
+                if (s.contains(q))
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * Ranks how well this contact matches a query, lower is better.
+         *
+         * @param q the folded query
+         * @return the rank
+         */
+        int rank(String q)
+        {
+            if (displayName.equals(q))
+                return 0;
+            if (displayName.startsWith(q))
+                return 1;
+            if (startsWord(displayName, q))
+                return 2;
+            for (int i = 1; i < strings.length; i++)
+            {
+                if (strings[i].startsWith(q))
+                    return 3;
+            }
+            for (int i = 1; i < strings.length; i++)
+            {
+                if (startsWord(strings[i], q))
+                    return 4;
+            }
+            return 5;
+        }
+
+        /**
+         * Checks whether a query starts a word of a string.
+         *
+         * @param s the string
+         * @param q the query
+         * @return <tt>true</tt> if <tt>q</tt> follows a non letter or digit
+         * in <tt>s</tt>
+         */
+        private static boolean startsWord(String s, String q)
+        {
+            for (int i = s.indexOf(q, 1); i > 0; i = s.indexOf(q, i + 1))
+            {
+                if (!Character.isLetterOrDigit(s.charAt(i - 1)))
+                    return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.contactsource;
+
+import java.util.*;
+
+/**
+ * An in-memory snapshot of the entries of an address book, indexed with a
+ * <tt>ContactSearchIndex</tt> so that queries do not have to go through the
+ * whole address book. The entries are (re)loaded lazily on the first search
+ * after the snapshot has been invalidated or has expired. A reload only
+ * updates the index for the entries which were added or removed since the
+ * previous load, so entries must implement <tt>equals</tt> and
+ * <tt>hashCode</tt> over everything they are searched by.
+ *
+ * @param <E> the type of the entries
+ */
+public abstract class ContactSnapshot<E>
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>ContactSnapshot</tt> class and its
+     * instances for logging output.
+     */
+    private static final org.slf4j.Logger logger
+        = org.slf4j.LoggerFactory.getLogger(ContactSnapshot.class);
+
+    /**
+     * The index of {@link #entries}.
+     */
+    private final ContactSearchIndex<E> index = new ContactSearchIndex<>();
+
+    /**
+     * The loaded entries in the order they were loaded.
+     */
+    private volatile Set<E> entries = Collections.emptySet();
+
+    /**
+     * Whether the entries have to be loaded before the next search.
+     */
+    private volatile boolean stale = true;
+
+    /**
+     * The time in milliseconds when the entries were last loaded.
+     */
+    private volatile long loadTime;
+
+    /**
+     * The time in milliseconds after which the loaded entries expire or a
+     * negative value if they never do.
+     */
+    private volatile long maxAge = -1;
+
+    /**
+     * Loads all entries of the address book.
+     *
+     * @return the entries of the address book
+     * @throws Exception if the address book could not be read
+     */
+    protected abstract Collection<E> load()
+        throws Exception;
+
+    /**
+     * Returns the display name of an entry which ranks the search results.
+     *
+     * @param entry the entry
+     * @return the display name of <tt>entry</tt>
+     */
+    protected abstract String getDisplayName(E entry);
+
+    /**
+     * Returns the strings other than the display name an entry is found by.
+     *
+     * @param entry the entry
+     * @return the strings <tt>entry</tt> is found by
+     */
+    protected abstract Collection<String> getSearchStrings(E entry);
+
+    /**
+     * Finds the entries with a string containing a query, ignoring case and
+     * diacritics.
+     *
+     * @param query the query
+     * @param limit the maximum number of entries to return or a negative
+     * value or zero to return all of them
+     * @return the matching entries, best matches first
+     */
+    public List<E> search(String query, int limit)
+    {
+        ensureLoaded();
+        return index.search(query, limit);
+    }
+
+    /**
+     * Returns all entries, e.g. for matching them against a query the index
+     * cannot answer.
+     *
+     * @return an unmodifiable view of the entries in the order they were
+     * loaded
+     */
+    public Collection<E> getEntries()
+    {
+        ensureLoaded();
+        return Collections.unmodifiableSet(entries);
+    }
+
+    /**
+     * Returns the number of loaded entries.
+     *
+     * @return the number of loaded entries
+     */
+    public int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Makes the next search reload the entries.
+     */
+    public void invalidate()
+    {
+        stale = true;
+    }
+
+    /**
+     * Sets the time after which the loaded entries are reloaded by the next
+     * search.
+     *
+     * @param maxAge the time in milliseconds or a negative value if the
+     * entries never expire
+     */
+    public void setMaxAge(long maxAge)
+    {
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Determines whether the entries have to be reloaded before searching
+     * them.
+     *
+     * @return <tt>true</tt> if the entries have to be reloaded
+     */
+    protected boolean isStale()
+    {
+        long maxAge = this.maxAge;
+
+        return stale
+            || (maxAge >= 0
+                && System.currentTimeMillis() - loadTime > maxAge);
+    }
+
+    /**
+     * Reloads the entries if they are stale.
+     */
+    protected void ensureLoaded()
+    {
+        if (isStale())
+        {
+            synchronized (this)
+            {
+                if (isStale())
+                    reload();
+            }
+        }
+    }
+
+    /**
+     * Loads the entries and updates the index with the ones added or removed
+     * since the last load. The entries loaded before are kept if the address
+     * book cannot be read.
+     */
+    public synchronized void reload()
+    {
+        Collection<E> loaded;
+
+        stale = false;
+        loadTime = System.currentTimeMillis();
+        try
+        {
+            loaded = load();
+        }
+        catch (Exception ex)
+        {
+            logger.warn("Failed to load " + this, ex);
+            return;
+        }
+
+        Set<E> oldEntries = entries;
+        Set<E> newEntries = new LinkedHashSet<>(loaded);
+
+        for (E entry : oldEntries)
+        {
+            if (!newEntries.contains(entry))
+                index.remove(entry);
+        }
+        for (E entry : newEntries)
+        {
+            if (!oldEntries.contains(entry))
+            {
+                index.put(
+                    entry,
+                    getDisplayName(entry),
+                    getSearchStrings(entry));
+            }
+        }
+        entries = newEntries;
+
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Loaded " + newEntries.size() + " entries of " + this
+                + " in " + (System.currentTimeMillis() - loadTime) + "ms");
+        }
+    }
+}
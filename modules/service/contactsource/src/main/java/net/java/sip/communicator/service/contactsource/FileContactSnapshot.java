@@ -0,0 +1,299 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.contactsource;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * A <tt>ContactSnapshot</tt> of an address book stored in a file. Once
+ * started, a background thread loads the file and watches its directory so
+ * that the snapshot is reloaded whenever the file is written and searches
+ * never wait for it to be parsed again. If the directory cannot be watched or
+ * the snapshot is not started, the modification time of the file is checked
+ * before every search instead.
+ *
+ * @param <E> the type of the entries
+ */
+public abstract class FileContactSnapshot<E>
+    extends ContactSnapshot<E>
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>FileContactSnapshot</tt> class and
+     * its instances for logging output.
+     */
+    private static final org.slf4j.Logger logger
+        = org.slf4j.LoggerFactory.getLogger(FileContactSnapshot.class);
+
+    /**
+     * The time in milliseconds to wait after a change of the file for more
+     * changes before reloading it, so that writing it out in several steps
+     * does not reload it several times.
+     */
+    private static final long RELOAD_DELAY = 500;
+
+    /**
+     * The address book file.
+     */
+    private volatile File file;
+
+    /**
+     * The modification time of {@link #file} when it was last loaded.
+     */
+    private volatile long lastModified;
+
+    /**
+     * The service watching the directory of {@link #file} or <tt>null</tt>
+     * if it is not watched.
+     */
+    private volatile WatchService watchService;
+
+    /**
+     * Parses the address book file.
+     *
+     * @param file the address book file
+     * @return the entries of the address book
+     * @throws IOException if the file could not be read or parsed
+     */
+    protected abstract Collection<E> parse(File file)
+        throws IOException;
+
+    /**
+     * Returns the address book file.
+     *
+     * @return the address book file or <tt>null</tt> if none is set
+     */
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Sets the address book file, watching the new file instead of the old
+     * one if the snapshot was started.
+     *
+     * @param file the address book file
+     */
+    public synchronized void setFile(File file)
+    {
+        if (Objects.equals(this.file, file))
+            return;
+
+        boolean watching = (watchService != null);
+
+        stop();
+        this.file = file;
+        invalidate();
+        if (watching)
+            start();
+    }
+
+    /**
+     * Starts loading the file and reloading it whenever it changes on a
+     * background thread.
+     */
+    public synchronized void start()
+    {
+        File file = this.file;
+
+        if (watchService != null || file == null)
+            return;
+
+        Path path = file.getAbsoluteFile().toPath();
+        Path dir = path.getParent();
+
+        try
+        {
+            watchService = dir.getFileSystem().newWatchService();
+            dir.register(
+                watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            logger.warn("Cannot watch " + dir + " for changes of " + file
+                + ", it will be checked on every search", ex);
+            stop();
+            return;
+        }
+
+        final WatchService watchService = this.watchService;
+        final Path name = path.getFileName();
+        Thread watcher
+            = new Thread("FileContactSnapshot " + name)
+            {
+                @Override
+                public void run()
+                {
+                    watch(watchService, name);
+                }
+            };
+
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Stops watching the file. The snapshot keeps the loaded entries and
+     * checks the modification time of the file on the next searches.
+     */
+    public synchronized void stop()
+    {
+        if (watchService == null)
+            return;
+
+        try
+        {
+            watchService.close();
+        }
+        catch (IOException ex)
+        {
+            logger.debug("Failed to close the watch service", ex);
+        }
+        watchService = null;
+    }
+
+    /**
+     * Loads the file and reloads it whenever it changes until
+     * <tt>watchService</tt> is closed.
+     *
+     * @param watchService the service watching the directory of the file
+     * @param name the name of the file in its directory
+     */
+    private void watch(WatchService watchService, Path name)
+    {
+        try
+        {
+            reloadWatched(true);
+            while (true)
+            {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+
+                for (WatchEvent<?> event : key.pollEvents())
+                {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                        || name.equals(event.context()))
+                    {
+                        changed = true;
+                    }
+                }
+                if (!key.reset())
+                {
+                    // the directory is gone, fall back to checking the file
+                    invalidate();
+                    synchronized (this)
+                    {
+                        if (this.watchService == watchService)
+                            stop();
+                    }
+                    break;
+                }
+                if (changed)
+                {
+                    Thread.sleep(RELOAD_DELAY);
+                    while ((key = watchService.poll()) != null)
+                    {
+                        key.pollEvents();
+                        key.reset();
+                    }
+                    reloadWatched(false);
+                }
+            }
+        }
+        catch (ClosedWatchServiceException | InterruptedException ex)
+        {
+            // stopped
+        }
+    }
+
+    /**
+     * Reloads the file on the watching thread, which keeps watching it if
+     * the entries fail to be indexed.
+     *
+     * @param onlyIfStale whether to reload only if the entries are stale
+     */
+    private void reloadWatched(boolean onlyIfStale)
+    {
+        try
+        {
+            if (onlyIfStale)
+                ensureLoaded();
+            else
+                reload();
+        }
+        catch (RuntimeException ex)
+        {
+            // the next search or change of the file tries again
+            logger.error("Failed to reload " + this, ex);
+            invalidate();
+        }
+    }
+
+    /**
+     * Determines whether the file has to be reloaded before searching it,
+     * checking its modification time if it is not watched.
+     *
+     * @return <tt>true</tt> if the file has to be reloaded
+     */
+    @Override
+    protected boolean isStale()
+    {
+        if (super.isStale())
+            return true;
+
+        File file = this.file;
+
+        return watchService == null
+            && file != null
+            && file.lastModified() != lastModified;
+    }
+
+    /**
+     * Parses the file if it exists.
+     *
+     * @return the entries of the address book or an empty list if the file
+     * does not exist
+     * @throws IOException if the file could not be read or parsed
+     */
+    @Override
+    protected Collection<E> load()
+        throws IOException
+    {
+        File file = this.file;
+
+        lastModified = (file == null) ? 0 : file.lastModified();
+        if (file == null || !file.isFile())
+            return Collections.emptyList();
+        return parse(file);
+    }
+
+    /**
+     * Returns a string representation of this snapshot for logging.
+     *
+     * @return the path of the file
+     */
+    @Override
+    public String toString()
+    {
+        return String.valueOf(file);
+    }
+}
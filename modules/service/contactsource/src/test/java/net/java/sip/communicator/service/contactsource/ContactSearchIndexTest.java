@@ -0,0 +1,109 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.contactsource;
+
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Tests the matching, ranking and maintenance of a
+ * <tt>ContactSearchIndex</tt>.
+ */
+public class ContactSearchIndexTest
+    extends TestCase
+{
+    private final ContactSearchIndex<String> index
+        = new ContactSearchIndex<>();
+
+    @Override
+    protected void setUp()
+    {
+        index.put("alice", "Alice Smith",
+            Arrays.asList("alice@example.com"));
+        index.put("bob", "Bob Malice",
+            Arrays.asList("bob@example.org", "Bobby"));
+        index.put("jose", "José Étienne",
+            Arrays.asList("jose@example.net"));
+        index.put("carol", "Carol", Arrays.asList("c.smith@example.com"));
+    }
+
+    public void testSubstringMatchesIgnoringCase()
+    {
+        assertEquals(Arrays.asList("alice", "bob"), index.search("ALIC"));
+        assertEquals(Arrays.asList("alice"), index.search("lice s"));
+        assertEquals(Collections.emptyList(), index.search("zzz"));
+    }
+
+    public void testDiacriticsAreIgnored()
+    {
+        assertEquals(Arrays.asList("jose"), index.search("jose et"));
+        assertEquals(Arrays.asList("jose"), index.search("ÉTIEN"));
+    }
+
+    public void testShortQueries()
+    {
+        assertEquals(Arrays.asList("bob"), index.search("bo"));
+        assertEquals(4, index.search("").size());
+        assertEquals(4, index.search(null).size());
+    }
+
+    public void testRanking()
+    {
+        // display name prefix, then word start in the display name, then
+        // an address prefix, then a word start in an address
+        index.put("smith", "Smithers", Collections.<String>emptyList());
+
+        assertEquals(Arrays.asList("smith", "alice", "carol"),
+            index.search("smith"));
+    }
+
+    public void testNarrowingFollowsChanges()
+    {
+        assertEquals(Arrays.asList("alice", "bob"), index.search("ali"));
+
+        index.put("dave", "Dave", Arrays.asList("dalila@example.com"));
+        index.remove("bob");
+
+        assertEquals(Arrays.asList("alice", "dave"), index.search("ali"));
+        assertEquals(Arrays.asList("alice"), index.search("alic"));
+        assertEquals(Arrays.asList("dave"), index.search("alil"));
+        assertEquals(4, index.search("exam").size());
+    }
+
+    public void testFold()
+    {
+        assertEquals("renee o'brien", ContactSearchIndex.fold("Renée O'Brien"));
+        assertEquals("straße", ContactSearchIndex.fold("STRAßE"));
+        assertEquals("", ContactSearchIndex.fold(null));
+    }
+
+    public void testReplaceAndClear()
+    {
+        index.put("alice", "Alice Jones", Collections.<String>emptyList());
+
+        assertEquals(Collections.emptyList(), index.search("smith a"));
+        assertEquals(Arrays.asList("alice"), index.search("jones"));
+        assertEquals(4, index.size());
+
+        index.clear();
+
+        assertEquals(0, index.size());
+        assertEquals(Collections.emptyList(), index.search("alice"));
+    }
+}
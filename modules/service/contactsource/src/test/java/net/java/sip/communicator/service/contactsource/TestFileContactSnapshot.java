@@ -0,0 +1,211 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.contactsource;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+
+/**
+ * Tests the loading, searching and reloading of a
+ * <tt>FileContactSnapshot</tt> of an address book with one contact per line.
+ */
+public class TestFileContactSnapshot
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The number of times the address book has been parsed.
+     */
+    private final AtomicInteger parses = new AtomicInteger();
+
+    /**
+     * The number of entries which failed to be indexed.
+     */
+    private final AtomicInteger failures = new AtomicInteger();
+
+    /**
+     * The snapshot under test.
+     */
+    private final FileContactSnapshot<String> snapshot
+        = new FileContactSnapshot<String>()
+        {
+            @Override
+            protected Collection<String> parse(File file)
+                throws IOException
+            {
+                parses.incrementAndGet();
+                return Files.readAllLines(
+                    file.toPath(), StandardCharsets.UTF_8);
+            }
+
+            @Override
+            protected String getDisplayName(String entry)
+            {
+                if (entry.equals("invalid"))
+                {
+                    failures.incrementAndGet();
+                    throw new IllegalArgumentException(entry);
+                }
+                return entry;
+            }
+
+            @Override
+            protected Collection<String> getSearchStrings(String entry)
+            {
+                return Collections.emptyList();
+            }
+        };
+
+    @After
+    public void tearDown()
+    {
+        snapshot.stop();
+    }
+
+    /**
+     * Writes the address book.
+     *
+     * @param file the address book file
+     * @param lastModified the modification time to set
+     * @param contacts the contacts
+     */
+    private static void write(File file, long lastModified, String... contacts)
+        throws IOException
+    {
+        Files.write(
+            file.toPath(), Arrays.asList(contacts), StandardCharsets.UTF_8);
+        assertTrue(file.setLastModified(lastModified));
+    }
+
+    /**
+     * Tests that searches are answered from the index, best matches first and
+     * limited to the requested count.
+     */
+    @Test
+    public void testSearch()
+        throws Exception
+    {
+        File file = folder.newFile("abook.txt");
+
+        write(file, 1000000, "Maria Anders", "Ana Trujillo", "Antonio Moreno");
+        snapshot.setFile(file);
+
+        assertEquals(
+            Arrays.asList("Ana Trujillo", "Antonio Moreno", "Maria Anders"),
+            snapshot.search("an", 0));
+        assertEquals(
+            Arrays.asList("Ana Trujillo", "Antonio Moreno"),
+            snapshot.search("an", 2));
+        assertEquals(3, snapshot.getEntries().size());
+        assertEquals(1, parses.get());
+    }
+
+    /**
+     * Tests that a snapshot which is not watching its file reloads it when
+     * its modification time changes.
+     */
+    @Test
+    public void testReloadOnModification()
+        throws Exception
+    {
+        File file = folder.newFile("abook.txt");
+
+        write(file, 1000000, "Maria Anders");
+        snapshot.setFile(file);
+        assertEquals(1, snapshot.search("maria", 0).size());
+        assertEquals(1, snapshot.search("maria", 0).size());
+        assertEquals(1, parses.get());
+
+        write(file, 2000000, "Ana Trujillo");
+        assertTrue(snapshot.search("maria", 0).isEmpty());
+        assertEquals(
+            Collections.singletonList("Ana Trujillo"),
+            snapshot.search("ana", 0));
+        assertEquals(2, parses.get());
+    }
+
+    /**
+     * Tests that a started snapshot reloads its file in the background when
+     * it is written.
+     */
+    @Test
+    public void testWatch()
+        throws Exception
+    {
+        File file = folder.newFile("abook.txt");
+
+        write(file, 1000000, "Maria Anders");
+        snapshot.setFile(file);
+        snapshot.start();
+        assertEquals(1, snapshot.search("maria", 0).size());
+
+        write(file, 2000000, "Maria Anders", "Ana Trujillo");
+
+        long deadline = System.currentTimeMillis() + 30000;
+
+        while (snapshot.size() != 2 && System.currentTimeMillis() < deadline)
+            Thread.sleep(50);
+        assertEquals(2, snapshot.size());
+        assertEquals(
+            Collections.singletonList("Ana Trujillo"),
+            snapshot.search("trujillo", 0));
+    }
+
+    /**
+     * Tests that a started snapshot keeps watching its file after the
+     * entries of a version of it failed to be indexed.
+     */
+    @Test
+    public void testWatchSurvivesFailedReload()
+        throws Exception
+    {
+        File file = folder.newFile("abook.txt");
+
+        write(file, 1000000, "Maria Anders");
+        snapshot.setFile(file);
+        snapshot.start();
+        assertEquals(1, snapshot.search("maria", 0).size());
+
+        write(file, 2000000, "invalid");
+
+        long deadline = System.currentTimeMillis() + 30000;
+
+        while (failures.get() == 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(50);
+        assertTrue(failures.get() > 0);
+
+        write(file, 3000000, "Maria Anders", "Ana Trujillo");
+
+        deadline = System.currentTimeMillis() + 30000;
+        while (snapshot.size() != 2 && System.currentTimeMillis() < deadline)
+            Thread.sleep(50);
+        assertEquals(2, snapshot.size());
+        assertEquals(
+            Collections.singletonList("Ana Trujillo"),
+            snapshot.search("trujillo", 0));
+    }
+}
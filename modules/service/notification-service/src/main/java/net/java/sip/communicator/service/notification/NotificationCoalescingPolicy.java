@@ -0,0 +1,142 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.notification;
+
+import java.text.*;
+
+/**
+ * Describes how bursts of notifications of a single event type are collapsed.
+ * Bursts are tracked per source, i.e. per popup tag such as the contact or
+ * chat room the notifications are fired for, so a burst from one source does
+ * not silence another one.
+ * The first notification of a burst is dispatched immediately and opens a
+ * coalescing window. Further notifications that arrive while the window is
+ * open do not play a sound and do not show a popup of their own, depending on
+ * the policy. When the window closes, a single digest popup summarizes the
+ * suppressed notifications.
+ */
+public class NotificationCoalescingPolicy
+{
+    /**
+     * The default digest format. <tt>{0}</tt> is the number of suppressed
+     * notifications, <tt>{1}</tt> the message of the last one.
+     */
+    public static final String DEFAULT_DIGEST_FORMAT = "{1} (+{0})";
+
+    /**
+     * Length of the coalescing window in milliseconds.
+     */
+    private final long windowMillis;
+
+    /**
+     * Whether only one sound is played per window.
+     */
+    private final boolean coalesceSound;
+
+    /**
+     * Whether popups within a window are collapsed into a digest.
+     */
+    private final boolean coalescePopups;
+
+    /**
+     * The <tt>MessageFormat</tt> pattern of the digest popup message.
+     */
+    private final String digestFormat;
+
+    /**
+     * Creates a policy that plays one sound per window and collapses popups
+     * into a digest using the default digest format.
+     *
+     * @param windowMillis the length of the coalescing window in milliseconds
+     */
+    public NotificationCoalescingPolicy(long windowMillis)
+    {
+        this(windowMillis, true, true, DEFAULT_DIGEST_FORMAT);
+    }
+
+    /**
+     * Creates a coalescing policy.
+     *
+     * @param windowMillis the length of the coalescing window in milliseconds
+     * @param coalesceSound <tt>true</tt> to play only one sound per window
+     * @param coalescePopups <tt>true</tt> to collapse popups into a digest
+     * @param digestFormat the <tt>MessageFormat</tt> pattern of the digest
+     * popup message, with <tt>{0}</tt> being the number of suppressed
+     * notifications and <tt>{1}</tt> the message of the last one
+     */
+    public NotificationCoalescingPolicy(
+            long windowMillis,
+            boolean coalesceSound,
+            boolean coalescePopups,
+            String digestFormat)
+    {
+        if (windowMillis <= 0)
+            throw new IllegalArgumentException("windowMillis must be positive");
+
+        this.windowMillis = windowMillis;
+        this.coalesceSound = coalesceSound;
+        this.coalescePopups = coalescePopups;
+        this.digestFormat
+            = (digestFormat == null) ? DEFAULT_DIGEST_FORMAT : digestFormat;
+    }
+
+    /**
+     * Returns the length of the coalescing window in milliseconds.
+     *
+     * @return the length of the coalescing window in milliseconds
+     */
+    public long getWindowMillis()
+    {
+        return windowMillis;
+    }
+
+    /**
+     * Indicates whether only one sound is played per window.
+     *
+     * @return <tt>true</tt> if only one sound is played per window
+     */
+    public boolean isCoalesceSound()
+    {
+        return coalesceSound;
+    }
+
+    /**
+     * Indicates whether popups within a window are collapsed into a digest.
+     *
+     * @return <tt>true</tt> if popups are collapsed into a digest
+     */
+    public boolean isCoalescePopups()
+    {
+        return coalescePopups;
+    }
+
+    /**
+     * Formats the message of the digest popup.
+     *
+     * @param suppressed the number of suppressed notifications
+     * @param lastMessage the message of the last suppressed notification
+     * @return the digest message
+     */
+    public String formatDigest(int suppressed, String lastMessage)
+    {
+        return MessageFormat.format(
+            digestFormat,
+            suppressed,
+            (lastMessage == null) ? "" : lastMessage);
+    }
+}
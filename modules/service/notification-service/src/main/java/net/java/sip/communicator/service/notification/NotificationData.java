@@ -162,4 +162,15 @@ String getTitle()
     {
         return title;
     }
+
+    /**
+     * Creates a copy of this instance with a different message.
+     *
+     * @param message the message of the copy
+     * @return a copy of this instance with the given message
+     */
+    NotificationData withMessage(String message)
+    {
+        return new NotificationData(eventType, title, message, icon, extras);
+    }
 }
@@ -0,0 +1,149 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.notification;
+
+/**
+ * A snapshot of the metrics of the asynchronous notification dispatcher.
+ */
+public class NotificationDispatchStatistics
+{
+    private final int queueDepth;
+    private final int maxQueueDepth;
+    private final long dispatched;
+    private final long coalesced;
+    private final long rejected;
+    private final long averageLatencyMillis;
+    private final long maxLatencyMillis;
+
+    /**
+     * Creates a new statistics snapshot.
+     *
+     * @param queueDepth the number of notifications waiting to be dispatched
+     * @param maxQueueDepth the highest observed number of waiting
+     * notifications
+     * @param dispatched the number of dispatched notifications
+     * @param coalesced the number of notifications collapsed into a digest
+     * @param rejected the number of notifications that were dispatched on the
+     * firing thread because the queue was full
+     * @param averageLatencyMillis the average time between firing and
+     * dispatching a notification
+     * @param maxLatencyMillis the highest observed time between firing and
+     * dispatching a notification
+     */
+    NotificationDispatchStatistics(
+            int queueDepth,
+            int maxQueueDepth,
+            long dispatched,
+            long coalesced,
+            long rejected,
+            long averageLatencyMillis,
+            long maxLatencyMillis)
+    {
+        this.queueDepth = queueDepth;
+        this.maxQueueDepth = maxQueueDepth;
+        this.dispatched = dispatched;
+        this.coalesced = coalesced;
+        this.rejected = rejected;
+        this.averageLatencyMillis = averageLatencyMillis;
+        this.maxLatencyMillis = maxLatencyMillis;
+    }
+
+    /**
+     * Returns the number of notifications waiting to be dispatched.
+     *
+     * @return the number of notifications waiting to be dispatched
+     */
+    public int getQueueDepth()
+    {
+        return queueDepth;
+    }
+
+    /**
+     * Returns the highest observed number of waiting notifications.
+     *
+     * @return the highest observed number of waiting notifications
+     */
+    public int getMaxQueueDepth()
+    {
+        return maxQueueDepth;
+    }
+
+    /**
+     * Returns the number of dispatched notifications.
+     *
+     * @return the number of dispatched notifications
+     */
+    public long getDispatched()
+    {
+        return dispatched;
+    }
+
+    /**
+     * Returns the number of notifications that were collapsed into a digest.
+     *
+     * @return the number of coalesced notifications
+     */
+    public long getCoalesced()
+    {
+        return coalesced;
+    }
+
+    /**
+     * Returns the number of notifications that had to be dispatched on the
+     * firing thread because the dispatch queue was full.
+     *
+     * @return the number of rejected notifications
+     */
+    public long getRejected()
+    {
+        return rejected;
+    }
+
+    /**
+     * Returns the average time between firing and dispatching a notification.
+     *
+     * @return the average dispatch latency in milliseconds
+     */
+    public long getAverageLatencyMillis()
+    {
+        return averageLatencyMillis;
+    }
+
+    /**
+     * Returns the highest observed time between firing and dispatching a
+     * notification.
+     *
+     * @return the highest dispatch latency in milliseconds
+     */
+    public long getMaxLatencyMillis()
+    {
+        return maxLatencyMillis;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "queue=" + queueDepth
+            + ", maxQueue=" + maxQueueDepth
+            + ", dispatched=" + dispatched
+            + ", coalesced=" + coalesced
+            + ", rejected=" + rejected
+            + ", avgLatency=" + averageLatencyMillis + "ms"
+            + ", maxLatency=" + maxLatencyMillis + "ms";
+    }
+}
@@ -0,0 +1,598 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.notification;
+
+import static net.java.sip.communicator.service.notification.NotificationAction.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Dispatches fired notifications to the handlers on a dedicated thread, so
+ * that sound, popup, command and log handlers do not run on the (protocol)
+ * threads firing the notifications.
+ * <p>
+ * The dispatch queue is bounded. When it is full, the firing thread waits for
+ * a short while and then dispatches the notification itself, which slows down
+ * the producer instead of piling up notifications.
+ * </p>
+ * <p>
+ * Event types with a {@link NotificationCoalescingPolicy} are coalesced per
+ * source, i.e. per popup tag such as the contact or chat room: the first
+ * notification of a burst is dispatched as usual, following ones of the same
+ * source within the coalescing window skip the sound and/or popup actions,
+ * and a digest popup is shown when the window closes.
+ * </p>
+ */
+class NotificationDispatcher
+    implements Runnable
+{
+    /**
+     * The maximum number of notifications waiting to be dispatched.
+     */
+    private static final int QUEUE_CAPACITY = 1000;
+
+    /**
+     * The time in milliseconds the firing thread waits for free space in the
+     * queue before dispatching the notification itself.
+     */
+    private static final long OFFER_TIMEOUT = 100;
+
+    /**
+     * The actions that are skipped when showing a digest popup.
+     */
+    private static final Set<String> DIGEST_SKIPPED_ACTIONS
+        = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+                ACTION_SOUND,
+                ACTION_LOG_MESSAGE,
+                ACTION_COMMAND,
+                ACTION_VIBRATE)));
+
+    private final org.slf4j.Logger logger
+        = org.slf4j.LoggerFactory.getLogger(NotificationDispatcher.class);
+
+    /**
+     * The service that executes the notifications on the handlers.
+     */
+    private final NotificationServiceImpl service;
+
+    /**
+     * The notifications and stop requests waiting to be dispatched.
+     */
+    private final BlockingQueue<Task> queue
+        = new ArrayBlockingQueue<Task>(QUEUE_CAPACITY);
+
+    /**
+     * The notifications that have been fired but not yet dispatched.
+     */
+    private final Set<NotificationData> pending
+        = Collections.newSetFromMap(
+            new ConcurrentHashMap<NotificationData, Boolean>());
+
+    /**
+     * The coalescing policies per event type.
+     */
+    private final Map<String, NotificationCoalescingPolicy> policies
+        = new ConcurrentHashMap<String, NotificationCoalescingPolicy>();
+
+    /**
+     * The open coalescing windows per event type and source. Accessed by the
+     * dispatch thread and by firing threads that dispatch themselves, always
+     * while holding the lock of the map.
+     */
+    private final Map<WindowKey, Window> windows
+        = new HashMap<WindowKey, Window>();
+
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private volatile long maxLatency;
+    private volatile int maxQueueDepth;
+
+    /**
+     * The dispatch thread, started on first use.
+     */
+    private Thread thread;
+
+    /**
+     * Whether this dispatcher has been disposed.
+     */
+    private volatile boolean disposed;
+
+    /**
+     * Creates a new dispatcher.
+     *
+     * @param service the service that executes the notifications
+     */
+    NotificationDispatcher(NotificationServiceImpl service)
+    {
+        this.service = service;
+    }
+
+    /**
+     * Queues a notification for dispatching.
+     *
+     * @param data the notification to dispatch
+     */
+    void fire(NotificationData data)
+    {
+        pending.add(data);
+        if (!enqueue(new Task(data, false)))
+        {
+            // The queue is full or the dispatcher is disposed. Dispatch on
+            // the firing thread, which slows down the producer, applying the
+            // same coalescing as the dispatch thread.
+            rejected.incrementAndGet();
+            try
+            {
+                dispatch(data, System.nanoTime());
+            }
+            finally
+            {
+                pending.remove(data);
+            }
+        }
+    }
+
+    /**
+     * Queues a request to stop a running notification. The request is
+     * dispatched after the notification itself, so a notification cannot
+     * start after it was stopped.
+     *
+     * @param data the notification to stop
+     */
+    void stop(NotificationData data)
+    {
+        Task task = new Task(data, true);
+
+        // A stop request must not be lost: keep waiting for free space while
+        // the dispatch thread runs and stop on this thread once it is gone.
+        while (!enqueue(task))
+        {
+            if (disposed || Thread.currentThread().isInterrupted())
+            {
+                service.stopHandlers(data);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Tells whether a notification has been fired but not yet dispatched.
+     *
+     * @param data the notification
+     * @return <tt>true</tt> if the notification is waiting to be dispatched
+     */
+    boolean isPending(NotificationData data)
+    {
+        return pending.contains(data);
+    }
+
+    /**
+     * Sets or removes the coalescing policy of an event type.
+     *
+     * @param eventType the event type
+     * @param policy the policy or <tt>null</tt> to disable coalescing
+     */
+    void setPolicy(String eventType, NotificationCoalescingPolicy policy)
+    {
+        if (policy == null)
+            policies.remove(eventType);
+        else
+            policies.put(eventType, policy);
+    }
+
+    /**
+     * Returns a snapshot of the dispatch metrics.
+     *
+     * @return a snapshot of the dispatch metrics
+     */
+    NotificationDispatchStatistics getStatistics()
+    {
+        long count = dispatched.get();
+
+        return new NotificationDispatchStatistics(
+                queue.size(),
+                maxQueueDepth,
+                count,
+                coalesced.get(),
+                rejected.get(),
+                (count == 0) ? 0 : totalLatency.get() / count / 1000000L,
+                maxLatency / 1000000L);
+    }
+
+    /**
+     * Stops the dispatch thread. Notifications still in the queue are
+     * discarded, stop requests still in the queue are executed.
+     */
+    void dispose()
+    {
+        synchronized (this)
+        {
+            disposed = true;
+            if (thread != null)
+            {
+                thread.interrupt();
+                thread = null;
+            }
+        }
+
+        List<Task> tasks = new ArrayList<Task>(queue.size());
+
+        queue.drainTo(tasks);
+        pending.clear();
+        for (Task task : tasks)
+        {
+            if (task.stop)
+                service.stopHandlers(task.data);
+        }
+    }
+
+    /**
+     * Adds a task to the queue, starting the dispatch thread if necessary.
+     *
+     * @param task the task to add
+     * @return <tt>false</tt> if the queue stayed full or the dispatcher has
+     * been disposed
+     */
+    private boolean enqueue(Task task)
+    {
+        synchronized (this)
+        {
+            if (disposed)
+                return false;
+            if (thread == null)
+            {
+                thread = new Thread(this, "NotificationDispatcher");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+
+        boolean added;
+
+        try
+        {
+            added = queue.offer(task, OFFER_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            added = false;
+        }
+
+        if (added)
+        {
+            int depth = queue.size();
+
+            if (depth > maxQueueDepth)
+                maxQueueDepth = depth;
+        }
+        else if (!disposed)
+        {
+            logger.warn("Notification queue is full, dispatching "
+                + task.data.getEventType() + " on the firing thread.");
+        }
+        return added;
+    }
+
+    /**
+     * Runs the dispatch loop.
+     */
+    public void run()
+    {
+        while (!disposed)
+        {
+            Task task;
+
+            try
+            {
+                long timeout = getTimeUntilNextWindowCloses();
+
+                task = (timeout < 0)
+                    ? queue.take()
+                    : queue.poll(timeout, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                if (disposed)
+                    break;
+                continue;
+            }
+
+            try
+            {
+                if (task != null)
+                {
+                    if (task.stop)
+                        service.stopHandlers(task.data);
+                    else
+                        process(task);
+                }
+                closeExpiredWindows();
+            }
+            catch (Throwable t)
+            {
+                if (t instanceof ThreadDeath)
+                    throw (ThreadDeath) t;
+                logger.error("Error dispatching notification.", t);
+            }
+        }
+    }
+
+    /**
+     * Dispatches a fired notification from the queue and records its
+     * latency.
+     *
+     * @param task the task of the fired notification
+     */
+    private void process(Task task)
+    {
+        NotificationData data = task.data;
+        long now = System.nanoTime();
+        long latency = now - task.timestamp;
+
+        totalLatency.addAndGet(latency);
+        if (latency > maxLatency)
+            maxLatency = latency;
+        dispatched.incrementAndGet();
+
+        try
+        {
+            dispatch(data, now);
+        }
+        finally
+        {
+            pending.remove(data);
+        }
+    }
+
+    /**
+     * Dispatches a fired notification, applying the coalescing policy of its
+     * event type to the window of its source.
+     *
+     * @param data the fired notification
+     * @param now the current value of {@link System#nanoTime()}
+     */
+    private void dispatch(NotificationData data, long now)
+    {
+        NotificationCoalescingPolicy policy
+            = policies.get(data.getEventType());
+
+        if (policy == null)
+        {
+            service.dispatch(data, null);
+            return;
+        }
+
+        WindowKey key = new WindowKey(data);
+        Window closed = null;
+        boolean coalesce;
+
+        synchronized (windows)
+        {
+            Window window = windows.get(key);
+
+            coalesce = (window != null) && (now - window.deadline < 0);
+            if (coalesce)
+            {
+                window.suppressed++;
+                window.last = data;
+            }
+            else
+            {
+                closed = window;
+                windows.put(
+                    key,
+                    new Window(
+                        policy,
+                        now
+                            + TimeUnit.MILLISECONDS.toNanos(
+                                policy.getWindowMillis())));
+            }
+        }
+
+        if (coalesce)
+        {
+            coalesced.incrementAndGet();
+            service.dispatch(data, getSkippedActions(policy));
+        }
+        else
+        {
+            if (closed != null)
+                close(closed);
+            service.dispatch(data, null);
+        }
+    }
+
+    /**
+     * Closes all coalescing windows whose deadline has passed.
+     */
+    private void closeExpiredWindows()
+    {
+        List<Window> expired = null;
+
+        synchronized (windows)
+        {
+            if (windows.isEmpty())
+                return;
+
+            long now = System.nanoTime();
+            Iterator<Window> iter = windows.values().iterator();
+
+            while (iter.hasNext())
+            {
+                Window window = iter.next();
+
+                if (now - window.deadline >= 0)
+                {
+                    iter.remove();
+                    if (expired == null)
+                        expired = new ArrayList<Window>();
+                    expired.add(window);
+                }
+            }
+        }
+
+        if (expired != null)
+        {
+            for (Window window : expired)
+                close(window);
+        }
+    }
+
+    /**
+     * Shows the digest popup of a window if notifications were suppressed.
+     *
+     * @param window the window to close
+     */
+    private void close(Window window)
+    {
+        int suppressed;
+        NotificationData last;
+
+        synchronized (windows)
+        {
+            suppressed = window.suppressed;
+            last = window.last;
+        }
+        if ((suppressed > 0) && window.policy.isCoalescePopups())
+        {
+            service.dispatch(
+                last.withMessage(
+                    window.policy.formatDigest(suppressed, last.getMessage())),
+                DIGEST_SKIPPED_ACTIONS);
+        }
+    }
+
+    /**
+     * Returns the time in milliseconds until the next coalescing window
+     * closes.
+     *
+     * @return the time until the next window closes, or <tt>-1</tt> if no
+     * window is open
+     */
+    private long getTimeUntilNextWindowCloses()
+    {
+        long now = System.nanoTime();
+        long min = Long.MAX_VALUE;
+
+        synchronized (windows)
+        {
+            if (windows.isEmpty())
+                return -1;
+
+            for (Window window : windows.values())
+                min = Math.min(min, window.deadline - now);
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(min) + 1);
+    }
+
+    /**
+     * Returns the action types that are skipped for notifications that are
+     * coalesced according to the given policy.
+     *
+     * @param policy the coalescing policy
+     * @return the action types to skip
+     */
+    private static Set<String> getSkippedActions(
+        NotificationCoalescingPolicy policy)
+    {
+        Set<String> skipped = new HashSet<String>(2);
+
+        if (policy.isCoalesceSound())
+            skipped.add(ACTION_SOUND);
+        if (policy.isCoalescePopups())
+            skipped.add(ACTION_POPUP_MESSAGE);
+        return skipped;
+    }
+
+    /**
+     * A notification or stop request waiting to be dispatched.
+     */
+    private static class Task
+    {
+        private final NotificationData data;
+        private final boolean stop;
+        private final long timestamp = System.nanoTime();
+
+        private Task(NotificationData data, boolean stop)
+        {
+            this.data = data;
+            this.stop = stop;
+        }
+    }
+
+    /**
+     * Identifies the coalescing window of a notification: its event type and
+     * its source, i.e. the popup tag such as the contact or chat room it was
+     * fired for.
+     */
+    private static class WindowKey
+    {
+        private final String eventType;
+        private final Object source;
+
+        private WindowKey(NotificationData data)
+        {
+            eventType = data.getEventType();
+            source
+                = data.getExtra(
+                    NotificationData.POPUP_MESSAGE_HANDLER_TAG_EXTRA);
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof WindowKey))
+                return false;
+
+            WindowKey other = (WindowKey) obj;
+
+            return eventType.equals(other.eventType)
+                && Objects.equals(source, other.source);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * eventType.hashCode() + Objects.hashCode(source);
+        }
+    }
+
+    /**
+     * An open coalescing window of an event type and source.
+     */
+    private static class Window
+    {
+        private final NotificationCoalescingPolicy policy;
+        private final long deadline;
+        private int suppressed;
+        private NotificationData last;
+
+        private Window(NotificationCoalescingPolicy policy, long deadline)
+        {
+            this.policy = policy;
+            this.deadline = deadline;
+        }
+    }
+}
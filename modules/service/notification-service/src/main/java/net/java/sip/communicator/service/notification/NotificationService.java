@@ -352,4 +352,27 @@ public NotificationData fireNotification(
      * @param data Additional data for the event.
      */
     public boolean isPlayingNotification(NotificationData data);
+
+    /**
+     * Sets the policy used to coalesce bursts of notifications of the given
+     * <tt>eventType</tt>, e.g. to play only one sound and show a single digest
+     * popup for a burst of incoming messages. Bursts are tracked separately
+     * for each {@link NotificationData#POPUP_MESSAGE_HANDLER_TAG_EXTRA}.
+     *
+     * @param eventType the type of the event whose notifications are to be
+     * coalesced
+     * @param policy the coalescing policy or <tt>null</tt> to dispatch every
+     * notification of the event type individually
+     */
+    public void setCoalescingPolicy(
+            String eventType,
+            NotificationCoalescingPolicy policy);
+
+    /**
+     * Returns the latency and queue depth metrics of the asynchronous
+     * notification dispatching.
+     *
+     * @return a snapshot of the notification dispatch metrics
+     */
+    public NotificationDispatchStatistics getDispatchStatistics();
 }
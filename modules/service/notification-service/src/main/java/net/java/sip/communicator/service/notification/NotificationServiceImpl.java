@@ -70,6 +70,12 @@
     private final Map<String, NotificationHandler> handlers
         = new HashMap<String, NotificationHandler>();
 
+    /**
+     * Dispatches fired notifications to the handlers asynchronously.
+     */
+    private final NotificationDispatcher dispatcher
+        = new NotificationDispatcher(this);
+
     private final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(NotificationServiceImpl.class);
 
     /**
@@ -112,7 +118,7 @@ public void addActionHandler(NotificationHandler handler)
             if((handlers.size() == NUM_ACTIONS) && (notificationCache != null))
             {
                 for(NotificationData event : notificationCache)
-                    fireNotification(event);
+                    dispatcher.fire(event);
 
                 notificationCache.clear();
                 notificationCache = null;
@@ -222,8 +228,10 @@ public void addNotificationChangeListener(
      * Executes a notification data object on the handlers.
      *
      * @param data The notification data to act upon.
+     * @param skippedActionTypes the action types that are not to be executed,
+     * or <tt>null</tt> to execute all enabled actions.
      */
-    private void fireNotification(NotificationData data)
+    void dispatch(NotificationData data, Set<String> skippedActionTypes)
     {
         Notification notification = notifications.get(data.getEventType());
 
@@ -237,6 +245,10 @@ private void fireNotification(NotificationData data)
             if(!action.isEnabled())
                 continue;
 
+            if((skippedActionTypes != null)
+                    && skippedActionTypes.contains(actionType))
+                continue;
+
             NotificationHandler handler = handlers.get(actionType);
 
             if (handler == null)
@@ -380,7 +392,7 @@ public NotificationData fireNotification(
         if (notificationCache != null)
             notificationCache.add(data);
         else
-            fireNotification(data);
+            dispatcher.fire(data);
 
         return data;
     }
@@ -1377,6 +1389,17 @@ public void setActive(String eventType, boolean isActive)
      * @param data the data that has been returned when firing the event..
      */
     public void stopNotification(NotificationData data)
+    {
+        dispatcher.stop(data);
+    }
+
+    /**
+     * Stops a continuous notification on the handlers. Called by the
+     * dispatcher after all previously fired notifications were dispatched.
+     *
+     * @param data the data that has been returned when firing the event.
+     */
+    void stopHandlers(NotificationData data)
     {
         Iterable<NotificationHandler> soundHandlers
             = getActionHandlers(NotificationAction.ACTION_SOUND);
@@ -1410,6 +1433,11 @@ public void stopNotification(NotificationData data)
      */
     public boolean isPlayingNotification(NotificationData data)
     {
+        // A notification that is still waiting to be dispatched is about to
+        // start playing.
+        if (dispatcher.isPending(data))
+            return true;
+
         boolean isPlaying = false;
 
         Iterable<NotificationHandler> soundHandlers
@@ -1430,4 +1458,38 @@ public boolean isPlayingNotification(NotificationData data)
 
         return isPlaying;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setCoalescingPolicy(
+            String eventType,
+            NotificationCoalescingPolicy policy)
+    {
+        if(eventType == null)
+            throw new IllegalArgumentException("eventType cannot be null");
+
+        dispatcher.setPolicy(eventType, policy);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public NotificationDispatchStatistics getDispatchStatistics()
+    {
+        return dispatcher.getStatistics();
+    }
+
+    /**
+     * Stops dispatching notifications.
+     */
+    void dispose()
+    {
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Notification dispatch statistics: "
+                + dispatcher.getStatistics());
+        }
+        dispatcher.dispose();
+    }
 }
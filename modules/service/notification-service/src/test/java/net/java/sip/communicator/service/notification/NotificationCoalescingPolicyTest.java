@@ -0,0 +1,63 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.notification;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+public class NotificationCoalescingPolicyTest
+{
+    @Test
+    public void testDefaultPolicyCoalescesSoundAndPopups()
+    {
+        NotificationCoalescingPolicy policy
+            = new NotificationCoalescingPolicy(500);
+
+        assertEquals(500, policy.getWindowMillis());
+        assertTrue(policy.isCoalesceSound());
+        assertTrue(policy.isCoalescePopups());
+        assertEquals("hello (+3)", policy.formatDigest(3, "hello"));
+    }
+
+    @Test
+    public void testCustomDigestFormat()
+    {
+        NotificationCoalescingPolicy policy
+            = new NotificationCoalescingPolicy(
+                500, false, true, "{0} more, last: {1}");
+
+        assertFalse(policy.isCoalesceSound());
+        assertEquals("2 more, last: hi", policy.formatDigest(2, "hi"));
+    }
+
+    @Test
+    public void testMissingMessageAndFormat()
+    {
+        NotificationCoalescingPolicy policy
+            = new NotificationCoalescingPolicy(500, true, true, null);
+
+        assertEquals(" (+1)", policy.formatDigest(1, null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWindowMustBePositive()
+    {
+        new NotificationCoalescingPolicy(0);
+    }
+}
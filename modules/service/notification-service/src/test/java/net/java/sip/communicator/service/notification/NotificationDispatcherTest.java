@@ -0,0 +1,240 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.notification;
+
+import static net.java.sip.communicator.service.notification.NotificationAction.*;
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.easymock.*;
+import org.jitsi.service.configuration.*;
+import org.junit.*;
+
+public class NotificationDispatcherTest
+{
+    private static final String EVENT = "IncomingMessage";
+
+    private static final String OTHER_EVENT = "IncomingFile";
+
+    private RecordingService service;
+
+    private NotificationDispatcher dispatcher;
+
+    @Before
+    public void setUp()
+    {
+        ConfigurationService config
+            = EasyMock.createNiceMock(ConfigurationService.class);
+        EasyMock.expect(
+                config.getPropertyNamesByPrefix(
+                    EasyMock.anyString(), EasyMock.anyBoolean()))
+            .andReturn(Collections.<String>emptyList()).anyTimes();
+        EasyMock.replay(config);
+        service = new RecordingService(config);
+        dispatcher = new NotificationDispatcher(service);
+    }
+
+    @After
+    public void tearDown()
+    {
+        service.release.countDown();
+        dispatcher.dispose();
+    }
+
+    private static NotificationData data(
+        String eventType, Object source, String message)
+    {
+        Map<String, Object> extras = new HashMap<String, Object>();
+
+        extras.put(NotificationData.POPUP_MESSAGE_HANDLER_TAG_EXTRA, source);
+        return new NotificationData(eventType, "title", message, null, extras);
+    }
+
+    @Test
+    public void testWindowsAreKeptPerSource()
+        throws Exception
+    {
+        dispatcher.setPolicy(EVENT, new NotificationCoalescingPolicy(60000));
+
+        dispatcher.fire(data(EVENT, "alice", "a1"));
+        dispatcher.fire(data(EVENT, "alice", "a2"));
+        dispatcher.fire(data(EVENT, "bob", "b1"));
+        dispatcher.fire(data(OTHER_EVENT, "alice", "f1"));
+
+        assertNull(service.next("a1").skipped);
+        Set<String> skipped = service.next("a2").skipped;
+        assertTrue(skipped.contains(ACTION_SOUND));
+        assertTrue(skipped.contains(ACTION_POPUP_MESSAGE));
+        assertNull(service.next("b1").skipped);
+        assertNull(service.next("f1").skipped);
+        assertEquals(1, dispatcher.getStatistics().getCoalesced());
+    }
+
+    @Test
+    public void testDigestWhenWindowCloses()
+        throws Exception
+    {
+        dispatcher.setPolicy(EVENT, new NotificationCoalescingPolicy(100));
+
+        dispatcher.fire(data(EVENT, "alice", "a1"));
+        dispatcher.fire(data(EVENT, "alice", "a2"));
+        dispatcher.fire(data(EVENT, "alice", "a3"));
+
+        service.next("a1");
+        service.next("a2");
+        service.next("a3");
+        Dispatch digest = service.next("a3 (+2)");
+        assertTrue(digest.skipped.contains(ACTION_SOUND));
+        assertFalse(digest.skipped.contains(ACTION_POPUP_MESSAGE));
+
+        // The window is closed, the next notification is not coalesced.
+        dispatcher.fire(data(EVENT, "alice", "a4"));
+        assertNull(service.next("a4").skipped);
+    }
+
+    @Test
+    public void testFallbackOnlyCoalescesWithinOpenWindow()
+        throws Exception
+    {
+        dispatcher.setPolicy(EVENT, new NotificationCoalescingPolicy(60000));
+        dispatcher.dispose();
+
+        // Disposed, so the notifications are dispatched on this thread.
+        dispatcher.fire(data(EVENT, "alice", "a1"));
+        assertNull(service.next("a1").skipped);
+        dispatcher.fire(data(EVENT, "bob", "b1"));
+        assertNull(service.next("b1").skipped);
+        dispatcher.fire(data(EVENT, "alice", "a2"));
+        assertTrue(service.next("a2").skipped.contains(ACTION_SOUND));
+        assertEquals(3, dispatcher.getStatistics().getRejected());
+    }
+
+    @Test
+    public void testStopIsDispatchedAfterFire()
+        throws Exception
+    {
+        NotificationData data = data(EVENT, "alice", "a1");
+
+        dispatcher.fire(data);
+        dispatcher.stop(data);
+
+        assertEquals("a1", service.events.poll(5, TimeUnit.SECONDS).message);
+        assertSame(data, service.stopped.poll(5, TimeUnit.SECONDS));
+        assertFalse(dispatcher.isPending(data));
+    }
+
+    @Test
+    public void testStopAfterDispose()
+        throws Exception
+    {
+        NotificationData data = data(EVENT, "alice", "a1");
+
+        dispatcher.dispose();
+        dispatcher.stop(data);
+
+        assertSame(data, service.stopped.poll());
+    }
+
+    @Test
+    public void testDisposeExecutesQueuedStops()
+        throws Exception
+    {
+        NotificationData blocking = data(EVENT, "alice", "a1");
+        NotificationData looping = data(EVENT, "bob", "b1");
+
+        service.block = true;
+        dispatcher.fire(blocking);
+        assertTrue(service.entered.await(5, TimeUnit.SECONDS));
+        dispatcher.fire(looping);
+        dispatcher.stop(looping);
+        dispatcher.dispose();
+
+        assertSame(looping, service.stopped.poll());
+    }
+
+    private static class Dispatch
+    {
+        private final String message;
+
+        private final Set<String> skipped;
+
+        private Dispatch(String message, Set<String> skipped)
+        {
+            this.message = message;
+            this.skipped = skipped;
+        }
+    }
+
+    private static class RecordingService
+        extends NotificationServiceImpl
+    {
+        private final BlockingQueue<Dispatch> events
+            = new LinkedBlockingQueue<Dispatch>();
+
+        private final BlockingQueue<NotificationData> stopped
+            = new LinkedBlockingQueue<NotificationData>();
+
+        private final CountDownLatch entered = new CountDownLatch(1);
+
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        private volatile boolean block;
+
+        private RecordingService(ConfigurationService config)
+        {
+            super(config);
+        }
+
+        @Override
+        void dispatch(NotificationData data, Set<String> skippedActionTypes)
+        {
+            events.add(new Dispatch(data.getMessage(), skippedActionTypes));
+            if (block)
+            {
+                block = false;
+                entered.countDown();
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        void stopHandlers(NotificationData data)
+        {
+            stopped.add(data);
+        }
+
+        private Dispatch next(String message)
+            throws InterruptedException
+        {
+            Dispatch dispatch = events.poll(5, TimeUnit.SECONDS);
+
+            assertNotNull("no dispatch of " + message, dispatch);
+            assertEquals(message, dispatch.message);
+            return dispatch;
+        }
+    }
+}
@@ -22,6 +22,7 @@
 
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.event.*;
+import net.java.sip.communicator.util.*;
 
 import org.jitsi.service.neomedia.*;
 import org.jitsi.util.xml.*;
@@ -119,6 +120,33 @@
     private static final String PARTIAL_NOTIFICATIONS_PROP_NAME
             = "RFC4575_PARTIAL_NOTIFICATIONS_ENABLED";
 
+    /**
+     * The time in milliseconds for which changes in a conference are collected
+     * before the conference members are notified about them. Bursts of
+     * changes, e.g. many participants joining at once, thus result in a single
+     * notification per conference member.
+     */
+    private static final long NOTIFY_DEBOUNCE_INTERVAL = 100;
+
+    /**
+     * The <tt>Call</tt>s whose <tt>CallPeer</tt>s are to be notified about
+     * changes in the telephony conference-related information when the
+     * current debounce interval elapses.
+     */
+    private final Set<Call> pendingNotifications = new LinkedHashSet<>();
+
+    /**
+     * The descriptions of remote conference members computed by the thread
+     * running {@link #notifyPendingCallPeers()} during the current
+     * notification round. They do not depend on the notified
+     * <tt>CallPeer</tt>, so they are computed only once per member and round
+     * instead of once per member and notified <tt>CallPeer</tt>. Each round
+     * starts with an empty cache and drops it when done; snapshots computed
+     * outside of a round (e.g. for a SUBSCRIBE refresh) are not cached.
+     */
+    private final ThreadLocal<Map<CallPeer, ConferenceInfoSnapshot.User>>
+        roundUsers = new ThreadLocal<>();
+
     /**
      * The <tt>OperationSetBasicTelephony</tt> implementation which this
      * instance uses to carry out tasks such as establishing <tt>Call</tt>s.
@@ -607,7 +635,7 @@ protected void notifyAll(Call call)
         CallConference conference = call.getConference();
 
         if (conference == null)
-            notifyCallPeers(call);
+            scheduleNotifyCallPeers(call);
         else
         {
             /*
@@ -623,12 +651,83 @@ protected void notifyAll(Call call)
                 if (opSet instanceof AbstractOperationSetTelephonyConferencing)
                 {
                     ((AbstractOperationSetTelephonyConferencing) opSet)
-                        .notifyCallPeers(conferenceCall);
+                        .scheduleNotifyCallPeers(conferenceCall);
                 }
             }
         }
     }
 
+    /**
+     * Schedules the notification of the <tt>CallPeer</tt>s of a specific
+     * <tt>Call</tt> about changes in the telephony conference-related
+     * information. All changes which occur within
+     * {@link #NOTIFY_DEBOUNCE_INTERVAL} are collected into a single
+     * {@link #notifyCallPeers(Call)}.
+     *
+     * @param call the <tt>Call</tt> whose <tt>CallPeer</tt>s are to be
+     * notified
+     */
+    private void scheduleNotifyCallPeers(Call call)
+    {
+        boolean schedule;
+
+        synchronized (pendingNotifications)
+        {
+            schedule = pendingNotifications.isEmpty();
+            pendingNotifications.add(call);
+        }
+        if (schedule)
+        {
+            TimingWheel.getInstance().schedule(
+                    new Runnable()
+                    {
+                        public void run()
+                        {
+                            notifyPendingCallPeers();
+                        }
+                    },
+                    NOTIFY_DEBOUNCE_INTERVAL);
+        }
+    }
+
+    /**
+     * Notifies the <tt>CallPeer</tt>s of all <tt>Call</tt>s scheduled by
+     * {@link #scheduleNotifyCallPeers(Call)}.
+     */
+    private void notifyPendingCallPeers()
+    {
+        List<Call> calls;
+
+        synchronized (pendingNotifications)
+        {
+            calls = new ArrayList<>(pendingNotifications);
+            pendingNotifications.clear();
+        }
+
+        roundUsers.set(new HashMap<CallPeer, ConferenceInfoSnapshot.User>());
+        try
+        {
+            for (Call call : calls)
+            {
+                try
+                {
+                    notifyCallPeers(call);
+                }
+                catch (Throwable t)
+                {
+                    if (t instanceof ThreadDeath)
+                        throw (ThreadDeath) t;
+                    logger.error(
+                            "Failed to notify the CallPeers of " + call, t);
+                }
+            }
+        }
+        finally
+        {
+            roundUsers.remove();
+        }
+    }
+
     /**
      * Notifies all <tt>CallPeer</tt>s associated with a specific <tt>Call</tt>
      * about changes in the telephony conference-related information. In
@@ -1021,77 +1120,134 @@ public static String stripParametersFromAddress(String address)
     protected ConferenceInfoDocument getCurrentConferenceInfo(
             MediaAwareCallPeer<?,?,?> callPeer)
     {
-        ConferenceInfoDocument confInfo;
-        try
-        {
-           confInfo = new ConferenceInfoDocument();
-        }
-        catch (XMLException e)
-        {
-            return null;
-        }
-        confInfo.setState(ConferenceInfoDocument.State.FULL);
-        confInfo.setEntity(getLocalEntity(callPeer));
+        ConferenceInfoSnapshot snapshot
+            = getCurrentConferenceInfoSnapshot(callPeer);
 
+        return (snapshot == null) ? null : snapshot.toDocument();
+    }
+
+    /**
+     * Creates a <tt>ConferenceInfoSnapshot</tt> which describes the current
+     * state of the conference in which <tt>callPeer</tt> participates, as
+     * seen by <tt>callPeer</tt>.
+     *
+     * @param callPeer the <tt>CallPeer</tt> to describe the conference for
+     * @return a <tt>ConferenceInfoSnapshot</tt> which describes the current
+     * state of the conference in which this <tt>CallPeer</tt> participates,
+     * or <tt>null</tt> if <tt>callPeer</tt> is not in a <tt>Call</tt>
+     */
+    protected ConferenceInfoSnapshot getCurrentConferenceInfoSnapshot(
+            MediaAwareCallPeer<?,?,?> callPeer)
+    {
         Call call = callPeer.getCall();
         if (call == null)
             return null;
 
+        Map<CallPeer, ConferenceInfoSnapshot.User> cachedUsers
+            = roundUsers.get();
         List<CallPeer> conferenceCallPeers = CallConference.getCallPeers(call);
-        confInfo.setUserCount(
-                1 /* the local peer/user */ + conferenceCallPeers.size());
+        List<ConferenceInfoSnapshot.User> users
+            = new ArrayList<>(1 + conferenceCallPeers.size());
 
         /* The local user */
-        addPeerToConferenceInfo(confInfo, callPeer, false);
+        users.add(createConferenceInfoUser(callPeer, false));
 
         /* Remote users */
         for (CallPeer conferenceCallPeer : conferenceCallPeers)
         {
             if (conferenceCallPeer instanceof MediaAwareCallPeer<?,?,?>)
             {
-                addPeerToConferenceInfo(
-                        confInfo,
-                        (MediaAwareCallPeer<?,?,?>)conferenceCallPeer,
-                        true);
+                ConferenceInfoSnapshot.User user
+                    = (cachedUsers == null)
+                        ? null
+                        : cachedUsers.get(conferenceCallPeer);
+
+                if (user == null)
+                {
+                    user
+                        = createConferenceInfoUser(
+                                (MediaAwareCallPeer<?,?,?>) conferenceCallPeer,
+                                true);
+                    if (cachedUsers != null)
+                        cachedUsers.put(conferenceCallPeer, user);
+                }
+                users.add(user);
             }
         }
 
-        return confInfo;
+        return
+            new ConferenceInfoSnapshot(
+                    getLocalEntity(callPeer),
+                    getConferenceInfoSid(callPeer),
+                    1 /* the local peer/user */ + conferenceCallPeers.size(),
+                    users);
     }
 
     /**
-     * Adds a <tt>user</tt> element to <tt>confInfo</tt> which describes
-     * <tt>callPeer</tt>, or the local peer if <tt>remote</tt> is <tt>false</tt>.
+     * Creates the conference-info document which is to be sent to a specific
+     * <tt>CallPeer</tt> in order to bring it up to date with a specific
+     * <tt>ConferenceInfoSnapshot</tt>. Only the <tt>user</tt> elements which
+     * changed since the last document sent to <tt>callPeer</tt> are included
+     * if partial notifications are enabled. The version of the returned
+     * document is set to the version following the last sent one.
+     *
+     * @param callPeer the <tt>CallPeer</tt> which is to be notified
+     * @param current the current state of the conference as seen by
+     * <tt>callPeer</tt>
+     * @return the document to send or <tt>null</tt> if <tt>callPeer</tt> is
+     * already up to date
+     */
+    protected ConferenceInfoDocument getConferenceInfoUpdate(
+            MediaAwareCallPeer<?,?,?> callPeer,
+            ConferenceInfoSnapshot current)
+    {
+        ConferenceInfoSnapshot lastSent = callPeer.getLastConferenceInfoSent();
+        ConferenceInfoDocument update
+            = current.diff(lastSent, isPartialNotificationEnabled());
+
+        if (update != null)
+        {
+            update.setVersion(
+                    (lastSent == null) ? 1 : lastSent.getVersion() + 1);
+        }
+        return update;
+    }
+
+    /**
+     * Returns the Jingle SID to be piggybacked on the <tt>conference-info</tt>
+     * element sent to a specific <tt>CallPeer</tt>.
+     *
+     * @param callPeer the <tt>CallPeer</tt> to which conference-info is to be
+     * sent
+     * @return the SID or <tt>null</tt> if no SID is to be sent
+     */
+    protected String getConferenceInfoSid(CallPeer callPeer)
+    {
+        return null;
+    }
+
+    /**
+     * Creates a <tt>ConferenceInfoSnapshot.User</tt> which describes
+     * <tt>callPeer</tt>, or the local peer if <tt>remote</tt> is
+     * <tt>false</tt>.
      *
-     * @param confInfo the <tt>ConferenceInformationDocument</tt> to which to
-     * add a <tt>user</tt> element
      * @param callPeer the <tt>CallPeer</tt> which should be described
      * @param remote <tt>true</tt> to describe <tt>callPeer</tt>, or
      * <tt>false</tt> to describe the local peer.
+     * @return the description of the user
      */
-    private void addPeerToConferenceInfo(
-            ConferenceInfoDocument confInfo,
+    private ConferenceInfoSnapshot.User createConferenceInfoUser(
             MediaAwareCallPeer<?,?,?> callPeer,
             boolean remote)
     {
         String entity
             = remote ? callPeer.getEntity() : getLocalEntity(callPeer);
-        ConferenceInfoDocument.User user = confInfo.addNewUser(entity);
-
         String displayName
             = remote ? callPeer.getDisplayName() : getLocalDisplayName();
-        user.setDisplayText(displayName);
-
-        ConferenceInfoDocument.Endpoint endpoint = user.addNewEndpoint(entity);
-
-        endpoint.setStatus(
-            remote
-                ? getEndpointStatus(callPeer)
-                : ConferenceInfoDocument.EndpointStatusType.connected);
+        List<ConferenceInfoSnapshot.Media> medias = new ArrayList<>(2);
 
         CallPeerMediaHandler<?> mediaHandler
             = callPeer.getMediaHandler();
-
         for (MediaType mediaType : MediaType.values())
         {
             MediaStream stream = mediaHandler.getStream(mediaType);
@@ -1152,16 +1308,25 @@ else if (mediaType == MediaType.VIDEO &&
 
                 if ((srcId != -1) || (direction != MediaDirection.INACTIVE))
                 {
-                    ConferenceInfoDocument.Media media
-                        = endpoint.addNewMedia(mediaType.toString());
-
-                    media.setType(mediaType.toString());
-                    if (srcId != -1)
-                        media.setSrcId(Long.toString(srcId));
-                    media.setStatus(direction.toString());
+                    medias.add(
+                            new ConferenceInfoSnapshot.Media(
+                                    mediaType.toString(),
+                                    (srcId == -1)
+                                        ? null
+                                        : Long.toString(srcId),
+                                    direction.toString()));
                 }
             }
         }
+
+        return
+            new ConferenceInfoSnapshot.User(
+                    entity,
+                    displayName,
+                    remote
+                        ? getEndpointStatus(callPeer)
+                        : ConferenceInfoDocument.EndpointStatusType.connected,
+                    medias);
     }
 
     /**
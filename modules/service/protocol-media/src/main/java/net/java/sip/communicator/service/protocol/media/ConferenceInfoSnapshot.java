@@ -0,0 +1,424 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.util.*;
+
+import org.jitsi.util.xml.*;
+
+/**
+ * A lightweight, immutable in-memory description of the state of a conference
+ * as seen by one conference member. It carries the same information as a
+ * "full" RFC4575 <tt>ConferenceInfoDocument</tt>, but can be created and
+ * compared without building a DOM. A <tt>ConferenceInfoDocument</tt> is only
+ * created for the <tt>user</tt> elements which actually have to be sent.
+ */
+public class ConferenceInfoSnapshot
+{
+    /**
+     * The value of the <tt>entity</tt> attribute of the
+     * <tt>conference-info</tt> element.
+     */
+    private final String entity;
+
+    /**
+     * The Jingle SID piggybacked on the <tt>conference-info</tt> element, or
+     * <tt>null</tt>.
+     */
+    private final String sid;
+
+    /**
+     * The value of the <tt>user-count</tt> element.
+     */
+    private final int userCount;
+
+    /**
+     * The version of the document this snapshot was sent as, or <tt>-1</tt>
+     * if it has not been sent.
+     */
+    private final int version;
+
+    /**
+     * The users of the conference, in document order, keyed by their entity.
+     */
+    private final Map<String, User> users;
+
+    /**
+     * Initializes a new <tt>ConferenceInfoSnapshot</tt>.
+     *
+     * @param entity the conference entity
+     * @param sid the Jingle SID or <tt>null</tt>
+     * @param userCount the number of users in the conference
+     * @param users the users of the conference in document order
+     */
+    public ConferenceInfoSnapshot(
+            String entity,
+            String sid,
+            int userCount,
+            List<User> users)
+    {
+        this(entity, sid, userCount, -1, toMap(users));
+    }
+
+    /**
+     * Initializes a new <tt>ConferenceInfoSnapshot</tt>.
+     *
+     * @param entity the conference entity
+     * @param sid the Jingle SID or <tt>null</tt>
+     * @param userCount the number of users in the conference
+     * @param version the version of the document this snapshot was sent as
+     * @param users the users of the conference keyed by their entity
+     */
+    private ConferenceInfoSnapshot(
+            String entity,
+            String sid,
+            int userCount,
+            int version,
+            Map<String, User> users)
+    {
+        this.entity = entity;
+        this.sid = sid;
+        this.userCount = userCount;
+        this.version = version;
+        this.users = users;
+    }
+
+    /**
+     * Returns a copy of this snapshot with the given version.
+     *
+     * @param version the version of the document this snapshot was sent as
+     * @return a copy of this snapshot with the given version
+     */
+    public ConferenceInfoSnapshot withVersion(int version)
+    {
+        return new ConferenceInfoSnapshot(
+                entity, sid, userCount, version, users);
+    }
+
+    /**
+     * Returns the version of the document this snapshot was sent as.
+     *
+     * @return the version of the document this snapshot was sent as, or
+     * <tt>-1</tt> if it has not been sent
+     */
+    public int getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Returns the conference entity.
+     *
+     * @return the conference entity
+     */
+    public String getEntity()
+    {
+        return entity;
+    }
+
+    /**
+     * Returns the number of users in the conference.
+     *
+     * @return the number of users in the conference
+     */
+    public int getUserCount()
+    {
+        return userCount;
+    }
+
+    /**
+     * Returns the users of the conference in document order.
+     *
+     * @return the users of the conference
+     */
+    public Collection<User> getUsers()
+    {
+        return Collections.unmodifiableCollection(users.values());
+    }
+
+    /**
+     * Creates a "full" <tt>ConferenceInfoDocument</tt> describing this
+     * snapshot.
+     *
+     * @return a "full" <tt>ConferenceInfoDocument</tt>, or <tt>null</tt> if
+     * the document could not be created
+     */
+    public ConferenceInfoDocument toDocument()
+    {
+        ConferenceInfoDocument confInfo = createDocument();
+
+        if (confInfo != null)
+        {
+            for (User user : users.values())
+                user.addTo(confInfo);
+        }
+        return confInfo;
+    }
+
+    /**
+     * Creates the <tt>ConferenceInfoDocument</tt> which is to be sent to
+     * bring a recipient who has last received <tt>from</tt> up to date with
+     * this snapshot.
+     *
+     * @param from the snapshot last sent to the recipient or <tt>null</tt>
+     * @param partial <tt>true</tt> to generate an RFC4575 partial
+     * notification containing only the added, changed and deleted users;
+     * <tt>false</tt> to always generate a "full" document
+     * @return the document to send, or <tt>null</tt> if the recipient is
+     * already up to date
+     */
+    public ConferenceInfoDocument diff(
+            ConferenceInfoSnapshot from,
+            boolean partial)
+    {
+        if (from == null)
+            return toDocument();
+
+        boolean hasDifference
+            = !Objects.equals(from.entity, entity)
+                || (from.userCount != userCount);
+        boolean needsPartial = false;
+        List<String> deleted = new ArrayList<>();
+        List<User> changed = new ArrayList<>();
+
+        for (String fromEntity : from.users.keySet())
+        {
+            if (!users.containsKey(fromEntity))
+                deleted.add(fromEntity);
+        }
+        for (User user : users.values())
+        {
+            if (user.equals(from.users.get(user.getEntity())))
+                needsPartial = true;
+            else
+                changed.add(user);
+        }
+        if (!deleted.isEmpty())
+            needsPartial = true;
+        if (!hasDifference && deleted.isEmpty() && changed.isEmpty())
+            return null;
+        if (!partial || !needsPartial)
+            return toDocument();
+
+        ConferenceInfoDocument diff = createDocument();
+
+        if (diff == null)
+            return toDocument();
+
+        diff.setState(ConferenceInfoDocument.State.PARTIAL);
+        diff.setUsersState(ConferenceInfoDocument.State.PARTIAL);
+        for (String deletedEntity : deleted)
+        {
+            diff.addNewUser(deletedEntity)
+                .setState(ConferenceInfoDocument.State.DELETED);
+        }
+        for (User user : changed)
+            user.addTo(diff);
+        return diff;
+    }
+
+    /**
+     * Creates a "full" <tt>ConferenceInfoDocument</tt> with the attributes of
+     * this snapshot but without users.
+     *
+     * @return the new document or <tt>null</tt> if it could not be created
+     */
+    private ConferenceInfoDocument createDocument()
+    {
+        ConferenceInfoDocument confInfo;
+
+        try
+        {
+            confInfo = new ConferenceInfoDocument();
+        }
+        catch (XMLException e)
+        {
+            return null;
+        }
+        confInfo.setState(ConferenceInfoDocument.State.FULL);
+        confInfo.setEntity(entity);
+        if ((sid != null) && !sid.equals(""))
+            confInfo.setSid(sid);
+        confInfo.setUserCount(userCount);
+        if (version != -1)
+            confInfo.setVersion(version);
+        return confInfo;
+    }
+
+    /**
+     * Indexes a list of users by their entity, keeping their order.
+     *
+     * @param users the users to index
+     * @return the users keyed by their entity
+     */
+    private static Map<String, User> toMap(List<User> users)
+    {
+        Map<String, User> map = new LinkedHashMap<>();
+
+        for (User user : users)
+            map.put(user.getEntity(), user);
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * Normalizes empty strings to <tt>null</tt>, the way
+     * <tt>ConferenceInfoDocument</tt> treats them.
+     *
+     * @param s the string to normalize
+     * @return <tt>s</tt> or <tt>null</tt> if <tt>s</tt> is empty
+     */
+    private static String normalize(String s)
+    {
+        return ((s == null) || s.equals("")) ? null : s;
+    }
+
+    /**
+     * Describes a <tt>user</tt> element with a single <tt>endpoint</tt>.
+     */
+    public static class User
+    {
+        private final String entity;
+        private final String displayText;
+        private final ConferenceInfoDocument.EndpointStatusType status;
+        private final List<Media> medias;
+
+        /**
+         * Initializes a new <tt>User</tt>.
+         *
+         * @param entity the entity of the user and of its endpoint
+         * @param displayText the display text of the user
+         * @param status the status of the endpoint
+         * @param medias the media of the endpoint
+         */
+        public User(
+                String entity,
+                String displayText,
+                ConferenceInfoDocument.EndpointStatusType status,
+                List<Media> medias)
+        {
+            this.entity = entity;
+            this.displayText = normalize(displayText);
+            this.status = status;
+            this.medias = Collections.unmodifiableList(new ArrayList<>(medias));
+        }
+
+        /**
+         * Returns the entity of the user.
+         *
+         * @return the entity of the user
+         */
+        public String getEntity()
+        {
+            return entity;
+        }
+
+        /**
+         * Adds a <tt>user</tt> element describing this instance to a
+         * document.
+         *
+         * @param confInfo the document to add the <tt>user</tt> element to
+         */
+        void addTo(ConferenceInfoDocument confInfo)
+        {
+            ConferenceInfoDocument.User user = confInfo.addNewUser(entity);
+
+            user.setDisplayText(displayText);
+
+            ConferenceInfoDocument.Endpoint endpoint
+                = user.addNewEndpoint(entity);
+
+            endpoint.setStatus(status);
+            for (Media media : medias)
+            {
+                ConferenceInfoDocument.Media m
+                    = endpoint.addNewMedia(media.type);
+
+                m.setType(media.type);
+                m.setSrcId(media.srcId);
+                m.setStatus(media.status);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (!(o instanceof User))
+                return false;
+
+            User other = (User) o;
+
+            return Objects.equals(entity, other.entity)
+                && Objects.equals(displayText, other.displayText)
+                && (status == other.status)
+                && medias.equals(other.medias);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(entity, displayText, status, medias);
+        }
+    }
+
+    /**
+     * Describes a <tt>media</tt> element of an <tt>endpoint</tt>.
+     */
+    public static class Media
+    {
+        private final String type;
+        private final String srcId;
+        private final String status;
+
+        /**
+         * Initializes a new <tt>Media</tt>.
+         *
+         * @param type the media type, also used as the <tt>id</tt>
+         * @param srcId the source ID or <tt>null</tt>
+         * @param status the media status (direction)
+         */
+        public Media(String type, String srcId, String status)
+        {
+            this.type = type;
+            this.srcId = normalize(srcId);
+            this.status = normalize(status);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (!(o instanceof Media))
+                return false;
+
+            Media other = (Media) o;
+
+            return Objects.equals(type, other.type)
+                && Objects.equals(srcId, other.srcId)
+                && Objects.equals(status, other.status);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(type, srcId, status);
+        }
+    }
+}
@@ -133,11 +133,12 @@
         = new LinkedList<PropertyChangeListener>();
 
     /**
-     * Represents the last Conference Information (RFC4575) document sent to
-     * this <tt>CallPeer</tt>. This is always a document with state "full", even
-     * if the last document actually sent was a "partial"
+     * Represents the state of the conference described by the last Conference
+     * Information (RFC4575) document sent to this <tt>CallPeer</tt>. This is
+     * always the full state, even if the last document actually sent was a
+     * "partial"
      */
-    private ConferenceInfoDocument lastConferenceInfoSent = null;
+    private ConferenceInfoSnapshot lastConferenceInfoSent = null;
 
     /**
      * The time (as obtained by <tt>System.currentTimeMillis()</tt>) at which
@@ -1011,22 +1012,23 @@ public void setState(CallPeerState newState, String reason, int reasonCode)
     }
 
     /**
-     * Returns the last <tt>ConferenceInfoDocument</tt> sent by us to this
-     * <tt>CallPeer</tt>. It is a document with state <tt>full</tt>
-     * @return the last <tt>ConferenceInfoDocument</tt> sent by us to this
-     * <tt>CallPeer</tt>. It is a document with state <tt>full</tt>
+     * Returns the state of the conference described by the last
+     * conference-info document sent by us to this <tt>CallPeer</tt>.
+     * @return the state of the conference described by the last
+     * conference-info document sent by us to this <tt>CallPeer</tt>, or
+     * <tt>null</tt> if no document has been sent yet.
      */
-    public ConferenceInfoDocument getLastConferenceInfoSent()
+    public ConferenceInfoSnapshot getLastConferenceInfoSent()
     {
         return lastConferenceInfoSent;
     }
 
     /**
-     * Sets the last <tt>ConferenceInfoDocument</tt> sent by us to this
-     * <tt>CallPeer</tt>.
-     * @param confInfo the document to set.
+     * Sets the state of the conference described by the last conference-info
+     * document sent by us to this <tt>CallPeer</tt>.
+     * @param confInfo the state to set.
      */
-    public void setLastConferenceInfoSent(ConferenceInfoDocument confInfo)
+    public void setLastConferenceInfoSent(ConferenceInfoSnapshot confInfo)
     {
         lastConferenceInfoSent = confInfo;
     }
@@ -0,0 +1,286 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import net.java.sip.communicator.service.protocol.*;
+
+import org.easymock.*;
+import org.jitsi.service.neomedia.*;
+import org.jitsi.service.resources.*;
+import org.jitsi.utils.*;
+import org.junit.*;
+
+public class AbstractOperationSetTelephonyConferencingTest
+{
+    private NotifyRecorder conferencing;
+
+    /**
+     * Provides the resources <tt>CallPeerState</tt> needs to initialize.
+     */
+    @BeforeClass
+    public static void setUpResources()
+        throws Exception
+    {
+        ResourceManagementService resources
+            = EasyMock.createNiceMock(ResourceManagementService.class);
+        EasyMock.replay(resources);
+
+        Field field
+            = ProtocolProviderActivator.class.getDeclaredField(
+                    "resourceService");
+        field.setAccessible(true);
+        field.set(null, resources);
+    }
+
+    @Before
+    public void setUp()
+    {
+        ProtocolProviderService provider
+            = EasyMock.createNiceMock(ProtocolProviderService.class);
+        EasyMock.replay(provider);
+        conferencing = new NotifyRecorder(provider);
+    }
+
+    private static Call call()
+    {
+        Call call = EasyMock.createNiceMock(Call.class);
+        EasyMock.replay(call);
+        return call;
+    }
+
+    @Test
+    public void testBurstResultsInSingleNotification()
+        throws Exception
+    {
+        Call call = call();
+
+        for (int i = 0; i < 20; i++)
+            conferencing.notifyAll(call);
+
+        assertSame(call, conferencing.notified.poll(5, TimeUnit.SECONDS));
+        assertNull(conferencing.notified.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testEachCallIsNotifiedOncePerBurst()
+        throws Exception
+    {
+        Call call1 = call();
+        Call call2 = call();
+
+        conferencing.notifyAll(call1);
+        conferencing.notifyAll(call2);
+        conferencing.notifyAll(call1);
+
+        Set<Call> notified = new HashSet<Call>();
+        notified.add(conferencing.notified.poll(5, TimeUnit.SECONDS));
+        notified.add(conferencing.notified.poll(5, TimeUnit.SECONDS));
+        assertEquals(new HashSet<Call>(Arrays.asList(call1, call2)), notified);
+        assertNull(conferencing.notified.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testNotificationIsDelayed()
+        throws Exception
+    {
+        Call call = call();
+        long start = System.nanoTime();
+
+        conferencing.notifyAll(call);
+        assertSame(call, conferencing.notified.poll(5, TimeUnit.SECONDS));
+        assertTrue(
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 90);
+    }
+
+    @Test
+    public void testChangeAfterFlushIsNotifiedAgain()
+        throws Exception
+    {
+        Call call = call();
+
+        conferencing.notifyAll(call);
+        assertSame(call, conferencing.notified.poll(5, TimeUnit.SECONDS));
+        conferencing.notifyAll(call);
+        assertSame(call, conferencing.notified.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSnapshotOutsideRoundIsNotCached()
+    {
+        AtomicReference<String> entity = new AtomicReference<>("sip:a@x");
+        MediaAwareCallPeer<?,?,?> localPeer = conferenceCallPeers(entity);
+
+        assertEquals(
+            "sip:a@x",
+            remoteEntity(conferencing.getCurrentConferenceInfoSnapshot(
+                localPeer)));
+        entity.set("sip:b@x");
+        assertEquals(
+            "sip:b@x",
+            remoteEntity(conferencing.getCurrentConferenceInfoSnapshot(
+                localPeer)));
+    }
+
+    @Test
+    public void testRoundCacheEndsWithRound()
+        throws Exception
+    {
+        AtomicReference<String> entity = new AtomicReference<>("sip:a@x");
+        MediaAwareCallPeer<?,?,?> localPeer = conferenceCallPeers(entity);
+
+        conferencing.snapshotPeer = localPeer;
+        conferencing.duringRound = () -> entity.set("sip:b@x");
+        conferencing.notifyAll(localPeer.getCall());
+        assertNotNull(conferencing.notified.poll(5, TimeUnit.SECONDS));
+
+        // the change made during the round is not seen by the round...
+        assertEquals(
+            Arrays.asList("sip:a@x", "sip:a@x"), conferencing.remoteEntities);
+
+        // ...but by the next one
+        conferencing.remoteEntities.clear();
+        conferencing.duringRound = null;
+        conferencing.notifyAll(localPeer.getCall());
+        assertNotNull(conferencing.notified.poll(5, TimeUnit.SECONDS));
+        assertEquals(
+            Arrays.asList("sip:b@x", "sip:b@x"), conferencing.remoteEntities);
+    }
+
+    /**
+     * Creates a <tt>Call</tt> between a local peer and a remote one with a
+     * variable entity.
+     *
+     * @param entity the entity of the remote peer
+     * @return the local peer
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private static MediaAwareCallPeer<?,?,?> conferenceCallPeers(
+            AtomicReference<String> entity)
+    {
+        CallPeerMediaHandler mediaHandler
+            = EasyMock.createNiceMock(CallPeerMediaHandler.class);
+        MediaAwareCall call = EasyMock.createNiceMock(MediaAwareCall.class);
+        MediaAwareCallPeer localPeer
+            = EasyMock.createNiceMock(MediaAwareCallPeer.class);
+        MediaAwareCallPeer remotePeer
+            = EasyMock.createNiceMock(MediaAwareCallPeer.class);
+
+        EasyMock.expect(call.getCallPeers())
+            .andAnswer(() -> Collections.singletonList(remotePeer).iterator())
+            .anyTimes();
+        EasyMock.expect(call.getCallPeerList())
+            .andReturn(Collections.emptyList()).anyTimes();
+        for (MediaAwareCallPeer peer
+                : new MediaAwareCallPeer[] { localPeer, remotePeer })
+        {
+            EasyMock.expect(peer.getCall()).andReturn(call).anyTimes();
+            EasyMock.expect(peer.getMediaHandler())
+                .andReturn(mediaHandler).anyTimes();
+            EasyMock.expect(peer.getDirection(EasyMock.anyObject()))
+                .andReturn(MediaDirection.INACTIVE).anyTimes();
+        }
+        EasyMock.expect(remotePeer.getEntity())
+            .andAnswer(entity::get).anyTimes();
+        EasyMock.replay(mediaHandler, call, localPeer, remotePeer);
+        return localPeer;
+    }
+
+    private static String remoteEntity(ConferenceInfoSnapshot snapshot)
+    {
+        Iterator<ConferenceInfoSnapshot.User> users
+            = snapshot.getUsers().iterator();
+
+        users.next(); // the local user
+        return users.next().getEntity();
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static class NotifyRecorder
+        extends AbstractOperationSetTelephonyConferencing
+    {
+        private final BlockingQueue<Call> notified
+            = new LinkedBlockingQueue<Call>();
+
+        @SuppressWarnings("unchecked")
+        private NotifyRecorder(ProtocolProviderService provider)
+        {
+            super(provider);
+        }
+
+        private MediaAwareCallPeer<?,?,?> snapshotPeer;
+
+        private Runnable duringRound;
+
+        private final List<String> remoteEntities = new ArrayList<>();
+
+        @Override
+        protected void notifyCallPeers(Call call)
+        {
+            if (snapshotPeer != null)
+            {
+                remoteEntities.add(
+                    remoteEntity(getCurrentConferenceInfoSnapshot(
+                        snapshotPeer)));
+                if (duringRound != null)
+                    duringRound.run();
+                remoteEntities.add(
+                    remoteEntity(getCurrentConferenceInfoSnapshot(
+                        snapshotPeer)));
+            }
+            notified.add(call);
+        }
+
+        @Override
+        protected MediaAwareCall createOutgoingCall()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected CallPeer doInviteCalleeToCall(
+            Object calleeAddress, MediaAwareCall call)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected Object parseAddressString(String calleeAddressString)
+        {
+            return calleeAddressString;
+        }
+
+        @Override
+        protected String getLocalEntity(CallPeer callPeer)
+        {
+            return "sip:me@example.com";
+        }
+
+        @Override
+        protected String getLocalDisplayName()
+        {
+            return "me";
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import net.java.sip.communicator.service.protocol.media.ConferenceInfoDocument.*;
+
+import org.junit.*;
+
+public class ConferenceInfoSnapshotTest
+{
+    private static ConferenceInfoSnapshot.User user(
+        String entity, String srcId)
+    {
+        return new ConferenceInfoSnapshot.User(
+            entity,
+            entity + " name",
+            EndpointStatusType.connected,
+            Collections.singletonList(
+                new ConferenceInfoSnapshot.Media(
+                    "audio", srcId, "sendrecv")));
+    }
+
+    private static ConferenceInfoSnapshot snapshot(
+        ConferenceInfoSnapshot.User... users)
+    {
+        return new ConferenceInfoSnapshot(
+            "sip:me@example.com", null, users.length, Arrays.asList(users));
+    }
+
+    @Test
+    public void testFirstDocumentIsFull()
+    {
+        ConferenceInfoDocument doc
+            = snapshot(user("sip:a", "1"), user("sip:b", "2")).diff(null, true);
+
+        assertEquals(State.FULL, doc.getState());
+        assertEquals(2, doc.getUsers().size());
+        assertEquals(2, doc.getUserCount());
+        assertEquals(
+            "1",
+            doc.getUser("sip:a").getEndpoint("sip:a").getMedia("audio")
+                .getSrcId());
+    }
+
+    @Test
+    public void testNoChangeGivesNoDocument()
+    {
+        ConferenceInfoSnapshot sent
+            = snapshot(user("sip:a", "1"), user("sip:b", "2")).withVersion(3);
+
+        assertNull(
+            snapshot(user("sip:a", "1"), user("sip:b", "2")).diff(sent, true));
+        assertNull(
+            snapshot(user("sip:a", "1"), user("sip:b", "2"))
+                .diff(sent, false));
+    }
+
+    @Test
+    public void testPartialContainsChangedAndDeletedUsers()
+    {
+        ConferenceInfoSnapshot sent
+            = snapshot(
+                    user("sip:a", "1"), user("sip:b", "2"), user("sip:c", "3"))
+                .withVersion(1);
+        ConferenceInfoSnapshot current
+            = snapshot(user("sip:a", "1"), user("sip:b", "4"));
+
+        ConferenceInfoDocument diff = current.diff(sent, true);
+
+        assertEquals(State.PARTIAL, diff.getState());
+        assertEquals(State.PARTIAL, diff.getUsersState());
+        assertEquals(2, diff.getUsers().size());
+        assertNull(diff.getUser("sip:a"));
+        assertEquals(
+            "4",
+            diff.getUser("sip:b").getEndpoint("sip:b").getMedia("audio")
+                .getSrcId());
+        assertEquals(State.DELETED, diff.getUser("sip:c").getState());
+        assertEquals(2, diff.getUserCount());
+    }
+
+    @Test
+    public void testFullDocumentWhenPartialDisabled()
+    {
+        ConferenceInfoSnapshot sent
+            = snapshot(user("sip:a", "1"), user("sip:b", "2")).withVersion(1);
+        ConferenceInfoDocument diff
+            = snapshot(user("sip:a", "1"), user("sip:b", "5"))
+                .diff(sent, false);
+
+        assertEquals(State.FULL, diff.getState());
+        assertEquals(2, diff.getUsers().size());
+    }
+
+    @Test
+    public void testFullDocumentWhenAllUsersChanged()
+    {
+        ConferenceInfoSnapshot sent
+            = snapshot(user("sip:a", "1")).withVersion(1);
+        ConferenceInfoDocument diff
+            = snapshot(user("sip:a", "2")).diff(sent, true);
+
+        // A partial document would carry every user anyway.
+        assertEquals(State.FULL, diff.getState());
+    }
+
+    @Test
+    public void testEmptyValuesMatchMissingOnes()
+    {
+        ConferenceInfoSnapshot sent
+            = snapshot(
+                new ConferenceInfoSnapshot.User(
+                    "sip:a",
+                    "",
+                    EndpointStatusType.connected,
+                    Collections.singletonList(
+                        new ConferenceInfoSnapshot.Media(
+                            "audio", "", "sendrecv"))))
+                .withVersion(1);
+        ConferenceInfoSnapshot current
+            = snapshot(
+                new ConferenceInfoSnapshot.User(
+                    "sip:a",
+                    null,
+                    EndpointStatusType.connected,
+                    Collections.singletonList(
+                        new ConferenceInfoSnapshot.Media(
+                            "audio", null, "sendrecv"))));
+
+        assertNull(current.diff(sent, true));
+    }
+
+    @Test
+    public void testVersionIsKeptInDocument()
+    {
+        ConferenceInfoSnapshot sent
+            = snapshot(user("sip:a", "1")).withVersion(7);
+
+        assertEquals(7, sent.getVersion());
+        assertEquals(7, sent.toDocument().getVersion());
+        assertEquals(-1, snapshot(user("sip:a", "1")).getVersion());
+    }
+}
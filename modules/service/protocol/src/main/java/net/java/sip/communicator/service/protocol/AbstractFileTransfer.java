@@ -192,6 +192,25 @@ public void fireStatusChangeEvent(int newStatus, String reason)
      * @param progress the bytes representing the progress of the transfer
      */
     public void fireProgressChangeEvent(long timestamp, long progress)
+    {
+        fireProgressChangeEvent(timestamp, progress, -1, -1);
+    }
+
+    /**
+     * Notifies all status listeners that a new
+     * <tt>FileTransferProgressEvent</tt> occured.
+     * @param timestamp the date on which the event occured
+     * @param progress the bytes representing the progress of the transfer
+     * @param bytesPerSecond the transfer rate in bytes per second or
+     * <tt>-1</tt> if unknown
+     * @param estimatedTimeLeft the estimated time left in milliseconds or
+     * <tt>-1</tt> if unknown
+     */
+    public void fireProgressChangeEvent(
+        long timestamp,
+        long progress,
+        long bytesPerSecond,
+        long estimatedTimeLeft)
     {
         Collection<FileTransferProgressListener> listeners = null;
         synchronized (progressListeners)
@@ -201,7 +220,9 @@ public void fireProgressChangeEvent(long timestamp, long progress)
         }
 
         FileTransferProgressEvent progressEvent
-            = new FileTransferProgressEvent(this, timestamp, progress);
+            = new FileTransferProgressEvent(
+                    this, timestamp, progress, bytesPerSecond,
+                    estimatedTimeLeft);
 
         Iterator<FileTransferProgressListener> listenersIter
             = listeners.iterator();
@@ -18,6 +18,8 @@
 package net.java.sip.communicator.service.protocol;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 import net.java.sip.communicator.service.credentialsstorage.*;
 import net.java.sip.communicator.service.protocol.event.*;
@@ -43,6 +45,19 @@
      */
     private static final long LOAD_STORED_ACCOUNTS_TIMEOUT = 30000;
 
+    /**
+     * The name of the property which sets how many stored accounts are loaded
+     * concurrently.
+     */
+    public static final String PNAME_MAX_CONCURRENT_ACCOUNT_LOADS
+        = "net.java.sip.communicator.service.protocol"
+            + ".MAX_CONCURRENT_ACCOUNT_LOADS";
+
+    /**
+     * The default number of stored accounts loaded concurrently.
+     */
+    private static final int DEFAULT_MAX_CONCURRENT_ACCOUNT_LOADS = 4;
+
     /**
      * The <tt>BundleContext</tt> this service is registered in.
      */
@@ -69,6 +84,32 @@
      */
     private Thread loadStoredAccountsThread;
 
+    /**
+     * The pool on which the protocol providers of the stored accounts are
+     * created. Created when first needed.
+     */
+    private ExecutorService loadAccountsExecutor;
+
+    /**
+     * The loads of the factories whose accounts are still being loaded.
+     * Accessed only by {@link #loadStoredAccountsThread}.
+     */
+    private final List<CompletableFuture<Void>> pendingLoads
+        = new ArrayList<>();
+
+    /**
+     * The timings of the stored accounts loaded so far.
+     */
+    private final List<LoadTiming> loadTimings = new CopyOnWriteArrayList<>();
+
+    /**
+     * The listeners recording when the providers of the loaded accounts
+     * register for the first time, removed once they did or the account is
+     * unloaded.
+     */
+    private final Map<ProtocolProviderService, RegistrationStateChangeListener>
+        registrationTrackers = new ConcurrentHashMap<>();
+
     /**
      * The <tt>Logger</tt> used by this <tt>AccountManagerImpl</tt> instance for
      * logging output.
@@ -122,60 +163,56 @@ public void addListener(AccountManagerListener listener)
 
     /**
      * Loads the accounts stored for a specific
-     * <tt>ProtocolProviderFactory</tt>.
+     * <tt>ProtocolProviderFactory</tt>. The <tt>AccountID</tt>s are created in
+     * the order the accounts are stored, their protocol providers are then
+     * created on {@link #loadAccountsExecutor}, concurrently unless the
+     * factory requires them to be loaded in order.
      *
      * @param factory the <tt>ProtocolProviderFactory</tt> to load the
      *            stored accounts of
+     * @return completes when the protocol providers of all enabled stored
+     * accounts were created
      */
-    private void doLoadStoredAccounts(ProtocolProviderFactory factory)
+    private CompletableFuture<Void> doLoadStoredAccounts(
+        ProtocolProviderFactory factory)
     {
         ConfigurationService configService
             = ProtocolProviderActivator.getConfigurationService();
         String factoryPackage = getFactoryImplPackageName(factory);
-        List<String> accounts
-            = configService.getPropertyNamesByPrefix(factoryPackage, true);
+        Map<String, Map<String, String>> accounts
+            = readStoredAccounts(configService, factoryPackage);
 
         if (logger.isDebugEnabled())
             logger.debug("Discovered " + accounts.size() + " stored "
                     + factoryPackage + " accounts");
 
-        for (Iterator<String> storedAccountIter = accounts.iterator();
-                storedAccountIter.hasNext();)
+        CredentialsStorageService credentialsStorage
+            = ServiceUtils.getService(
+                    bundleContext,
+                    CredentialsStorageService.class);
+        Executor executor = getLoadAccountsExecutor();
+        boolean ordered = factory.isAccountLoadingOrdered();
+        List<CompletableFuture<Void>> loads = new ArrayList<>();
+        CompletableFuture<Void> previous
+            = CompletableFuture.completedFuture(null);
+
+        for (Map.Entry<String, Map<String, String>> storedAccountEntry
+                : accounts.entrySet())
         {
-            String storedAccount = storedAccountIter.next();
-
-            // If the property is not related to an account we skip it.
-            int dotIndex = storedAccount.lastIndexOf(".");
-            if (!storedAccount.substring(dotIndex + 1)
-                    .startsWith(ACCOUNT_UID_PREFIX))
-                continue;
+            String storedAccount = storedAccountEntry.getKey();
 
             if (logger.isDebugEnabled())
                 logger.debug("Loading account " + storedAccount);
 
-            List<String> storedAccountProperties =
-                configService.getPropertyNamesByPrefix(storedAccount, false);
             Map<String, String> accountProperties =
                 new Hashtable<String, String>();
             boolean disabled = false;
-            CredentialsStorageService credentialsStorage
-                = ServiceUtils.getService(
-                        bundleContext,
-                        CredentialsStorageService.class);
-
-            int prefLen = storedAccount.length() + 1;
-            for (Iterator<String> storedAccountPropertyIter
-                        = storedAccountProperties.iterator();
-                    storedAccountPropertyIter.hasNext();)
-            {
-                String property = storedAccountPropertyIter.next();
-                String value = configService.getString(property);
-
-                //strip the package prefix
-                if(prefLen > property.length())
-                    continue;
 
-                property = property.substring(prefLen);
+            for (Map.Entry<String, String> e
+                    : storedAccountEntry.getValue().entrySet())
+            {
+                String property = e.getKey();
+                String value = e.getValue();
 
                 if (ProtocolProviderFactory.IS_ACCOUNT_DISABLED.equals(property))
                     disabled = Boolean.parseBoolean(value);
@@ -198,21 +235,11 @@ else if (ProtocolProviderFactory.PASSWORD.equals(property)
                     accountProperties.put(property, value);
             }
 
+            AccountID accountID;
+
             try
             {
-                AccountID accountID = factory.createAccount(accountProperties);
-
-                // If for some reason the account id is not created we move to
-                // the next account.
-                if (accountID == null)
-                    continue;
-
-                synchronized (storedAccounts)
-                {
-                    storedAccounts.add(accountID);
-                }
-                if (!disabled)
-                    factory.loadAccount(accountID);
+                accountID = factory.createAccount(accountProperties);
             }
             catch (Exception ex)
             {
@@ -221,15 +248,255 @@ else if (ProtocolProviderFactory.PASSWORD.equals(property)
                  * from halting the loading of subsequent accounts.
                  */
                 logger.error("Failed to load account " + accountProperties, ex);
+                continue;
+            }
+
+            // If for some reason the account id is not created we move to
+            // the next account.
+            if (accountID == null)
+                continue;
+
+            synchronized (storedAccounts)
+            {
+                storedAccounts.add(accountID);
             }
-            catch (ExceptionInInitializerError ex)
+            if (disabled)
+                continue;
+
+            Runnable load
+                = () -> loadStoredAccount(factory, accountID, accountProperties);
+
+            if (ordered)
+                previous = previous.thenRunAsync(load, executor);
+            else
+                loads.add(CompletableFuture.runAsync(load, executor));
+        }
+        loads.add(previous);
+
+        return CompletableFuture.allOf(
+            loads.toArray(new CompletableFuture<?>[loads.size()]));
+    }
+
+    /**
+     * Reads the properties of all accounts stored for a factory with a single
+     * query of the configuration.
+     *
+     * @param configService the configuration to read from
+     * @param factoryPackage the package name of the factory
+     * @return the properties without the account prefix, by account prefix in
+     * the order the accounts are stored
+     */
+    static Map<String, Map<String, String>> readStoredAccounts(
+        ConfigurationService configService,
+        String factoryPackage)
+    {
+        String prefix = factoryPackage + ".";
+        Map<String, Map<String, String>> accounts = new LinkedHashMap<>();
+        Set<String> roots = new HashSet<>();
+
+        for (String property
+                : configService.getPropertyNamesByPrefix(prefix, false))
+        {
+            int nodeEnd = property.indexOf('.', prefix.length());
+            String node
+                = (nodeEnd == -1)
+                    ? property.substring(prefix.length())
+                    : property.substring(prefix.length(), nodeEnd);
+
+            // If the property is not related to an account we skip it.
+            if (!node.startsWith(ACCOUNT_UID_PREFIX))
+                continue;
+
+            String storedAccount = prefix + node;
+            Map<String, String> properties
+                = accounts.computeIfAbsent(
+                    storedAccount, k -> new LinkedHashMap<>());
+
+            if (nodeEnd == -1)
+                roots.add(storedAccount);
+            else
             {
-                // In case we fail to instantiate the ProtocolProviderService.
-                logger.error(
-                    "Failed to create account service instance for account "
-                        + accountProperties, ex);
+                //strip the package prefix
+                properties.put(
+                    property.substring(nodeEnd + 1),
+                    configService.getString(property));
             }
         }
+
+        // only accounts which have their node stored are loaded
+        accounts.keySet().retainAll(roots);
+        return accounts;
+    }
+
+    /**
+     * Creates the protocol provider of a stored account and records how long
+     * it took in {@link #loadTimings}.
+     *
+     * @param factory the factory of the account
+     * @param accountID the account to load
+     * @param accountProperties the stored properties of the account, for
+     * logging
+     */
+    private void loadStoredAccount(
+        ProtocolProviderFactory factory,
+        AccountID accountID,
+        Map<String, String> accountProperties)
+    {
+        long start = System.nanoTime();
+        boolean loaded = false;
+
+        try
+        {
+            loaded = factory.loadAccount(accountID);
+        }
+        catch (Exception ex)
+        {
+            logger.error("Failed to load account " + accountProperties, ex);
+        }
+        catch (ExceptionInInitializerError ex)
+        {
+            // In case we fail to instantiate the ProtocolProviderService.
+            logger.error(
+                "Failed to create account service instance for account "
+                    + accountProperties, ex);
+        }
+
+        LoadTiming timing
+            = new LoadTiming(
+                accountID,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                loaded);
+
+        loadTimings.add(timing);
+        logger.info("Loaded account {} in {} ms",
+            accountID.getAccountUniqueID(), timing.getLoadTime());
+
+        if (loaded)
+            trackRegistration(factory, timing, start);
+    }
+
+    /**
+     * Records in <tt>timing</tt> how long after the start of its load the
+     * provider of an account registered for the first time.
+     *
+     * @param factory the factory of the account
+     * @param timing the timing of the account
+     * @param start the value of <tt>System.nanoTime()</tt> when the load
+     * started
+     */
+    private void trackRegistration(
+        ProtocolProviderFactory factory,
+        final LoadTiming timing,
+        final long start)
+    {
+        ServiceReference<ProtocolProviderService> ref
+            = factory.getProviderForAccount(timing.getAccountID());
+        final ProtocolProviderService pps
+            = (ref == null) ? null : bundleContext.getService(ref);
+
+        if (pps == null)
+            return;
+
+        RegistrationStateChangeListener listener
+            = new RegistrationStateChangeListener()
+            {
+                public void registrationStateChanged(
+                    RegistrationStateChangeEvent evt)
+                {
+                    RegistrationState state = evt.getNewState();
+
+                    if (RegistrationState.REGISTERED.equals(state))
+                    {
+                        timing.registerTime
+                            = TimeUnit.NANOSECONDS.toMillis(
+                                System.nanoTime() - start);
+                        logger.info("Account {} registered {} ms after load",
+                            timing.getAccountID().getAccountUniqueID(),
+                            timing.getRegisterTime());
+                    }
+                    else if (!RegistrationState.AUTHENTICATION_FAILED
+                                .equals(state)
+                            && !RegistrationState.CONNECTION_FAILED
+                                .equals(state)
+                            && !RegistrationState.UNREGISTERED.equals(state))
+                    {
+                        return;
+                    }
+
+                    if (registrationTrackers.remove(pps, this))
+                        pps.removeRegistrationStateChangeListener(this);
+                }
+            };
+
+        registrationTrackers.put(pps, listener);
+        pps.addRegistrationStateChangeListener(listener);
+    }
+
+    /**
+     * Stops recording when the provider of an account registers for the
+     * first time.
+     *
+     * @param pps the provider of the account
+     */
+    private void stopTrackingRegistration(ProtocolProviderService pps)
+    {
+        RegistrationStateChangeListener listener
+            = registrationTrackers.remove(pps);
+
+        if (listener != null)
+            pps.removeRegistrationStateChangeListener(listener);
+    }
+
+    /**
+     * Returns the pool on which the protocol providers of the stored accounts
+     * are created, creating it if necessary.
+     *
+     * @return the pool loading the stored accounts
+     */
+    private synchronized Executor getLoadAccountsExecutor()
+    {
+        if (loadAccountsExecutor == null)
+        {
+            int max
+                = Math.max(
+                    1,
+                    ProtocolProviderActivator.getConfigurationService().getInt(
+                        PNAME_MAX_CONCURRENT_ACCOUNT_LOADS,
+                        DEFAULT_MAX_CONCURRENT_ACCOUNT_LOADS));
+            AtomicInteger count = new AtomicInteger();
+            ThreadPoolExecutor executor
+                = new ThreadPoolExecutor(
+                    max, max,
+                    LOAD_STORED_ACCOUNTS_TIMEOUT, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(),
+                    r ->
+                    {
+                        Thread t
+                            = new Thread(
+                                r,
+                                "AccountManager.loadAccount-"
+                                    + count.incrementAndGet());
+
+                        t.setDaemon(true);
+                        return t;
+                    });
+
+            executor.allowCoreThreadTimeOut(true);
+            loadAccountsExecutor = executor;
+        }
+        return loadAccountsExecutor;
+    }
+
+    /**
+     * Returns how long the stored accounts loaded so far took to load and to
+     * register.
+     *
+     * @return the timings of the loaded stored accounts, in the order their
+     * loads finished
+     */
+    public List<LoadTiming> getLoadTimings()
+    {
+        return new ArrayList<>(loadTimings);
     }
 
     /**
@@ -458,11 +725,50 @@ public AccountID findAccountID(String uid)
      * @param factory the <tt>ProtocolProviderFactory</tt> to load the
      *            stored accounts of
      */
-    private void loadStoredAccounts(ProtocolProviderFactory factory)
+    private void loadStoredAccounts(final ProtocolProviderFactory factory)
     {
-        doLoadStoredAccounts(factory);
+        final long start = System.nanoTime();
 
-        fireStoredAccountsLoaded(factory);
+        pendingLoads.add(
+            doLoadStoredAccounts(factory).whenComplete((r, t) ->
+            {
+                logger.info("Loaded the stored {} accounts in {} ms",
+                    factory.getProtocolName(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                fireStoredAccountsLoaded(factory);
+            }));
+    }
+
+    /**
+     * Waits for the loads started by {@link #loadStoredAccounts} to complete,
+     * so that {@link #loadStoredAccountsThread} only dies once all stored
+     * accounts are loaded.
+     *
+     * @return <tt>true</tt> if the waiting was interrupted
+     */
+    private boolean awaitPendingLoads()
+    {
+        for (Iterator<CompletableFuture<Void>> i = pendingLoads.iterator();
+                i.hasNext();)
+        {
+            try
+            {
+                i.next().get();
+            }
+            catch (InterruptedException ex)
+            {
+                logger.warn(
+                    "The loading of the stored accounts has been interrupted",
+                    ex);
+                return true;
+            }
+            catch (ExecutionException ex)
+            {
+                logger.error("Failed to load stored accounts", ex.getCause());
+            }
+            i.remove();
+        }
+        return false;
     }
 
     /**
@@ -593,6 +899,16 @@ private void runInLoadStoredAccountsThread()
             }
             finally
             {
+                boolean idle;
+
+                synchronized (loadStoredAccountsQueue)
+                {
+                    idle = loadStoredAccountsQueue.isEmpty();
+                }
+                // the factories queued meanwhile are loaded concurrently
+                if (idle && !interrupted)
+                    interrupted = awaitPendingLoads();
+
                 synchronized (loadStoredAccountsQueue)
                 {
                     if (!interrupted && (loadStoredAccountsQueue.size() <= 0))
@@ -1036,6 +1352,8 @@ public void unloadAccount(AccountID accountID)
         ProtocolProviderService protocolProvider
             = bundleContext.getService(serRef);
 
+        stopTrackingRegistration(protocolProvider);
+
         // Set the account icon path for unloaded accounts.
         String iconPathProperty = accountID.getAccountPropertyString(
             ProtocolProviderFactory.ACCOUNT_ICON_PATH);
@@ -1079,6 +1397,82 @@ public boolean isAccountLoaded(AccountID accountID)
         return storedAccounts.contains(accountID) && accountID.isEnabled();
     }
 
+    /**
+     * The time it took to load a stored account and to register it.
+     */
+    public static class LoadTiming
+    {
+        /**
+         * The loaded account.
+         */
+        private final AccountID accountID;
+
+        /**
+         * The time it took to create the protocol provider, in milliseconds.
+         */
+        private final long loadTime;
+
+        /**
+         * Whether the protocol provider was created.
+         */
+        private final boolean loaded;
+
+        /**
+         * The time from the start of the load to the first registration, in
+         * milliseconds, or <tt>-1</tt>.
+         */
+        private volatile long registerTime = -1;
+
+        LoadTiming(AccountID accountID, long loadTime, boolean loaded)
+        {
+            this.accountID = accountID;
+            this.loadTime = loadTime;
+            this.loaded = loaded;
+        }
+
+        /**
+         * Returns the loaded account.
+         *
+         * @return the loaded account
+         */
+        public AccountID getAccountID()
+        {
+            return accountID;
+        }
+
+        /**
+         * Returns the time it took to create the protocol provider.
+         *
+         * @return the load time in milliseconds
+         */
+        public long getLoadTime()
+        {
+            return loadTime;
+        }
+
+        /**
+         * Returns whether the protocol provider was created.
+         *
+         * @return <tt>true</tt> if the account was loaded
+         */
+        public boolean isLoaded()
+        {
+            return loaded;
+        }
+
+        /**
+         * Returns the time from the start of the load until the account
+         * registered for the first time.
+         *
+         * @return the time in milliseconds, or <tt>-1</tt> if the account did
+         * not register yet
+         */
+        public long getRegisterTime()
+        {
+            return registerTime;
+        }
+    }
+
     private String stripPackagePrefix(String property)
     {
         int packageEndIndex = property.lastIndexOf('.');
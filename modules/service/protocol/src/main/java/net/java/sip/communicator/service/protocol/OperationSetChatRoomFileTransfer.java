@@ -0,0 +1,56 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.protocol;
+
+import java.io.*;
+
+/**
+ * Sends files to all the members of a chat room at once, for protocols that
+ * can share a file with a room without a transfer to each member.
+ */
+public interface OperationSetChatRoomFileTransfer
+    extends OperationSet
+{
+    /**
+     * Sends a file to a chat room.
+     *
+     * @param chatRoom the chat room that should receive the file
+     * @param file the file to send
+     *
+     * @return the transfer object
+     *
+     * @throws IllegalStateException if the protocol provider is not registered
+     * or connected
+     * @throws IllegalArgumentException if some of the arguments doesn't fit the
+     * protocol requirements
+     * @throws OperationNotSupportedException if the server does not support
+     * sharing the file with the chat room
+     */
+    public FileTransfer sendFile(ChatRoom chatRoom, File file)
+        throws  IllegalStateException,
+                IllegalArgumentException,
+                OperationNotSupportedException;
+
+    /**
+     * Returns the maximum file length that can be sent to a chat room in
+     * bytes.
+     *
+     * @return the file length that is supported.
+     */
+    public long getMaximumFileLength();
+}
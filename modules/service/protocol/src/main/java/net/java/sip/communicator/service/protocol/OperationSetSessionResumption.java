@@ -0,0 +1,46 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.protocol;
+
+/**
+ * An <tt>OperationSet</tt> for protocol providers whose sessions survive the
+ * loss of the underlying connection for some time (e.g. XMPP stream
+ * management). A provider whose session is resumable is reconnected by
+ * suspending and registering it again, which restores the session and the
+ * stanzas that were in flight instead of creating a new one.
+ */
+public interface OperationSetSessionResumption
+    extends OperationSet
+{
+    /**
+     * Indicates whether the current, or the last dropped, session of the
+     * provider can be resumed by the next call to
+     * {@link ProtocolProviderService#register(SecurityAuthority)}.
+     *
+     * @return <tt>true</tt> if the session can be resumed
+     */
+    boolean isSessionResumable();
+
+    /**
+     * Closes the connection of the provider without ending its session and
+     * changes its state to <tt>UNREGISTERED</tt>. The next call to
+     * <tt>register</tt> tries to resume the session and falls back to a new
+     * one if that fails.
+     */
+    void suspend();
+}
@@ -1076,6 +1076,19 @@ public boolean unloadAccount(AccountID accountID)
         return true;
     }
 
+    /**
+     * Returns whether the stored accounts of this factory have to be loaded
+     * one after another, in the order they are stored. The stored accounts of
+     * the other factories are loaded concurrently.
+     *
+     * @return <tt>true</tt> if the protocol providers of this factory must not
+     * be created concurrently, <tt>false</tt> by default
+     */
+    public boolean isAccountLoadingOrdered()
+    {
+        return false;
+    }
+
     /**
      * Initializes and creates an account corresponding to the specified
      * accountProperties.
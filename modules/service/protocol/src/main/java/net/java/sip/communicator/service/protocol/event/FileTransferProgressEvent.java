@@ -45,6 +45,17 @@
      */
     private long timestamp;
 
+    /**
+     * The transfer rate in bytes per second or <tt>-1</tt> if unknown.
+     */
+    private final long bytesPerSecond;
+
+    /**
+     * The estimated time left until the transfer completes in milliseconds
+     * or <tt>-1</tt> if unknown.
+     */
+    private final long estimatedTimeLeft;
+
     /**
      * Creates a <tt>FileTransferProgressEvent</tt> by specifying the source
      * file transfer object, that triggered the event and the new progress
@@ -58,11 +69,36 @@
     public FileTransferProgressEvent(   FileTransfer fileTransfer,
                                         long timestamp,
                                         long progress)
+    {
+        this(fileTransfer, timestamp, progress, -1, -1);
+    }
+
+    /**
+     * Creates a <tt>FileTransferProgressEvent</tt> which also carries the
+     * transfer rate and the estimated time left, so that they are computed
+     * once for all listeners.
+     *
+     * @param fileTransfer the source file transfer object, that triggered the
+     * event
+     * @param timestamp when this event occured
+     * @param progress the new progress value
+     * @param bytesPerSecond the transfer rate in bytes per second or
+     * <tt>-1</tt> if unknown
+     * @param estimatedTimeLeft the estimated time left in milliseconds or
+     * <tt>-1</tt> if unknown
+     */
+    public FileTransferProgressEvent(   FileTransfer fileTransfer,
+                                        long timestamp,
+                                        long progress,
+                                        long bytesPerSecond,
+                                        long estimatedTimeLeft)
     {
         super(fileTransfer);
 
         this.timestamp = timestamp;
         this.progress = progress;
+        this.bytesPerSecond = bytesPerSecond;
+        this.estimatedTimeLeft = estimatedTimeLeft;
     }
 
     /**
@@ -94,4 +130,26 @@ public long getTimestamp()
     {
         return timestamp;
     }
+
+    /**
+     * Returns the transfer rate at the time of this event.
+     *
+     * @return the transfer rate in bytes per second or <tt>-1</tt> if the
+     * protocol does not compute it
+     */
+    public long getBytesPerSecond()
+    {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Returns the estimated time left until the transfer completes.
+     *
+     * @return the estimated time left in milliseconds or <tt>-1</tt> if it is
+     * unknown
+     */
+    public long getEstimatedTimeLeft()
+    {
+        return estimatedTimeLeft;
+    }
 }
@@ -21,6 +21,7 @@
 import java.net.*;
 import java.text.*;
 import java.util.*;
+import java.util.concurrent.*;
 import javax.swing.*;
 import net.java.sip.communicator.service.resources.*;
 import net.java.sip.communicator.util.*;
@@ -32,6 +33,9 @@
  * The abstract class for ResourceManagementService. It listens for
  * {@link ResourcePack} that are registered and exposes them later for use by
  * subclasses. It implements default behaviour for most methods.
+ * <p>
+ * Decoded images, parsed colors, message formats and processed strings are
+ * cached and dropped when the resource pack they come from changes.
  */
 public class ResourceManagementServiceImpl
     implements ResourceManagementService, ServiceListener
@@ -41,6 +45,49 @@
      */
     private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ResourceManagementServiceImpl.class);
 
+    /**
+     * The name of the property which limits the decoded size of the cached
+     * images, in bytes.
+     */
+    public static final String PNAME_IMAGE_CACHE_SIZE
+        = "net.java.sip.communicator.impl.resources.IMAGE_CACHE_SIZE";
+
+    /**
+     * The name of the property which lists, separated by commas, the keys of
+     * the images to decode in the background as soon as the service starts.
+     */
+    public static final String PNAME_PREWARM_IMAGES
+        = "net.java.sip.communicator.impl.resources.PREWARM_IMAGES";
+
+    /**
+     * The decoded images, shared with the image loaders of the user interface.
+     */
+    private final ImageCache imageCache = ImageCache.getInstance();
+
+    /**
+     * The <tt>URL</tt>s of the images by path, resolved through the current
+     * image pack.
+     */
+    private final Map<String, URL> imageURLs = new ConcurrentHashMap<>();
+
+    /**
+     * The colors of the current color pack parsed to ints, or <tt>null</tt>
+     * until first needed.
+     */
+    private volatile Map<String, Integer> colors;
+
+    /**
+     * The parsed patterns of the strings with parameters, by locale and key.
+     */
+    private final Map<Locale, Map<String, MessageFormat>> messageFormats
+        = new ConcurrentHashMap<>();
+
+    /**
+     * The processed strings without parameters, by locale and key.
+     */
+    private final Map<Locale, Map<String, String>> processedStrings
+        = new ConcurrentHashMap<>();
+
     private final ConfigurationService configService;
 
     /**
@@ -132,6 +179,68 @@ public ResourceManagementServiceImpl(BundleContext bundleContext,
         {
             languageResources = languagePack.getResources(languageLocale);
         }
+
+        imageCache.setMaxBytes(
+            configService.getLong(
+                PNAME_IMAGE_CACHE_SIZE, ImageCache.DEFAULT_MAX_BYTES));
+
+        String prewarm = configService.getString(PNAME_PREWARM_IMAGES);
+
+        if (prewarm != null && prewarm.length() != 0)
+            prewarmImages(prewarm.split(","));
+    }
+
+    /**
+     * Decodes the images with the given keys on a background thread, so that
+     * the first window does not wait for them.
+     *
+     * @param keys the keys of the images to decode
+     */
+    private void prewarmImages(final String[] keys)
+    {
+        Thread t = new Thread("ResourceManagementService.prewarmImages")
+        {
+            @Override
+            public void run()
+            {
+                List<URL> urls = new ArrayList<>(keys.length);
+
+                for (String key : keys)
+                    urls.add(getImageURL(key.trim()));
+                imageCache.prewarm(urls);
+
+                if (logger.isDebugEnabled())
+                    logger.debug("Prewarmed " + imageCache.getCount()
+                        + " images");
+            }
+        };
+
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Drops what was cached from a resource pack which was just registered or
+     * unregistered.
+     *
+     * @param resourcePack the resource pack
+     */
+    private void invalidateCaches(ResourcePack resourcePack)
+    {
+        if (resourcePack instanceof ColorPack)
+        {
+            colors = null;
+        }
+        else if (resourcePack instanceof ImagePack)
+        {
+            imageURLs.clear();
+            imageCache.clear();
+        }
+        else if (resourcePack instanceof LanguagePack)
+        {
+            messageFormats.clear();
+            processedStrings.clear();
+        }
     }
 
     /**
@@ -223,8 +332,15 @@ else if(resourcePack instanceof LanguagePack
                     = getDefaultResourcePack(
                     LanguagePack.class,
                     LanguagePack.RESOURCE_NAME_DEFAULT_VALUE);
+                languageLocale = Locale.getDefault();
+                languageResources
+                    = (languagePack == null)
+                        ? null
+                        : languagePack.getResources(languageLocale);
             }
         }
+
+        invalidateCaches(resourcePack);
     }
 
     /**
@@ -237,7 +353,31 @@ else if(resourcePack instanceof LanguagePack
      */
     public int getColor(String key)
     {
-        return Integer.parseInt(getColorString(key), 16);
+        Map<String, Integer> colors = this.colors;
+
+        if (colors == null)
+        {
+            colors = new HashMap<>();
+            for (Map.Entry<String, String> e
+                    : colorPack.getResources().entrySet())
+            {
+                try
+                {
+                    colors.put(e.getKey(), Integer.parseInt(e.getValue(), 16));
+                }
+                catch (NumberFormatException ex)
+                {
+                    // parsed again, and reported, when requested
+                }
+            }
+            this.colors = colors;
+        }
+
+        Integer color = colors.get(key);
+
+        return (color != null)
+            ? color
+            : Integer.parseInt(getColorString(key), 16);
     }
 
     /**
@@ -420,6 +560,20 @@ private String processI18NString(String resourceString)
      */
     public String getI18NString(String key, String[] params, Locale locale)
     {
+        Map<String, String> processed
+            = (params == null && locale != null)
+                ? processedStrings.computeIfAbsent(
+                    locale, l -> new ConcurrentHashMap<>())
+                : null;
+
+        if (processed != null)
+        {
+            String cached = processed.get(key);
+
+            if (cached != null)
+                return cached;
+        }
+
         String resourceString = doGetI18String(key, locale);
         if (resourceString == null)
         {
@@ -429,11 +583,42 @@ public String getI18NString(String key, String[] params, Locale locale)
 
         if(params != null)
         {
-            resourceString
-                    = MessageFormat.format(resourceString, (Object[]) params);
+            resourceString = format(key, resourceString, params, locale);
         }
 
-        return processI18NString(resourceString);
+        resourceString = processI18NString(resourceString);
+        if (processed != null)
+            processed.put(key, resourceString);
+        return resourceString;
+    }
+
+    /**
+     * Formats a string with parameters, reusing the parsed pattern of
+     * <tt>key</tt> in <tt>locale</tt>.
+     *
+     * @param key the key of the string
+     * @param pattern the string to format
+     * @param params the parameters to format the string with
+     * @param locale the locale of the string, the pattern is not cached for
+     * <tt>null</tt>
+     * @return the formatted string
+     */
+    private String format(
+        String key, String pattern, String[] params, Locale locale)
+    {
+        MessageFormat messageFormat
+            = (locale == null)
+                ? new MessageFormat(pattern)
+                : messageFormats
+                    .computeIfAbsent(locale, l -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(key, k -> new MessageFormat(pattern));
+
+        // MessageFormat is not thread safe
+        synchronized (messageFormat)
+        {
+            return messageFormat.format(params, new StringBuffer(), null)
+                .toString();
+        }
     }
 
     /**
@@ -664,7 +849,15 @@ public URL getImageURL(String urlKey)
      */
     public URL getImageURLForPath(String path)
     {
-        return imagePack.getClass().getClassLoader().getResource(path);
+        URL url = imageURLs.get(path);
+
+        if (url == null)
+        {
+            url = imagePack.getClass().getClassLoader().getResource(path);
+            if (url != null)
+                imageURLs.put(path, url);
+        }
+        return url;
     }
 
     /**
@@ -677,7 +870,7 @@ public ImageIcon getImage(String imageID)
     {
         URL imageURL = getImageURL(imageID);
 
-        return (imageURL == null) ? null : new ImageIcon(imageURL);
+        return (imageURL == null) ? null : imageCache.getImageIcon(imageURL);
     }
 
     /**
@@ -0,0 +1,401 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.resources;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+import javax.imageio.*;
+import javax.swing.*;
+
+/**
+ * A memory-bounded cache of decoded images, shared by the resource management
+ * service and the image loaders of the user interface so that an image is
+ * decoded once no matter how often and through which of them it is requested.
+ * <p>
+ * Images are keyed by their URL. When an image <tt>name.png</tt> has a
+ * <tt>name@2x.png</tt> sibling, both are decoded and returned as one
+ * multi-resolution image, so that HiDPI screens paint the larger variant.
+ * The least recently used images are dropped once the decoded size of all
+ * cached images exceeds the limit. Animated GIFs are never cached because
+ * decoding them to a <tt>BufferedImage</tt> would lose the animation.
+ */
+public class ImageCache
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>ImageCache</tt> class for logging
+     * output.
+     */
+    private static final org.slf4j.Logger logger
+        = org.slf4j.LoggerFactory.getLogger(ImageCache.class);
+
+    /**
+     * The default limit of the decoded size of the cached images, in bytes.
+     */
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    /**
+     * The cache shared by the whole application.
+     */
+    private static final ImageCache instance
+        = new ImageCache(DEFAULT_MAX_BYTES);
+
+    /**
+     * The cached images by URL, in access order.
+     */
+    private final LinkedHashMap<String, Entry> entries
+        = new LinkedHashMap<>(64, 0.75f, true);
+
+    /**
+     * The limit of the decoded size of the cached images, in bytes.
+     */
+    private long maxBytes;
+
+    /**
+     * The decoded size of the cached images, in bytes.
+     */
+    private long size;
+
+    /**
+     * The number of requests served from the cache.
+     */
+    private long hits;
+
+    /**
+     * The number of requests which decoded an image.
+     */
+    private long misses;
+
+    /**
+     * Creates a cache holding at most <tt>maxBytes</tt> of decoded images.
+     *
+     * @param maxBytes the limit of the decoded size of the cached images
+     */
+    ImageCache(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cache shared by the whole application.
+     *
+     * @return the shared cache
+     */
+    public static ImageCache getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Returns the decoded image at <tt>url</tt>, in its base resolution.
+     *
+     * @param url the location of the image
+     * @return the decoded image or <tt>null</tt> if it could not be loaded
+     */
+    public BufferedImage getBufferedImage(URL url)
+    {
+        Entry entry = getEntry(url);
+
+        return (entry == null) ? null : entry.base;
+    }
+
+    /**
+     * Returns the decoded image at <tt>url</tt>, including its HiDPI variant
+     * if there is one.
+     *
+     * @param url the location of the image
+     * @return the decoded image or <tt>null</tt> if it could not be loaded
+     */
+    public Image getImage(URL url)
+    {
+        Entry entry = getEntry(url);
+
+        return (entry == null) ? null : entry.image;
+    }
+
+    /**
+     * Returns an icon painting the image at <tt>url</tt>. The icon is new but
+     * the image it paints is shared.
+     *
+     * @param url the location of the image
+     * @return the icon or <tt>null</tt> if the image could not be loaded
+     */
+    public ImageIcon getImageIcon(URL url)
+    {
+        if (isAnimated(url))
+            return new ImageIcon(url);
+
+        Image image = getImage(url);
+
+        return (image == null)
+            ? null
+            : new ImageIcon(image, url.toExternalForm());
+    }
+
+    /**
+     * Decodes the images at the given locations ahead of their first use.
+     *
+     * @param urls the locations of the images
+     */
+    public void prewarm(Collection<URL> urls)
+    {
+        for (URL url : urls)
+        {
+            if (url != null && !isAnimated(url))
+                getEntry(url);
+        }
+    }
+
+    /**
+     * Changes the limit of the decoded size of the cached images, dropping
+     * the least recently used images which no longer fit.
+     *
+     * @param maxBytes the new limit in bytes
+     */
+    public synchronized void setMaxBytes(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+        trim();
+    }
+
+    /**
+     * Drops all cached images, e.g. because the image pack changed.
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Returns the decoded size of the cached images.
+     *
+     * @return the size in bytes
+     */
+    public synchronized long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the number of images in the cache.
+     *
+     * @return the number of cached images
+     */
+    public synchronized int getCount()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of requests served without decoding.
+     *
+     * @return the number of cache hits
+     */
+    public synchronized long getHitCount()
+    {
+        return hits;
+    }
+
+    /**
+     * Returns the number of requests which decoded an image.
+     *
+     * @return the number of cache misses
+     */
+    public synchronized long getMissCount()
+    {
+        return misses;
+    }
+
+    /**
+     * Returns the cached entry of <tt>url</tt>, decoding the image outside
+     * the lock if it is not cached.
+     *
+     * @param url the location of the image
+     * @return the entry or <tt>null</tt> if the image could not be loaded
+     */
+    private Entry getEntry(URL url)
+    {
+        if (url == null)
+            return null;
+
+        String key = url.toExternalForm();
+
+        synchronized (this)
+        {
+            Entry entry = entries.get(key);
+
+            if (entry != null)
+            {
+                hits++;
+                return entry;
+            }
+            misses++;
+        }
+
+        Entry entry = load(url);
+
+        if (entry != null)
+        {
+            synchronized (this)
+            {
+                Entry previous = entries.put(key, entry);
+
+                if (previous != null)
+                    size -= previous.bytes;
+                size += entry.bytes;
+                trim();
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Drops the least recently used images until the cached images fit
+     * {@link #maxBytes}. The most recently used image is always kept.
+     */
+    private void trim()
+    {
+        Iterator<Entry> i = entries.values().iterator();
+
+        while (size > maxBytes && entries.size() > 1 && i.hasNext())
+        {
+            size -= i.next().bytes;
+            i.remove();
+        }
+    }
+
+    /**
+     * Decodes the image at <tt>url</tt> and its HiDPI variant.
+     *
+     * @param url the location of the image
+     * @return the decoded entry or <tt>null</tt> if the image could not be
+     * loaded
+     */
+    private static Entry load(URL url)
+    {
+        BufferedImage base;
+
+        try
+        {
+            base = ImageIO.read(url);
+        }
+        catch (IOException ex)
+        {
+            logger.error("Failed to load image: " + url, ex);
+            return null;
+        }
+        if (base == null)
+            return null;
+
+        BufferedImage hiDpi = null;
+        URL hiDpiURL = getHiDpiURL(url);
+
+        if (hiDpiURL != null)
+        {
+            try
+            {
+                hiDpi = ImageIO.read(hiDpiURL);
+            }
+            catch (IOException ex)
+            {
+                // there is no HiDPI variant
+            }
+        }
+
+        return new Entry(base, hiDpi);
+    }
+
+    /**
+     * Returns the location of the <tt>@2x</tt> variant of an image.
+     *
+     * @param url the location of the image
+     * @return the location of the variant or <tt>null</tt> if the name of
+     * the image has no extension
+     */
+    static URL getHiDpiURL(URL url)
+    {
+        String s = url.toExternalForm();
+        int dot = s.lastIndexOf('.');
+
+        if (dot <= s.lastIndexOf('/'))
+            return null;
+
+        try
+        {
+            return new URL(s.substring(0, dot) + "@2x" + s.substring(dot));
+        }
+        catch (MalformedURLException ex)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Determines whether the image at <tt>url</tt> is a GIF, which may be
+     * animated.
+     *
+     * @param url the location of the image
+     * @return <tt>true</tt> if the image is a GIF
+     */
+    private static boolean isAnimated(URL url)
+    {
+        return url.getPath().toLowerCase(Locale.ROOT).endsWith(".gif");
+    }
+
+    /**
+     * A decoded image and its HiDPI variant.
+     */
+    private static class Entry
+    {
+        /**
+         * The image in its base resolution.
+         */
+        final BufferedImage base;
+
+        /**
+         * The image to paint, a multi-resolution image if there is a HiDPI
+         * variant.
+         */
+        final Image image;
+
+        /**
+         * The decoded size of the image and its variant.
+         */
+        final long bytes;
+
+        Entry(BufferedImage base, BufferedImage hiDpi)
+        {
+            this.base = base;
+
+            long bytes = 4L * base.getWidth() * base.getHeight();
+
+            if (hiDpi == null)
+                image = base;
+            else
+            {
+                image = new BaseMultiResolutionImage(base, hiDpi);
+                bytes += 4L * hiDpi.getWidth() * hiDpi.getHeight();
+            }
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.resources;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.*;
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+import javax.imageio.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+
+/**
+ * Tests the decoding, HiDPI variants and the memory bound of
+ * <tt>ImageCache</tt>.
+ */
+public class TestImageCache
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writes a PNG of the given size to the temporary folder.
+     *
+     * @param name the name of the file
+     * @param size the width and height of the image
+     * @return the location of the image
+     */
+    private URL writeImage(String name, int size)
+        throws IOException
+    {
+        File file = new File(folder.getRoot(), name);
+
+        ImageIO.write(
+            new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB),
+            "png",
+            file);
+        return file.toURI().toURL();
+    }
+
+    /**
+     * Tests that an image is decoded once and then served from the cache.
+     */
+    @Test
+    public void testDecodedOnce()
+        throws Exception
+    {
+        ImageCache cache = new ImageCache(ImageCache.DEFAULT_MAX_BYTES);
+        URL url = writeImage("a.png", 16);
+
+        BufferedImage first = cache.getBufferedImage(url);
+
+        assertNotNull(first);
+        assertSame(first, cache.getBufferedImage(url));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(16 * 16 * 4, cache.getSize());
+    }
+
+    /**
+     * Tests that an <tt>@2x</tt> sibling is returned as a multi-resolution
+     * image.
+     */
+    @Test
+    public void testHiDpiVariant()
+        throws Exception
+    {
+        ImageCache cache = new ImageCache(ImageCache.DEFAULT_MAX_BYTES);
+        URL url = writeImage("b.png", 8);
+
+        writeImage("b@2x.png", 16);
+
+        assertTrue(cache.getImage(url) instanceof MultiResolutionImage);
+        assertEquals(8, cache.getBufferedImage(url).getWidth());
+        assertEquals((8 * 8 + 16 * 16) * 4, cache.getSize());
+
+        URL plain = writeImage("c.png", 8);
+
+        assertTrue(cache.getImage(plain) instanceof BufferedImage);
+    }
+
+    /**
+     * Tests that the least recently used images are dropped once the cache
+     * is full.
+     */
+    @Test
+    public void testBounded()
+        throws Exception
+    {
+        // room for two 16x16 images
+        ImageCache cache = new ImageCache(2 * 16 * 16 * 4);
+        URL a = writeImage("a.png", 16);
+        URL b = writeImage("b.png", 16);
+        URL c = writeImage("c.png", 16);
+
+        cache.getBufferedImage(a);
+        cache.getBufferedImage(b);
+        // a is now the most recently used
+        cache.getBufferedImage(a);
+        cache.getBufferedImage(c);
+
+        assertEquals(2, cache.getCount());
+        assertEquals(2 * 16 * 16 * 4, cache.getSize());
+
+        long misses = cache.getMissCount();
+
+        cache.getBufferedImage(a);
+        assertEquals(misses, cache.getMissCount());
+        cache.getBufferedImage(b);
+        assertEquals(misses + 1, cache.getMissCount());
+    }
+
+    /**
+     * Tests that clearing drops all images and that missing images are not
+     * cached.
+     */
+    @Test
+    public void testClearAndMissing()
+        throws Exception
+    {
+        ImageCache cache = new ImageCache(ImageCache.DEFAULT_MAX_BYTES);
+
+        cache.prewarm(
+            Arrays.asList(writeImage("a.png", 4), writeImage("b.png", 4)));
+        assertEquals(2, cache.getCount());
+
+        cache.clear();
+        assertEquals(0, cache.getCount());
+        assertEquals(0, cache.getSize());
+
+        assertNull(cache.getBufferedImage(null));
+        assertNull(cache.getBufferedImage(
+            new File(folder.getRoot(), "missing.png").toURI().toURL()));
+        assertEquals(0, cache.getCount());
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.util;
+
+import java.beans.*;
+import java.util.*;
+
+import org.jitsi.service.configuration.*;
+
+/**
+ * An in-memory index of the per-account and per-chat-room settings that the
+ * user interface stores below
+ * <tt>net.java.sip.communicator.impl.gui.accounts</tt>.
+ * <p>
+ * The configuration stores these settings under generated node names, e.g.
+ * <tt>accounts.acc1234.chatRooms.chatRoom5678.chatRoomName</tt>, so finding
+ * the node of an account or chat room normally means reading every node below
+ * the prefix. The registry remembers the node names by account UID and chat
+ * room ID and keeps them up to date by listening for nodes being added or
+ * removed.
+ * <p>
+ * Frequently changing values can be written lazily. They are kept in memory,
+ * returned by {@link #getString(String)} and written to the configuration in
+ * a single batch after {@link #FLUSH_DELAY} milliseconds.
+ */
+final class AccountSettingsRegistry
+    implements PropertyChangeListener
+{
+    /**
+     * The logger.
+     */
+    private static final org.slf4j.Logger logger
+        = org.slf4j.LoggerFactory.getLogger(AccountSettingsRegistry.class);
+
+    /**
+     * The prefix of the account nodes.
+     */
+    static final String ACCOUNTS_PREFIX
+        = "net.java.sip.communicator.impl.gui.accounts";
+
+    /**
+     * The name of the node below an account that holds its chat rooms.
+     */
+    private static final String CHAT_ROOMS_NODE = "chatRooms";
+
+    /**
+     * The time in milliseconds after which lazily written values are stored.
+     */
+    static final long FLUSH_DELAY = 2000;
+
+    /**
+     * The configuration service whose properties are indexed.
+     */
+    private final ConfigurationService config;
+
+    /**
+     * The account node names by account UID or <tt>null</tt> if they need to
+     * be read again.
+     */
+    private Map<String, String> accountNodes = null;
+
+    /**
+     * The chat room node names by chat room ID, by account node name. Accounts
+     * without an entry have not been read yet.
+     */
+    private final Map<String, Map<String, String>> chatRoomNodes
+        = new HashMap<>();
+
+    /**
+     * The values that are yet to be written to the configuration by property
+     * name. A <tt>null</tt> value removes the property.
+     */
+    private final Map<String, Object> pendingWrites = new LinkedHashMap<>();
+
+    /**
+     * The scheduled write of {@link #pendingWrites}.
+     */
+    private TimingWheel.Timeout flushTimeout;
+
+    /**
+     * Creates a registry for the properties of the given configuration
+     * service.
+     *
+     * @param config the configuration service
+     */
+    AccountSettingsRegistry(ConfigurationService config)
+    {
+        this.config = config;
+
+        config.addPropertyChangeListener(this);
+    }
+
+    /**
+     * Returns the configuration service whose properties are indexed.
+     *
+     * @return the configuration service
+     */
+    ConfigurationService getConfigurationService()
+    {
+        return config;
+    }
+
+    /**
+     * Returns the node name of the account with the given UID.
+     *
+     * @param accountUID the unique ID of the account
+     * @return the property name of the account node or <tt>null</tt> if the
+     * account has no settings
+     */
+    synchronized String getAccountNode(String accountUID)
+    {
+        if (accountNodes == null)
+        {
+            accountNodes = new HashMap<>();
+            for (String node
+                    : config.getPropertyNamesByPrefix(ACCOUNTS_PREFIX, true))
+            {
+                if (!isAccountNode(node))
+                    continue;
+
+                String uid = config.getString(node);
+                if (uid != null)
+                    accountNodes.putIfAbsent(uid, node);
+            }
+        }
+        return accountNodes.get(accountUID);
+    }
+
+    /**
+     * Returns the node name of a chat room.
+     *
+     * @param accountUID the unique ID of the account of the chat room
+     * @param chatRoomID the ID of the chat room
+     * @return the property name of the chat room node or <tt>null</tt> if the
+     * chat room has no settings
+     */
+    synchronized String getChatRoomNode(String accountUID, String chatRoomID)
+    {
+        String accountNode = getAccountNode(accountUID);
+        if (accountNode == null)
+            return null;
+
+        Map<String, String> rooms = chatRoomNodes.get(accountNode);
+        if (rooms == null)
+        {
+            rooms = new HashMap<>();
+            for (String node
+                    : config.getPropertyNamesByPrefix(
+                        accountNode + "." + CHAT_ROOMS_NODE, true))
+            {
+                String id = config.getString(node);
+                if (id != null)
+                    rooms.putIfAbsent(id, node);
+            }
+            chatRoomNodes.put(accountNode, rooms);
+        }
+        return rooms.get(chatRoomID);
+    }
+
+    /**
+     * Returns the value of a property, including values that were written
+     * lazily and are not stored yet.
+     *
+     * @param name the name of the property
+     * @return the value of the property or <tt>null</tt>
+     */
+    String getString(String name)
+    {
+        synchronized (this)
+        {
+            if (pendingWrites.containsKey(name))
+            {
+                Object value = pendingWrites.get(name);
+                return value == null ? null : value.toString();
+            }
+        }
+        return config.getString(name);
+    }
+
+    /**
+     * Sets or removes a property.
+     *
+     * @param name the name of the property
+     * @param value the new value or <tt>null</tt> to remove the property
+     * @param lazy <tt>true</tt> to delay the write and batch it with other
+     * lazy writes; <tt>false</tt> to write it immediately
+     */
+    void setProperty(String name, Object value, boolean lazy)
+    {
+        synchronized (this)
+        {
+            if (lazy)
+            {
+                pendingWrites.put(name, value);
+                if (flushTimeout == null)
+                {
+                    flushTimeout = TimingWheel.getInstance().schedule(
+                        this::flush, FLUSH_DELAY);
+                }
+                return;
+            }
+            pendingWrites.remove(name);
+        }
+
+        if (value == null)
+            config.removeProperty(name);
+        else
+            config.setProperty(name, value);
+    }
+
+    /**
+     * Writes the lazily set values to the configuration.
+     */
+    void flush()
+    {
+        Map<String, Object> writes;
+
+        synchronized (this)
+        {
+            if (flushTimeout != null)
+            {
+                flushTimeout.cancel();
+                flushTimeout = null;
+            }
+            if (pendingWrites.isEmpty())
+                return;
+
+            writes = new LinkedHashMap<>(pendingWrites);
+            pendingWrites.clear();
+        }
+
+        Map<String, Object> values = new HashMap<>();
+        for (Map.Entry<String, Object> e : writes.entrySet())
+        {
+            if (e.getValue() == null)
+                config.removeProperty(e.getKey());
+            else
+                values.put(e.getKey(), e.getValue());
+        }
+
+        try
+        {
+            if (!values.isEmpty())
+                config.setProperties(values);
+        }
+        catch (Exception e)
+        {
+            logger.error("Failed to store account settings", e);
+        }
+    }
+
+    /**
+     * Stops following the changes of the configuration and writes the lazily
+     * set values to it, before this registry is replaced.
+     */
+    void dispose()
+    {
+        config.removePropertyChangeListener(this);
+        flush();
+    }
+
+    /**
+     * Updates the index when account or chat room nodes are added or removed.
+     *
+     * @param evt the change of a configuration property
+     */
+    public void propertyChange(PropertyChangeEvent evt)
+    {
+        String name = evt.getPropertyName();
+        if (name == null || !name.startsWith(ACCOUNTS_PREFIX + "."))
+            return;
+
+        synchronized (this)
+        {
+            if (isAccountNode(name))
+            {
+                accountNodes = null;
+                chatRoomNodes.remove(name);
+            }
+            else if (isChatRoomNode(name))
+            {
+                chatRoomNodes.remove(
+                    name.substring(
+                        0, name.lastIndexOf("." + CHAT_ROOMS_NODE + ".")));
+            }
+            else
+            {
+                return;
+            }
+
+            // don't let a pending write restore a removed node
+            if (evt.getNewValue() == null)
+                pendingWrites.keySet().removeIf(k -> k.startsWith(name + "."));
+        }
+    }
+
+    /**
+     * Determines whether a property is an account node.
+     *
+     * @param name the property name
+     * @return <tt>true</tt> if the property is directly below
+     * {@link #ACCOUNTS_PREFIX}
+     */
+    private static boolean isAccountNode(String name)
+    {
+        return name.startsWith(ACCOUNTS_PREFIX + ".")
+            && name.indexOf('.', ACCOUNTS_PREFIX.length() + 1) == -1;
+    }
+
+    /**
+     * Determines whether a property is a chat room node.
+     *
+     * @param name the property name
+     * @return <tt>true</tt> if the property is directly below the
+     * <tt>chatRooms</tt> node of an account
+     */
+    private static boolean isChatRoomNode(String name)
+    {
+        String[] path
+            = name.substring(ACCOUNTS_PREFIX.length() + 1).split("\\.");
+
+        return path.length == 3 && CHAT_ROOMS_NODE.equals(path[1]);
+    }
+}
@@ -229,6 +229,12 @@
      */
     public static ConfigurationService configService;
 
+    /**
+     * The index of the account and chat room settings of
+     * {@link #configService}.
+     */
+    private static AccountSettingsRegistry accountSettings;
+
     /**
      * The parent of the last contact.
      */
@@ -2163,6 +2169,34 @@ public static void setChatDefaultFontColor(Color fontColor)
             defaultFontColor);
     }
 
+    /**
+     * Returns the index of the account and chat room settings of the current
+     * configuration service.
+     *
+     * @return the settings registry
+     */
+    private static AccountSettingsRegistry getAccountSettings()
+    {
+        AccountSettingsRegistry replaced = null;
+        AccountSettingsRegistry settings;
+
+        synchronized (ConfigurationUtils.class)
+        {
+            if (accountSettings == null
+                || accountSettings.getConfigurationService() != configService)
+            {
+                replaced = accountSettings;
+                accountSettings = new AccountSettingsRegistry(configService);
+            }
+            settings = accountSettings;
+        }
+
+        // the pending writes belong to the configuration they were made in
+        if (replaced != null)
+            replaced.dispose();
+        return settings;
+    }
+
     /**
      * Saves a chat room through the <tt>ConfigurationService</tt>.
      *
@@ -2177,58 +2211,38 @@ public static void saveChatRoom(  String accountUniqueId,
                                         String newChatRoomId,
                                         String newChatRoomName)
     {
-        String prefix = "net.java.sip.communicator.impl.gui.accounts";
-
-        List<String> accounts = configService
-                .getPropertyNamesByPrefix(prefix, true);
-
-        for (String accountRootPropName : accounts)
-        {
-            String accountUID
-                = configService.getString(accountRootPropName);
-
-            if(accountUID.equals(accountUniqueId))
-            {
-                List<String> chatRooms = configService
-                    .getPropertyNamesByPrefix(
-                        accountRootPropName + ".chatRooms", true);
-
-                boolean isExistingChatRoom = false;
+        AccountSettingsRegistry settings = getAccountSettings();
+        String accountRootPropName = settings.getAccountNode(accountUniqueId);
 
-                for (String chatRoomPropName : chatRooms)
-                {
-                    String chatRoomID
-                        = configService.getString(chatRoomPropName);
-
-                    if(!oldChatRoomId.equals(chatRoomID))
-                        continue;
-
-                    isExistingChatRoom = true;
+        if(accountRootPropName == null)
+            return;
 
-                    configService.setProperty(chatRoomPropName,
-                        newChatRoomId);
+        String chatRoomPropName
+            = settings.getChatRoomNode(accountUniqueId, oldChatRoomId);
 
-                    configService.setProperty(  chatRoomPropName
-                                                    + ".chatRoomName",
-                                                newChatRoomName);
-                }
+        if(chatRoomPropName != null)
+        {
+            configService.setProperty(chatRoomPropName,
+                newChatRoomId);
 
-                if(!isExistingChatRoom)
-                {
-                    String chatRoomNodeName
-                        = "chatRoom" + Long.toString(System.currentTimeMillis());
+            configService.setProperty(  chatRoomPropName
+                                            + ".chatRoomName",
+                                        newChatRoomName);
+        }
+        else
+        {
+            String chatRoomNodeName
+                = "chatRoom" + Long.toString(System.currentTimeMillis());
 
-                    String chatRoomPackage = accountRootPropName
-                        + ".chatRooms." + chatRoomNodeName;
+            String chatRoomPackage = accountRootPropName
+                + ".chatRooms." + chatRoomNodeName;
 
-                    configService.setProperty(chatRoomPackage,
-                        newChatRoomId);
+            configService.setProperty(chatRoomPackage,
+                newChatRoomId);
 
-                    configService.setProperty(  chatRoomPackage
-                                                    + ".chatRoomName",
-                                                newChatRoomName);
-                }
-            }
+            configService.setProperty(  chatRoomPackage
+                                            + ".chatRoomName",
+                                        newChatRoomName);
         }
     }
 
@@ -2246,36 +2260,8 @@ public static void updateChatRoomStatus(
             String chatRoomId,
             String chatRoomStatus)
     {
-        String prefix = "net.java.sip.communicator.impl.gui.accounts";
-
-        List<String> accounts = configService
-            .getPropertyNamesByPrefix(prefix, true);
-
-        for (String accountRootPropName : accounts)
-        {
-            String accountUID
-                = configService.getString(accountRootPropName);
-
-            if(accountUID.equals(accountUniqueId))
-            {
-                List<String> chatRooms = configService
-                    .getPropertyNamesByPrefix(
-                        accountRootPropName + ".chatRooms", true);
-
-                for (String chatRoomPropName : chatRooms)
-                {
-                    String chatRoomID
-                        = configService.getString(chatRoomPropName);
-
-                    if(!chatRoomId.equals(chatRoomID))
-                        continue;
-
-                    configService.setProperty(  chatRoomPropName
-                        + ".lastChatRoomStatus",
-                        chatRoomStatus);
-                }
-            }
-        }
+        updateChatRoomProperty(
+            accountUniqueId, chatRoomId, "lastChatRoomStatus", chatRoomStatus);
     }
 
     /**
@@ -2294,40 +2280,74 @@ public static void updateChatRoomProperty(
             String property,
             String value)
     {
-        String prefix = "net.java.sip.communicator.impl.gui.accounts";
+        updateChatRoomProperty(
+            accountUniqueId, chatRoomId, property, value, false);
+    }
 
-        List<String> accounts = configService
-            .getPropertyNamesByPrefix(prefix, true);
+    /**
+     * Updates the value of a chat room property that changes frequently. The
+     * new value is returned by {@link #getChatRoomProperty(String, String,
+     * String)} immediately, but written to the <tt>ConfigurationService</tt>
+     * together with other such changes after a short delay.
+     *
+     * @param accountUniqueId the protocol provider to which the chat room
+     * belongs
+     * @param chatRoomId the identifier of the chat room to update
+     * @param property the name of the property of the chat room
+     * @param value the value of the property if null, property will be removed
+     */
+    public static void updateChatRoomPropertyLazily(
+            String accountUniqueId,
+            String chatRoomId,
+            String property,
+            String value)
+    {
+        updateChatRoomProperty(
+            accountUniqueId, chatRoomId, property, value, true);
+    }
 
-        for (String accountRootPropName : accounts)
+    /**
+     * Updates the value of a chat room property.
+     *
+     * @param accountUniqueId the protocol provider to which the chat room
+     * belongs
+     * @param chatRoomId the identifier of the chat room to update
+     * @param property the name of the property of the chat room
+     * @param value the value of the property if null, property will be removed
+     * @param lazy whether to delay and batch the write
+     */
+    private static void updateChatRoomProperty(
+            String accountUniqueId,
+            String chatRoomId,
+            String property,
+            String value,
+            boolean lazy)
+    {
+        AccountSettingsRegistry settings = getAccountSettings();
+        String chatRoomPropName
+            = settings.getChatRoomNode(accountUniqueId, chatRoomId);
+
+        if(chatRoomPropName != null)
         {
-            String accountUID
-                = configService.getString(accountRootPropName);
+            settings.setProperty(
+                chatRoomPropName + "." + property, value, lazy);
+        }
+    }
 
-            if(accountUID.equals(accountUniqueId))
-            {
-                List<String> chatRooms = configService
-                    .getPropertyNamesByPrefix(
-                        accountRootPropName + ".chatRooms", true);
+    /**
+     * Writes the chat room properties that were updated lazily to the
+     * <tt>ConfigurationService</tt>.
+     */
+    public static void flushChatRoomProperties()
+    {
+        AccountSettingsRegistry settings;
 
-                for (String chatRoomPropName : chatRooms)
-                {
-                    String chatRoomID
-                        = configService.getString(chatRoomPropName);
-
-                    if(!chatRoomId.equals(chatRoomID))
-                        continue;
-
-                    if(value != null)
-                        configService.setProperty(  chatRoomPropName
-                            + "." + property,
-                            value);
-                    else
-                        configService.removeProperty(chatRoomPropName
-                            + "." + property);
-                }
-            }
+        synchronized (ConfigurationUtils.class)
+        {
+            settings = accountSettings;
         }
+        if (settings != null)
+            settings.flush();
     }
 
     /**
@@ -2347,37 +2367,14 @@ public static String getChatRoomProperty(
         String chatRoomId,
         String property)
     {
-        String prefix = "net.java.sip.communicator.impl.gui.accounts";
-
-        List<String> accounts = configService
-            .getPropertyNamesByPrefix(prefix, true);
+        AccountSettingsRegistry settings = getAccountSettings();
+        String chatRoomPropName
+            = settings.getChatRoomNode(accountUniqueId, chatRoomId);
 
-        for (String accountRootPropName : accounts)
-        {
-            String accountUID
-                = configService.getString(accountRootPropName);
-
-            if(accountUID.equals(accountUniqueId))
-            {
-                List<String> chatRooms = configService
-                    .getPropertyNamesByPrefix(
-                        accountRootPropName + ".chatRooms", true);
+        if(chatRoomPropName == null)
+            return null;
 
-                for (String chatRoomPropName : chatRooms)
-                {
-                    String chatRoomID
-                        = configService.getString(chatRoomPropName);
-
-                    if(!chatRoomId.equals(chatRoomID))
-                        continue;
-
-                    return configService.getString(  chatRoomPropName
-                                                    + "." + property);
-                }
-            }
-        }
-
-        return null;
+        return settings.getString(chatRoomPropName + "." + property);
     }
 
     /**
@@ -2390,33 +2387,7 @@ public static String getChatRoomProperty(
      */
     public static String getChatRoomPrefix(String accountID, String chatRoomId)
     {
-        String prefix = "net.java.sip.communicator.impl.gui.accounts";
-        List<String> accounts = configService
-            .getPropertyNamesByPrefix(prefix, true);
-        for (String accountRootPropName : accounts)
-        {
-            String tmpAccountID
-                = configService.getString(accountRootPropName);
-
-            if(tmpAccountID.equals(accountID))
-            {
-                List<String> chatRooms = configService
-                    .getPropertyNamesByPrefix(
-                        accountRootPropName + ".chatRooms", true);
-
-                for (String chatRoomPropName : chatRooms)
-                {
-                    String tmpChatRoomID
-                        = configService.getString(chatRoomPropName);
-
-                    if(tmpChatRoomID.equals(chatRoomId))
-                    {
-                        return chatRoomPropName;
-                    }
-                }
-            }
-        }
-        return null;
+        return getAccountSettings().getChatRoomNode(accountID, chatRoomId);
     }
 
     /**
@@ -0,0 +1,714 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import net.java.sip.communicator.service.dns.*;
+
+import org.xbill.DNS.*;
+import org.xbill.DNS.Record;
+
+/**
+ * Caches the answers to the DNS queries made through {@link NetworkUtils}.
+ * <p>
+ * Positive answers are kept for the smallest TTL of their records and
+ * negative answers (NXDOMAIN or no records of the requested type) for
+ * {@link #DEFAULT_NEGATIVE_TTL}. Once an answer has expired, it is still
+ * served for up to {@link #DEFAULT_MAX_STALE} while it is being refreshed in
+ * the background, and it is served in place of a failed refresh (see RFC
+ * 8767), so that a slow or temporarily unreachable resolver does not delay
+ * the (re)connection of accounts. Answers older than that are dropped, as
+ * are the answers to names which fail DNSSEC validation, and the least
+ * recently used answers are evicted once the cache holds more than its
+ * maximum number of answers. Concurrent queries for the same name and type
+ * are coalesced into a single one.
+ * <p>
+ * Queries can be issued asynchronously with {@link #lookupAsync(String, int)}
+ * so that independent records (e.g. A and AAAA) are resolved concurrently.
+ * Records {@link #prefetch(String, int)}ed on behalf of configured accounts
+ * are refreshed before they expire for as long as they keep being used.
+ */
+public class DnsCache
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>DnsCache</tt> class and its
+     * instances for logging output.
+     */
+    private static final org.slf4j.Logger logger
+        = org.slf4j.LoggerFactory.getLogger(DnsCache.class);
+
+    /**
+     * The default time in seconds for which negative answers are cached.
+     */
+    public static final long DEFAULT_NEGATIVE_TTL = 60;
+
+    /**
+     * The default time in seconds for which expired answers are served while
+     * they are refreshed.
+     */
+    public static final long DEFAULT_MAX_STALE = 24 * 60 * 60;
+
+    /**
+     * The default maximum number of answers kept in the cache.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    /**
+     * The greatest time in seconds for which a positive answer is considered
+     * fresh, regardless of the TTLs of its records.
+     */
+    private static final long MAX_TTL = 24 * 60 * 60;
+
+    /**
+     * The smallest time in seconds between two refreshes of a prefetched
+     * answer.
+     */
+    private static final long MIN_PREFETCH_INTERVAL = 5;
+
+    /**
+     * The time in seconds after its last use for which a prefetched answer is
+     * kept refreshed.
+     */
+    private static final long PREFETCH_IDLE_TIMEOUT = 60 * 60;
+
+    /**
+     * The number of threads which execute asynchronous queries.
+     */
+    private static final int THREAD_COUNT = 4;
+
+    /**
+     * The shared instance.
+     */
+    private static DnsCache instance;
+
+    /**
+     * The resolver to send queries to or <tt>null</tt> to use the default
+     * resolver of dnsjava.
+     */
+    private final Resolver resolver;
+
+    /**
+     * The time in nanoseconds for which negative answers are cached.
+     */
+    private final long negativeTtl;
+
+    /**
+     * The time in nanoseconds for which expired answers are served.
+     */
+    private final long maxStale;
+
+    /**
+     * The maximum number of answers kept in this cache.
+     */
+    private final int maxEntries;
+
+    /**
+     * The cached answers by key.
+     */
+    private final Map<String, Entry> entries
+        = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * The queries in progress by key.
+     */
+    private final Map<String, FutureTask<Record[]>> inFlight
+        = new ConcurrentHashMap<String, FutureTask<Record[]>>();
+
+    /**
+     * The executor of asynchronous queries.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * The number of queries which have been sent.
+     */
+    private final AtomicLong queries = new AtomicLong();
+
+    /**
+     * Gets the <tt>DnsCache</tt> shared by the whole application, which
+     * queries the default resolver of dnsjava.
+     *
+     * @return the shared <tt>DnsCache</tt>
+     */
+    public static synchronized DnsCache getInstance()
+    {
+        if (instance == null)
+        {
+            instance
+                = new DnsCache(null, DEFAULT_NEGATIVE_TTL, DEFAULT_MAX_STALE);
+        }
+        return instance;
+    }
+
+    /**
+     * Initializes a new <tt>DnsCache</tt>.
+     *
+     * @param resolver the resolver to send queries to or <tt>null</tt> to use
+     * the default resolver of dnsjava
+     * @param negativeTtl the time in seconds for which negative answers are
+     * cached
+     * @param maxStale the time in seconds for which expired answers are served
+     * while they are refreshed
+     */
+    public DnsCache(Resolver resolver, long negativeTtl, long maxStale)
+    {
+        this(resolver, negativeTtl, maxStale, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Initializes a new <tt>DnsCache</tt>.
+     *
+     * @param resolver the resolver to send queries to or <tt>null</tt> to use
+     * the default resolver of dnsjava
+     * @param negativeTtl the time in seconds for which negative answers are
+     * cached
+     * @param maxStale the time in seconds for which expired answers are served
+     * while they are refreshed
+     * @param maxEntries the maximum number of answers kept in the cache
+     */
+    public DnsCache(
+            Resolver resolver,
+            long negativeTtl,
+            long maxStale,
+            int maxEntries)
+    {
+        if (maxEntries < 1)
+        {
+            throw new IllegalArgumentException(
+                    "maxEntries: " + maxEntries);
+        }
+
+        this.resolver = resolver;
+        this.negativeTtl = TimeUnit.SECONDS.toNanos(negativeTtl);
+        this.maxStale = TimeUnit.SECONDS.toNanos(maxStale);
+        this.maxEntries = maxEntries;
+
+        final AtomicInteger threadIndex = new AtomicInteger();
+
+        executor
+            = new ThreadPoolExecutor(
+                    THREAD_COUNT, THREAD_COUNT,
+                    30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory()
+                    {
+                        public Thread newThread(Runnable r)
+                        {
+                            Thread t
+                                = new Thread(
+                                        r,
+                                        "DnsCache-"
+                                            + threadIndex.incrementAndGet());
+
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Gets the records of a specific type for a specific name, from the cache
+     * if possible.
+     *
+     * @param name the name to resolve
+     * @param type the type of the records, e.g. {@link Type#SRV}
+     * @return the records or <tt>null</tt> if there are none
+     * @throws TextParseException if <tt>name</tt> is not a valid domain name
+     */
+    public Record[] lookup(String name, int type)
+        throws TextParseException
+    {
+        String key = getKey(name, type);
+        Entry entry = entries.get(key);
+        long now = System.nanoTime();
+
+        if (entry != null)
+        {
+            entry.lastUsed = now;
+            if (now - entry.expires < 0)
+                return entry.records;
+            if (now - entry.expires < maxStale)
+            {
+                if (logger.isTraceEnabled())
+                    logger.trace("Serving stale " + key + " while refreshing");
+                refresh(name, type, key);
+                return entry.records;
+            }
+            // Too old to be served, even in place of a failed refresh.
+            entries.remove(key, entry);
+        }
+        return await(query(name, type, key));
+    }
+
+    /**
+     * Gets the records of a specific type for a specific name asynchronously,
+     * from the cache if possible.
+     *
+     * @param name the name to resolve
+     * @param type the type of the records, e.g. {@link Type#SRV}
+     * @return a <tt>Future</tt> which provides the records or <tt>null</tt> if
+     * there are none, or throws an <tt>ExecutionException</tt> caused by the
+     * exception {@link #lookup(String, int)} would have thrown
+     */
+    public Future<Record[]> lookupAsync(final String name, final int type)
+    {
+        return
+            executor.submit(
+                    new Callable<Record[]>()
+                    {
+                        public Record[] call()
+                            throws TextParseException
+                        {
+                            return lookup(name, type);
+                        }
+                    });
+    }
+
+    /**
+     * Resolves the records of a specific type for a specific name in the
+     * background, so that a later lookup is answered from the cache, and keeps
+     * them fresh for as long as they keep being looked up.
+     *
+     * @param name the name to resolve
+     * @param type the type of the records, e.g. {@link Type#SRV}
+     */
+    public void prefetch(final String name, final int type)
+    {
+        final String key = getKey(name, type);
+        Entry entry = entries.get(key);
+
+        if (entry != null)
+        {
+            entry.prefetch = true;
+            entry.lastUsed = System.nanoTime();
+            if (System.nanoTime() - entry.expires < 0)
+            {
+                schedulePrefetch(name, type, key, entry);
+                return;
+            }
+        }
+
+        executor.execute(
+                new Runnable()
+                {
+                    public void run()
+                    {
+                        try
+                        {
+                            await(query(name, type, key));
+
+                            Entry entry = entries.get(key);
+
+                            if (entry != null)
+                            {
+                                entry.prefetch = true;
+                                entry.lastUsed = System.nanoTime();
+                                schedulePrefetch(name, type, key, entry);
+                            }
+                        }
+                        catch (Exception e)
+                        {
+                            logger.debug("Failed to prefetch " + key, e);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Removes all answers from this cache.
+     */
+    public void clear()
+    {
+        entries.clear();
+    }
+
+    /**
+     * Removes the answers of all types for a specific name from this cache,
+     * e.g. because the DNSSEC configuration of the name has changed.
+     *
+     * @param name the name, with or without its trailing dot
+     */
+    public void invalidate(String name)
+    {
+        String prefix = name.toLowerCase(Locale.ROOT);
+
+        if (prefix.endsWith("."))
+            prefix = prefix.substring(0, prefix.length() - 1);
+
+        String absolutePrefix = prefix + "./";
+
+        prefix = prefix + "/";
+        for (Iterator<String> i = entries.keySet().iterator(); i.hasNext();)
+        {
+            String key = i.next();
+
+            if (key.startsWith(prefix) || key.startsWith(absolutePrefix))
+                i.remove();
+        }
+    }
+
+    /**
+     * Gets the number of answers in this cache.
+     *
+     * @return the number of answers in this cache
+     */
+    public int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Gets the number of queries this cache has sent to the resolver.
+     *
+     * @return the number of queries sent
+     */
+    public long getQueryCount()
+    {
+        return queries.get();
+    }
+
+    /**
+     * Refreshes an expired answer in the background unless it is already
+     * being refreshed.
+     *
+     * @param name the name to resolve
+     * @param type the type of the records
+     * @param key the key of the answer
+     */
+    private void refresh(String name, int type, String key)
+    {
+        if (inFlight.containsKey(key))
+            return;
+
+        final FutureTask<Record[]> task = query(name, type, key);
+
+        executor.execute(
+                new Runnable()
+                {
+                    public void run()
+                    {
+                        task.run();
+                    }
+                });
+    }
+
+    /**
+     * Gets the query in progress for a specific key or creates one. The
+     * returned task has to be run by the caller, which is a no-op if it has
+     * already been run.
+     *
+     * @param name the name to resolve
+     * @param type the type of the records
+     * @param key the key of the answer
+     * @return the query for <tt>key</tt>
+     */
+    private FutureTask<Record[]> query(
+            final String name,
+            final int type,
+            final String key)
+    {
+        FutureTask<Record[]> task = inFlight.get(key);
+
+        if (task != null)
+            return task;
+
+        task
+            = new FutureTask<Record[]>(
+                    new Callable<Record[]>()
+                    {
+                        public Record[] call()
+                            throws TextParseException
+                        {
+                            try
+                            {
+                                return resolve(name, type, key);
+                            }
+                            finally
+                            {
+                                inFlight.remove(key);
+                            }
+                        }
+                    });
+
+        FutureTask<Record[]> existing = inFlight.putIfAbsent(key, task);
+
+        return (existing == null) ? task : existing;
+    }
+
+    /**
+     * Runs a query if necessary and waits for its result.
+     *
+     * @param task the query
+     * @return the records or <tt>null</tt> if there are none
+     * @throws TextParseException if the queried name is not a valid domain
+     * name
+     */
+    private Record[] await(FutureTask<Record[]> task)
+        throws TextParseException
+    {
+        task.run();
+        try
+        {
+            return task.get();
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch (ExecutionException ee)
+        {
+            Throwable cause = ee.getCause();
+
+            if (cause instanceof TextParseException)
+                throw (TextParseException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Sends a query to the resolver and caches its answer.
+     *
+     * @param name the name to resolve
+     * @param type the type of the records
+     * @param key the key of the answer
+     * @return the records or <tt>null</tt> if there are none
+     * @throws TextParseException if <tt>name</tt> is not a valid domain name
+     */
+    private Record[] resolve(String name, int type, String key)
+        throws TextParseException
+    {
+        Lookup lookup = new Lookup(name, type);
+
+        if (resolver != null)
+            lookup.setResolver(resolver);
+        // This class does the caching, including the negative answers which
+        // would otherwise be hidden by the cache of dnsjava.
+        lookup.setCache(null);
+
+        queries.incrementAndGet();
+
+        Record[] records;
+
+        try
+        {
+            records = lookup.run();
+        }
+        catch (DnssecRuntimeException e)
+        {
+            // The answer failed validation: whatever we have for it must not
+            // be served in its place.
+            entries.remove(key);
+            throw e;
+        }
+
+        int result = lookup.getResult();
+        Entry previous = entries.get(key);
+        long ttl;
+
+        switch (result)
+        {
+        case Lookup.SUCCESSFUL:
+            ttl = MAX_TTL;
+            for (Record record : records)
+                ttl = Math.min(ttl, record.getTTL());
+            ttl = TimeUnit.SECONDS.toNanos(ttl);
+            break;
+        case Lookup.HOST_NOT_FOUND:
+        case Lookup.TYPE_NOT_FOUND:
+            records = null;
+            ttl = negativeTtl;
+            break;
+        default:
+            // The resolver failed (e.g. it timed out): keep serving what we
+            // have, if it is not too old, and try again on the next lookup.
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("DNS query " + key + " failed: "
+                    + lookup.getErrorString());
+            }
+            if (previous == null)
+                return null;
+            if (System.nanoTime() - previous.expires < maxStale)
+                return previous.records;
+            entries.remove(key, previous);
+            return null;
+        }
+
+        Entry entry = new Entry(records, System.nanoTime() + ttl);
+
+        if (previous != null)
+        {
+            entry.prefetch = previous.prefetch;
+            entry.lastUsed = previous.lastUsed;
+        }
+        entries.put(key, entry);
+        if (entries.size() > maxEntries)
+            evict();
+        if (entry.prefetch)
+            schedulePrefetch(name, type, key, entry);
+        return records;
+    }
+
+    /**
+     * Removes the answers which are too old to be served and then, if this
+     * cache still holds more than its maximum number of answers, the least
+     * recently used ones.
+     */
+    private synchronized void evict()
+    {
+        long now = System.nanoTime();
+
+        for (Iterator<Entry> i = entries.values().iterator(); i.hasNext();)
+        {
+            if (now - i.next().expires >= maxStale)
+                i.remove();
+        }
+
+        while (entries.size() > maxEntries)
+        {
+            Map.Entry<String, Entry> eldest = null;
+
+            for (Map.Entry<String, Entry> e : entries.entrySet())
+            {
+                if ((eldest == null)
+                        || (e.getValue().lastUsed
+                                - eldest.getValue().lastUsed
+                            < 0))
+                {
+                    eldest = e;
+                }
+            }
+            if (eldest == null)
+                break;
+            entries.remove(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    /**
+     * Schedules the refresh of a prefetched answer shortly before it expires.
+     *
+     * @param name the name to resolve
+     * @param type the type of the records
+     * @param key the key of the answer
+     * @param entry the answer
+     */
+    private void schedulePrefetch(
+            final String name,
+            final int type,
+            final String key,
+            final Entry entry)
+    {
+        synchronized (entry)
+        {
+            if (entry.prefetchScheduled)
+                return;
+            entry.prefetchScheduled = true;
+        }
+
+        long remaining = entry.expires - System.nanoTime();
+        long delay
+            = Math.max(
+                    TimeUnit.NANOSECONDS.toMillis(remaining - remaining / 10),
+                    TimeUnit.SECONDS.toMillis(MIN_PREFETCH_INTERVAL));
+
+        TimingWheel.getInstance().schedule(
+                new Runnable()
+                {
+                    public void run()
+                    {
+                        long idle = System.nanoTime() - entry.lastUsed;
+
+                        if ((entries.get(key) == entry)
+                                && (idle
+                                    < TimeUnit.SECONDS.toNanos(
+                                            PREFETCH_IDLE_TIMEOUT)))
+                        {
+                            refresh(name, type, key);
+                        }
+                    }
+                },
+                delay);
+    }
+
+    /**
+     * Gets the key of the answer to a query.
+     *
+     * @param name the name to resolve
+     * @param type the type of the records
+     * @return the key of the answer
+     */
+    private static String getKey(String name, int type)
+    {
+        return name.toLowerCase(Locale.ROOT) + "/" + Type.string(type);
+    }
+
+    /**
+     * A cached answer.
+     */
+    private static class Entry
+    {
+        /**
+         * The records or <tt>null</tt> for a negative answer.
+         */
+        private final Record[] records;
+
+        /**
+         * The time (as returned by <tt>System.nanoTime()</tt>) at which this
+         * answer expires.
+         */
+        private final long expires;
+
+        /**
+         * The time (as returned by <tt>System.nanoTime()</tt>) at which this
+         * answer was last looked up.
+         */
+        private volatile long lastUsed = System.nanoTime();
+
+        /**
+         * Whether this answer is to be refreshed before it expires.
+         */
+        private volatile boolean prefetch = false;
+
+        /**
+         * Whether the refresh of this answer has been scheduled.
+         */
+        private boolean prefetchScheduled = false;
+
+        /**
+         * Initializes a new <tt>Entry</tt>.
+         *
+         * @param records the records or <tt>null</tt> for a negative answer
+         * @param expires the time (as returned by <tt>System.nanoTime()</tt>)
+         * at which the answer expires
+         */
+        private Entry(Record[] records, long expires)
+        {
+            this.records = records;
+            this.expires = expires;
+        }
+    }
+}
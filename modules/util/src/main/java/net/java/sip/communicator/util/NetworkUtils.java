@@ -21,6 +21,7 @@
 import java.net.*;
 import java.text.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import net.java.sip.communicator.service.dns.*;
 import org.xbill.DNS.*;
@@ -104,6 +105,25 @@
      */
     public static final boolean PDEFAULT_DNS_ALWAYS_ABSOLUTE = false;
 
+    /**
+     * The prefix of the names of the properties which configure the
+     * resolution of domain names, including DNSSEC.
+     */
+    private static final String PNAME_BASE_DNS
+        = "net.java.sip.communicator.util.dns.";
+
+    /**
+     * The prefix of the names of the properties which pin the DNSSEC
+     * validation mode of a single domain name.
+     */
+    private static final String PNAME_BASE_DNSSEC_PIN = PNAME_BASE_DNS + "pin.";
+
+    /**
+     * The prefix of the names of the properties which configure the DNSSEC
+     * validating resolver.
+     */
+    private static final String PNAME_BASE_DNSSEC_RESOLVER = "org.jitsi.dnssec";
+
     /**
      * A random number generator.
      */
@@ -539,14 +559,18 @@ public static SRVRecord[] getSRVRecords(
         Record[] records;
         try
         {
-            Lookup lookup = createLookup(domain, Type.SRV);
-            // Disables the DNS cache: i.e. useful when testing DNS
-            // connectivity.
-            if(!useDNSCache)
+            if(useDNSCache)
             {
+                records = lookup(domain, Type.SRV);
+            }
+            else
+            {
+                Lookup lookup = createLookup(domain, Type.SRV);
+                // Disables the DNS cache: i.e. useful when testing DNS
+                // connectivity.
                 lookup.setCache(new Cache());
+                records = lookup.run();
             }
-            records = lookup.run();
         }
         catch (TextParseException tpe)
         {
@@ -691,8 +715,7 @@ public static String[][] getNAPTRRecords(String domain)
         Record[] records;
         try
         {
-            Lookup lookup = createLookup(domain, Type.NAPTR);
-            records = lookup.run();
+            records = lookup(domain, Type.NAPTR);
         }
         catch (TextParseException tpe)
         {
@@ -914,28 +937,58 @@ public static InetSocketAddress[] getAandAAAARecords(String domain, int port)
 
         List<InetSocketAddress> addresses = new LinkedList<>();
         boolean v6lookup = Boolean.getBoolean("java.net.preferIPv6Addresses");
+        String name;
+        try
+        {
+            name = getLookupName(domain);
+        }
+        catch (TextParseException tpe)
+        {
+            logger.error("Failed to parse domain <" + domain + ">", tpe);
+            throw new ParseException(tpe.getMessage(), 0);
+        }
+
+        // Query the other address family concurrently, so that resolving
+        // the host costs a single round trip.
+        DnsCache cache = DnsCache.getInstance();
+        Future<Record[]> secondary
+            = cache.lookupAsync(name, v6lookup ? Type.A : Type.AAAA);
 
         for(int i = 0; i < 2; i++)
         {
-            Lookup lookup;
+            Record[] records;
             try
             {
-                lookup = createLookup(domain, v6lookup ? Type.AAAA : Type.A);
+                if(i == 0)
+                    records = cache.lookup(name, v6lookup ? Type.AAAA : Type.A);
+                else
+                    records = secondary.get();
             }
             catch (TextParseException tpe)
             {
                 logger.error("Failed to parse domain <" + domain + ">", tpe);
                 throw new ParseException(tpe.getMessage(), 0);
             }
-            Record[] records;
-            try
-            {
-                records = lookup.run();
-            }
             catch(DnssecRuntimeException e)
             {
                 throw new DnssecException(e);
             }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+                records = null;
+            }
+            catch (ExecutionException ee)
+            {
+                if (ee.getCause() instanceof DnssecRuntimeException)
+                {
+                    throw new DnssecException(
+                        (DnssecRuntimeException) ee.getCause());
+                }
+                logger.error("Failed to resolve <" + domain + ">",
+                    ee.getCause());
+                records = null;
+            }
             if(records != null)
             {
                 for(Record r : records)
@@ -1002,12 +1055,7 @@ public static InetSocketAddress getARecord(String domain, int port)
         Record[] records;
         try
         {
-            //note that we intentionally do not use our parallel resolver here.
-            //for starters we'd like to make sure that it works well enough
-            //with SRV and NAPTR queries. We may then also adopt it for As
-            //and AAAAs once it proves to be reliable (posted on: 2010-11-24)
-            Lookup lookup = createLookup(domain, Type.A);
-            records = lookup.run();
+            records = lookup(domain, Type.A);
         }
         catch (TextParseException tpe)
         {
@@ -1075,12 +1123,7 @@ public static InetSocketAddress getAAAARecord(String domain, int port)
         Record[] records;
         try
         {
-            //note that we intentionally do not use our parallel resolver here.
-            //for starters we'd like to make sure that it works well enough
-            //with SRV and NAPTR queries. We may then also adopt it for As
-            //and AAAAs once it proves to be reliable (posted on: 2010-11-24)
-            Lookup lookup = createLookup(domain, Type.AAAA);
-            records = lookup.run();
+            records = lookup(domain, Type.AAAA);
         }
         catch (TextParseException tpe)
         {
@@ -1231,6 +1274,41 @@ private static boolean isMappedIPv4Addr(byte[] address)
      */
     private static Lookup createLookup(String domain, int type)
         throws TextParseException
+    {
+        Lookup lookup = new Lookup(getLookupName(domain), type);
+        logActiveDnsServers();
+        return lookup;
+    }
+
+    /**
+     * Gets the records of a specific type for a specific domain through the
+     * shared {@link DnsCache}.
+     *
+     * @param domain the domain we will be resolving
+     * @param type the type of the record we will be trying to obtain.
+     *
+     * @return the records or <tt>null</tt> if there are none
+     *
+     * @throws TextParseException if <tt>domain</tt> is not a valid domain name.
+     */
+    private static Record[] lookup(String domain, int type)
+        throws TextParseException
+    {
+        String name = getLookupName(domain);
+        logActiveDnsServers();
+        return DnsCache.getInstance().lookup(name, type);
+    }
+
+    /**
+     * Gets the name to query for a specific domain, i.e. the domain made
+     * absolute if {@link #PNAME_DNS_ALWAYS_ABSOLUTE} is set.
+     *
+     * @param domain the domain we will be resolving
+     * @return the name to query for <tt>domain</tt>
+     * @throws TextParseException if <tt>domain</tt> is not a valid domain name.
+     */
+    private static String getLookupName(String domain)
+        throws TextParseException
     {
         // make domain name absolute if requested
         if(UtilActivator.getConfigurationService().getBoolean(
@@ -1240,9 +1318,14 @@ private static Lookup createLookup(String domain, int type)
             if(!Name.fromString(domain).isAbsolute())
                 domain = domain + ".";
         }
+        return domain;
+    }
 
-        Lookup lookup = new Lookup(domain, type);
-
+    /**
+     * Logs the DNS servers of the default resolver if tracing is enabled.
+     */
+    private static void logActiveDnsServers()
+    {
         if(logger.isTraceEnabled())
         {
             StringBuilder sb = new StringBuilder();
@@ -1254,8 +1337,6 @@ private static Lookup createLookup(String domain, int type)
             }
             logger.trace(sb.toString());
         }
-
-        return lookup;
     }
 
     /**
@@ -1429,5 +1510,97 @@ public static void clearDefaultDNSCache()
     {
         Cache defaultCache = Lookup.getDefaultCache(DClass.IN);
         defaultCache.clearCache();
+        DnsCache.getInstance().clear();
+    }
+
+    /**
+     * Drops the cached DNS answers which a change of a configuration property
+     * may have invalidated: those of a single name when its DNSSEC validation
+     * mode is changed, all of them when the resolution is reconfigured.
+     *
+     * @param propertyName the name of the property which has changed
+     * @param oldValue the previous value of the property
+     */
+    public static void dnsPropertyChanged(String propertyName, Object oldValue)
+    {
+        if (propertyName.startsWith(PNAME_BASE_DNSSEC_PIN))
+        {
+            // The resolver pins the default mode of a name the first time it
+            // is queried, which leaves nothing to invalidate.
+            if (oldValue != null)
+            {
+                DnsCache.getInstance().invalidate(
+                        propertyName
+                            .substring(PNAME_BASE_DNSSEC_PIN.length())
+                            .replace("__", "."));
+            }
+        }
+        else if (propertyName.startsWith(PNAME_BASE_DNS)
+                || propertyName.startsWith(PNAME_BASE_DNSSEC_RESOLVER))
+        {
+            clearDefaultDNSCache();
+        }
+    }
+
+    /**
+     * Resolves the SRV records of a service in the background and keeps them
+     * fresh while they are in use, e.g. for the server of a configured
+     * account.
+     *
+     * @param service the service that we are trying to get a record for.
+     * @param proto the protocol that we'd like <tt>service</tt> on.
+     * @param domain the name of the domain we'd like to resolve.
+     */
+    public static void prefetchSRVRecords(
+            String service,
+            String proto,
+            String domain)
+    {
+        prefetch("_" + service + "._" + proto + "." + domain, Type.SRV);
+    }
+
+    /**
+     * Resolves the NAPTR records of a domain in the background and keeps them
+     * fresh while they are in use.
+     *
+     * @param domain the name of the domain we'd like to resolve.
+     */
+    public static void prefetchNAPTRRecords(String domain)
+    {
+        prefetch(domain, Type.NAPTR);
+    }
+
+    /**
+     * Resolves the A and AAAA records of a domain in the background and keeps
+     * them fresh while they are in use.
+     *
+     * @param domain the name of the domain we'd like to resolve.
+     */
+    public static void prefetchAandAAAARecords(String domain)
+    {
+        if (isValidIPAddress(domain))
+            return;
+        prefetch(domain, Type.A);
+        prefetch(domain, Type.AAAA);
+    }
+
+    /**
+     * Resolves the records of a specific type for a specific domain in the
+     * background.
+     *
+     * @param domain the domain we will be resolving
+     * @param type the type of the record we will be trying to obtain.
+     */
+    private static void prefetch(String domain, int type)
+    {
+        try
+        {
+            DnsCache.getInstance().prefetch(getLookupName(domain), type);
+        }
+        catch (TextParseException tpe)
+        {
+            logger.debug("Not prefetching invalid domain <" + domain + ">",
+                tpe);
+        }
     }
 }
@@ -0,0 +1,885 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A hashed timing wheel which executes delayed and periodic tasks on a small,
+ * fixed number of threads. It is meant to replace the many mostly idle
+ * <tt>java.util.Timer</tt> threads created per account, subscription or
+ * conversation for refreshes and timeouts.
+ * <p>
+ * Timeouts are kept in a ring of buckets, each covering one tick. Scheduling
+ * and cancelling a timeout are O(1). The wheel thread only wakes up for ticks
+ * whose bucket holds a timeout and hands expired timeouts over to a small pool
+ * of worker threads, so a slow task does not delay the expiration of the
+ * others. All threads are daemon threads and are only kept alive while there
+ * is work for them.
+ * <p>
+ * The process-wide instance is available through {@link #getInstance()}.
+ */
+public class TimingWheel
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>TimingWheel</tt> class and its
+     * instances for logging output.
+     */
+    private static final org.slf4j.Logger logger
+        = org.slf4j.LoggerFactory.getLogger(TimingWheel.class);
+
+    /**
+     * The default duration of a tick in milliseconds.
+     */
+    public static final long DEFAULT_TICK_DURATION = 50;
+
+    /**
+     * The default number of buckets of the wheel.
+     */
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    /**
+     * The default number of threads which execute expired tasks.
+     */
+    public static final int DEFAULT_WORKER_COUNT = 2;
+
+    /**
+     * The time in seconds after which idle worker threads exit.
+     */
+    private static final long WORKER_KEEP_ALIVE = 30;
+
+    /**
+     * The process-wide instance.
+     */
+    private static TimingWheel instance;
+
+    /**
+     * The duration of a tick in nanoseconds.
+     */
+    private final long tickNanos;
+
+    /**
+     * The buckets of the wheel. Each one is the head of a doubly linked list
+     * of <tt>Timeout</tt>s or <tt>null</tt>.
+     */
+    private final Timeout[] wheel;
+
+    /**
+     * The mask to apply to a tick in order to get the index of its bucket.
+     */
+    private final int mask;
+
+    /**
+     * The time (as returned by <tt>System.nanoTime()</tt>) of tick 0.
+     */
+    private final long startTime = System.nanoTime();
+
+    /**
+     * The executor which runs the expired tasks.
+     */
+    private final ThreadPoolExecutor workers;
+
+    /**
+     * The name of the thread which advances the wheel.
+     */
+    private final String name;
+
+    /**
+     * The thread which advances the wheel or <tt>null</tt> if it has not been
+     * started yet or has exited because the wheel was empty.
+     */
+    private Thread thread;
+
+    /**
+     * The last tick which has been processed.
+     */
+    private long tick = 0;
+
+    /**
+     * The number of timeouts in the wheel.
+     */
+    private int pending = 0;
+
+    /**
+     * The greatest number of timeouts which have been in the wheel at the same
+     * time.
+     */
+    private int maxPending = 0;
+
+    /**
+     * Whether {@link #stop()} has been called.
+     */
+    private boolean stopped = false;
+
+    /**
+     * The number of tasks which have been scheduled.
+     */
+    private final AtomicLong scheduled = new AtomicLong();
+
+    /**
+     * The number of task executions.
+     */
+    private final AtomicLong executed = new AtomicLong();
+
+    /**
+     * The number of tasks which have been cancelled before they expired.
+     */
+    private final AtomicLong cancelled = new AtomicLong();
+
+    /**
+     * The sum of the scheduling lags of all executions in nanoseconds.
+     */
+    private final AtomicLong totalLag = new AtomicLong();
+
+    /**
+     * The greatest scheduling lag of an execution in nanoseconds.
+     */
+    private final AtomicLong maxLag = new AtomicLong();
+
+    /**
+     * Gets the process-wide <tt>TimingWheel</tt>, creating it if necessary.
+     *
+     * @return the process-wide <tt>TimingWheel</tt>
+     */
+    public static synchronized TimingWheel getInstance()
+    {
+        if (instance == null)
+        {
+            instance
+                = new TimingWheel(
+                        "TimingWheel",
+                        DEFAULT_TICK_DURATION,
+                        DEFAULT_WHEEL_SIZE,
+                        DEFAULT_WORKER_COUNT);
+        }
+        return instance;
+    }
+
+    /**
+     * Initializes a new <tt>TimingWheel</tt>.
+     *
+     * @param name the name of the threads of the new instance
+     * @param tickDuration the duration of a tick in milliseconds, i.e. the
+     * precision of the new instance
+     * @param wheelSize the number of buckets, rounded up to a power of 2
+     * @param workerCount the number of threads which execute expired tasks
+     */
+    public TimingWheel(
+            String name,
+            long tickDuration,
+            int wheelSize,
+            int workerCount)
+    {
+        if (tickDuration <= 0)
+            throw new IllegalArgumentException("tickDuration: " + tickDuration);
+        if ((wheelSize <= 0) || (wheelSize > (1 << 30)))
+            throw new IllegalArgumentException("wheelSize: " + wheelSize);
+        if (workerCount <= 0)
+            throw new IllegalArgumentException("workerCount: " + workerCount);
+
+        int size = 1;
+
+        while (size < wheelSize)
+            size <<= 1;
+
+        this.name = name;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+        this.wheel = new Timeout[size];
+        this.mask = size - 1;
+
+        final AtomicInteger workerIndex = new AtomicInteger();
+
+        this.workers
+            = new ThreadPoolExecutor(
+                    workerCount, workerCount,
+                    WORKER_KEEP_ALIVE, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory()
+                    {
+                        public Thread newThread(Runnable r)
+                        {
+                            Thread t
+                                = new Thread(
+                                        r,
+                                        TimingWheel.this.name + "-worker-"
+                                            + workerIndex.incrementAndGet());
+
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Schedules a task for execution after a specific delay.
+     *
+     * @param task the task to execute
+     * @param delay the delay in milliseconds before <tt>task</tt> is executed
+     * @return the <tt>Timeout</tt> which may be used to cancel the execution
+     * of <tt>task</tt>
+     */
+    public Timeout schedule(Runnable task, long delay)
+    {
+        return schedule(task, delay, 0);
+    }
+
+    /**
+     * Schedules a task for repeated fixed-delay execution, beginning after a
+     * specific delay, just like
+     * <tt>java.util.Timer#schedule(TimerTask, long, long)</tt>.
+     *
+     * @param task the task to execute
+     * @param delay the delay in milliseconds before <tt>task</tt> is executed
+     * for the first time
+     * @param period the time in milliseconds between the end of an execution
+     * and the start of the next one or <tt>0</tt> to execute <tt>task</tt>
+     * only once
+     * @return the <tt>Timeout</tt> which may be used to cancel the executions
+     * of <tt>task</tt>
+     */
+    public Timeout schedule(Runnable task, long delay, long period)
+    {
+        if (task == null)
+            throw new NullPointerException("task");
+        if (delay < 0)
+            throw new IllegalArgumentException("Negative delay.");
+        if (period < 0)
+            throw new IllegalArgumentException("Negative period.");
+
+        Timeout timeout = new Timeout(task, period);
+
+        scheduled.incrementAndGet();
+        synchronized (this)
+        {
+            if (stopped)
+                throw new IllegalStateException("TimingWheel stopped.");
+            add(timeout,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay));
+        }
+        return timeout;
+    }
+
+    /**
+     * Cancels all pending tasks and releases the threads of this
+     * <tt>TimingWheel</tt>. It cannot be used to schedule tasks afterwards.
+     */
+    public void stop()
+    {
+        synchronized (this)
+        {
+            stopped = true;
+            for (int i = 0; i < wheel.length; i++)
+            {
+                for (Timeout t = wheel[i]; t != null; t = t.next)
+                    t.state = Timeout.CANCELLED;
+                wheel[i] = null;
+            }
+            pending = 0;
+            notifyAll();
+        }
+        workers.shutdownNow();
+    }
+
+    /**
+     * Gets a snapshot of the statistics of this <tt>TimingWheel</tt>.
+     *
+     * @return a snapshot of the statistics of this <tt>TimingWheel</tt>
+     */
+    public Statistics getStatistics()
+    {
+        int pending, maxPending;
+
+        synchronized (this)
+        {
+            pending = this.pending;
+            maxPending = this.maxPending;
+        }
+
+        long executed = this.executed.get();
+
+        return
+            new Statistics(
+                    pending,
+                    maxPending,
+                    scheduled.get(),
+                    executed,
+                    cancelled.get(),
+                    (executed == 0)
+                        ? 0
+                        : TimeUnit.NANOSECONDS.toMillis(
+                                totalLag.get() / executed),
+                    TimeUnit.NANOSECONDS.toMillis(maxLag.get()));
+    }
+
+    /**
+     * Adds a <tt>Timeout</tt> to the bucket of a specific deadline. Must be
+     * called while holding the monitor of this instance.
+     *
+     * @param timeout the <tt>Timeout</tt> to add
+     * @param deadline the time (as returned by <tt>System.nanoTime()</tt>) at
+     * which <tt>timeout</tt> expires
+     */
+    private void add(Timeout timeout, long deadline)
+    {
+        long targetTick = (deadline - startTime + tickNanos - 1) / tickNanos;
+
+        if (targetTick <= tick)
+            targetTick = tick + 1;
+
+        int index = (int) (targetTick & mask);
+        Timeout head = wheel[index];
+
+        timeout.deadline = deadline;
+        timeout.targetTick = targetTick;
+        timeout.bucket = index;
+        timeout.prev = null;
+        timeout.next = head;
+        if (head != null)
+            head.prev = timeout;
+        wheel[index] = timeout;
+        timeout.state = Timeout.PENDING;
+
+        pending++;
+        if (pending > maxPending)
+            maxPending = pending;
+
+        if (thread == null)
+        {
+            thread
+                = new Thread(name)
+                {
+                    @Override
+                    public void run()
+                    {
+                        runInWheelThread();
+                    }
+                };
+            thread.setDaemon(true);
+            thread.start();
+        }
+        else
+        {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Removes a <tt>Timeout</tt> from its bucket. Must be called while holding
+     * the monitor of this instance.
+     *
+     * @param timeout the <tt>Timeout</tt> to remove
+     */
+    private void remove(Timeout timeout)
+    {
+        if (timeout.prev == null)
+            wheel[timeout.bucket] = timeout.next;
+        else
+            timeout.prev.next = timeout.next;
+        if (timeout.next != null)
+            timeout.next.prev = timeout.prev;
+        timeout.prev = null;
+        timeout.next = null;
+        pending--;
+    }
+
+    /**
+     * Cancels a pending <tt>Timeout</tt>.
+     *
+     * @param timeout the <tt>Timeout</tt> to cancel
+     * @return <tt>true</tt> if <tt>timeout</tt> was prevented from executing
+     * (again)
+     */
+    private synchronized boolean cancel(Timeout timeout)
+    {
+        switch (timeout.state)
+        {
+        case Timeout.PENDING:
+            remove(timeout);
+            timeout.state = Timeout.CANCELLED;
+            cancelled.incrementAndGet();
+            return true;
+        case Timeout.QUEUED:
+            timeout.state = Timeout.CANCELLED;
+            cancelled.incrementAndGet();
+            return true;
+        case Timeout.RUNNING:
+            timeout.state = Timeout.CANCELLED;
+            return timeout.period != 0;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Reschedules a periodic <tt>Timeout</tt> after it has been executed.
+     *
+     * @param timeout the <tt>Timeout</tt> to reschedule
+     */
+    private synchronized void reschedule(Timeout timeout)
+    {
+        if ((timeout.state == Timeout.RUNNING) && !stopped)
+        {
+            add(timeout,
+                System.nanoTime()
+                    + TimeUnit.MILLISECONDS.toNanos(timeout.period));
+        }
+        else if (timeout.state == Timeout.RUNNING)
+        {
+            timeout.state = Timeout.CANCELLED;
+        }
+    }
+
+    /**
+     * Advances the wheel and hands expired timeouts over to the workers until
+     * the wheel is empty or stopped.
+     */
+    private void runInWheelThread()
+    {
+        List<Timeout> expired = new ArrayList<Timeout>();
+
+        while (true)
+        {
+            synchronized (this)
+            {
+                if (stopped || (pending == 0))
+                {
+                    thread = null;
+                    return;
+                }
+
+                long now = System.nanoTime();
+                long nowTick = (now - startTime) / tickNanos;
+
+                if (nowTick <= tick)
+                {
+                    long nextTick = nextNonEmptyTick();
+                    long wait = startTime + nextTick * tickNanos - now;
+
+                    if (wait > 0)
+                    {
+                        try
+                        {
+                            TimeUnit.NANOSECONDS.timedWait(this, wait);
+                        }
+                        catch (InterruptedException ie)
+                        {
+                        }
+                        continue;
+                    }
+                    nowTick = nextTick;
+                }
+
+                // Visit every bucket at most once even if the thread has been
+                // suspended for longer than a full revolution.
+                long firstTick = Math.max(tick + 1, nowTick - mask);
+
+                for (long t = firstTick; t <= nowTick; t++)
+                {
+                    Timeout timeout = wheel[(int) (t & mask)];
+
+                    while (timeout != null)
+                    {
+                        Timeout next = timeout.next;
+
+                        if (timeout.targetTick <= nowTick)
+                        {
+                            remove(timeout);
+                            timeout.state = Timeout.QUEUED;
+                            expired.add(timeout);
+                        }
+                        timeout = next;
+                    }
+                }
+                tick = nowTick;
+            }
+
+            for (Timeout timeout : expired)
+            {
+                try
+                {
+                    workers.execute(timeout);
+                }
+                catch (RejectedExecutionException ree)
+                {
+                    // The wheel has been stopped.
+                }
+            }
+            expired.clear();
+        }
+    }
+
+    /**
+     * Finds the first tick after the last processed one whose bucket is not
+     * empty. Must be called while holding the monitor of this instance.
+     *
+     * @return the first tick after the last processed one whose bucket is not
+     * empty
+     */
+    private long nextNonEmptyTick()
+    {
+        for (int i = 1; i <= wheel.length; i++)
+        {
+            long t = tick + i;
+
+            if (wheel[(int) (t & mask)] != null)
+                return t;
+        }
+        return tick + wheel.length;
+    }
+
+    /**
+     * Records the scheduling lag of an execution.
+     *
+     * @param lag the time in nanoseconds by which an execution started later
+     * than requested
+     */
+    private void recordLag(long lag)
+    {
+        if (lag < 0)
+            lag = 0;
+        executed.incrementAndGet();
+        totalLag.addAndGet(lag);
+
+        long max = maxLag.get();
+
+        while ((max < lag) && !maxLag.compareAndSet(max, lag))
+            max = maxLag.get();
+    }
+
+    /**
+     * Represents a task scheduled with a <tt>TimingWheel</tt>.
+     */
+    public class Timeout
+        implements Runnable
+    {
+        /**
+         * The state of a <tt>Timeout</tt> which is in the wheel.
+         */
+        private static final int PENDING = 0;
+
+        /**
+         * The state of a <tt>Timeout</tt> which has expired and waits for a
+         * worker thread.
+         */
+        private static final int QUEUED = 1;
+
+        /**
+         * The state of a <tt>Timeout</tt> which is being executed.
+         */
+        private static final int RUNNING = 2;
+
+        /**
+         * The state of a <tt>Timeout</tt> which has been executed and will not
+         * be executed again.
+         */
+        private static final int DONE = 3;
+
+        /**
+         * The state of a cancelled <tt>Timeout</tt>.
+         */
+        private static final int CANCELLED = 4;
+
+        /**
+         * The task to execute.
+         */
+        private final Runnable task;
+
+        /**
+         * The time in milliseconds between executions or <tt>0</tt>.
+         */
+        private final long period;
+
+        /**
+         * The state of this <tt>Timeout</tt>, guarded by the monitor of the
+         * <tt>TimingWheel</tt>.
+         */
+        private int state;
+
+        /**
+         * The time (as returned by <tt>System.nanoTime()</tt>) at which this
+         * <tt>Timeout</tt> expires.
+         */
+        private long deadline;
+
+        /**
+         * The tick at which this <tt>Timeout</tt> expires.
+         */
+        private long targetTick;
+
+        /**
+         * The index of the bucket this <tt>Timeout</tt> is in.
+         */
+        private int bucket;
+
+        /**
+         * The previous <tt>Timeout</tt> in the bucket.
+         */
+        private Timeout prev;
+
+        /**
+         * The next <tt>Timeout</tt> in the bucket.
+         */
+        private Timeout next;
+
+        /**
+         * Initializes a new <tt>Timeout</tt>.
+         *
+         * @param task the task to execute
+         * @param period the time in milliseconds between executions or
+         * <tt>0</tt>
+         */
+        private Timeout(Runnable task, long period)
+        {
+            this.task = task;
+            this.period = period;
+        }
+
+        /**
+         * Cancels this <tt>Timeout</tt>. An execution which is already in
+         * progress is not interrupted.
+         *
+         * @return <tt>true</tt> if an execution has been prevented
+         */
+        public boolean cancel()
+        {
+            return TimingWheel.this.cancel(this);
+        }
+
+        /**
+         * Determines whether this <tt>Timeout</tt> has been cancelled.
+         *
+         * @return <tt>true</tt> if this <tt>Timeout</tt> has been cancelled
+         */
+        public boolean isCancelled()
+        {
+            synchronized (TimingWheel.this)
+            {
+                return state == CANCELLED;
+            }
+        }
+
+        /**
+         * Gets the task of this <tt>Timeout</tt>.
+         *
+         * @return the task of this <tt>Timeout</tt>
+         */
+        public Runnable getTask()
+        {
+            return task;
+        }
+
+        /**
+         * Executes the task of this <tt>Timeout</tt> in a worker thread.
+         */
+        public void run()
+        {
+            synchronized (TimingWheel.this)
+            {
+                if (state != QUEUED)
+                    return;
+                state = RUNNING;
+            }
+
+            recordLag(System.nanoTime() - deadline);
+            try
+            {
+                task.run();
+            }
+            catch (Throwable t)
+            {
+                if (t instanceof ThreadDeath)
+                    throw (ThreadDeath) t;
+                logger.error("Scheduled task failed: " + task, t);
+            }
+
+            if (period == 0)
+            {
+                synchronized (TimingWheel.this)
+                {
+                    if (state == RUNNING)
+                        state = DONE;
+                }
+            }
+            else
+            {
+                reschedule(this);
+            }
+        }
+    }
+
+    /**
+     * A snapshot of the statistics of a <tt>TimingWheel</tt>.
+     */
+    public static class Statistics
+    {
+        /**
+         * The number of tasks waiting for their execution.
+         */
+        private final int pending;
+
+        /**
+         * The greatest number of tasks which have been waiting at the same
+         * time.
+         */
+        private final int maxPending;
+
+        /**
+         * The number of tasks which have been scheduled.
+         */
+        private final long scheduled;
+
+        /**
+         * The number of task executions.
+         */
+        private final long executed;
+
+        /**
+         * The number of tasks which have been cancelled before they expired.
+         */
+        private final long cancelled;
+
+        /**
+         * The average scheduling lag in milliseconds.
+         */
+        private final long averageLag;
+
+        /**
+         * The greatest scheduling lag in milliseconds.
+         */
+        private final long maxLag;
+
+        /**
+         * Initializes a new <tt>Statistics</tt> snapshot.
+         *
+         * @param pending the number of tasks waiting for their execution
+         * @param maxPending the greatest number of tasks which have been
+         * waiting at the same time
+         * @param scheduled the number of tasks which have been scheduled
+         * @param executed the number of task executions
+         * @param cancelled the number of cancelled tasks
+         * @param averageLag the average scheduling lag in milliseconds
+         * @param maxLag the greatest scheduling lag in milliseconds
+         */
+        Statistics(
+                int pending,
+                int maxPending,
+                long scheduled,
+                long executed,
+                long cancelled,
+                long averageLag,
+                long maxLag)
+        {
+            this.pending = pending;
+            this.maxPending = maxPending;
+            this.scheduled = scheduled;
+            this.executed = executed;
+            this.cancelled = cancelled;
+            this.averageLag = averageLag;
+            this.maxLag = maxLag;
+        }
+
+        /**
+         * Gets the number of tasks waiting for their execution.
+         *
+         * @return the number of tasks waiting for their execution
+         */
+        public int getPending()
+        {
+            return pending;
+        }
+
+        /**
+         * Gets the greatest number of tasks which have been waiting for their
+         * execution at the same time.
+         *
+         * @return the greatest number of tasks which have been waiting at the
+         * same time
+         */
+        public int getMaxPending()
+        {
+            return maxPending;
+        }
+
+        /**
+         * Gets the number of tasks which have been scheduled.
+         *
+         * @return the number of tasks which have been scheduled
+         */
+        public long getScheduled()
+        {
+            return scheduled;
+        }
+
+        /**
+         * Gets the number of task executions.
+         *
+         * @return the number of task executions
+         */
+        public long getExecuted()
+        {
+            return executed;
+        }
+
+        /**
+         * Gets the number of tasks which have been cancelled before they
+         * expired.
+         *
+         * @return the number of cancelled tasks
+         */
+        public long getCancelled()
+        {
+            return cancelled;
+        }
+
+        /**
+         * Gets the average time in milliseconds by which executions started
+         * later than requested.
+         *
+         * @return the average scheduling lag in milliseconds
+         */
+        public long getAverageLag()
+        {
+            return averageLag;
+        }
+
+        /**
+         * Gets the greatest time in milliseconds by which an execution started
+         * later than requested.
+         *
+         * @return the greatest scheduling lag in milliseconds
+         */
+        public long getMaxLag()
+        {
+            return maxLag;
+        }
+
+        @Override
+        public String toString()
+        {
+            return
+                "pending=" + pending + ", maxPending=" + maxPending
+                    + ", scheduled=" + scheduled + ", executed=" + executed
+                    + ", cancelled=" + cancelled
+                    + ", averageLag=" + averageLag + "ms"
+                    + ", maxLag=" + maxLag + "ms";
+        }
+    }
+}
@@ -17,6 +17,8 @@
  */
 package net.java.sip.communicator.util;
 
+import java.beans.*;
+
 import lombok.extern.slf4j.*;
 import net.java.sip.communicator.util.osgi.*;
 import org.jitsi.service.configuration.*;
@@ -36,6 +38,20 @@ public class UtilActivator extends DependentActivator
 {
     private static ConfigurationService configurationService;
 
+    /**
+     * Drops the cached DNS answers invalidated by configuration changes.
+     */
+    private final PropertyChangeListener dnsConfigListener
+        = new PropertyChangeListener()
+        {
+            public void propertyChange(PropertyChangeEvent evt)
+            {
+                NetworkUtils.dnsPropertyChanged(
+                        evt.getPropertyName(),
+                        evt.getOldValue());
+            }
+        };
+
     public UtilActivator()
     {
         super(ConfigurationService.class);
@@ -53,10 +69,30 @@ public UtilActivator()
     public void startWithServices(BundleContext bundleContext) throws Exception
     {
         configurationService = getService(ConfigurationService.class);
+        configurationService.addPropertyChangeListener(dnsConfigListener);
         logger.trace("Setting default uncaught exception handler");
         Thread.setDefaultUncaughtExceptionHandler(this);
     }
 
+    /**
+     * Stores the settings that were changed lazily before the configuration
+     * service goes away and stops listening to its DNS settings.
+     *
+     * @param context the bundle context
+     * @throws Exception if stopping the service trackers fails
+     */
+    @Override
+    public void stop(BundleContext context) throws Exception
+    {
+        ConfigurationUtils.flushChatRoomProperties();
+        if (configurationService != null)
+        {
+            configurationService.removePropertyChangeListener(
+                    dnsConfigListener);
+        }
+        super.stop(context);
+    }
+
     /**
      * Method invoked when a thread would terminate due to the given uncaught
      * exception. All we do here is simply log the exception using the system
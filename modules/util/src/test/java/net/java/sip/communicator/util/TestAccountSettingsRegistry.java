@@ -0,0 +1,236 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.util;
+
+import static org.junit.Assert.*;
+
+import java.beans.*;
+import java.lang.reflect.*;
+import java.util.*;
+
+import org.jitsi.service.configuration.*;
+import org.junit.*;
+
+/**
+ * Tests the index and the lazy writes of <tt>AccountSettingsRegistry</tt>.
+ */
+public class TestAccountSettingsRegistry
+{
+    private static final String ACCOUNT
+        = AccountSettingsRegistry.ACCOUNTS_PREFIX + ".acc1";
+
+    private static final String ROOM = ACCOUNT + ".chatRooms.chatRoom1";
+
+    /**
+     * The properties of the configuration service.
+     */
+    private final Map<String, Object> properties = new TreeMap<>();
+
+    /**
+     * The listeners of the configuration service.
+     */
+    private final List<PropertyChangeListener> listeners = new ArrayList<>();
+
+    /**
+     * The number of prefix searches in the configuration.
+     */
+    private int searchCount = 0;
+
+    /**
+     * The number of times a property was written.
+     */
+    private int writeCount = 0;
+
+    private AccountSettingsRegistry registry;
+
+    @Before
+    public void setUp()
+    {
+        properties.put(AccountSettingsRegistry.ACCOUNTS_PREFIX + ".acc0",
+            "Jabber:other@example.com");
+        properties.put(ACCOUNT, "Jabber:user@example.com");
+        properties.put(ROOM, "room@conference.example.com");
+        properties.put(ROOM + ".chatRoomName", "room");
+
+        registry = new AccountSettingsRegistry(createConfigurationService());
+    }
+
+    /**
+     * Tests that the nodes are only searched once.
+     */
+    @Test
+    public void testNodesAreIndexed()
+    {
+        for (int i = 0; i < 10; i++)
+        {
+            assertEquals(ROOM, registry.getChatRoomNode(
+                "Jabber:user@example.com", "room@conference.example.com"));
+        }
+        assertNull(registry.getChatRoomNode(
+            "Jabber:user@example.com", "missing@conference.example.com"));
+        assertNull(registry.getChatRoomNode(
+            "Jabber:missing@example.com", "room@conference.example.com"));
+        assertEquals(2, searchCount);
+    }
+
+    /**
+     * Tests that adding and removing chat rooms updates the index.
+     */
+    @Test
+    public void testIndexFollowsChanges()
+    {
+        assertNull(registry.getChatRoomNode(
+            "Jabber:user@example.com", "new@conference.example.com"));
+
+        setProperty(ACCOUNT + ".chatRooms.chatRoom2",
+            "new@conference.example.com");
+        assertEquals(ACCOUNT + ".chatRooms.chatRoom2",
+            registry.getChatRoomNode(
+                "Jabber:user@example.com", "new@conference.example.com"));
+
+        // a leaf property doesn't invalidate the index
+        int searches = searchCount;
+        setProperty(ROOM + ".chatRoomName", "renamed");
+        registry.getChatRoomNode(
+            "Jabber:user@example.com", "room@conference.example.com");
+        assertEquals(searches, searchCount);
+
+        setProperty(ROOM, null);
+        assertNull(registry.getChatRoomNode(
+            "Jabber:user@example.com", "room@conference.example.com"));
+    }
+
+    /**
+     * Tests that lazy writes are visible immediately and stored in a batch.
+     */
+    @Test
+    public void testLazyWritesAreBatched()
+    {
+        for (int i = 0; i < 50; i++)
+        {
+            registry.setProperty(
+                ROOM + ".lastSeenDelayedMessage", String.valueOf(i), true);
+        }
+        assertEquals("49", registry.getString(ROOM + ".lastSeenDelayedMessage"));
+        assertNull(properties.get(ROOM + ".lastSeenDelayedMessage"));
+
+        registry.flush();
+        assertEquals("49", properties.get(ROOM + ".lastSeenDelayedMessage"));
+        assertEquals(1, writeCount);
+    }
+
+    /**
+     * Tests that a pending write doesn't restore a removed chat room.
+     */
+    @Test
+    public void testRemovedNodeDropsPendingWrites()
+    {
+        registry.setProperty(ROOM + ".lastSeenDelayedMessage", "1", true);
+        setProperty(ROOM, null);
+        registry.flush();
+
+        assertFalse(properties.containsKey(ROOM + ".lastSeenDelayedMessage"));
+    }
+
+    /**
+     * Tests that a disposed registry stores its pending writes and no longer
+     * follows the configuration.
+     */
+    @Test
+    public void testDisposeFlushesAndStopsListening()
+    {
+        registry.setProperty(ROOM + ".lastSeenDelayedMessage", "1", true);
+        registry.dispose();
+
+        assertEquals("1", properties.get(ROOM + ".lastSeenDelayedMessage"));
+        assertTrue(listeners.isEmpty());
+    }
+
+    /**
+     * Sets a property and notifies the listeners like the configuration
+     * service does.
+     */
+    private void setProperty(String name, Object value)
+    {
+        Object oldValue = value == null
+            ? properties.remove(name)
+            : properties.put(name, value);
+
+        writeCount++;
+        for (PropertyChangeListener l : listeners)
+        {
+            l.propertyChange(
+                new PropertyChangeEvent(this, name, oldValue, value));
+        }
+    }
+
+    /**
+     * Creates a configuration service backed by {@link #properties}.
+     */
+    private ConfigurationService createConfigurationService()
+    {
+        return (ConfigurationService) Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class<?>[] { ConfigurationService.class },
+            new InvocationHandler()
+            {
+                @SuppressWarnings("unchecked")
+                public Object invoke(Object proxy, Method m, Object[] args)
+                {
+                    switch (m.getName())
+                    {
+                    case "addPropertyChangeListener":
+                        listeners.add(
+                            (PropertyChangeListener) args[args.length - 1]);
+                        return null;
+                    case "removePropertyChangeListener":
+                        listeners.remove(args[args.length - 1]);
+                        return null;
+                    case "getString":
+                        Object value = properties.get(args[0]);
+                        return value == null ? null : value.toString();
+                    case "getPropertyNamesByPrefix":
+                        searchCount++;
+                        List<String> names = new ArrayList<>();
+                        for (String name : properties.keySet())
+                        {
+                            if (name.startsWith(args[0] + ".")
+                                && name.indexOf('.',
+                                    ((String) args[0]).length() + 1) == -1)
+                            {
+                                names.add(name);
+                            }
+                        }
+                        return names;
+                    case "setProperty":
+                        setProperty((String) args[0], args[1]);
+                        return null;
+                    case "setProperties":
+                        writeCount++;
+                        properties.putAll((Map<String, Object>) args[0]);
+                        return null;
+                    case "removeProperty":
+                        setProperty((String) args[0], null);
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException(m.getName());
+                    }
+                }
+            });
+    }
+}
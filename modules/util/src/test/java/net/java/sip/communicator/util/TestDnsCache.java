@@ -0,0 +1,572 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.util;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.net.*;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import net.java.sip.communicator.service.dns.*;
+
+import org.junit.*;
+import org.xbill.DNS.*;
+import org.xbill.DNS.Record;
+
+/**
+ * Tests the caching of <tt>DnsCache</tt> against a stub DNS server on the
+ * loopback interface.
+ */
+public class TestDnsCache
+{
+    /**
+     * The stub DNS server.
+     */
+    private StubServer server;
+
+    /**
+     * The resolver which queries the stub DNS server.
+     */
+    private SimpleResolver resolver;
+
+    /**
+     * The cache under test.
+     */
+    private DnsCache cache;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        server = new StubServer();
+
+        resolver = new SimpleResolver("127.0.0.1");
+        resolver.setPort(server.getPort());
+        resolver.setTimeout(Duration.ofSeconds(2));
+
+        // negative answers are cached for 1 second, stale ones served for 60
+        cache = new DnsCache(resolver, 1, 60);
+    }
+
+    @After
+    public void tearDown()
+    {
+        server.close();
+    }
+
+    /**
+     * Tests that a positive answer is served from the cache until it expires.
+     */
+    @Test
+    public void testPositiveAnswerIsCached()
+        throws Exception
+    {
+        server.addA("host.test.", "192.0.2.1", 60);
+
+        Record[] records = cache.lookup("host.test.", Type.A);
+        assertNotNull(records);
+        assertEquals(1, records.length);
+        assertEquals("192.0.2.1",
+            ((ARecord) records[0]).getAddress().getHostAddress());
+
+        assertNotNull(cache.lookup("HOST.test.", Type.A));
+        assertEquals(1, server.getQueryCount());
+        assertEquals(1, cache.getQueryCount());
+    }
+
+    /**
+     * Tests that a negative answer is cached for the negative TTL.
+     */
+    @Test
+    public void testNegativeAnswerIsCached()
+        throws Exception
+    {
+        assertNull(cache.lookup("missing.test.", Type.A));
+        assertNull(cache.lookup("missing.test.", Type.A));
+        assertEquals(1, server.getQueryCount());
+
+        // the expired answer is served while it is refreshed
+        Thread.sleep(1100);
+        assertNull(cache.lookup("missing.test.", Type.A));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getQueryCount() < 2
+                && System.currentTimeMillis() < deadline)
+            Thread.sleep(20);
+        assertEquals(2, server.getQueryCount());
+    }
+
+    /**
+     * Tests that an expired answer is served while it is refreshed in the
+     * background.
+     */
+    @Test
+    public void testStaleAnswerIsServedWhileRefreshing()
+        throws Exception
+    {
+        server.addA("stale.test.", "192.0.2.1", 1);
+        assertNotNull(cache.lookup("stale.test.", Type.A));
+
+        Thread.sleep(1100);
+        server.clear();
+        server.addA("stale.test.", "192.0.2.2", 60);
+
+        Record[] records = cache.lookup("stale.test.", Type.A);
+        assertEquals("192.0.2.1",
+            ((ARecord) records[0]).getAddress().getHostAddress());
+
+        // wait for the background refresh
+        long deadline = System.currentTimeMillis() + 5000;
+        do
+        {
+            Thread.sleep(20);
+            records = cache.lookup("stale.test.", Type.A);
+        }
+        while (((ARecord) records[0]).getAddress().getHostAddress()
+                    .equals("192.0.2.1")
+                && System.currentTimeMillis() < deadline);
+        assertEquals("192.0.2.2",
+            ((ARecord) records[0]).getAddress().getHostAddress());
+    }
+
+    /**
+     * Tests that an expired answer is served when the resolver fails.
+     */
+    @Test
+    public void testStaleAnswerIsServedOnFailure()
+        throws Exception
+    {
+        server.addA("fail.test.", "192.0.2.1", 1);
+        assertNotNull(cache.lookup("fail.test.", Type.A));
+
+        Thread.sleep(1100);
+        server.setFailing(true);
+
+        Record[] records = cache.lookup("fail.test.", Type.A);
+        assertNotNull(records);
+        assertEquals("192.0.2.1",
+            ((ARecord) records[0]).getAddress().getHostAddress());
+    }
+
+    /**
+     * Tests that an answer which has been expired for longer than the maximum
+     * staleness is dropped rather than served in place of a failed refresh.
+     */
+    @Test
+    public void testAnswerIsDroppedAfterMaxStale()
+        throws Exception
+    {
+        DnsCache strictCache = new DnsCache(resolver, 1, 0);
+
+        server.addA("old.test.", "192.0.2.1", 1);
+        assertNotNull(strictCache.lookup("old.test.", Type.A));
+        assertEquals(1, strictCache.size());
+
+        Thread.sleep(1100);
+        server.setFailing(true);
+
+        assertNull(strictCache.lookup("old.test.", Type.A));
+        assertEquals(0, strictCache.size());
+    }
+
+    /**
+     * Tests that the least recently used answers are evicted once the cache
+     * holds more than its maximum number of answers.
+     */
+    @Test
+    public void testLeastRecentlyUsedAnswerIsEvicted()
+        throws Exception
+    {
+        DnsCache smallCache = new DnsCache(resolver, 1, 60, 2);
+
+        server.addA("a.test.", "192.0.2.1", 60);
+        server.addA("b.test.", "192.0.2.2", 60);
+        server.addA("c.test.", "192.0.2.3", 60);
+
+        smallCache.lookup("a.test.", Type.A);
+        Thread.sleep(5);
+        smallCache.lookup("b.test.", Type.A);
+        Thread.sleep(5);
+        smallCache.lookup("a.test.", Type.A);
+        Thread.sleep(5);
+        smallCache.lookup("c.test.", Type.A);
+        assertEquals(2, smallCache.size());
+        assertEquals(3, server.getQueryCount());
+
+        smallCache.lookup("a.test.", Type.A);
+        smallCache.lookup("c.test.", Type.A);
+        assertEquals(3, server.getQueryCount());
+        smallCache.lookup("b.test.", Type.A);
+        assertEquals(4, server.getQueryCount());
+    }
+
+    /**
+     * Tests that an answer is no longer served once its name fails DNSSEC
+     * validation.
+     */
+    @Test
+    public void testAnswerIsDroppedOnValidationFailure()
+        throws Exception
+    {
+        ValidationFailingResolver failingResolver
+            = new ValidationFailingResolver(resolver);
+        DnsCache validatingCache = new DnsCache(failingResolver, 1, 60);
+
+        server.addA("bogus.test.", "192.0.2.1", 1);
+        assertNotNull(validatingCache.lookup("bogus.test.", Type.A));
+
+        Thread.sleep(1100);
+        failingResolver.bogus = true;
+
+        // served while the refresh, which fails validation, is in progress
+        assertNotNull(validatingCache.lookup("bogus.test.", Type.A));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (validatingCache.size() > 0
+                && System.currentTimeMillis() < deadline)
+            Thread.sleep(20);
+        assertEquals(0, validatingCache.size());
+
+        try
+        {
+            validatingCache.lookup("bogus.test.", Type.A);
+            fail("The stale answer was served");
+        }
+        catch (DnssecRuntimeException e)
+        {
+            // expected
+        }
+    }
+
+    /**
+     * Tests that the answers of all types for a name are invalidated without
+     * affecting the other names.
+     */
+    @Test
+    public void testInvalidate()
+        throws Exception
+    {
+        server.addA("pinned.test.", "192.0.2.1", 60);
+        server.addAAAA("pinned.test.", "2001:db8::1", 60);
+        server.addA("other.test.", "192.0.2.2", 60);
+
+        cache.lookup("pinned.test.", Type.A);
+        cache.lookup("pinned.test.", Type.AAAA);
+        cache.lookup("other.test.", Type.A);
+        assertEquals(3, server.getQueryCount());
+
+        cache.invalidate("PINNED.test");
+        assertEquals(1, cache.size());
+
+        cache.lookup("other.test.", Type.A);
+        assertEquals(3, server.getQueryCount());
+        cache.lookup("pinned.test.", Type.A);
+        cache.lookup("pinned.test.", Type.AAAA);
+        assertEquals(5, server.getQueryCount());
+    }
+
+    /**
+     * Tests that independent queries are resolved concurrently and that
+     * concurrent queries for the same record are coalesced.
+     */
+    @Test
+    public void testConcurrentLookups()
+        throws Exception
+    {
+        server.addA("dual.test.", "192.0.2.1", 60);
+        server.addAAAA("dual.test.", "2001:db8::1", 60);
+        server.setDelay(300);
+
+        long start = System.nanoTime();
+        Future<Record[]> a = cache.lookupAsync("dual.test.", Type.A);
+        Future<Record[]> aaaa = cache.lookupAsync("dual.test.", Type.AAAA);
+        Future<Record[]> a2 = cache.lookupAsync("dual.test.", Type.A);
+
+        assertNotNull(a.get(5, TimeUnit.SECONDS));
+        assertNotNull(aaaa.get(5, TimeUnit.SECONDS));
+        assertNotNull(a2.get(5, TimeUnit.SECONDS));
+        assertTrue(
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 600);
+        assertEquals(2, server.getQueryCount());
+    }
+
+    /**
+     * A resolver which fails DNSSEC validation on demand, the way the
+     * validating resolver of the DNS bundle does.
+     */
+    private static class ValidationFailingResolver
+        implements Resolver
+    {
+        /**
+         * The resolver which answers the queries which pass validation.
+         */
+        private final Resolver delegate;
+
+        /**
+         * Whether the answers fail validation.
+         */
+        private volatile boolean bogus = false;
+
+        ValidationFailingResolver(Resolver delegate)
+        {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Message send(Message query)
+            throws IOException
+        {
+            if (bogus)
+                throw new DnssecRuntimeException("bogus answer");
+            return delegate.send(query);
+        }
+
+        @Override
+        public CompletionStage<Message> sendAsync(
+                Message query,
+                Executor executor)
+        {
+            if (bogus)
+                throw new DnssecRuntimeException("bogus answer");
+            return delegate.sendAsync(query, executor);
+        }
+
+        public void setPort(int port)
+        {
+            delegate.setPort(port);
+        }
+
+        public void setTCP(boolean flag)
+        {
+            delegate.setTCP(flag);
+        }
+
+        public void setIgnoreTruncation(boolean flag)
+        {
+            delegate.setIgnoreTruncation(flag);
+        }
+
+        public void setEDNS(
+                int version,
+                int payloadSize,
+                int flags,
+                List<EDNSOption> options)
+        {
+            delegate.setEDNS(version, payloadSize, flags, options);
+        }
+
+        public void setTSIGKey(TSIG key)
+        {
+            delegate.setTSIGKey(key);
+        }
+
+        public void setTimeout(Duration timeout)
+        {
+            delegate.setTimeout(timeout);
+        }
+    }
+
+    /**
+     * A DNS server answering A and AAAA queries from a static zone.
+     */
+    private static class StubServer
+        implements Runnable
+    {
+        /**
+         * The socket the server listens on.
+         */
+        private final DatagramSocket socket;
+
+        /**
+         * The records by name and type.
+         */
+        private final Map<String, List<Record>> zone
+            = new ConcurrentHashMap<String, List<Record>>();
+
+        /**
+         * The number of queries received.
+         */
+        private final AtomicInteger queryCount = new AtomicInteger();
+
+        /**
+         * Whether to answer with SERVFAIL.
+         */
+        private volatile boolean failing = false;
+
+        /**
+         * The time in milliseconds to wait before answering.
+         */
+        private volatile long delay = 0;
+
+        /**
+         * Starts a server on an ephemeral port of the loopback interface.
+         */
+        StubServer()
+            throws SocketException
+        {
+            socket
+                = new DatagramSocket(
+                        new InetSocketAddress(
+                                InetAddress.getLoopbackAddress(), 0));
+
+            Thread thread = new Thread(this, "StubDnsServer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getPort()
+        {
+            return socket.getLocalPort();
+        }
+
+        int getQueryCount()
+        {
+            return queryCount.get();
+        }
+
+        void setFailing(boolean failing)
+        {
+            this.failing = failing;
+        }
+
+        void setDelay(long delay)
+        {
+            this.delay = delay;
+        }
+
+        void clear()
+        {
+            zone.clear();
+        }
+
+        void addA(String name, String address, long ttl)
+            throws Exception
+        {
+            add(new ARecord(Name.fromString(name), DClass.IN, ttl,
+                InetAddress.getByName(address)));
+        }
+
+        void addAAAA(String name, String address, long ttl)
+            throws Exception
+        {
+            add(new AAAARecord(Name.fromString(name), DClass.IN, ttl,
+                InetAddress.getByName(address)));
+        }
+
+        private void add(Record record)
+        {
+            String key = record.getName() + "/" + record.getType();
+            List<Record> records = zone.get(key);
+
+            if (records == null)
+            {
+                records = new ArrayList<Record>();
+                zone.put(key, records);
+            }
+            records.add(record);
+        }
+
+        void close()
+        {
+            socket.close();
+        }
+
+        public void run()
+        {
+            byte[] buffer = new byte[512];
+
+            while (!socket.isClosed())
+            {
+                try
+                {
+                    final DatagramPacket packet
+                        = new DatagramPacket(buffer, buffer.length);
+
+                    socket.receive(packet);
+                    queryCount.incrementAndGet();
+
+                    final Message query
+                        = new Message(
+                                Arrays.copyOf(
+                                        packet.getData(),
+                                        packet.getLength()));
+
+                    // answer from another thread so that the delay does
+                    // not serialize concurrent queries
+                    new Thread()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            answer(query, packet.getSocketAddress());
+                        }
+                    }.start();
+                }
+                catch (Exception e)
+                {
+                    // closed
+                }
+            }
+        }
+
+        private void answer(Message query, SocketAddress to)
+        {
+            try
+            {
+                if (delay > 0)
+                    Thread.sleep(delay);
+
+                Record question = query.getQuestion();
+                Message response = new Message(query.getHeader().getID());
+
+                response.getHeader().setFlag(Flags.QR);
+                response.getHeader().setFlag(Flags.AA);
+                response.addRecord(question, Section.QUESTION);
+                if (failing)
+                {
+                    response.getHeader().setRcode(Rcode.SERVFAIL);
+                }
+                else
+                {
+                    List<Record> records
+                        = zone.get(
+                                question.getName() + "/" + question.getType());
+
+                    if (records == null)
+                        response.getHeader().setRcode(Rcode.NXDOMAIN);
+                    else
+                    {
+                        for (Record record : records)
+                            response.addRecord(record, Section.ANSWER);
+                    }
+                }
+
+                byte[] data = response.toWire();
+                socket.send(new DatagramPacket(data, data.length, to));
+            }
+            catch (Exception e)
+            {
+                // ignore
+            }
+        }
+    }
+}
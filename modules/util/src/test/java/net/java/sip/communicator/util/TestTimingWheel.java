@@ -0,0 +1,182 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.util;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.*;
+
+/**
+ * Tests the scheduling and cancellation of tasks by <tt>TimingWheel</tt>.
+ */
+public class TestTimingWheel
+{
+    /**
+     * The wheel under test.
+     */
+    private TimingWheel wheel;
+
+    @Before
+    public void setUp()
+    {
+        wheel = new TimingWheel("TestTimingWheel", 10, 8, 2);
+    }
+
+    @After
+    public void tearDown()
+    {
+        wheel.stop();
+    }
+
+    /**
+     * Tests that a task is executed once, not before its delay.
+     */
+    @Test
+    public void testScheduleOnce()
+        throws Exception
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+
+        wheel.schedule(new Runnable()
+        {
+            public void run()
+            {
+                latch.countDown();
+            }
+        }, 50);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 50);
+        Thread.sleep(50);
+
+        TimingWheel.Statistics statistics = wheel.getStatistics();
+        assertEquals(1, statistics.getScheduled());
+        assertEquals(1, statistics.getExecuted());
+        assertEquals(0, statistics.getPending());
+    }
+
+    /**
+     * Tests that a delay longer than a full revolution of the wheel is
+     * honoured.
+     */
+    @Test
+    public void testDelayLongerThanRevolution()
+        throws Exception
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+
+        // 8 buckets of 10ms, so 200ms takes more than two revolutions
+        wheel.schedule(new Runnable()
+        {
+            public void run()
+            {
+                latch.countDown();
+            }
+        }, 200);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 200);
+    }
+
+    /**
+     * Tests that a cancelled task is not executed.
+     */
+    @Test
+    public void testCancel()
+        throws Exception
+    {
+        final AtomicInteger count = new AtomicInteger();
+        TimingWheel.Timeout timeout = wheel.schedule(new Runnable()
+        {
+            public void run()
+            {
+                count.incrementAndGet();
+            }
+        }, 50);
+
+        assertTrue(timeout.cancel());
+        assertTrue(timeout.isCancelled());
+        assertFalse(timeout.cancel());
+        Thread.sleep(150);
+        assertEquals(0, count.get());
+        assertEquals(1, wheel.getStatistics().getCancelled());
+    }
+
+    /**
+     * Tests that a periodic task is executed repeatedly until it is
+     * cancelled.
+     */
+    @Test
+    public void testPeriodic()
+        throws Exception
+    {
+        final CountDownLatch latch = new CountDownLatch(3);
+        final AtomicInteger count = new AtomicInteger();
+        TimingWheel.Timeout timeout = wheel.schedule(new Runnable()
+        {
+            public void run()
+            {
+                count.incrementAndGet();
+                latch.countDown();
+            }
+        }, 0, 20);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(timeout.cancel());
+        Thread.sleep(50);
+
+        int executions = count.get();
+
+        Thread.sleep(100);
+        assertEquals(executions, count.get());
+    }
+
+    /**
+     * Tests that a failing task does not prevent others from being executed.
+     */
+    @Test
+    public void testFailingTask()
+        throws Exception
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        wheel.schedule(new Runnable()
+        {
+            public void run()
+            {
+                throw new RuntimeException("expected");
+            }
+        }, 10);
+        wheel.schedule(new Runnable()
+        {
+            public void run()
+            {
+                latch.countDown();
+            }
+        }, 20);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+}